@@ -229,6 +229,7 @@ CTX.INPUT['common'] = """
  SerializableEEException.cpp
  SQLException.cpp
  InterruptException.cpp
+ StringDictionary.cpp
  StringRef.cpp
  tabletuple.cpp
  TupleSchema.cpp
@@ -262,6 +263,7 @@ CTX.INPUT['executors'] = """
  aggregateexecutor.cpp
  deleteexecutor.cpp
  executorutil.cpp
+ hashjoinexecutor.cpp
  indexcountexecutor.cpp
  indexscanexecutor.cpp
  insertexecutor.cpp
@@ -303,6 +305,7 @@ CTX.INPUT['plannodes'] = """
  abstractscannode.cpp
  aggregatenode.cpp
  deletenode.cpp
+ hashjoinnode.cpp
  indexscannode.cpp
  indexcountnode.cpp
  tablecountnode.cpp
@@ -371,6 +374,7 @@ CTX.INPUT['storage'] = """
 """
 
 CTX.INPUT['stats'] = """
+ ExecutionStats.cpp
  StatsAgent.cpp
  StatsSource.cpp
 """
@@ -458,6 +462,7 @@ if whichtests in ("${eetestsuite}", "executors"):
     CTX.TESTS['executors'] = """
     OptimizedProjectorTest
     MergeReceiveExecutorTest
+    TempTableSpillTest
     """
 
 
@@ -501,6 +506,7 @@ if whichtests in ("${eetestsuite}", "structures"):
     CTX.TESTS['structures'] = """
      CompactingMapTest
      CompactingMapIndexCountTest
+     CompactingBTreeTest
      CompactingHashTest
      CompactingPoolTest
      CompactingMapBenchmark
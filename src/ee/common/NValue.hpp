@@ -1940,6 +1940,11 @@ private:
 
         assert(m_valueType == VALUE_TYPE_VARCHAR);
 
+        // Strings shared between tuples (see StringDictionary) match without a look at their bytes.
+        if (!m_sourceInlined && !rhs.m_sourceInlined && getObjectPointer() == rhs.getObjectPointer()) {
+            return VALUE_COMPARE_EQUAL;
+        }
+
         int32_t leftLength;
         const char* left = getObject_withoutNull(&leftLength);
         int32_t rightLength;
@@ -1971,6 +1976,9 @@ private:
                                data_exception_most_specific_type_mismatch,
                                message);
         }
+        if (!m_sourceInlined && !rhs.m_sourceInlined && getObjectPointer() == rhs.getObjectPointer()) {
+            return VALUE_COMPARE_EQUAL;
+        }
         int32_t leftLength;
         const char* left = getObject_withoutNull(&leftLength);
         int32_t rightLength;
@@ -2906,8 +2914,8 @@ template <TupleSerializationFormat F, Endianess E> inline void NValue::deseriali
         if (type != VALUE_TYPE_GEOGRAPHY) {
             // This advances input past the end of the string
             const char *data = reinterpret_cast<const char*>(input.getRawPointer(length));
-            sref = StringRef::create(length, data, tempPool);
             checkTooWideForVariableLengthType(type, data, length, maxLength, isInBytes);
+            sref = StringRef::create(length, data, tempPool);
         }
         else {
             // This gets a pointer to the start of data without advancing
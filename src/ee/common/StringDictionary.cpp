@@ -0,0 +1,83 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+#include "StringDictionary.h"
+
+#include "StringRef.h"
+#include "ThreadLocalPool.h"
+
+#include <boost/functional/hash.hpp>
+
+#include <cassert>
+#include <cstring>
+
+using namespace voltdb;
+
+StringDictionary* StringDictionary::instance()
+{
+    return ThreadLocalPool::getStringDictionary();
+}
+
+std::size_t StringDictionary::ContentHash::operator()(const StringRef* sref) const
+{
+    int32_t length;
+    const char* data = sref->getObject(&length);
+    return boost::hash_range(data, data + length);
+}
+
+bool StringDictionary::ContentEqual::operator()(const StringRef* lhs, const StringRef* rhs) const
+{
+    int32_t lhsLength;
+    const char* lhsData = lhs->getObject(&lhsLength);
+    int32_t rhsLength;
+    const char* rhsData = rhs->getObject(&rhsLength);
+    return lhsLength == rhsLength && ::memcmp(lhsData, rhsData, lhsLength) == 0;
+}
+
+StringRef* StringDictionary::intern(StringRef* sref, bool &added)
+{
+    std::pair<StringsByContent::iterator, bool> result = m_byContent.insert(sref);
+    added = result.second;
+    if (added) {
+        m_refCounts[sref] = 1;
+        return sref;
+    }
+
+    StringRef* shared = *result.first;
+    assert(shared != sref);
+    ++m_refCounts[shared];
+    StringRef::destroy(sref);
+    return shared;
+}
+
+bool StringDictionary::releaseShared(StringRef* sref)
+{
+    if (m_refCounts.empty()) {
+        return false;
+    }
+    RefCounts::iterator it = m_refCounts.find(sref);
+    if (it == m_refCounts.end()) {
+        return false;
+    }
+    if (--it->second > 0) {
+        return true;
+    }
+    // The last reference is going away, so the caller frees the string.
+    m_refCounts.erase(it);
+    m_byContent.erase(sref);
+    return false;
+}
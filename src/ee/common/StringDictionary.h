@@ -0,0 +1,80 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+#ifndef STRINGDICTIONARY_H
+#define STRINGDICTIONARY_H
+
+#include <cstddef>
+#include <stdint.h>
+
+#include <boost/unordered_map.hpp>
+#include <boost/unordered_set.hpp>
+
+namespace voltdb
+{
+class StringRef;
+
+/// A per-thread registry of persistent strings that are shared between
+/// tuples instead of being copied into each of them. A table offers each
+/// freshly copied string to intern(), which either keeps it as the shared
+/// copy or frees it in favor of an equal string registered earlier.
+/// Every tuple holding a shared string owns one reference to it, which
+/// StringRef::destroy() hands back through releaseShared(), so tuples can
+/// keep freeing their strings the way they always have.
+class StringDictionary
+{
+public:
+    /// The dictionary of the calling thread, which lives as long as its
+    /// ThreadLocalPool.
+    static StringDictionary* instance();
+
+    /// Share sref, a persistent string just allocated for the caller.
+    /// Returns the shared string equal to sref, which is sref itself if
+    /// the dictionary held no equal string. In that case added is set.
+    StringRef* intern(StringRef* sref, bool &added);
+
+    /// Drop one reference to sref. Returns true if sref is shared and
+    /// still referenced, in which case it must not be freed.
+    bool releaseShared(StringRef* sref);
+
+    /// Whether sref is a shared string.
+    bool isShared(const StringRef* sref) const
+    {
+        return !m_refCounts.empty() && m_refCounts.find(sref) != m_refCounts.end();
+    }
+
+    /// The number of distinct strings registered.
+    std::size_t size() const { return m_refCounts.size(); }
+
+private:
+    struct ContentHash {
+        std::size_t operator()(const StringRef* sref) const;
+    };
+    struct ContentEqual {
+        bool operator()(const StringRef* lhs, const StringRef* rhs) const;
+    };
+
+    typedef boost::unordered_set<StringRef*, ContentHash, ContentEqual> StringsByContent;
+    typedef boost::unordered_map<const StringRef*, int32_t> RefCounts;
+
+    StringsByContent m_byContent;
+    RefCounts m_refCounts;
+};
+
+} // namespace voltdb
+
+#endif // STRINGDICTIONARY_H
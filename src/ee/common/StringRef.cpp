@@ -18,6 +18,7 @@
 #include "StringRef.h"
 
 #include "Pool.hpp"
+#include "StringDictionary.h"
 #include "ThreadLocalPool.h"
 
 using namespace voltdb;
@@ -145,5 +146,10 @@ StringRef::destroy(StringRef* sref)
     if (sref->m_stringPtr == reinterpret_cast<char*>(sref+1)) {
         return;
     }
+    // A string shared between tuples is only freed with its last reference.
+    StringDictionary* dictionary = StringDictionary::instance();
+    if (dictionary != NULL && dictionary->releaseShared(sref)) {
+        return;
+    }
     delete sref;
 }
@@ -18,6 +18,7 @@
 
 #include "common/FatalException.hpp"
 #include "common/SQLException.h"
+#include "common/StringDictionary.h"
 
 #include "structures/CompactingPool.h"
 
@@ -48,6 +49,7 @@ const int ThreadLocalPool::POOLED_MAX_VALUE_LENGTH = 1024 * 1024;
  */
 static pthread_key_t m_key;
 static pthread_key_t m_stringKey;
+static pthread_key_t m_dictionaryKey;
 /**
  * Thread local key for storing integer value of amount of memory allocated
  */
@@ -66,6 +68,7 @@ typedef boost::unordered_map<int32_t, boost::shared_ptr<CompactingPool> > Compac
 static void createThreadLocalKey() {
     (void)pthread_key_create( &m_key, NULL);
     (void)pthread_key_create( &m_stringKey, NULL);
+    (void)pthread_key_create( &m_dictionaryKey, NULL);
     (void)pthread_key_create( &m_keyAllocated, NULL);
 }
 
@@ -77,6 +80,7 @@ ThreadLocalPool::ThreadLocalPool() {
                 new PairType(
                         1, new PoolsByObjectSize())));
         pthread_setspecific(m_stringKey, static_cast<const void*>(new CompactingStringStorage()));
+        pthread_setspecific(m_dictionaryKey, static_cast<const void*>(new StringDictionary()));
     } else {
         PairTypePtr p =
                 static_cast<PairTypePtr>(pthread_getspecific(m_key));
@@ -93,6 +97,8 @@ ThreadLocalPool::~ThreadLocalPool() {
         if (p->first == 1) {
             delete p->second;
             pthread_setspecific( m_key, NULL);
+            delete static_cast<StringDictionary*>(pthread_getspecific(m_dictionaryKey));
+            pthread_setspecific(m_dictionaryKey, NULL);
             delete static_cast<CompactingStringStorage*>(pthread_getspecific(m_stringKey));
             pthread_setspecific(m_stringKey, NULL);
             delete static_cast<std::size_t*>(pthread_getspecific(m_keyAllocated));
@@ -315,6 +321,10 @@ std::size_t ThreadLocalPool::getPoolAllocationSize() {
     return bytes_allocated;
 }
 
+StringDictionary* ThreadLocalPool::getStringDictionary() {
+    return static_cast<StringDictionary*>(pthread_getspecific(m_dictionaryKey));
+}
+
 char * voltdb_pool_allocator_new_delete::malloc(const size_type bytes) {
     (*static_cast< std::size_t* >(pthread_getspecific(m_keyAllocated))) += bytes + sizeof(std::size_t);
     //std::cout << "Pooled memory is " << ((*static_cast< std::size_t* >(pthread_getspecific(m_keyAllocated))) / (1024 * 1024)) << " after requested allocation " << (bytes / (1024 * 1024)) <<  std::endl;
@@ -23,6 +23,8 @@
 
 namespace voltdb {
 
+class StringDictionary;
+
 /**
  * A wrapper around a set of pools that are local to the current thread.
  * An instance of the thread local pool must be maintained somewhere in the thread to ensure initialization
@@ -114,6 +116,13 @@ public:
      * relocating some other allocation.
      */
     static void freeRelocatable(Sized* string);
+
+    /**
+     * The registry of persistent strings shared between tuples on this
+     * thread, see StringDictionary. NULL once the last ThreadLocalPool of
+     * the thread is gone.
+     */
+    static StringDictionary* getStringDictionary();
 };
 }
 
@@ -152,4 +152,26 @@ bool TupleOutputStreamProcessor::writeRow(TupleSerializer &tupleSerializer,
     return yield;
 }
 
+bool TupleOutputStreamProcessor::writeRowTo(std::size_t streamIndex,
+                                            TupleSerializer &tupleSerializer,
+                                            TableTuple &tuple)
+{
+    if (m_table == NULL) {
+        throwFatalException("TupleOutputStreamProcessor::writeRowTo() was called before open().");
+    }
+    if (streamIndex >= size()) {
+        throwFatalException("TupleOutputStreamProcessor::writeRowTo() was called for stream %jd of %jd.",
+                            (intmax_t)streamIndex, (intmax_t)size());
+    }
+
+    TupleOutputStream &stream = at(streamIndex);
+    if (!stream.canFit(m_maxTupleLength)) {
+        throwFatalException(
+            "TupleOutputStreamProcessor::writeRowTo() failed because buffer has no space.");
+    }
+    stream.writeRow(tupleSerializer, tuple);
+    return (   !stream.canFit(m_maxTupleLength)
+            || stream.getTotalBytesSerialized() > m_bytesSerializedThreshold);
+}
+
 } // namespace voltdb
@@ -68,6 +68,15 @@ public:
                   TableTuple &tuple,
                   bool *deleteRow = NULL);
 
+    /**
+     * Write a tuple to a single output stream, bypassing the predicates.
+     * Expects buffer space was already checked.
+     * Returns true when the caller should yield to allow other work to proceed.
+     */
+    bool writeRowTo(std::size_t streamIndex,
+                    TupleSerializer &tupleSerializer,
+                    TableTuple &tuple);
+
 private:
 
     /** The maximum tuple length. */
@@ -74,6 +74,7 @@ namespace voltdb {
 #define DIRTY_MASK 2
 #define PENDING_DELETE_MASK 4
 #define PENDING_DELETE_ON_UNDO_RELEASE_MASK 8
+#define MODIFIED_MASK 16
 
 class TableColumn;
 class TupleIterator;
@@ -316,6 +317,11 @@ public:
         return (*(reinterpret_cast<const char*> (m_data)) & PENDING_DELETE_ON_UNDO_RELEASE_MASK) ? true : false;
     }
 
+    /** Was the tuple inserted or updated since the last change tracking snapshot? */
+    inline bool isModified() const {
+        return (*(reinterpret_cast<const char*> (m_data)) & MODIFIED_MASK) ? true : false;
+    }
+
     /** Is the column value null? */
     inline bool isNull(const int idx) const {
         return getNValue(idx).isNull();
@@ -462,6 +468,15 @@ private:
         *(reinterpret_cast<char*> (m_data)) &= static_cast<char>(~DIRTY_MASK);
     }
 
+    inline void setModifiedTrue() {
+        // treat the first "value" as a boolean flag
+        *(reinterpret_cast<char*> (m_data)) |= static_cast<char>(MODIFIED_MASK);
+    }
+    inline void setModifiedFalse() {
+        // treat the first "value" as a boolean flag
+        *(reinterpret_cast<char*> (m_data)) &= static_cast<char>(~MODIFIED_MASK);
+    }
+
     /** The types of the columns in the tuple */
     const TupleSchema *m_schema;
 
@@ -223,6 +223,12 @@ std::string tableStreamTypeToString(TableStreamType type) {
       case TABLE_STREAM_RECOVERY: {
           return "TABLE_STREAM_RECOVERY";
       }
+      case TABLE_STREAM_SNAPSHOT_DELTA_BASE: {
+          return "TABLE_STREAM_SNAPSHOT_DELTA_BASE";
+      }
+      case TABLE_STREAM_SNAPSHOT_DELTA: {
+          return "TABLE_STREAM_SNAPSHOT_DELTA";
+      }
       case TABLE_STREAM_NONE: {
           return "TABLE_STREAM_NONE";
       }
@@ -406,6 +412,9 @@ string planNodeToString(PlanNodeType type)
     case PLAN_NODE_TYPE_NESTLOOPINDEX: {
         return "NESTLOOPINDEX";
     }
+    case PLAN_NODE_TYPE_HASHJOIN: {
+        return "HASHJOIN";
+    }
     case PLAN_NODE_TYPE_UPDATE: {
         return "UPDATE";
     }
@@ -477,6 +486,8 @@ PlanNodeType stringToPlanNode(string str )
         return PLAN_NODE_TYPE_NESTLOOP;
     } else if (str == "NESTLOOPINDEX") {
         return PLAN_NODE_TYPE_NESTLOOPINDEX;
+    } else if (str == "HASHJOIN") {
+        return PLAN_NODE_TYPE_HASHJOIN;
     } else if (str == "UPDATE") {
         return PLAN_NODE_TYPE_UPDATE;
     } else if (str == "INSERT") {
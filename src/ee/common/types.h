@@ -191,6 +191,7 @@ enum PlanNodeType {
     //
     PLAN_NODE_TYPE_NESTLOOP         = 20,
     PLAN_NODE_TYPE_NESTLOOPINDEX    = 21,
+    PLAN_NODE_TYPE_HASHJOIN         = 22,
 
     //
     // Operator Nodes
@@ -352,7 +353,7 @@ enum QuantifierType {
 enum TableIndexType {
     BALANCED_TREE_INDEX     = 1,
     HASH_TABLE_INDEX        = 2,
-    BTREE_INDEX             = 3, // unused
+    BTREE_INDEX             = 3, // B+tree, see CompactingBTree
     COVERING_CELL_INDEX     = 4
 };
 
@@ -396,6 +397,13 @@ enum TableStreamType {
     // that tableStreamTypeHasPredicates() doesn't have to change.
     TABLE_STREAM_RECOVERY,
 
+    // Snapshot streams that also track changes for incremental snapshots.
+    // A delta base streams every tuple and starts tracking. A delta streams
+    // only the tuples modified since the previous base or delta, followed by
+    // the deleted tuples on a second output stream. Both use predicates.
+    TABLE_STREAM_SNAPSHOT_DELTA_BASE,
+    TABLE_STREAM_SNAPSHOT_DELTA,
+
     // Table stream type provided when no stream is active.
     TABLE_STREAM_NONE = -1
 };
@@ -411,6 +419,8 @@ enum TableStreamSerializationError {
  */
 inline bool tableStreamTypeHasPredicates(TableStreamType streamType) {
     return streamType == TABLE_STREAM_SNAPSHOT
+        || streamType == TABLE_STREAM_SNAPSHOT_DELTA_BASE
+        || streamType == TABLE_STREAM_SNAPSHOT_DELTA
         || streamType == TABLE_STREAM_ELASTIC_INDEX
         || streamType == TABLE_STREAM_ELASTIC_INDEX_READ;
 }
@@ -419,7 +429,17 @@ inline bool tableStreamTypeHasPredicates(TableStreamType streamType) {
  * Return true if the table stream type is performing a snapshot.
  */
 inline bool tableStreamTypeIsSnapshot(TableStreamType streamType) {
-    return streamType == TABLE_STREAM_SNAPSHOT;
+    return streamType == TABLE_STREAM_SNAPSHOT
+        || streamType == TABLE_STREAM_SNAPSHOT_DELTA_BASE
+        || streamType == TABLE_STREAM_SNAPSHOT_DELTA;
+}
+
+/**
+ * Return true if the table stream type is a snapshot that tracks changes.
+ */
+inline bool tableStreamTypeIsDeltaSnapshot(TableStreamType streamType) {
+    return streamType == TABLE_STREAM_SNAPSHOT_DELTA_BASE
+        || streamType == TABLE_STREAM_SNAPSHOT_DELTA;
 }
 
 /**
@@ -445,7 +465,9 @@ inline bool tableStreamTypeAppliesToPreTruncateTable(TableStreamType streamType)
 // ------------------------------------------------------------------
 enum StatisticsSelectorType {
     STATISTICS_SELECTOR_TYPE_TABLE,
-    STATISTICS_SELECTOR_TYPE_INDEX
+    STATISTICS_SELECTOR_TYPE_INDEX,
+    STATISTICS_SELECTOR_TYPE_STATEMENT,
+    STATISTICS_SELECTOR_TYPE_EXECUTOR
 };
 
 // ------------------------------------------------------------------
@@ -485,7 +507,11 @@ enum TaskType {
     TASK_TYPE_SET_DR_PROTOCOL_VERSION = 3,
     TASK_TYPE_SP_JAVA_GET_DRID_TRACKER = 4,      // not supported in EE
     TASK_TYPE_SET_DRID_TRACKER = 5,              // not supported in EE
-    TASK_TYPE_GENERATE_DR_EVENT = 6
+    TASK_TYPE_GENERATE_DR_EVENT = 6,
+    TASK_TYPE_SET_TEMP_TABLE_SPILL = 7,
+    TASK_TYPE_BUILD_PENDING_INDEXES = 8,
+    TASK_TYPE_SET_SHARED_STRING_TABLES = 9,
+    TASK_TYPE_SET_EXECUTION_TIMING = 10
 };
 
 // ------------------------------------------------------------------
@@ -97,6 +97,10 @@ boost::shared_ptr<ExecutorVector> ExecutorVector::fromJsonPlan(VoltDBEngine* eng
                                                             tempTableLogLimit,
                                                             tempTableMemoryLimit,
                                                             pnf));
+    if (tempTableMemoryLimit > 0) {
+        ev->m_limits.setSpillDirectory(engine->tempTableSpillDirectory(),
+                                       engine->tempTableSpillLimit());
+    }
     ev->init(engine);
     return ev;
 }
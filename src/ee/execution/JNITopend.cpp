@@ -91,7 +91,7 @@ JNITopend::JNITopend(JNIEnv *env, jobject caller) : m_jniEnv(env), m_javaExecuti
         throw std::exception();
     }
 
-    m_nextDependencyMID = m_jniEnv->GetMethodID(jniClass, "nextDependencyAsBytes", "(I)[B");
+    m_nextDependencyMID = m_jniEnv->GetMethodID(jniClass, "nextDependencyAsBuffer", "(I)Ljava/nio/ByteBuffer;");
     if (m_nextDependencyMID == NULL) {
         m_jniEnv->ExceptionDescribe();
         assert(m_nextDependencyMID != 0);
@@ -246,22 +246,19 @@ int JNITopend::loadNextDependency(int32_t dependencyId, voltdb::Pool *stringPool
         throw std::exception();
     }
 
-    jbyteArray jbuf = (jbyteArray)(m_jniEnv->CallObjectMethod(m_javaExecutionEngine,
-                                                              m_nextDependencyMID,
-                                                              dependencyId));
+    // A direct buffer, read in place. Java keeps it alive until the next call.
+    jobject jbuf = m_jniEnv->CallObjectMethod(m_javaExecutionEngine,
+                                              m_nextDependencyMID,
+                                              dependencyId);
 
     if (!jbuf) {
         return 0;
     }
 
-    jsize length = m_jniEnv->GetArrayLength(jbuf);
+    jlong length = m_jniEnv->GetDirectBufferCapacity(jbuf);
     if (length > 0) {
-        jboolean is_copy;
-        jbyte *bytes = m_jniEnv->GetByteArrayElements(jbuf, &is_copy);
-        // Add the dependency buffer info to the stack object
-        // so it'll get cleaned up if loadTuplesFrom throws
-        jni_frame.addDependencyRef(is_copy, jbuf, bytes);
-        ReferenceSerializeInputBE serialize_in(bytes, length);
+        char *bytes = static_cast<char*>(m_jniEnv->GetDirectBufferAddress(jbuf));
+        ReferenceSerializeInputBE serialize_in(bytes, static_cast<size_t>(length));
         destination->loadTuplesFrom(serialize_in, stringPool);
         return 1;
     }
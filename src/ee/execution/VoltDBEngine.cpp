@@ -152,6 +152,7 @@ VoltDBEngine::VoltDBEngine(Topend *topend, LogProxy *logProxy)
       m_staticParams(MAX_PARAM_COUNT),
       m_pfCount(0),
       m_currentInputDepId(-1),
+      m_tuplesSentInFragment(0),
       m_stringPool(16777216, 2),
       m_numResultDependencies(0),
       m_logManager(logProxy),
@@ -185,6 +186,7 @@ VoltDBEngine::initialize(int32_t clusterIndex,
     m_siteId = siteId;
     m_partitionId = partitionId;
     m_tempTableMemoryLimit = tempTableMemoryLimit;
+    m_tempTableSpillLimit = -1;
     m_compactionThreshold = compactionThreshold;
 
     // Instantiate our catalog - it will be populated later on by load()
@@ -470,6 +472,11 @@ int VoltDBEngine::executePlanFragment(int64_t planfragmentId,
     // count the number of plan fragments executed
     ++m_pfCount;
 
+    m_tuplesSentInFragment = 0;
+    const bool timed = m_executionStats.isEnabled();
+    const int64_t startNanos = timed ? ExecutionStats::wallClockNanos() : 0;
+    const int64_t startCpuNanos = timed ? ExecutionStats::threadCpuNanos() : 0;
+
     // execution lists for planfragments are cached by planfragment id
     try {
         setExecutorVectorForFragmentId(planfragmentId);
@@ -479,11 +486,17 @@ int VoltDBEngine::executePlanFragment(int64_t planfragmentId,
         m_executorContext->cleanupAllExecutors();
     }
     catch (const SerializableEEException &e) {
+        if (timed) {
+            recordFragmentStats(planfragmentId, startNanos, startCpuNanos, true);
+        }
         serializeException(e);
         resetExecutionMetadata();
         return ENGINE_ERRORCODE_ERROR;
     }
 
+    if (timed) {
+        recordFragmentStats(planfragmentId, startNanos, startCpuNanos, false);
+    }
     int64_t tuplesModified = m_tuplesModifiedStack.top();
     resetExecutionMetadata();
 
@@ -515,6 +528,18 @@ int VoltDBEngine::executePlanFragment(int64_t planfragmentId,
     return ENGINE_ERRORCODE_SUCCESS;
 }
 
+void VoltDBEngine::recordFragmentStats(int64_t planfragmentId, int64_t startNanos,
+                                       int64_t startCpuNanos, bool failed) {
+    const int64_t elapsedNanos = ExecutionStats::wallClockNanos() - startNanos;
+    const int64_t cpuNanos = ExecutionStats::threadCpuNanos() - startCpuNanos;
+    // The executor vector is not set if the plan failed to load
+    const int64_t tempTableMemory = m_currExecutorVec ?
+            m_currExecutorVec->limits().getPeakMemoryInBytes() : 0;
+    m_executionStats.recordFragment(planfragmentId, elapsedNanos, cpuNanos,
+                                    m_tuplesProcessedInFragment + m_tuplesProcessedSinceReport,
+                                    m_tuplesSentInFragment, tempTableMemory, failed);
+}
+
 void VoltDBEngine::resetExecutionMetadata() {
 
     if (m_tuplesModifiedStack.size() != 0) {
@@ -555,6 +580,7 @@ bool VoltDBEngine::send(Table* dependency) {
     if (!dependency->serializeTo(m_resultOutput))
         return false;
     m_numResultDependencies++;
+    m_tuplesSentInFragment += dependency->activeTupleCount();
     return true;
 }
 
@@ -970,8 +996,16 @@ VoltDBEngine::processCatalogAdditions(int64_t timestamp)
                     TableIndex *index = TableIndexFactory::getInstance(scheme);
                     assert(index);
 
-                    // all of the data should be added here
-                    persistenttable->addIndex(index);
+                    if (scheme.unique || scheme.type == COVERING_CELL_INDEX) {
+                        // all of the data should be added here, a unique index has to see
+                        // every tuple before it checks an insert and a geospatial index
+                        // can't be built in the background
+                        persistenttable->addIndex(index);
+                    }
+                    else {
+                        // the data is added between transactions by buildPendingIndexes()
+                        persistenttable->addIndexInBackground(index);
+                    }
 
                     // add the index to the stats source
                     index->getIndexStats()->configure(index->getName() + " stats",
@@ -1098,6 +1132,15 @@ VoltDBEngine::updateCatalog(const int64_t timestamp, const std::string &catalogP
         return false;
     }
 
+    // finish any index still being built so that the changes below see
+    // every index of each table
+    BOOST_FOREACH (LabeledTCD cd, m_catalogDelegates) {
+        PersistentTable *table = cd.second->getPersistentTable();
+        if (table) {
+            table->finishPendingIndexes();
+        }
+    }
+
     processCatalogDeletes(timestamp);
 
     if (processCatalogAdditions(timestamp) == false) {
@@ -1150,6 +1193,10 @@ VoltDBEngine::loadTable(int32_t tableId,
     try {
         table->loadTuplesFrom(serializeIn, NULL, returnUniqueViolations ? &m_resultOutput : NULL, shouldDRStream);
     } catch (const SerializableEEException &e) {
+        // A load inside a transaction is undone like any other failed write
+        if (getCurrentUndoQuantum() != NULL) {
+            throw;
+        }
         throwFatalException("%s", e.message().c_str());
     }
     return true;
@@ -1206,6 +1253,9 @@ void VoltDBEngine::rebuildTableCollections()
         m_drPartitionedConflictExportTable = NULL;
         m_drReplicatedConflictExportTable = NULL;
     }
+
+    // New tables from a catalog update or a truncate start without sharing
+    applyStringSharing();
 }
 
 void VoltDBEngine::setExecutorVectorForFragmentId(int64_t fragId)
@@ -1473,6 +1523,13 @@ int VoltDBEngine::getStats(int selector, int locators[], int numLocators,
                 (StatisticsSelectorType) selector,
                 locatorIds, interval, now);
             break;
+        case STATISTICS_SELECTOR_TYPE_STATEMENT:
+            // Always the counts since the last call; the frontend accumulates them
+            resultTable = m_executionStats.drainFragmentStats(m_database->relativeIndex());
+            break;
+        case STATISTICS_SELECTOR_TYPE_EXECUTOR:
+            resultTable = m_executionStats.drainExecutorStats(m_database->relativeIndex());
+            break;
         default:
             char message[256];
             snprintf(message, 256, "getStats() called with an unrecognized selector"
@@ -1847,6 +1904,40 @@ void VoltDBEngine::collectDRTupleStreamStateInfo() {
     }
 }
 
+/*
+ * Scan up to maxTuples tuples into the indexes that catalog updates left to
+ * be built in the background. Returns true if there is more to do.
+ */
+bool VoltDBEngine::buildPendingIndexes(int64_t maxTuples) {
+    bool completed = false;
+    bool remaining = false;
+    BOOST_FOREACH (LabeledTCD cd, m_catalogDelegates) {
+        PersistentTable *table = cd.second->getPersistentTable();
+        if (table == NULL || !table->hasPendingIndexes()) {
+            continue;
+        }
+        if (maxTuples > 0) {
+            maxTuples -= table->buildPendingIndexes(maxTuples);
+            completed |= !table->hasPendingIndexes();
+        }
+        remaining |= table->hasPendingIndexes();
+    }
+    if (completed) {
+        // register the stats sources of the indexes that went live
+        rebuildTableCollections();
+    }
+    return remaining;
+}
+
+void VoltDBEngine::applyStringSharing() {
+    BOOST_FOREACH (LabeledTCD cd, m_catalogDelegates) {
+        PersistentTable *table = cd.second->getPersistentTable();
+        if (table != NULL) {
+            table->setStringSharing(m_sharedStringTables.count(table->name()) != 0);
+        }
+    }
+}
+
 int64_t VoltDBEngine::applyBinaryLog(int64_t txnId,
                                   int64_t spHandle,
                                   int64_t lastCommittedSpHandle,
@@ -1921,6 +2012,33 @@ void VoltDBEngine::executeTask(TaskType taskType, ReferenceSerializeInputBE &tas
         }
         break;
     }
+    case TASK_TYPE_SET_TEMP_TABLE_SPILL: {
+        // Only affects plans loaded from now on
+        m_tempTableSpillDirectory = taskInfo.readTextString();
+        m_tempTableSpillLimit = taskInfo.readLong();
+        m_resultOutput.writeInt(0);
+        break;
+    }
+    case TASK_TYPE_SET_SHARED_STRING_TABLES: {
+        m_sharedStringTables.clear();
+        int32_t count = taskInfo.readInt();
+        for (int32_t i = 0; i < count; ++i) {
+            m_sharedStringTables.insert(taskInfo.readTextString());
+        }
+        applyStringSharing();
+        m_resultOutput.writeInt(0);
+        break;
+    }
+    case TASK_TYPE_SET_EXECUTION_TIMING:
+        m_executionStats.setEnabled(taskInfo.readInt() != 0);
+        m_resultOutput.writeInt(0);
+        break;
+    case TASK_TYPE_BUILD_PENDING_INDEXES: {
+        bool remaining = buildPendingIndexes(taskInfo.readLong());
+        m_resultOutput.writeInt(1);
+        m_resultOutput.writeBool(remaining);
+        break;
+    }
     default:
         throwFatalException("Unknown task type %d", taskType);
     }
@@ -55,6 +55,7 @@
 #include "logging/LogManager.h"
 #include "logging/LogProxy.h"
 #include "logging/StdoutLogProxy.h"
+#include "stats/ExecutionStats.h"
 #include "stats/StatsAgent.h"
 #include "storage/AbstractDRTupleStream.h"
 #include "storage/BinaryLogSinkWrapper.h"
@@ -64,6 +65,7 @@
 
 #include <cassert>
 #include <map>
+#include <set>
 #include <stack>
 #include <string>
 #include <vector>
@@ -261,6 +263,9 @@ class __attribute__((visibility("default"))) VoltDBEngine {
         // -------------------------------------------------
         voltdb::StatsAgent& getStatsManager() { return m_statsManager; }
 
+        /** Per fragment and per executor type timings, for the STATEMENT and EXECUTOR selectors */
+        voltdb::ExecutionStats& getExecutionStats() { return m_executionStats; }
+
         /**
          * Retrieve a set of statistics and place them into the result buffer as a set of VoltTables.
          * @param selector StatisticsSelectorType indicating what set of statistics should be retrieved
@@ -402,6 +407,14 @@ class __attribute__((visibility("default"))) VoltDBEngine {
             return (m_tempTableMemoryLimit * 3) / 4;
         }
 
+        const std::string& tempTableSpillDirectory() const {
+            return m_tempTableSpillDirectory;
+        }
+
+        int64_t tempTableSpillLimit() const {
+            return m_tempTableSpillLimit;
+        }
+
         int32_t getPartitionId() const {
             return m_partitionId;
         }
@@ -417,6 +430,10 @@ class __attribute__((visibility("default"))) VoltDBEngine {
 
         void collectDRTupleStreamStateInfo();
 
+        bool buildPendingIndexes(int64_t maxTuples);
+
+        void applyStringSharing();
+
         void setCurrentUndoQuantum(voltdb::UndoQuantum* undoQuantum);
 
         // -------------------------------------------------
@@ -452,6 +469,8 @@ class __attribute__((visibility("default"))) VoltDBEngine {
         void setExecutorVectorForFragmentId(int64_t fragId);
 
         bool checkTempTableCleanup(ExecutorVector * execsForFrag);
+        void recordFragmentStats(int64_t planfragmentId, int64_t startNanos,
+                                 int64_t startCpuNanos, bool failed);
         void resetExecutionMetadata();
 
         // -------------------------------------------------
@@ -477,6 +496,11 @@ class __attribute__((visibility("default"))) VoltDBEngine {
         boost::scoped_ptr<TheHashinator> m_hashinator;
         size_t m_startOfResultBuffer;
         int64_t m_tempTableMemoryLimit;
+        // Where temp tables over the memory limit spill to, empty if they may not spill
+        std::string m_tempTableSpillDirectory;
+        int64_t m_tempTableSpillLimit;
+        // Tables whose out of line strings are shared, see PersistentTable::setStringSharing()
+        std::set<std::string> m_sharedStringTables;
 
         /*
          * Catalog delegates hashed by path.
@@ -558,6 +582,11 @@ class __attribute__((visibility("default"))) VoltDBEngine {
         /** Stats manager for this execution engine **/
         voltdb::StatsAgent m_statsManager;
 
+        voltdb::ExecutionStats m_executionStats;
+
+        /** tuples in the result tables sent by the current fragment */
+        int64_t m_tuplesSentInFragment;
+
         /*
          * Pool for short lived strings that will not live past the return back to Java.
          */
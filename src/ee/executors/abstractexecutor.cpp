@@ -139,6 +139,33 @@ bool AbstractExecutor::init(VoltDBEngine* engine,
     return true;
 }
 
+bool AbstractExecutor::executeTimed(const NValueArray& params)
+{
+    // Only intermediate results count as input; a scan's persistent table does not.
+    int64_t tuplesIn = 0;
+    const std::vector<AbstractPlanNode::TableReference>& inputs = m_abstractNode->getInputTableRefs();
+    for (size_t ii = 0; ii < inputs.size(); ii++) {
+        if (inputs[ii].m_tempTable) {
+            tuplesIn += inputs[ii].m_tempTable->tempTableTupleCount();
+        }
+    }
+    const int64_t startNanos = ExecutionStats::wallClockNanos();
+
+    // run the executor
+    const bool result = p_execute(params);
+
+    const int64_t elapsedNanos = ExecutionStats::wallClockNanos() - startNanos;
+    int64_t tuplesOut = 0;
+    int64_t tempTableMemory = 0;
+    if (m_tmpOutputTable) {
+        tuplesOut = m_tmpOutputTable->tempTableTupleCount();
+        tempTableMemory = m_tmpOutputTable->allocatedTupleMemory();
+    }
+    m_engine->getExecutionStats().recordExecutor(m_abstractNode->getPlanNodeType(), elapsedNanos,
+                                                 tuplesIn, tuplesOut, tempTableMemory);
+    return result;
+}
+
 /**
  * Set up a multi-column temp output table for those executors that require one.
  * Called from p_init.
@@ -155,6 +155,10 @@ class AbstractExecutor {
     /** reference to the engine to call up to the top end */
     VoltDBEngine* m_engine;
 
+  private:
+    /** Run p_execute() and record its time and tuple counts in the engine's ExecutionStats */
+    bool executeTimed(const NValueArray& params);
+
 };
 
 
@@ -163,6 +167,10 @@ inline bool AbstractExecutor::execute(const NValueArray& params)
     assert(m_abstractNode);
     VOLT_TRACE("Starting execution of plannode(id=%d)...",  m_abstractNode->getPlanNodeId());
 
+    if (m_engine != NULL && m_engine->getExecutionStats().isEnabled()) {
+        return executeTimed(params);
+    }
+
     // run the executor
     return p_execute(params);
 }
@@ -53,6 +53,7 @@
 #include "plannodes/aggregatenode.h"
 #include "plannodes/limitnode.h"
 #include "storage/temptable.h"
+#include "storage/tablefactory.h"
 #include "storage/tableiterator.h"
 
 #include "boost/foreach.hpp"
@@ -798,6 +799,23 @@ TableTuple AggregateHashExecutor::p_execute_init(const NValueArray& params,
     return AggregateExecutorBase::p_execute_init(params, pmp, schema, newTempTable);
 }
 
+// Number of partitions the rows of groups that do not fit in memory are split into
+static const size_t HASH_AGGREGATE_SPILL_PARTITIONS = 16;
+// How many times the rows of a partition whose groups do not fit in memory
+// either are split again. The groups of the last level stay in memory,
+// so a group key so skewed that it never splits up runs into the memory limit.
+static const int HASH_AGGREGATE_MAX_SPILL_DEPTH = 4;
+// How many new groups to add between checks of the memory used for groups
+static const size_t HASH_AGGREGATE_MEMORY_CHECK_INTERVAL = 1024;
+
+bool AggregateHashExecutor::p_init(AbstractPlanNode* abstract_node, TempTableLimits* limits)
+{
+    m_limits = limits;
+    // Sized up front, the partitions of one level are in use while the next level is filled
+    m_spillPartitions.resize(HASH_AGGREGATE_MAX_SPILL_DEPTH);
+    return AggregateExecutorBase::p_init(abstract_node, limits);
+}
+
 bool AggregateHashExecutor::p_execute(const NValueArray& params)
 {
     // Input table
@@ -812,15 +830,101 @@ bool AggregateHashExecutor::p_execute(const NValueArray& params)
 
     TableTuple nextTuple = AggregateHashExecutor::p_execute_init(params, &pmp, inputSchema);
 
+    m_partitionThreshold = -1;
+    if (m_limits != NULL && m_limits->canSpill() && m_limits->getMemoryLimit() > 0) {
+        m_partitionThreshold = m_limits->getMemoryLimit() / 2;
+    }
+
     VOLT_TRACE("looping..");
+    aggregateRows(it, nextTuple, input_table, 0);
+    AggregateHashExecutor::p_execute_finish();
+
+    cleanupInputTempTable(input_table);
+    return true;
+}
+
+void AggregateHashExecutor::aggregateRows(TableIterator& it, TableTuple& nextTuple, Table* rowSource, int depth)
+{
+    bool partitioning = false;
     while (it.next(nextTuple)) {
         assert(m_earlyReturn == false); // hash aggregation can not early return for limit
+        if (partitioning) {
+            partitionTuple(nextTuple, depth);
+            continue;
+        }
+        size_t groupCount = m_hash.size();
         AggregateHashExecutor::p_execute_tuple(nextTuple);
+        if (m_partitionThreshold > 0 && depth < HASH_AGGREGATE_MAX_SPILL_DEPTH &&
+            m_hash.size() > groupCount &&
+            m_hash.size() % HASH_AGGREGATE_MEMORY_CHECK_INTERVAL == 0 &&
+            m_memoryPool.getAllocatedMemory() > m_partitionThreshold) {
+            VOLT_DEBUG("hash aggregate: %d groups in memory, partitioning the rest of the input at level %d",
+                       (int)m_hash.size(), depth);
+            std::vector<boost::shared_ptr<TempTable> >& partitions = m_spillPartitions[depth];
+            if (partitions.empty()) {
+                for (size_t ii = 0; ii < HASH_AGGREGATE_SPILL_PARTITIONS; ii++) {
+                    partitions.push_back(boost::shared_ptr<TempTable>(
+                            TableFactory::getCopiedTempTable(m_abstractNode->databaseId(),
+                                                             rowSource->name(),
+                                                             rowSource,
+                                                             m_limits)));
+                }
+            }
+            partitioning = true;
+        }
     }
-    AggregateHashExecutor::p_execute_finish();
+    if (partitioning) {
+        aggregateSpillPartitions(depth);
+    }
+}
 
-    cleanupInputTempTable(input_table);
-    return true;
+// Each level splits on a different mix of the key hash, since all the rows
+// of a partition agree on the bits the previous level split on.
+static size_t spillPartitionOf(size_t hash, int depth)
+{
+    uint64_t mixed = hash + static_cast<uint64_t>(depth + 1) * 0x9e3779b97f4a7c15ULL;
+    mixed ^= mixed >> 33;
+    mixed *= 0xff51afd7ed558ccdULL;
+    mixed ^= mixed >> 33;
+    mixed *= 0xc4ceb9fe1a85ec53ULL;
+    mixed ^= mixed >> 33;
+    return static_cast<size_t>(mixed % HASH_AGGREGATE_SPILL_PARTITIONS);
+}
+
+void AggregateHashExecutor::partitionTuple(TableTuple& nextTuple, int depth)
+{
+    m_pmp->countdownProgress();
+    initGroupByKeyTuple(nextTuple);
+    TableTuple& nextGroupByKeyTuple = m_nextGroupByKeyStorage;
+    HashAggregateMapType::const_iterator keyIter = m_hash.find(nextGroupByKeyTuple);
+    if (keyIter != m_hash.end()) {
+        // Groups already in memory keep aggregating there
+        advanceAggs(keyIter->second, nextTuple);
+        return;
+    }
+    size_t partition = spillPartitionOf(TableTupleHasher()(nextGroupByKeyTuple), depth);
+    m_spillPartitions[depth][partition]->insertTempTuple(nextTuple);
+}
+
+void AggregateHashExecutor::aggregateSpillPartitions(int depth)
+{
+    TableTuple spilledTuple(m_inputSchema);
+    BOOST_FOREACH(boost::shared_ptr<TempTable>& partition, m_spillPartitions[depth]) {
+        if (partition->isTempTableEmpty()) {
+            continue;
+        }
+        // All rows of a group are in the same partition, so the groups
+        // aggregated so far are complete. Emit them and reuse their memory.
+        insertGroupsAndClear();
+        m_memoryPool.purge();
+        TableTuple& nextGroupByKeyTuple = m_nextGroupByKeyStorage;
+        nextGroupByKeyTuple.move(NULL);
+
+        // The partition may hold more groups than fit, split it up again
+        TableIterator partitionIt = partition->iteratorDeletingAsWeGo();
+        aggregateRows(partitionIt, spilledTuple, partition.get(), depth + 1);
+        partition->deleteAllTuplesNonVirtual(false);
+    }
 }
 
 bool AggregateHashExecutor::p_execute_tuple(const TableTuple& nextTuple) {
@@ -865,9 +969,7 @@ bool AggregateHashExecutor::p_execute_tuple(const TableTuple& nextTuple) {
     return false;
 }
 
-void AggregateHashExecutor::p_execute_finish() {
-    VOLT_TRACE("finalizing..");
-
+void AggregateHashExecutor::insertGroupsAndClear() {
     // If there is no aggregation, results are already inserted already
     if (m_aggTypes.size() != 0) {
         for (HashAggregateMapType::const_iterator iter = m_hash.begin(); iter != m_hash.end(); iter++) {
@@ -878,9 +980,14 @@ void AggregateHashExecutor::p_execute_finish() {
             delete aggregateRow;
         }
     }
+    m_hash.clear();
+}
+
+void AggregateHashExecutor::p_execute_finish() {
+    VOLT_TRACE("finalizing..");
 
     // Clean up
-    m_hash.clear();
+    insertGroupsAndClear();
     AggregateExecutorBase::p_execute_finish();
 }
 
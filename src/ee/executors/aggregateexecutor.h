@@ -55,6 +55,8 @@
 #include "expressions/abstractexpression.h"
 #include "execution/ProgressMonitorProxy.h"
 
+#include "boost/shared_ptr.hpp"
+
 namespace voltdb {
 
 /*
@@ -181,6 +183,12 @@ public:
      */
     virtual bool p_execute_tuple(const TableTuple& nextTuple) = 0;
 
+    /**
+     * Return true when an inline LIMIT may stop the aggregation before
+     * the input runs out. Only valid after p_execute_init.
+     */
+    bool hasInlineLimit() const { return m_limit >= 0; }
+
     /**
      * Last method to insert the results to output table and clean up memory or variables.
      */
@@ -270,7 +278,7 @@ class AggregateHashExecutor : public AggregateExecutorBase
 {
 public:
     AggregateHashExecutor(VoltDBEngine* engine, AbstractPlanNode* abstract_node) :
-        AggregateExecutorBase(engine, abstract_node) { }
+        AggregateExecutorBase(engine, abstract_node), m_limits(NULL), m_partitionThreshold(-1) { }
 
     // empty destructor defined in .cpp file because of it is called virtually (not inline)
     // same reason for serial and partial
@@ -281,9 +289,32 @@ public:
     bool p_execute_tuple(const TableTuple& nextTuple);
     void p_execute_finish();
 
+protected:
+    virtual bool p_init(AbstractPlanNode*, TempTableLimits*);
+
 private:
     virtual bool p_execute(const NValueArray& params);
+
+    /// Insert the results of the groups in the hash into the output table and forget them.
+    void insertGroupsAndClear();
+
+    /*
+     * Hybrid hash aggregation, used when temp tables are allowed to spill:
+     * once the groups in memory outgrow half the memory limit, rows of groups
+     * that are not in the hash yet are set aside in spill partitions by group key hash,
+     * and each partition is aggregated on its own after the input is exhausted.
+     * A partition whose groups outgrow the memory again is split the same way,
+     * a few levels deep.
+     */
+    void aggregateRows(TableIterator& it, TableTuple& nextTuple, Table* rowSource, int depth);
+    void partitionTuple(TableTuple& nextTuple, int depth);
+    void aggregateSpillPartitions(int depth);
+
     HashAggregateMapType m_hash;
+    TempTableLimits* m_limits;
+    int64_t m_partitionThreshold;
+    // The spill partitions of each level
+    std::vector<std::vector<boost::shared_ptr<TempTable> > > m_spillPartitions;
 };
 
 /**
@@ -0,0 +1,307 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+#include "hashjoinexecutor.h"
+#include "common/debuglog.h"
+#include "common/common.h"
+#include "common/MiscUtil.h"
+#include "common/tabletuple.h"
+#include "common/ValuePeeker.hpp"
+#include "executors/aggregateexecutor.h"
+#include "execution/ProgressMonitorProxy.h"
+#include "expressions/abstractexpression.h"
+#include "storage/table.h"
+#include "storage/temptable.h"
+#include "storage/tableiterator.h"
+#include "plannodes/hashjoinnode.h"
+#include "plannodes/limitnode.h"
+
+#include "boost/functional/hash.hpp"
+
+using namespace std;
+using namespace voltdb;
+
+bool HashJoinExecutor::p_init(AbstractPlanNode* abstract_node,
+                              TempTableLimits* limits)
+{
+    VOLT_TRACE("init HashJoin Executor");
+
+    HashJoinPlanNode* node = dynamic_cast<HashJoinPlanNode*>(abstract_node);
+    assert(node);
+
+    // Create output table based on output schema from the plan
+    setTempOutputTable(limits);
+
+    assert(m_tmpOutputTable);
+
+    // NULL tuples for outer joins
+    JoinType join_type = node->getJoinType();
+    if (join_type == JOIN_TYPE_LEFT || join_type == JOIN_TYPE_FULL) {
+        Table* inner_table = node->getInputTable(1);
+        assert(inner_table);
+        m_null_inner_tuple.init(inner_table->schema());
+    }
+    if (join_type == JOIN_TYPE_FULL) {
+        Table* outer_table = node->getInputTable();
+        assert(outer_table);
+        m_null_outer_tuple.init(outer_table->schema());
+    }
+
+    // Inline aggregation can be serial, partial or hash
+    m_aggExec = voltdb::getInlineAggregateExecutor(m_abstractNode);
+
+    return true;
+}
+
+/**
+ * Hash the key of a tuple. Returns false if any key component is NULL,
+ * since such a key can never satisfy the equality it was derived from.
+ * Integer types are widened so that e.g. an INTEGER and a BIGINT key hash alike.
+ * FLOAT -0.0 is hashed as 0.0, which it equals despite the different bits.
+ */
+bool HashJoinExecutor::hashKey(const std::vector<AbstractExpression*>& hashExpressions,
+                               const TableTuple* outer_tuple,
+                               const TableTuple* inner_tuple,
+                               std::size_t& seed)
+{
+    seed = 0;
+    for (int ii = 0; ii < hashExpressions.size(); ii++) {
+        NValue value = hashExpressions[ii]->eval(outer_tuple, inner_tuple);
+        if (value.isNull()) {
+            return false;
+        }
+        ValueType type = ValuePeeker::peekValueType(value);
+        if (isIntegralType(type)) {
+            boost::hash_combine(seed, ValuePeeker::peekAsBigInt(value));
+        }
+        else if (type == VALUE_TYPE_DOUBLE) {
+            double key = ValuePeeker::peekDouble(value);
+            MiscUtil::hashCombineFloatingPoint(seed, key == 0.0 ? 0.0 : key);
+        }
+        else {
+            value.hashCombine(seed);
+        }
+    }
+    return true;
+}
+
+bool HashJoinExecutor::p_execute(const NValueArray &params) {
+    VOLT_DEBUG("executing HashJoin...");
+
+    HashJoinPlanNode* node = dynamic_cast<HashJoinPlanNode*>(m_abstractNode);
+    assert(node);
+    assert(node->getInputTableCount() == 2);
+
+    // output table must be a temp table
+    assert(m_tmpOutputTable);
+
+    Table* outer_table = node->getInputTable();
+    assert(outer_table);
+
+    Table* inner_table = node->getInputTable(1);
+    assert(inner_table);
+
+    VOLT_TRACE ("input table left:\n %s", outer_table->debug().c_str());
+    VOLT_TRACE ("input table right:\n %s", inner_table->debug().c_str());
+
+    AbstractExpression *preJoinPredicate = node->getPreJoinPredicate();
+    AbstractExpression *joinPredicate = node->getJoinPredicate();
+    AbstractExpression *wherePredicate = node->getWherePredicate();
+    const std::vector<AbstractExpression*>& outerHashExpressions = node->getOuterHashExpressions();
+    const std::vector<AbstractExpression*>& innerHashExpressions = node->getInnerHashExpressions();
+
+    // Join type
+    JoinType join_type = node->getJoinType();
+    assert(join_type == JOIN_TYPE_INNER || join_type == JOIN_TYPE_LEFT || join_type == JOIN_TYPE_FULL);
+
+    LimitPlanNode* limit_node = dynamic_cast<LimitPlanNode*>(node->getInlinePlanNode(PLAN_NODE_TYPE_LIMIT));
+    int limit = -1;
+    int offset = -1;
+    if (limit_node) {
+        limit_node->getLimitAndOffsetByReference(params, limit, offset);
+    }
+
+    int outer_cols = outer_table->columnCount();
+    int inner_cols = inner_table->columnCount();
+    TableTuple outer_tuple(node->getInputTable(0)->schema());
+    TableTuple inner_tuple(node->getInputTable(1)->schema());
+    const TableTuple& null_inner_tuple = m_null_inner_tuple.tuple();
+
+    int tuple_ctr = 0;
+    int tuple_skipped = 0;
+    ProgressMonitorProxy pmp(m_engine, this);
+
+    //
+    // Build phase: hash the whole inner table. The inner tuples are not
+    // deleted until the end of the join, so their addresses stay valid.
+    //
+    m_hashTable.clear();
+    m_nullKeyInnerTuples.clear();
+    TableIterator iterator1 = inner_table->iterator();
+    while (iterator1.next(inner_tuple)) {
+        pmp.countdownProgress();
+        std::size_t hash;
+        if (hashKey(innerHashExpressions, NULL, &inner_tuple, hash)) {
+            InnerTupleEntry entry = { inner_tuple.address(), false };
+            m_hashTable.insert(HashJoinMapType::value_type(hash, entry));
+        }
+        else if (join_type == JOIN_TYPE_FULL) {
+            m_nullKeyInnerTuples.push_back(inner_tuple.address());
+        }
+    }
+
+    TableTuple join_tuple;
+    if (m_aggExec != NULL) {
+        VOLT_TRACE("Init inline aggregate...");
+        const TupleSchema * aggInputSchema = node->getTupleSchemaPreAgg();
+        join_tuple = m_aggExec->p_execute_init(params, &pmp, aggInputSchema, m_tmpOutputTable);
+    } else {
+        join_tuple = m_tmpOutputTable->tempTuple();
+    }
+
+    //
+    // Probe phase
+    //
+    TableIterator iterator0 = outer_table->iteratorDeletingAsWeGo();
+    bool earlyReturned = false;
+    while ((limit == -1 || tuple_ctr < limit) && iterator0.next(outer_tuple)) {
+        pmp.countdownProgress();
+
+        // populate output table's temp tuple with outer table's values
+        join_tuple.setNValues(0, outer_tuple, 0, outer_cols);
+
+        // did this loop body find at least one match for this tuple?
+        bool match = false;
+        std::size_t hash;
+        // For outer joins if outer tuple fails pre-join predicate
+        // (join expression based on the outer table only)
+        // it can't match any of inner tuples
+        if ((preJoinPredicate == NULL || preJoinPredicate->eval(&outer_tuple, NULL).isTrue()) &&
+            hashKey(outerHashExpressions, &outer_tuple, NULL, hash)) {
+
+            std::pair<HashJoinMapType::iterator, HashJoinMapType::iterator> bucket =
+                m_hashTable.equal_range(hash);
+            for (HashJoinMapType::iterator it = bucket.first;
+                 (limit == -1 || tuple_ctr < limit) && it != bucket.second; ++it) {
+                pmp.countdownProgress();
+                inner_tuple.move(it->second.m_address);
+                // The bucket may hold hash collisions, the join predicate sorts them out
+                if (joinPredicate == NULL || joinPredicate->eval(&outer_tuple, &inner_tuple).isTrue()) {
+                    match = true;
+                    it->second.m_matched = true;
+                    // Filter the joined tuple
+                    if (wherePredicate == NULL || wherePredicate->eval(&outer_tuple, &inner_tuple).isTrue()) {
+                        // Check if we have to skip this tuple because of offset
+                        if (tuple_skipped < offset) {
+                            tuple_skipped++;
+                            continue;
+                        }
+                        ++tuple_ctr;
+                        // Matched! Complete the joined tuple with the inner column values.
+                        join_tuple.setNValues(outer_cols, inner_tuple, 0, inner_cols);
+                        if (m_aggExec != NULL) {
+                            if (m_aggExec->p_execute_tuple(join_tuple)) {
+                                // Get enough rows for LIMIT
+                                earlyReturned = true;
+                                break;
+                            }
+                        } else {
+                            m_tmpOutputTable->insertTempTuple(join_tuple);
+                            pmp.countdownProgress();
+                        }
+                    }
+                }
+            } // END BUCKET LOOP
+        } // END IF PRE JOIN CONDITION
+
+        //
+        // Left and Full Outer Join, pad the unmatched outer tuple
+        //
+        if (join_type != JOIN_TYPE_INNER && !match && !earlyReturned && (limit == -1 || tuple_ctr < limit)) {
+            // Still needs to pass the filter
+            if (wherePredicate == NULL || wherePredicate->eval(&outer_tuple, &null_inner_tuple).isTrue()) {
+                // Check if we have to skip this tuple because of offset
+                if (tuple_skipped < offset) {
+                    tuple_skipped++;
+                    continue;
+                }
+                ++tuple_ctr;
+                join_tuple.setNValues(outer_cols, null_inner_tuple, 0, inner_cols);
+                if (m_aggExec != NULL) {
+                    if (m_aggExec->p_execute_tuple(join_tuple)) {
+                        earlyReturned = true;
+                    }
+                } else {
+                    m_tmpOutputTable->insertTempTuple(join_tuple);
+                    pmp.countdownProgress();
+                }
+            }
+        } // END IF OUTER JOIN
+
+        if (earlyReturned) {
+            // Get enough rows for LIMIT inlined with aggregation
+            break;
+        }
+
+    } // END PROBE LOOP
+
+    //
+    // Full Outer Join, pad the inner tuples that never matched
+    //
+    if (join_type == JOIN_TYPE_FULL && !earlyReturned) {
+        const TableTuple& null_outer_tuple = m_null_outer_tuple.tuple();
+        std::vector<char*> unmatched(m_nullKeyInnerTuples);
+        for (HashJoinMapType::const_iterator it = m_hashTable.begin(); it != m_hashTable.end(); ++it) {
+            if (!it->second.m_matched) {
+                unmatched.push_back(it->second.m_address);
+            }
+        }
+        join_tuple.setNValues(0, null_outer_tuple, 0, outer_cols);
+        for (int ii = 0; ii < unmatched.size() && (limit == -1 || tuple_ctr < limit); ii++) {
+            pmp.countdownProgress();
+            inner_tuple.move(unmatched[ii]);
+            if (wherePredicate == NULL || wherePredicate->eval(&null_outer_tuple, &inner_tuple).isTrue()) {
+                if (tuple_skipped < offset) {
+                    tuple_skipped++;
+                    continue;
+                }
+                ++tuple_ctr;
+                join_tuple.setNValues(outer_cols, inner_tuple, 0, inner_cols);
+                if (m_aggExec != NULL) {
+                    if (m_aggExec->p_execute_tuple(join_tuple)) {
+                        break;
+                    }
+                } else {
+                    m_tmpOutputTable->insertTempTuple(join_tuple);
+                    pmp.countdownProgress();
+                }
+            }
+        }
+    } // END IF FULL OUTER JOIN
+
+    if (m_aggExec != NULL) {
+        m_aggExec->p_execute_finish();
+    }
+
+    // Drop the references to the inner tuples before they get deleted
+    m_hashTable.clear();
+    m_nullKeyInnerTuples.clear();
+
+    cleanupInputTempTable(inner_table);
+    cleanupInputTempTable(outer_table);
+
+    return (true);
+}
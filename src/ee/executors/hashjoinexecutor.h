@@ -0,0 +1,80 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+#ifndef HASHJOINEXECUTOR_H
+#define HASHJOINEXECUTOR_H
+
+#include "common/common.h"
+#include "common/tabletuple.h"
+#include "executors/abstractexecutor.h"
+
+#include "boost/unordered_map.hpp"
+
+#include <vector>
+
+namespace voltdb {
+
+class AbstractExpression;
+class AggregateExecutorBase;
+
+/**
+ * Executor for PLAN_NODE_TYPE_HASHJOIN.
+ *
+ * The inner input is hashed once on the inner hash expressions, then each outer
+ * tuple probes the hash table with the outer hash expressions. Only the inner tuples
+ * in the probed bucket are tested against the join predicate, which turns the
+ * O(N*M) nested loop into O(N+M) for equi-joins.
+ * Supports inner, left outer and full outer joins, inline LIMIT and inline aggregation.
+ */
+class HashJoinExecutor : public AbstractExecutor {
+    public:
+        HashJoinExecutor(VoltDBEngine *engine, AbstractPlanNode* abstract_node) :
+            AbstractExecutor(engine, abstract_node), m_aggExec(NULL) { }
+    protected:
+        bool p_init(AbstractPlanNode*,
+                    TempTableLimits* limits);
+        bool p_execute(const NValueArray &params);
+
+    private:
+        // An inner tuple in the hash table and whether it joined with any outer tuple.
+        // The flag is only needed to null-pad the unmatched inner tuples of a full join.
+        struct InnerTupleEntry {
+            char* m_address;
+            bool m_matched;
+        };
+
+        typedef boost::unordered_multimap<std::size_t, InnerTupleEntry> HashJoinMapType;
+
+        static bool hashKey(const std::vector<AbstractExpression*>& hashExpressions,
+                            const TableTuple* outer_tuple,
+                            const TableTuple* inner_tuple,
+                            std::size_t& seed);
+
+        StandAloneTupleStorage m_null_outer_tuple;
+        StandAloneTupleStorage m_null_inner_tuple;
+
+        HashJoinMapType m_hashTable;
+
+        // Inner tuples with a NULL key, they can't match but a full join still outputs them
+        std::vector<char*> m_nullKeyInnerTuples;
+
+        AggregateExecutorBase* m_aggExec;
+};
+
+}
+
+#endif
@@ -43,6 +43,7 @@
  * OTHER DEALINGS IN THE SOFTWARE.
  */
 
+#include <cstring>
 #include <vector>
 #include <string>
 #include <stack>
@@ -147,9 +148,79 @@ bool NestLoopIndexExecutor::p_init(AbstractPlanNode* abstractNode,
     }
 
     m_indexValues.init(index->getKeySchema());
+
+    if (m_lookupType == INDEX_LOOKUP_TYPE_EQ && num_of_searchkeys > 0) {
+        const TupleSchema* keySchema = index->getKeySchema();
+        const size_t keyLength = keySchema->tupleLength() + TUPLE_HEADER_SIZE;
+        m_keyBatch.assign(PROBE_BATCH_SIZE * keyLength, 0);
+        m_batchKeys.assign(PROBE_BATCH_SIZE, TableTuple(keySchema));
+        for (int ii = 0; ii < PROBE_BATCH_SIZE; ++ii) {
+            m_batchKeys[ii].move(&m_keyBatch[ii * keyLength]);
+        }
+        m_batchCursors.assign(PROBE_BATCH_SIZE, IndexCursor(index->getTupleSchema()));
+        m_batchProbes.assign(PROBE_BATCH_SIZE, -1);
+    }
     return true;
 }
 
+/**
+ * Copy up to PROBE_BATCH_SIZE outer rows and look up the search keys of the
+ * ones that pass the pre-join predicate. Returns the number of rows copied.
+ * Only used for equality lookups, where a key that can't be set (NULL or
+ * out of range) means the row has no match.
+ */
+int NestLoopIndexExecutor::loadProbeBatch(TableIterator &outerIterator, const TupleSchema *outerSchema,
+                                          AbstractExpression *prejoinExpression, TableIndex *index)
+{
+    const size_t outerLength = outerSchema->tupleLength() + TUPLE_HEADER_SIZE;
+    m_outerBatch.resize(PROBE_BATCH_SIZE * outerLength);
+    const int num_of_searchkeys = static_cast <int> (m_indexNode->getSearchKeyExpressions().size());
+
+    TableTuple scanned(outerSchema);
+    TableTuple outer_tuple(outerSchema);
+    int rows = 0;
+    int probes = 0;
+    while (rows < PROBE_BATCH_SIZE && outerIterator.next(scanned)) {
+        outer_tuple.move(&m_outerBatch[rows * outerLength]);
+        ::memcpy(outer_tuple.address(), scanned.address(), outerLength);
+        m_batchProbes[rows] = -1;
+        ++rows;
+
+        if (prejoinExpression != NULL && !prejoinExpression->eval(&outer_tuple, NULL).isTrue()) {
+            continue;
+        }
+        TableTuple& index_values = m_batchKeys[probes];
+        index_values.setAllNulls();
+        bool keyException = false;
+        for (int ctr = 0; ctr < num_of_searchkeys; ctr++) {
+            NValue candidateValue = m_indexNode->getSearchKeyExpressions()[ctr]->eval(&outer_tuple, NULL);
+            if (candidateValue.isNull()) {
+                keyException = true;
+                break;
+            }
+            try {
+                index_values.setNValue(ctr, candidateValue);
+            }
+            catch (const SQLException &e) {
+                // An equality key that doesn't fit the index key can't match
+                if ((e.getInternalFlags() & (SQLException::TYPE_OVERFLOW | SQLException::TYPE_UNDERFLOW | SQLException::TYPE_VAR_LENGTH_MISMATCH)) == 0) {
+                    throw e;
+                }
+                keyException = true;
+                break;
+            }
+        }
+        if (!keyException) {
+            m_batchProbes[rows - 1] = probes++;
+        }
+    }
+
+    if (probes > 0) {
+        index->moveToKeys(&m_batchKeys[0], &m_batchCursors[0], probes);
+    }
+    return rows;
+}
+
 
 bool NestLoopIndexExecutor::p_execute(const NValueArray &params)
 {
@@ -280,8 +351,28 @@ bool NestLoopIndexExecutor::p_execute(const NValueArray &params)
 
     bool earlyReturned = false;
 
+    // Equality lookups of a batch of outer rows are done up front
+    const bool batchProbes = (m_lookupType == INDEX_LOOKUP_TYPE_EQ && num_of_searchkeys > 0);
+    int batchRows = 0;
+    int batchNext = 0;
+
     VOLT_TRACE("<num_of_outer_cols>: %d\n", num_of_outer_cols);
-    while ((limit == -1 || tuple_ctr < limit) && outer_iterator.next(outer_tuple)) {
+    while (limit == -1 || tuple_ctr < limit) {
+        int probe = -1;
+        if (batchProbes) {
+            if (batchNext == batchRows) {
+                batchRows = loadProbeBatch(outer_iterator, outer_table->schema(), prejoin_expression, index);
+                batchNext = 0;
+                if (batchRows == 0) {
+                    break;
+                }
+            }
+            outer_tuple.move(&m_outerBatch[batchNext * outer_tuple.tupleLength()]);
+            probe = m_batchProbes[batchNext++];
+        }
+        else if (!outer_iterator.next(outer_tuple)) {
+            break;
+        }
         VOLT_TRACE("outer_tuple:%s",
                    outer_tuple.debug(outer_table->name()).c_str());
         pmp.countdownProgress();
@@ -294,8 +385,11 @@ bool NestLoopIndexExecutor::p_execute(const NValueArray &params)
         // For outer joins if outer tuple fails pre-join predicate
         // (join expression based on the outer table only)
         // it can't match any of inner tuples
-        if (prejoin_expression == NULL || prejoin_expression->eval(&outer_tuple, NULL).isTrue()) {
-            int activeNumOfSearchKeys = num_of_searchkeys;
+        // Batched rows were checked when their keys were looked up
+        if (batchProbes ? (probe >= 0) :
+                (prejoin_expression == NULL || prejoin_expression->eval(&outer_tuple, NULL).isTrue())) {
+            // The key of a batched row is already set
+            int activeNumOfSearchKeys = batchProbes ? 0 : num_of_searchkeys;
             VOLT_TRACE ("<Nested Loop Index exec, WHILE-LOOP...> Number of searchKeys: %d \n", num_of_searchkeys);
             IndexLookupType localLookupType = m_lookupType;
             SortDirectionType localSortDirection = m_sortDirection;
@@ -425,7 +519,12 @@ bool NestLoopIndexExecutor::p_execute(const NValueArray &params)
                 if (num_of_searchkeys > 0)
                 {
                     if (localLookupType == INDEX_LOOKUP_TYPE_EQ) {
-                        index->moveToKey(&index_values, indexCursor);
+                        if (batchProbes) {
+                            indexCursor = m_batchCursors[probe];
+                        }
+                        else {
+                            index->moveToKey(&index_values, indexCursor);
+                        }
                     }
                     else if (localLookupType == INDEX_LOOKUP_TYPE_GT) {
                         index->moveToGreaterThanKey(&index_values, indexCursor);
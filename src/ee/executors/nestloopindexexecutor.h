@@ -46,9 +46,11 @@
 #ifndef HSTORENESTLOOPINDEXEXECUTOR_H
 #define HSTORENESTLOOPINDEXEXECUTOR_H
 
+#include <vector>
 #include "common/common.h"
 #include "common/valuevector.h"
 #include "common/tabletuple.h"
+#include "indexes/tableindex.h"
 #include "expressions/abstractexpression.h"
 #include "executors/abstractexecutor.h"
 
@@ -61,7 +63,7 @@ class AggregateExecutorBase;
 class PersistentTable;
 class Table;
 class TempTable;
-class TableIndex;
+class TableIterator;
 
 /**
  * Nested loop for IndexScan.
@@ -87,6 +89,9 @@ protected:
                 TempTableLimits* limits);
     bool p_execute(const NValueArray &params);
 
+    int loadProbeBatch(TableIterator &outerIterator, const TupleSchema *outerSchema,
+                       AbstractExpression *prejoinExpression, TableIndex *index);
+
     IndexScanPlanNode* m_indexNode;
     IndexLookupType m_lookupType;
     JoinType m_joinType;
@@ -95,6 +100,17 @@ protected:
     StandAloneTupleStorage m_null_tuple;
     StandAloneTupleStorage m_indexValues;
     AggregateExecutorBase* m_aggExec;
+
+    // Equality lookups are done for a batch of outer rows at a time, see
+    // TableIndex::moveToKeys(). The batched rows are copied, because the
+    // outer temp table frees its blocks as they are scanned.
+    static const int PROBE_BATCH_SIZE = 64;
+    std::vector<char> m_outerBatch;
+    std::vector<char> m_keyBatch;
+    std::vector<TableTuple> m_batchKeys;
+    std::vector<IndexCursor> m_batchCursors;
+    // The search key of each batched outer row, -1 if it can't match
+    std::vector<int> m_batchProbes;
 };
 
 }
@@ -49,6 +49,7 @@
 #include "common/tabletuple.h"
 #include "common/FatalException.hpp"
 #include "execution/ProgressMonitorProxy.h"
+#include "executors/mergereceiveexecutor.h"
 #include "plannodes/orderbynode.h"
 #include "plannodes/limitnode.h"
 #include "storage/table.h"
@@ -143,14 +144,33 @@ OrderByExecutor::p_execute(const NValueArray &params)
                input_table->debug().c_str());
 
 
+    AbstractExecutor::TupleComparer comp(node->getSortExpressions(), node->getSortDirections());
+    TempTable* temp_input_table = dynamic_cast<TempTable*>(input_table);
     if (limit >= 0 && xs.begin() + limit + offset < xs.end()) {
         // partial sort
-        partial_sort(xs.begin(), xs.begin() + limit + offset, xs.end(),
-                AbstractExecutor::TupleComparer(node->getSortExpressions(), node->getSortDirections()));
+        partial_sort(xs.begin(), xs.begin() + limit + offset, xs.end(), comp);
+    } else if (temp_input_table != NULL && temp_input_table->spilledBlockCount() > 0) {
+        // The input did not fit in memory. Sorting it all at once would touch
+        // spilled blocks at random, so sort runs of consecutive blocks that fit
+        // in half the memory limit and merge them into the output instead.
+        int64_t tupleSize = input_table->schema()->tupleLength() + TUPLE_HEADER_SIZE;
+        int64_t runLength = std::max(int64_t(1),
+                temp_input_table->m_limits->getMemoryLimit() / 2 / tupleSize);
+        vector<int64_t> runLengths;
+        for (vector<TableTuple>::iterator runStart = xs.begin(); runStart != xs.end(); ) {
+            vector<TableTuple>::iterator runEnd =
+                (xs.end() - runStart > runLength) ? runStart + runLength : xs.end();
+            sort(runStart, runEnd, comp);
+            runLengths.push_back(runEnd - runStart);
+            runStart = runEnd;
+        }
+        VOLT_DEBUG("OrderBy merging %d sorted runs of spilled input", (int)runLengths.size());
+        MergeReceiveExecutor::merge_sort(xs, runLengths, comp, limit, offset, NULL, output_table, &pmp);
+        cleanupInputTempTable(input_table);
+        return true;
     } else {
         // full sort
-        sort(xs.begin(), xs.end(),
-                AbstractExecutor::TupleComparer(node->getSortExpressions(), node->getSortDirections()));
+        sort(xs.begin(), xs.end(), comp);
     }
 
     int tuple_ctr = 0;
@@ -91,7 +91,8 @@ bool ProjectionExecutor::p_init(AbstractPlanNode *abstractNode,
         expression_array_ptr[ctr] = node->getOutputColumnExpressions()[ctr];
         needs_substitute_ptr[ctr] = node->getOutputColumnExpressions()[ctr]->hasParameter();
     }
-
+    m_batchEvaluable = (all_tuple_array == NULL && all_param_array == NULL &&
+                        AbstractExpression::isBatchEvaluable(node->getOutputColumnExpressions()));
 
     output_table = dynamic_cast<TempTable*>(node->getOutputTable()); //output table should be temptable
 
@@ -132,6 +133,11 @@ bool ProjectionExecutor::p_execute(const NValueArray &params) {
     //
     TableIterator iterator = input_table->iteratorDeletingAsWeGo();
     assert (tuple.sizeInValues() == input_table->columnCount());
+    if (m_batchEvaluable) {
+        executeBatches(iterator);
+        cleanupInputTempTable(input_table);
+        return (true);
+    }
     while (iterator.next(tuple)) {
         //
         // Project (or replace) values from input tuple
@@ -162,6 +168,32 @@ bool ProjectionExecutor::p_execute(const NValueArray &params) {
     return (true);
 }
 
+void ProjectionExecutor::executeBatches(TableIterator &iterator) {
+    const int batchSize = AbstractExpression::BATCH_SIZE;
+    std::vector<TableTuple> &batch = m_batch;
+    batch.assign(batchSize, tuple);
+    std::vector<std::vector<NValue> > &columnResults = m_columnResults;
+    columnResults.resize(m_columnCount);
+    for (int ctr = 0; ctr < m_columnCount; ++ctr) {
+        columnResults[ctr].resize(batchSize);
+    }
+
+    int count;
+    while ((count = iterator.nextBatch(&batch[0], batchSize)) > 0) {
+        // Evaluate each output column for the whole batch, then assemble the rows
+        for (int ctr = m_columnCount - 1; ctr >= 0; --ctr) {
+            expression_array[ctr]->evalBatch(&batch[0], count, &columnResults[ctr][0]);
+        }
+        TableTuple &temp_tuple = output_table->tempTuple();
+        for (int ii = 0; ii < count; ++ii) {
+            for (int ctr = m_columnCount - 1; ctr >= 0; --ctr) {
+                temp_tuple.setNValue(ctr, columnResults[ctr][ii]);
+            }
+            output_table->insertTupleNonVirtual(temp_tuple);
+        }
+    }
+}
+
 ProjectionExecutor::~ProjectionExecutor() {
 }
 
@@ -58,6 +58,7 @@ namespace voltdb {
 class AbstractExpression;
 class TempTable;
 class Table;
+class TableIterator;
 
 /**
  *
@@ -66,6 +67,7 @@ class ProjectionExecutor : public AbstractExecutor {
     public:
         ProjectionExecutor(VoltDBEngine *engine, AbstractPlanNode* abstract_node) : AbstractExecutor(engine, abstract_node) {
             output_table = NULL;
+            m_batchEvaluable = false;
         }
         ~ProjectionExecutor();
     protected:
@@ -74,6 +76,9 @@ class ProjectionExecutor : public AbstractExecutor {
         bool p_execute(const NValueArray &params);
 
     private:
+        // Project the input a batch of tuples at a time, see AbstractExpression::evalBatch
+        void executeBatches(TableIterator &iterator);
+
         TempTable* output_table;
         int m_columnCount;
         boost::shared_array<int> all_tuple_array_ptr;
@@ -86,6 +91,11 @@ class ProjectionExecutor : public AbstractExecutor {
 
         boost::shared_array<AbstractExpression*> expression_array_ptr;
         AbstractExpression** expression_array;
+        bool m_batchEvaluable;
+
+        // Batch buffers, kept across executions so that projections don't allocate them
+        std::vector<TableTuple> m_batch;
+        std::vector<std::vector<NValue> > m_columnResults;
 };
 
 }
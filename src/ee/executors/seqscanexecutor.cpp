@@ -200,59 +200,76 @@ bool SeqScanExecutor::p_execute(const NValueArray &params) {
             temp_tuple = output_temp_table->tempTuple();
         }
 
-        while ((limit == -1 || tuple_ctr < limit) && iterator.next(tuple))
+        //
+        // OPTIMIZATION: BATCH EVALUATION
+        // Without a limit that could stop the scan early, evaluate the
+        // predicate and the projection a batch of tuples at a time.
+        //
+        if (limit_node == NULL &&
+            (m_aggExec == NULL || ! m_aggExec->hasInlineLimit()) &&
+            (predicate != NULL || projection_node != NULL) &&
+            (predicate == NULL || predicate->isBatchEvaluable()) &&
+            (projection_node == NULL ||
+             AbstractExpression::isBatchEvaluable(projection_node->getOutputColumnExpressions())))
         {
-            VOLT_TRACE("INPUT TUPLE: %s, %d/%d\n",
-                       tuple.debug(input_table->name()).c_str(), tuple_ctr,
-                       (int)input_table->activeTupleCount());
-            pmp.countdownProgress();
-
-            //
-            // For each tuple we need to evaluate it against our predicate
-            //
-            if (predicate == NULL || predicate->eval(&tuple, NULL).isTrue())
+            executeBatches(input_table, iterator, predicate, projection_node,
+                           output_temp_table, temp_tuple, pmp);
+        }
+        else {
+            while ((limit == -1 || tuple_ctr < limit) && iterator.next(tuple))
             {
-                // Check if we have to skip this tuple because of offset
-                if (tuple_skipped < offset) {
-                    tuple_skipped++;
-                    continue;
-                }
-                ++tuple_ctr;
+                VOLT_TRACE("INPUT TUPLE: %s, %d/%d\n",
+                           tuple.debug(input_table->name()).c_str(), tuple_ctr,
+                           (int)input_table->activeTupleCount());
+                pmp.countdownProgress();
 
                 //
-                // Nested Projection
-                // Project (or replace) values from input tuple
+                // For each tuple we need to evaluate it against our predicate
                 //
-                if (projection_node != NULL)
+                if (predicate == NULL || predicate->eval(&tuple, NULL).isTrue())
                 {
-                    VOLT_TRACE("inline projection...");
-                    for (int ctr = 0; ctr < num_of_columns; ctr++) {
-                        NValue value = projection_node->getOutputColumnExpressions()[ctr]->eval(&tuple, NULL);
-                        temp_tuple.setNValue(ctr, value);
+                    // Check if we have to skip this tuple because of offset
+                    if (tuple_skipped < offset) {
+                        tuple_skipped++;
+                        continue;
                     }
+                    ++tuple_ctr;
 
-                    if (m_aggExec != NULL) {
-                        if (m_aggExec->p_execute_tuple(temp_tuple)) {
-                            break;
+                    //
+                    // Nested Projection
+                    // Project (or replace) values from input tuple
+                    //
+                    if (projection_node != NULL)
+                    {
+                        VOLT_TRACE("inline projection...");
+                        for (int ctr = 0; ctr < num_of_columns; ctr++) {
+                            NValue value = projection_node->getOutputColumnExpressions()[ctr]->eval(&tuple, NULL);
+                            temp_tuple.setNValue(ctr, value);
+                        }
+
+                        if (m_aggExec != NULL) {
+                            if (m_aggExec->p_execute_tuple(temp_tuple)) {
+                                break;
+                            }
+                        } else {
+                            output_temp_table->insertTupleNonVirtual(temp_tuple);
                         }
-                    } else {
-                        output_temp_table->insertTupleNonVirtual(temp_tuple);
                     }
-                }
-                else
-                {
-                    if (m_aggExec != NULL) {
-                        if (m_aggExec->p_execute_tuple(tuple)) {
-                            break;
+                    else
+                    {
+                        if (m_aggExec != NULL) {
+                            if (m_aggExec->p_execute_tuple(tuple)) {
+                                break;
+                            }
+                        } else {
+                            //
+                            // Insert the tuple into our output table
+                            //
+                            output_temp_table->insertTupleNonVirtual(tuple);
                         }
-                    } else {
-                        //
-                        // Insert the tuple into our output table
-                        //
-                        output_temp_table->insertTupleNonVirtual(tuple);
                     }
+                    pmp.countdownProgress();
                 }
-                pmp.countdownProgress();
             }
         }
 
@@ -268,3 +285,83 @@ bool SeqScanExecutor::p_execute(const NValueArray &params) {
 
     return true;
 }
+
+void SeqScanExecutor::executeBatches(Table *input_table,
+                                     TableIterator &iterator,
+                                     AbstractExpression *predicate,
+                                     ProjectionPlanNode *projection_node,
+                                     TempTable *output_temp_table,
+                                     TableTuple &temp_tuple,
+                                     ProgressMonitorProxy &pmp)
+{
+    const int batchSize = AbstractExpression::BATCH_SIZE;
+    std::vector<TableTuple> &batch = m_batch;
+    batch.assign(batchSize, TableTuple(input_table->schema()));
+    std::vector<TableTuple> &qualified = m_qualified;
+    qualified.reserve(batchSize);
+    std::vector<NValue> &predicateResults = m_predicateResults;
+    if (predicate != NULL) {
+        predicateResults.resize(batchSize);
+    }
+
+    int num_of_columns = 0;
+    std::vector<std::vector<NValue> > &columnResults = m_columnResults;
+    if (projection_node != NULL) {
+        num_of_columns = static_cast<int>(projection_node->getOutputColumnExpressions().size());
+        columnResults.resize(num_of_columns);
+        for (int ctr = 0; ctr < num_of_columns; ctr++) {
+            columnResults[ctr].resize(batchSize);
+        }
+    }
+
+    int count;
+    while ((count = iterator.nextBatch(&batch[0], batchSize)) > 0) {
+        TableTuple *tuples = &batch[0];
+        int qualifiedCount = count;
+        if (predicate != NULL) {
+            predicate->evalBatch(tuples, count, &predicateResults[0]);
+            qualified.clear();
+            for (int ii = 0; ii < count; ++ii) {
+                pmp.countdownProgress();
+                if (predicateResults[ii].isTrue()) {
+                    qualified.push_back(batch[ii]);
+                }
+            }
+            qualifiedCount = static_cast<int>(qualified.size());
+            if (qualifiedCount == 0) {
+                continue;
+            }
+            tuples = &qualified[0];
+        }
+        else {
+            for (int ii = 0; ii < count; ++ii) {
+                pmp.countdownProgress();
+            }
+        }
+
+        if (projection_node != NULL) {
+            VOLT_TRACE("inline projection of %d tuples...", qualifiedCount);
+            for (int ctr = 0; ctr < num_of_columns; ctr++) {
+                projection_node->getOutputColumnExpressions()[ctr]->evalBatch(
+                        tuples, qualifiedCount, &columnResults[ctr][0]);
+            }
+        }
+
+        for (int ii = 0; ii < qualifiedCount; ++ii) {
+            TableTuple *output = &tuples[ii];
+            if (projection_node != NULL) {
+                for (int ctr = 0; ctr < num_of_columns; ctr++) {
+                    temp_tuple.setNValue(ctr, columnResults[ctr][ii]);
+                }
+                output = &temp_tuple;
+            }
+            if (m_aggExec != NULL) {
+                // Without an inline limit the aggregate never stops the scan
+                m_aggExec->p_execute_tuple(*output);
+            } else {
+                output_temp_table->insertTupleNonVirtual(*output);
+            }
+            pmp.countdownProgress();
+        }
+    }
+}
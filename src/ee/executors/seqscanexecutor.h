@@ -48,6 +48,7 @@
 
 #include "common/common.h"
 #include "common/valuevector.h"
+#include "common/tabletuple.h"
 #include "executors/abstractexecutor.h"
 #include "execution/VoltDBEngine.h"
 
@@ -56,6 +57,11 @@ namespace voltdb
     class UndoLog;
     class ReadWriteSet;
     class AggregateExecutorBase;
+    class ProgressMonitorProxy;
+    class ProjectionPlanNode;
+    class Table;
+    class TableIterator;
+    class TempTable;
 
     class SeqScanExecutor : public AbstractExecutor {
     public:
@@ -69,8 +75,21 @@ namespace voltdb
         bool p_execute(const NValueArray& params);
 
     private:
+        void executeBatches(Table *input_table,
+                            TableIterator &iterator,
+                            AbstractExpression *predicate,
+                            ProjectionPlanNode *projection_node,
+                            TempTable *output_temp_table,
+                            TableTuple &temp_tuple,
+                            ProgressMonitorProxy &pmp);
+
         AggregateExecutorBase* m_aggExec;
 
+        // Batch buffers, kept across executions so that scans don't allocate them
+        std::vector<TableTuple> m_batch;
+        std::vector<TableTuple> m_qualified;
+        std::vector<NValue> m_predicateResults;
+        std::vector<std::vector<NValue> > m_columnResults;
     };
 }
 
@@ -46,7 +46,9 @@
 #include "abstractexpression.h"
 
 #include "common/debuglog.h"
+#include "common/NValue.hpp"
 #include "common/serializeio.h"
+#include "common/tabletuple.h"
 #include "common/types.h"
 #include "expressions/expressionutil.h"
 
@@ -96,6 +98,57 @@ AbstractExpression::hasParameter() const
     return (m_right && m_right->hasParameter());
 }
 
+void
+AbstractExpression::evalBatch(const TableTuple *tuples, int count, NValue *results) const
+{
+    for (int ii = 0; ii < count; ++ii) {
+        results[ii] = eval(&tuples[ii], NULL);
+    }
+}
+
+bool
+AbstractExpression::isBatchEvaluable() const
+{
+    if ( ! hasBatchEval()) {
+        return false;
+    }
+    if (m_left && ! m_left->isBatchEvaluable()) {
+        return false;
+    }
+    return ( ! m_right || m_right->isBatchEvaluable());
+}
+
+bool
+AbstractExpression::isBatchEvaluable(const std::vector<AbstractExpression*> &exprs)
+{
+    for (std::vector<AbstractExpression*>::const_iterator it = exprs.begin(); it != exprs.end(); ++it) {
+        if (*it == NULL || ! (*it)->isBatchEvaluable()) {
+            return false;
+        }
+    }
+    return true;
+}
+
+void
+AbstractExpression::evalBatchForRows(const AbstractExpression *expr, const TableTuple *tuples,
+                                     const std::vector<int> &rows, int count,
+                                     std::vector<TableTuple> &selected, NValue *results)
+{
+    if (rows.empty()) {
+        return;
+    }
+    if (rows.size() == count) {
+        // Every row is needed, no need to gather them
+        expr->evalBatch(tuples, count, results);
+        return;
+    }
+    selected.clear();
+    for (std::vector<int>::const_iterator it = rows.begin(); it != rows.end(); ++it) {
+        selected.push_back(tuples[*it]);
+    }
+    expr->evalBatch(&selected[0], static_cast<int>(selected.size()), results);
+}
+
 bool
 AbstractExpression::initParamShortCircuits()
 {
@@ -73,6 +73,24 @@ class AbstractExpression {
 
     virtual NValue eval(const TableTuple *tuple1 = NULL, const TableTuple *tuple2 = NULL) const = 0;
 
+    /** Number of tuples executors hand to evalBatch at a time */
+    static const int BATCH_SIZE = 1024;
+
+    /**
+     * Evaluate the expression for each of count tuples, as eval(&tuples[ii]) would,
+     * into results[ii], for count > 0. The default just calls eval for each tuple. Expressions
+     * that override it evaluate each child once per batch instead of once per tuple,
+     * and only for the rows eval would evaluate it, so short circuits and null
+     * rejection protect the same operands from errors.
+     */
+    virtual void evalBatch(const TableTuple *tuples, int count, NValue *results) const;
+
+    /** return true if self and all descendents override evalBatch */
+    bool isBatchEvaluable() const;
+
+    /** return true if every expression of the list is batch evaluable */
+    static bool isBatchEvaluable(const std::vector<AbstractExpression*> &exprs);
+
     /** return true if self or descendent should be substitute()'d */
     virtual bool hasParameter() const;
 
@@ -143,6 +161,18 @@ class AbstractExpression {
                        AbstractExpression *left,
                        AbstractExpression *right);
 
+    /** return true if this node overrides evalBatch for single tuple evaluation */
+    virtual bool hasBatchEval() const { return false; }
+
+    /**
+     * Batch evaluate expr for the listed rows of tuples only,
+     * into results[0..rows.size()) in the order of rows.
+     * selected is scratch space for gathering the rows.
+     */
+    static void evalBatchForRows(const AbstractExpression *expr, const TableTuple *tuples,
+                                 const std::vector<int> &rows, int count,
+                                 std::vector<TableTuple> &selected, NValue *results);
+
   private:
     static AbstractExpression* buildExpressionTree_recurse(PlannerDomValue obj);
     bool initParamShortCircuits();
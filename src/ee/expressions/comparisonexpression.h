@@ -56,6 +56,7 @@
 #include "expressions/tuplevalueexpression.h"
 
 #include <string>
+#include <vector>
 #include <cassert>
 
 namespace voltdb {
@@ -255,6 +256,39 @@ public:
         return OP::compare(lnv, rnv);
     }
 
+    void evalBatch(const TableTuple *tuples, int count, NValue *results) const
+    {
+        assert(m_left != NULL);
+        assert(m_right != NULL);
+
+        std::vector<NValue> &lnvs = m_leftBatch;
+        lnvs.resize(count);
+        m_left->evalBatch(tuples, count, &lnvs[0]);
+
+        // As in eval, the right operand is not evaluated for a null left operand
+        std::vector<int> &rows = m_batchRows;
+        rows.clear();
+        for (int ii = 0; ii < count; ++ii) {
+            if (lnvs[ii].isNull() && OP::isNullRejecting()) {
+                results[ii] = NValue::getNullValue(VALUE_TYPE_BOOLEAN);
+            } else {
+                rows.push_back(ii);
+            }
+        }
+
+        std::vector<NValue> &rnvs = m_rightBatch;
+        rnvs.resize(rows.size());
+        evalBatchForRows(m_right, tuples, rows, count, m_batchTuples, rnvs.empty() ? NULL : &rnvs[0]);
+        for (size_t jj = 0; jj < rows.size(); ++jj) {
+            const int ii = rows[jj];
+            if (rnvs[jj].isNull() && OP::isNullRejecting()) {
+                results[ii] = NValue::getNullValue(VALUE_TYPE_BOOLEAN);
+            } else {
+                results[ii] = OP::compare(lnvs[ii], rnvs[jj]);
+            }
+        }
+    }
+
     inline const char* traceEval(const TableTuple *tuple1, const TableTuple *tuple2) const
     {
         NValue lnv;
@@ -271,9 +305,19 @@ public:
         return (spacer + "ComparisonExpression\n");
     }
 
+protected:
+    bool hasBatchEval() const { return true; }
+
 private:
     AbstractExpression *m_left;
     AbstractExpression *m_right;
+
+    // evalBatch scratch, kept so that batches after the first don't allocate.
+    // A plan's expressions are only evaluated by its site thread, one batch at a time.
+    mutable std::vector<NValue> m_leftBatch;
+    mutable std::vector<NValue> m_rightBatch;
+    mutable std::vector<int> m_batchRows;
+    mutable std::vector<TableTuple> m_batchTuples;
 };
 
 template <typename C, typename L, typename R>
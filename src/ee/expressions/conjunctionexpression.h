@@ -49,10 +49,12 @@
 #include "common/common.h"
 #include "common/serializeio.h"
 #include "common/valuevector.h"
+#include "common/tabletuple.h"
 
 #include "expressions/abstractexpression.h"
 
 #include <string>
+#include <vector>
 
 namespace voltdb {
 
@@ -74,12 +76,26 @@ class ConjunctionExpression : public AbstractExpression
 
     NValue eval(const TableTuple *tuple1, const TableTuple *tuple2) const;
 
+    void evalBatch(const TableTuple *tuples, int count, NValue *results) const;
+
     std::string debugInfo(const std::string &spacer) const {
         return (spacer + "ConjunctionExpression\n");
     }
 
+  protected:
+    bool hasBatchEval() const { return true; }
+
+  public:
+
     AbstractExpression *m_left;
     AbstractExpression *m_right;
+
+  private:
+    // evalBatch scratch, kept so that batches after the first don't allocate.
+    // A plan's expressions are only evaluated by its site thread, one batch at a time.
+    mutable std::vector<NValue> m_rightBatch;
+    mutable std::vector<int> m_batchRows;
+    mutable std::vector<TableTuple> m_batchTuples;
 };
 
 template<> inline NValue
@@ -130,5 +146,57 @@ ConjunctionExpression<ConjunctionOr>::eval(const TableTuple *tuple1,
     return NValue::getNullValue(VALUE_TYPE_BOOLEAN);
 }
 
+template<> inline void
+ConjunctionExpression<ConjunctionAnd>::evalBatch(const TableTuple *tuples, int count,
+                                                 NValue *results) const
+{
+    m_left->evalBatch(tuples, count, results);
+    // Only rows that are not already False need the right side
+    std::vector<int> &rows = m_batchRows;
+    rows.clear();
+    for (int ii = 0; ii < count; ++ii) {
+        if ( ! results[ii].isFalse()) {
+            rows.push_back(ii);
+        }
+    }
+    std::vector<NValue> &rightBools = m_rightBatch;
+    rightBools.resize(rows.size());
+    evalBatchForRows(m_right, tuples, rows, count, m_batchTuples, rightBools.empty() ? NULL : &rightBools[0]);
+    for (size_t jj = 0; jj < rows.size(); ++jj) {
+        NValue& result = results[rows[jj]];
+        if (result.isTrue() || rightBools[jj].isFalse()) {
+            result = rightBools[jj];
+        } else {
+            result = NValue::getNullValue(VALUE_TYPE_BOOLEAN);
+        }
+    }
+}
+
+template<> inline void
+ConjunctionExpression<ConjunctionOr>::evalBatch(const TableTuple *tuples, int count,
+                                                NValue *results) const
+{
+    m_left->evalBatch(tuples, count, results);
+    // Only rows that are not already True need the right side
+    std::vector<int> &rows = m_batchRows;
+    rows.clear();
+    for (int ii = 0; ii < count; ++ii) {
+        if ( ! results[ii].isTrue()) {
+            rows.push_back(ii);
+        }
+    }
+    std::vector<NValue> &rightBools = m_rightBatch;
+    rightBools.resize(rows.size());
+    evalBatchForRows(m_right, tuples, rows, count, m_batchTuples, rightBools.empty() ? NULL : &rightBools[0]);
+    for (size_t jj = 0; jj < rows.size(); ++jj) {
+        NValue& result = results[rows[jj]];
+        if (result.isFalse() || rightBools[jj].isTrue()) {
+            result = rightBools[jj];
+        } else {
+            result = NValue::getNullValue(VALUE_TYPE_BOOLEAN);
+        }
+    }
+}
+
 }
 #endif
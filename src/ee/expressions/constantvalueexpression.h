@@ -73,12 +73,21 @@ class ConstantValueExpression : public AbstractExpression {
         return this->value;
     }
 
+    void evalBatch(const TableTuple *tuples, int count, NValue *results) const
+    {
+        for (int ii = 0; ii < count; ++ii) {
+            results[ii] = this->value;
+        }
+    }
+
     std::string debugInfo(const std::string &spacer) const {
         return spacer + "OptimizedConstantValueExpression:" +
           value.debug() + "\n";
     }
 
   protected:
+    bool hasBatchEval() const { return true; }
+
     voltdb::NValue value;
 };
 }
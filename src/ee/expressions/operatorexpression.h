@@ -53,6 +53,7 @@
 #include "expressions/abstractexpression.h"
 
 #include <string>
+#include <vector>
 #include <cassert>
 
 namespace voltdb {
@@ -84,9 +85,24 @@ public:
         return operand;
     }
 
+    void evalBatch(const TableTuple *tuples, int count, NValue *results) const {
+        assert (m_left);
+        m_left->evalBatch(tuples, count, results);
+        for (int ii = 0; ii < count; ++ii) {
+            if (results[ii].isTrue()) {
+                results[ii] = NValue::getFalse();
+            } else if (results[ii].isFalse()) {
+                results[ii] = NValue::getTrue();
+            }
+        }
+    }
+
     std::string debugInfo(const std::string &spacer) const {
         return (spacer + "OperatorNotExpression");
     }
+
+protected:
+    bool hasBatchEval() const { return true; }
 };
 
 class OperatorIsNullExpression : public AbstractExpression {
@@ -107,9 +123,20 @@ class OperatorIsNullExpression : public AbstractExpression {
        }
    }
 
+   void evalBatch(const TableTuple *tuples, int count, NValue *results) const {
+       assert(m_left);
+       m_left->evalBatch(tuples, count, results);
+       for (int ii = 0; ii < count; ++ii) {
+           results[ii] = results[ii].isNull() ? NValue::getTrue() : NValue::getFalse();
+       }
+   }
+
    std::string debugInfo(const std::string &spacer) const {
        return (spacer + "OperatorIsNullExpression");
    }
+
+protected:
+   bool hasBatchEval() const { return true; }
 };
 
 class OperatorCastExpression : public AbstractExpression {
@@ -126,9 +153,19 @@ public:
         return m_left->eval(tuple1, tuple2).castAs(m_targetType);
     }
 
+    void evalBatch(const TableTuple *tuples, int count, NValue *results) const {
+        assert (m_left);
+        m_left->evalBatch(tuples, count, results);
+        for (int ii = 0; ii < count; ++ii) {
+            results[ii] = results[ii].castAs(m_targetType);
+        }
+    }
+
     std::string debugInfo(const std::string &spacer) const {
         return (spacer + "CastExpression");
     }
+protected:
+    bool hasBatchEval() const { return true; }
 private:
     ValueType m_targetType;
 };
@@ -229,11 +266,29 @@ class OperatorExpression : public AbstractExpression {
                        m_right->eval(tuple1, tuple2));
     }
 
+    void evalBatch(const TableTuple *tuples, int count, NValue *results) const
+    {
+        assert(m_left);
+        assert(m_right);
+        std::vector<NValue> &rights = m_rightBatch;
+        rights.resize(count);
+        m_left->evalBatch(tuples, count, results);
+        m_right->evalBatch(tuples, count, &rights[0]);
+        for (int ii = 0; ii < count; ++ii) {
+            results[ii] = oper.op(results[ii], rights[ii]);
+        }
+    }
+
     std::string debugInfo(const std::string &spacer) const {
         return (spacer + "OptimizedOperatorExpression");
     }
+protected:
+    bool hasBatchEval() const { return true; }
 private:
     OPER oper;
+    // evalBatch scratch for the right operand, kept so that batches after
+    // the first don't allocate
+    mutable std::vector<NValue> m_rightBatch;
 };
 
 class OperatorExistsExpression : public AbstractExpression {
@@ -75,6 +75,13 @@ public:
         return *m_paramValue;
     }
 
+    void evalBatch(const TableTuple *tuples, int count, NValue *results) const {
+        assert(m_paramValue != NULL);
+        for (int ii = 0; ii < count; ++ii) {
+            results[ii] = *m_paramValue;
+        }
+    }
+
     bool hasParameter() const {
         // this class represents a parameter.
         return true;
@@ -90,6 +97,9 @@ public:
         return this->m_valueIdx;
     }
 
+  protected:
+    bool hasBatchEval() const { return true; }
+
   private:
     int m_valueIdx;
 
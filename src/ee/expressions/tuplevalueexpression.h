@@ -83,6 +83,13 @@ class TupleValueExpression : public AbstractExpression {
         }
     }
 
+    virtual void evalBatch(const TableTuple *tuples, int count, NValue *results) const {
+        assert(tuple_idx == 0);
+        for (int ii = 0; ii < count; ++ii) {
+            results[ii] = tuples[ii].getNValue(value_idx);
+        }
+    }
+
     std::string debugInfo(const std::string &spacer) const {
         std::ostringstream buffer;
         buffer << spacer << "Optimized Column Reference[" << tuple_idx << ", " << value_idx << "]\n";
@@ -92,6 +99,9 @@ class TupleValueExpression : public AbstractExpression {
     int getColumnId() const {return this->value_idx;}
 
   protected:
+    // Batches only carry the outer tuple
+    bool hasBatchEval() const { return tuple_idx == 0; }
+
 
     const int tuple_idx;           // which tuple. defaults to tuple1
     const int value_idx;           // which (offset) column of the tuple
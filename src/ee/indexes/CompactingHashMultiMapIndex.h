@@ -48,6 +48,7 @@
 
 #include <iostream>
 #include <cassert>
+#include <vector>
 #include "indexes/tableindex.h"
 #include "common/tabletuple.h"
 #include "structures/CompactingHashTable.h"
@@ -134,6 +135,22 @@ class CompactingHashMultiMapIndex : public TableIndex
         return true;
     }
 
+    void moveToKeys(const TableTuple *searchKeys, IndexCursor *cursors, int count) const {
+        // Fetch the buckets, then their first nodes, so that the cache
+        // misses of all the probes overlap
+        std::vector<uint64_t> buckets;
+        buckets.reserve(count);
+        for (int ii = 0; ii < count; ++ii) {
+            buckets.push_back(m_entries.prefetchBucket(KeyType(&searchKeys[ii])));
+        }
+        for (int ii = 0; ii < count; ++ii) {
+            m_entries.prefetchChain(buckets[ii]);
+        }
+        for (int ii = 0; ii < count; ++ii) {
+            moveToKey(&searchKeys[ii], cursors[ii]);
+        }
+    }
+
     bool moveToKeyByTuple(const TableTuple *persistentTuple, IndexCursor &cursor) const {
         MapIterator &mapIter = castToIter(cursor);
         mapIter = findTuple(*persistentTuple);
@@ -48,22 +48,28 @@
 
 #include <iostream>
 #include <cassert>
+#include <algorithm>
+#include <vector>
 #include "indexes/tableindex.h"
 #include "common/tabletuple.h"
 #include "structures/CompactingMap.h"
+#include "structures/CompactingBTree.h"
 
 namespace voltdb {
 
 /**
  * Index implemented as a Binary Tree Multimap.
+ * OrderedMap is the red-black CompactingMap, or the CompactingBTree
+ * for BTREE_INDEX indexes.
  * @see TableIndex
  */
-template<typename KeyValuePair, bool hasRank>
+template<typename KeyValuePair, bool hasRank,
+         template<typename, typename, bool> class OrderedMap = CompactingMap>
 class CompactingTreeMultiMapIndex : public TableIndex
 {
     typedef typename KeyValuePair::first_type KeyType;
     typedef typename KeyType::KeyComparator KeyComparator;
-    typedef CompactingMap<KeyValuePair, KeyComparator, hasRank> MapType;
+    typedef OrderedMap<KeyValuePair, KeyComparator, hasRank> MapType;
     typedef typename MapType::iterator MapIterator;
     typedef std::pair<MapIterator, MapIterator> MapRange;
 
@@ -140,6 +146,42 @@ class CompactingTreeMultiMapIndex : public TableIndex
         return true;
     }
 
+    void moveToKeys(const TableTuple *searchKeys, IndexCursor *cursors, int count) const
+    {
+        std::vector<KeyType> keys;
+        std::vector<int> order;
+        keys.reserve(count);
+        order.reserve(count);
+        for (int ii = 0; ii < count; ++ii) {
+            keys.push_back(KeyType(&searchKeys[ii]));
+            order.push_back(ii);
+        }
+        std::sort(order.begin(), order.end(), KeyOrder(keys, m_cmp));
+
+        // Each range is found from the end of the previous, smaller key's
+        // range. Repeated keys share their range.
+        MapRange range;
+        for (int ii = 0; ii < count; ++ii) {
+            const KeyType &key = keys[order[ii]];
+            if (ii == 0) {
+                range = m_entries.equalRange(key);
+            } else if (m_cmp(keys[order[ii - 1]], key) != 0) {
+                range.first = m_entries.lowerBound(key, range.second);
+                range.second = m_entries.upperBound(key, range.first);
+            }
+
+            IndexCursor &cursor = cursors[order[ii]];
+            cursor.m_forward = true;
+            castToIter(cursor) = range.first;
+            castToEndIter(cursor) = range.second;
+            if (range.first.equals(range.second)) {
+                cursor.m_match.move(NULL);
+            } else {
+                cursor.m_match.move(const_cast<void*>(range.first.value()));
+            }
+        }
+    }
+
     bool moveToKeyByTuple(const TableTuple *persistentTuple, IndexCursor &cursor) const
     {
         cursor.m_forward = true;
@@ -344,6 +386,52 @@ class CompactingTreeMultiMapIndex : public TableIndex
 
     size_t getSize() const { return m_entries.size(); }
 
+    /**
+     * Counts how often adjacent entries have different keys over a bounded
+     * sample and scales that up to the whole index. Countable indexes sample
+     * runs spread evenly over the index, others can only sample its start.
+     * Small indexes are counted exactly.
+     */
+    int64_t getDistinctKeyEstimate() const
+    {
+        const int64_t size = m_entries.size();
+        if (size <= 1) {
+            return size;
+        }
+        int64_t runs = hasRank ? DISTINCT_KEY_SAMPLE_RUNS : 1;
+        int64_t runLength = DISTINCT_KEY_SAMPLE_SIZE / runs;
+        if (size - 1 <= DISTINCT_KEY_SAMPLE_SIZE) {
+            runs = 1;
+            runLength = size - 1;
+        }
+
+        int64_t pairs = 0;
+        int64_t keyChanges = 0;
+        for (int64_t run = 0; run < runs; ++run) {
+            MapIterator iter = hasRank ? m_entries.findRank(1 + run * (size / runs)) : m_entries.begin();
+            // Only compare the key columns, not the tuple addresses
+            KeyType previous = iter.key();
+            setPointerValue(previous, NULL);
+            for (int64_t ii = 0; ii < runLength; ++ii) {
+                iter.moveNext();
+                if (iter.isEnd()) {
+                    break;
+                }
+                KeyType current = iter.key();
+                setPointerValue(current, NULL);
+                ++pairs;
+                if (m_cmp(previous, current) != 0) {
+                    ++keyChanges;
+                }
+                previous = current;
+            }
+        }
+        if (pairs == 0) {
+            return 1;
+        }
+        return 1 + static_cast<int64_t>(static_cast<double>(keyChanges) * (size - 1) / pairs);
+    }
+
     int64_t getMemoryEstimate() const
     {
         return m_entries.bytesAllocated();
@@ -364,7 +452,9 @@ class CompactingTreeMultiMapIndex : public TableIndex
         return (ret);
     }
 
-    std::string getTypeName() const { return "CompactingTreeMultiMapIndex"; };
+    std::string getTypeName() const {
+        return IsCompactingBTree<MapType>::value ? "CompactingBTreeMultiMapIndex" : "CompactingTreeMultiMapIndex";
+    };
 
     MapIterator findKey(const TableTuple *searchKey) const {
         KeyType tempKey(searchKey);
@@ -401,6 +491,18 @@ class CompactingTreeMultiMapIndex : public TableIndex
         return result;
     }
 
+    // Entries compared by getDistinctKeyEstimate
+    static const int64_t DISTINCT_KEY_SAMPLE_SIZE = 4096;
+    static const int64_t DISTINCT_KEY_SAMPLE_RUNS = 64;
+
+    // Orders the positions of batched search keys by key
+    struct KeyOrder {
+        KeyOrder(const std::vector<KeyType> &keys, const KeyComparator &cmp) : m_keys(keys), m_cmp(cmp) {}
+        bool operator()(int lhs, int rhs) const { return m_cmp(m_keys[lhs], m_keys[rhs]) < 0; }
+        const std::vector<KeyType> &m_keys;
+        const KeyComparator &m_cmp;
+    };
+
     MapType m_entries;
 
     // comparison stuff
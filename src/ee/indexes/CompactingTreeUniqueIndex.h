@@ -48,24 +48,30 @@
 
 #include <iostream>
 #include <cassert>
+#include <algorithm>
+#include <vector>
 
 #include "common/debuglog.h"
 #include "common/tabletuple.h"
 #include "indexes/tableindex.h"
 #include "structures/CompactingMap.h"
+#include "structures/CompactingBTree.h"
 
 namespace voltdb {
 
 /**
  * Index implemented as a Binary Tree Unique Map.
+ * OrderedMap is the red-black CompactingMap, or the CompactingBTree
+ * for BTREE_INDEX indexes.
  * @see TableIndex
  */
-template<typename KeyValuePair, bool hasRank>
+template<typename KeyValuePair, bool hasRank,
+         template<typename, typename, bool> class OrderedMap = CompactingMap>
 class CompactingTreeUniqueIndex : public TableIndex
 {
     typedef typename KeyValuePair::first_type KeyType;
     typedef typename KeyType::KeyComparator KeyComparator;
-    typedef CompactingMap<KeyValuePair, KeyComparator, hasRank> MapType;
+    typedef OrderedMap<KeyValuePair, KeyComparator, hasRank> MapType;
     typedef typename MapType::iterator MapIterator;
 
     ~CompactingTreeUniqueIndex() {};
@@ -155,6 +161,37 @@ class CompactingTreeUniqueIndex : public TableIndex
         return true;
     }
 
+    void moveToKeys(const TableTuple *searchKeys, IndexCursor *cursors, int count) const
+    {
+        std::vector<KeyType> keys;
+        std::vector<int> order;
+        keys.reserve(count);
+        order.reserve(count);
+        for (int ii = 0; ii < count; ++ii) {
+            keys.push_back(KeyType(&searchKeys[ii]));
+            order.push_back(ii);
+        }
+        std::sort(order.begin(), order.end(), KeyOrder(keys, m_cmp));
+
+        // Each lower bound is found from the previous, smaller one
+        MapIterator bound;
+        for (int ii = 0; ii < count; ++ii) {
+            const KeyType &key = keys[order[ii]];
+            IndexCursor &cursor = cursors[order[ii]];
+            bound = (ii == 0) ? m_entries.lowerBound(key) : m_entries.lowerBound(key, bound);
+
+            cursor.m_forward = true;
+            MapIterator &mapIter = castToIter(cursor);
+            if (bound.isEnd() || m_cmp(bound.key(), key) != 0) {
+                mapIter = MapIterator();
+                cursor.m_match.move(NULL);
+            } else {
+                mapIter = bound;
+                cursor.m_match.move(const_cast<void*>(bound.value()));
+            }
+        }
+    }
+
     void moveToKeyOrGreater(const TableTuple *searchKey, IndexCursor& cursor) const
     {
         cursor.m_forward = true;
@@ -350,11 +387,13 @@ class CompactingTreeUniqueIndex : public TableIndex
         return (ret);
     }
 
-    std::string getTypeName() const { return "CompactingTreeUniqueIndex"; };
+    std::string getTypeName() const {
+        return IsCompactingBTree<MapType>::value ? "CompactingBTreeUniqueIndex" : "CompactingTreeUniqueIndex";
+    };
 
     virtual TableIndex *cloneEmptyNonCountingTreeIndex() const
     {
-        return new CompactingTreeUniqueIndex<KeyValuePair, false >(TupleSchema::createTupleSchema(getKeySchema()), m_scheme);
+        return new CompactingTreeUniqueIndex<KeyValuePair, false, OrderedMap>(TupleSchema::createTupleSchema(getKeySchema()), m_scheme);
     }
 
 
@@ -372,6 +411,14 @@ class CompactingTreeUniqueIndex : public TableIndex
         return result;
     }
 
+    // Orders the positions of batched search keys by key
+    struct KeyOrder {
+        KeyOrder(const std::vector<KeyType> &keys, const KeyComparator &cmp) : m_keys(keys), m_cmp(cmp) {}
+        bool operator()(int lhs, int rhs) const { return m_cmp(m_keys[lhs], m_keys[rhs]) < 0; }
+        const std::vector<KeyType> &m_keys;
+        const KeyComparator &m_cmp;
+    };
+
     MapType m_entries;
 
     // comparison stuff
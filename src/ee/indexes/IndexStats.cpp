@@ -39,6 +39,7 @@ vector<string> IndexStats::generateIndexStatsColumnNames() {
     columnNames.push_back("IS_COUNTABLE");
     columnNames.push_back("ENTRY_COUNT");
     columnNames.push_back("MEMORY_ESTIMATE");
+    columnNames.push_back("DISTINCT_KEY_ESTIMATE");
 
     return columnNames;
 }
@@ -93,6 +94,12 @@ void IndexStats::populateIndexStatsSchema(
     columnLengths.push_back(NValue::getTupleStorageSize(VALUE_TYPE_BIGINT));
     allowNull.push_back(false);
     inBytes.push_back(false);
+
+    // distinct key estimate
+    types.push_back(VALUE_TYPE_BIGINT);
+    columnLengths.push_back(NValue::getTupleStorageSize(VALUE_TYPE_BIGINT));
+    allowNull.push_back(false);
+    inBytes.push_back(false);
 }
 
 Table*
@@ -196,6 +203,9 @@ void IndexStats::updateStatsTuple(TableTuple *tuple) {
     tuple->setNValue(StatsSource::m_columnName2Index["MEMORY_ESTIMATE"],
                      ValueFactory::
                      getBigIntValue(mem_estimate_kb));
+    // Always the current estimate, even for interval stats
+    tuple->setNValue(StatsSource::m_columnName2Index["DISTINCT_KEY_ESTIMATE"],
+                     ValueFactory::getBigIntValue(m_index->getDistinctKeyEstimate()));
 }
 
 /**
@@ -276,6 +276,19 @@ public:
       */
      virtual bool moveToKeyByTuple(const TableTuple* searchTuple, IndexCursor &cursor) const = 0;
 
+    /**
+     * Batched moveToKey(): leaves cursors[i] where moveToKey(&searchKeys[i])
+     * would. Tree indexes look the keys up in key order, each search
+     * starting where the previous one ended. Hash indexes prefetch all the
+     * buckets before probing them.
+     */
+    virtual void moveToKeys(const TableTuple *searchKeys, IndexCursor *cursors, int count) const
+    {
+        for (int ii = 0; ii < count; ++ii) {
+            moveToKey(&searchKeys[ii], cursors[ii]);
+        }
+    }
+
     /**
      * This method moves to the first tuple equal or greater than
      * given key.  Use this with nextValue(). This method works for
@@ -452,6 +465,16 @@ public:
 
     virtual size_t getSize() const = 0;
 
+    /**
+     * An estimate of the number of distinct keys in the index, reported in
+     * the index stats so the planner can cost index scans with real
+     * selectivities. Returns -1 if the index can't cheaply estimate it.
+     */
+    virtual int64_t getDistinctKeyEstimate() const
+    {
+        return isUniqueIndex() ? static_cast<int64_t>(getSize()) : -1;
+    }
+
     // Return the amount of memory we think is allocated for this
     // index.
     virtual int64_t getMemoryEstimate() const = 0;
@@ -66,21 +66,32 @@ class TableIndexPicker
     template <class TKeyType>
     TableIndex *getInstanceForKeyType() const
     {
-        if (m_scheme.unique) {
-            if (m_type != BALANCED_TREE_INDEX) {
+        if (m_type == BTREE_INDEX) {
+            return getTreeInstanceForKeyType<TKeyType, CompactingBTree>();
+        }
+        if (m_type != BALANCED_TREE_INDEX) {
+            if (m_scheme.unique) {
                 return new CompactingHashUniqueIndex<TKeyType >(m_keySchema, m_scheme);
-            } else if (m_scheme.countable) {
-                return new CompactingTreeUniqueIndex<NormalKeyValuePair<TKeyType>, true>(m_keySchema, m_scheme);
+            }
+            return new CompactingHashMultiMapIndex<TKeyType >(m_keySchema, m_scheme);
+        }
+        return getTreeInstanceForKeyType<TKeyType, CompactingMap>();
+    }
+
+    template <class TKeyType, template<typename, typename, bool> class OrderedMap>
+    TableIndex *getTreeInstanceForKeyType() const
+    {
+        if (m_scheme.unique) {
+            if (m_scheme.countable) {
+                return new CompactingTreeUniqueIndex<NormalKeyValuePair<TKeyType>, true, OrderedMap>(m_keySchema, m_scheme);
             } else {
-                return new CompactingTreeUniqueIndex<NormalKeyValuePair<TKeyType>, false>(m_keySchema, m_scheme);
+                return new CompactingTreeUniqueIndex<NormalKeyValuePair<TKeyType>, false, OrderedMap>(m_keySchema, m_scheme);
             }
         } else {
-            if (m_type != BALANCED_TREE_INDEX) {
-                return new CompactingHashMultiMapIndex<TKeyType >(m_keySchema, m_scheme);
-            } else if (m_scheme.countable) {
-                return new CompactingTreeMultiMapIndex<PointerKeyValuePair<TKeyType>, true>(m_keySchema, m_scheme);
+            if (m_scheme.countable) {
+                return new CompactingTreeMultiMapIndex<PointerKeyValuePair<TKeyType>, true, OrderedMap>(m_keySchema, m_scheme);
             } else {
-                return new CompactingTreeMultiMapIndex<PointerKeyValuePair<TKeyType>, false>(m_keySchema, m_scheme);
+                return new CompactingTreeMultiMapIndex<PointerKeyValuePair<TKeyType>, false, OrderedMap>(m_keySchema, m_scheme);
             }
         }
     }
@@ -183,18 +194,10 @@ public:
             return result;
         }
 
-        if (m_scheme.unique) {
-            if (m_scheme.countable) {
-                return new CompactingTreeUniqueIndex<NormalKeyValuePair<TupleKey>, true >(m_keySchema, m_scheme);
-            } else {
-                return new CompactingTreeUniqueIndex<NormalKeyValuePair<TupleKey>, false>(m_keySchema, m_scheme);
-            }
-        }
-        if (m_scheme.countable) {
-            return new CompactingTreeMultiMapIndex<PointerKeyValuePair<TupleKey>, true >(m_keySchema, m_scheme);
-        } else {
-            return new CompactingTreeMultiMapIndex<PointerKeyValuePair<TupleKey>, false>(m_keySchema, m_scheme);
+        if (m_type == BTREE_INDEX) {
+            return getTreeInstanceForKeyType<TupleKey, CompactingBTree>();
         }
+        return getTreeInstanceForKeyType<TupleKey, CompactingMap>();
     }
 
     TableIndexPicker(const TupleSchema *keySchema, bool intsOnly, bool inlinesOrColumnsOnly,
@@ -0,0 +1,226 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+#include "stats/ExecutionStats.h"
+
+#include "common/serializeio.h"
+#include "common/tabletuple.h"
+#include "common/TupleSchema.h"
+#include "common/ValueFactory.hpp"
+#include "storage/tablefactory.h"
+#include "storage/temptable.h"
+
+#include <cstring>
+#include <limits>
+
+using namespace voltdb;
+using namespace std;
+
+ExecutionStats::Counters::Counters()
+    : m_invocations(0)
+    , m_failures(0)
+    , m_totalNanos(0)
+    , m_minNanos(numeric_limits<int64_t>::max())
+    , m_maxNanos(0)
+    , m_cpuNanos(0)
+    , m_tuplesIn(0)
+    , m_tuplesOut(0)
+    , m_maxTempTableMemory(0)
+{
+    memset(m_histogram, 0, sizeof(m_histogram));
+}
+
+void ExecutionStats::Counters::recordTime(int64_t elapsedNanos) {
+    // The monotonic clock doesn't go backwards, but be safe across cpu migrations
+    if (elapsedNanos < 0) {
+        elapsedNanos = 0;
+    }
+    ++m_invocations;
+    m_totalNanos += elapsedNanos;
+    if (elapsedNanos < m_minNanos) {
+        m_minNanos = elapsedNanos;
+    }
+    if (elapsedNanos > m_maxNanos) {
+        m_maxNanos = elapsedNanos;
+    }
+    const uint64_t micros = static_cast<uint64_t>(elapsedNanos) / 1000;
+    int bucket = micros == 0 ? 0 : 64 - __builtin_clzll(micros);
+    if (bucket >= HISTOGRAM_BUCKETS) {
+        bucket = HISTOGRAM_BUCKETS - 1;
+    }
+    ++m_histogram[bucket];
+}
+
+ExecutionStats::ExecutionStats() : m_enabled(false), m_executors(MAX_PLAN_NODE_TYPES) {
+}
+
+ExecutionStats::~ExecutionStats() {
+    // The histograms are heap allocated copies
+    if (m_fragmentStatsTable) {
+        m_fragmentStatsTable->deleteAllTuplesNonVirtual(true);
+    }
+    if (m_executorStatsTable) {
+        m_executorStatsTable->deleteAllTuplesNonVirtual(true);
+    }
+}
+
+static void addCounterColumnNames(vector<string> &columnNames) {
+    columnNames.push_back("INVOCATIONS");
+    columnNames.push_back("FAILURES");
+    columnNames.push_back("TOTAL_EXECUTION_TIME");
+    columnNames.push_back("MIN_EXECUTION_TIME");
+    columnNames.push_back("MAX_EXECUTION_TIME");
+    columnNames.push_back("TOTAL_CPU_TIME");
+    columnNames.push_back("TUPLES_IN");
+    columnNames.push_back("TUPLES_OUT");
+    columnNames.push_back("MAX_TEMP_TABLE_MEMORY");
+    columnNames.push_back("EXECUTION_TIME_HISTOGRAM");
+}
+
+vector<string> ExecutionStats::generateFragmentStatsColumnNames() {
+    vector<string> columnNames;
+    columnNames.push_back("FRAGMENT_ID");
+    addCounterColumnNames(columnNames);
+    return columnNames;
+}
+
+vector<string> ExecutionStats::generateExecutorStatsColumnNames() {
+    vector<string> columnNames;
+    columnNames.push_back("PLAN_NODE_TYPE");
+    addCounterColumnNames(columnNames);
+    return columnNames;
+}
+
+static TempTable* createStatsTable(CatalogId databaseId, const string &name,
+                                   const vector<string> &columnNames, ValueType keyType) {
+    vector<ValueType> types;
+    vector<int32_t> columnLengths;
+    vector<bool> allowNull;
+    vector<bool> inBytes;
+
+    // Plan node type names are short enough to be inlined
+    types.push_back(keyType);
+    columnLengths.push_back(keyType == VALUE_TYPE_VARCHAR ? 32 : NValue::getTupleStorageSize(keyType));
+    allowNull.push_back(false);
+    inBytes.push_back(keyType == VALUE_TYPE_VARCHAR);
+
+    for (int ii = 1; ii < static_cast<int>(columnNames.size()) - 1; ii++) {
+        types.push_back(VALUE_TYPE_BIGINT);
+        columnLengths.push_back(NValue::getTupleStorageSize(VALUE_TYPE_BIGINT));
+        allowNull.push_back(false);
+        inBytes.push_back(false);
+    }
+
+    types.push_back(VALUE_TYPE_VARBINARY);
+    columnLengths.push_back(ExecutionStats::HISTOGRAM_BUCKETS * sizeof(int64_t));
+    allowNull.push_back(false);
+    inBytes.push_back(false);
+
+    TupleSchema *schema = TupleSchema::createTupleSchema(types, columnLengths, allowNull, inBytes);
+    return TableFactory::getTempTable(databaseId, name, schema, columnNames, NULL);
+}
+
+static void insertStatsRow(TempTable *table, const NValue &key, const ExecutionStats::Counters &counters) {
+    TableTuple &tuple = table->tempTuple();
+    int col = 0;
+    tuple.setNValue(col++, key);
+    tuple.setNValue(col++, ValueFactory::getBigIntValue(counters.m_invocations));
+    tuple.setNValue(col++, ValueFactory::getBigIntValue(counters.m_failures));
+    tuple.setNValue(col++, ValueFactory::getBigIntValue(counters.m_totalNanos));
+    tuple.setNValue(col++, ValueFactory::getBigIntValue(counters.m_minNanos));
+    tuple.setNValue(col++, ValueFactory::getBigIntValue(counters.m_maxNanos));
+    tuple.setNValue(col++, ValueFactory::getBigIntValue(counters.m_cpuNanos));
+    tuple.setNValue(col++, ValueFactory::getBigIntValue(counters.m_tuplesIn));
+    tuple.setNValue(col++, ValueFactory::getBigIntValue(counters.m_tuplesOut));
+    tuple.setNValue(col++, ValueFactory::getBigIntValue(counters.m_maxTempTableMemory));
+
+    int64_t histogram[ExecutionStats::HISTOGRAM_BUCKETS];
+    for (int ii = 0; ii < ExecutionStats::HISTOGRAM_BUCKETS; ii++) {
+        histogram[ii] = htonll(counters.m_histogram[ii]);
+    }
+    tuple.setNValueAllocateForObjectCopies(col++,
+            ValueFactory::getTempBinaryValue(reinterpret_cast<const char*>(histogram),
+                                             static_cast<int32_t>(sizeof(histogram))),
+            NULL);
+    table->insertTempTuple(tuple);
+}
+
+void ExecutionStats::recordFragment(int64_t fragmentId, int64_t elapsedNanos, int64_t cpuNanos,
+                                    int64_t tuplesIn, int64_t tuplesOut, int64_t tempTableMemory,
+                                    bool failed) {
+    Counters &counters = m_fragments[fragmentId];
+    counters.recordTime(elapsedNanos);
+    if (failed) {
+        ++counters.m_failures;
+    }
+    counters.m_cpuNanos += cpuNanos;
+    counters.m_tuplesIn += tuplesIn;
+    counters.m_tuplesOut += tuplesOut;
+    if (tempTableMemory > counters.m_maxTempTableMemory) {
+        counters.m_maxTempTableMemory = tempTableMemory;
+    }
+}
+
+void ExecutionStats::recordExecutor(PlanNodeType type, int64_t elapsedNanos,
+                                    int64_t tuplesIn, int64_t tuplesOut, int64_t tempTableMemory) {
+    if (type < 0 || type >= MAX_PLAN_NODE_TYPES) {
+        return;
+    }
+    Counters &counters = m_executors[type];
+    counters.recordTime(elapsedNanos);
+    counters.m_tuplesIn += tuplesIn;
+    counters.m_tuplesOut += tuplesOut;
+    if (tempTableMemory > counters.m_maxTempTableMemory) {
+        counters.m_maxTempTableMemory = tempTableMemory;
+    }
+}
+
+Table* ExecutionStats::drainFragmentStats(CatalogId databaseId) {
+    if ( ! m_fragmentStatsTable) {
+        m_fragmentStatsTable.reset(createStatsTable(databaseId, "FRAGMENT_STATS",
+                                                    generateFragmentStatsColumnNames(),
+                                                    VALUE_TYPE_BIGINT));
+    }
+    m_fragmentStatsTable->deleteAllTuplesNonVirtual(true);
+
+    boost::unordered_map<int64_t, Counters>::const_iterator it;
+    for (it = m_fragments.begin(); it != m_fragments.end(); ++it) {
+        insertStatsRow(m_fragmentStatsTable.get(), ValueFactory::getBigIntValue(it->first), it->second);
+    }
+    m_fragments.clear();
+    return m_fragmentStatsTable.get();
+}
+
+Table* ExecutionStats::drainExecutorStats(CatalogId databaseId) {
+    if ( ! m_executorStatsTable) {
+        m_executorStatsTable.reset(createStatsTable(databaseId, "EXECUTOR_STATS",
+                                                    generateExecutorStatsColumnNames(),
+                                                    VALUE_TYPE_VARCHAR));
+    }
+    m_executorStatsTable->deleteAllTuplesNonVirtual(true);
+
+    for (int type = 0; type < MAX_PLAN_NODE_TYPES; type++) {
+        if (m_executors[type].m_invocations == 0) {
+            continue;
+        }
+        string typeName = planNodeToString(static_cast<PlanNodeType>(type));
+        insertStatsRow(m_executorStatsTable.get(), ValueFactory::getTempStringValue(typeName),
+                       m_executors[type]);
+        m_executors[type] = Counters();
+    }
+    return m_executorStatsTable.get();
+}
@@ -0,0 +1,140 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+#ifndef EXECUTIONSTATS_H_
+#define EXECUTIONSTATS_H_
+
+#include "common/ids.h"
+#include "common/types.h"
+#include "boost/scoped_ptr.hpp"
+#include "boost/unordered_map.hpp"
+
+#include <stdint.h>
+#include <time.h>
+#include <string>
+#include <vector>
+
+namespace voltdb {
+class Table;
+class TempTable;
+
+/**
+ * Timing, tuple and temp table memory counters for the plan fragments an engine
+ * runs and for each type of executor inside them. The engine records into it as it
+ * executes, and getStats() drains it into a table of the counts since the previous
+ * drain. The frontend accumulates those deltas and joins the fragment ids to the
+ * procedures and statements that own them.
+ *
+ * Executor times are inclusive: an executor that runs a subquery is charged for
+ * the subquery's executors too.
+ *
+ * Timing is off until the frontend turns it on with TASK_TYPE_SET_EXECUTION_TIMING.
+ * While it is off nothing is recorded and the engine and executors skip the clock
+ * reads, which cost about 0.35us per fragment and 0.05us per executor.
+ */
+class ExecutionStats {
+public:
+    /**
+     * Execution times are also counted in log2 buckets of microseconds. Bucket 0
+     * counts runs under 1us, bucket i runs of [2^(i-1), 2^i) us and the last
+     * bucket everything longer.
+     */
+    static const int HISTOGRAM_BUCKETS = 24;
+
+    struct Counters {
+        Counters();
+        void recordTime(int64_t elapsedNanos);
+
+        int64_t m_invocations;
+        int64_t m_failures;
+        int64_t m_totalNanos;
+        int64_t m_minNanos;
+        int64_t m_maxNanos;
+        int64_t m_cpuNanos;
+        int64_t m_tuplesIn;
+        int64_t m_tuplesOut;
+        int64_t m_maxTempTableMemory;
+        int64_t m_histogram[HISTOGRAM_BUCKETS];
+    };
+
+    ExecutionStats();
+    ~ExecutionStats();
+
+    bool isEnabled() const { return m_enabled; }
+
+    /** Counts recorded so far are kept until they are drained */
+    void setEnabled(bool enabled) { m_enabled = enabled; }
+
+    static std::vector<std::string> generateFragmentStatsColumnNames();
+    static std::vector<std::string> generateExecutorStatsColumnNames();
+
+    static int64_t wallClockNanos() {
+        struct timespec ts;
+        clock_gettime(CLOCK_MONOTONIC, &ts);
+        return ts.tv_sec * 1000000000LL + ts.tv_nsec;
+    }
+
+    static int64_t threadCpuNanos() {
+        struct timespec ts;
+        clock_gettime(CLOCK_THREAD_CPUTIME_ID, &ts);
+        return ts.tv_sec * 1000000000LL + ts.tv_nsec;
+    }
+
+    /**
+     * Record one run of a top level plan fragment.
+     * @param tuplesIn tuples the fragment's executors scanned
+     * @param tuplesOut tuples in the result tables the fragment sent
+     * @param tempTableMemory the fragment's peak temp table memory
+     */
+    void recordFragment(int64_t fragmentId, int64_t elapsedNanos, int64_t cpuNanos,
+                        int64_t tuplesIn, int64_t tuplesOut, int64_t tempTableMemory,
+                        bool failed);
+
+    /**
+     * Record one run of an executor.
+     * @param tuplesIn tuples in the executor's intermediate input tables
+     * @param tuplesOut tuples in its output table
+     * @param tempTableMemory memory allocated by its output table
+     */
+    void recordExecutor(PlanNodeType type, int64_t elapsedNanos,
+                        int64_t tuplesIn, int64_t tuplesOut, int64_t tempTableMemory);
+
+    /**
+     * Fill a table with one row for each fragment run since the previous call and
+     * reset the counters. The table is owned by this object and is valid until
+     * the next call.
+     */
+    Table* drainFragmentStats(CatalogId databaseId);
+
+    /** Same as drainFragmentStats, with one row per type of executor */
+    Table* drainExecutorStats(CatalogId databaseId);
+
+private:
+    // Plan node types are small positive integers
+    static const int MAX_PLAN_NODE_TYPES = 64;
+
+    bool m_enabled;
+
+    boost::unordered_map<int64_t, Counters> m_fragments;
+    std::vector<Counters> m_executors;
+    boost::scoped_ptr<TempTable> m_fragmentStatsTable;
+    boost::scoped_ptr<TempTable> m_executorStatsTable;
+};
+
+}
+
+#endif /* EXECUTIONSTATS_H_ */
@@ -46,6 +46,10 @@ CopyOnWriteContext::CopyOnWriteContext(
              m_pool(2097152, 320),
              m_tuple(table.schema()),
              m_finishedTableScan(false),
+             m_trackChanges(false),
+             m_deltaSnapshot(false),
+             m_modifiedTuplesOnly(false),
+             m_streamingDeletedTuples(false),
              m_totalTuples(totalTuples),
              m_tuplesRemaining(totalTuples),
              m_blocksCompacted(0),
@@ -70,7 +74,7 @@ TableStreamerContext::ActivationReturnCode
 CopyOnWriteContext::handleActivation(TableStreamType streamType)
 {
     // Only support snapshot streams.
-    if (streamType != TABLE_STREAM_SNAPSHOT) {
+    if (!tableStreamTypeIsSnapshot(streamType)) {
         return ACTIVATION_UNSUPPORTED;
     }
 
@@ -82,7 +86,37 @@ CopyOnWriteContext::handleActivation(TableStreamType streamType)
 
     m_surgeon.activateSnapshot();
 
-    m_iterator.reset(new CopyOnWriteIterator(&getTable(), &m_surgeon));
+    if (tableStreamTypeIsDeltaSnapshot(streamType)) {
+        m_trackChanges = true;
+        bool changesKnown = m_surgeon.restartDeltaTracking(m_deletedTuples, m_deletedTuplesPool);
+        if (streamType == TABLE_STREAM_SNAPSHOT_DELTA) {
+            m_deltaSnapshot = true;
+            m_modifiedTuplesOnly = changesKnown;
+            if (!changesKnown) {
+                // Replace the whole table. Primary key columns are never NULL,
+                // so an all-NULL deleted tuple can't be mistaken for a real one.
+                PersistentTable &table = getTable();
+                m_deletedTuples.reset(TableFactory::getCopiedTempTable(table.databaseId(),
+                                                                       "Truncation of " + table.name(),
+                                                                       &table, NULL));
+                m_deletedTuplesPool.reset();
+                TableTuple &marker = m_deletedTuples->tempTuple();
+                marker.setAllNulls();
+                m_deletedTuples->insertTempTuple(marker);
+            }
+            // The deleted tuples are streamed after the table, count them in.
+            if (m_tuplesRemaining >= 0) {
+                m_totalTuples += m_deletedTuples->tempTableTupleCount();
+                m_tuplesRemaining += m_deletedTuples->tempTableTupleCount();
+            }
+        } else {
+            // A delta base writes every tuple, whatever was deleted before doesn't matter.
+            m_deletedTuples.reset();
+            m_deletedTuplesPool.reset();
+        }
+    }
+
+    m_iterator.reset(new CopyOnWriteIterator(&getTable(), &m_surgeon, m_modifiedTuplesOnly));
 
     return ACTIVATION_SUCCEEDED;
 }
@@ -104,6 +138,10 @@ int64_t CopyOnWriteContext::handleStreamMore(TupleOutputStreamProcessor &outputS
     if (outputStreams.empty()) {
         throwFatalException("serializeMore() expects at least one output stream.");
     }
+    if (m_deltaSnapshot && outputStreams.size() != 2) {
+        throwFatalException("serializeMore() expects two output streams for a delta snapshot, got %jd.",
+                            (intmax_t)outputStreams.size());
+    }
     outputStreams.open(getTable(),
                        getMaxTupleLength(),
                        getPartitionId(),
@@ -122,6 +160,9 @@ int64_t CopyOnWriteContext::handleStreamMore(TupleOutputStreamProcessor &outputS
 
         // Next tuple?
         bool hasMore = m_iterator->next(tuple);
+        if (m_modifiedTuplesOnly && !m_finishedTableScan) {
+            countSkippedTuples();
+        }
         if (hasMore) {
 
             // -1 is used as a sentinel value to disable counting for tests.
@@ -133,9 +174,24 @@ int64_t CopyOnWriteContext::handleStreamMore(TupleOutputStreamProcessor &outputS
              * Write the tuple to all the output streams.
              * Done if any of the buffers filled up.
              * The returned copy count helps decide when to delete if m_doDelete is true.
+             * Delta snapshots write modified tuples to the first stream and
+             * deleted tuples to the second.
              */
             bool deleteTuple = false;
-            yield = outputStreams.writeRow(getSerializer(), tuple, &deleteTuple);
+            if (m_streamingDeletedTuples) {
+                yield = outputStreams.writeRowTo(1, getSerializer(), tuple);
+            } else if (m_deltaSnapshot) {
+                if (!m_modifiedTuplesOnly || tuple.isModified()) {
+                    yield = outputStreams.writeRowTo(0, getSerializer(), tuple);
+                }
+            } else {
+                yield = outputStreams.writeRow(getSerializer(), tuple, &deleteTuple);
+            }
+            if (m_trackChanges) {
+                // Tuples changed after activation are dirty and not returned
+                // by the scan, so they keep the flag for the next delta.
+                tuple.setModifiedFalse();
+            }
             /*
              * May want to delete tuple if processing the actual table.
              */
@@ -169,6 +225,13 @@ int64_t CopyOnWriteContext::handleStreamMore(TupleOutputStreamProcessor &outputS
             m_finishedTableScan = true;
             // Note that m_iterator no longer points to (or should reference) the CopyOnWriteIterator
             m_iterator.reset(m_backedUpTuples.get()->makeIterator());
+        } else if (m_deletedTuples != NULL && !m_streamingDeletedTuples) {
+            /*
+             * After the backed up tuples a delta snapshot writes the tuples
+             * deleted since the last change tracking snapshot.
+             */
+            m_streamingDeletedTuples = true;
+            m_iterator.reset(m_deletedTuples->makeIterator());
         } else {
             /*
              * No more tuples in the temp table and had previously finished the
@@ -350,6 +413,19 @@ void CopyOnWriteContext::markTupleDirty(TableTuple tuple, bool newTuple) {
     }
 }
 
+/*
+ * Count the tuples of the unmodified blocks the delta scan passed over
+ * as streamed.
+ */
+void CopyOnWriteContext::countSkippedTuples() {
+    int64_t skipped = static_cast<CopyOnWriteIterator*>(m_iterator.get())->takeSkippedTupleCount();
+    // -1 is used as a sentinel value to disable counting for tests.
+    if (m_tuplesRemaining > 0) {
+        assert(skipped <= m_tuplesRemaining);
+        m_tuplesRemaining -= skipped;
+    }
+}
+
 void CopyOnWriteContext::notifyBlockWasCompactedAway(TBPtr block) {
     assert(m_iterator != NULL);
     if (m_finishedTableScan) {
@@ -28,6 +28,7 @@
 #include "common/Pool.hpp"
 #include "common/tabletuple.h"
 #include <boost/scoped_ptr.hpp>
+#include <boost/shared_ptr.hpp>
 #include <boost/ptr_container/ptr_vector.hpp>
 
 namespace voltdb {
@@ -120,6 +121,21 @@ private:
 
     bool m_finishedTableScan;
 
+    /**
+     * Delta bases and deltas clear the modified flag of the tuples they write.
+     * Delta snapshots write only the tuples modified since the last change
+     * tracking snapshot to the first output stream, then the tuples deleted
+     * since then to the second one. A delta whose changes are unknown writes
+     * every tuple and starts the deletes with an all-NULL tuple that tells
+     * the restore to empty the table first.
+     */
+    bool m_trackChanges;
+    bool m_deltaSnapshot;
+    bool m_modifiedTuplesOnly;
+    bool m_streamingDeletedTuples;
+    boost::shared_ptr<TempTable> m_deletedTuples;
+    boost::shared_ptr<Pool> m_deletedTuplesPool;
+
     int64_t m_totalTuples;
     int64_t m_tuplesRemaining;
     int64_t m_blocksCompacted;
@@ -130,6 +146,8 @@ private:
 
     void checkRemainingTuples(const std::string &label);
 
+    void countSkippedTuples();
+
 };
 
 }
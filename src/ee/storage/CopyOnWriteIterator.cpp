@@ -21,7 +21,8 @@
 namespace voltdb {
 CopyOnWriteIterator::CopyOnWriteIterator(
         PersistentTable *table,
-        PersistentTableSurgeon *surgeon) :
+        PersistentTableSurgeon *surgeon,
+        bool skipUnmodifiedBlocks) :
         m_table(table), m_surgeon(surgeon), m_blocks(m_surgeon->getData()),
         m_blockIterator(m_blocks.begin()), m_end(m_blocks.end()),
         m_tupleLength(table->getTupleLength()),
@@ -29,6 +30,8 @@ CopyOnWriteIterator::CopyOnWriteIterator(
         m_blockOffset(0),
         m_currentBlock(NULL),
         m_tableEmpty(false),
+        m_skipUnmodifiedBlocks(skipUnmodifiedBlocks),
+        m_skippedUnmodifiedTuples(0),
         m_skippedDirtyRows(0),
         m_skippedInactiveRows(0) {
 
@@ -128,6 +131,14 @@ bool CopyOnWriteIterator::next(TableTuple &out) {
             m_blockIterator = m_blocks.upper_bound(m_currentBlock->address());
             m_end = m_blocks.end();
         }
+        if (m_skipUnmodifiedBlocks && m_blockOffset == 0 && !m_currentBlock->needsDeltaScan()) {
+            // Nothing in the block changed since the last delta, and nothing can
+            // be dirty or pending delete in it either. Count its tuples and move on.
+            m_skippedUnmodifiedTuples += m_currentBlock->activeTuples();
+            m_blockOffset = m_currentBlock->unusedTupleBoundry();
+            m_location = m_currentBlock->address() + m_blockOffset * m_tupleLength;
+            continue;
+        }
         assert(m_location < m_currentBlock.get()->address() + m_table->getTableAllocationSize());
         assert(m_location < m_currentBlock.get()->address() + (m_table->getTupleLength() * m_table->getTuplesPerBlock()));
         assert (out.sizeInValues() == m_table->columnCount());
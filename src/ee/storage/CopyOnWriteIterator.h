@@ -33,7 +33,8 @@ public:
 
     CopyOnWriteIterator(
         PersistentTable *table,
-        PersistentTableSurgeon *surgeon);
+        PersistentTableSurgeon *surgeon,
+        bool skipUnmodifiedBlocks = false);
 
     bool needToDirtyTuple(char *tupleAddress);
 
@@ -75,6 +76,16 @@ public:
 
     int64_t countRemaining() const;
 
+    /**
+     * Number of active tuples in the blocks skipped since the last call,
+     * the caller counts them as streamed.
+     */
+    int64_t takeSkippedTupleCount() {
+        int64_t skipped = m_skippedUnmodifiedTuples;
+        m_skippedUnmodifiedTuples = 0;
+        return skipped;
+    }
+
 private:
     /**
      * Table being iterated over
@@ -110,6 +121,9 @@ private:
     TBPtr m_currentBlock;
     // flag to track if the snapshot was activated when the table was empty
     bool m_tableEmpty;
+    // delta snapshots pass over the blocks that didn't change since the last one
+    const bool m_skipUnmodifiedBlocks;
+    int64_t m_skippedUnmodifiedTuples;
 public:
     int32_t m_skippedDirtyRows;
     int32_t m_skippedInactiveRows;
@@ -50,9 +50,16 @@ public:
     /*
      * Release any resources held by the undo action. It will not need
      * to be undone in the future. In this case the string allocations
-     * of the old tuple must be released.
+     * of the old tuple must be released, after the table had a chance
+     * to remember an old primary key for the next delta snapshot.
      */
-    virtual void release() { NValue::freeObjectsFromTupleStorage(m_oldUninlineableColumns); }
+    virtual void release()
+    {
+        if (m_revertIndexes) {
+            m_table->updateTupleRelease(m_oldTuple, m_newTuple);
+        }
+        NValue::freeObjectsFromTupleStorage(m_oldUninlineableColumns);
+    }
 
     virtual ~PersistentTableUndoUpdateAction() { }
 
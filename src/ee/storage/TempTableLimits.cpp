@@ -17,13 +17,31 @@
 
 #include "TempTableLimits.h"
 
+#include "common/FatalException.hpp"
 #include "common/SQLException.h"
 #include "logging/LogManager.h"
 
+#include <cassert>
+#include <cerrno>
 #include <cstdio>
+#include <cstdlib>
+#include <cstring>
+#include <fcntl.h>
+#include <sys/mman.h>
+#include <unistd.h>
 
 namespace voltdb {
 
+TempTableLimits::~TempTableLimits()
+{
+    // Every spilled block unmaps itself when its table releases it,
+    // which happens before the owning executor vector drops its limits.
+    assert(m_spillExtents.empty());
+    if (m_spillFd >= 0) {
+        ::close(m_spillFd);
+    }
+}
+
 void TempTableLimits::reduceAllocated(int bytes)
 {
     m_currMemoryInBytes -= bytes;
@@ -60,4 +78,129 @@ void TempTableLimits::increaseAllocated(int bytes)
     LogManager::getThreadLogger(LOGGERID_SQL)->log(LOGLEVEL_INFO, msg);
 }
 
+void TempTableLimits::setSpillDirectory(const std::string& directory, int64_t spillLimit)
+{
+    m_spillDirectory = directory;
+    m_spillLimit = spillLimit;
+}
+
+void TempTableLimits::openSpillFile()
+{
+    std::string path = m_spillDirectory + "/temptable_spill_XXXXXX";
+    std::vector<char> pathBuffer(path.begin(), path.end());
+    pathBuffer.push_back('\0');
+    m_spillFd = ::mkstemp(&pathBuffer[0]);
+    if (m_spillFd < 0) {
+        char msg[1024];
+        snprintf(msg, sizeof(msg), "Unable to create temp table spill file in %s: %s",
+                 m_spillDirectory.c_str(), strerror(errno));
+        throw SQLException(SQLException::volt_temp_table_memory_overflow, msg);
+    }
+    // Nobody else needs to find the file, and unlinking it now
+    // gives the space back even if the process dies.
+    ::unlink(&pathBuffer[0]);
+    m_spillFileSize = 0;
+}
+
+char* TempTableLimits::allocateSpilled(int bytes)
+{
+    if (m_spillLimit >= 0 && m_spilledBytes + bytes > m_spillLimit) {
+        int limit_mb = static_cast<int>(m_memoryLimit / (1024 * 1024));
+        int spill_mb = static_cast<int>(m_spillLimit / (1024 * 1024));
+        char msg[1024];
+        snprintf(msg, 1024,
+                 "More than %d MB of temp table memory and %d MB of temp table spill space used while executing SQL.  Aborting.",
+                 limit_mb, spill_mb);
+        throw SQLException(SQLException::volt_temp_table_memory_overflow, msg);
+    }
+
+    if (m_spillFd < 0) {
+        openSpillFile();
+    }
+
+    // Keep every region page aligned so it can be mapped on its own.
+    const size_t pageSize = static_cast<size_t>(::sysconf(_SC_PAGESIZE));
+    SpillExtent extent;
+    extent.m_size = ((static_cast<size_t>(bytes) + pageSize - 1) / pageSize) * pageSize;
+
+    std::vector<off_t>& freeOffsets = m_freeSpillExtents[extent.m_size];
+    if (!freeOffsets.empty()) {
+        extent.m_offset = freeOffsets.back();
+        freeOffsets.pop_back();
+    } else {
+        extent.m_offset = m_spillFileSize;
+        // Reserve the disk space up front. Running out of space while the
+        // kernel writes back a shared mapping would otherwise SIGBUS the process.
+#ifdef __linux__
+        int err = ::posix_fallocate(m_spillFd, extent.m_offset, extent.m_size);
+#else
+        int err = ::ftruncate(m_spillFd, extent.m_offset + extent.m_size) == 0 ? 0 : errno;
+#endif
+        if (err != 0) {
+            char msg[1024];
+            snprintf(msg, sizeof(msg), "Unable to grow temp table spill file in %s: %s",
+                     m_spillDirectory.c_str(), strerror(err));
+            throw SQLException(SQLException::volt_temp_table_memory_overflow, msg);
+        }
+        m_spillFileSize += extent.m_size;
+    }
+
+    void* storage = ::mmap(NULL, extent.m_size, PROT_READ | PROT_WRITE, MAP_SHARED,
+                           m_spillFd, extent.m_offset);
+    if (storage == MAP_FAILED) {
+        m_freeSpillExtents[extent.m_size].push_back(extent.m_offset);
+        char msg[1024];
+        snprintf(msg, sizeof(msg), "Unable to map temp table spill file: %s", strerror(errno));
+        throw SQLException(SQLException::volt_temp_table_memory_overflow, msg);
+    }
+
+    m_spillExtents[static_cast<char*>(storage)] = extent;
+    m_spilledBytes += extent.m_size;
+    return static_cast<char*>(storage);
+}
+
+void TempTableLimits::releaseSpilled(char* storage)
+{
+    std::map<char*, SpillExtent>::iterator it = m_spillExtents.find(storage);
+    assert(it != m_spillExtents.end());
+    const SpillExtent extent = it->second;
+    m_spillExtents.erase(it);
+
+    if (::munmap(storage, extent.m_size) != 0) {
+        throwFatalException("Failed munmap of temp table spill block: %s", strerror(errno));
+    }
+    m_spilledBytes -= extent.m_size;
+
+    if (m_spillExtents.empty()) {
+        // Nothing is spilled anymore, give the disk space back.
+        m_freeSpillExtents.clear();
+        m_spilledBytes = 0;
+        m_spillFileSize = 0;
+        if (::ftruncate(m_spillFd, 0) != 0) {
+            throwFatalException("Failed to truncate temp table spill file: %s", strerror(errno));
+        }
+    } else {
+        m_freeSpillExtents[extent.m_size].push_back(extent.m_offset);
+    }
+}
+
+void TempTableLimits::evictSpilled(char* storage)
+{
+    std::map<char*, SpillExtent>::const_iterator it = m_spillExtents.find(storage);
+    assert(it != m_spillExtents.end());
+    // Dropping the pages of a shared file mapping keeps their contents in the file,
+    // start writing them back so the kernel can reclaim them cheaply.
+    ::madvise(storage, it->second.m_size, MADV_DONTNEED);
+#ifdef __linux__
+    ::posix_fadvise(m_spillFd, it->second.m_offset, it->second.m_size, POSIX_FADV_DONTNEED);
+#endif
+}
+
+void TempTableLimits::prefetchSpilled(char* storage)
+{
+    std::map<char*, SpillExtent>::const_iterator it = m_spillExtents.find(storage);
+    assert(it != m_spillExtents.end());
+    ::madvise(storage, it->second.m_size, MADV_WILLNEED);
+}
+
 } // namespace voltdb
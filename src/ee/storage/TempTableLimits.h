@@ -19,12 +19,24 @@
 #define _EE_STORAGE_TEMPTABLELIMITS_H_
 
 #include <stdint.h>
+#include <sys/types.h>
+
+#include <map>
+#include <string>
+#include <vector>
 
 namespace voltdb {
 
 /**
  * Track the amount of memory used by temp tables in a plan fragment's executors.
  * Log or throw exceptions based on thresholds.
+ *
+ * When a spill directory is configured, temp table blocks that would push the
+ * fragment over its memory limit are instead backed by a shared mapping of an
+ * unlinked scratch file in that directory. The kernel writes those pages back to
+ * the file and drops them under memory pressure, while the tuple addresses stay
+ * valid for as long as the block lives. Spilled bytes are tracked separately and
+ * bounded by their own limit.
  */
 class TempTableLimits {
 public:
@@ -34,8 +46,14 @@ public:
         , m_logThreshold(logThreshold)
         , m_memoryLimit(memoryLimit)
         , m_logLatch(false)
+        , m_spillLimit(-1)
+        , m_spillFd(-1)
+        , m_spillFileSize(0)
+        , m_spilledBytes(0)
     { }
 
+    ~TempTableLimits();
+
     /**
      * Track an increase in the amount of memory accumulated in temp tables.
      * Log once at INFO level to the SQL instance if the log threshold is set and it is crossed.
@@ -47,8 +65,47 @@ public:
     int64_t getAllocated() const { return m_currMemoryInBytes; }
     int64_t getPeakMemoryInBytes() const { return m_peakMemoryInBytes; }
     void resetPeakMemory() { m_peakMemoryInBytes = m_currMemoryInBytes; }
+    int64_t getMemoryLimit() const { return m_memoryLimit; }
+
+    /**
+     * Back blocks over the memory limit with a scratch file in the given directory,
+     * up to spillLimit bytes (a negative value means no limit).
+     * An empty directory disables spilling.
+     */
+    void setSpillDirectory(const std::string& directory, int64_t spillLimit);
+    bool canSpill() const { return !m_spillDirectory.empty(); }
+
+    /// True if a new block of the given size should be allocated from the scratch file.
+    bool shouldSpill(int bytes) const {
+        return canSpill() && m_memoryLimit > 0 && m_currMemoryInBytes + bytes > m_memoryLimit;
+    }
+
+    /**
+     * Map a region of the scratch file for a new block.
+     * Throw a SQLException when the spill limit is exceeded or the file cannot be grown.
+     */
+    char* allocateSpilled(int bytes);
+    /// Unmap a block returned by allocateSpilled and recycle its region of the file.
+    void releaseSpilled(char* storage);
+    /// Hint that a spilled block will not be touched for a while, so its pages may be written out.
+    void evictSpilled(char* storage);
+    /// Hint that a spilled block is about to be scanned, so its pages may be read ahead.
+    void prefetchSpilled(char* storage);
+
+    int64_t getSpilled() const { return m_spilledBytes; }
 
 private:
+    // no copies, the scratch file and its mappings are owned by one instance
+    TempTableLimits(const TempTableLimits&);
+    TempTableLimits& operator=(const TempTableLimits&);
+
+    void openSpillFile();
+
+    struct SpillExtent {
+        off_t m_offset;
+        size_t m_size;
+    };
+
     /// The current amount of memory used by temp tables for this plan fragment.
     int64_t m_currMemoryInBytes;
     /// The high water amount of memory used by temp tables
@@ -63,6 +120,19 @@ private:
     /// True if we have already generated a log message for
     /// exceeding the log threshold and not yet dropped below it.
     bool m_logLatch;
+
+    /// Directory holding the scratch file, empty if spilling is disabled.
+    std::string m_spillDirectory;
+    /// The amount of spilled blocks at which an exception will be thrown.
+    /// A negative value disables this behavior.
+    int64_t m_spillLimit;
+    /// Scratch file, opened on the first spilled block and unlinked right away.
+    int m_spillFd;
+    off_t m_spillFileSize;
+    int64_t m_spilledBytes;
+    /// Mapped blocks by address, and released regions of the file by size.
+    std::map<char*, SpillExtent> m_spillExtents;
+    std::map<size_t, std::vector<off_t> > m_freeSpillExtents;
 };
 
 } // namespace voltdb
@@ -16,6 +16,7 @@
  */
 #include "storage/TupleBlock.h"
 #include "storage/table.h"
+#include "storage/TempTableLimits.h"
 #include <sys/mman.h>
 #include <errno.h>
 #include "common/ThreadLocalPool.h"
@@ -33,7 +34,10 @@ TupleBlock::TupleBlock(Table *table, TBBucketPtr bucket) :
         m_nextFreeTuple(0),
         m_lastCompactionOffset(0),
         m_bucket(bucket),
-        m_bucketIndex(0)
+        m_bucketIndex(0),
+        m_spillLimits(NULL),
+        m_modified(true),
+        m_modifiedBeforeDeltaScan(true)
 {
 #ifdef USE_MMAP
     size_t tableAllocationSize = static_cast<size_t> (m_tupleLength * m_tuplesPerBlock);
@@ -48,7 +52,39 @@ TupleBlock::TupleBlock(Table *table, TBBucketPtr bucket) :
     tupleBlocksAllocated++;
 }
 
+TupleBlock::TupleBlock(Table *table, TempTableLimits *spillLimits) :
+        m_storage(NULL),
+        m_references(0),
+        m_tupleLength(table->m_tupleLength),
+        m_tuplesPerBlock(table->m_tuplesPerBlock),
+        m_activeTuples(0),
+        m_nextFreeTuple(0),
+        m_lastCompactionOffset(0),
+        m_bucket(),
+        m_bucketIndex(0),
+        m_spillLimits(spillLimits),
+        m_modified(true),
+        m_modifiedBeforeDeltaScan(true)
+{
+    m_storage = m_spillLimits->allocateSpilled(table->m_tableAllocationSize);
+    tupleBlocksAllocated++;
+}
+
+void TupleBlock::evictSpilledStorage() {
+    assert(isSpilled());
+    m_spillLimits->evictSpilled(m_storage);
+}
+
+void TupleBlock::prefetchSpilledStorage() {
+    assert(isSpilled());
+    m_spillLimits->prefetchSpilled(m_storage);
+}
+
 TupleBlock::~TupleBlock() {
+    if (m_spillLimits != NULL) {
+        m_spillLimits->releaseSpilled(m_storage);
+        return;
+    }
 #ifdef USE_MMAP
     size_t tableAllocationSize = static_cast<size_t> (m_tupleLength * m_tuplesPerBlock);
     if (::munmap( m_storage, tableAllocationSize) != 0) {
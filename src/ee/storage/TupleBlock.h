@@ -47,6 +47,7 @@ void intrusive_ptr_release(voltdb::TupleBlock * p);
 
 namespace voltdb {
 class Table;
+class TempTableLimits;
 class TupleMovementListener;
 
 class TruncatedInt {
@@ -90,6 +91,11 @@ class TupleBlock {
     friend void ::intrusive_ptr_release(voltdb::TupleBlock * p);
 public:
     TupleBlock(Table *table, TBBucketPtr bucket);
+    /**
+     * Construct a temp table block whose storage is mapped from the
+     * scratch file of the given limits instead of the heap.
+     */
+    TupleBlock(Table *table, TempTableLimits *spillLimits);
 
     void* operator new(std::size_t sz)
     {
@@ -218,6 +224,15 @@ public:
         return m_nextFreeTuple;
     }
 
+    inline bool isSpilled() const {
+        return m_spillLimits != NULL;
+    }
+
+    /// Let the pages of a spilled block go until it is scanned again.
+    void evictSpilledStorage();
+    /// Read ahead the pages of a spilled block that is about to be scanned.
+    void prefetchSpilledStorage();
+
     ~TupleBlock();
 
     inline uint32_t lastCompactionOffset() {
@@ -232,6 +247,25 @@ public:
         return m_activeTuples;
     }
 
+    /// Note that a tuple in the block was inserted, updated, deleted or moved.
+    inline void markModified() {
+        m_modified = true;
+    }
+
+    /// A change tracking snapshot was activated: remember whether the block
+    /// changed since the previous one, and track the changes from now on anew.
+    inline void startDeltaScan() {
+        m_modifiedBeforeDeltaScan = m_modified;
+        m_modified = false;
+    }
+
+    /// Whether a delta snapshot has to look at the tuples of the block.
+    /// A block that changed neither before nor since activation holds no
+    /// modified, dirty or pending delete tuples.
+    inline bool needsDeltaScan() const {
+        return m_modifiedBeforeDeltaScan || m_modified;
+    }
+
     inline TBBucketPtr currentBucket() {
         return m_bucket;
     }
@@ -255,6 +289,13 @@ private:
 
     TBBucketPtr m_bucket;
     int m_bucketIndex;
+
+    // Owner of the scratch file backing m_storage, NULL for heap allocated blocks
+    TempTableLimits *m_spillLimits;
+
+    // Change tracking for incremental snapshots, see needsDeltaScan()
+    bool m_modified;
+    bool m_modifiedBeforeDeltaScan;
 };
 
 /**
@@ -60,6 +60,7 @@
 #include "common/FatalException.hpp"
 #include "common/types.h"
 #include "common/RecoveryProtoMessage.h"
+#include "common/StringDictionary.h"
 #include "common/StreamPredicateList.h"
 #include "common/ValueFactory.hpp"
 #include "catalog/catalog.h"
@@ -72,6 +73,7 @@
 #include "logging/LogManager.h"
 #include "storage/tableiterator.h"
 #include "storage/tablefactory.h"
+#include "storage/temptable.h"
 #include "storage/TableCatalogDelegate.hpp"
 #include "storage/PersistentTableStats.h"
 #include "storage/PersistentTableUndoInsertAction.h"
@@ -117,7 +119,12 @@ PersistentTable::PersistentTable(int partitionColumn, char * signature, bool isM
     m_tupleLimit(tupleLimit),
     m_purgeExecutorVector(),
     stats_(this),
+    m_pendingIndexBlock(NULL),
+    m_pendingIndexOffset(0),
+    m_stringSharing(false),
     m_failedCompactionCount(0),
+    m_deltaTracking(false),
+    m_deltaTruncated(false),
     m_invisibleTuplesPendingDeleteCount(0),
     m_surgeon(*this),
     m_isMaterialized(isMaterialized),
@@ -180,6 +187,10 @@ PersistentTable::~PersistentTable()
         delete m_views[i];
     }
 
+    BOOST_FOREACH(TableIndex *index, m_pendingIndexes) {
+        delete index;
+    }
+
     // Indexes are deleted in parent class Table destructor.
 }
 
@@ -213,6 +224,7 @@ void PersistentTable::nextFreeTuple(TableTuple *tuple) {
 
         tuple->move(retval.first);
         ++m_tupleCount;
+        block->markModified();
         if (!block->hasFreeTuples()) {
             m_blocksWithSpace.erase(block);
         }
@@ -249,6 +261,7 @@ void PersistentTable::nextFreeTuple(TableTuple *tuple) {
 
     tuple->move(retval.first);
     ++m_tupleCount;
+    block->markModified();
     if (block->hasFreeTuples()) {
         m_blocksWithSpace.insert(block);
     }
@@ -314,6 +327,10 @@ void PersistentTable::truncateTableRelease(PersistentTable *originalTable) {
     m_tuplesPinnedByUndo = 0;
     m_invisibleTuplesPendingDeleteCount = 0;
 
+    // Keep tracking changes, the next delta snapshot replaces the whole table.
+    m_deltaTracking = originalTable->m_deltaTracking;
+    m_deltaTruncated = originalTable->m_deltaTracking;
+
     if (originalTable->m_tableStreamer != NULL) {
         std::stringstream message;
         message << "Transfering table stream after truncation of table ";
@@ -516,6 +533,10 @@ void PersistentTable::insertPersistentTuple(TableTuple &source, bool fallible, b
 
 void PersistentTable::insertTupleCommon(TableTuple &source, TableTuple &target, bool fallible, bool shouldDRStream)
 {
+    if (!m_sharedStringColumns.empty()) {
+        internStrings(target);
+    }
+
     if (fallible) {
         // not null checks at first
         FAIL_IF(!checkNulls(target)) {
@@ -547,12 +568,13 @@ void PersistentTable::insertTupleCommon(TableTuple &source, TableTuple &target,
     }
 
     if (m_schema->getUninlinedObjectColumnCount() != 0) {
-        increaseStringMemCount(target.getNonInlinedMemorySize());
+        countStringMemory(target, true);
     }
 
     target.setActiveTrue();
     target.setPendingDeleteFalse();
     target.setPendingDeleteOnUndoReleaseFalse();
+    target.setModifiedTrue();
 
     /**
      * Inserts never "dirty" a tuple since the tuple is new, but...  The
@@ -718,6 +740,7 @@ void PersistentTable::updateTupleWithSpecificIndexes(TableTuple &targetTupleToUp
             }
         }
     }
+    deleteFromPendingIndexes(&targetTupleToUpdate);
 
     {
         // handle any materialized views, hide the tuple from the scan temporarily.
@@ -727,9 +750,9 @@ void PersistentTable::updateTupleWithSpecificIndexes(TableTuple &targetTupleToUp
         }
     }
 
+    // The new values are counted once they are copied in and shared
     if (m_schema->getUninlinedObjectColumnCount() != 0) {
-        decreaseStringMemCount(targetTupleToUpdate.getNonInlinedMemorySize());
-        increaseStringMemCount(sourceTupleWithNewValues.getNonInlinedMemorySize());
+        countStringMemory(targetTupleToUpdate, false);
     }
 
     // TODO: This is a little messed up.
@@ -748,6 +771,18 @@ void PersistentTable::updateTupleWithSpecificIndexes(TableTuple &targetTupleToUp
     } else {
         sourceTupleWithNewValues.setDirtyFalse();
     }
+    // The next delta snapshot has to write the new values. Undo restores the
+    // old flag along with the old values.
+    sourceTupleWithNewValues.setModifiedTrue();
+    if (m_deltaTracking) {
+        trackModifiedBlock(targetTupleToUpdate.address());
+        // Without an undo action to release, the update commits right here.
+        // A changed primary key leaves the old one behind as a deleted tuple.
+        if (uq == NULL && primaryKeyIndex() != NULL &&
+                primaryKeyIndex()->checkForIndexChange(&targetTupleToUpdate, &sourceTupleWithNewValues)) {
+            trackDeletedTuple(targetTupleToUpdate);
+        }
+    }
 
     // Either the "before" or "after" object reference values that change will come in handy later,
     // so collect them up.
@@ -756,6 +791,12 @@ void PersistentTable::updateTupleWithSpecificIndexes(TableTuple &targetTupleToUp
 
     // this is the actual write of the new values
     targetTupleToUpdate.copyForPersistentUpdate(sourceTupleWithNewValues, oldObjects, newObjects);
+    if (!m_sharedStringColumns.empty() && !newObjects.empty()) {
+        internStrings(targetTupleToUpdate, &newObjects);
+    }
+    if (m_schema->getUninlinedObjectColumnCount() != 0) {
+        countStringMemory(targetTupleToUpdate, true);
+    }
 
     if (uq) {
         /*
@@ -789,6 +830,7 @@ void PersistentTable::updateTupleWithSpecificIndexes(TableTuple &targetTupleToUp
                                 m_name.c_str(), index->getName().c_str());
         }
     }
+    insertIntoPendingIndexes(&targetTupleToUpdate);
 
     // handle any materialized views
     for (int i = 0; i < m_views.size(); i++) {
@@ -830,11 +872,13 @@ void PersistentTable::updateTupleForUndo(char* tupleWithUnwantedValues,
             }
         }
     }
+    // The update always touched the pending indexes, whatever the key change.
+    deleteFromPendingIndexes(&targetTupleToUpdate);
 
     if (m_schema->getUninlinedObjectColumnCount() != 0)
     {
-        decreaseStringMemCount(targetTupleToUpdate.getNonInlinedMemorySize());
-        increaseStringMemCount(sourceTupleWithNewValues.getNonInlinedMemorySize());
+        countStringMemory(targetTupleToUpdate, false);
+        countStringMemory(sourceTupleWithNewValues, true);
     }
 
     bool dirty = targetTupleToUpdate.isDirty();
@@ -857,6 +901,7 @@ void PersistentTable::updateTupleForUndo(char* tupleWithUnwantedValues,
             }
         }
     }
+    insertIntoPendingIndexes(&targetTupleToUpdate);
 }
 
 bool PersistentTable::deleteTuple(TableTuple &target, bool fallible) {
@@ -907,6 +952,7 @@ bool PersistentTable::deleteTuple(TableTuple &target, bool fallible) {
     }
 
     // Here, for reasons of infallibility or no active UndoLog, there is no undo, there is only DO.
+    trackDeletedTuple(target);
     deleteTupleFinalize(target);
     return true;
 }
@@ -922,9 +968,89 @@ void PersistentTable::deleteTupleRelease(char* tupleData)
     target.setPendingDeleteOnUndoReleaseFalse();
     m_tuplesPinnedByUndo--;
     --m_invisibleTuplesPendingDeleteCount;
+    trackDeletedTuple(target);
     deleteTupleFinalize(target);
 }
 
+/**
+ * This entry point is triggered by the successful release of an UndoUpdateAction
+ * that changed an index key. If the primary key changed, the next delta snapshot
+ * has to delete the tuple under its old key.
+ */
+void PersistentTable::updateTupleRelease(char* oldTupleData, char* newTupleData)
+{
+    TableIndex *pkeyIndex = primaryKeyIndex();
+    if (!m_deltaTracking || pkeyIndex == NULL) {
+        return;
+    }
+    TableTuple oldTuple(oldTupleData, m_schema);
+    TableTuple newTuple(newTupleData, m_schema);
+    if (pkeyIndex->checkForIndexChange(&oldTuple, &newTuple)) {
+        trackDeletedTuple(oldTuple);
+    }
+}
+
+/**
+ * Keep a deep copy of a tuple whose delete (or primary key change) committed
+ * since the last tracked snapshot. Tables without a primary key don't keep
+ * any, their deltas are always complete.
+ *
+ * Once more tuples were deleted than the table holds, replacing the whole
+ * table makes the smaller delta. The copies are dropped and the next delta
+ * is written like one after a truncate, which also bounds their memory.
+ */
+void PersistentTable::trackDeletedTuple(TableTuple &tuple)
+{
+    if (!m_deltaTracking) {
+        return;
+    }
+    trackModifiedBlock(tuple.address());
+    if (m_deltaDeletedTuples == NULL) {
+        return;
+    }
+    if (m_deltaDeletedTuples->tempTableTupleCount() >= activeTupleCount()) {
+        m_deltaDeletedTuples.reset();
+        m_deltaDeletedTuplesPool.reset();
+        m_deltaTruncated = true;
+        return;
+    }
+    m_deltaDeletedTuples->insertTupleNonVirtualWithDeepCopy(tuple, m_deltaDeletedTuplesPool.get());
+}
+
+void PersistentTable::trackModifiedBlock(char *tupleAddress)
+{
+    // NULL for copies of tuples that live outside the table, e.g. in the undo pool.
+    TBPtr block = findBlock(tupleAddress, m_data, m_tableAllocationSize);
+    if (block != NULL) {
+        block->markModified();
+    }
+}
+
+bool PersistentTable::restartDeltaTracking(boost::shared_ptr<TempTable> &deletedTuples,
+                                           boost::shared_ptr<Pool> &deletedTuplesPool)
+{
+    bool changesKnown = m_deltaTracking && !m_deltaTruncated && primaryKeyIndex() != NULL;
+    deletedTuples = m_deltaDeletedTuples;
+    deletedTuplesPool = m_deltaDeletedTuplesPool;
+
+    m_deltaTracking = true;
+    m_deltaTruncated = false;
+    if (primaryKeyIndex() != NULL) {
+        m_deltaDeletedTuples.reset(TableFactory::getCopiedTempTable(databaseId(), "Deleted from " + name(),
+                                                                    this, NULL));
+        m_deltaDeletedTuplesPool.reset(new Pool());
+    } else {
+        m_deltaDeletedTuples.reset();
+        m_deltaDeletedTuplesPool.reset();
+    }
+
+    // The blocks that changed before now are the ones this delta has to scan.
+    for (TBMapI iter = m_data.begin(); iter != m_data.end(); ++iter) {
+        iter.data()->startDeltaScan();
+    }
+    return changesKnown;
+}
+
 /**
  * Actually follow through with a "delete" -- this is common code between UndoDeleteAction release and the
  * all-at-once infallible deletes that bypass Undo processing.
@@ -1067,6 +1193,7 @@ void PersistentTable::insertIntoAllIndexes(TableTuple *tuple) {
                     "Failed to insert tuple in Table: %s Index %s", m_name.c_str(), index->getName().c_str());
         }
     }
+    insertIntoPendingIndexes(tuple);
 }
 
 void PersistentTable::deleteFromAllIndexes(TableTuple *tuple) {
@@ -1076,6 +1203,7 @@ void PersistentTable::deleteFromAllIndexes(TableTuple *tuple) {
                     "Failed to delete tuple in Table: %s Index %s", m_name.c_str(), index->getName().c_str());
         }
     }
+    deleteFromPendingIndexes(tuple);
 }
 
 void PersistentTable::tryInsertOnAllIndexes(TableTuple *tuple, TableTuple *conflict) {
@@ -1091,6 +1219,203 @@ void PersistentTable::tryInsertOnAllIndexes(TableTuple *tuple, TableTuple *confl
             return;
         }
     }
+    insertIntoPendingIndexes(tuple);
+}
+
+// How many values of a column are interned before deciding whether sharing
+// them is worth it
+static const int32_t SHARED_STRING_SAMPLE_SIZE = 1024;
+
+void PersistentTable::internStrings(TableTuple &tuple, std::vector<char*> *newObjects) {
+    StringDictionary *dictionary = StringDictionary::instance();
+    std::vector<SharedStringColumn>::iterator column = m_sharedStringColumns.begin();
+    while (column != m_sharedStringColumns.end()) {
+        const TupleSchema::ColumnInfo *columnInfo = m_schema->getColumnInfo(column->m_columnIndex);
+        StringRef **sref = reinterpret_cast<StringRef**>(tuple.getWritableDataPtr(columnInfo));
+        std::vector<char*>::iterator newObject;
+        if (newObjects != NULL) {
+            newObject = std::find(newObjects->begin(), newObjects->end(), reinterpret_cast<char*>(*sref));
+        }
+        if (*sref == NULL || (newObjects != NULL && newObject == newObjects->end())) {
+            ++column;
+            continue;
+        }
+
+        bool added;
+        *sref = dictionary->intern(*sref, added);
+        if (newObjects != NULL) {
+            *newObject = reinterpret_cast<char*>(*sref);
+        }
+        ++column->m_interned;
+        if (added) {
+            ++column->m_added;
+        }
+
+        if (column->m_interned < SHARED_STRING_SAMPLE_SIZE) {
+            ++column;
+        }
+        else if (column->m_added > SHARED_STRING_SAMPLE_SIZE / 2) {
+            // Mostly distinct values, stop sharing. The strings already shared
+            // go on being counted until their tuples free them.
+            VOLT_DEBUG("Column %d of table %s has too many distinct values to share them",
+                       column->m_columnIndex, m_name.c_str());
+            column = m_sharedStringColumns.erase(column);
+        }
+        else {
+            column->m_interned = 0;
+            column->m_added = 0;
+            ++column;
+        }
+    }
+}
+
+void PersistentTable::setStringSharing(bool enabled) {
+    if (enabled == m_stringSharing) {
+        return;
+    }
+    m_stringSharing = enabled;
+    // Strings shared so far stay shared until their tuples free them
+    resetSharedStringColumns();
+}
+
+void PersistentTable::resetSharedStringColumns() {
+    m_sharedStringColumns.clear();
+    if (!m_stringSharing) {
+        return;
+    }
+    for (int i = 0; i < m_columnCount; ++i) {
+        const TupleSchema::ColumnInfo *columnInfo = m_schema->getColumnInfo(i);
+        ValueType type = columnInfo->getVoltType();
+        if (!columnInfo->inlined && (type == VALUE_TYPE_VARCHAR || type == VALUE_TYPE_VARBINARY)) {
+            m_sharedStringColumns.push_back(SharedStringColumn(i));
+        }
+    }
+}
+
+void PersistentTable::countStringMemory(const TableTuple &tuple, bool add) {
+    if (!m_stringSharing && m_sharedStringRefs.empty()) {
+        if (add) {
+            increaseStringMemCount(tuple.getNonInlinedMemorySize());
+        } else {
+            decreaseStringMemCount(tuple.getNonInlinedMemorySize());
+        }
+        return;
+    }
+
+    // A shared string is counted when the first tuple of the table takes it
+    // and uncounted when the last one lets go of it.
+    StringDictionary *dictionary = StringDictionary::instance();
+    size_t bytes = 0;
+    for (int i = 0; i < m_columnCount; ++i) {
+        const TupleSchema::ColumnInfo *columnInfo = m_schema->getColumnInfo(i);
+        if (columnInfo->inlined || !isVariableLengthType(columnInfo->getVoltType())) {
+            continue;
+        }
+        const StringRef *sref = *reinterpret_cast<StringRef* const*>(tuple.getDataPtr(columnInfo));
+        if (sref != NULL && dictionary->isShared(sref)) {
+            if (add) {
+                if (++m_sharedStringRefs[sref] > 1) {
+                    continue;
+                }
+            } else {
+                boost::unordered_map<const StringRef*, int32_t>::iterator it = m_sharedStringRefs.find(sref);
+                if (it != m_sharedStringRefs.end()) {
+                    if (--it->second > 0) {
+                        continue;
+                    }
+                    m_sharedStringRefs.erase(it);
+                }
+            }
+        }
+        bytes += tuple.getNValue(i).getAllocationSizeForObject();
+    }
+    if (add) {
+        increaseStringMemCount(bytes);
+    } else {
+        decreaseStringMemCount(bytes);
+    }
+}
+
+void PersistentTable::insertIntoPendingIndexes(TableTuple *tuple) {
+    BOOST_FOREACH(TableIndex *index, m_pendingIndexes) {
+        index->addEntry(tuple, NULL);
+    }
+}
+
+void PersistentTable::deleteFromPendingIndexes(TableTuple *tuple) {
+    // The build may not have reached the tuple yet, so it can be missing.
+    BOOST_FOREACH(TableIndex *index, m_pendingIndexes) {
+        index->deleteEntry(tuple);
+    }
+}
+
+void PersistentTable::addIndexInBackground(TableIndex *index) {
+    assert(!index->isUniqueIndex());
+    if (isPersistentTableEmpty()) {
+        addIndex(index);
+        return;
+    }
+    m_pendingIndexes.push_back(index);
+    // Start over so the new index sees every tuple. Indexes that were already
+    // pending skip the tuples they hold.
+    m_pendingIndexBlock = NULL;
+    m_pendingIndexOffset = 0;
+}
+
+int64_t PersistentTable::buildPendingIndexes(int64_t maxTuples) {
+    int64_t scanned = 0;
+    TBMapI blockIterator = m_pendingIndexBlock == NULL ? m_data.begin() : m_data.lower_bound(m_pendingIndexBlock);
+    if (blockIterator == m_data.end() || blockIterator.key() != m_pendingIndexBlock) {
+        // The block was compacted away and its tuples were indexed as they moved.
+        m_pendingIndexOffset = 0;
+    }
+
+    TableTuple tuple(m_schema);
+    while (blockIterator != m_data.end()) {
+        char *blockAddress = blockIterator.key();
+        const uint32_t boundary = blockIterator.data()->unusedTupleBoundry();
+        while (m_pendingIndexOffset < boundary) {
+            if (scanned == maxTuples) {
+                m_pendingIndexBlock = blockAddress;
+                return scanned;
+            }
+            tuple.move(blockAddress + m_pendingIndexOffset * m_tupleLength);
+            ++m_pendingIndexOffset;
+            ++scanned;
+            if (!tuple.isActive() || tuple.isPendingDelete() || tuple.isPendingDeleteOnUndoRelease()) {
+                continue;
+            }
+            BOOST_FOREACH(TableIndex *index, m_pendingIndexes) {
+                // Tuples inserted or changed since the build started are already there.
+                if (!index->exists(&tuple)) {
+                    index->addEntry(&tuple, NULL);
+                }
+            }
+        }
+        ++blockIterator;
+        m_pendingIndexOffset = 0;
+    }
+
+    BOOST_FOREACH(TableIndex *index, m_pendingIndexes) {
+        addPopulatedIndex(index);
+    }
+    m_pendingIndexes.clear();
+    m_pendingIndexBlock = NULL;
+    return scanned;
+}
+
+TableIndex *PersistentTable::index(std::string name) {
+    bool pending = false;
+    BOOST_FOREACH(TableIndex *index, m_pendingIndexes) {
+        if (index->getName().compare(name) == 0) {
+            pending = true;
+            break;
+        }
+    }
+    if (pending) {
+        finishPendingIndexes();
+    }
+    return Table::index(name);
 }
 
 bool PersistentTable::checkUpdateOnUniqueIndexes(TableTuple &targetTupleToUpdate,
@@ -1262,6 +1587,8 @@ void PersistentTable::onSetColumns() {
         m_allowNulls[i] = columnInfo->allowNull;
     }
 
+    resetSharedStringColumns();
+
     // Also clear some used block state. this structure doesn't have
     // an block ownership semantics - it's just a cache. I think.
     m_blocksWithSpace.clear();
@@ -1294,11 +1621,30 @@ void PersistentTable::processLoadedTuple(TableTuple &tuple,
             deleteTupleStorage(tuple);
             return;
         } else {
+            // The load is failing, leave the table as it was for the undo
+            deleteTupleStorage(tuple); // also frees object columns
             throw;
         }
+    } catch (TupleStreamException &e) {
+        deleteTupleStorage(tuple); // also frees object columns
+        throw;
     }
 }
 
+void PersistentTable::abandonLoadedTuple(TableTuple &tuple) {
+    // The string memory was never counted for this tuple, so free the
+    // deserialized objects here and hand deleteTupleStorage null columns.
+    if (m_schema->getUninlinedObjectColumnCount() != 0) {
+        tuple.freeObjectColumns();
+        for (uint16_t ii = 0; ii < m_schema->getUninlinedObjectColumnCount(); ii++) {
+            const TupleSchema::ColumnInfo *columnInfo =
+                m_schema->getColumnInfo(m_schema->getUninlinedObjectColumnInfoIndex(ii));
+            *reinterpret_cast<char**>(tuple.getWritableDataPtr(columnInfo)) = NULL;
+        }
+    }
+    deleteTupleStorage(tuple);
+}
+
 TableStats* PersistentTable::getTableStats() {
     return &stats_;
 }
@@ -1441,6 +1787,7 @@ void PersistentTable::notifyBlockWasCompactedAway(TBPtr block) {
 // Call-back from TupleBlock::merge() for each tuple moved.
 void PersistentTable::notifyTupleMovement(TBPtr sourceBlock, TBPtr targetBlock,
                                           TableTuple &sourceTuple, TableTuple &targetTuple) {
+    targetBlock->markModified();
     if (m_tableStreamer != NULL) {
         m_tableStreamer->notifyTupleMovement(sourceBlock, targetBlock, sourceTuple, targetTuple);
     }
@@ -1475,6 +1822,12 @@ void PersistentTable::swapTuples(TableTuple &originalTuple,
                                     m_name.c_str(), index->getName().c_str());
             }
         }
+        // A tuple the pending index build has not reached yet is added at its new home.
+        BOOST_FOREACH(TableIndex *index, m_pendingIndexes) {
+            if (!index->replaceEntryNoKeyChange(destinationTuple, originalTuple)) {
+                index->addEntry(&destinationTuple, NULL);
+            }
+        }
     }
 }
 
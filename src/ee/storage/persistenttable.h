@@ -52,6 +52,7 @@
 #include <iostream>
 #include <boost/scoped_ptr.hpp>
 #include <boost/shared_ptr.hpp>
+#include <boost/unordered_map.hpp>
 #include "common/declarations.h"
 #include "common/types.h"
 #include "common/ids.h"
@@ -82,6 +83,9 @@ class MaterializedViewInfo;
 namespace voltdb {
 
 class CoveringCellIndexTest_TableCompaction;
+class Pool;
+class StringRef;
+class TempTable;
 
 /**
  * Interface used by contexts, scanners, iterators, and undo actions to access
@@ -104,6 +108,7 @@ public:
     void deleteTupleForUndo(char* tupleData, bool skipLookup = false);
     void deleteTupleRelease(char* tuple);
     void deleteTupleStorage(TableTuple &tuple, TBPtr block = TBPtr(NULL));
+    void updateTupleRelease(char* oldTupleData, char* newTupleData);
 
     size_t getSnapshotPendingBlockCount() const;
     size_t getSnapshotPendingLoadBlockCount() const;
@@ -136,6 +141,9 @@ public:
     boost::shared_ptr<ElasticIndexTupleRangeIterator>
             getIndexTupleRangeIterator(const ElasticIndexHashRange &range);
     void activateSnapshot();
+    // Change tracking for incremental snapshots. Used by CopyOnWriteContext.
+    bool restartDeltaTracking(boost::shared_ptr<TempTable> &deletedTuples,
+                              boost::shared_ptr<Pool> &deletedTuplesPool);
     void printIndex(std::ostream &os, int32_t limit) const;
     ElasticHash generateTupleHash(TableTuple &tuple) const;
 
@@ -290,6 +298,36 @@ class PersistentTable : public Table, public UndoQuantumReleaseInterest,
         m_smallestUniqueIndexCrc = 0;
     }
 
+    /*
+     * Add an empty non-unique index without populating it. Geospatial indexes
+     * can't be built this way as they don't support exists(). The index is kept
+     * up to date with every change to the table from here on while
+     * buildPendingIndexes() fills it in with the existing tuples. It joins
+     * allIndexes() once the build has covered the whole table.
+     */
+    void addIndexInBackground(TableIndex *index);
+
+    /*
+     * Scan up to maxTuples tuple slots into the pending indexes. Returns the
+     * number of slots scanned, which is less than maxTuples only if the
+     * build completed.
+     */
+    int64_t buildPendingIndexes(int64_t maxTuples);
+
+    // Complete the build of all pending indexes before returning.
+    void finishPendingIndexes() {
+        while (hasPendingIndexes()) {
+            buildPendingIndexes(INT64_MAX);
+        }
+    }
+
+    bool hasPendingIndexes() const {
+        return !m_pendingIndexes.empty();
+    }
+
+    // A pending index is finished before it is handed out.
+    virtual TableIndex *index(std::string name);
+
     // ------------------------------------------------------------------
     // PERSISTENT TABLE OPERATIONS
     // ------------------------------------------------------------------
@@ -404,6 +442,11 @@ class PersistentTable : public Table, public UndoQuantumReleaseInterest,
         m_nonInlinedMemorySize -= bytes;
     }
 
+    // Turn sharing of out of line strings between tuples on or off, see
+    // m_sharedStringColumns. Tables don't share strings unless configured to.
+    void setStringSharing(bool enabled);
+    bool stringSharing() const { return m_stringSharing; }
+
     size_t allocatedBlockCount() const {
         return m_data.size();
     }
@@ -567,6 +610,15 @@ class PersistentTable : public Table, public UndoQuantumReleaseInterest,
     void insertIntoAllIndexes(TableTuple *tuple);
     void deleteFromAllIndexes(TableTuple *tuple);
     void tryInsertOnAllIndexes(TableTuple *tuple, TableTuple *conflict);
+    void insertIntoPendingIndexes(TableTuple *tuple);
+    void deleteFromPendingIndexes(TableTuple *tuple);
+
+    // Swap the strings just copied into a tuple for shared ones, see
+    // m_sharedStringColumns. For an update only the new objects are swapped.
+    void internStrings(TableTuple &tuple, std::vector<char*> *newObjects = NULL);
+    void resetSharedStringColumns();
+    // Add or remove the out of line memory of a tuple from the table's count
+    void countStringMemory(const TableTuple &tuple, bool add);
     bool checkUpdateOnUniqueIndexes(TableTuple &targetTupleToUpdate,
                                     const TableTuple &sourceTupleWithNewValues,
                                     std::vector<TableIndex*> const &indexesToUpdate);
@@ -595,6 +647,21 @@ class PersistentTable : public Table, public UndoQuantumReleaseInterest,
     void deleteTupleForUndo(char* tupleData, bool skipLookup = false);
     void deleteTupleRelease(char* tuple);
     void deleteTupleFinalize(TableTuple &tuple);
+    void updateTupleRelease(char* oldTupleData, char* newTupleData);
+
+    /**
+     * Start tracking changes for incremental snapshots, or start over if the
+     * table already tracks them. Hands over the tuples deleted since the last
+     * tracked snapshot. Returns false if the changes since then are not known:
+     * the table did not track them, was truncated or has no primary key to
+     * identify deleted tuples by.
+     */
+    bool restartDeltaTracking(boost::shared_ptr<TempTable> &deletedTuples,
+                              boost::shared_ptr<Pool> &deletedTuplesPool);
+    // Keep a copy of a committed delete for the next delta snapshot.
+    void trackDeletedTuple(TableTuple &tuple);
+    // Flag the block holding a tuple so delta snapshots don't skip it.
+    void trackModifiedBlock(char *tupleAddress);
     /**
      * Normally this will return the tuple storage to the free list.
      * In the memcheck build it will return the storage to the heap.
@@ -611,6 +678,8 @@ class PersistentTable : public Table, public UndoQuantumReleaseInterest,
                                     size_t &tupleCountPosition,
                                     bool shouldDRStreamRows);
 
+    virtual void abandonLoadedTuple(TableTuple &tuple);
+
     enum LookupType {
         LOOKUP_BY_VALUES,
         LOOKUP_FOR_DR,
@@ -673,8 +742,47 @@ class PersistentTable : public Table, public UndoQuantumReleaseInterest,
 
     // pointers to chunks of data. Specific to table impl. Don't leak this type.
     TBMap m_data;
+
+    // Indexes still being populated by buildPendingIndexes(), and how far the
+    // build has got: the address of the block being scanned (NULL before the
+    // first block) and the next tuple slot in it.
+    std::vector<TableIndex*> m_pendingIndexes;
+    char *m_pendingIndexBlock;
+    uint32_t m_pendingIndexOffset;
+
+    // Out of line VARCHAR and VARBINARY columns whose values are shared
+    // between tuples through the thread's StringDictionary. A column is
+    // dropped from the list as soon as most of a sample of its values turn
+    // out to be distinct, as sharing only pays off for low cardinality.
+    // Empty unless setStringSharing() turned sharing on for the table.
+    struct SharedStringColumn {
+        explicit SharedStringColumn(int columnIndex)
+          : m_columnIndex(columnIndex), m_interned(0), m_added(0)
+        {}
+        int m_columnIndex;
+        // values interned in the current sample and how many of them were new
+        int32_t m_interned;
+        int32_t m_added;
+    };
+    std::vector<SharedStringColumn> m_sharedStringColumns;
+    bool m_stringSharing;
+    // How many tuples of this table hold each shared string, so that its
+    // bytes are counted in the table's memory once.
+    boost::unordered_map<const StringRef*, int32_t> m_sharedStringRefs;
     int m_failedCompactionCount;
 
+    // Change tracking for incremental snapshots, switched on by the first
+    // TABLE_STREAM_SNAPSHOT_DELTA_BASE or TABLE_STREAM_SNAPSHOT_DELTA stream.
+    // Inserted and updated tuples carry the modified flag. Tuples deleted
+    // since the last tracked snapshot are copied to m_deltaDeletedTuples,
+    // unless the table has no primary key and every delta is complete anyway.
+    // m_deltaTruncated means the changes are not known since the last tracked
+    // snapshot, after a truncate or too many deletes to keep copies of.
+    bool m_deltaTracking;
+    bool m_deltaTruncated;
+    boost::shared_ptr<TempTable> m_deltaDeletedTuples;
+    boost::shared_ptr<Pool> m_deltaDeletedTuplesPool;
+
     // This is a testability feature not intended for use in product logic.
     int m_invisibleTuplesPendingDeleteCount;
 
@@ -737,6 +845,15 @@ inline void PersistentTableSurgeon::deleteTupleRelease(char* tuple) {
     m_table.deleteTupleRelease(tuple);
 }
 
+inline void PersistentTableSurgeon::updateTupleRelease(char* oldTupleData, char* newTupleData) {
+    m_table.updateTupleRelease(oldTupleData, newTupleData);
+}
+
+inline bool PersistentTableSurgeon::restartDeltaTracking(boost::shared_ptr<TempTable> &deletedTuples,
+                                                         boost::shared_ptr<Pool> &deletedTuplesPool) {
+    return m_table.restartDeltaTracking(deletedTuples, deletedTuplesPool);
+}
+
 inline void PersistentTableSurgeon::deleteTupleStorage(TableTuple &tuple, TBPtr block) {
     m_table.deleteTupleStorage(tuple, block);
 }
@@ -895,7 +1012,7 @@ inline void PersistentTable::deleteTupleStorage(TableTuple &tuple, TBPtr block,
 
     // This frees referenced strings -- when could possibly be a better time?
     if (m_schema->getUninlinedObjectColumnCount() != 0) {
-        decreaseStringMemCount(tuple.getNonInlinedMemorySize());
+        countStringMemory(tuple, false);
         tuple.freeObjectColumns();
     }
 
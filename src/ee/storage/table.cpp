@@ -480,7 +480,20 @@ void Table::loadTuplesFromNoHeader(SerializeInputBE &serialize_io,
         target.setPendingDeleteFalse();
         target.setPendingDeleteOnUndoReleaseFalse();
 
-        target.deserializeFrom(serialize_io, stringPool);
+        // A value that fails to deserialize leaves the columns after it holding
+        // whatever the free slot had, so start from null object pointers
+        // that abandonLoadedTuple can safely free.
+        for (uint16_t ii = 0; ii < m_schema->getUninlinedObjectColumnCount(); ii++) {
+            const TupleSchema::ColumnInfo *columnInfo =
+                m_schema->getColumnInfo(m_schema->getUninlinedObjectColumnInfoIndex(ii));
+            *reinterpret_cast<char**>(target.getWritableDataPtr(columnInfo)) = NULL;
+        }
+        try {
+            target.deserializeFrom(serialize_io, stringPool);
+        } catch (const SerializableEEException &e) {
+            abandonLoadedTuple(target);
+            throw;
+        }
 
         processLoadedTuple(target, uniqueViolationOutput, serializedTupleCount, tupleCountPosition, shouldDRStreamRow);
     }
@@ -603,6 +616,12 @@ void Table::addIndex(TableIndex *index) {
         index->addEntry(&tuple, NULL);
     }
 
+    addPopulatedIndex(index);
+}
+
+void Table::addPopulatedIndex(TableIndex *index) {
+    assert(!isExistingTableIndex(m_indexes, index));
+
     // add the index to the table
     if (index->isUniqueIndex()) {
         m_uniqueIndexes.push_back(index);
@@ -364,6 +364,13 @@ protected:
                                     bool shouldDRStreamRow) {
     };
 
+    /*
+     * Called by Table::loadTuplesFrom when a tuple fails to deserialize, to
+     * give back its slot. Temp tables are thrown away with the failed load.
+     */
+    virtual void abandonLoadedTuple(TableTuple &tuple) {
+    };
+
     virtual void swapTuples(TableTuple &sourceTupleWithNewValues, TableTuple &destinationTuple) {
         throwFatalException("Unsupported operation");
     }
@@ -384,6 +391,9 @@ protected:
     Table(int tableAllocationTargetSize);
     void resetTable();
 
+    // Adds an index that already holds an entry for every tuple in the table.
+    void addPopulatedIndex(TableIndex *index);
+
     bool compactionPredicate() {
         //Unfortunate work around for the fact that multiple undo quantums cause this to happen
         //Ideally there would be one per transaction and we could hard fail or
@@ -81,6 +81,14 @@ public:
      * @return true if succeeded. false if no more active tuple is there.
     */
     bool next(TableTuple &out);
+
+    /**
+     * Point up to maxCount tuples of the batch at the next tuples in the table.
+     * The tuples of one batch never span temp table blocks, so they remain valid
+     * until the following call even when the iterator deletes as it goes.
+     * @return the number of tuples retrieved, 0 if no more active tuple is there.
+     */
+    int nextBatch(TableTuple *batch, int maxCount);
     bool hasNext();
     int getLocation() const;
 
@@ -217,6 +225,26 @@ inline bool TableIterator::next(TableTuple &out) {
     return persistentNext(out);
 }
 
+inline int TableIterator::nextBatch(TableTuple *batch, int maxCount) {
+    int count = 0;
+    if (m_tempTableIterator) {
+        if (maxCount > 0 && tempNext(batch[0])) {
+            ++count;
+            // stay within the block the first tuple came from
+            while (count < maxCount && m_foundTuples < m_activeTuples &&
+                   m_blockOffset < m_currentBlock->unusedTupleBoundry()) {
+                tempNext(batch[count]);
+                ++count;
+            }
+        }
+        return count;
+    }
+    while (count < maxCount && persistentNext(batch[count])) {
+        ++count;
+    }
+    return count;
+}
+
 inline bool TableIterator::persistentNext(TableTuple &out) {
     while (m_foundTuples < m_activeTuples) {
         if (m_currentBlock == NULL ||
@@ -265,9 +293,15 @@ inline bool TableIterator::tempNext(TableTuple &out) {
             // delete the last block of tuples in this temp table when they will never be used
             if (m_tempTableDeleteAsGo) {
                 m_table->freeLastScanedBlock(m_tempBlockIterator);
+            } else if (m_currentBlock != NULL && m_currentBlock->isSpilled()) {
+                // stream spilled blocks back one at a time
+                m_currentBlock->evictSpilledStorage();
             }
 
             m_currentBlock = *m_tempBlockIterator;
+            if (m_currentBlock->isSpilled()) {
+                m_currentBlock->prefetchSpilledStorage();
+            }
             m_dataPtr = m_currentBlock->address();
             m_blockOffset = 0;
             m_tempBlockIterator++;
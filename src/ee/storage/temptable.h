@@ -130,6 +130,9 @@ class TempTable : public Table {
 
     int64_t tempTableTupleCount() const { return m_tupleCount; }
 
+    /// Number of blocks backed by the spill file rather than memory
+    size_t spilledBlockCount() const;
+
     // ------------------------------------------------------------------
     // INDEXES
     // ------------------------------------------------------------------
@@ -228,24 +231,39 @@ inline void TempTable::deleteAllTuplesNonVirtual(bool freeAllocatedStrings) {
         // because of delete as we go feature.
         TBPtr blockPtr = m_data.back();
         m_data.pop_back();
-        if (m_limits && blockPtr) {
+        if (m_limits && blockPtr && !blockPtr->isSpilled()) {
             m_limits->reduceAllocated(m_tableAllocationSize);
         }
     }
 
-    // cheap clear of the preserved first block
     if (!m_data.empty()) {
-        m_data[0]->reset();
+        if (m_data[0]->isSpilled()) {
+            // don't hold on to spill file space between executions
+            m_data.clear();
+        } else {
+            // cheap clear of the preserved first block
+            m_data[0]->reset();
+        }
     }
 }
 
 inline TBPtr TempTable::allocateNextBlock() {
-    TBPtr block(new TupleBlock(this, TBBucketPtr()));
-    m_data.push_back(block);
+    TBPtr block;
+    if (m_limits && m_limits->shouldSpill(m_tableAllocationSize)) {
+        // Over the memory limit, back the block with the spill file
+        block = new TupleBlock(this, m_limits);
+    } else {
+        block = new TupleBlock(this, TBBucketPtr());
+        if (m_limits) {
+            m_limits->increaseAllocated(m_tableAllocationSize);
+        }
+    }
 
-    if (m_limits) {
-        m_limits->increaseAllocated(m_tableAllocationSize);
+    // The previous block is full now, nothing will touch a spilled one until it is scanned.
+    if (!m_data.empty() && m_data.back() && m_data.back()->isSpilled()) {
+        m_data.back()->evictSpilledStorage();
     }
+    m_data.push_back(block);
 
     return block;
 }
@@ -267,15 +285,25 @@ inline void TempTable::nextFreeTuple(TableTuple *tuple) {
     return;
 }
 
+inline size_t TempTable::spilledBlockCount() const {
+    size_t count = 0;
+    for (std::vector<TBPtr>::const_iterator it = m_data.begin(); it != m_data.end(); ++it) {
+        if (*it && (*it)->isSpilled()) {
+            ++count;
+        }
+    }
+    return count;
+}
+
 inline void TempTable::freeLastScanedBlock(std::vector<TBPtr>::iterator nextBlockIterator) {
     if (m_data.begin() != nextBlockIterator) {
         nextBlockIterator--;
         // somehow we preserve the first block
         if (m_data.begin() != nextBlockIterator) {
-            *nextBlockIterator = NULL;
-            if (m_limits) {
+            if (m_limits && *nextBlockIterator && !(*nextBlockIterator)->isSpilled()) {
                 m_limits->reduceAllocated(m_tableAllocationSize);
             }
+            *nextBlockIterator = NULL;
         }
     }
 }
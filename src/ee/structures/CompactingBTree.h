@@ -0,0 +1,1068 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+#ifndef COMPACTINGBTREE_H_
+#define COMPACTINGBTREE_H_
+
+#include "ContiguousAllocator.h"
+#include "CompactingMap.h"
+
+#include <cstring>
+#include <new>
+#include <stdint.h>
+#include <utility>
+#include <cassert>
+
+namespace voltdb {
+
+/**
+ * B+tree with the same interface as CompactingMap, so that the tree indexes
+ * can be built on either one.
+ *
+ * All the entries are kept in leaves of about a kilobyte, linked in key
+ * order, so a range scan reads entries that sit next to each other in memory
+ * instead of chasing one pointer per entry. Inner nodes only hold the
+ * separator keys, the child pointers and, for ranked maps, the number of
+ * entries below each child. A tree of a hundred million integer keys is four
+ * levels deep and carries no per entry pointers.
+ *
+ * Like CompactingMap, leaves and inner nodes are allocated from
+ * ContiguousAllocators and a freed node is filled with the last allocated
+ * node, so the memory of the map stays contiguous and shrinks as entries are
+ * removed.
+ *
+ * Things to be aware of, in addition to those listed for CompactingMap:
+ * 1. Entries are moved around with memcpy, within a leaf as well as between
+ *    leaves. Keys and values must not point into themselves. All the index
+ *    keys satisfy this, std::string does not.
+ * 2. Each separator key is a bitwise copy of the smallest key of the subtree
+ *    to its right. It is never constructed or destroyed, and the tree keeps it
+ *    equal to that key, so it never refers to memory that a key has freed.
+ */
+template<typename KeyValuePair, typename Compare, bool hasRank=false>
+class CompactingBTree {
+    typedef typename KeyValuePair::first_type Key;
+    typedef typename KeyValuePair::second_type Data;
+
+    static const int NODE_BYTES = 1024;
+    static const int LEAF_FANOUT = static_cast<int>((NODE_BYTES - 32) / sizeof(KeyValuePair));
+    static const int INNER_FANOUT = static_cast<int>((NODE_BYTES - 16) /
+            (sizeof(Key) + sizeof(void*) + (hasRank ? sizeof(NodeCount) : 0)));
+public:
+    static const int LEAF_CAPACITY = LEAF_FANOUT < 4 ? 4 : LEAF_FANOUT;
+    static const int INNER_CAPACITY = INNER_FANOUT < 4 ? 4 : INNER_FANOUT;
+    static const int LEAF_MIN = LEAF_CAPACITY / 2;
+    static const int INNER_MIN = INNER_CAPACITY / 2;
+
+protected:
+    // Deep enough for more entries than a 64 bit count can hold
+    static const int MAX_HEIGHT = 64;
+
+    struct InnerNode;
+
+    struct NodeBase {
+        InnerNode *parent;
+        int32_t count;
+    };
+
+    struct LeafNode : public NodeBase {
+        LeafNode *prev;
+        LeafNode *next;
+        uint64_t storage[(LEAF_CAPACITY * sizeof(KeyValuePair) + 7) / 8];
+
+        KeyValuePair &entry(int i) { return reinterpret_cast<KeyValuePair*>(storage)[i]; }
+        const KeyValuePair &entry(int i) const { return reinterpret_cast<const KeyValuePair*>(storage)[i]; }
+        const Key &key(int i) const { return entry(i).getKey(); }
+    };
+
+    // Child i holds the keys from separator i - 1 up to separator i.
+    struct InnerNode : public NodeBase {
+        NodeBase *children[INNER_CAPACITY];
+        NodeCount subct[hasRank ? INNER_CAPACITY : 1];
+        uint64_t storage[((INNER_CAPACITY - 1) * sizeof(Key) + 7) / 8];
+
+        const Key &separator(int i) const { return reinterpret_cast<const Key*>(storage)[i]; }
+        void *separatorStorage(int i) { return reinterpret_cast<char*>(storage) + i * sizeof(Key); }
+        void setSeparator(int i, const Key &key) { ::memcpy(separatorStorage(i), &key, sizeof(Key)); }
+        void moveSeparators(int to, int from, int n) {
+            ::memmove(separatorStorage(to), separatorStorage(from), n * sizeof(Key));
+        }
+    };
+
+    // A search key that can have its pointer changed without running the
+    // copy constructor or destructor of a key type that owns memory.
+    struct KeyCopy {
+        uint64_t storage[(sizeof(Key) + 7) / 8];
+        KeyCopy(const Key &key) { ::memcpy(storage, &key, sizeof(Key)); }
+        Key &get() { return *reinterpret_cast<Key*>(storage); }
+    };
+
+    int64_t m_count;
+    int m_height;
+    NodeBase *m_root;
+    LeafNode *m_first;
+    LeafNode *m_last;
+    ContiguousAllocator m_leaves;
+    ContiguousAllocator m_inners;
+    bool m_unique;
+
+    // Nodes emptied by the current erase. They are released once the tree
+    // is consistent again, because releasing a node moves another one.
+    LeafNode *m_freedLeaf;
+    InnerNode *m_freedInners[MAX_HEIGHT];
+    int m_freedInnerCount;
+
+    // templated comparison function object
+    // follows STL conventions
+    Compare m_comper;
+
+    // The key of the end iterator, as the NIL node of CompactingMap
+    static const Key &nilKey() {
+        static const KeyValuePair nil;
+        return nil.getKey();
+    }
+
+public:
+    class iterator {
+        friend class CompactingBTree<KeyValuePair, Compare, hasRank>;
+    protected:
+        LeafNode *m_leaf;
+        int32_t m_slot;
+        iterator(LeafNode *leaf, int32_t slot) : m_leaf(leaf), m_slot(slot) {}
+    public:
+        iterator() : m_leaf(NULL), m_slot(0) {}
+        iterator(const iterator &iter) : m_leaf(iter.m_leaf), m_slot(iter.m_slot) {}
+        const Key &key() const { return m_leaf ? m_leaf->key(m_slot) : nilKey(); }
+        const Data &value() const { return m_leaf->entry(m_slot).getValue(); }
+        void setValue(const Data &value) { m_leaf->entry(m_slot).setValue(value); }
+        void moveNext() {
+            if (m_leaf && ++m_slot == m_leaf->count) {
+                m_leaf = m_leaf->next;
+                m_slot = 0;
+            }
+        }
+        void movePrev() {
+            if (m_leaf && m_slot-- == 0) {
+                m_leaf = m_leaf->prev;
+                m_slot = m_leaf ? m_leaf->count - 1 : 0;
+            }
+        }
+        bool isEnd() const { return m_leaf == NULL; }
+        bool equals(const iterator &iter) const {
+            if (isEnd()) {
+                return iter.isEnd();
+            }
+            return m_leaf == iter.m_leaf && m_slot == iter.m_slot;
+        }
+    };
+
+    CompactingBTree(bool unique, Compare comper);
+    ~CompactingBTree();
+
+    const Data *insert(const Key &key, const Data &data);
+    bool erase(const Key &key);
+    bool erase(iterator &iter);
+
+    iterator find(const Key &key) const;
+    iterator findRank(int64_t ith) const;
+    int64_t size() const { return m_count; }
+    iterator begin() const
+    {
+        if (m_count == 0) {
+            return iterator();
+        }
+        return iterator(m_first, 0);
+    }
+    iterator rbegin() const
+    {
+        if (m_count == 0) {
+            return iterator();
+        }
+        return iterator(m_last, m_last->count - 1);
+    }
+
+    iterator lowerBound(const Key &key) const { return bound(key, false); }
+    iterator upperBound(const Key &key) const;
+
+    // Bounds searched from a hint that is not past the bound, such as a
+    // bound of a smaller key. Bounds in the hint's leaf or the one after it
+    // are found without descending from the root.
+    iterator lowerBound(const Key &key, const iterator &hint) const { return bound(key, false, hint); }
+    iterator upperBound(const Key &key, const iterator &hint) const;
+
+    std::pair<iterator, iterator> equalRange(const Key &key) const
+    {
+        return std::pair<iterator, iterator>(lowerBound(key), upperBound(key));
+    }
+
+    size_t bytesAllocated() const { return m_leaves.bytesAllocated() + m_inners.bytesAllocated(); }
+
+    // Must pass a key that already in map, or else return -1
+    int64_t rankAsc(const Key& key) const;
+    int64_t rankUpper(const Key& key) const;
+
+    /**
+     * For debugging: verify the B+tree constraints are met. SLOW.
+     */
+    bool verify() const;
+    bool verifyRank() const;
+
+protected:
+    iterator bound(const Key &key, bool upper) const;
+    iterator bound(const Key &key, bool upper, const iterator &hint) const;
+    int childIndex(const InnerNode *node, const Key &key, bool upper) const;
+    int leafSlot(const LeafNode *leaf, const Key &key, bool upper) const;
+    LeafNode *descend(const Key &key, bool upper, int64_t *countLeft) const;
+
+    static int childIndex(const InnerNode *node, const NodeBase *child);
+    void addToCounts(NodeBase *node, int delta);
+    void fixSeparator(LeafNode *leaf);
+
+    void splitLeaf(LeafNode *leaf);
+    void splitInner(InnerNode *node);
+    void insertChild(NodeBase *left, NodeBase *right, const Key &separator, NodeCount rightCount);
+
+    void eraseAt(LeafNode *leaf, int slot);
+    void rebalanceLeaf(LeafNode *leaf);
+    void rebalanceInner(InnerNode *node);
+    void removeChild(InnerNode *node, int idx);
+
+    void releaseFreedNodes();
+    void releaseLeaf(LeafNode *hole);
+    void releaseInner(InnerNode *hole);
+
+    int64_t verify(const NodeBase *node, int level, const Key *low, const Key *high, int64_t &inners) const;
+    int64_t verifyRank(const NodeBase *node, int level) const;
+};
+
+template<typename KeyValuePair, typename Compare, bool hasRank>
+const int CompactingBTree<KeyValuePair, Compare, hasRank>::LEAF_CAPACITY;
+template<typename KeyValuePair, typename Compare, bool hasRank>
+const int CompactingBTree<KeyValuePair, Compare, hasRank>::INNER_CAPACITY;
+template<typename KeyValuePair, typename Compare, bool hasRank>
+const int CompactingBTree<KeyValuePair, Compare, hasRank>::LEAF_MIN;
+template<typename KeyValuePair, typename Compare, bool hasRank>
+const int CompactingBTree<KeyValuePair, Compare, hasRank>::INNER_MIN;
+
+template<typename KeyValuePair, typename Compare, bool hasRank>
+CompactingBTree<KeyValuePair, Compare, hasRank>::CompactingBTree(bool unique, Compare comper)
+    : m_count(0),
+      m_height(0),
+      m_root(NULL),
+      m_first(NULL),
+      m_last(NULL),
+      m_leaves(static_cast<int>(sizeof(LeafNode)), 256),
+      m_inners(static_cast<int>(sizeof(InnerNode)), 16),
+      m_unique(unique),
+      m_freedLeaf(NULL),
+      m_freedInnerCount(0),
+      m_comper(comper)
+{ }
+
+template<typename KeyValuePair, typename Compare, bool hasRank>
+CompactingBTree<KeyValuePair, Compare, hasRank>::~CompactingBTree()
+{
+    for (LeafNode *leaf = m_first; leaf != NULL; leaf = leaf->next) {
+        for (int i = 0; i < leaf->count; ++i) {
+            leaf->entry(i).~KeyValuePair();
+        }
+    }
+}
+
+template<typename KeyValuePair, typename Compare, bool hasRank>
+const typename CompactingBTree<KeyValuePair, Compare, hasRank>::Data *
+CompactingBTree<KeyValuePair, Compare, hasRank>::insert(const Key &key, const Data &value)
+{
+    if (m_root == NULL) {
+        LeafNode *leaf = static_cast<LeafNode*>(m_leaves.alloc());
+        leaf->parent = NULL;
+        leaf->count = 0;
+        leaf->prev = NULL;
+        leaf->next = NULL;
+        m_root = m_first = m_last = leaf;
+        m_height = 1;
+    }
+
+    // New duplicates go after the existing ones, as in CompactingMap.
+    // Every key in a leaf but the leftmost one is at least its smallest key,
+    // so the new entry only goes first in the leftmost leaf.
+    LeafNode *leaf = descend(key, true, NULL);
+    int slot = leafSlot(leaf, key, true);
+    if (m_unique && slot > 0 && m_comper(leaf->key(slot - 1), key) == 0) {
+        // Inserting exact matches fails for unique indexes.
+        return &leaf->entry(slot - 1).getValue();
+    }
+
+    if (leaf->count == LEAF_CAPACITY) {
+        splitLeaf(leaf);
+        // An entry at the split point stays at the end of the left leaf,
+        // so the smallest key of the right leaf is unchanged.
+        if (slot > leaf->count) {
+            slot -= leaf->count;
+            leaf = leaf->next;
+        }
+    }
+
+    ::memmove(static_cast<void*>(&leaf->entry(slot + 1)), &leaf->entry(slot), (leaf->count - slot) * sizeof(KeyValuePair));
+    KeyValuePair *kv = new (&leaf->entry(slot)) KeyValuePair();
+    kv->setKeyValuePair(key, value);
+    leaf->count++;
+    m_count++;
+    if (hasRank) {
+        addToCounts(leaf, 1);
+    }
+    assert(m_leaves.count() * LEAF_CAPACITY >= m_count);
+    return NULL;
+}
+
+template<typename KeyValuePair, typename Compare, bool hasRank>
+bool CompactingBTree<KeyValuePair, Compare, hasRank>::erase(const Key &key)
+{
+    iterator iter = find(key);
+    if (iter.isEnd()) {
+        return false;
+    }
+    eraseAt(iter.m_leaf, iter.m_slot);
+    return true;
+}
+
+template<typename KeyValuePair, typename Compare, bool hasRank>
+bool CompactingBTree<KeyValuePair, Compare, hasRank>::erase(iterator &iter)
+{
+    assert( ! iter.isEnd());
+    eraseAt(iter.m_leaf, iter.m_slot);
+    return true;
+}
+
+template<typename KeyValuePair, typename Compare, bool hasRank>
+typename CompactingBTree<KeyValuePair, Compare, hasRank>::iterator
+CompactingBTree<KeyValuePair, Compare, hasRank>::find(const Key &key) const
+{
+    iterator iter = bound(key, false);
+    if (iter.isEnd() || m_comper(iter.key(), key) != 0) {
+        return iterator();
+    }
+    return iter;
+}
+
+template<typename KeyValuePair, typename Compare, bool hasRank>
+typename CompactingBTree<KeyValuePair, Compare, hasRank>::iterator
+CompactingBTree<KeyValuePair, Compare, hasRank>::findRank(int64_t ith) const
+{
+    if ((!hasRank) || ith < 1 || ith > m_count) {
+        return iterator();
+    }
+    const NodeBase *node = m_root;
+    for (int level = m_height; level > 1; --level) {
+        const InnerNode *inner = static_cast<const InnerNode*>(node);
+        int i = 0;
+        while (ith > inner->subct[i]) {
+            ith -= inner->subct[i];
+            ++i;
+        }
+        node = inner->children[i];
+    }
+    return iterator(const_cast<LeafNode*>(static_cast<const LeafNode*>(node)), static_cast<int32_t>(ith - 1));
+}
+
+template<typename KeyValuePair, typename Compare, bool hasRank>
+typename CompactingBTree<KeyValuePair, Compare, hasRank>::iterator
+CompactingBTree<KeyValuePair, Compare, hasRank>::upperBound(const Key &key) const
+{
+    KeyCopy tmpKey(key);
+    setPointerValue(tmpKey.get(), MAXPOINTER);
+    return bound(tmpKey.get(), true);
+}
+
+template<typename KeyValuePair, typename Compare, bool hasRank>
+typename CompactingBTree<KeyValuePair, Compare, hasRank>::iterator
+CompactingBTree<KeyValuePair, Compare, hasRank>::upperBound(const Key &key, const iterator &hint) const
+{
+    KeyCopy tmpKey(key);
+    setPointerValue(tmpKey.get(), MAXPOINTER);
+    return bound(tmpKey.get(), true, hint);
+}
+
+template<typename KeyValuePair, typename Compare, bool hasRank>
+int64_t CompactingBTree<KeyValuePair, Compare, hasRank>::rankAsc(const Key& key) const
+{
+    if (!hasRank) {
+        return -1;
+    }
+    // return -1 if the key passed in is not in the map
+    if (find(key).isEnd()) {
+        return -1;
+    }
+    // only compare the "data" part of the key
+    KeyCopy tmpKey(key);
+    setPointerValue(tmpKey.get(), NULL);
+    int64_t countLeft = 0;
+    const LeafNode *leaf = descend(tmpKey.get(), false, &countLeft);
+    return countLeft + leafSlot(leaf, tmpKey.get(), false) + 1;
+}
+
+template<typename KeyValuePair, typename Compare, bool hasRank>
+int64_t CompactingBTree<KeyValuePair, Compare, hasRank>::rankUpper(const Key& key) const
+{
+    if (!hasRank) {
+        return -1;
+    }
+    if (m_unique) {
+        return rankAsc(key);
+    }
+    // return -1 if the key passed in is not in the map
+    if (find(key).isEnd()) {
+        return -1;
+    }
+    KeyCopy tmpKey(key);
+    setPointerValue(tmpKey.get(), MAXPOINTER);
+    int64_t countLeft = 0;
+    const LeafNode *leaf = descend(tmpKey.get(), true, &countLeft);
+    return countLeft + leafSlot(leaf, tmpKey.get(), true);
+}
+
+template<typename KeyValuePair, typename Compare, bool hasRank>
+typename CompactingBTree<KeyValuePair, Compare, hasRank>::iterator
+CompactingBTree<KeyValuePair, Compare, hasRank>::bound(const Key &key, bool upper) const
+{
+    if (m_count == 0) {
+        return iterator();
+    }
+    LeafNode *leaf = descend(key, upper, NULL);
+    int slot = leafSlot(leaf, key, upper);
+    if (slot == leaf->count) {
+        // The bound is the first entry of the next leaf, or the end
+        return iterator(leaf->next, 0);
+    }
+    return iterator(leaf, slot);
+}
+
+/**
+ * Every entry before the hint is below the bound, so the bound is in the
+ * first leaf from the hint's on whose last key is not below it.
+ */
+template<typename KeyValuePair, typename Compare, bool hasRank>
+typename CompactingBTree<KeyValuePair, Compare, hasRank>::iterator
+CompactingBTree<KeyValuePair, Compare, hasRank>::bound(const Key &key, bool upper, const iterator &hint) const
+{
+    if (hint.isEnd()) {
+        return hint;
+    }
+    LeafNode *leaf = hint.m_leaf;
+    for (int hop = 0; leaf != NULL && hop < 2; ++hop, leaf = leaf->next) {
+        int cmp = m_comper(leaf->key(leaf->count - 1), key);
+        if (cmp > 0 || (!upper && cmp == 0)) {
+            int slot = hop == 0 ? hint.m_slot : 0;
+            int high = leaf->count - 1;
+            // The last key qualifies, so the bound is at most its slot
+            while (slot < high) {
+                int mid = (slot + high) / 2;
+                int midCmp = m_comper(leaf->key(mid), key);
+                if (midCmp < 0 || (upper && midCmp == 0)) {
+                    slot = mid + 1;
+                }
+                else {
+                    high = mid;
+                }
+            }
+            return iterator(leaf, slot);
+        }
+    }
+    if (leaf == NULL) {
+        return iterator();
+    }
+    return bound(key, upper);
+}
+
+/**
+ * The number of separators less than the key, or not greater than it if
+ * upper is set, which is the child a search for the key descends into.
+ */
+template<typename KeyValuePair, typename Compare, bool hasRank>
+int CompactingBTree<KeyValuePair, Compare, hasRank>::childIndex(const InnerNode *node, const Key &key, bool upper) const
+{
+    int low = 0;
+    int high = node->count - 1;
+    while (low < high) {
+        int mid = (low + high) / 2;
+        int cmp = m_comper(node->separator(mid), key);
+        if (cmp < 0 || (upper && cmp == 0)) {
+            low = mid + 1;
+        }
+        else {
+            high = mid;
+        }
+    }
+    return low;
+}
+
+template<typename KeyValuePair, typename Compare, bool hasRank>
+int CompactingBTree<KeyValuePair, Compare, hasRank>::leafSlot(const LeafNode *leaf, const Key &key, bool upper) const
+{
+    int low = 0;
+    int high = leaf->count;
+    while (low < high) {
+        int mid = (low + high) / 2;
+        int cmp = m_comper(leaf->key(mid), key);
+        if (cmp < 0 || (upper && cmp == 0)) {
+            low = mid + 1;
+        }
+        else {
+            high = mid;
+        }
+    }
+    return low;
+}
+
+/**
+ * Find the leaf a search for the key ends in. If countLeft is given, the
+ * entries in the subtrees left of the search path are added to it.
+ */
+template<typename KeyValuePair, typename Compare, bool hasRank>
+typename CompactingBTree<KeyValuePair, Compare, hasRank>::LeafNode *
+CompactingBTree<KeyValuePair, Compare, hasRank>::descend(const Key &key, bool upper, int64_t *countLeft) const
+{
+    NodeBase *node = m_root;
+    for (int level = m_height; level > 1; --level) {
+        const InnerNode *inner = static_cast<const InnerNode*>(node);
+        int idx = childIndex(inner, key, upper);
+        if (hasRank && countLeft) {
+            for (int i = 0; i < idx; ++i) {
+                *countLeft += inner->subct[i];
+            }
+        }
+        node = inner->children[idx];
+    }
+    return static_cast<LeafNode*>(node);
+}
+
+template<typename KeyValuePair, typename Compare, bool hasRank>
+int CompactingBTree<KeyValuePair, Compare, hasRank>::childIndex(const InnerNode *node, const NodeBase *child)
+{
+    int idx = 0;
+    while (node->children[idx] != child) {
+        ++idx;
+        assert(idx < node->count);
+    }
+    return idx;
+}
+
+template<typename KeyValuePair, typename Compare, bool hasRank>
+void CompactingBTree<KeyValuePair, Compare, hasRank>::addToCounts(NodeBase *node, int delta)
+{
+    while (node->parent != NULL) {
+        InnerNode *parent = node->parent;
+        parent->subct[childIndex(parent, node)] += delta;
+        node = parent;
+    }
+}
+
+/**
+ * Copy the smallest key of the leaf into the separator that bounds it from
+ * the left, after that key changed.
+ */
+template<typename KeyValuePair, typename Compare, bool hasRank>
+void CompactingBTree<KeyValuePair, Compare, hasRank>::fixSeparator(LeafNode *leaf)
+{
+    NodeBase *node = leaf;
+    while (node->parent != NULL) {
+        InnerNode *parent = node->parent;
+        int idx = childIndex(parent, node);
+        if (idx > 0) {
+            parent->setSeparator(idx - 1, leaf->key(0));
+            return;
+        }
+        node = parent;
+    }
+}
+
+template<typename KeyValuePair, typename Compare, bool hasRank>
+void CompactingBTree<KeyValuePair, Compare, hasRank>::splitLeaf(LeafNode *leaf)
+{
+    const int keep = leaf->count / 2;
+    LeafNode *right = static_cast<LeafNode*>(m_leaves.alloc());
+    right->count = leaf->count - keep;
+    ::memcpy(static_cast<void*>(&right->entry(0)), &leaf->entry(keep), right->count * sizeof(KeyValuePair));
+    leaf->count = keep;
+
+    right->prev = leaf;
+    right->next = leaf->next;
+    if (leaf->next != NULL) {
+        leaf->next->prev = right;
+    }
+    else {
+        m_last = right;
+    }
+    leaf->next = right;
+
+    insertChild(leaf, right, right->key(0), right->count);
+}
+
+template<typename KeyValuePair, typename Compare, bool hasRank>
+void CompactingBTree<KeyValuePair, Compare, hasRank>::splitInner(InnerNode *node)
+{
+    const int keep = node->count / 2;
+    InnerNode *right = static_cast<InnerNode*>(m_inners.alloc());
+    right->count = node->count - keep;
+    ::memcpy(right->children, node->children + keep, right->count * sizeof(NodeBase*));
+    // The separator between the halves moves up to the parent
+    ::memcpy(right->storage, &node->separator(keep), (right->count - 1) * sizeof(Key));
+    NodeCount rightCount = 0;
+    for (int i = 0; i < right->count; ++i) {
+        right->children[i]->parent = right;
+        if (hasRank) {
+            right->subct[i] = node->subct[keep + i];
+            rightCount += right->subct[i];
+        }
+    }
+    node->count = keep;
+
+    insertChild(node, right, node->separator(keep - 1), rightCount);
+}
+
+/**
+ * Add right to the parent of left, just after left. The rightCount entries
+ * below right were below left until now.
+ */
+template<typename KeyValuePair, typename Compare, bool hasRank>
+void CompactingBTree<KeyValuePair, Compare, hasRank>::insertChild(NodeBase *left, NodeBase *right,
+                                                                  const Key &separator, NodeCount rightCount)
+{
+    InnerNode *parent = left->parent;
+    if (parent == NULL) {
+        // Grow a new root above the old one
+        assert(left == m_root);
+        parent = static_cast<InnerNode*>(m_inners.alloc());
+        parent->parent = NULL;
+        parent->count = 1;
+        parent->children[0] = left;
+        if (hasRank) {
+            parent->subct[0] = static_cast<NodeCount>(m_count);
+        }
+        left->parent = parent;
+        m_root = parent;
+        m_height++;
+    }
+
+    if (parent->count == INNER_CAPACITY) {
+        // Split the parent first, left ends up in one of the halves.
+        // Keep the separator, it may live in a node that is about to change.
+        KeyCopy kept(separator);
+        splitInner(parent);
+        insertChild(left, right, kept.get(), rightCount);
+        return;
+    }
+
+    const int idx = childIndex(parent, left);
+    const int moved = parent->count - idx - 1;
+    ::memmove(parent->children + idx + 2, parent->children + idx + 1, moved * sizeof(NodeBase*));
+    parent->moveSeparators(idx + 1, idx, moved);
+    parent->setSeparator(idx, separator);
+    parent->children[idx + 1] = right;
+    if (hasRank) {
+        ::memmove(parent->subct + idx + 2, parent->subct + idx + 1, moved * sizeof(NodeCount));
+        parent->subct[idx] -= rightCount;
+        parent->subct[idx + 1] = rightCount;
+    }
+    parent->count++;
+    right->parent = parent;
+}
+
+template<typename KeyValuePair, typename Compare, bool hasRank>
+void CompactingBTree<KeyValuePair, Compare, hasRank>::eraseAt(LeafNode *leaf, int slot)
+{
+    leaf->entry(slot).~KeyValuePair();
+    ::memmove(static_cast<void*>(&leaf->entry(slot)), &leaf->entry(slot + 1), (leaf->count - slot - 1) * sizeof(KeyValuePair));
+    leaf->count--;
+    m_count--;
+    if (hasRank) {
+        addToCounts(leaf, -1);
+    }
+
+    if (leaf->count == 0) {
+        // Only the root leaf gets this small
+        assert(leaf == m_root);
+        m_root = m_first = m_last = NULL;
+        m_height = 0;
+        m_freedLeaf = leaf;
+    }
+    else {
+        if (slot == 0) {
+            fixSeparator(leaf);
+        }
+        if (leaf->parent != NULL && leaf->count < LEAF_MIN) {
+            rebalanceLeaf(leaf);
+        }
+    }
+    releaseFreedNodes();
+}
+
+/**
+ * Refill a leaf that dropped below half full from a sibling, or merge it
+ * with a sibling if neither has entries to spare.
+ */
+template<typename KeyValuePair, typename Compare, bool hasRank>
+void CompactingBTree<KeyValuePair, Compare, hasRank>::rebalanceLeaf(LeafNode *leaf)
+{
+    InnerNode *parent = leaf->parent;
+    const int idx = childIndex(parent, leaf);
+    LeafNode *left = idx > 0 ? static_cast<LeafNode*>(parent->children[idx - 1]) : NULL;
+    LeafNode *right = idx < parent->count - 1 ? static_cast<LeafNode*>(parent->children[idx + 1]) : NULL;
+
+    if (left != NULL && left->count > LEAF_MIN) {
+        ::memmove(static_cast<void*>(&leaf->entry(1)), &leaf->entry(0), leaf->count * sizeof(KeyValuePair));
+        ::memcpy(static_cast<void*>(&leaf->entry(0)), &left->entry(left->count - 1), sizeof(KeyValuePair));
+        left->count--;
+        leaf->count++;
+        parent->setSeparator(idx - 1, leaf->key(0));
+        if (hasRank) {
+            parent->subct[idx - 1]--;
+            parent->subct[idx]++;
+        }
+    }
+    else if (right != NULL && right->count > LEAF_MIN) {
+        ::memcpy(static_cast<void*>(&leaf->entry(leaf->count)), &right->entry(0), sizeof(KeyValuePair));
+        ::memmove(static_cast<void*>(&right->entry(0)), &right->entry(1), (right->count - 1) * sizeof(KeyValuePair));
+        right->count--;
+        leaf->count++;
+        parent->setSeparator(idx, right->key(0));
+        if (hasRank) {
+            parent->subct[idx]++;
+            parent->subct[idx + 1]--;
+        }
+    }
+    else {
+        // The left one of the two leaves takes the entries of the right one
+        int rightIdx = idx + 1;
+        if (left != NULL) {
+            right = leaf;
+            leaf = left;
+            rightIdx = idx;
+        }
+        ::memcpy(static_cast<void*>(&leaf->entry(leaf->count)), &right->entry(0), right->count * sizeof(KeyValuePair));
+        leaf->count += right->count;
+        leaf->next = right->next;
+        if (right->next != NULL) {
+            right->next->prev = leaf;
+        }
+        else {
+            m_last = leaf;
+        }
+        m_freedLeaf = right;
+        removeChild(parent, rightIdx);
+    }
+}
+
+/**
+ * Remove child idx, whose entries now belong to child idx - 1.
+ */
+template<typename KeyValuePair, typename Compare, bool hasRank>
+void CompactingBTree<KeyValuePair, Compare, hasRank>::removeChild(InnerNode *node, int idx)
+{
+    assert(idx > 0);
+    const int moved = node->count - idx - 1;
+    ::memmove(node->children + idx, node->children + idx + 1, moved * sizeof(NodeBase*));
+    node->moveSeparators(idx - 1, idx, moved);
+    if (hasRank) {
+        node->subct[idx - 1] += node->subct[idx];
+        ::memmove(node->subct + idx, node->subct + idx + 1, moved * sizeof(NodeCount));
+    }
+    node->count--;
+
+    if (node->parent == NULL) {
+        if (node->count == 1) {
+            // The root is left with one child, which becomes the root
+            m_root = node->children[0];
+            m_root->parent = NULL;
+            m_height--;
+            m_freedInners[m_freedInnerCount++] = node;
+        }
+    }
+    else if (node->count < INNER_MIN) {
+        rebalanceInner(node);
+    }
+}
+
+template<typename KeyValuePair, typename Compare, bool hasRank>
+void CompactingBTree<KeyValuePair, Compare, hasRank>::rebalanceInner(InnerNode *node)
+{
+    InnerNode *parent = node->parent;
+    const int idx = childIndex(parent, node);
+    InnerNode *left = idx > 0 ? static_cast<InnerNode*>(parent->children[idx - 1]) : NULL;
+    InnerNode *right = idx < parent->count - 1 ? static_cast<InnerNode*>(parent->children[idx + 1]) : NULL;
+
+    if (left != NULL && left->count > INNER_MIN) {
+        // Rotate the last child of the left sibling through the parent
+        ::memmove(node->children + 1, node->children, node->count * sizeof(NodeBase*));
+        node->moveSeparators(1, 0, node->count - 1);
+        node->setSeparator(0, parent->separator(idx - 1));
+        parent->setSeparator(idx - 1, left->separator(left->count - 2));
+        node->children[0] = left->children[left->count - 1];
+        node->children[0]->parent = node;
+        if (hasRank) {
+            ::memmove(node->subct + 1, node->subct, node->count * sizeof(NodeCount));
+            node->subct[0] = left->subct[left->count - 1];
+            parent->subct[idx - 1] -= node->subct[0];
+            parent->subct[idx] += node->subct[0];
+        }
+        left->count--;
+        node->count++;
+    }
+    else if (right != NULL && right->count > INNER_MIN) {
+        // Rotate the first child of the right sibling through the parent
+        node->setSeparator(node->count - 1, parent->separator(idx));
+        parent->setSeparator(idx, right->separator(0));
+        node->children[node->count] = right->children[0];
+        node->children[node->count]->parent = node;
+        ::memmove(right->children, right->children + 1, (right->count - 1) * sizeof(NodeBase*));
+        right->moveSeparators(0, 1, right->count - 2);
+        if (hasRank) {
+            node->subct[node->count] = right->subct[0];
+            parent->subct[idx] += right->subct[0];
+            parent->subct[idx + 1] -= right->subct[0];
+            ::memmove(right->subct, right->subct + 1, (right->count - 1) * sizeof(NodeCount));
+        }
+        right->count--;
+        node->count++;
+    }
+    else {
+        // The left one of the two nodes takes the children of the right one
+        int rightIdx = idx + 1;
+        if (left != NULL) {
+            right = node;
+            node = left;
+            rightIdx = idx;
+        }
+        node->setSeparator(node->count - 1, parent->separator(rightIdx - 1));
+        ::memcpy(node->separatorStorage(node->count), right->storage,
+                 (right->count - 1) * sizeof(Key));
+        for (int i = 0; i < right->count; ++i) {
+            node->children[node->count + i] = right->children[i];
+            right->children[i]->parent = node;
+            if (hasRank) {
+                node->subct[node->count + i] = right->subct[i];
+            }
+        }
+        node->count += right->count;
+        m_freedInners[m_freedInnerCount++] = right;
+        removeChild(parent, rightIdx);
+    }
+}
+
+template<typename KeyValuePair, typename Compare, bool hasRank>
+void CompactingBTree<KeyValuePair, Compare, hasRank>::releaseFreedNodes()
+{
+    if (m_freedLeaf != NULL) {
+        releaseLeaf(m_freedLeaf);
+        m_freedLeaf = NULL;
+    }
+    while (m_freedInnerCount > 0) {
+        releaseInner(m_freedInners[--m_freedInnerCount]);
+    }
+}
+
+/**
+ * Fix up the contiguous allocation -- move the last leaf into the hole.
+ */
+template<typename KeyValuePair, typename Compare, bool hasRank>
+void CompactingBTree<KeyValuePair, Compare, hasRank>::releaseLeaf(LeafNode *hole)
+{
+    LeafNode *last = static_cast<LeafNode*>(m_leaves.last());
+    if (last != hole) {
+        ::memcpy(hole, last, sizeof(LeafNode));
+        if (hole->prev != NULL) {
+            hole->prev->next = hole;
+        }
+        else {
+            m_first = hole;
+        }
+        if (hole->next != NULL) {
+            hole->next->prev = hole;
+        }
+        else {
+            m_last = hole;
+        }
+        if (hole->parent != NULL) {
+            hole->parent->children[childIndex(hole->parent, last)] = hole;
+        }
+        else {
+            m_root = hole;
+        }
+    }
+    m_leaves.trim();
+}
+
+/**
+ * Fix up the contiguous allocation -- move the last inner node into the hole.
+ */
+template<typename KeyValuePair, typename Compare, bool hasRank>
+void CompactingBTree<KeyValuePair, Compare, hasRank>::releaseInner(InnerNode *hole)
+{
+    InnerNode *last = static_cast<InnerNode*>(m_inners.last());
+    if (last != hole) {
+        for (int i = 0; i < m_freedInnerCount; ++i) {
+            if (m_freedInners[i] == last) {
+                // The last node is freed as well, the hole gets released in its place
+                m_freedInners[i] = hole;
+                m_inners.trim();
+                return;
+            }
+        }
+        ::memcpy(hole, last, sizeof(InnerNode));
+        if (hole->parent != NULL) {
+            hole->parent->children[childIndex(hole->parent, last)] = hole;
+        }
+        else {
+            m_root = hole;
+        }
+        for (int i = 0; i < hole->count; ++i) {
+            hole->children[i]->parent = hole;
+        }
+    }
+    m_inners.trim();
+}
+
+template<typename KeyValuePair, typename Compare, bool hasRank>
+bool CompactingBTree<KeyValuePair, Compare, hasRank>::verify() const
+{
+    if (m_root == NULL) {
+        return m_count == 0 && m_height == 0 && m_first == NULL && m_last == NULL &&
+               m_leaves.count() == 0 && m_inners.count() == 0;
+    }
+    int64_t inners = 0;
+    if (m_root->parent != NULL || verify(m_root, m_height, NULL, NULL, inners) != m_count ||
+        inners != m_inners.count()) {
+        return false;
+    }
+
+    // The leaves are linked in key order
+    int64_t leaves = 0;
+    int64_t entries = 0;
+    const LeafNode *prev = NULL;
+    for (const LeafNode *leaf = m_first; leaf != NULL; leaf = leaf->next) {
+        if (leaf->prev != prev) {
+            return false;
+        }
+        if (prev != NULL && m_comper(prev->key(prev->count - 1), leaf->key(0)) > (m_unique ? -1 : 0)) {
+            return false;
+        }
+        ++leaves;
+        entries += leaf->count;
+        prev = leaf;
+    }
+    return prev == m_last && entries == m_count && leaves == m_leaves.count();
+}
+
+/**
+ * Check the subtree below node and return its number of entries, or -1.
+ * All the keys must be between low and high, where NULL means unbounded.
+ * The inner nodes of the subtree are added to inners.
+ */
+template<typename KeyValuePair, typename Compare, bool hasRank>
+int64_t CompactingBTree<KeyValuePair, Compare, hasRank>::verify(const NodeBase *node, int level,
+                                                                const Key *low, const Key *high,
+                                                                int64_t &inners) const
+{
+    const bool isRoot = node == m_root;
+    if (level == 1) {
+        const LeafNode *leaf = static_cast<const LeafNode*>(node);
+        if (leaf->count > LEAF_CAPACITY || leaf->count < (isRoot ? 1 : LEAF_MIN)) {
+            return -1;
+        }
+        for (int i = 0; i < leaf->count; ++i) {
+            if (i > 0 && m_comper(leaf->key(i - 1), leaf->key(i)) > (m_unique ? -1 : 0)) {
+                return -1;
+            }
+            if (high != NULL && m_comper(leaf->key(i), *high) > 0) {
+                return -1;
+            }
+        }
+        // A separator is the smallest key on its right
+        if (low != NULL && m_comper(leaf->key(0), *low) != 0) {
+            return -1;
+        }
+        return leaf->count;
+    }
+
+    const InnerNode *inner = static_cast<const InnerNode*>(node);
+    if (inner->count > INNER_CAPACITY || inner->count < (isRoot ? 2 : INNER_MIN)) {
+        return -1;
+    }
+    ++inners;
+    int64_t total = 0;
+    for (int i = 0; i < inner->count; ++i) {
+        if (inner->children[i]->parent != inner) {
+            return -1;
+        }
+        const Key *childLow = i == 0 ? low : &inner->separator(i - 1);
+        const Key *childHigh = i == inner->count - 1 ? high : &inner->separator(i);
+        int64_t childCount = verify(inner->children[i], level - 1, childLow, childHigh, inners);
+        if (childCount < 0) {
+            return -1;
+        }
+        total += childCount;
+    }
+    return total;
+}
+
+template<typename KeyValuePair, typename Compare, bool hasRank>
+bool CompactingBTree<KeyValuePair, Compare, hasRank>::verifyRank() const
+{
+    if (!hasRank) {
+        return true;
+    }
+    if (m_root == NULL) {
+        return m_count == 0;
+    }
+    if (verifyRank(m_root, m_height) != m_count) {
+        return false;
+    }
+    int64_t rank = 1;
+    for (iterator it = begin(); !it.isEnd(); it.moveNext(), ++rank) {
+        if ( ! findRank(rank).equals(it)) {
+            return false;
+        }
+    }
+    return true;
+}
+
+template<typename KeyValuePair, typename Compare, bool hasRank>
+int64_t CompactingBTree<KeyValuePair, Compare, hasRank>::verifyRank(const NodeBase *node, int level) const
+{
+    if (level == 1) {
+        return node->count;
+    }
+    const InnerNode *inner = static_cast<const InnerNode*>(node);
+    int64_t total = 0;
+    for (int i = 0; i < inner->count; ++i) {
+        int64_t childCount = verifyRank(inner->children[i], level - 1);
+        if (childCount != inner->subct[i]) {
+            return -1;
+        }
+        total += childCount;
+    }
+    return total;
+}
+
+// Tells the tree indexes which of the ordered maps they are built on
+template <typename MapType> struct IsCompactingBTree { static const bool value = false; };
+template <typename KeyValuePair, typename Compare, bool hasRank>
+struct IsCompactingBTree<CompactingBTree<KeyValuePair, Compare, hasRank> > { static const bool value = true; };
+
+} // namespace voltdb
+
+#endif // COMPACTINGBTREE_H_
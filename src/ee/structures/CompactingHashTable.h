@@ -161,6 +161,10 @@ namespace voltdb {
         iterator find(const Key &key) const;
         /** find an exact key/value match (optionaly searching by value first) */
         iterator find(const Key &key, const Data &value) const;
+        /** prefetch the bucket of a key ahead of a find, returns the bucket offset */
+        uint64_t prefetchBucket(const Key &key) const;
+        /** prefetch the first node of a bucket returned by prefetchBucket */
+        void prefetchChain(uint64_t bucketOffset) const { __builtin_prefetch(m_buckets[bucketOffset]); }
         /** simple insert */
         const Data *insert(const Key &key, const Data &value);
         /** delete by key (unique only) */
@@ -290,6 +294,14 @@ namespace voltdb {
         return iterator(foundNode);
     }
 
+    template<class K, class T, class H, class EK, class ET>
+    uint64_t CompactingHashTable<K, T, H, EK, ET>::prefetchBucket(const Key &key) const {
+        uint64_t hash = m_hasher(key);
+        uint64_t bucketOffset = hash % TABLE_SIZES[m_sizeIndex];
+        __builtin_prefetch(&m_buckets[bucketOffset]);
+        return bucketOffset;
+    }
+
     template<class K, class T, class H, class EK, class ET>
     typename CompactingHashTable<K, T, H, EK, ET>::iterator CompactingHashTable<K, T, H, EK, ET>::find(const Key &key, const Data &value) const {
         uint64_t hash = m_hasher(key);
@@ -106,6 +106,8 @@ class CompactingMap {
 protected:
     static const char RED = COMPACTING_MAP_RED;
     static const char BLACK = COMPACTING_MAP_BLACK;
+    // Entries a hinted bound search steps over before searching from the root
+    static const int HINT_STEPS = 4;
 
     struct TreeNode {
         KeyValuePair kv;
@@ -222,6 +224,12 @@ public:
     iterator lowerBound(const Key &key) const;
     iterator upperBound(const Key &key) const;
 
+    // Bounds searched forward from a hint that is not past the bound, such
+    // as a bound of a smaller key. A few steps from the hint are tried
+    // before falling back to a search from the root.
+    iterator lowerBound(const Key &key, const iterator &hint) const;
+    iterator upperBound(const Key &key, const iterator &hint) const;
+
     std::pair<iterator, iterator> equalRange(const Key &key) const;
 
     size_t bytesAllocated() const { return m_allocator.bytesAllocated(); }
@@ -420,6 +428,36 @@ CompactingMap<KeyValuePair, Compare, hasRank>::upperBound(const Key &key) const
 
 }
 
+template<typename KeyValuePair, typename Compare, bool hasRank>
+typename CompactingMap<KeyValuePair, Compare, hasRank>::iterator
+CompactingMap<KeyValuePair, Compare, hasRank>::lowerBound(const Key &key, const iterator &hint) const
+{
+    iterator iter(hint);
+    for (int step = 0; step <= HINT_STEPS; ++step) {
+        if (iter.isEnd() || m_comper(iter.key(), key) >= 0) {
+            return iter;
+        }
+        iter.moveNext();
+    }
+    return lowerBound(key);
+}
+
+template<typename KeyValuePair, typename Compare, bool hasRank>
+typename CompactingMap<KeyValuePair, Compare, hasRank>::iterator
+CompactingMap<KeyValuePair, Compare, hasRank>::upperBound(const Key &key, const iterator &hint) const
+{
+    Key tmpKey(key);
+    setPointerValue(tmpKey, MAXPOINTER);
+    iterator iter(hint);
+    for (int step = 0; step <= HINT_STEPS; ++step) {
+        if (iter.isEnd() || m_comper(iter.key(), tmpKey) > 0) {
+            return iter;
+        }
+        iter.moveNext();
+    }
+    return upperBound(key);
+}
+
 template<typename KeyValuePair, typename Compare, bool hasRank>
 typename std::pair<typename CompactingMap<KeyValuePair, Compare, hasRank>::iterator,
                    typename CompactingMap<KeyValuePair, Compare, hasRank>::iterator>
@@ -23,7 +23,11 @@ import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
@@ -60,6 +64,22 @@ public class ForeignHost {
     // hold onto the socket so we can kill it
     private final Socket m_socket;
 
+    /*
+     * Connections messages are sent on, the first is m_network, the connection the host
+     * joined the mesh with. The others are published together once all of them are up.
+     * A source mailbox that sent anything before that keeps using the first connection,
+     * so messages from every source mailbox stay in order.
+     */
+    private volatile PicoNetwork[] m_channels;
+    private final List<PicoNetwork> m_extraChannels = new ArrayList<PicoNetwork>();
+    private final List<Socket> m_extraSockets = new ArrayList<Socket>();
+    // Only remembered when this host is configured for more than one connection
+    private final boolean m_pinSources;
+    private final Set<Long> m_sourcesOnFirstChannel =
+            Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+    // Every connection hangs up when the host goes away, report the failure once
+    private final AtomicBoolean m_hangupReported = new AtomicBoolean(false);
+
     // Set the default here for TestMessaging, which currently has no VoltDB instance
     private long m_deadHostTimeout;
     private final AtomicLong m_lastMessageMillis = new AtomicLong(Long.MAX_VALUE);
@@ -98,7 +118,7 @@ public class ForeignHost {
         public void stopping(Connection c)
         {
             m_isUp = false;
-            if (!m_closing)
+            if (!m_closing && m_hangupReported.compareAndSet(false, true))
             {
                 if (!m_hostMessenger.isShuttingDown()) {
                     VoltDB.dropStackTrace("Received remote hangup from foreign host " + hostnameAndIPAndPort());
@@ -154,10 +174,74 @@ public class ForeignHost {
         m_deadHostTimeout = deadHostTimeout;
         m_listeningAddress = listeningAddress;
         m_network = network;
+        m_channels = new PicoNetwork[] { network };
+        m_pinSources = host.getChannelsPerHost() > 1;
 
         setLogRate(deadHostTimeout);
     }
 
+    /**
+     * Add another connection to this host. Reads start right away, sends only use
+     * the connection once channelCount connections are up.
+     */
+    synchronized void addChannel(SocketChannel socket, int channelCount, Set<Long> verbotenThreads) {
+        if (m_closing) {
+            try {
+                socket.close();
+            } catch (IOException ignore) {}
+            return;
+        }
+        PicoNetwork network = new PicoNetwork(socket);
+        m_extraSockets.add(socket.socket());
+        m_extraChannels.add(network);
+        network.start(new FHInputHandler(), verbotenThreads);
+
+        if (!m_pinSources) {
+            // Without knowing which sources already sent, only the first connection is safe to send on
+            if (m_extraChannels.size() == 1) {
+                hostLog.warn("Host " + m_hostId + " opened " + channelCount + " connections but this host " +
+                             "is configured for one, only the first connection will be used to send");
+            }
+            return;
+        }
+        if (m_extraChannels.size() + 1 >= channelCount) {
+            PicoNetwork[] channels = new PicoNetwork[m_extraChannels.size() + 1];
+            channels[0] = m_network;
+            for (int ii = 0; ii < m_extraChannels.size(); ii++) {
+                channels[ii + 1] = m_extraChannels.get(ii);
+            }
+            m_channels = channels;
+        }
+    }
+
+    /** All the connections to this host, including ones not used for sending yet */
+    synchronized List<PicoNetwork> getChannels() {
+        List<PicoNetwork> channels = new ArrayList<PicoNetwork>(m_extraChannels.size() + 1);
+        channels.add(m_network);
+        channels.addAll(m_extraChannels);
+        return channels;
+    }
+
+    /*
+     * Pick the connection for messages from a source mailbox. Agreement traffic and
+     * sources that sent before the other connections were up stay on the first one,
+     * their earlier messages may still be queued there.
+     */
+    private PicoNetwork channelFor(long sourceHSId) {
+        final PicoNetwork[] channels = m_channels;
+        if (channels.length == 1) {
+            if (m_pinSources) {
+                m_sourcesOnFirstChannel.add(sourceHSId);
+            }
+            return channels[0];
+        }
+        final int siteId = CoreUtils.getSiteIdFromHSId(sourceHSId);
+        if (siteId == HostMessenger.AGREEMENT_SITE_ID || m_sourcesOnFirstChannel.contains(sourceHSId)) {
+            return channels[0];
+        }
+        return channels[(siteId & Integer.MAX_VALUE) % channels.length];
+    }
+
     public void enableRead(Set<Long> verbotenThreads) {
         m_network.start(m_handler, verbotenThreads);
     }
@@ -169,6 +253,9 @@ public class ForeignHost {
         m_closing = true;
         try {
             m_network.shutdownAsync();
+            for (PicoNetwork network : m_extraChannels) {
+                network.shutdownAsync();
+            }
         } catch (InterruptedException e) {
             Throwables.propagate(e);
         }
@@ -184,6 +271,11 @@ public class ForeignHost {
             m_socket.setSoLinger(false, 0);
             Thread.sleep(25);
             m_socket.close();
+            synchronized (this) {
+                for (Socket socket : m_extraSockets) {
+                    socket.close();
+                }
+            }
             Thread.sleep(25);
             System.gc();
             Thread.sleep(25);
@@ -220,7 +312,7 @@ public class ForeignHost {
             return;
         }
 
-        m_network.enqueue(
+        channelFor(message.m_sourceHSId).enqueue(
                 new DeferredSerialization() {
                     @Override
                     public final void serialize(final ByteBuffer buf) throws IOException {
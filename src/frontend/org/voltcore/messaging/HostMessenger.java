@@ -17,6 +17,7 @@
 
 package org.voltcore.messaging;
 
+import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.SocketException;
 import java.nio.ByteBuffer;
@@ -128,6 +129,11 @@ public class HostMessenger implements SocketJoiner.JoinHandler, InterfaceToMesse
         public int networkThreads =  Math.max(2, CoreUtils.availableProcessors() / 4);
         public Queue<String> coreBindIds;
         public AtomicBoolean isPaused = new AtomicBoolean(false);
+        /*
+         * Connections a joining node opens to each host. Messages are spread
+         * over them by source mailbox, so one busy mailbox doesn't hold up the others.
+         */
+        public int channelsPerHost = Math.max(1, Integer.getInteger("channelsPerHost", 1));
 
         public Config(String coordIp, int coordPort) {
             if (coordIp == null || coordIp.length() == 0) {
@@ -292,6 +298,7 @@ public class HostMessenger implements SocketJoiner.JoinHandler, InterfaceToMesse
                 m_config.coordinatorIp,
                 m_config.internalInterface,
                 m_config.internalPort, m_config.isPaused,
+                m_config.channelsPerHost,
                 this);
 
         // Register a clean shutdown hook for the network threads.  This gets cranky
@@ -638,6 +645,23 @@ public class HostMessenger implements SocketJoiner.JoinHandler, InterfaceToMesse
         }
     }
 
+    /*
+     * Another connection from a host that is already a member of the mesh
+     */
+    @Override
+    public void notifyOfChannel(int hostId, int channelCount, SocketChannel socket) {
+        ForeignHost fhost = m_foreignHosts.get(hostId);
+        if (fhost == null) {
+            m_networkLog.warn("Dropping connection from unknown host " + hostId);
+            try {
+                socket.close();
+            } catch (IOException ignore) {}
+            return;
+        }
+        prepSocketChannel(socket);
+        fhost.addChannel(socket, channelCount, VERBOTEN_THREADS);
+    }
+
     @Override
     public void notifyAsPaused() {
         m_config.isPaused.set(true);
@@ -993,6 +1017,10 @@ public class HostMessenger implements SocketJoiner.JoinHandler, InterfaceToMesse
         return m_localHostId;
     }
 
+    int getChannelsPerHost() {
+        return m_config.channelsPerHost;
+    }
+
     public long getHSIdForLocalSite(int site) {
         return CoreUtils.getHSIdFromHostAndSite(getHostId(), site);
     }
@@ -1357,7 +1385,7 @@ public class HostMessenger implements SocketJoiner.JoinHandler, InterfaceToMesse
         ArrayList<IOStatsIntf> picoNetworks = new ArrayList<IOStatsIntf>(fhosts.size());
 
         for (ForeignHost fh : fhosts.values()) {
-            picoNetworks.add(fh.m_network);
+            picoNetworks.addAll(fh.getChannels());
         }
 
         return m_network.getIOStats(interval, picoNetworks);
@@ -93,6 +93,11 @@ public class SocketJoiner {
                 int hosts[],
                 SocketChannel sockets[],
                 InetSocketAddress listeningAddresses[]) throws Exception;
+
+        /*
+         * An additional connection from a host that already joined the mesh
+         */
+        public void notifyOfChannel(int hostId, int channelCount, SocketChannel socket);
     }
 
     private static final VoltLogger LOG = new VoltLogger("JOINER");
@@ -111,6 +116,7 @@ public class SocketJoiner {
     // from configuration data
     int m_internalPort = 3021;
     String m_internalInterface = "";
+    final int m_channelsPerHost;
     /*
      * The interface we connected to the leader on
      */
@@ -237,6 +243,7 @@ public class SocketJoiner {
             InetSocketAddress coordIp,
             String internalInterface,
             int internalPort, AtomicBoolean isPaused,
+            int channelsPerHost,
             JoinHandler jh) {
         if (internalInterface == null || coordIp == null || jh == null) {
             throw new IllegalArgumentException();
@@ -246,6 +253,7 @@ public class SocketJoiner {
         m_internalInterface = internalInterface;
         m_internalPort = internalPort;
         m_paused = isPaused;
+        m_channelsPerHost = channelsPerHost;
     }
 
     /*
@@ -413,6 +421,8 @@ public class SocketJoiner {
                 m_joinHandler.requestJoin( sc, listeningAddress, jsObj.optString("request"));
             } else if (type.equals("PUBLISH_HOSTID")){
                 m_joinHandler.notifyOfJoin(jsObj.getInt("hostId"), sc, listeningAddress);
+            } else if (type.equals("PUBLISH_CHANNEL")) {
+                m_joinHandler.notifyOfChannel(jsObj.getInt("hostId"), jsObj.getInt("channels"), sc);
             } else {
                 throw new RuntimeException("Unexpected message type " + type + " from " + remoteAddress);
             }
@@ -725,11 +735,82 @@ public class SocketJoiner {
              * It will init the agreement site and then we are done.
              */
             m_joinHandler.notifyOfHosts( m_localHostId, hostIds, hostSockets, listeningAddresses);
+
+            /*
+             * Open the additional connections to every host. This has to wait for the
+             * agreement site, the leader doesn't accept connections until this node joined it.
+             */
+            for (int ii = 0; ii < hostIds.length; ii++) {
+                for (int channel = 1; channel < m_channelsPerHost; channel++) {
+                    SocketChannel channelSocket =
+                            connectChannel(listeningAddresses[ii], channel, localVersionString, localBuildString, activeVersions);
+                    m_joinHandler.notifyOfChannel(hostIds[ii], m_channelsPerHost, channelSocket);
+                }
+            }
         } catch (ClosedByInterruptException e) {
             //This is how shutdown is done
         }
     }
 
+    /*
+     * Connect another channel to a host that is already connected to this node
+     */
+    private SocketChannel connectChannel(InetSocketAddress hostAddr,
+                                         int channel,
+                                         String localVersionString,
+                                         String localBuildString,
+                                         Set<String> activeVersions) throws Exception
+    {
+        SocketChannel socket = null;
+        while (socket == null) {
+            try {
+                socket = SocketChannel.open(hostAddr);
+            }
+            catch (java.net.ConnectException e) {
+                LOG.warn("Connecting channel " + channel + " to host failed: " + e.getMessage() + " retrying..");
+                try {
+                    Thread.sleep(250); //  milliseconds
+                }
+                catch (InterruptedException ex) {
+                    // don't really care.
+                }
+            }
+        }
+        socket.socket().setTcpNoDelay(true);
+        socket.socket().setPerformancePreferences(0, 2, 1);
+        final String remoteAddress = socket.socket().getRemoteSocketAddress().toString();
+
+        // The clock skew was already checked on the first connection
+        ByteBuffer currentTimeBuf = ByteBuffer.allocate(8);
+        while (currentTimeBuf.hasRemaining()) {
+            if (socket.read(currentTimeBuf) == -1) {
+                throw new EOFException(remoteAddress);
+            }
+        }
+
+        JSONObject jsObj = new JSONObject();
+        jsObj.put("type", "PUBLISH_CHANNEL");
+        jsObj.put("hostId", m_localHostId);
+        jsObj.put("channel", channel);
+        jsObj.put("channels", m_channelsPerHost);
+        jsObj.put("port", m_internalPort);
+        jsObj.put(
+                "address",
+                m_internalInterface.isEmpty() ? m_reportedInternalInterface : m_internalInterface);
+        jsObj.put("versionString", localVersionString);
+
+        byte jsBytes[] = jsObj.toString(4).getBytes(Constants.UTF8ENCODING);
+        ByteBuffer publishChannel = ByteBuffer.allocate(4 + jsBytes.length);
+        publishChannel.putInt(jsBytes.length);
+        publishChannel.put(jsBytes).flip();
+        while (publishChannel.hasRemaining()) {
+            socket.write(publishChannel);
+        }
+
+        processVersionJSONResponse(socket, remoteAddress, localVersionString, localBuildString, activeVersions);
+        return socket;
+    }
+
     private static void checkClockSkew(List<Long> skews)
     {
         long maxSkew = Collections.max(skews);
@@ -25,6 +25,7 @@ import java.util.concurrent.TimeUnit;
 
 import org.voltcore.logging.Level;
 import org.voltcore.logging.VoltLogger;
+import org.voltcore.utils.DBBPool;
 import org.voltcore.utils.DBBPool.BBContainer;
 import org.voltcore.utils.DeferredSerialization;
 import org.voltcore.utils.RateLimitedLogger;
@@ -47,6 +48,12 @@ public abstract class NIOWriteStreamBase {
      */
     protected final ArrayDeque<BBContainer> m_queuedBuffers = new ArrayDeque<BBContainer>();
 
+    /**
+     * Messages at least this large, such as responses with big result sets, are written
+     * from a direct buffer of their own rather than split across network buffers
+     */
+    private static final int LARGE_MESSAGE_SIZE = Integer.getInteger("NETWORK_LARGE_MESSAGE_SIZE", 1024 * 256);
+
     protected long m_bytesWritten = 0;
     protected long m_messagesWritten = 0;
 
@@ -106,6 +113,19 @@ public abstract class NIOWriteStreamBase {
             processedWrites++;
             final int serializedSize = ds.getSerializedSize();
             if (serializedSize == DeferredSerialization.EMPTY_MESSAGE_LENGTH) continue;
+            if (serializedSize >= LARGE_MESSAGE_SIZE) {
+                //Serialize to a direct buffer of its own instead of to a heap
+                //buffer that would be copied into network buffers. It is freed
+                //once written, pooling buffers of any size would have no bound
+                final BBContainer bigCont = DBBPool.allocateDirect(serializedSize);
+                final ByteBuffer slice = bigCont.b().slice();
+                ds.serialize(slice);
+                checkSloppySerialization(slice, ds);
+                bigCont.b().position(serializedSize);
+                bytesQueued += serializedSize;
+                m_queuedBuffers.offer(bigCont);
+                continue;
+            }
             BBContainer outCont = m_queuedBuffers.peekLast();
             ByteBuffer outbuf = null;
             if (outCont == null || !outCont.b().hasRemaining()) {
@@ -610,8 +610,9 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
             final String username = fds.readString();
             final int digestLen = ClientAuthScheme.getDigestLength(hashScheme);
             final byte password[] = new byte[digestLen];
-            //We should be left with SHA bytes only which varies based on scheme.
-            if (message.remaining() != digestLen) {
+            //We should be left with SHA bytes only which varies based on scheme,
+            //followed by the capability flags byte from version 2 on.
+            if (message.remaining() != digestLen + (aversion > 1 ? 1 : 0)) {
                 authLog.warn("Failure to authenticate connection(" + socket.socket().getRemoteSocketAddress()
                         + "): user " + username + " failed authentication.");
                 //Send negative response
@@ -621,6 +622,7 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
                 return null;
             }
             message.get(password);
+            final byte capabilities = aversion > 1 ? message.get() : 0;
 
             CatalogContext context = m_catalogContext.get();
 
@@ -695,7 +697,8 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
             /*
              * Create an input handler.
              */
-            InputHandler handler = new ClientInputHandler(username, m_isAdmin);
+            InputHandler handler = new ClientInputHandler(username, m_isAdmin,
+                    (capabilities & ColumnarTableCodec.LOGIN_FLAG_COLUMNAR_RESULTS) != 0);
 
             byte buildString[] = VoltDB.instance().getBuildString().getBytes(Charsets.UTF_8);
             responseBuffer = ByteBuffer.allocate(34 + buildString.length);
@@ -729,11 +732,16 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
          */
         private final String m_username;
 
+        // Whether the client asked for columnar result tables at login
+        private final boolean m_columnarResults;
+
         public ClientInputHandler(String username,
-                                  boolean isAdmin)
+                                  boolean isAdmin,
+                                  boolean columnarResults)
         {
             m_username = username.intern();
             m_isAdmin = isAdmin;
+            m_columnarResults = columnarResults;
         }
 
         @Override
@@ -774,8 +782,10 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
         @Override
         public void started(final Connection c) {
             m_connection = c;
-            m_cihm.put(c.connectionId(),
-                       new ClientInterfaceHandleManager( m_isAdmin, c, null, m_acg.get()));
+            ClientInterfaceHandleManager cihm =
+                    new ClientInterfaceHandleManager( m_isAdmin, c, null, m_acg.get());
+            cihm.setWantsColumnarResults(m_columnarResults);
+            m_cihm.put(c.connectionId(), cihm);
             m_acg.get().addMember(this);
             if (!m_acg.get().hasBackPressure()) {
                 c.enableReadSelection();
@@ -877,6 +887,7 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
         {
             buf.putInt(buf.capacity() - 4);
             clientResponse.flattenToBuffer(buf);
+            clientResponse.releaseResultBuffers();
         }
 
         @Override
@@ -925,6 +936,7 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
             clientResponse.setClientHandle(clientData.m_clientHandle);
             clientResponse.setClusterRoundtrip((int)TimeUnit.NANOSECONDS.toMillis(delta));
             clientResponse.setHash(null); // not part of wire protocol
+            clientResponse.setColumnarResults(cihm.wantsColumnarResults());
 
             return clientResponse.getSerializedSize() + 4;
         }
@@ -62,6 +62,7 @@ public class ClientInterfaceHandleManager
     final AdmissionControlGroup m_acg;
 
     private volatile boolean m_wantsTopologyUpdates = false;
+    private volatile boolean m_wantsColumnarResults = false;
 
     private HandleGenerator m_shortCircuitHG = new HandleGenerator(SHORT_CIRCUIT_PART_ID);
 
@@ -493,4 +494,12 @@ public class ClientInterfaceHandleManager
     public boolean wantsTopologyUpdates() {
         return m_wantsTopologyUpdates;
     }
+
+    public void setWantsColumnarResults(boolean wantsColumnarResults) {
+        m_wantsColumnarResults = wantsColumnarResults;
+    }
+
+    public boolean wantsColumnarResults() {
+        return m_wantsColumnarResults;
+    }
 }
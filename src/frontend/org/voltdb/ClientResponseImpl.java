@@ -45,6 +45,14 @@ public class ClientResponseImpl implements ClientResponse, JSONString {
     private VoltTable[] results = new VoltTable[0];
     private Integer m_hash = null;
 
+    // Server side, encode large result tables column-major for clients that asked for it
+    private boolean m_columnarResults = false;
+    private ByteBuffer[] m_columnarTables = null;
+    // Client side, columnar tables not decoded until the results are first accessed
+    private volatile ByteBuffer[] m_undecodedResults = null;
+    // Server side, gives back the direct buffers backing the result tables once written
+    private Runnable m_resultBufferRelease = null;
+
     private int clusterRoundTripTime = 0;
     private int clientRoundTripTime = 0;
     private long clientRoundTripTimeNanos = 0;
@@ -62,6 +70,10 @@ public class ClientResponseImpl implements ClientResponse, JSONString {
     // transaction is a duplicate
     public static final String IGNORED_TRANSACTION = "Ignored replayed transaction";
 
+    // Table formats in responses of version 1 and later
+    static final byte TABLE_FORMAT_ROW = 0;
+    static final byte TABLE_FORMAT_COLUMNAR = 1;
+
     /** opaque data optionally provided by and returned to the client */
     private long clientHandle = -1;
 
@@ -113,6 +125,14 @@ public class ClientResponseImpl implements ClientResponse, JSONString {
         m_hash = hash;
     }
 
+    /**
+     * Serialize large result tables with {@link ColumnarTableCodec}, for
+     * connections that negotiated columnar results at login.
+     */
+    public void setColumnarResults(boolean columnarResults) {
+        m_columnarResults = columnarResults;
+    }
+
     @Override
     public byte getStatus() {
         return status;
@@ -120,9 +140,25 @@ public class ClientResponseImpl implements ClientResponse, JSONString {
 
     @Override
     public VoltTable[] getResults() {
+        if (m_undecodedResults != null) {
+            decodeResults();
+        }
         return results;
     }
 
+    private synchronized void decodeResults() {
+        final ByteBuffer[] undecoded = m_undecodedResults;
+        if (undecoded == null) {
+            return;
+        }
+        for (int i = 0; i < undecoded.length; i++) {
+            if (undecoded[i] != null) {
+                results[i] = ColumnarTableCodec.decode(undecoded[i]);
+            }
+        }
+        m_undecodedResults = null;
+    }
+
     @Override
     public String getStatusString() {
         return statusString;
@@ -141,7 +177,7 @@ public class ClientResponseImpl implements ClientResponse, JSONString {
     }
 
     public void initFromBuffer(ByteBuffer buf) throws IOException {
-        buf.get();//Skip version byte
+        final byte version = buf.get();
         clientHandle = buf.getLong();
         byte presentFields = buf.get();
         status = buf.get();
@@ -170,15 +206,28 @@ public class ClientResponseImpl implements ClientResponse, JSONString {
             throw new IOException("Table count is negative: " + tableCount);
         }
         results = new VoltTable[tableCount];
+        ByteBuffer[] undecoded = null;
         for (int i = 0; i < tableCount; i++) {
+            final byte format = version > 0 ? buf.get() : TABLE_FORMAT_ROW;
             int tableSize = buf.getInt();
             final int originalLimit = buf.limit();
             buf.limit(buf.position() + tableSize);
             final ByteBuffer slice = buf.slice();
             buf.position(buf.position() + tableSize);
             buf.limit(originalLimit);
-            results[i] = new VoltTable(slice, false);
+            if (format == TABLE_FORMAT_COLUMNAR) {
+                // Decoded on first access, off the network thread
+                if (undecoded == null) {
+                    undecoded = new ByteBuffer[tableCount];
+                }
+                undecoded[i] = slice;
+            } else if (format == TABLE_FORMAT_ROW) {
+                results[i] = new VoltTable(slice, false);
+            } else {
+                throw new IOException("Unknown table format " + format);
+            }
         }
+        m_undecodedResults = undecoded;
         setProperly = true;
     }
 
@@ -202,19 +251,48 @@ public class ClientResponseImpl implements ClientResponse, JSONString {
         if (m_hash != null) {
             msgsize += 4;
         }
-        for (VoltTable vt : results) {
-            msgsize += vt.getSerializedSize();
+        final VoltTable[] tables = getResults();
+        m_columnarTables = m_columnarResults ? new ByteBuffer[tables.length] : null;
+        for (int i = 0; i < tables.length; i++) {
+            if (m_columnarResults) {
+                msgsize += 1; // table format
+                m_columnarTables[i] = ColumnarTableCodec.encode(tables[i]);
+                if (m_columnarTables[i] != null) {
+                    msgsize += 4 + m_columnarTables[i].remaining();
+                    continue;
+                }
+            }
+            msgsize += tables[i].getSerializedSize();
         }
 
         return msgsize;
     }
 
+    /**
+     * Set what to run once the result tables have been written to the client,
+     * to give back the buffers backing them.
+     */
+    public void setResultBufferRelease(Runnable release) {
+        m_resultBufferRelease = release;
+    }
+
+    /**
+     * Called once the response has been written to the client. The buffers
+     * are reused once the result tables are no longer reachable.
+     */
+    public void releaseResultBuffers() {
+        if (m_resultBufferRelease != null) {
+            m_resultBufferRelease.run();
+            m_resultBufferRelease = null;
+        }
+    }
+
     /**
      * @return buf to allow call chaining.
      */
     public ByteBuffer flattenToBuffer(ByteBuffer buf) {
         assert setProperly;
-        buf.put((byte)0); //version
+        buf.put(m_columnarResults ? (byte)1 : (byte)0); //version
         buf.putLong(clientHandle);
         byte presentFields = 0;
         if (appStatusString != null) {
@@ -241,10 +319,20 @@ public class ClientResponseImpl implements ClientResponse, JSONString {
         if (m_hash != null) {
             buf.putInt(m_hash.intValue());
         }
-        buf.putShort((short) results.length);
-        for (VoltTable vt : results)
+        final VoltTable[] tables = getResults();
+        buf.putShort((short) tables.length);
+        for (int i = 0; i < tables.length; i++)
         {
-            vt.flattenToBuffer(buf);
+            if (m_columnarResults) {
+                if (m_columnarTables[i] != null) {
+                    buf.put(TABLE_FORMAT_COLUMNAR);
+                    buf.putInt(m_columnarTables[i].remaining());
+                    buf.put(m_columnarTables[i].duplicate());
+                    continue;
+                }
+                buf.put(TABLE_FORMAT_ROW);
+            }
+            tables[i].flattenToBuffer(buf);
         }
         return buf;
     }
@@ -307,7 +395,7 @@ public class ClientResponseImpl implements ClientResponse, JSONString {
             js.value(appStatusString);
             js.key(JSON_RESULTS_KEY);
             js.array();
-            for (VoltTable o : results) {
+            for (VoltTable o : getResults()) {
                 js.value(o);
             }
             js.endArray();
@@ -327,6 +415,7 @@ public class ClientResponseImpl implements ClientResponse, JSONString {
     public int getHashOfTableResults() {
         try {
             long cheesyChecksum = 0;
+            final VoltTable[] results = getResults();
             for (int i = 0; i < results.length; ++i) {
                 cheesyChecksum += ClientUtils.cheesyBufferCheckSum(results[i].m_buffer);
             }
@@ -352,9 +441,11 @@ public class ClientResponseImpl implements ClientResponse, JSONString {
         VoltTable t = new VoltTable(new VoltTable.ColumnInfo("", VoltType.INTEGER));
         t.addRow(hash);
         results = new VoltTable[] { t };
+        m_undecodedResults = null;
     }
 
     public void dropResultTable() {
         results = new VoltTable[] {};
+        m_undecodedResults = null;
     }
 }
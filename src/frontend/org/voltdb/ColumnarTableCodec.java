@@ -0,0 +1,490 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Column-major wire encoding of a {@link VoltTable}, used for the results of
+ * client connections that ask for it at login.
+ *
+ * The encoded table starts with the regular table header and row count. Each
+ * column follows as a block of one encoding byte, the int length of the block
+ * payload and the payload itself. Values keep their row-major serialization
+ * (fixed width, or length prefixed for variable length types), so decoding
+ * rebuilds the exact buffer the server would have sent row-major.
+ *
+ * Every column is encoded with whichever of these is smallest:
+ * <ul>
+ * <li>PLAIN: the values back to back, without the per-row length prefixes.</li>
+ * <li>RLE: runs of an int run length followed by the repeated value.</li>
+ * <li>DICTIONARY: an int entry count, the distinct values, then one code per row,
+ * one, two or four bytes wide depending on the entry count.</li>
+ * <li>DELTA: integer types only, zig-zag varints of the difference from the
+ * previous row.</li>
+ * </ul>
+ */
+public class ColumnarTableCodec {
+
+    /** Capability flag sent by clients at login to ask for columnar results */
+    public static final byte LOGIN_FLAG_COLUMNAR_RESULTS = 1;
+
+    /** Tables with fewer rows are sent row-major, they gain little from the encoding */
+    public static final int MIN_ROWS = Integer.getInteger("columnarResultMinRows", 64);
+
+    static final byte PLAIN = 0;
+    static final byte RLE = 1;
+    static final byte DICTIONARY = 2;
+    static final byte DELTA = 3;
+
+    /**
+     * Encode a table column-major.
+     *
+     * @return The encoded table, or null if the table is too small to be worth it.
+     */
+    public static ByteBuffer encode(VoltTable table) {
+        final int rowCount = table.getRowCount();
+        if (rowCount < MIN_ROWS) {
+            return null;
+        }
+        final ByteBuffer src = table.m_buffer;
+        final int colCount = table.getColumnCount();
+        final int rowDataStart = table.m_rowStart + 4;
+
+        // No column is encoded larger than PLAIN, which is smaller than the
+        // row-major data by the row length prefixes.
+        ByteBuffer out = ByteBuffer.allocate(src.limit() + colCount * 5);
+        append(src, 0, rowDataStart, out);
+
+        // Position of the next unencoded value in each row
+        final int[] cursors = new int[rowCount];
+        int pos = rowDataStart;
+        for (int r = 0; r < rowCount; r++) {
+            cursors[r] = pos + 4;
+            pos += 4 + src.getInt(pos);
+        }
+
+        final int[] offsets = new int[rowCount];
+        final int[] lengths = new int[rowCount];
+        for (int c = 0; c < colCount; c++) {
+            final VoltType type = table.getColumnType(c);
+            final int fixedLength = type.getLengthInBytesForFixedTypesWithoutCheck();
+            long plainSize = 0;
+            for (int r = 0; r < rowCount; r++) {
+                offsets[r] = cursors[r];
+                lengths[r] = valueLength(src, cursors[r], fixedLength);
+                cursors[r] += lengths[r];
+                plainSize += lengths[r];
+            }
+
+            byte encoding = PLAIN;
+            long bestSize = plainSize;
+            final long rleSize = rleSize(src, offsets, lengths, rowCount);
+            if (rleSize < bestSize) {
+                encoding = RLE;
+                bestSize = rleSize;
+            }
+            final Map<ByteBuffer, Integer> dictionary = buildDictionary(src, offsets, lengths, rowCount);
+            if (dictionary != null) {
+                long dictionarySize = 4 + (long) rowCount * codeWidth(dictionary.size());
+                for (ByteBuffer value : dictionary.keySet()) {
+                    dictionarySize += value.remaining();
+                }
+                if (dictionarySize < bestSize) {
+                    encoding = DICTIONARY;
+                    bestSize = dictionarySize;
+                }
+            }
+            if (type.isBackendIntegerType()) {
+                final long deltaSize = deltaSize(src, offsets, fixedLength, rowCount);
+                if (deltaSize < bestSize) {
+                    encoding = DELTA;
+                    bestSize = deltaSize;
+                }
+            }
+
+            out.put(encoding);
+            final int lengthPosition = out.position();
+            out.putInt(0);
+            switch (encoding) {
+            case PLAIN:
+                for (int r = 0; r < rowCount; r++) {
+                    append(src, offsets[r], lengths[r], out);
+                }
+                break;
+            case RLE:
+                writeRle(src, offsets, lengths, rowCount, out);
+                break;
+            case DICTIONARY:
+                writeDictionary(src, offsets, lengths, rowCount, dictionary, out);
+                break;
+            case DELTA:
+                writeDelta(src, offsets, fixedLength, rowCount, out);
+                break;
+            }
+            out.putInt(lengthPosition, out.position() - lengthPosition - 4);
+        }
+
+        out.flip();
+        return out;
+    }
+
+    /**
+     * Rebuild the row-major table from an encoded table starting at position 0
+     * of the given buffer.
+     */
+    public static VoltTable decode(ByteBuffer in) {
+        final int rowDataStart = in.getInt(0) + 8;
+        final int colCount = in.getShort(5);
+        final int rowCount = in.getInt(rowDataStart - 4);
+
+        final int[] blockStarts = new int[colCount];
+        final VoltType[] types = new VoltType[colCount];
+        int pos = rowDataStart;
+        for (int c = 0; c < colCount; c++) {
+            types[c] = VoltType.get(in.get(7 + c));
+            blockStarts[c] = pos;
+            pos += 5 + in.getInt(pos + 1);
+        }
+        if (pos != in.limit()) {
+            throw new IllegalArgumentException("Columnar table is " + in.limit() +
+                                               " bytes but its columns end at " + pos);
+        }
+
+        // First pass sums up the size of each row, second pass copies the values
+        final int[] cursors = new int[rowCount];
+        for (int c = 0; c < colCount; c++) {
+            decodeColumn(in, blockStarts[c], types[c], rowCount, cursors, null);
+        }
+        long size = rowDataStart + 4L * rowCount;
+        for (int r = 0; r < rowCount; r++) {
+            size += cursors[r];
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Columnar table decodes to " + size + " bytes");
+        }
+
+        final ByteBuffer out = ByteBuffer.allocate((int) size);
+        copy(in, 0, rowDataStart, out, 0);
+        pos = rowDataStart;
+        for (int r = 0; r < rowCount; r++) {
+            out.putInt(pos, cursors[r]);
+            final int rowStart = pos + 4;
+            pos = rowStart + cursors[r];
+            cursors[r] = rowStart;
+        }
+        for (int c = 0; c < colCount; c++) {
+            decodeColumn(in, blockStarts[c], types[c], rowCount, cursors, out);
+        }
+        out.position(0);
+        return new VoltTable(out, false);
+    }
+
+    /**
+     * Advance each row's cursor past its value of the column, copying the value
+     * to the cursor position first if out is not null.
+     */
+    private static void decodeColumn(ByteBuffer in, int blockStart, VoltType type, int rowCount,
+                                     int[] cursors, ByteBuffer out) {
+        final int fixedLength = type.getLengthInBytesForFixedTypesWithoutCheck();
+        final byte encoding = in.get(blockStart);
+        int pos = blockStart + 5;
+        switch (encoding) {
+        case PLAIN:
+            for (int r = 0; r < rowCount; r++) {
+                final int length = valueLength(in, pos, fixedLength);
+                emit(in, pos, length, cursors, r, out);
+                pos += length;
+            }
+            break;
+        case RLE:
+            for (int r = 0; r < rowCount;) {
+                final int runLength = in.getInt(pos);
+                pos += 4;
+                if (runLength <= 0 || runLength > rowCount - r) {
+                    throw new IllegalArgumentException("Invalid run length " + runLength);
+                }
+                final int length = valueLength(in, pos, fixedLength);
+                for (int end = r + runLength; r < end; r++) {
+                    emit(in, pos, length, cursors, r, out);
+                }
+                pos += length;
+            }
+            break;
+        case DICTIONARY: {
+            final int entryCount = in.getInt(pos);
+            pos += 4;
+            final int[] entryOffsets = new int[entryCount];
+            final int[] entryLengths = new int[entryCount];
+            for (int i = 0; i < entryCount; i++) {
+                entryOffsets[i] = pos;
+                entryLengths[i] = valueLength(in, pos, fixedLength);
+                pos += entryLengths[i];
+            }
+            final int width = codeWidth(entryCount);
+            for (int r = 0; r < rowCount; r++) {
+                final int code = readCode(in, pos, width);
+                pos += width;
+                emit(in, entryOffsets[code], entryLengths[code], cursors, r, out);
+            }
+            break;
+        }
+        case DELTA: {
+            if (!type.isBackendIntegerType()) {
+                throw new IllegalArgumentException("Delta encoded column of type " + type);
+            }
+            final ByteBuffer deltas = in.duplicate();
+            deltas.position(pos);
+            long value = 0;
+            for (int r = 0; r < rowCount; r++) {
+                final long zigzag = readVarLong(deltas);
+                value += (zigzag >>> 1) ^ -(zigzag & 1);
+                if (out != null) {
+                    writeIntegral(out, cursors[r], fixedLength, value);
+                }
+                cursors[r] += fixedLength;
+            }
+            break;
+        }
+        default:
+            throw new IllegalArgumentException("Unknown column encoding " + encoding);
+        }
+    }
+
+    private static void emit(ByteBuffer in, int offset, int length, int[] cursors, int row, ByteBuffer out) {
+        if (out != null) {
+            copy(in, offset, length, out, cursors[row]);
+        }
+        cursors[row] += length;
+    }
+
+    private static int valueLength(ByteBuffer buf, int offset, int fixedLength) {
+        if (fixedLength >= 0) {
+            return fixedLength;
+        }
+        return 4 + Math.max(0, buf.getInt(offset));
+    }
+
+    private static boolean valuesEqual(ByteBuffer buf, int offset1, int length1, int offset2, int length2) {
+        if (length1 != length2) {
+            return false;
+        }
+        for (int i = 0; i < length1; i++) {
+            if (buf.get(offset1 + i) != buf.get(offset2 + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long rleSize(ByteBuffer src, int[] offsets, int[] lengths, int rowCount) {
+        long size = 0;
+        for (int r = 0; r < rowCount; r++) {
+            if (r == 0 || !valuesEqual(src, offsets[r - 1], lengths[r - 1], offsets[r], lengths[r])) {
+                size += 4 + lengths[r];
+            }
+        }
+        return size;
+    }
+
+    private static void writeRle(ByteBuffer src, int[] offsets, int[] lengths, int rowCount, ByteBuffer out) {
+        int runStart = 0;
+        for (int r = 1; r <= rowCount; r++) {
+            if (r == rowCount ||
+                    !valuesEqual(src, offsets[runStart], lengths[runStart], offsets[r], lengths[r])) {
+                out.putInt(r - runStart);
+                append(src, offsets[runStart], lengths[runStart], out);
+                runStart = r;
+            }
+        }
+    }
+
+    /**
+     * Map each distinct value to its code, or null if more than half the values
+     * are distinct and a dictionary can't pay off.
+     */
+    private static Map<ByteBuffer, Integer> buildDictionary(ByteBuffer src, int[] offsets, int[] lengths,
+                                                           int rowCount) {
+        final int maxEntries = rowCount / 2;
+        final Map<ByteBuffer, Integer> dictionary = new HashMap<ByteBuffer, Integer>();
+        for (int r = 0; r < rowCount; r++) {
+            final ByteBuffer value = slice(src, offsets[r], lengths[r]);
+            if (!dictionary.containsKey(value)) {
+                if (dictionary.size() == maxEntries) {
+                    return null;
+                }
+                dictionary.put(value, dictionary.size());
+            }
+        }
+        return dictionary;
+    }
+
+    private static void writeDictionary(ByteBuffer src, int[] offsets, int[] lengths, int rowCount,
+                                        Map<ByteBuffer, Integer> dictionary, ByteBuffer out) {
+        final ByteBuffer[] entries = new ByteBuffer[dictionary.size()];
+        for (Map.Entry<ByteBuffer, Integer> e : dictionary.entrySet()) {
+            entries[e.getValue()] = e.getKey();
+        }
+        out.putInt(entries.length);
+        for (ByteBuffer entry : entries) {
+            out.put(entry.duplicate());
+        }
+        final int width = codeWidth(entries.length);
+        for (int r = 0; r < rowCount; r++) {
+            final int code = dictionary.get(slice(src, offsets[r], lengths[r]));
+            switch (width) {
+            case 1:
+                out.put((byte) code);
+                break;
+            case 2:
+                out.putShort((short) code);
+                break;
+            default:
+                out.putInt(code);
+            }
+        }
+    }
+
+    private static int codeWidth(int entryCount) {
+        if (entryCount <= 1 << 8) {
+            return 1;
+        } else if (entryCount <= 1 << 16) {
+            return 2;
+        }
+        return 4;
+    }
+
+    private static int readCode(ByteBuffer in, int offset, int width) {
+        switch (width) {
+        case 1:
+            return in.get(offset) & 0xFF;
+        case 2:
+            return in.getShort(offset) & 0xFFFF;
+        default:
+            return in.getInt(offset);
+        }
+    }
+
+    private static long deltaSize(ByteBuffer src, int[] offsets, int width, int rowCount) {
+        long size = 0;
+        long previous = 0;
+        for (int r = 0; r < rowCount; r++) {
+            final long value = readIntegral(src, offsets[r], width);
+            size += varLongSize(zigzag(value - previous));
+            previous = value;
+        }
+        return size;
+    }
+
+    private static void writeDelta(ByteBuffer src, int[] offsets, int width, int rowCount, ByteBuffer out) {
+        long previous = 0;
+        for (int r = 0; r < rowCount; r++) {
+            final long value = readIntegral(src, offsets[r], width);
+            writeVarLong(zigzag(value - previous), out);
+            previous = value;
+        }
+    }
+
+    private static long readIntegral(ByteBuffer buf, int offset, int width) {
+        switch (width) {
+        case 1:
+            return buf.get(offset);
+        case 2:
+            return buf.getShort(offset);
+        case 4:
+            return buf.getInt(offset);
+        default:
+            return buf.getLong(offset);
+        }
+    }
+
+    private static void writeIntegral(ByteBuffer buf, int offset, int width, long value) {
+        switch (width) {
+        case 1:
+            buf.put(offset, (byte) value);
+            break;
+        case 2:
+            buf.putShort(offset, (short) value);
+            break;
+        case 4:
+            buf.putInt(offset, (int) value);
+            break;
+        default:
+            buf.putLong(offset, value);
+        }
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static int varLongSize(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private static void writeVarLong(long value, ByteBuffer out) {
+        while ((value & ~0x7FL) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    private static long readVarLong(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            final byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint in delta encoded column");
+    }
+
+    private static ByteBuffer slice(ByteBuffer buf, int offset, int length) {
+        final ByteBuffer dup = buf.duplicate();
+        dup.limit(offset + length);
+        dup.position(offset);
+        return dup;
+    }
+
+    private static void append(ByteBuffer src, int offset, int length, ByteBuffer out) {
+        final int position = out.position();
+        copy(src, offset, length, out, position);
+        out.position(position + length);
+    }
+
+    private static void copy(ByteBuffer src, int offset, int length, ByteBuffer dst, int dstOffset) {
+        if (length <= 16) {
+            for (int i = 0; i < length; i++) {
+                dst.put(dstOffset + i, src.get(offset + i));
+            }
+        } else {
+            dst.position(dstOffset);
+            dst.put(slice(src, offset, length));
+        }
+    }
+}
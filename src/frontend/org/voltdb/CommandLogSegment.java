@@ -0,0 +1,368 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.voltdb;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.hadoop_voltpatches.util.PureJavaCrc32C;
+import org.voltcore.utils.DBBPool;
+import org.voltcore.utils.DBBPool.BBContainer;
+import org.voltcore.utils.InstanceId;
+
+/**
+ * A single preallocated file of the open source command log.
+ *
+ * The file starts with a header holding the cluster instance ID, the segment ID
+ * and the last txnId logged for each partition before the segment was opened.
+ * The header is followed by a sequence of entries. Each entry is prefixed with
+ * its payload length, the CRC32C of the entry type and payload, and the entry type.
+ * Since the file is zero filled when it is preallocated, a zero length marks the
+ * end of the log.
+ *
+ * A segment is either opened for append by the command log writer thread or
+ * for reading by the replay agent, never both.
+ */
+public class CommandLogSegment {
+    public static final String SEGMENT_PREFIX = "cmdlog_";
+    public static final String SEGMENT_SUFFIX = ".vcl";
+
+    static final int MAGIC = 0x56434C31; // "VCL1"
+    static final int VERSION = 2;
+
+    // length + crc + type
+    public static final int ENTRY_HEADER_BYTES = 4 + 4 + 1;
+
+    public static final byte ENTRY_INITIATE = 1;
+    public static final byte ENTRY_FAULT = 2;
+
+    private static final int PREALLOCATE_CHUNK = 1024 * 1024;
+
+    public static final FilenameFilter FILTER = new FilenameFilter() {
+        @Override
+        public boolean accept(File dir, String name) {
+            return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+        }
+    };
+
+    private final File m_file;
+    private final long m_segmentId;
+    private final long m_capacity;
+    private RandomAccessFile m_ras;
+    private FileChannel m_fc;
+
+    // Header contents, known at creation time or read back from the file
+    private InstanceId m_instanceId;
+    private Map<Integer, Long> m_startingTxnIds;
+
+    // Highest spHandle written to this segment for each partition
+    private final Map<Integer, Long> m_lastTxnIds = new HashMap<Integer, Long>();
+    private int m_entryCount = 0;
+
+    public static File segmentFile(File dir, long segmentId) {
+        return new File(dir, SEGMENT_PREFIX + segmentId + SEGMENT_SUFFIX);
+    }
+
+    public static long segmentIdFromFile(File file) {
+        final String name = file.getName();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+                                             name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    /**
+     * List all segments in the given directory, ordered by segment ID.
+     */
+    public static TreeMap<Long, File> listSegments(File dir) {
+        TreeMap<Long, File> segments = new TreeMap<Long, File>();
+        File[] files = dir.listFiles(FILTER);
+        if (files == null) {
+            return segments;
+        }
+        for (File f : files) {
+            try {
+                segments.put(segmentIdFromFile(f), f);
+            } catch (NumberFormatException e) {
+                // Not one of ours, ignore it
+            }
+        }
+        return segments;
+    }
+
+    /**
+     * Create a new zero filled segment file of the given capacity. Zero filling up front
+     * keeps the filesystem from having to allocate blocks (and update metadata)
+     * on every fsync of the live log.
+     */
+    public static CommandLogSegment preallocate(File dir, long segmentId, long capacity) throws IOException {
+        final File file = segmentFile(dir, segmentId);
+        if (file.exists()) {
+            throw new IOException("Command log segment " + file + " already exists");
+        }
+        RandomAccessFile ras = new RandomAccessFile(file, "rw");
+        BBContainer zeros = DBBPool.allocateDirect(PREALLOCATE_CHUNK);
+        try {
+            FileChannel fc = ras.getChannel();
+            long written = 0;
+            while (written < capacity) {
+                zeros.b().clear();
+                zeros.b().limit((int) Math.min(PREALLOCATE_CHUNK, capacity - written));
+                while (zeros.b().hasRemaining()) {
+                    written += fc.write(zeros.b(), written);
+                }
+            }
+            fc.force(true);
+        } finally {
+            zeros.discard();
+            ras.close();
+        }
+        return new CommandLogSegment(file, segmentId, capacity);
+    }
+
+    /**
+     * Open an existing segment for reading.
+     */
+    public static CommandLogSegment openForRead(File file) throws IOException {
+        CommandLogSegment segment = new CommandLogSegment(file, segmentIdFromFile(file), file.length());
+        segment.m_ras = new RandomAccessFile(file, "r");
+        segment.m_fc = segment.m_ras.getChannel();
+        segment.readHeader();
+        return segment;
+    }
+
+    /**
+     * Open a segment left behind by a previous run and read all of its entries,
+     * so that it can be truncated like a segment written by this process.
+     * The segment is closed when this returns.
+     */
+    public static CommandLogSegment openForTruncation(File file) throws IOException {
+        CommandLogSegment segment = openForRead(file);
+        try {
+            Entry entry;
+            while ((entry = segment.readNext()) != null) {
+                if (entry.type == ENTRY_INITIATE) {
+                    segment.noteEntry(entry.payload.getInt(), entry.payload.getLong());
+                }
+            }
+        } finally {
+            segment.close();
+        }
+        return segment;
+    }
+
+    private CommandLogSegment(File file, long segmentId, long capacity) {
+        m_file = file;
+        m_segmentId = segmentId;
+        m_capacity = capacity;
+    }
+
+    /**
+     * Open a preallocated segment for append and write its header.
+     */
+    public void openForAppend(InstanceId instanceId, Map<Integer, Long> startingTxnIds) throws IOException {
+        m_instanceId = instanceId;
+        m_startingTxnIds = new HashMap<Integer, Long>(startingTxnIds);
+        m_ras = new RandomAccessFile(m_file, "rw");
+        m_fc = m_ras.getChannel();
+
+        ByteBuffer header = ByteBuffer.allocate(headerSize(m_startingTxnIds.size()));
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.putLong(m_segmentId);
+        header.putInt(instanceId.getCoord());
+        header.putLong(instanceId.getTimestamp());
+        header.putInt(m_startingTxnIds.size());
+        for (Map.Entry<Integer, Long> e : m_startingTxnIds.entrySet()) {
+            header.putInt(e.getKey());
+            header.putLong(e.getValue());
+        }
+        header.flip();
+        while (header.hasRemaining()) {
+            m_fc.write(header);
+        }
+    }
+
+    static int headerSize(int partitionCount) {
+        return 4 + 4 + 8 + 4 + 8 + 4 + (partitionCount * 12);
+    }
+
+    private void readHeader() throws IOException {
+        ByteBuffer fixed = ByteBuffer.allocate(headerSize(0));
+        readFully(fixed, 0);
+        if (fixed.getInt() != MAGIC) {
+            throw new IOException("Command log segment " + m_file + " has an invalid header");
+        }
+        int version = fixed.getInt();
+        if (version != VERSION) {
+            throw new IOException("Command log segment " + m_file + " has unsupported version " + version);
+        }
+        fixed.getLong(); // segment ID, the file name is authoritative
+        m_instanceId = new InstanceId(fixed.getInt(), fixed.getLong());
+        int partitionCount = fixed.getInt();
+
+        ByteBuffer txnIds = ByteBuffer.allocate(partitionCount * 12);
+        readFully(txnIds, fixed.capacity());
+        m_startingTxnIds = new HashMap<Integer, Long>();
+        for (int i = 0; i < partitionCount; i++) {
+            m_startingTxnIds.put(txnIds.getInt(), txnIds.getLong());
+        }
+        m_fc.position(fixed.capacity() + txnIds.capacity());
+    }
+
+    private void readFully(ByteBuffer buf, long position) throws IOException {
+        while (buf.hasRemaining()) {
+            int read = m_fc.read(buf, position + buf.position());
+            if (read == -1) {
+                throw new EOFException("Unexpected end of command log segment " + m_file);
+            }
+        }
+        buf.flip();
+    }
+
+    /**
+     * Bytes left for entries, including entry headers.
+     */
+    public long remaining() throws IOException {
+        return m_capacity - m_fc.position();
+    }
+
+    /**
+     * Append a batch of already framed entries. The caller guarantees
+     * that the batch fits in {@link #remaining()}.
+     */
+    public void append(ByteBuffer framedEntries) throws IOException {
+        while (framedEntries.hasRemaining()) {
+            m_fc.write(framedEntries);
+        }
+    }
+
+    public void noteEntry(int partitionId, long spHandle) {
+        Long last = m_lastTxnIds.get(partitionId);
+        if (last == null || last < spHandle) {
+            m_lastTxnIds.put(partitionId, spHandle);
+        }
+        m_entryCount++;
+    }
+
+    public void force() throws IOException {
+        m_fc.force(false);
+    }
+
+    /**
+     * Read the next entry payload into a buffer. Returns null at the end of the log
+     * or on a torn write at the tail, which is expected after a crash.
+     * The returned buffer is positioned after the entry type byte, which
+     * can be retrieved from {@link Entry#type}.
+     */
+    public Entry readNext() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(ENTRY_HEADER_BYTES);
+        final long position = m_fc.position();
+        if (m_capacity - position < ENTRY_HEADER_BYTES) {
+            return null;
+        }
+        readFully(header, position);
+        final int length = header.getInt();
+        final int crc = header.getInt();
+        final byte type = header.get();
+        if (length <= 0 || length > m_capacity - position - ENTRY_HEADER_BYTES) {
+            return null;
+        }
+        ByteBuffer payload = ByteBuffer.allocate(length);
+        readFully(payload, position + ENTRY_HEADER_BYTES);
+        PureJavaCrc32C crc32 = new PureJavaCrc32C();
+        crc32.update(type);
+        crc32.update(payload.array(), 0, length);
+        if ((int) crc32.getValue() != crc) {
+            return null;
+        }
+        m_fc.position(position + ENTRY_HEADER_BYTES + length);
+        return new Entry(type, payload);
+    }
+
+    public static class Entry {
+        public final byte type;
+        public final ByteBuffer payload;
+
+        Entry(byte type, ByteBuffer payload) {
+            this.type = type;
+            this.payload = payload;
+        }
+    }
+
+    /**
+     * Frame an entry payload in place. The buffer must have {@link #ENTRY_HEADER_BYTES}
+     * reserved at the front, followed by the payload, and be positioned at the end of the payload.
+     * The CRC covers the type byte so that a corrupted type is caught like a corrupted payload.
+     */
+    public static void frameEntry(ByteBuffer buf, byte type) {
+        final int length = buf.position() - ENTRY_HEADER_BYTES;
+        buf.put(8, type);
+        PureJavaCrc32C crc32 = new PureJavaCrc32C();
+        crc32.update(buf.array(), buf.arrayOffset() + ENTRY_HEADER_BYTES - 1, length + 1);
+        buf.putInt(0, length);
+        buf.putInt(4, (int) crc32.getValue());
+        buf.flip();
+    }
+
+    public long capacity() {
+        return m_capacity;
+    }
+
+    public long segmentId() {
+        return m_segmentId;
+    }
+
+    public File file() {
+        return m_file;
+    }
+
+    public InstanceId instanceId() {
+        return m_instanceId;
+    }
+
+    public Map<Integer, Long> startingTxnIds() {
+        return m_startingTxnIds;
+    }
+
+    public Map<Integer, Long> lastTxnIds() {
+        return m_lastTxnIds;
+    }
+
+    public int entryCount() {
+        return m_entryCount;
+    }
+
+    public void close() throws IOException {
+        if (m_ras != null) {
+            m_ras.close();
+            m_ras = null;
+            m_fc = null;
+        }
+    }
+
+    public void closeAndDelete() throws IOException {
+        close();
+        m_file.delete();
+    }
+}
@@ -47,6 +47,7 @@ import org.voltcore.utils.DBBPool.BBContainer;
 import org.voltdb.messaging.FastSerializer;
 import org.voltdb.sysprocs.saverestore.SnapshotUtil;
 import org.voltdb.utils.CompressionService;
+import org.voltdb.utils.DirectIOFileChannel;
 import org.voltdb.utils.PosixAdvise;
 
 import com.google_voltpatches.common.util.concurrent.Callables;
@@ -101,6 +102,8 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
     private final String m_tableName;
 
     private final AtomicInteger m_outstandingWriteTasks = new AtomicInteger(0);
+    // Writes of all targets waiting for the disk
+    private static final AtomicInteger s_queuedWrites = new AtomicInteger(0);
     private final ReentrantLock m_outstandingWriteTasksLock = new ReentrantLock();
     private final Condition m_noMoreOutstandingWriteTasksCondition =
             m_outstandingWriteTasksLock.newCondition();
@@ -125,6 +128,10 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
         if (SNAPSHOT_RATELIMIT_MEGABYTES < Integer.MAX_VALUE) {
             USE_SNAPSHOT_RATELIMIT = true;
             SNAP_LOG.info("Rate limiting snapshots to " + SNAPSHOT_RATELIMIT_MEGABYTES + " megabytes/second");
+        } else if (SnapshotThrottle.isEnabled()) {
+            USE_SNAPSHOT_RATELIMIT = true;
+            SNAP_LOG.info("Adapting the snapshot rate to keep the p99 latency under " +
+                          SnapshotThrottle.LATENCY_BUDGET_MS + " ms");
         } else {
             USE_SNAPSHOT_RATELIMIT = false;
         }
@@ -184,7 +191,11 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
         m_file = file;
         m_tableName = tableName;
         m_fos = new FileOutputStream(file);
-        m_channel = m_fos.getChannel();
+        if (DirectIOFileChannel.ENABLED) {
+            m_channel = DirectIOFileChannel.open(file, "SNAPSHOT", m_fos.getChannel());
+        } else {
+            m_channel = m_fos.getChannel();
+        }
         m_needsFinalClose = !isReplicated;
         final FastSerializer fs = new FastSerializer();
         fs.writeInt(0);//CRC
@@ -255,7 +266,7 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
         if (m_simulateFullDiskWritingHeader) {
             m_writeException = new IOException("Disk full");
             m_writeFailed = true;
-            m_fos.close();
+            m_channel.close();
             throw m_writeException;
         }
 
@@ -269,14 +280,14 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
         try {
             writeFuture.get();
         } catch (InterruptedException e) {
-            m_fos.close();
+            m_channel.close();
             throw new java.io.InterruptedIOException();
         } catch (ExecutionException e) {
-            m_fos.close();
+            m_channel.close();
             throw m_writeException;
         }
         if (m_writeFailed) {
-            m_fos.close();
+            m_channel.close();
             throw m_writeException;
         }
 
@@ -290,6 +301,11 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
                 //on ye olden platters. Since we are appending to a file it's actually 2 seeks.
                 while (m_bytesWrittenSinceLastSync.get() > (1024 * 1024 * 4)) {
                     final int bytesSinceLastSync = m_bytesWrittenSinceLastSync.getAndSet(0);
+                    if (m_channel instanceof DirectIOFileChannel) {
+                        //Direct I/O leaves nothing in the page cache to sync or drop
+                        m_bytesAllowedBeforeSync.release(bytesSinceLastSync);
+                        continue;
+                    }
                     long positionAtSync = 0;
                     try {
                         positionAtSync = m_channel.position();
@@ -431,6 +447,7 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
         ByteBuffer tupleData = tupleDataCont.b();
 
         m_outstandingWriteTasks.incrementAndGet();
+        s_queuedWrites.incrementAndGet();
 
         Future<BBContainer> compressionTask = null;
         if (prependLength) {
@@ -515,6 +532,7 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
                     m_writeFailed = true;
                     throw e;
                 } finally {
+                    s_queuedWrites.decrementAndGet();
                     try {
                         tupleDataCont.discard();
                     } finally {
@@ -574,6 +592,10 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
         return m_file.toString();
     }
 
+    public static int getQueuedWriteCount() {
+        return s_queuedWrites.get();
+    }
+
     public static void setRate(final Integer megabytesPerSecond) {
         m_es.execute(new Runnable() {
             @Override
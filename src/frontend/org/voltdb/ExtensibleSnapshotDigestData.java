@@ -29,6 +29,7 @@ import org.json_voltpatches.JSONStringer;
 import org.voltcore.logging.VoltLogger;
 import org.voltcore.utils.Pair;
 import org.voltdb.iv2.MpInitiator;
+import org.voltdb.sysprocs.saverestore.SnapshotUtil;
 
 public class ExtensibleSnapshotDigestData {
     /**
@@ -52,6 +53,12 @@ public class ExtensibleSnapshotDigestData {
      */
     private final Map<Integer, JSONObject> m_drMixedClusterSizeConsumerState;
 
+    /**
+     * The type of an incremental snapshot and the nonces of its parent and base
+     * snapshots, null for a full snapshot
+     */
+    private JSONObject m_incrementalInfo = null;
+
     public ExtensibleSnapshotDigestData(
             Map<String, Map<Integer, Pair<Long, Long>>> exportSequenceNumbers,
             Map<Integer, TupleStreamStateInfo> drTupleStreamInfo,
@@ -61,6 +68,21 @@ public class ExtensibleSnapshotDigestData {
         m_drMixedClusterSizeConsumerState = drMixedClusterSizeConsumerState;
     }
 
+    public void setIncrementalInfo(JSONObject incrementalInfo) {
+        m_incrementalInfo = incrementalInfo;
+    }
+
+    private void writeIncrementalInfoToSnapshot(JSONStringer stringer) throws IOException {
+        if (m_incrementalInfo == null) {
+            return;
+        }
+        try {
+            stringer.key(SnapshotUtil.JSON_INCREMENTAL).value(m_incrementalInfo);
+        } catch (JSONException e) {
+            throw new IOException(e);
+        }
+    }
+
     private void writeExportSequenceNumbersToSnapshot(JSONStringer stringer) throws IOException {
         try {
             stringer.key("exportSequenceNumbers").array();
@@ -286,6 +308,7 @@ public class ExtensibleSnapshotDigestData {
     public void writeToSnapshotDigest(JSONStringer stringer) throws IOException {
         writeExportSequenceNumbersToSnapshot(stringer);
         writeDRStateToSnapshot(stringer);
+        writeIncrementalInfoToSnapshot(stringer);
     }
 
     public void mergeToZooKeeper(JSONObject jsonObj, VoltLogger log) throws JSONException {
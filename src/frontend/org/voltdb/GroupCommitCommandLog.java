@@ -0,0 +1,625 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.voltdb;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.zookeeper_voltpatches.CreateMode;
+import org.apache.zookeeper_voltpatches.ZooDefs.Ids;
+import org.voltcore.logging.VoltLogger;
+import org.voltcore.utils.CoreUtils;
+import org.voltcore.utils.DBBPool;
+import org.voltcore.utils.DBBPool.BBContainer;
+import org.voltcore.utils.InstanceId;
+import org.voltdb.iv2.TransactionTask;
+import org.voltdb.iv2.TxnEgo;
+import org.voltdb.messaging.Iv2InitiateTaskMessage;
+
+import com.google_voltpatches.common.util.concurrent.Futures;
+import com.google_voltpatches.common.util.concurrent.ListenableFuture;
+import com.google_voltpatches.common.util.concurrent.SettableFuture;
+
+/**
+ * Open source group commit command log.
+ *
+ * Site threads serialize each logged Iv2InitiateTaskMessage and append it to a
+ * per partition (per durability listener) pending batch. A single writer thread
+ * wakes up every fsync interval, or as soon as the configured number of transactions
+ * is pending, swaps out every partition's batch together with the durability listener's
+ * completion checks, writes the batches to the current segment with one write, fsyncs
+ * and then hands the completion checks back to the schedulers.
+ *
+ * Segments are preallocated one ahead of the writer so that rolling over never waits
+ * on block allocation. When the closed segments exceed the configured log size a
+ * truncation snapshot is requested, and segments are deleted once a truncation snapshot
+ * covers every transaction in them. Segments replayed at startup are kept the same way
+ * until a truncation snapshot covers them.
+ *
+ * The core binding used by the enterprise command log is not supported and is ignored.
+ */
+public class GroupCommitCommandLog implements CommandLog, SnapshotCompletionInterest {
+    private static final VoltLogger LOG = new VoltLogger("LOGGING");
+
+    public static final long SEGMENT_BYTES = Long.getLong("CMDLOG_SEGMENT_BYTES", 64 * 1024 * 1024);
+    // Async logging starts to push back on the schedulers with this many bytes pending
+    static final long ASYNC_BACKPRESSURE_BYTES = Long.getLong("CMDLOG_ASYNC_BACKPRESSURE_BYTES", 32 * 1024 * 1024);
+    private static final int WRITE_BUFFER_BYTES = 4 * 1024 * 1024;
+
+    // Payload prefix of an initiate entry: partition ID, spHandle, involved partition count
+    static final int INITIATE_PREFIX_BYTES = 4 + 8 + 4;
+
+    private final boolean m_synchronous;
+    private final int m_fsyncInterval;
+    private final int m_maxTxns;
+    private final File m_logPath;
+    private final String m_snapshotPath;
+
+    private volatile boolean m_initialized = false;
+    private volatile boolean m_shutdown = false;
+    private long m_logSizeBytes;
+    private InstanceId m_instanceId;
+
+    /**
+     * Transactions logged by one scheduler since the last sync. Guarded by its own monitor
+     * so that site threads only contend with the writer thread, never with each other.
+     */
+    private static class PartitionBatch {
+        final DurabilityListener m_listener;
+        ArrayList<ByteBuffer> m_entries = new ArrayList<ByteBuffer>();
+        int m_txnCount = 0;
+        SettableFuture<Object> m_backpressureFuture = null;
+
+        PartitionBatch(DurabilityListener listener) {
+            m_listener = listener;
+        }
+    }
+
+    private final Map<DurabilityListener, PartitionBatch> m_batches =
+            new ConcurrentHashMap<DurabilityListener, PartitionBatch>();
+    // Fault entries are not associated with a durability listener
+    private final ArrayList<ByteBuffer> m_faultEntries = new ArrayList<ByteBuffer>();
+
+    private final AtomicLong m_pendingTxns = new AtomicLong(0);
+    private final AtomicLong m_pendingBytes = new AtomicLong(0);
+    private final Object m_flushSignal = new Object();
+    // Guards the segment state shared by the writer thread, init and shutdown
+    private final Object m_writerLock = new Object();
+
+    // Writer thread state
+    private final Thread m_writerThread;
+    private final ExecutorService m_preallocator = CoreUtils.getSingleThreadExecutor("Command log preallocator");
+    private CommandLogSegment m_currentSegment = null;
+    private Future<CommandLogSegment> m_nextSegment = null;
+    private long m_nextSegmentId = 0;
+    private final Map<Integer, Long> m_lastLoggedTxnIds = new HashMap<Integer, Long>();
+    private BBContainer m_writeBuffer = null;
+
+    // Segments that are full and wait for a truncation snapshot, guarded by itself
+    private final ArrayDeque<CommandLogSegment> m_closedSegments = new ArrayDeque<CommandLogSegment>();
+    private volatile boolean m_truncationRequested = false;
+
+    private static final ListenableFuture<Object> COMPLETED_FUTURE = Futures.immediateFuture(null);
+
+    public GroupCommitCommandLog(boolean synchronous,
+                                 int fsyncInterval,
+                                 int maxTxns,
+                                 String logPath,
+                                 String snapshotPath) {
+        m_synchronous = synchronous;
+        m_fsyncInterval = fsyncInterval;
+        m_maxTxns = maxTxns;
+        m_logPath = new File(logPath);
+        m_snapshotPath = snapshotPath;
+
+        // The writer runs before init() so that durability checks keep being processed
+        // for transactions run during replay, which are never written to the log.
+        m_writerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writerLoop();
+            }
+        }, "Command log writer");
+        m_writerThread.setDaemon(true);
+        m_writerThread.start();
+    }
+
+    @Override
+    public void init(int logSize, long txnId, int partitionCount, String coreBinding,
+                     Map<Integer, Long> perPartitionTxnId) {
+        initializeLog(logSize, perPartitionTxnId);
+    }
+
+    @Override
+    public void initForRejoin(int logSize, long txnId, int partitionCount, boolean isRejoin,
+                              String coreBinding, Map<Integer, Long> perPartitionTxnId) {
+        initializeLog(logSize, perPartitionTxnId);
+    }
+
+    private synchronized void initializeLog(int logSizeMB, Map<Integer, Long> perPartitionTxnId) {
+        if (m_initialized) {
+            return;
+        }
+        m_logSizeBytes = logSizeMB * 1024L * 1024L;
+        m_instanceId = VoltDB.instance().getHostMessenger().getInstanceId();
+
+        if (!m_logPath.exists() && !m_logPath.mkdirs()) {
+            VoltDB.crashLocalVoltDB("Unable to create command log directory " + m_logPath, false, null);
+        }
+        retainReplayedSegments(perPartitionTxnId);
+
+        synchronized (m_writerLock) {
+            if (perPartitionTxnId != null) {
+                m_lastLoggedTxnIds.putAll(perPartitionTxnId);
+            }
+            try {
+                m_currentSegment = CommandLogSegment.preallocate(m_logPath, m_nextSegmentId++, SEGMENT_BYTES);
+                m_currentSegment.openForAppend(m_instanceId, m_lastLoggedTxnIds);
+            } catch (IOException e) {
+                VoltDB.crashLocalVoltDB("Unable to create command log segment in " + m_logPath, true, e);
+            }
+            preallocateNextSegment();
+            m_writeBuffer = DBBPool.allocateDirect(WRITE_BUFFER_BYTES);
+        }
+
+        VoltDB.instance().getSnapshotCompletionMonitor().addInterest(this);
+        m_initialized = true;
+        LOG.info("Command logging to " + m_logPath + " with " +
+                 (m_synchronous ? "synchronous" : "asynchronous") + " fsync every " +
+                 m_fsyncInterval + "ms or " + m_maxTxns + " transactions");
+    }
+
+    /**
+     * Segments left in the directory by a previous run are only deleted once a
+     * truncation snapshot covers them. After a recover the truncation snapshot
+     * taken at the end of replay usually covers all of them, but if it didn't
+     * (or there was none) they are the only durable copy of those transactions.
+     * They are queued ahead of the new segments so that the next truncation
+     * snapshot drops them, and new segment IDs continue after theirs so that
+     * replay reads them in order. Segments of a database that was created
+     * rather than recovered were never replayed and are simply removed.
+     */
+    private void retainReplayedSegments(Map<Integer, Long> perPartitionTxnId) {
+        final StartAction action = VoltDB.instance().getConfig().m_startAction;
+        final boolean recovered = action == null || action.doesRecover();
+        for (Map.Entry<Long, File> e : CommandLogSegment.listSegments(m_logPath).entrySet()) {
+            final File f = e.getValue();
+            m_nextSegmentId = Math.max(m_nextSegmentId, e.getKey() + 1);
+            CommandLogSegment segment = null;
+            if (recovered) {
+                try {
+                    segment = CommandLogSegment.openForTruncation(f);
+                } catch (IOException ex) {
+                    // Replay would have failed on it, so it belongs to something else
+                    LOG.warn("Deleting unreadable command log segment " + f, ex);
+                }
+            }
+            if (segment != null &&
+                    (perPartitionTxnId == null || !isCoveredBy(segment, perPartitionTxnId))) {
+                synchronized (m_closedSegments) {
+                    m_closedSegments.offer(segment);
+                }
+            } else if (!f.delete()) {
+                VoltDB.crashLocalVoltDB("Unable to delete stale command log segment " + f, false, null);
+            }
+        }
+        synchronized (m_closedSegments) {
+            if (!m_closedSegments.isEmpty()) {
+                LOG.info("Keeping " + m_closedSegments.size() +
+                         " replayed command log segments until a truncation snapshot covers them");
+            }
+        }
+    }
+
+    private void preallocateNextSegment() {
+        final long segmentId = m_nextSegmentId++;
+        m_nextSegment = m_preallocator.submit(new Callable<CommandLogSegment>() {
+            @Override
+            public CommandLogSegment call() throws Exception {
+                return CommandLogSegment.preallocate(m_logPath, segmentId, SEGMENT_BYTES);
+            }
+        });
+    }
+
+    @Override
+    public boolean needsInitialization() {
+        return !m_initialized;
+    }
+
+    @Override
+    public ListenableFuture<Object> log(
+            Iv2InitiateTaskMessage message,
+            long spHandle,
+            int[] involvedPartitions,
+            DurabilityListener listener,
+            TransactionTask durabilityHandle) {
+        // Transactions initiated before init() are replayed or restored ones which the
+        // truncation snapshot at the end of recovery covers, don't write them.
+        ByteBuffer entry = null;
+        if (m_initialized) {
+            try {
+                entry = serializeInitiate(message, spHandle, involvedPartitions);
+            } catch (IOException e) {
+                VoltDB.crashLocalVoltDB("Unable to serialize command log entry", true, e);
+            }
+        }
+
+        final PartitionBatch batch = m_batches.get(listener);
+        ListenableFuture<Object> result = m_synchronous ? null : COMPLETED_FUTURE;
+        synchronized (batch) {
+            listener.addTransaction(durabilityHandle);
+            if (entry != null) {
+                batch.m_entries.add(entry);
+            }
+            batch.m_txnCount++;
+            if (!m_synchronous && m_pendingBytes.get() > ASYNC_BACKPRESSURE_BYTES) {
+                if (batch.m_backpressureFuture == null) {
+                    batch.m_backpressureFuture = SettableFuture.create();
+                }
+                result = batch.m_backpressureFuture;
+            }
+        }
+
+        if (entry != null) {
+            m_pendingBytes.addAndGet(entry.remaining());
+        }
+        if (m_pendingTxns.incrementAndGet() == m_maxTxns) {
+            synchronized (m_flushSignal) {
+                m_flushSignal.notify();
+            }
+        }
+        return result;
+    }
+
+    static ByteBuffer serializeInitiate(Iv2InitiateTaskMessage message,
+                                        long spHandle,
+                                        int[] involvedPartitions) throws IOException {
+        final int involvedCount = involvedPartitions == null ? 0 : involvedPartitions.length;
+        final int messageSize = message.getSerializedSize();
+        ByteBuffer buf = ByteBuffer.allocate(CommandLogSegment.ENTRY_HEADER_BYTES + INITIATE_PREFIX_BYTES +
+                                             (involvedCount * 4) + messageSize);
+        buf.position(CommandLogSegment.ENTRY_HEADER_BYTES);
+        buf.putInt(TxnEgo.getPartitionId(spHandle));
+        buf.putLong(spHandle);
+        buf.putInt(involvedPartitions == null ? -1 : involvedCount);
+        for (int i = 0; i < involvedCount; i++) {
+            buf.putInt(involvedPartitions[i]);
+        }
+        // The message asserts that it fills the buffer it is flattened into
+        ByteBuffer messageBuf = buf.slice();
+        message.flattenToBuffer(messageBuf);
+        buf.position(buf.limit());
+        CommandLogSegment.frameEntry(buf, CommandLogSegment.ENTRY_INITIATE);
+        return buf;
+    }
+
+    @Override
+    public void logIv2Fault(long writerHSId, Set<Long> survivorHSId, int partitionId, long spHandle) {
+        if (!m_initialized) {
+            return;
+        }
+        ByteBuffer buf = ByteBuffer.allocate(CommandLogSegment.ENTRY_HEADER_BYTES + 4 + 8 + 8 + 4 +
+                                             (survivorHSId.size() * 8));
+        buf.position(CommandLogSegment.ENTRY_HEADER_BYTES);
+        buf.putInt(partitionId);
+        buf.putLong(spHandle);
+        buf.putLong(writerHSId);
+        buf.putInt(survivorHSId.size());
+        for (long hsId : survivorHSId) {
+            buf.putLong(hsId);
+        }
+        CommandLogSegment.frameEntry(buf, CommandLogSegment.ENTRY_FAULT);
+        synchronized (m_faultEntries) {
+            m_faultEntries.add(buf);
+        }
+        m_pendingBytes.addAndGet(buf.remaining());
+    }
+
+    private void writerLoop() {
+        while (!m_shutdown) {
+            synchronized (m_flushSignal) {
+                if (m_pendingTxns.get() < m_maxTxns) {
+                    try {
+                        m_flushSignal.wait(m_fsyncInterval);
+                    } catch (InterruptedException e) {
+                        break;
+                    }
+                }
+            }
+            synchronized (m_writerLock) {
+                try {
+                    sync();
+                } catch (Throwable t) {
+                    VoltDB.crashLocalVoltDB("Command log write failed", true, t);
+                }
+            }
+        }
+    }
+
+    /**
+     * Drain every partition batch, write and fsync them, then release the
+     * transactions to the schedulers. Called with m_writerLock held.
+     */
+    private void sync() throws Exception {
+        List<PartitionBatch> drained = new ArrayList<PartitionBatch>();
+        List<CompletionChecks> checks = new ArrayList<CompletionChecks>();
+        List<SettableFuture<Object>> futures = new ArrayList<SettableFuture<Object>>();
+        List<ByteBuffer> entries = new ArrayList<ByteBuffer>();
+
+        for (PartitionBatch batch : m_batches.values()) {
+            synchronized (batch) {
+                if (batch.m_txnCount == 0) {
+                    continue;
+                }
+                // Size the next check list after this one, the load is usually steady
+                checks.add(batch.m_listener.startNewTaskList(batch.m_listener.getNumberOfTasks()));
+                drained.add(batch);
+                entries.addAll(batch.m_entries);
+                batch.m_entries = new ArrayList<ByteBuffer>(batch.m_entries.size());
+                m_pendingTxns.addAndGet(-batch.m_txnCount);
+                batch.m_txnCount = 0;
+                if (batch.m_backpressureFuture != null) {
+                    futures.add(batch.m_backpressureFuture);
+                    batch.m_backpressureFuture = null;
+                }
+            }
+        }
+        synchronized (m_faultEntries) {
+            entries.addAll(m_faultEntries);
+            m_faultEntries.clear();
+        }
+
+        if (!entries.isEmpty() && m_currentSegment != null) {
+            long written = writeEntries(entries);
+            m_currentSegment.force();
+            m_pendingBytes.addAndGet(-written);
+        }
+
+        for (int i = 0; i < drained.size(); i++) {
+            drained.get(i).m_listener.processDurabilityChecks(checks.get(i));
+        }
+        for (SettableFuture<Object> f : futures) {
+            f.set(null);
+        }
+    }
+
+    private long writeEntries(List<ByteBuffer> entries) throws Exception {
+        final ByteBuffer out = m_writeBuffer.b();
+        out.clear();
+        long written = 0;
+        for (ByteBuffer entry : entries) {
+            final int size = entry.remaining();
+            if (size > out.remaining() || size > m_currentSegment.remaining() - out.position()) {
+                flushWriteBuffer(out);
+                if (size > m_currentSegment.remaining()) {
+                    rollSegment(size);
+                }
+            }
+            noteEntry(entry);
+            if (size > out.capacity()) {
+                // Oversized entries bypass the gathering buffer
+                m_currentSegment.append(entry);
+            } else {
+                out.put(entry);
+            }
+            written += size;
+        }
+        flushWriteBuffer(out);
+        return written;
+    }
+
+    private void noteEntry(ByteBuffer entry) {
+        if (entry.get(entry.position() + 8) != CommandLogSegment.ENTRY_INITIATE) {
+            return;
+        }
+        final int partitionId = entry.getInt(entry.position() + CommandLogSegment.ENTRY_HEADER_BYTES);
+        final long spHandle = entry.getLong(entry.position() + CommandLogSegment.ENTRY_HEADER_BYTES + 4);
+        m_currentSegment.noteEntry(partitionId, spHandle);
+        Long last = m_lastLoggedTxnIds.get(partitionId);
+        if (last == null || last < spHandle) {
+            m_lastLoggedTxnIds.put(partitionId, spHandle);
+        }
+    }
+
+    private void flushWriteBuffer(ByteBuffer out) throws IOException {
+        out.flip();
+        if (out.hasRemaining()) {
+            m_currentSegment.append(out);
+        }
+        out.clear();
+    }
+
+    /**
+     * Close the current segment and continue in the preallocated one. An entry
+     * that doesn't fit in a whole segment gets a segment of its own, sized for it,
+     * in place of the preallocated one.
+     */
+    private void rollSegment(int entryBytes) throws Exception {
+        m_currentSegment.force();
+        m_currentSegment.close();
+        final int closedCount;
+        synchronized (m_closedSegments) {
+            m_closedSegments.offer(m_currentSegment);
+            closedCount = m_closedSegments.size();
+        }
+
+        CommandLogSegment next = m_nextSegment.get();
+        final long required = CommandLogSegment.headerSize(m_lastLoggedTxnIds.size()) + entryBytes;
+        if (required > next.capacity()) {
+            next.closeAndDelete();
+            next = CommandLogSegment.preallocate(m_logPath, m_nextSegmentId++, required);
+        }
+        m_currentSegment = next;
+        m_currentSegment.openForAppend(m_instanceId, m_lastLoggedTxnIds);
+        preallocateNextSegment();
+
+        if (closedCount * SEGMENT_BYTES >= m_logSizeBytes) {
+            requestTruncationSnapshot(false);
+        }
+    }
+
+    @Override
+    public void requestTruncationSnapshot(final boolean queueIfPending) {
+        if (m_truncationRequested && !queueIfPending) {
+            return;
+        }
+        m_truncationRequested = true;
+        try {
+            VoltDB.instance().getHostMessenger().getZK().create(
+                    VoltZK.request_truncation_snapshot_node, null,
+                    Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT_SEQUENTIAL);
+        } catch (Exception e) {
+            VoltDB.crashGlobalVoltDB("Requesting a truncation snapshot via ZK should always succeed",
+                                     false, e);
+        }
+    }
+
+    /**
+     * Drop the oldest closed segments whose transactions are all included in a
+     * completed truncation snapshot.
+     */
+    @Override
+    public CountDownLatch snapshotCompleted(SnapshotCompletionEvent event) {
+        if (!event.truncationSnapshot || !event.didSucceed) {
+            return new CountDownLatch(0);
+        }
+        m_truncationRequested = false;
+        synchronized (m_closedSegments) {
+            Iterator<CommandLogSegment> iter = m_closedSegments.iterator();
+            while (iter.hasNext()) {
+                CommandLogSegment segment = iter.next();
+                if (!isCoveredBy(segment, event.partitionTxnIds)) {
+                    break;
+                }
+                try {
+                    segment.closeAndDelete();
+                } catch (IOException e) {
+                    LOG.warn("Unable to delete truncated command log segment " + segment.file(), e);
+                }
+                iter.remove();
+            }
+        }
+        return new CountDownLatch(0);
+    }
+
+    private static boolean isCoveredBy(CommandLogSegment segment, Map<Integer, Long> snapshotTxnIds) {
+        for (Map.Entry<Integer, Long> e : segment.lastTxnIds().entrySet()) {
+            Long snapshotTxnId = snapshotTxnIds.get(e.getKey());
+            if (snapshotTxnId == null || snapshotTxnId < e.getValue()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void initializeLastDurableUniqueId(DurabilityListener listener, long uniqueId) {
+        final PartitionBatch batch = m_batches.get(listener);
+        synchronized (batch) {
+            listener.initializeLastDurableUniqueId(uniqueId);
+        }
+    }
+
+    @Override
+    public void shutdown() throws InterruptedException {
+        m_shutdown = true;
+        // Don't interrupt the writer, an interrupt during a write closes the file channel
+        synchronized (m_flushSignal) {
+            m_flushSignal.notify();
+        }
+        m_writerThread.join();
+        m_preallocator.shutdown();
+        m_preallocator.awaitTermination(365, TimeUnit.DAYS);
+        VoltDB.instance().getSnapshotCompletionMonitor().removeInterest(this);
+        synchronized (m_writerLock) {
+            try {
+                if (m_currentSegment != null) {
+                    m_currentSegment.force();
+                    m_currentSegment.close();
+                }
+                // The spare segment holds no entries
+                if (m_nextSegment != null) {
+                    m_nextSegment.get().closeAndDelete();
+                }
+            } catch (Exception e) {
+                LOG.warn("Error closing command log", e);
+            }
+            if (m_writeBuffer != null) {
+                m_writeBuffer.discard();
+                m_writeBuffer = null;
+            }
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+
+    @Override
+    public void populateCommandLogStats(Map<String, Integer> columnNameToIndex, Object[] rowValues) {
+        final int inUseSegments;
+        synchronized (m_closedSegments) {
+            inUseSegments = m_closedSegments.size() + (m_initialized ? 1 : 0);
+        }
+        rowValues[columnNameToIndex.get(CommandLogStats.StatName.OUTSTANDING_BYTES.name())] = m_pendingBytes.get();
+        rowValues[columnNameToIndex.get(CommandLogStats.StatName.OUTSTANDING_TXNS.name())] = m_pendingTxns.get();
+        rowValues[columnNameToIndex.get(CommandLogStats.StatName.IN_USE_SEGMENT_COUNT.name())] = inUseSegments;
+        rowValues[columnNameToIndex.get(CommandLogStats.StatName.SEGMENT_COUNT.name())] =
+                (int) Math.max(1, m_logSizeBytes / SEGMENT_BYTES);
+        rowValues[columnNameToIndex.get(CommandLogStats.StatName.FSYNC_INTERVAL.name())] = m_fsyncInterval;
+    }
+
+    @Override
+    public boolean isSynchronous() {
+        return m_synchronous;
+    }
+
+    @Override
+    public boolean canOfferTask() {
+        // Sync logging hands the task back through the durability listener once it is on disk
+        return !m_synchronous;
+    }
+
+    @Override
+    public void registerDurabilityListener(DurabilityListener durabilityListener) {
+        m_batches.put(durabilityListener, new PartitionBatch(durabilityListener));
+    }
+
+    public File getLogPath() {
+        return m_logPath;
+    }
+
+    public String getSnapshotPath() {
+        return m_snapshotPath;
+    }
+}
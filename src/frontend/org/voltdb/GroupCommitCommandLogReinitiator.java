@@ -0,0 +1,309 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.voltdb;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.voltcore.logging.VoltLogger;
+import org.voltcore.messaging.HostMessenger;
+import org.voltcore.utils.InstanceId;
+import org.voltcore.zk.ZKCountdownLatch;
+import org.voltdb.client.ClientResponse;
+import org.voltdb.dtxn.TransactionCreator;
+import org.voltdb.iv2.MpInitiator;
+import org.voltdb.messaging.Iv2InitiateTaskMessage;
+import org.voltdb.messaging.VoltDbMessageFactory;
+
+/**
+ * Replays the segments written by {@link GroupCommitCommandLog}.
+ *
+ * Every host replays the segments it finds locally. Single partition entries are
+ * reinitiated to their partition master, which dedupes the copies replayed by other
+ * replicas. Multi-partition entries turn into a sentinel for the partition that logged
+ * them, and the host running the MPI also reinitiates the transaction itself once.
+ * Multi-partition transactions in the community edition involve every partition,
+ * so the MPI host always has a copy of each one in its local segments.
+ *
+ * Once all hosts have offered their entries, the MPI host sends the end of log
+ * message, which lets the replay sequencers drain.
+ */
+public class GroupCommitCommandLogReinitiator implements CommandLogReinitiator {
+    private static final VoltLogger LOG = new VoltLogger("LOGGING");
+
+    // Bound on replayed transactions waiting for a response
+    private static final int MAX_OUTSTANDING_TXNS = 5000;
+
+    private final int m_hostId;
+    private final HostMessenger m_messenger;
+    private final File m_logPath;
+    private final Set<Integer> m_liveHosts;
+
+    private final TreeMap<Long, File> m_segments;
+    private InstanceId m_instanceId = null;
+    private Map<Integer, Long> m_startingTxnIds = null;
+
+    private Callback m_callback;
+    private TransactionCreator m_initiator;
+    private final SimpleClientResponseAdapter m_adapter =
+            new SimpleClientResponseAdapter(ClientInterface.CL_REPLAY_BASE_CID, "CommandLogReplayAdapter");
+
+    private RestoreAgent.SnapshotInfo m_snapshotInfo = null;
+    private boolean m_isMPINode = false;
+
+    private final Semaphore m_outstanding = new Semaphore(MAX_OUTSTANDING_TXNS);
+    private final AtomicLong m_replayedTxns = new AtomicLong(0);
+    private final AtomicLong m_failedTxns = new AtomicLong(0);
+
+    private final SimpleClientResponseAdapter.Callback m_responseCallback =
+            new SimpleClientResponseAdapter.Callback() {
+        @Override
+        public void handleResponse(ClientResponse response) {
+            if (response.getStatus() != ClientResponse.SUCCESS &&
+                response.getStatus() != ClientResponse.USER_ABORT) {
+                // Duplicates replayed by other replicas are answered as ignored
+                if (!ClientResponseImpl.IGNORED_TRANSACTION.equals(response.getStatusString())) {
+                    m_failedTxns.incrementAndGet();
+                    LOG.warn("Replayed transaction failed: " + response.getStatusString());
+                }
+            }
+            m_outstanding.release();
+        }
+    };
+
+    public GroupCommitCommandLogReinitiator(int hostId,
+                                            StartAction action,
+                                            HostMessenger messenger,
+                                            String logPath,
+                                            Set<Integer> liveHosts) {
+        m_hostId = hostId;
+        m_messenger = messenger;
+        m_logPath = new File(logPath);
+        m_liveHosts = liveHosts;
+
+        if (action.doesRecover()) {
+            m_segments = CommandLogSegment.listSegments(m_logPath);
+        } else {
+            m_segments = new TreeMap<Long, File>();
+        }
+        if (!m_segments.isEmpty()) {
+            readOldestHeader();
+        }
+    }
+
+    private void readOldestHeader() {
+        CommandLogSegment oldest = null;
+        try {
+            oldest = CommandLogSegment.openForRead(m_segments.firstEntry().getValue());
+            m_instanceId = oldest.instanceId();
+            m_startingTxnIds = oldest.startingTxnIds();
+        } catch (IOException e) {
+            VoltDB.crashLocalVoltDB("Unable to read command log segment " + m_segments.firstEntry().getValue(),
+                                    true, e);
+        } finally {
+            if (oldest != null) {
+                try {
+                    oldest.close();
+                } catch (IOException ignore) {}
+            }
+        }
+    }
+
+    @Override
+    public void setSnapshotTxnId(RestoreAgent.SnapshotInfo info) {
+        m_snapshotInfo = info;
+    }
+
+    @Override
+    public void setCallback(Callback callback) {
+        m_callback = callback;
+    }
+
+    @Override
+    public void setInitiator(TransactionCreator initiator) {
+        m_initiator = initiator;
+        m_initiator.bindAdapter(m_adapter);
+    }
+
+    @Override
+    public void initPartitionTracking() {
+    }
+
+    @Override
+    public void generateReplayPlan(long snapshotTimeStamp, long snapshotTxnId,
+                                   int newPartitionCount, boolean isMPINode) {
+        m_isMPINode = isMPINode;
+    }
+
+    @Override
+    public void replay() {
+        Thread replayThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    replaySegments();
+                    barrier(VoltZK.commandlog_replay_barrier);
+                    if (m_isMPINode) {
+                        m_initiator.sendEOLMessage(MpInitiator.MP_INIT_PID);
+                    }
+                    m_outstanding.acquire(MAX_OUTSTANDING_TXNS);
+                    m_outstanding.release(MAX_OUTSTANDING_TXNS);
+                    barrier(VoltZK.commandlog_replay_complete_barrier);
+                } catch (Exception e) {
+                    VoltDB.crashLocalVoltDB("Command log replay failed", true, e);
+                }
+                LOG.info("Command log replay replayed " + m_replayedTxns.get() + " transactions from " +
+                         m_segments.size() + " segments, " + m_failedTxns.get() + " failed");
+                if (m_callback != null) {
+                    m_callback.onReplayCompletion();
+                }
+            }
+        }, "Command log replay");
+        replayThread.start();
+    }
+
+    private void barrier(String path) throws Exception {
+        ZKCountdownLatch latch = new ZKCountdownLatch(m_messenger.getZK(), path, m_liveHosts.size());
+        latch.countDown();
+        latch.await();
+    }
+
+    private void replaySegments() throws Exception {
+        final VoltDbMessageFactory factory = new VoltDbMessageFactory();
+        final Map<Integer, Long> snapshotTxnIds = m_snapshotInfo == null ?
+                new HashMap<Integer, Long>() : m_snapshotInfo.partitionToTxnId;
+        final long snapshotMpTxnId = m_snapshotInfo == null ? Long.MIN_VALUE : m_snapshotInfo.txnId;
+        final Set<Long> initiatedMpUniqueIds = new HashSet<Long>();
+
+        for (File file : m_segments.values()) {
+            CommandLogSegment segment = CommandLogSegment.openForRead(file);
+            try {
+                if (m_instanceId != null && !m_instanceId.equals(segment.instanceId())) {
+                    LOG.warn("Skipping command log segment " + file + " from a different database instance");
+                    continue;
+                }
+                CommandLogSegment.Entry entry;
+                while ((entry = segment.readNext()) != null) {
+                    if (entry.type != CommandLogSegment.ENTRY_INITIATE) {
+                        continue;
+                    }
+                    final ByteBuffer payload = entry.payload;
+                    final int partitionId = payload.getInt();
+                    final long spHandle = payload.getLong();
+                    final int involvedCount = payload.getInt();
+                    payload.position(payload.position() + Math.max(0, involvedCount) * 4);
+                    final int messageSize = payload.remaining();
+                    final Iv2InitiateTaskMessage msg =
+                            (Iv2InitiateTaskMessage) factory.createMessageFromBuffer(payload.slice(), -1);
+
+                    if (involvedCount < 0) {
+                        Long snapshotTxnId = snapshotTxnIds.get(partitionId);
+                        if (snapshotTxnId != null && spHandle <= snapshotTxnId) {
+                            continue;
+                        }
+                        initiate(msg, true, partitionId, messageSize);
+                    } else {
+                        if (msg.getTxnId() <= snapshotMpTxnId) {
+                            continue;
+                        }
+                        m_initiator.sendSentinel(msg.getUniqueId(), partitionId);
+                        if (m_isMPINode && initiatedMpUniqueIds.add(msg.getUniqueId())) {
+                            initiate(msg, false, MpInitiator.MP_INIT_PID, messageSize);
+                        }
+                    }
+                }
+            } finally {
+                segment.close();
+            }
+        }
+    }
+
+    private void initiate(Iv2InitiateTaskMessage msg, boolean isSinglePartition,
+                          int partitionId, int messageSize) throws InterruptedException {
+        m_outstanding.acquire();
+        StoredProcedureInvocation invocation = msg.getStoredProcedureInvocation();
+        invocation.setClientHandle(m_adapter.registerCallback(m_responseCallback));
+        if (!m_initiator.createTransaction(m_adapter.connectionId(),
+                                           msg.getTxnId(),
+                                           msg.getUniqueId(),
+                                           invocation,
+                                           msg.isReadOnly(),
+                                           isSinglePartition,
+                                           false,
+                                           partitionId,
+                                           messageSize,
+                                           System.nanoTime())) {
+            m_outstanding.release();
+            m_failedTxns.incrementAndGet();
+            return;
+        }
+        m_replayedTxns.incrementAndGet();
+    }
+
+    @Override
+    public boolean hasReplayedSegments() {
+        return !m_segments.isEmpty();
+    }
+
+    @Override
+    public boolean hasReplayedTxns() {
+        return m_replayedTxns.get() > 0;
+    }
+
+    @Override
+    public Long getMaxLastSeenTxn() {
+        if (m_startingTxnIds == null) {
+            return null;
+        }
+        return m_startingTxnIds.get(MpInitiator.MP_INIT_PID);
+    }
+
+    @Override
+    public Map<Integer, Long> getMaxLastSeenTxnByPartition() {
+        if (m_startingTxnIds == null) {
+            return null;
+        }
+        Map<Integer, Long> txnIds = new HashMap<Integer, Long>(m_startingTxnIds);
+        txnIds.remove(MpInitiator.MP_INIT_PID);
+        return txnIds;
+    }
+
+    @Override
+    public InstanceId getInstanceId() {
+        return m_instanceId;
+    }
+
+    @Override
+    public void returnAllSegments() {
+        // The segments stay on disk. The command log picks them up when it initializes
+        // and deletes them once a truncation snapshot covers their transactions.
+        LOG.debug("Host " + m_hostId + " done with " + m_segments.size() + " replayed command log segments");
+    }
+
+    @Override
+    public boolean checkAndBalancePartitions() {
+        return true;
+    }
+}
@@ -23,6 +23,7 @@ import java.util.Iterator;
 import java.util.Map;
 
 import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.utils.DirectIOFileChannel;
 import org.voltcore.utils.Pair;
 
 public class IOStats extends StatsSource {
@@ -69,7 +70,8 @@ public class IOStats extends StatsSource {
         columns.add(new ColumnInfo("MESSAGES_READ", VoltType.BIGINT));
         columns.add(new ColumnInfo("BYTES_WRITTEN", VoltType.BIGINT));
         columns.add(new ColumnInfo("MESSAGES_WRITTEN", VoltType.BIGINT));
-
+        columns.add(new ColumnInfo("AVG_WRITE_LATENCY", VoltType.BIGINT));
+        columns.add(new ColumnInfo("MAX_WRITE_LATENCY", VoltType.BIGINT));
     }
 
     @Override
@@ -83,6 +85,14 @@ public class IOStats extends StatsSource {
         rowValues[columnNameToIndex.get("MESSAGES_READ")] = counters[1];
         rowValues[columnNameToIndex.get("BYTES_WRITTEN")] = counters[2];
         rowValues[columnNameToIndex.get("MESSAGES_WRITTEN")] = counters[3];
+        // Only the disk writers measure write latency, in microseconds
+        if (counters.length > 4) {
+            rowValues[columnNameToIndex.get("AVG_WRITE_LATENCY")] = counters[4];
+            rowValues[columnNameToIndex.get("MAX_WRITE_LATENCY")] = counters[5];
+        } else {
+            rowValues[columnNameToIndex.get("AVG_WRITE_LATENCY")] = null;
+            rowValues[columnNameToIndex.get("MAX_WRITE_LATENCY")] = null;
+        }
         super.updateStatsRow(rowKey, rowValues);
     }
 
@@ -93,6 +103,16 @@ public class IOStats extends StatsSource {
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
+        /*
+         * Files written with direct I/O get a row per kind of file, with ids below
+         * the -1 of the global network row. Writes count as messages.
+         */
+        long id = -2;
+        for (Map.Entry<String, long[]> e : DirectIOFileChannel.getStats(interval).entrySet()) {
+            final long[] stats = e.getValue();
+            m_ioStats.put(id--, Pair.of(e.getKey(),
+                    new long[] { 0, 0, stats[0], stats[1], stats[2], stats[3] }));
+        }
         return new DummyIterator(m_ioStats.keySet().iterator());
     }
 }
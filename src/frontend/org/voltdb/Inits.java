@@ -460,6 +460,13 @@ public class Inits {
                         VoltDB.crashLocalVoltDB("Unable to instantiate command log", true, e);
                     }
                 }
+                else {
+                    m_rvdb.m_commandLog = new GroupCommitCommandLog(logConfig.getSynchronous(),
+                                                                    logConfig.getFsyncinterval(),
+                                                                    logConfig.getMaxtxns(),
+                                                                    logConfig.getLogpath(),
+                                                                    logConfig.getInternalsnapshotpath());
+                }
             }
         }
     }
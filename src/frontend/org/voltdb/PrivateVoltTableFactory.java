@@ -55,6 +55,14 @@ public abstract class PrivateVoltTableFactory {
         return buf;
     }
 
+    /**
+     * End users should not call this method.
+     * Mark a table backed by a buffer that is reused once the table is unreachable.
+     */
+    public static void setOnPooledBuffer(VoltTable vt) {
+        vt.m_onPooledBuffer = true;
+    }
+
     public static byte[] getSchemaBytes(VoltTable vt) {
         if (vt.getRowCount() > 0) {
             throw new RuntimeException("getSchemaBytes() Only works if the table is empty");
@@ -43,6 +43,7 @@ import org.voltdb.catalog.ProcParameter;
 import org.voltdb.catalog.Procedure;
 import org.voltdb.catalog.Statement;
 import org.voltdb.catalog.StmtParameter;
+import org.voltdb.catalog.Table;
 import org.voltdb.client.BatchTimeoutOverrideType;
 import org.voltdb.client.ClientResponse;
 import org.voltdb.client.ProcedureInvocationType;
@@ -57,6 +58,7 @@ import org.voltdb.exceptions.SerializableException;
 import org.voltdb.exceptions.SpecifiedException;
 import org.voltdb.groovy.GroovyScriptProcedureDelegate;
 import org.voltdb.iv2.UniqueIdGenerator;
+import org.voltdb.jni.ResultBufferPool;
 import org.voltdb.messaging.FragmentTaskMessage;
 import org.voltdb.planner.ActivePlanRepository;
 import org.voltdb.sysprocs.AdHocBase;
@@ -270,6 +272,12 @@ public class ProcedureRunner {
         // set procedure name in the site/ee
         m_site.setProcedureName(m_procedureName);
 
+        // large results of user procedures stay in direct buffers until the response is written
+        final ResultBufferPool resultBuffers = isSystemProcedure() ? null : m_site.getResultBufferPool();
+        if (resultBuffers != null) {
+            resultBuffers.beginProcedure();
+        }
+
         // use local var to avoid warnings about reassigning method argument
         Object[] paramList = paramListIn;
 
@@ -437,6 +445,12 @@ public class ProcedureRunner {
             // the next call
             m_batch.clear();
 
+            // hand the result buffers over to the response, or copy the results
+            // the response doesn't include out of them
+            if (resultBuffers != null) {
+                resultBuffers.endProcedure(retval);
+            }
+
             // reset other per-txn state
             m_txnState = null;
             m_statusCode = ClientResponse.SUCCESS;
@@ -824,6 +838,21 @@ public class ProcedureRunner {
         }
     }
 
+    /**
+     * Insert the rows of data straight into a persistent table as part of the
+     * current transaction. The rows must match the table's column types. Unlike
+     * voltLoadTable, the rows are undone with the rest of the transaction, and a
+     * row that fails a constraint aborts it with the EE's error.
+     */
+    public void voltInsertTable(Table catTable, VoltTable data)
+    {
+        if (data.getRowCount() == 0) {
+            return;
+        }
+        m_site.loadTable(m_txnState.txnId, m_txnState.m_spHandle, m_txnState.uniqueId,
+                         catTable.getRelativeIndex(), data, false, true, true);
+    }
+
     public DependencyPair executeSysProcPlanFragment(
             TransactionState txnState,
             Map<Integer, List<VoltTable>> dependencies, long fragmentId,
@@ -972,12 +1001,14 @@ public class ProcedureRunner {
 
     public void initSQLStmt(SQLStmt stmt, Statement catStmt) {
 
+        final String procName = ((Procedure) catStmt.getParent()).getTypeName();
         int fragCount = catStmt.getFragments().size();
 
         for (PlanFragment frag : catStmt.getFragments()) {
             byte[] planHash = Encoder.hexDecode(frag.getPlanhash());
             byte[] plan = Encoder.decodeBase64AndDecompressToBytes(frag.getPlannodetree());
-            long id = ActivePlanRepository.loadOrAddRefPlanFragment(planHash, plan, catStmt.getSqltext());
+            long id = ActivePlanRepository.loadOrAddRefPlanFragment(planHash, plan, catStmt.getSqltext(),
+                    procName, catStmt.getTypeName());
             boolean transactional = frag.getNontransactional() == false;
 
             SQLStmt.Frag stmtFrag = new SQLStmt.Frag(id, planHash, transactional);
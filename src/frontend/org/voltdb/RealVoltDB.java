@@ -132,6 +132,7 @@ import org.voltdb.utils.Encoder;
 import org.voltdb.utils.HTTPAdminListener;
 import org.voltdb.utils.LogKeys;
 import org.voltdb.utils.MiscUtils;
+import org.voltdb.utils.NumaTopology;
 import org.voltdb.utils.PlatformProperties;
 import org.voltdb.utils.SystemStatsCollector;
 import org.voltdb.utils.VoltFile;
@@ -815,8 +816,7 @@ public class RealVoltDB implements VoltDBInterface, RestoreAgent.Callback, HostM
                 VoltDB.crashLocalVoltDB(e.getMessage(), true, e);
             }
 
-            boolean usingCommandLog = m_config.m_isEnterprise &&
-                    m_catalogContext.cluster.getLogconfig().get("log").getEnabled();
+            boolean usingCommandLog = m_commandLog.isEnabled();
             String clSnapshotPath = null;
             if (m_catalogContext.cluster.getLogconfig().get("log").getEnabled()) {
                 clSnapshotPath = m_catalogContext.cluster.getLogconfig().get("log").getInternalsnapshotpath();
@@ -853,6 +853,12 @@ public class RealVoltDB implements VoltDBInterface, RestoreAgent.Callback, HostM
              */
             try {
                 final String serializedCatalog = m_catalogContext.catalog.serialize();
+                if (m_config.m_numaPlacement && m_config.m_executionCoreBindings.isEmpty()) {
+                    NumaTopology topology = NumaTopology.getTopology();
+                    m_config.m_executionCoreBindings.addAll(topology.getSiteBindings(m_iv2Initiators.size()));
+                    hostLog.info("Placing " + m_iv2Initiators.size() + " sites on " +
+                                 topology.getNodeCount() + " NUMA node(s)");
+                }
                 boolean createMpDRGateway = true;
                 for (Initiator iv2init : m_iv2Initiators.values()) {
                     iv2init.configure(
@@ -2595,7 +2601,7 @@ public class RealVoltDB implements VoltDBInterface, RestoreAgent.Callback, HostM
         try {
             final ZooKeeper zk = m_messenger.getZK();
             boolean logRecoveryCompleted = false;
-            if (getCommandLog().getClass().getName().equals("org.voltdb.CommandLogImpl")) {
+            if (getCommandLog().isEnabled()) {
                 String requestNode = zk.create(VoltZK.request_truncation_snapshot_node, null,
                         Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT_SEQUENTIAL);
                 if (m_rejoinTruncationReqId == null) {
@@ -455,7 +455,7 @@ SnapshotCompletionInterest, Promotable
         m_callback = callback;
         m_action = action;
         m_zk = hostMessenger.getZK();
-        m_clEnabled = VoltDB.instance().getConfig().m_isEnterprise ? clEnabled : false;
+        m_clEnabled = clEnabled;
         m_clPath = clPath;
         m_clSnapshotPath = clSnapshotPath;
         m_snapshotPath = snapshotPath;
@@ -470,6 +470,9 @@ SnapshotCompletionInterest, Promotable
         try {
             Class<?> replayClass = MiscUtils.loadProClass("org.voltdb.CommandLogReinitiatorImpl",
                                                           "Command log replay", true);
+            if (replayClass == null && m_clEnabled) {
+                replayClass = GroupCommitCommandLogReinitiator.class;
+            }
             if (replayClass != null) {
                 Constructor<?> constructor =
                     replayClass.getConstructor(int.class,
@@ -611,6 +614,9 @@ SnapshotCompletionInterest, Promotable
         final Long maxLastSeenTxn = m_replayAgent.getMaxLastSeenTxn();
         Set<SnapshotInfo> snapshotInfos = new HashSet<SnapshotInfo>();
         for (Snapshot e : snapshots.values()) {
+            if (rejectIncrementalDelta(e, m_snapshotErrLogStr)) {
+                continue;
+            }
             SnapshotInfo info = checkSnapshotIsComplete(e.getTxnId(), e);
             // if the cluster instance IDs in the snapshot and command log don't match, just move along
             if (m_replayAgent.getInstanceId() != null && info != null &&
@@ -1322,6 +1328,22 @@ SnapshotCompletionInterest, Promotable
         }
     }
 
+    /**
+     * A delta only holds the changes since its parent snapshot, it is never
+     * picked as the snapshot to restore.
+     *
+     * @return true if the snapshot is a delta, the reason is logged to errLog
+     */
+    static boolean rejectIncrementalDelta(Snapshot snapshot, StringBuilder errLog) {
+        if (!snapshot.isIncrementalDelta()) {
+            return false;
+        }
+        errLog.append("\nRejected snapshot ")
+              .append(snapshot.getNonce())
+              .append(" because it is an incremental delta snapshot.");
+        return true;
+    }
+
     /**
      * Finds all the snapshots in all the places we know of which could possibly
      * store snapshots, like command log snapshots, auto snapshots, etc.
@@ -1334,10 +1356,8 @@ SnapshotCompletionInterest, Promotable
          * they can be set individually
          */
         List<String> paths = new ArrayList<String>();
-        if (VoltDB.instance().getConfig().m_isEnterprise) {
-            if (m_clSnapshotPath != null) {
-                paths.add(m_clSnapshotPath);
-            }
+        if ((VoltDB.instance().getConfig().m_isEnterprise || m_clEnabled) && m_clSnapshotPath != null) {
+            paths.add(m_clSnapshotPath);
         }
         if (m_snapshotPath != null) {
             paths.add(m_snapshotPath);
@@ -27,6 +27,7 @@ import org.voltdb.dtxn.TransactionState;
 import org.voltdb.dtxn.UndoAction;
 import org.voltdb.exceptions.EEException;
 import org.voltdb.iv2.JoinProducerBase;
+import org.voltdb.jni.ResultBufferPool;
 
 /**
  * VoltProcedures invoke SiteProcedureConnection methods to
@@ -125,6 +126,12 @@ public interface SiteProcedureConnection {
      */
     public void setProcedureName(String procedureName);
 
+    /**
+     * The buffers large results of user procedures are left in until their
+     * response is written, or null if results are always copied to the heap.
+     */
+    public ResultBufferPool getResultBufferPool();
+
     public void setBatchTimeout(int batchTimeout);
     public int getBatchTimeout();
 
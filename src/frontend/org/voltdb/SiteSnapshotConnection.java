@@ -29,6 +29,7 @@ public interface SiteSnapshotConnection
 {
     public void initiateSnapshots(
             SnapshotFormat format,
+            TableStreamType streamType,
             Deque<SnapshotTableTask> tasks,
             long txnId,
             ExtensibleSnapshotDigestData extraSnapshotData);
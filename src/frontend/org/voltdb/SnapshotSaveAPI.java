@@ -74,13 +74,14 @@ public class SnapshotSaveAPI
     /**
      * Global collections populated by snapshot creator, poll'd by individual sites
      */
-    // The four items containing createSetup artifacts below are all synchronized on m_createLock.
+    // The five items containing createSetup artifacts below are all synchronized on m_createLock.
     private static final Object m_createLock = new Object();
     private static final Map<Long, Deque<SnapshotTableTask>> m_taskListsForHSIds =
         new HashMap<Long, Deque<SnapshotTableTask>>();
     private static final AtomicReference<VoltTable> m_createResult = new AtomicReference<VoltTable>();
     private static final AtomicBoolean m_createSuccess = new AtomicBoolean(false);
     private static ListenableFuture<DeferredSnapshotSetup> m_deferredSetupFuture = null;
+    private static TableStreamType m_streamType = null;
 
     //Protected by SnapshotSiteProcessor.m_snapshotCreateLock when accessed from SnapshotSaveAPI.startSnanpshotting
     private static Map<Integer, Long> m_partitionLastSeenTransactionIds =
@@ -249,6 +250,7 @@ public class SnapshotSaveAPI
                     else {
                         context.getSiteSnapshotConnection().initiateSnapshots(
                                 format,
+                                m_streamType,
                                 taskList,
                                 multiPartTxnId,
                                 m_allLocalSiteSnapshotDigestData);
@@ -511,6 +513,7 @@ public class SnapshotSaveAPI
             m_taskListsForHSIds.clear();
             m_createSuccess.set(true);
             m_createResult.set(result);
+            m_streamType = plan.getStreamType(format);
 
             m_taskListsForHSIds.putAll(plan.getTaskListsForHSIds());
 
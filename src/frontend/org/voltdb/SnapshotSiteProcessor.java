@@ -145,9 +145,11 @@ public class SnapshotSiteProcessor {
         CompressionService.maxCompressedLength(m_snapshotBufferLength);
 
     /**
-     * Limit the number of buffers that are outstanding at any given time
+     * Limit the number of buffers that are outstanding at any given time. For stream snapshots
+     * this is also the number of blocks that can be compressed, in flight and waiting for an ack.
      */
-    private static final AtomicInteger m_availableSnapshotBuffers = new AtomicInteger(16);
+    private static final AtomicInteger m_availableSnapshotBuffers =
+        new AtomicInteger(Integer.getInteger("SNAPSHOT_BUFFER_COUNT", 16));
 
     /**
      * The last EE out has to shut off the lights. Cache a list
@@ -298,6 +300,16 @@ public class SnapshotSiteProcessor {
         };
     }
 
+    /**
+     * Milliseconds between snapshot work units when the site is busy
+     */
+    private long getWorkDelay() {
+        if (SnapshotThrottle.isEnabled()) {
+            return SnapshotThrottle.instance().getWorkDelayMillis();
+        }
+        return 5 * m_snapshotPriority;
+    }
+
     private void rescheduleSnapshotWork() {
         /*
          * If IV2 is enabled, don't run the potential snapshot work jigger
@@ -309,9 +321,10 @@ public class SnapshotSiteProcessor {
          * the impact on latency
          *
          * If snapshot priority is 0 then running the jigger immediately is the specified
-         * policy anyways. 10 would be the largest delay
+         * policy anyways. 10 would be the largest delay. The adaptive snapshot throttle
+         * replaces the delay of the priority with its own.
          */
-        if (m_snapshotPriority > 0) {
+        if (m_snapshotPriority > 0 || SnapshotThrottle.isEnabled()) {
             final long now = System.currentTimeMillis();
             //Ask if the site is idle, and if it is queue the work immediately
             if (m_idlePredicate.idle(now)) {
@@ -341,7 +354,7 @@ public class SnapshotSiteProcessor {
                 //it will just result in a little extra snapshot work being done close together
                 m_quietUntil =
                         System.currentTimeMillis() +
-                                (5 * m_snapshotPriority) + ((long)(m_random.nextDouble() * 15));
+                                getWorkDelay() + ((long)(m_random.nextDouble() * 15));
             } else {
                 //Schedule it to happen after the quiet period has elapsed
                 VoltDB.instance().schedulePriorityWork(
@@ -364,7 +377,7 @@ public class SnapshotSiteProcessor {
                          */
                 m_quietUntil =
                         quietUntil +
-                                (5 * m_snapshotPriority) + ((long)(m_random.nextDouble() * 15));
+                                getWorkDelay() + ((long)(m_random.nextDouble() * 15));
             }
         } else {
             m_siteTaskerQueue.offer(new SnapshotTask());
@@ -374,6 +387,7 @@ public class SnapshotSiteProcessor {
     public void initiateSnapshots(
             SystemProcedureExecutionContext context,
             SnapshotFormat format,
+            TableStreamType streamType,
             Deque<SnapshotTableTask> tasks,
             long txnId,
             ExtensibleSnapshotDigestData extraSnapshotData)
@@ -387,12 +401,15 @@ public class SnapshotSiteProcessor {
         m_streamers = Maps.newHashMap();
         m_snapshotTargetTerminators = new ArrayList<Thread>();
         m_extraSnapshotData = extraSnapshotData;
+        if (SnapshotThrottle.isEnabled()) {
+            SnapshotThrottle.instance().start(5 * m_snapshotPriority);
+        }
 
         // Table doesn't implement hashCode(), so use the table ID as key
         for (Map.Entry<Integer, byte[]> tablePredicates : makeTablesAndPredicatesToSnapshot(tasks).entrySet()) {
             int tableId = tablePredicates.getKey();
             TableStreamer streamer =
-                    new TableStreamer(tableId, format.getStreamType(), m_snapshotTableTasks.get(tableId));
+                    new TableStreamer(tableId, streamType, m_snapshotTableTasks.get(tableId));
             if (!streamer.activate(context, tablePredicates.getValue())) {
                 VoltDB.crashLocalVoltDB("Failed to activate snapshot stream on table " +
                                         CatalogUtil.getTableNameFromId(context.getDatabase(), tableId), false, null);
@@ -446,10 +463,10 @@ public class SnapshotSiteProcessor {
                         m_siteTaskerQueue.offer(new SnapshotTask());
                     }
                 },
-                (m_quietUntil + (5 * m_snapshotPriority) - now),
+                (m_quietUntil + getWorkDelay() - now),
                 0,
                 TimeUnit.MILLISECONDS);
-        m_quietUntil += 5 * m_snapshotPriority;
+        m_quietUntil += getWorkDelay();
     }
 
     private Map<Integer, byte[]>
@@ -848,6 +865,9 @@ public class SnapshotSiteProcessor {
         //Set to 10 gigabytes/sec, basically unlimited
         //Does nothing if rate limiting is not enabled
         DefaultSnapshotDataTarget.setRate(1024 * 10);
+        if (SnapshotThrottle.isEnabled()) {
+            SnapshotThrottle.instance().beginUnthrottled();
+        }
         try {
             while (m_snapshotTableTasks != null) {
                 Future<?> result = doSnapshotWork(context, true);
@@ -866,6 +886,9 @@ public class SnapshotSiteProcessor {
         } finally {
             //Request default rate again
             DefaultSnapshotDataTarget.setRate(null);
+            if (SnapshotThrottle.isEnabled()) {
+                SnapshotThrottle.instance().endUnthrottled();
+            }
         }
 
         /**
@@ -0,0 +1,194 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.HdrHistogram_voltpatches.AbstractHistogram;
+import org.voltcore.logging.VoltLogger;
+import org.voltdb.dtxn.LatencyStats;
+
+/**
+ * Feedback controller for the pace of snapshot work. While a snapshot is in
+ * progress it samples the p99 latency of the procedures completed since the
+ * last sample and the number of snapshot writes queued for the disk. If either
+ * is over its limit it halves the disk write rate and doubles the delay
+ * between the snapshot work units of each site, otherwise it raises the rate
+ * and shortens the delay a step at a time.
+ *
+ * Enabled by setting SNAPSHOT_LATENCY_BUDGET_MS to the p99 budget.
+ */
+public class SnapshotThrottle {
+    private static final VoltLogger SNAP_LOG = new VoltLogger("SNAPSHOT");
+
+    public static final int LATENCY_BUDGET_MS = Integer.getInteger("SNAPSHOT_LATENCY_BUDGET_MS", 0);
+    static final int SAMPLE_INTERVAL_MS = Integer.getInteger("SNAPSHOT_THROTTLE_INTERVAL_MS", 1000);
+    static final int MAX_QUEUED_WRITES = Integer.getInteger("SNAPSHOT_MAX_QUEUED_WRITES", 8);
+    static final int MAX_RATE_MEGABYTES = Integer.getInteger("SNAPSHOT_THROTTLE_MAX_MEGABYTES", 1024);
+    static final int MIN_RATE_MEGABYTES = 1;
+    static final int RATE_STEP_MEGABYTES = 8;
+    static final int MAX_WORK_DELAY_MS = 1000;
+    static final int WORK_DELAY_STEP_MS = 5;
+
+    private static SnapshotThrottle s_instance = null;
+
+    public static boolean isEnabled() {
+        return LATENCY_BUDGET_MS > 0;
+    }
+
+    public static synchronized SnapshotThrottle instance() {
+        if (s_instance == null) {
+            // A configured static rate limit caps the adaptive one
+            s_instance = new SnapshotThrottle(LATENCY_BUDGET_MS * 1000L, MAX_QUEUED_WRITES,
+                    Math.min(MAX_RATE_MEGABYTES, DefaultSnapshotDataTarget.SNAPSHOT_RATELIMIT_MEGABYTES));
+        }
+        return s_instance;
+    }
+
+    private final long m_budgetMicros;
+    private final int m_maxQueuedWrites;
+    private final int m_maxRateMegabytes;
+
+    private volatile int m_rateMegabytes;
+    private volatile int m_workDelayMs;
+
+    private ScheduledFuture<?> m_sampler = null;
+    // Sites draining a blocking snapshot at full speed
+    private int m_unthrottledSites = 0;
+    // Cumulative latencies at the last sample, the difference to the next is the interval
+    private AbstractHistogram m_lastLatencies = null;
+
+    SnapshotThrottle(long budgetMicros, int maxQueuedWrites, int maxRateMegabytes) {
+        m_budgetMicros = budgetMicros;
+        m_maxQueuedWrites = maxQueuedWrites;
+        m_maxRateMegabytes = Math.max(MIN_RATE_MEGABYTES, maxRateMegabytes);
+        m_rateMegabytes = m_maxRateMegabytes;
+        m_workDelayMs = 0;
+    }
+
+    /**
+     * Milliseconds a site waits between two snapshot work units.
+     */
+    public int getWorkDelayMillis() {
+        return m_workDelayMs;
+    }
+
+    public int getRateMegabytes() {
+        return m_rateMegabytes;
+    }
+
+    /**
+     * Start sampling at the beginning of a snapshot, called by every site.
+     * The work delay starts from the one the snapshot priority asks for.
+     */
+    public synchronized void start(int initialWorkDelayMs) {
+        if (m_sampler != null) {
+            return;
+        }
+        m_workDelayMs = Math.min(MAX_WORK_DELAY_MS, initialWorkDelayMs);
+        m_rateMegabytes = m_maxRateMegabytes;
+        DefaultSnapshotDataTarget.setRate(m_rateMegabytes);
+        m_lastLatencies = currentLatencies();
+        m_sampler = VoltDB.instance().scheduleWork(new Runnable() {
+            @Override
+            public void run() {
+                sample();
+            }
+        }, SAMPLE_INTERVAL_MS, SAMPLE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * A blocking snapshot is finished at full speed, stop adjusting the rate
+     * until it is done.
+     */
+    public synchronized void beginUnthrottled() {
+        m_unthrottledSites++;
+    }
+
+    public synchronized void endUnthrottled() {
+        m_unthrottledSites--;
+        if (m_unthrottledSites == 0 && m_sampler != null) {
+            DefaultSnapshotDataTarget.setRate(m_rateMegabytes);
+        }
+    }
+
+    private synchronized void sample() {
+        if (m_sampler == null) {
+            return;
+        }
+        if (!SnapshotSiteProcessor.isSnapshotInProgress()) {
+            m_sampler.cancel(false);
+            m_sampler = null;
+            m_lastLatencies = null;
+            DefaultSnapshotDataTarget.setRate(null);
+            return;
+        }
+
+        AbstractHistogram latencies = currentLatencies();
+        long p99Micros = 0;
+        if (latencies != null && m_lastLatencies != null &&
+                latencies.getTotalCount() >= m_lastLatencies.getTotalCount()) {
+            AbstractHistogram interval = latencies.copy();
+            interval.subtract(m_lastLatencies);
+            if (interval.getTotalCount() > 0) {
+                p99Micros = interval.getValueAtPercentile(99.0);
+            }
+        }
+        m_lastLatencies = latencies;
+        if (m_unthrottledSites > 0) {
+            return;
+        }
+
+        if (update(p99Micros, DefaultSnapshotDataTarget.getQueuedWriteCount())) {
+            DefaultSnapshotDataTarget.setRate(m_rateMegabytes);
+            if (SNAP_LOG.isDebugEnabled()) {
+                SNAP_LOG.debug("Snapshot throttle at " + m_rateMegabytes + " megabytes/second and " +
+                               m_workDelayMs + " ms between work units, p99 " + p99Micros + " us");
+            }
+        }
+    }
+
+    /**
+     * Adjust the rate and work delay to one sample.
+     * @return true if the rate changed
+     */
+    boolean update(long p99Micros, int queuedWrites) {
+        final int oldRate = m_rateMegabytes;
+        if (p99Micros > m_budgetMicros || queuedWrites > m_maxQueuedWrites) {
+            m_rateMegabytes = Math.max(MIN_RATE_MEGABYTES, m_rateMegabytes / 2);
+            m_workDelayMs = Math.min(MAX_WORK_DELAY_MS, Math.max(WORK_DELAY_STEP_MS, m_workDelayMs * 2));
+        } else {
+            m_rateMegabytes = Math.min(m_maxRateMegabytes, m_rateMegabytes + RATE_STEP_MEGABYTES);
+            m_workDelayMs = Math.max(0, m_workDelayMs - WORK_DELAY_STEP_MS);
+        }
+        return m_rateMegabytes != oldRate;
+    }
+
+    private static AbstractHistogram currentLatencies() {
+        ClientInterface ci = VoltDB.instance().getClientInterface();
+        if (ci == null) {
+            return null;
+        }
+        AbstractHistogram total = LatencyStats.constructHistogram(false);
+        for (AbstractHistogram latencies : ci.getLatencyStats()) {
+            total.add(latencies);
+        }
+        return total;
+    }
+}
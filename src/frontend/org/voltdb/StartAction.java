@@ -25,8 +25,8 @@ import java.util.regex.Pattern;
 public enum StartAction {
 
     CREATE("create", false, null),
-    RECOVER("recover", true, "Command Log Recovery"),
-    SAFE_RECOVER("recover safemode", true, "Command Log Recovery"),
+    RECOVER("recover", false, null),
+    SAFE_RECOVER("recover safemode", false, null),
     REJOIN("rejoin", true, "K-Safety / Node Rejoin"),
     LIVE_REJOIN("live rejoin", true, "K-Safety / Node Rejoin"),
     JOIN("add", true, "Elastic Cluster Sizing");
@@ -382,6 +382,12 @@ public class StatsAgent extends OpsAgent
         case INDEX:
             stats = collectStats(StatsSelector.INDEX, interval);
             break;
+        case STATEMENT:
+            stats = collectStats(StatsSelector.STATEMENT, interval);
+            break;
+        case EXECUTOR:
+            stats = collectStats(StatsSelector.EXECUTOR, interval);
+            break;
         case PROCEDURE:
         case PROCEDUREINPUT:
         case PROCEDUREOUTPUT:
@@ -427,6 +433,9 @@ public class StatsAgent extends OpsAgent
         case IMPORTER:
             stats = collectStats(StatsSelector.IMPORTER, interval);
             break;
+        case MPREADPOOL:
+            stats = collectStats(StatsSelector.MPREADPOOL, interval);
+            break;
         default:
             // Should have been successfully groomed in collectStatsImpl().  Log something
             // for our information but let the null check below return harmlessly
@@ -17,8 +17,14 @@
 package org.voltdb;
 
 public enum StatsSelector {
+    /*
+     * The EE selectors are passed to the EE by ordinal, keep them first and
+     * in the order of StatisticsSelectorType in types.h
+     */
     TABLE,            // invoked as @stat table
     INDEX,            // invoked as @stat index
+    STATEMENT,        // invoked as @stat statement, per plan fragment execution times
+    EXECUTOR,         // invoked as @stat executor, per executor type execution times
     PROCEDURE,        // invoked as @stat procedure
     STARVATION,
     INITIATOR,        // invoked as @stat initiator
@@ -54,5 +60,6 @@ public enum StatsSelector {
     CPU,            // Return CPU Stats
 
     COMMANDLOG,     // return number of outstanding bytes and txns on this node
-    IMPORTER
+    IMPORTER,
+    MPREADPOOL      // concurrency and queue depth of the MP read-only site pool
 }
@@ -48,5 +48,16 @@ public enum TableStreamType {
      * that is actively being modified. The stream starts by transporting all the tuple data
      * and then transports the set of modified and deleted tuples in a separate synchronous phase.
      */
-    RECOVERY
+    RECOVERY,
+    /*
+     * A snapshot stream that also starts tracking the tuples modified and deleted
+     * from this point on, so that a later SNAPSHOT_DELTA only has to write those.
+     */
+    SNAPSHOT_DELTA_BASE,
+    /*
+     * A snapshot stream of the tuples modified since the previous SNAPSHOT_DELTA_BASE
+     * or SNAPSHOT_DELTA, followed by the deleted tuples on a second output stream.
+     * Tracking restarts from the point this stream is activated.
+     */
+    SNAPSHOT_DELTA
 }
@@ -211,6 +211,9 @@ public class VoltDB {
         public final Queue<String> m_executionCoreBindings = new ArrayDeque<String>();
         public String m_commandLogBinding = null;
 
+        /** Bind each site to the cpus of one NUMA node when no execution bindings are given */
+        public boolean m_numaPlacement = false;
+
         /**
          * Allow a secret CLI config option to test multiple versions of VoltDB running together.
          * This is used to test online upgrade (currently, for hotfixes).
@@ -400,6 +403,9 @@ public class VoltDB {
                     m_commandLogBinding = binding;
                     System.out.println("Commanglog binding is " + m_commandLogBinding);
                 }
+                else if (arg.equals("numaplacement")) {
+                    m_numaPlacement = true;
+                }
                 else if (arg.equals("host") || arg.equals("leader")) {
                     m_leader = args[++i].trim();
                 } else if (arg.startsWith("host")) {
@@ -131,6 +131,8 @@ public final class VoltTable extends VoltTableRow implements JSONString {
     static final Charset ROWDATA_ENCODING = Constants.UTF8ENCODING;
 
     boolean m_readOnly = false;
+    // the buffer is reused once the table is unreachable, see ResultBufferPool
+    boolean m_onPooledBuffer = false;
     int m_rowStart = -1; // the beginning of the row data (points to before the row count int)
     int m_rowCount = -1;
     int m_colCount = -1;
@@ -1888,6 +1890,19 @@ public final class VoltTable extends VoltTableRow implements JSONString {
         buf.put(dup);
     }
 
+    /**
+     * Copy the table data to a heap buffer of its own, for a table whose
+     * buffer is going to be reused. Offsets into the data stay the same.
+     */
+    private void moveDataToHeap() {
+        ByteBuffer dup = m_buffer.duplicate();
+        dup.position(0);
+        ByteBuffer copy = ByteBuffer.allocate(dup.limit());
+        copy.put(dup);
+        m_buffer = copy;
+        m_onPooledBuffer = false;
+    }
+
     void initFromBuffer(ByteBuffer buf) {
         // Note: some of the snapshot and save/restore code makes assumptions
         // about the binary layout of tables.
@@ -1924,6 +1939,10 @@ public final class VoltTable extends VoltTableRow implements JSONString {
      * @return The underlying {@link ByteBuffer} instance.
      */
     public ByteBuffer getBuffer() {
+        // the returned view doesn't keep the table reachable, it can't share a pooled buffer
+        if (m_onPooledBuffer) {
+            moveDataToHeap();
+        }
         ByteBuffer buf = m_buffer.asReadOnlyBuffer();
         buf.position(0);
         return buf;
@@ -27,6 +27,8 @@ import java.util.List;
 import org.voltdb.client.VoltBulkLoader.BulkLoaderFailureCallBack;
 import org.voltdb.client.VoltBulkLoader.VoltBulkLoader;
 
+import com.google_voltpatches.common.util.concurrent.ListenableFuture;
+
 /**
  *  <p>
  *  A <code>Client</code> that connects to one or more nodes in a volt cluster
@@ -110,6 +112,42 @@ public interface Client {
     public boolean callProcedure(ProcedureCallback callback, String procName, Object... parameters)
     throws IOException, NoConnectionsException;
 
+    /**
+     * <p>Asynchronously invoke a procedure, returning a future that completes with the response.
+     * The future is completed with the {@link ClientResponse} whatever its status, check
+     * {@link ClientResponse#getStatus()} as a {@link ProcedureCallback} would. Listeners added
+     * without an executor run on the thread backing the client instance, the same as callbacks.
+     * If there is backpressure this call will block until the invocation is queued.</p>
+     *
+     * @param procName class name (not qualified by package) of the procedure to execute.
+     * @param parameters vararg list of procedure's parameter values.
+     * @return future for the response, it fails if the invocation could not be queued.
+     * @throws NoConnectionsException if this {@link Client} instance is not connected to any servers.
+     * @throws IOException if there is a Java network or connection problem.
+     */
+    public ListenableFuture<ClientResponse> callProcedureAsync(String procName, Object... parameters)
+    throws IOException, NoConnectionsException;
+
+    /**
+     * <p>Asynchronously invoke a procedure once for each set of parameters. The invocations routed
+     * to the same server are written to the network together, which is cheaper than invoking them
+     * one at a time when there are many small invocations to send. If there is backpressure this
+     * call will block once before queueing the batch, the batch itself is not split up by
+     * backpressure. Each invocation still counts against the maximum outstanding transactions.</p>
+     *
+     * @param procName class name (not qualified by package) of the procedure to execute.
+     * @param parameterSets list of parameter values for each invocation.
+     * @return futures for the responses, in the same order as the parameter sets. Invocations
+     * that could not be queued because no server is connected complete with a
+     * {@link ClientResponse#CONNECTION_LOST} response.
+     * @throws NoConnectionsException if this {@link Client} instance is shut down.
+     * @throws IOException if there is a Java network or connection problem, or if one of the
+     * parameter sets can't be serialized, in which case none of the invocations is sent.
+     * @see #callProcedureAsync(String, Object...)
+     */
+    public List<ListenableFuture<ClientResponse>> callProcedureBatchAsync(String procName, List<Object[]> parameterSets)
+    throws IOException, NoConnectionsException;
+
     /**
      * <p>Synchronously invoke a procedure with timeout. Blocks until a result is available. A {@link ProcCallException}
      * is thrown if the response is anything other then success.</p>
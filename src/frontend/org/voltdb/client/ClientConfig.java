@@ -55,6 +55,7 @@ public class ClientConfig {
     boolean m_reconnectOnConnectionLoss;
     long m_initialConnectionRetryIntervalMS = DEFAULT_INITIAL_CONNECTION_RETRY_INTERVAL_MS;
     long m_maxConnectionRetryIntervalMS = DEFAULT_MAX_CONNECTION_RETRY_INTERVAL_MS;
+    boolean m_columnarResults = false;
 
 
     final static String getUserNameFromSubject(Subject subject) {
@@ -322,6 +323,19 @@ public class ClientConfig {
         m_useClientAffinity = on;
     }
 
+    /**
+     * <p>Ask the server to send large result tables column-major and compressed,
+     * which shrinks results with repetitive or ordered values several-fold. Tables
+     * are decoded when {@link ClientResponse#getResults()} is first called.</p>
+     *
+     * <p>Requires servers that support the option, older servers reject the login.</p>
+     *
+     * @param on Enable or disable columnar results. Default is off.
+     */
+    public void setColumnarResults(boolean on) {
+        m_columnarResults = on;
+    }
+
     /**
      * <p>Attempts to reconnect to a node with retry after connection loss. See the {@link ReconnectStatusListener}.</p>
      *
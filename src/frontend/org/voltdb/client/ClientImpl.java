@@ -39,6 +39,9 @@ import org.voltdb.client.VoltBulkLoader.VoltBulkLoader;
 import org.voltdb.common.Constants;
 import org.voltdb.utils.Encoder;
 
+import com.google_voltpatches.common.util.concurrent.AbstractFuture;
+import com.google_voltpatches.common.util.concurrent.ListenableFuture;
+
 /**
  *  A client that connects to one or more nodes in a VoltCluster
  *  and provides methods to call stored procedures and receive
@@ -104,6 +107,7 @@ public final class ClientImpl implements Client, ReplicaProcCaller {
                 config.m_useClientAffinity,
                 config.m_subject);
         m_distributer.addClientStatusListener(m_listener);
+        m_distributer.setColumnarResults(config.m_columnarResults);
         String username = config.m_username;
         if (config.m_subject != null) {
             username = ClientConfig.getUserNameFromSubject(config.m_subject);
@@ -414,6 +418,79 @@ public final class ClientImpl implements Client, ReplicaProcCaller {
         return private_callProcedure(callback, expectedSerializedSize, invocation, Distributer.USE_DEFAULT_CLIENT_TIMEOUT);
     }
 
+    /**
+     * Completes with the response it is invoked with, which lets futures reuse
+     * the callback path.
+     */
+    private static class ResponseFuture extends AbstractFuture<ClientResponse> implements ProcedureCallback {
+        @Override
+        public void clientCallback(ClientResponse clientResponse) {
+            set(clientResponse);
+        }
+
+        void fail(Throwable t) {
+            setException(t);
+        }
+    }
+
+    @Override
+    public ListenableFuture<ClientResponse> callProcedureAsync(String procName, Object... parameters)
+    throws IOException, NoConnectionsException {
+        final ResponseFuture future = new ResponseFuture();
+        if (!callProcedure(future, procName, parameters)) {
+            future.fail(new NoConnectionsException(m_isShutdown ? "Client instance is shutdown" :
+                    "The invocation could not be queued because of backpressure"));
+        }
+        return future;
+    }
+
+    @Override
+    public List<ListenableFuture<ClientResponse>> callProcedureBatchAsync(String procName, List<Object[]> parameterSets)
+    throws IOException, NoConnectionsException {
+        if (m_isShutdown) {
+            throw new NoConnectionsException("Client instance is shutdown");
+        }
+
+        final int count = parameterSets.size();
+        final ProcedureInvocation[] invocations = new ProcedureInvocation[count];
+        final ResponseFuture[] futures = new ResponseFuture[count];
+        for (int i = 0; i < count; i++) {
+            invocations[i] = new ProcedureInvocation(m_handle.getAndIncrement(), procName, parameterSets.get(i));
+            futures[i] = new ResponseFuture();
+        }
+        final List<ListenableFuture<ClientResponse>> result = Arrays.<ListenableFuture<ClientResponse>>asList(futures);
+        if (count == 0) {
+            return result;
+        }
+
+        final long nowNanos = System.nanoTime();
+
+        //Blessed threads (the ones that invoke callbacks) are not subject to backpressure
+        final boolean isBlessed = m_blessedThreadIds.contains(Thread.currentThread().getId());
+        if (m_blockingQueue && !isBlessed) {
+            try {
+                if (backpressureBarrier(nowNanos, m_distributer.getProcedureTimeoutNanos())) {
+                    final ClientResponseImpl r = new ClientResponseImpl(
+                            ClientResponse.CONNECTION_TIMEOUT,
+                            ClientResponse.UNINITIALIZED_APP_STATUS_CODE,
+                            "",
+                            new VoltTable[0],
+                            String.format("No response received in the allotted time (set to %d ms).",
+                                    TimeUnit.NANOSECONDS.toMillis(m_distributer.getProcedureTimeoutNanos())));
+                    for (ResponseFuture future : futures) {
+                        future.clientCallback(r);
+                    }
+                    return result;
+                }
+            } catch (InterruptedException e) {
+                throw new java.io.InterruptedIOException("Interrupted while invoking procedures asynchronously");
+            }
+        }
+
+        m_distributer.queueBatch(invocations, futures, isBlessed, nowNanos, Distributer.USE_DEFAULT_CLIENT_TIMEOUT);
+        return result;
+    }
+
     private final boolean private_callProcedure(
             ProcedureCallback callback,
             int expectedSerializedSize,
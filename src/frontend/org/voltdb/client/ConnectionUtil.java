@@ -45,6 +45,7 @@ import org.ietf.jgss.MessageProp;
 import org.ietf.jgss.Oid;
 import org.voltcore.network.ReverseDNSCache;
 import org.voltdb.ClientResponseImpl;
+import org.voltdb.ColumnarTableCodec;
 import org.voltdb.common.Constants;
 import org.voltdb.utils.SerializationHelper;
 
@@ -141,16 +142,31 @@ public class ConnectionUtil {
     public static Object[] getAuthenticatedConnection(String host, String username,
                                                       byte[] hashedPassword, int port,
                                                       final Subject subject, ClientAuthScheme scheme) throws IOException {
+        return getAuthenticatedConnection(host, username, hashedPassword, port, subject, scheme, false);
+    }
+
+    /**
+     * Create a connection to a Volt server and authenticate the connection, optionally
+     * asking for result tables in the {@link ColumnarTableCodec} encoding.
+     * @see #getAuthenticatedConnection(String, String, byte[], int, Subject, ClientAuthScheme)
+     */
+    public static Object[] getAuthenticatedConnection(String host, String username,
+                                                      byte[] hashedPassword, int port,
+                                                      final Subject subject, ClientAuthScheme scheme,
+                                                      boolean columnarResults) throws IOException {
         String service = subject == null ? "database" : Constants.KERBEROS;
-        return getAuthenticatedConnection(service, host, username, hashedPassword, port, subject, scheme);
+        return getAuthenticatedConnection(service, host, username, hashedPassword, port, subject, scheme,
+                                          columnarResults);
     }
 
     private static Object[] getAuthenticatedConnection(
             String service, String host,
-            String username, byte[] hashedPassword, int port, final Subject subject, ClientAuthScheme scheme)
+            String username, byte[] hashedPassword, int port, final Subject subject, ClientAuthScheme scheme,
+            boolean columnarResults)
     throws IOException {
         InetSocketAddress address = new InetSocketAddress(host, port);
-        return getAuthenticatedConnection(service, address, username, hashedPassword, subject, scheme);
+        return getAuthenticatedConnection(service, address, username, hashedPassword, subject, scheme,
+                                          columnarResults);
     }
 
     private final static Function<Principal, DelegatePrincipal> narrowPrincipal = new Function<Principal, DelegatePrincipal>() {
@@ -171,7 +187,8 @@ public class ConnectionUtil {
 
     private static Object[] getAuthenticatedConnection(
             String service, InetSocketAddress addr, String username,
-            byte[] hashedPassword, final Subject subject, ClientAuthScheme scheme)
+            byte[] hashedPassword, final Subject subject, ClientAuthScheme scheme,
+            boolean columnarResults)
     throws IOException {
         Object returnArray[] = new Object[3];
         boolean success = false;
@@ -204,16 +221,22 @@ public class ConnectionUtil {
             requestSize += serviceBytes == null ? 4 : 4 + serviceBytes.length;
             requestSize += usernameBytes == null ? 4 : 4 + usernameBytes.length;
             requestSize += hashedPassword.length;
+            if (columnarResults) {
+                requestSize += 1; //capability flags
+            }
 
             ByteBuffer b = ByteBuffer.allocate(requestSize);
 
             // serialize it
             b.putInt(requestSize - 4);                            // length prefix
-            b.put((byte) 1);                                      // version
+            b.put(columnarResults ? (byte) 2 : (byte) 1);         // version
             b.put((byte )scheme.getValue());
             SerializationHelper.writeVarbinary(serviceBytes, b);  // data service (export|database)
             SerializationHelper.writeVarbinary(usernameBytes, b);
             b.put(hashedPassword);
+            if (columnarResults) {
+                b.put(ColumnarTableCodec.LOGIN_FLAG_COLUMNAR_RESULTS);
+            }
             b.flip();
 
             boolean successfulWrite = false;
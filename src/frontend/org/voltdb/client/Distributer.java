@@ -72,6 +72,9 @@ import jsr166y.ThreadLocalRandom;
  *
  *   It is safe to synchronized on an individual connection and then the distributer, but it is always unsafe
  *   to synchronized on the distributer and then an individual connection.
+ *
+ *   Invocations are routed without holding the distributer lock. The routing state is kept in concurrent
+ *   collections that are only modified under the lock, and the callbacks are tracked per connection.
  */
 class Distributer {
 
@@ -86,17 +89,21 @@ class Distributer {
     // collection of connections to the cluster
     private final CopyOnWriteArrayList<NodeConnection> m_connections =
             new CopyOnWriteArrayList<NodeConnection>();
+    // m_connections as an array for round-robin routing without copying or locking
+    private volatile NodeConnection[] m_connectionArray = new NodeConnection[0];
 
-    private final ArrayList<ClientStatusListenerExt> m_listeners = new ArrayList<ClientStatusListenerExt>();
+    private final CopyOnWriteArrayList<ClientStatusListenerExt> m_listeners =
+            new CopyOnWriteArrayList<ClientStatusListenerExt>();
 
     //Selector and connection handling, does all work in blocking selection thread
     private final VoltNetworkPool m_network;
 
     // Temporary until a distribution/affinity algorithm is written
-    private int m_nextConnection = 0;
+    private final AtomicInteger m_nextConnection = new AtomicInteger(0);
 
     private final boolean m_useMultipleThreads;
     private final boolean m_useClientAffinity;
+    private volatile boolean m_columnarResults = false;
 
     private static final class Procedure {
         final static int PARAMETER_NONE = -1;
@@ -115,18 +122,19 @@ class Distributer {
         }
     }
 
-    private final Map<Integer, NodeConnection> m_partitionMasters = new HashMap<Integer, NodeConnection>();
-    private final Map<Integer, NodeConnection[]> m_partitionReplicas = new HashMap<Integer, NodeConnection[]>();
+    // The routing state is modified under the distributer lock and read without it
+    private final Map<Integer, NodeConnection> m_partitionMasters = new ConcurrentHashMap<Integer, NodeConnection>();
+    private final Map<Integer, NodeConnection[]> m_partitionReplicas = new ConcurrentHashMap<Integer, NodeConnection[]>();
     private final Map<Integer, NodeConnection> m_hostIdToConnection = new HashMap<Integer, NodeConnection>();
-    private final Map<String, Procedure> m_procedureInfo = new HashMap<String, Procedure>();
+    private final Map<String, Procedure> m_procedureInfo = new ConcurrentHashMap<String, Procedure>();
     //This is the instance of the Hashinator we picked from TOPO used only for client affinity.
-    private HashinatorLite m_hashinator = null;
+    private volatile HashinatorLite m_hashinator = null;
     //This is a global timeout that will be used if a per-procedure timeout is not provided with the procedure call.
     private final long m_procedureCallTimeoutNanos;
     private static final long MINIMUM_LONG_RUNNING_SYSTEM_CALL_TIMEOUT_MS = 30 * 60 * 1000; // 30 minutes
     private final long m_connectionResponseTimeoutNanos;
-    private final Map<Integer, ClientAffinityStats> m_clientAffinityStats =
-        new HashMap<Integer, ClientAffinityStats>();
+    private final ConcurrentMap<Integer, ClientAffinityStats> m_clientAffinityStats =
+        new ConcurrentHashMap<Integer, ClientAffinityStats>();
 
     public final RateLimiter m_rateLimiter = new RateLimiter();
 
@@ -369,6 +377,20 @@ class Distributer {
          */
         public void createWork(final long nowNanos, long handle, String name, ByteBuffer c,
                 ProcedureCallback callback, boolean ignoreBackpressure, long timeoutNanos) {
+            if (registerWork(nowNanos, handle, name, callback, ignoreBackpressure, timeoutNanos, false)) {
+                m_connection.writeStream().enqueue(c);
+            }
+        }
+
+        /*
+         * Rate limit the invocation and record its callback. Returns true if the caller should
+         * write the invocation, false if the callback was already invoked because it timed out
+         * waiting on the rate limiter or the connection was lost. acquiredPermit means the caller
+         * already accounted for the invocation with the rate limiter.
+         */
+        boolean registerWork(final long nowNanos, long handle, String name,
+                ProcedureCallback callback, boolean ignoreBackpressure, long timeoutNanos,
+                boolean acquiredPermit) {
             assert(callback != null);
 
             //How long from the starting point in time to wait to get this stuff done
@@ -386,17 +408,21 @@ class Distributer {
              * the rate limiter which can block. If it blocks we can still get a timeout
              * exception to give prompt timeouts
              */
-            try {
-                afterRateLimitNanos = m_rateLimiter.sendTxnWithOptionalBlockAndReturnCurrentTime(
-                        nowNanos, timeoutNanos, ignoreBackpressure);
-            } catch (TimeoutException e) {
-                /*
-                 * It's possible we need to timeout because it took too long to get
-                 * the transaction out on the wire due to max outstanding
-                 */
-                final long deltaNanos = Math.max(1, System.nanoTime() - nowNanos);
-                    invokeCallbackWithTimeout(name, callback, deltaNanos, afterRateLimitNanos,  timeoutNanos, handle, ignoreBackpressure);
-                return;
+            if (acquiredPermit) {
+                afterRateLimitNanos = nowNanos;
+            } else {
+                try {
+                    afterRateLimitNanos = m_rateLimiter.sendTxnWithOptionalBlockAndReturnCurrentTime(
+                            nowNanos, timeoutNanos, ignoreBackpressure);
+                } catch (TimeoutException e) {
+                    /*
+                     * It's possible we need to timeout because it took too long to get
+                     * the transaction out on the wire due to max outstanding
+                     */
+                    final long deltaNanos = Math.max(1, System.nanoTime() - nowNanos);
+                        invokeCallbackWithTimeout(name, callback, deltaNanos, afterRateLimitNanos,  timeoutNanos, handle, ignoreBackpressure);
+                    return false;
+                }
             }
 
             assert(m_callbacks.containsKey(handle) == false);
@@ -423,7 +449,7 @@ class Distributer {
             if (!m_isConnected) {
                 //Check if the disconnect or expiration already handled the callback
                 if (m_callbacks.remove(handle) == null) {
-                    return;
+                    return false;
                 }
                 final ClientResponse r = new ClientResponseImpl(
                         ClientResponse.CONNECTION_LOST, new VoltTable[0],
@@ -441,10 +467,9 @@ class Distributer {
 
                 //for bookkeeping, but it feels dishonest to call this here
                 m_rateLimiter.transactionResponseReceived(nowNanos, -1, ignoreBackpressure);
-                return;
-            } else {
-                m_connection.writeStream().enqueue(c);
+                return false;
             }
+            return true;
         }
 
         /*
@@ -722,6 +747,7 @@ class Distributer {
                 }
 
                 m_connections.remove(this);
+                m_connectionArray = m_connections.toArray(new NodeConnection[0]);
                 //Notify listeners that a connection has been lost
                 for (ClientStatusListenerExt s : m_listeners) {
                     s.connectionLost(
@@ -892,11 +918,16 @@ class Distributer {
         createConnectionWithHashedCredentials(host, program, hashedPassword, port, scheme);
     }
 
+    void setColumnarResults(boolean columnarResults) {
+        m_columnarResults = columnarResults;
+    }
+
     void createConnectionWithHashedCredentials(String host, String program, byte[] hashedPassword, int port, ClientAuthScheme scheme)
     throws UnknownHostException, IOException
     {
         final Object socketChannelAndInstanceIdAndBuildString[] =
-            ConnectionUtil.getAuthenticatedConnection(host, program, hashedPassword, port, m_subject, scheme);
+            ConnectionUtil.getAuthenticatedConnection(host, program, hashedPassword, port, m_subject, scheme,
+                                                      m_columnarResults);
         final SocketChannel aChannel = (SocketChannel)socketChannelAndInstanceIdAndBuildString[0];
         final long instanceIdWhichIsTimestampAndLeaderIp[] = (long[])socketChannelAndInstanceIdAndBuildString[1];
         final int hostId = (int)instanceIdWhichIsTimestampAndLeaderIp[0];
@@ -931,6 +962,7 @@ class Distributer {
             m_buildString = (String)socketChannelAndInstanceIdAndBuildString[2];
 
             m_connections.add(cxn);
+            m_connectionArray = m_connections.toArray(new NodeConnection[0]);
         }
 
         if (m_useClientAffinity) {
@@ -1024,79 +1056,206 @@ class Distributer {
         assert(invocation != null);
         assert(cb != null);
 
-        NodeConnection cxn = null;
-        boolean backpressure = true;
+        NodeConnection cxn = selectConnection(invocation, ignoreBackpressure, true);
+        if (cxn == null) {
+            /*
+             * Check again holding the lock offBackPressure takes to report that backpressure
+             * ended, otherwise backpressure could be reported after it ended and the wakeup
+             * would be lost.
+             */
+            synchronized (this) {
+                cxn = selectConnection(invocation, ignoreBackpressure, false);
+                if (cxn == null) {
+                    for (ClientStatusListenerExt s : m_listeners) {
+                        s.backpressure(true);
+                    }
+                    return false;
+                }
+            }
+        }
 
         /*
-         * Synchronization is necessary to ensure that m_connections is not modified
-         * as well as to ensure that backpressure is reported correctly
+         * createWork synchronizes on an individual connection which allows for more concurrency
          */
-        synchronized (this) {
-            final int totalConnections = m_connections.size();
+        ByteBuffer buf = null;
+        try {
+            buf = serializeSPI(invocation);
+        } catch (Exception e) {
+            Throwables.propagate(e);
+        }
+        cxn.createWork(nowNanos, invocation.getHandle(), invocation.getProcName(), buf, cb, ignoreBackpressure, timeoutNanos);
+        return true;
+    }
+
+    /**
+     * Queue a batch of invocations, writing all the invocations routed to a connection
+     * with a single enqueue on its write stream. Connection backpressure is not checked
+     * inside a batch, callers wait for it before queueing the batch. The rate limiter
+     * still applies to each invocation, and whatever was routed so far is written out
+     * before the rate limiter is allowed to block. If no connection is left, the callbacks
+     * of the invocations not queued yet get a connection lost response. Every invocation
+     * is serialized before any is routed, so if one fails to serialize nothing is sent
+     * and none of the callbacks is invoked.
+     * @param invocations
+     * @param callbacks callback for the invocation at the same index
+     * @param ignoreBackpressure If true the rate limiter is not applied
+     * @param nowNanos Current time in nanoseconds using System.nanoTime
+     * @param timeoutNanos nanoseconds from nowNanos where timeout should fire
+     * @throws IOException if an invocation could not be serialized
+     */
+    void queueBatch(
+            ProcedureInvocation[] invocations,
+            ProcedureCallback[] callbacks,
+            final boolean ignoreBackpressure, final long nowNanos, final long timeoutNanos)
+            throws IOException {
+        assert(invocations.length == callbacks.length);
 
-            if (totalConnections == 0) {
-                throw new NoConnectionsException("No connections.");
+        final ByteBuffer[] bufs = new ByteBuffer[invocations.length];
+        for (int i = 0; i < invocations.length; i++) {
+            try {
+                bufs[i] = serializeSPI(invocations[i]);
+            } catch (RuntimeException e) {
+                throw new IOException("Unable to serialize the invocation of " +
+                        invocations[i].getProcName() + " at index " + i + " of the batch", e);
             }
+        }
 
-            /*
-             * Check if the master for the partition is known. No back pressure check to ensure correct
-             * routing, but backpressure will be managed anyways. This is where we guess partition based on client
-             * affinity and known topology (hashinator initialized).
-             */
-            if (m_useClientAffinity && (m_hashinator != null)) {
-                final Procedure procedureInfo = m_procedureInfo.get(invocation.getProcName());
-                Integer hashedPartition = -1;
-
-                if (procedureInfo != null) {
-                    hashedPartition = Constants.MP_INIT_PID;
-                    if (( ! procedureInfo.multiPart) &&
-                        // User may have passed too few parameters to allow dispatching.
-                        // Avoid an indexing error here to fall through to the proper ProcCallException.
-                            (procedureInfo.partitionParameter < invocation.getPassedParamCount())) {
-                        hashedPartition = m_hashinator.getHashedPartitionForParameter(
-                                procedureInfo.partitionParameterType,
-                                invocation.getPartitionParamValue(procedureInfo.partitionParameter));
+        final Map<NodeConnection, List<ByteBuffer>> pending = new HashMap<NodeConnection, List<ByteBuffer>>();
+        try {
+            for (int i = 0; i < invocations.length; i++) {
+                final ProcedureInvocation invocation = invocations[i];
+                final NodeConnection cxn;
+                try {
+                    cxn = selectConnection(invocation, true, true);
+                } catch (NoConnectionsException e) {
+                    failUnqueued(callbacks, i, e.getMessage());
+                    return;
+                }
+
+                final boolean acquiredPermit = !ignoreBackpressure && m_rateLimiter.trySendTxn(nowNanos);
+                if (!acquiredPermit && !ignoreBackpressure) {
+                    // The responses that free up permits may be waiting on what is pending
+                    writePending(pending);
+                }
+                if (cxn.registerWork(nowNanos, invocation.getHandle(), invocation.getProcName(),
+                                     callbacks[i], ignoreBackpressure, timeoutNanos, acquiredPermit)) {
+                    List<ByteBuffer> cxnBufs = pending.get(cxn);
+                    if (cxnBufs == null) {
+                        cxnBufs = new ArrayList<ByteBuffer>();
+                        pending.put(cxn, cxnBufs);
                     }
-                    /*
-                     * If the procedure is read only and single part, load balance across replicas
-                     */
-                    if (!procedureInfo.multiPart && procedureInfo.readOnly) {
-                        NodeConnection partitionReplicas[] = m_partitionReplicas.get(hashedPartition);
-                        if (partitionReplicas != null && partitionReplicas.length > 0) {
-                            cxn = partitionReplicas[ThreadLocalRandom.current().nextInt(partitionReplicas.length)];
-                            if (cxn.hadBackPressure()) {
-                                //See if there is one without backpressure, make sure it's still connected
-                                for (NodeConnection nc : partitionReplicas) {
-                                    if (!nc.hadBackPressure() && nc.m_isConnected) {
-                                        cxn = nc;
-                                        break;
-                                    }
+                    cxnBufs.add(bufs[i]);
+                }
+            }
+        } finally {
+            writePending(pending);
+        }
+    }
+
+    private void failUnqueued(ProcedureCallback[] callbacks, int first, String reason) {
+        final ClientResponse r = new ClientResponseImpl(
+                ClientResponse.CONNECTION_LOST, new VoltTable[0],
+                "The invocation could not be queued: " + reason);
+        for (int i = first; i < callbacks.length; i++) {
+            try {
+                callbacks[i].clientCallback(r);
+            } catch (Exception e) {
+                uncaughtException(callbacks[i], r, e);
+            }
+        }
+    }
+
+    private static void writePending(Map<NodeConnection, List<ByteBuffer>> pending) {
+        for (Map.Entry<NodeConnection, List<ByteBuffer>> e : pending.entrySet()) {
+            final List<ByteBuffer> bufs = e.getValue();
+            e.getKey().m_connection.writeStream().enqueue(bufs.toArray(new ByteBuffer[bufs.size()]));
+        }
+        pending.clear();
+    }
+
+    /**
+     * Pick the connection for an invocation without taking the distributer lock. Client
+     * affinity routes to the partition master, or to any replica for a single partition
+     * read, otherwise the connections are used round-robin.
+     * @return The connection, or null if the connection has backpressure
+     * @throws NoConnectionsException
+     */
+    private NodeConnection selectConnection(ProcedureInvocation invocation, boolean ignoreBackpressure,
+            boolean updateStats) throws NoConnectionsException {
+        final NodeConnection[] connections = m_connectionArray;
+        final int totalConnections = connections.length;
+
+        if (totalConnections == 0) {
+            throw new NoConnectionsException("No connections.");
+        }
+
+        NodeConnection cxn = null;
+        boolean backpressure = true;
+
+        /*
+         * Check if the master for the partition is known. No back pressure check to ensure correct
+         * routing, but backpressure will be managed anyways. This is where we guess partition based on client
+         * affinity and known topology (hashinator initialized).
+         */
+        final HashinatorLite hashinator = m_hashinator;
+        if (m_useClientAffinity && (hashinator != null)) {
+            final Procedure procedureInfo = m_procedureInfo.get(invocation.getProcName());
+            Integer hashedPartition = -1;
+
+            if (procedureInfo != null) {
+                hashedPartition = Constants.MP_INIT_PID;
+                if (( ! procedureInfo.multiPart) &&
+                    // User may have passed too few parameters to allow dispatching.
+                    // Avoid an indexing error here to fall through to the proper ProcCallException.
+                        (procedureInfo.partitionParameter < invocation.getPassedParamCount())) {
+                    hashedPartition = hashinator.getHashedPartitionForParameter(
+                            procedureInfo.partitionParameterType,
+                            invocation.getPartitionParamValue(procedureInfo.partitionParameter));
+                }
+                /*
+                 * If the procedure is read only and single part, load balance across replicas
+                 */
+                if (!procedureInfo.multiPart && procedureInfo.readOnly) {
+                    NodeConnection partitionReplicas[] = m_partitionReplicas.get(hashedPartition);
+                    if (partitionReplicas != null && partitionReplicas.length > 0) {
+                        cxn = partitionReplicas[ThreadLocalRandom.current().nextInt(partitionReplicas.length)];
+                        if (cxn.hadBackPressure()) {
+                            //See if there is one without backpressure, make sure it's still connected
+                            for (NodeConnection nc : partitionReplicas) {
+                                if (!nc.hadBackPressure() && nc.m_isConnected) {
+                                    cxn = nc;
+                                    break;
                                 }
                             }
-                            if (!cxn.hadBackPressure() || ignoreBackpressure) {
-                                backpressure = false;
-                            }
                         }
-                    } else {
-                        /*
-                         * Writes have to go to the master
-                         */
-                        cxn = m_partitionMasters.get(hashedPartition);
-                        if (cxn != null && !cxn.hadBackPressure() || ignoreBackpressure) {
+                        if (!cxn.hadBackPressure() || ignoreBackpressure) {
                             backpressure = false;
                         }
                     }
+                } else {
+                    /*
+                     * Writes have to go to the master
+                     */
+                    cxn = m_partitionMasters.get(hashedPartition);
+                    if (cxn != null && !cxn.hadBackPressure() || ignoreBackpressure) {
+                        backpressure = false;
+                    }
                 }
-                if (cxn != null && !cxn.m_isConnected) {
-                    // Would be nice to log something here
-                    // Client affinity picked a connection that was actually disconnected.  Reset to null
-                    // and let the round-robin choice pick a connection
-                    cxn = null;
-                }
+            }
+            if (cxn != null && !cxn.m_isConnected) {
+                // Would be nice to log something here
+                // Client affinity picked a connection that was actually disconnected.  Reset to null
+                // and let the round-robin choice pick a connection
+                cxn = null;
+            }
+            if (updateStats) {
                 ClientAffinityStats stats = m_clientAffinityStats.get(hashedPartition);
                 if (stats == null) {
                     stats = new ClientAffinityStats(hashedPartition, 0, 0, 0, 0);
-                    m_clientAffinityStats.put(hashedPartition, stats);
+                    ClientAffinityStats existing = m_clientAffinityStats.putIfAbsent(hashedPartition, stats);
+                    if (existing != null) {
+                        stats = existing;
+                    }
                 }
                 if (cxn != null) {
                     if (procedureInfo != null && procedureInfo.readOnly) {
@@ -1117,40 +1276,19 @@ class Distributer {
                     }
                 }
             }
-            if (cxn == null) {
-                for (int i=0; i < totalConnections; ++i) {
-                    cxn = m_connections.get(Math.abs(++m_nextConnection % totalConnections));
-                    if (!cxn.hadBackPressure() || ignoreBackpressure) {
-                        // serialize and queue the invocation
-                        backpressure = false;
-                        break;
-                    }
-                }
-            }
-
-            if (backpressure) {
-                cxn = null;
-                for (ClientStatusListenerExt s : m_listeners) {
-                    s.backpressure(true);
-                }
-            }
         }
-
-        /*
-         * Do the heavy weight serialization outside the synchronized block.
-         * createWork synchronizes on an individual connection which allows for more concurrency
-         */
-        if (cxn != null) {
-            ByteBuffer buf = null;
-            try {
-                buf = serializeSPI(invocation);
-            } catch (Exception e) {
-                Throwables.propagate(e);
+        if (cxn == null) {
+            for (int i=0; i < totalConnections; ++i) {
+                cxn = connections[Math.abs(m_nextConnection.incrementAndGet() % totalConnections)];
+                if (!cxn.hadBackPressure() || ignoreBackpressure) {
+                    // serialize and queue the invocation
+                    backpressure = false;
+                    break;
+                }
             }
-            cxn.createWork(nowNanos, invocation.getHandle(), invocation.getProcName(), buf, cb, ignoreBackpressure, timeoutNanos);
         }
 
-        return !backpressure;
+        return backpressure ? null : cxn;
     }
 
     /**
@@ -1245,11 +1383,9 @@ class Distributer {
     Map<Integer, ClientAffinityStats> getAffinityStatsSnapshot()
     {
         Map<Integer, ClientAffinityStats> retval = new HashMap<Integer, ClientAffinityStats>();
-        // these get modified under this lock in queue()
-        synchronized(this) {
-            for (Entry<Integer, ClientAffinityStats> e : m_clientAffinityStats.entrySet()) {
-                retval.put(e.getKey(), (ClientAffinityStats)e.getValue().clone());
-            }
+        // these are modified concurrently by queue(), clone synchronizes on each one
+        for (Entry<Integer, ClientAffinityStats> e : m_clientAffinityStats.entrySet()) {
+            retval.put(e.getKey(), (ClientAffinityStats)e.getValue().clone());
         }
         return retval;
     }
@@ -198,39 +198,8 @@ class RateLimiter {
         if (m_doesAnyTuning) {
             long timestamp = TimeUnit.NANOSECONDS.toMillis(timestampNanos);
             while (true) {
-                synchronized(this) {
-                    // switch to a new block if 100ms has passed
-                    // possibly compute a new target rate
-                    ensureCurrentBlockIsKosher(timestamp);
-
-                    assert((timestamp - m_currentBlockTimestamp) <= BLOCK_SIZE);
-
-                    // don't let the time be before the start of the current block
-                    // also ensure faketime - m_currentBlockTimestamp is positive
-                    long faketime = timestamp < m_currentBlockTimestamp ? m_currentBlockTimestamp : timestamp;
-
-                    long targetTxnsPerBlock = m_targetTxnsPerSecond / (1000 / BLOCK_SIZE);
-
-                    // compute the percentage of the current 100ms block that has passed
-                    double expectedTxnsSent =
-                            targetTxnsPerBlock * (faketime - m_currentBlockTimestamp + 1.0) / BLOCK_SIZE;
-                    expectedTxnsSent = Math.ceil(expectedTxnsSent);
-
-                    assert(expectedTxnsSent <= targetTxnsPerBlock); // stupid fp math
-                    assert((expectedTxnsSent >= 1.0) || (targetTxnsPerBlock == 0));
-
-                    // if the rate is under target, no problems
-                    if (((m_currentBlockSendCount < expectedTxnsSent) &&
-                         (m_outstandingTxns < m_maxOutstandingTxns)) ||
-                        (ignoreBackpressure == true)) {
-
-                        // bookkeeping
-                        ++m_currentBlockSendCount;
-                        ++m_outstandingTxns;
-
-                        // exit the while loop
-                        break;
-                    }
+                if (tryAccountForTxn(timestamp, ignoreBackpressure)) {
+                    break;
                 }
 
                 // if the rate is above target, pause for the smallest time possible
@@ -258,6 +227,54 @@ class RateLimiter {
         return timestampNanos;
     }
 
+    /**
+     * Account for a transaction that can be sent right away without blocking.
+     *
+     * @param timestampNanos The time as measured when the call is made.
+     * @return true if the transaction was accounted for and can be sent, false if
+     * sending it would exceed the limits.
+     */
+    boolean trySendTxn(long timestampNanos) {
+        if (m_doesAnyTuning) {
+            return tryAccountForTxn(TimeUnit.NANOSECONDS.toMillis(timestampNanos), false);
+        }
+        return m_outstandingTxnsSemaphore.tryAcquire();
+    }
+
+    private synchronized boolean tryAccountForTxn(long timestamp, boolean ignoreBackpressure) {
+        // switch to a new block if 100ms has passed
+        // possibly compute a new target rate
+        ensureCurrentBlockIsKosher(timestamp);
+
+        assert((timestamp - m_currentBlockTimestamp) <= BLOCK_SIZE);
+
+        // don't let the time be before the start of the current block
+        // also ensure faketime - m_currentBlockTimestamp is positive
+        long faketime = timestamp < m_currentBlockTimestamp ? m_currentBlockTimestamp : timestamp;
+
+        long targetTxnsPerBlock = m_targetTxnsPerSecond / (1000 / BLOCK_SIZE);
+
+        // compute the percentage of the current 100ms block that has passed
+        double expectedTxnsSent =
+                targetTxnsPerBlock * (faketime - m_currentBlockTimestamp + 1.0) / BLOCK_SIZE;
+        expectedTxnsSent = Math.ceil(expectedTxnsSent);
+
+        assert(expectedTxnsSent <= targetTxnsPerBlock); // stupid fp math
+        assert((expectedTxnsSent >= 1.0) || (targetTxnsPerBlock == 0));
+
+        // if the rate is under target, no problems
+        if (((m_currentBlockSendCount < expectedTxnsSent) &&
+             (m_outstandingTxns < m_maxOutstandingTxns)) ||
+            (ignoreBackpressure == true)) {
+
+            // bookkeeping
+            ++m_currentBlockSendCount;
+            ++m_outstandingTxns;
+            return true;
+        }
+        return false;
+    }
+
     public synchronized void debug() {
         System.out.printf("Target throughput/s is %d and max outstanding txns is %d\n",
                 m_targetTxnsPerSecond, m_maxOutstandingTxns);
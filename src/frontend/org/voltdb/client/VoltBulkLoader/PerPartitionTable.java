@@ -212,6 +212,7 @@ public class PerPartitionTable {
 
                     //one insert at a time callback
                     if (response.getStatus() != ClientResponse.SUCCESS) {
+                        row.m_loader.m_loaderFailedCnt.incrementAndGet();
                         row.m_loader.m_notificationCallBack.failureCallback(row.m_rowHandle, row.m_rowData, response);
                     }
                 }
@@ -105,6 +105,8 @@ public class VoltBulkLoader {
     final AtomicLong m_outstandingRowCount = new AtomicLong(0);
     //Number of rows for which we have received a definitive success or failure.
     final AtomicLong m_loaderCompletedCnt = new AtomicLong(0);
+    //Number of completed rows that were rejected and reported through the failure callback.
+    final AtomicLong m_loaderFailedCnt = new AtomicLong(0);
 
     // Constructor allocated through the Client to ensure consistency of VoltBulkLoaderGlobals
     public VoltBulkLoader(BulkLoaderState vblGlobals, String tableName, int maxBatchSize,
@@ -290,6 +292,7 @@ public class VoltBulkLoader {
         ClientResponse dummyResponse = new ClientResponseImpl(ClientResponse.GRACEFUL_FAILURE,
                 dummyTable, errMessage);
         m_notificationCallBack.failureCallback(rowHandle, objectList, dummyResponse);
+        m_loaderFailedCnt.incrementAndGet();
         m_loaderCompletedCnt.incrementAndGet();
     }
 
@@ -444,6 +447,14 @@ public class VoltBulkLoader {
         return m_loaderCompletedCnt.get();
     }
 
+    /**
+     * @return The number of completed rows that failed to insert and were
+     *  reported through BulkLoaderFailureCallBack.
+     */
+    public long getFailedRowCount() {
+        return m_loaderFailedCnt.get();
+    }
+
     public VoltType[] getColumnTypes() {
         return m_mappedColumnTypes.values().toArray(new VoltType[m_mappedColumnTypes.size()]);
     }
@@ -2069,6 +2069,8 @@ public class DDLCompiler {
         //   3. it does not have an autogenerated name.
         // We don't think about the column type here, but see
         // below.
+        // Other indexes are balanced trees, or B+trees if they
+        // have "btree" in the name.
         if (has_geo_col) {
             index.setType(IndexType.COVERING_CELL_INDEX.getValue());
         }
@@ -2083,6 +2085,10 @@ public class DDLCompiler {
             }
             index.setType(IndexType.HASH_TABLE.getValue());
         }
+        else if (indexNameNoCase.contains("btree")) {
+            index.setType(IndexType.BTREE.getValue());
+            index.setCountable(true);
+        }
         else {
             index.setType(IndexType.BALANCED_TREE.getValue());
             index.setCountable(true);
@@ -26,6 +26,22 @@ public class DatabaseEstimates {
         public long maxTuples = 1000000;
         public long minTuples = 100000;
         public ArrayList<ScalarValueHints> valueHints = new ArrayList<ScalarValueHints>();
+        /// Measured statistics for the table's indexes, by index name.
+        /// Empty unless the estimates come from LiveDatabaseStatistics.
+        public HashMap<String, IndexEstimates> indexes = new HashMap<String, IndexEstimates>();
+    }
+
+    /**
+     * Per partition entry and distinct key counts measured by the EE for an index.
+     */
+    public static class IndexEstimates {
+        public long entries;
+        public long distinctKeys;
+
+        public IndexEstimates(long entries, long distinctKeys) {
+            this.entries = entries;
+            this.distinctKeys = distinctKeys;
+        }
     }
 
     HashMap<String, TableEstimates> tables = new HashMap<String, TableEstimates>();
@@ -36,4 +52,11 @@ public class DatabaseEstimates {
 
         return tables.get(tableName);
     }
+
+    /**
+     * @return the measured statistics for an index, or null if there are none
+     */
+    public IndexEstimates getEstimatesForIndex(String tableName, String indexName) {
+        return getEstimatesForTable(tableName).indexes.get(indexName);
+    }
 }
@@ -0,0 +1,150 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.compiler;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.voltdb.compiler.DatabaseEstimates.IndexEstimates;
+import org.voltdb.compiler.DatabaseEstimates.TableEstimates;
+
+/**
+ * Table row counts and index distinct key estimates the local sites measured
+ * on their last stats tick, used to cost plans for ad hoc and default
+ * procedure SQL. Plans compiled with the catalog keep using the fixed
+ * DatabaseEstimates so they don't depend on the data at compile time.
+ *
+ * The counts are averaged over the local sites, which gives the per partition
+ * size of a partitioned table and the full size of a replicated one.
+ */
+public class LiveDatabaseStatistics {
+
+    static final boolean ENABLED = !Boolean.getBoolean("DISABLE_PLANNER_LIVE_STATISTICS");
+
+    /**
+     * Tables are costed as having at least this many rows. Plans are cached, and
+     * one made for an empty table shouldn't pass over its indexes once it fills up.
+     */
+    static final long MIN_TUPLES = Long.getLong("PLANNER_LIVE_STATISTICS_MIN_TUPLES", 1000);
+
+    /**
+     * The statistics one site reported.
+     */
+    public static class SiteStatistics {
+        final Map<String, Long> m_tupleCounts = new HashMap<String, Long>();
+        final Map<String, Map<String, IndexEstimates>> m_indexes =
+                new HashMap<String, Map<String, IndexEstimates>>();
+
+        public void addTable(String tableName, long tupleCount) {
+            m_tupleCounts.put(tableName, tupleCount);
+        }
+
+        /**
+         * @param distinctKeys the EE's estimate, negative if it has none
+         */
+        public void addIndex(String tableName, String indexName, long entries, long distinctKeys) {
+            if (distinctKeys <= 0) {
+                return;
+            }
+            Map<String, IndexEstimates> indexes = m_indexes.get(tableName);
+            if (indexes == null) {
+                indexes = new HashMap<String, IndexEstimates>();
+                m_indexes.put(tableName, indexes);
+            }
+            indexes.put(indexName, new IndexEstimates(entries, distinctKeys));
+        }
+    }
+
+    private static final Map<Long, SiteStatistics> m_sites = new ConcurrentHashMap<Long, SiteStatistics>();
+
+    /**
+     * Replace the statistics for a site. Called from the site thread.
+     */
+    public static void update(long siteId, SiteStatistics stats) {
+        m_sites.put(siteId, stats);
+    }
+
+    public static void remove(long siteId) {
+        m_sites.remove(siteId);
+    }
+
+    public static void clear() {
+        m_sites.clear();
+    }
+
+    /**
+     * @return estimates built from the latest statistics of all the local
+     * sites, or the fixed defaults if there are none yet
+     */
+    public static DatabaseEstimates getEstimates() {
+        DatabaseEstimates estimates = new DatabaseEstimates();
+        if (!ENABLED || m_sites.isEmpty()) {
+            return estimates;
+        }
+
+        Map<String, long[]> tupleSums = new HashMap<String, long[]>();
+        Map<String, Map<String, long[]>> indexSums = new HashMap<String, Map<String, long[]>>();
+        for (SiteStatistics site : m_sites.values()) {
+            for (Entry<String, Long> e : site.m_tupleCounts.entrySet()) {
+                addSample(tupleSums, e.getKey(), e.getValue(), 0);
+            }
+            for (Entry<String, Map<String, IndexEstimates>> table : site.m_indexes.entrySet()) {
+                Map<String, long[]> sums = indexSums.get(table.getKey());
+                if (sums == null) {
+                    sums = new HashMap<String, long[]>();
+                    indexSums.put(table.getKey(), sums);
+                }
+                for (Entry<String, IndexEstimates> index : table.getValue().entrySet()) {
+                    addSample(sums, index.getKey(), index.getValue().entries, index.getValue().distinctKeys);
+                }
+            }
+        }
+
+        for (Entry<String, long[]> e : tupleSums.entrySet()) {
+            long[] sum = e.getValue();
+            TableEstimates table = estimates.getEstimatesForTable(e.getKey());
+            table.maxTuples = Math.max(sum[0] / sum[2], MIN_TUPLES);
+            table.minTuples = table.maxTuples;
+            Map<String, long[]> sums = indexSums.get(e.getKey());
+            if (sums == null) {
+                continue;
+            }
+            for (Entry<String, long[]> index : sums.entrySet()) {
+                long[] indexSum = index.getValue();
+                table.indexes.put(index.getKey(),
+                                  new IndexEstimates(indexSum[0] / indexSum[2],
+                                                     Math.max(indexSum[1] / indexSum[2], 1)));
+            }
+        }
+        return estimates;
+    }
+
+    // Sums are { first value, second value, sample count }
+    private static void addSample(Map<String, long[]> sums, String key, long first, long second) {
+        long[] sum = sums.get(key);
+        if (sum == null) {
+            sum = new long[3];
+            sums.put(key, sum);
+        }
+        sum[0] += first;
+        sum[1] += second;
+        sum[2]++;
+    }
+}
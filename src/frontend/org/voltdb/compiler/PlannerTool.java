@@ -118,7 +118,7 @@ public class PlannerTool {
      */
     public synchronized CompiledPlan planSqlCore(String sql, StatementPartitioning partitioning) {
         TrivialCostModel costModel = new TrivialCostModel();
-        DatabaseEstimates estimates = new DatabaseEstimates();
+        DatabaseEstimates estimates = LiveDatabaseStatistics.getEstimates();
         QueryPlanner planner = new QueryPlanner(
             sql, "PlannerTool", "PlannerToolProc", m_cluster, m_database,
             partitioning, m_hsql, estimates, true,
@@ -194,7 +194,7 @@ public class PlannerTool {
             //////////////////////
 
             TrivialCostModel costModel = new TrivialCostModel();
-            DatabaseEstimates estimates = new DatabaseEstimates();
+            DatabaseEstimates estimates = LiveDatabaseStatistics.getEstimates();
             QueryPlanner planner = new QueryPlanner(
                     sql, "PlannerTool", "PlannerToolProc", m_cluster, m_database,
                     partitioning, m_hsql, estimates, true,
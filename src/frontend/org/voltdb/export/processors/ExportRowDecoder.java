@@ -0,0 +1,200 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.export.processors;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+
+import org.voltdb.VoltType;
+import org.voltdb.common.Constants;
+import org.voltdb.types.GeographyPointValue;
+import org.voltdb.types.GeographyValue;
+import org.voltdb.utils.Encoder;
+
+/**
+ * Formats all the rows of an export block as delimited text in one pass.
+ *
+ * The EE writes each row as a 4 byte length, a null bitmap with one bit per
+ * column (most significant bit first) and the non null values, all in native
+ * (little endian) byte order. The first six columns are the transaction id,
+ * timestamp, sequence number, partition id, site id and operation that
+ * ExportTupleStream adds to every row.
+ *
+ * Values are formatted straight from the block, nothing is materialized per
+ * row. Null values are written as empty fields.
+ */
+public class ExportRowDecoder {
+
+    public static final int INTERNAL_FIELD_COUNT = 6;
+    // Five BIGINT metadata columns and the TINYINT operation
+    private static final int INTERNAL_FIELD_BYTES = 5 * 8 + 1;
+
+    private final VoltType[] m_types;
+    private final int m_nullArrayLength;
+    private final char m_delimiter;
+    private final boolean m_skipInternals;
+    // A decoder is only used by one thread at a time
+    private final SimpleDateFormat m_dateFormat = new SimpleDateFormat(Constants.ODBC_DATE_FORMAT_STRING);
+    private final Date m_date = new Date();
+
+    /**
+     * @param columnTypes the VoltType values of all the columns, as kept by ExportDataSource
+     */
+    public ExportRowDecoder(List<Integer> columnTypes, char delimiter, boolean skipInternals) {
+        m_types = new VoltType[columnTypes.size()];
+        for (int i = 0; i < m_types.length; i++) {
+            m_types[i] = VoltType.get(columnTypes.get(i).byteValue());
+        }
+        m_nullArrayLength = ((m_types.length + 7) & -8) >> 3;
+        m_delimiter = delimiter;
+        m_skipInternals = skipInternals;
+    }
+
+    /**
+     * Append one line per row in the block to out.
+     * @param block the rows of an export block, from its position to its limit
+     * @return the number of rows
+     */
+    public int formatBlock(ByteBuffer block, StringBuilder out) {
+        final ByteBuffer buf = block.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int rows = 0;
+        while (buf.hasRemaining()) {
+            final int rowLength = buf.getInt();
+            final int rowEnd = buf.position() + rowLength;
+            final int nullArray = buf.position();
+            buf.position(nullArray + m_nullArrayLength);
+
+            int first = 0;
+            if (m_skipInternals) {
+                buf.position(buf.position() + INTERNAL_FIELD_BYTES);
+                first = INTERNAL_FIELD_COUNT;
+            }
+            for (int col = first; col < m_types.length; col++) {
+                if (col != first) {
+                    out.append(m_delimiter);
+                }
+                if ((buf.get(nullArray + (col >> 3)) & (0x80 >> (col & 7))) == 0) {
+                    formatValue(m_types[col], buf, out);
+                }
+            }
+            out.append('\n');
+
+            buf.position(rowEnd);
+            rows++;
+        }
+        return rows;
+    }
+
+    private void formatValue(VoltType type, ByteBuffer buf, StringBuilder out) {
+        switch (type) {
+        case TINYINT:
+            out.append(buf.get());
+            break;
+        case SMALLINT:
+            out.append(buf.getShort());
+            break;
+        case INTEGER:
+            out.append(buf.getInt());
+            break;
+        case BIGINT:
+            out.append(buf.getLong());
+            break;
+        case FLOAT:
+            out.append(buf.getDouble());
+            break;
+        case TIMESTAMP:
+            appendTimestamp(buf.getLong(), out);
+            break;
+        case STRING: {
+            byte[] bytes = new byte[buf.getInt()];
+            buf.get(bytes);
+            appendEscaped(new String(bytes, StandardCharsets.UTF_8), out);
+            break;
+        }
+        case VARBINARY: {
+            byte[] bytes = new byte[buf.getInt()];
+            buf.get(bytes);
+            out.append(Encoder.hexEncode(bytes));
+            break;
+        }
+        case DECIMAL: {
+            // Scale, length and the unscaled value in big endian order
+            int scale = buf.get();
+            byte[] unscaled = new byte[buf.get()];
+            buf.get(unscaled);
+            out.append(new BigDecimal(new BigInteger(unscaled), scale).toPlainString());
+            break;
+        }
+        case GEOGRAPHY_POINT:
+            appendEscaped(GeographyPointValue.unflattenFromBuffer(buf).toWKT(), out);
+            break;
+        case GEOGRAPHY: {
+            int length = buf.getInt();
+            int end = buf.position() + length;
+            appendEscaped(GeographyValue.unflattenFromBuffer(buf).toWKT(), out);
+            buf.position(end);
+            break;
+        }
+        default:
+            throw new IllegalArgumentException("Unsupported export column type " + type);
+        }
+    }
+
+    // Same format as TimestampType.toString(), without a formatter per value
+    private void appendTimestamp(long micros, StringBuilder out) {
+        long millis = micros / 1000;
+        int usecs = (int) (micros % 1000);
+        if (usecs < 0) {
+            millis--;
+            usecs += 1000;
+        }
+        m_date.setTime(millis);
+        out.append(m_dateFormat.format(m_date));
+        if (usecs < 100) {
+            out.append(usecs < 10 ? "00" : "0");
+        }
+        out.append(usecs);
+    }
+
+    private void appendEscaped(String value, StringBuilder out) {
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == m_delimiter || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            out.append(value);
+            return;
+        }
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                out.append('"');
+            }
+            out.append(c);
+        }
+        out.append('"');
+    }
+}
@@ -0,0 +1,454 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.export.processors;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.jpountz.lz4.LZ4BlockOutputStream;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.xxhash.XXHashFactory;
+
+import org.voltcore.logging.VoltLogger;
+import org.voltcore.utils.CoreUtils;
+import org.voltcore.utils.DBBPool.BBContainer;
+import org.xerial.snappy.SnappyFramedOutputStream;
+
+/**
+ * The bundled file export target. Each exported table gets its own file,
+ * shared by all of the table's partitions on this host. The file is named
+ * active-NONCE-TABLE-TIMESTAMP.EXT while it is written and is renamed without
+ * the active- prefix when it is rolled, after the configured period or once
+ * it reaches the configured size.
+ *
+ * Blocks are formatted and compressed by the caller, on the processor's pool.
+ * Each table's writer thread only appends the bytes. A block's container is
+ * discarded, acking its data, once the bytes have been flushed and synced to
+ * the file. The flush is done when the writer has no more queued blocks, so a
+ * busy table gets large writes and acks blocks in batches, one fsync each.
+ *
+ * Properties:
+ *   nonce        file name prefix, required
+ *   outdir       directory for the files, default is the working directory
+ *   type         csv, tsv or binary. binary writes the rows in the format the
+ *                EE exports them, see ExportRowDecoder
+ *   skipinternals  leave out the six export metadata columns, text types only
+ *   period       minutes before a file is rolled, default 60
+ *   maxsize      megabytes after which a file is rolled, 0 (the default) for no limit
+ *   compression  none, snappy (framed format) or lz4 (LZ4BlockInputStream format)
+ */
+public class FileExporter {
+
+    private static final String ACTIVE_PREFIX = "active-";
+    private static final int WRITE_BUFFER_SIZE = 256 * 1024;
+    // Flush and ack even if blocks keep arriving
+    private static final int MAX_UNFLUSHED_BLOCKS = 64;
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 60;
+
+    enum Format {
+        CSV(".csv", ','), TSV(".tsv", '\t'), BINARY(".bin", '\0');
+
+        final String m_extension;
+        final char m_delimiter;
+
+        Format(String extension, char delimiter) {
+            m_extension = extension;
+            m_delimiter = delimiter;
+        }
+    }
+
+    enum Compression {
+        NONE("") {
+            @Override
+            byte[] compress(byte[] data) {
+                return data;
+            }
+        },
+        /*
+         * Every block is its own framed stream. The framing format allows
+         * streams to be concatenated.
+         */
+        SNAPPY(".snappy") {
+            @Override
+            byte[] compress(byte[] data) throws IOException {
+                ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 64);
+                SnappyFramedOutputStream snappy = new SnappyFramedOutputStream(out);
+                snappy.write(data);
+                snappy.close();
+                return out.toByteArray();
+            }
+        },
+        /*
+         * Every block is compressed into LZ4 blocks without the end of stream
+         * marker, which is written once when the file is rolled.
+         */
+        LZ4(".lz4") {
+            // LZ4BlockOutputStream's default checksum seed
+            private static final int LZ4_CHECKSUM_SEED = 0x9747b28c;
+
+            @Override
+            byte[] compress(byte[] data) throws IOException {
+                ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 64);
+                LZ4BlockOutputStream lz4 = new LZ4BlockOutputStream(
+                        out, 1 << 16,
+                        LZ4Factory.fastestInstance().fastCompressor(),
+                        XXHashFactory.fastestInstance().newStreamingHash32(LZ4_CHECKSUM_SEED).asChecksum(),
+                        true);
+                lz4.write(data);
+                lz4.flush();
+                return out.toByteArray();
+            }
+
+            @Override
+            byte[] trailer() throws IOException {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                new LZ4BlockOutputStream(out).finish();
+                return out.toByteArray();
+            }
+        };
+
+        final String m_extension;
+
+        Compression(String extension) {
+            m_extension = extension;
+        }
+
+        abstract byte[] compress(byte[] data) throws IOException;
+
+        byte[] trailer() throws IOException {
+            return null;
+        }
+    }
+
+    private final VoltLogger m_logger;
+    final String m_nonce;
+    final File m_outdir;
+    final Format m_format;
+    final Compression m_compression;
+    final boolean m_skipInternals;
+    final long m_periodMillis;
+    final long m_maxBytes;
+
+    private final Map<String, TableFile> m_files = new HashMap<String, TableFile>();
+    private ScheduledThreadPoolExecutor m_roller;
+    private boolean m_shutdown = false;
+    private volatile boolean m_failed = false;
+
+    /**
+     * @throws IllegalArgumentException if the properties are invalid
+     */
+    public FileExporter(Properties props, VoltLogger logger) {
+        m_logger = logger;
+        m_nonce = props.getProperty("nonce", "").trim();
+        if (m_nonce.isEmpty()) {
+            throw new IllegalArgumentException("File export requires a nonce");
+        }
+        m_outdir = new File(props.getProperty("outdir", ".").trim());
+        m_format = parseEnum(Format.class, props.getProperty("type", "csv"), "type");
+        m_compression = parseEnum(Compression.class, props.getProperty("compression", "none"), "compression");
+        m_skipInternals = Boolean.parseBoolean(props.getProperty("skipinternals", "false").trim());
+        m_periodMillis = TimeUnit.MINUTES.toMillis(parseLong(props, "period", 60));
+        if (m_periodMillis <= 0) {
+            throw new IllegalArgumentException("File export period must be at least one minute");
+        }
+        m_maxBytes = parseLong(props, "maxsize", 0) * 1024 * 1024;
+    }
+
+    private static <T extends Enum<T>> T parseEnum(Class<T> type, String value, String property) {
+        try {
+            return Enum.valueOf(type, value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid file export " + property + ": " + value);
+        }
+    }
+
+    private static long parseLong(Properties props, String property, long defaultValue) {
+        String value = props.getProperty(property);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid file export " + property + ": " + value);
+        }
+    }
+
+    public synchronized void start() throws IOException {
+        if (!m_outdir.isDirectory() && !m_outdir.mkdirs()) {
+            throw new IOException("Unable to create file export directory " + m_outdir);
+        }
+        m_roller = CoreUtils.getScheduledThreadPoolExecutor("File Export Roller " + m_nonce, 1, CoreUtils.SMALL_STACK_SIZE);
+        m_roller.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                rollExpiredFiles();
+            }
+        }, 1, 1, TimeUnit.SECONDS);
+    }
+
+    /**
+     * A write failed, the data sources stop polling so nothing more is acked.
+     */
+    public boolean isFailed() {
+        return m_failed;
+    }
+
+    /**
+     * @return a decoder for the rows of a table, or null for the binary type.
+     * A decoder must only be used by one thread at a time.
+     */
+    public ExportRowDecoder createDecoder(List<Integer> columnTypes) {
+        if (m_format == Format.BINARY) {
+            return null;
+        }
+        return new ExportRowDecoder(columnTypes, m_format.m_delimiter, m_skipInternals);
+    }
+
+    /**
+     * Format and compress the rows of a block, ready to be written.
+     * @param decoder the table's decoder from {@link #createDecoder(List)}
+     */
+    public byte[] encode(ExportRowDecoder decoder, ByteBuffer block) throws IOException {
+        byte[] data;
+        if (decoder == null) {
+            data = new byte[block.remaining()];
+            block.duplicate().get(data);
+        } else {
+            StringBuilder text = new StringBuilder(block.remaining() * 2);
+            decoder.formatBlock(block, text);
+            data = text.toString().getBytes(StandardCharsets.UTF_8);
+        }
+        return m_compression.compress(data);
+    }
+
+    /**
+     * Queue encoded bytes to be appended to the table's file. Once the
+     * exporter is shut down the bytes are dropped and cont is left unacked,
+     * the block is exported again after a restart.
+     * @param cont discarded once the bytes have been flushed
+     * @param onWritten run after cont is discarded
+     */
+    public void write(String tableName, byte[] data, BBContainer cont, Runnable onWritten) {
+        TableFile file;
+        synchronized (this) {
+            if (m_shutdown) {
+                return;
+            }
+            file = m_files.get(tableName);
+            if (file == null) {
+                file = new TableFile(tableName);
+                m_files.put(tableName, file);
+            }
+        }
+        file.queue(data, cont, onWritten);
+    }
+
+    private synchronized void rollExpiredFiles() {
+        for (TableFile file : m_files.values()) {
+            file.rollIfExpired();
+        }
+    }
+
+    /**
+     * Write out everything queued and roll all the files.
+     */
+    public void shutdown() {
+        List<TableFile> files;
+        synchronized (this) {
+            m_shutdown = true;
+            if (m_roller != null) {
+                m_roller.shutdownNow();
+            }
+            files = new ArrayList<TableFile>(m_files.values());
+            m_files.clear();
+        }
+        for (TableFile file : files) {
+            file.shutdown();
+        }
+    }
+
+    private class TableFile {
+        private final String m_tableName;
+        private final ExecutorService m_writer;
+        private final AtomicInteger m_queued = new AtomicInteger();
+
+        // Only used on the writer thread
+        private final List<BBContainer> m_unflushed = new ArrayList<BBContainer>();
+        private final List<Runnable> m_unflushedCallbacks = new ArrayList<Runnable>();
+        private File m_activeFile;
+        private File m_finalFile;
+        private FileOutputStream m_fileOut;
+        private OutputStream m_out;
+        private long m_bytes;
+        private long m_openedAt;
+
+        TableFile(String tableName) {
+            m_tableName = tableName;
+            m_writer = CoreUtils.getSingleThreadExecutor("File Export " + m_nonce + " " + tableName);
+        }
+
+        void queue(final byte[] data, final BBContainer cont, final Runnable onWritten) {
+            m_queued.incrementAndGet();
+            m_writer.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (m_failed) {
+                            return;
+                        }
+                        if (m_out == null) {
+                            open();
+                        }
+                        m_out.write(data);
+                        m_bytes += data.length;
+                        m_unflushed.add(cont);
+                        m_unflushedCallbacks.add(onWritten);
+                        if (m_queued.get() == 1 || m_unflushed.size() >= MAX_UNFLUSHED_BLOCKS) {
+                            flush();
+                        }
+                        if (m_maxBytes > 0 && m_bytes >= m_maxBytes) {
+                            roll();
+                        }
+                    } catch (IOException e) {
+                        fail(e);
+                    } finally {
+                        m_queued.decrementAndGet();
+                    }
+                }
+            });
+        }
+
+        void rollIfExpired() {
+            m_writer.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (m_out != null && !m_failed && System.currentTimeMillis() - m_openedAt >= m_periodMillis) {
+                        try {
+                            roll();
+                        } catch (IOException e) {
+                            fail(e);
+                        }
+                    }
+                }
+            });
+        }
+
+        void shutdown() {
+            m_writer.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (m_out != null && !m_failed) {
+                        try {
+                            roll();
+                        } catch (IOException e) {
+                            fail(e);
+                        }
+                    }
+                }
+            });
+            m_writer.shutdown();
+            try {
+                if (!m_writer.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                    m_logger.warn("File export for table " + m_tableName + " did not finish writing within " +
+                                  SHUTDOWN_TIMEOUT_SECONDS + " seconds, the unacked data is exported again on restart");
+                    m_writer.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                m_writer.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void open() throws IOException {
+            String timestamp = new SimpleDateFormat("yyyyMMddHHmmss").format(new Date());
+            String name = m_nonce + "-" + m_tableName + "-" + timestamp;
+            String suffix = m_format.m_extension + m_compression.m_extension;
+            m_finalFile = new File(m_outdir, name + suffix);
+            // A size based roll can open several files in the same second
+            for (int i = 1; m_finalFile.exists() || new File(m_outdir, ACTIVE_PREFIX + m_finalFile.getName()).exists(); i++) {
+                m_finalFile = new File(m_outdir, name + "-" + i + suffix);
+            }
+            m_activeFile = new File(m_outdir, ACTIVE_PREFIX + m_finalFile.getName());
+            m_fileOut = new FileOutputStream(m_activeFile);
+            m_out = new BufferedOutputStream(m_fileOut, WRITE_BUFFER_SIZE);
+            m_bytes = 0;
+            m_openedAt = System.currentTimeMillis();
+        }
+
+        private void flush() throws IOException {
+            m_out.flush();
+            // Acked data is gone from the export overflow, it has to be on disk first
+            m_fileOut.getChannel().force(false);
+            for (BBContainer cont : m_unflushed) {
+                cont.discard();
+            }
+            m_unflushed.clear();
+            for (Runnable r : m_unflushedCallbacks) {
+                if (r != null) {
+                    r.run();
+                }
+            }
+            m_unflushedCallbacks.clear();
+        }
+
+        private void roll() throws IOException {
+            byte[] trailer = m_compression.trailer();
+            if (trailer != null) {
+                m_out.write(trailer);
+            }
+            flush();
+            m_out.close();
+            m_out = null;
+            m_fileOut = null;
+            if (!m_activeFile.renameTo(m_finalFile)) {
+                throw new IOException("Unable to rename " + m_activeFile + " to " + m_finalFile);
+            }
+        }
+
+        private void fail(IOException e) {
+            m_logger.error("File export to " + m_outdir + " failed for table " + m_tableName +
+                           ", export to the target is stopped and resumes from the last acked data on restart", e);
+            m_failed = true;
+            if (m_out != null) {
+                try {
+                    m_out.close();
+                } catch (IOException ignore) {}
+                m_out = null;
+                m_fileOut = null;
+            }
+        }
+    }
+}
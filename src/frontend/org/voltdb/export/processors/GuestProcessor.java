@@ -0,0 +1,302 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.export.processors;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.voltcore.logging.VoltLogger;
+import org.voltcore.utils.CoreUtils;
+import org.voltcore.utils.DBBPool.BBContainer;
+import org.voltcore.utils.Pair;
+import org.voltdb.VoltDB;
+import org.voltdb.export.ExportDataProcessor;
+import org.voltdb.export.ExportDataSource;
+import org.voltdb.export.ExportGeneration;
+
+import com.google_voltpatches.common.util.concurrent.ListenableFuture;
+import com.google_voltpatches.common.util.concurrent.ListeningExecutorService;
+
+/**
+ * The processor ExportManager runs on the server. It exports the tables of
+ * the file targets with the bundled FileExporter. Other target types need
+ * their connector, which is not part of this build, and are refused by the
+ * deployment check.
+ *
+ * A data source is polled once this host becomes its master. Its blocks are
+ * decoded and compressed on a shared pool while the next block is polled, and
+ * are acked by the exporter after they are written. At most
+ * MAX_BLOCKS_IN_FLIGHT blocks per source wait to be written. A block that
+ * can't be decoded stops the source's polling without being acked, so the
+ * source resumes from it on restart.
+ */
+public class GuestProcessor implements ExportDataProcessor {
+
+    public static final String FILE_CLIENT_CLASS = "org.voltdb.exportclient.ExportToFileClient";
+
+    static final int MAX_BLOCKS_IN_FLIGHT = Integer.getInteger("EXPORT_MAX_BLOCKS_IN_FLIGHT", 4);
+    private static final long POLL_RETRY_MILLIS = 1000;
+    private static final int ENCODER_THREADS =
+            Integer.getInteger("EXPORT_ENCODER_THREADS", Math.max(1, Math.min(4, CoreUtils.availableProcessors() / 2)));
+
+    private VoltLogger m_logger;
+    private ExportGeneration m_generation;
+    private ExportGeneration m_registeredGeneration;
+    private Map<String, Pair<Properties, Set<String>>> m_config;
+
+    private final Map<String, FileExporter> m_exporters = new HashMap<String, FileExporter>();
+    private ListeningExecutorService m_encoders;
+    private final List<SourcePoller> m_pendingPollers = new ArrayList<SourcePoller>();
+    private boolean m_pollingStarted = false;
+    private volatile boolean m_shutdown = false;
+
+    @Override
+    public void addLogger(VoltLogger logger) {
+        m_logger = logger;
+    }
+
+    @Override
+    public synchronized void setExportGeneration(ExportGeneration generation) {
+        m_generation = generation;
+    }
+
+    @Override
+    public synchronized ExportGeneration getExportGeneration() {
+        return m_generation;
+    }
+
+    @Override
+    public void setProcessorConfig(Map<String, Pair<Properties, Set<String>>> config) {
+        m_config = config;
+    }
+
+    @Override
+    public void checkProcessorConfig(Properties config) {
+        String connector = config.getProperty(EXPORT_TO_TYPE);
+        if (!FILE_CLIENT_CLASS.equals(connector)) {
+            throw new IllegalArgumentException("Export connector " + connector +
+                    " is not available, only file export is bundled with this build");
+        }
+        new FileExporter(config, m_logger);
+    }
+
+    @Override
+    public synchronized void readyForData(boolean startup) {
+        m_encoders = CoreUtils.getListeningExecutorService("Export Encoder", ENCODER_THREADS);
+        for (Map.Entry<String, Pair<Properties, Set<String>>> e : m_config.entrySet()) {
+            Properties props = e.getValue().getFirst();
+            String connector = props.getProperty(EXPORT_TO_TYPE);
+            if (!FILE_CLIENT_CLASS.equals(connector)) {
+                m_logger.error("Export connector " + connector + " for target " + e.getKey() +
+                               " is not available, the target will not be exported");
+                continue;
+            }
+            try {
+                FileExporter exporter = new FileExporter(props, m_logger);
+                exporter.start();
+                m_exporters.put(e.getKey(), exporter);
+            } catch (IllegalArgumentException | IOException ex) {
+                m_logger.error("Unable to start file export for target " + e.getKey(), ex);
+            }
+        }
+
+        registerSources();
+        if (!startup) {
+            startPolling();
+        }
+    }
+
+    @Override
+    public synchronized void startPolling() {
+        if (m_registeredGeneration != m_generation) {
+            registerSources();
+        }
+        m_pollingStarted = true;
+        for (SourcePoller poller : m_pendingPollers) {
+            poller.poll();
+        }
+        m_pendingPollers.clear();
+    }
+
+    private void registerSources() {
+        m_registeredGeneration = m_generation;
+        if (m_generation == null) {
+            return;
+        }
+        for (Map<String, ExportDataSource> sources : m_generation.getDataSourceByPartition().values()) {
+            for (final ExportDataSource source : sources.values()) {
+                final FileExporter exporter = getExporter(source.getTableName());
+                if (exporter == null) {
+                    source.setOnMastership(new Runnable() {
+                        @Override
+                        public void run() {
+                            m_logger.info("No export target is running for table " + source.getTableName() +
+                                          ", partition " + source.getPartitionId() + " is not exported");
+                        }
+                    });
+                    continue;
+                }
+                final SourcePoller poller = new SourcePoller(source, exporter);
+                source.setOnMastership(new Runnable() {
+                    @Override
+                    public void run() {
+                        startPoller(poller);
+                    }
+                });
+            }
+        }
+    }
+
+    private FileExporter getExporter(String tableName) {
+        for (Map.Entry<String, Pair<Properties, Set<String>>> e : m_config.entrySet()) {
+            for (String table : e.getValue().getSecond()) {
+                if (table.equalsIgnoreCase(tableName)) {
+                    return m_exporters.get(e.getKey());
+                }
+            }
+        }
+        return null;
+    }
+
+    private synchronized void startPoller(SourcePoller poller) {
+        if (m_pollingStarted) {
+            poller.poll();
+        } else {
+            m_pendingPollers.add(poller);
+        }
+    }
+
+    @Override
+    public void queueWork(Runnable r) {
+        m_encoders.execute(r);
+    }
+
+    @Override
+    public void shutdown() {
+        m_shutdown = true;
+        List<FileExporter> exporters;
+        synchronized (this) {
+            exporters = new ArrayList<FileExporter>(m_exporters.values());
+            m_exporters.clear();
+            m_pendingPollers.clear();
+        }
+        for (FileExporter exporter : exporters) {
+            exporter.shutdown();
+        }
+        if (m_encoders != null) {
+            m_encoders.shutdown();
+        }
+    }
+
+    /**
+     * Polls one data source. A poll is issued as soon as the previous block
+     * is handed to the exporter, unless too many blocks wait to be written.
+     */
+    private class SourcePoller {
+        private final ExportDataSource m_source;
+        private final FileExporter m_exporter;
+        private final ExportRowDecoder m_decoder;
+        private boolean m_polling = false;
+        private boolean m_stopped = false;
+        private int m_inFlight = 0;
+
+        private final Runnable m_onWritten = new Runnable() {
+            @Override
+            public void run() {
+                synchronized (SourcePoller.this) {
+                    m_inFlight--;
+                }
+                poll();
+            }
+        };
+
+        SourcePoller(ExportDataSource source, FileExporter exporter) {
+            m_source = source;
+            m_exporter = exporter;
+            m_decoder = exporter.createDecoder(source.m_columnTypes);
+        }
+
+        synchronized void poll() {
+            if (m_shutdown || m_stopped || m_exporter.isFailed() || m_polling || m_inFlight >= MAX_BLOCKS_IN_FLIGHT) {
+                return;
+            }
+            m_polling = true;
+            final ListenableFuture<BBContainer> fut = m_source.poll();
+            fut.addListener(new Runnable() {
+                @Override
+                public void run() {
+                    handleBlock(fut);
+                }
+            }, m_encoders);
+        }
+
+        private void handleBlock(ListenableFuture<BBContainer> fut) {
+            BBContainer cont;
+            try {
+                cont = fut.get();
+            } catch (Exception e) {
+                m_logger.error("Error polling export data for table " + m_source.getTableName() +
+                               " partition " + m_source.getPartitionId() + ", retrying", e);
+                pollDone();
+                VoltDB.instance().scheduleWork(new Runnable() {
+                    @Override
+                    public void run() {
+                        poll();
+                    }
+                }, POLL_RETRY_MILLIS, 0, TimeUnit.MILLISECONDS);
+                return;
+            }
+            if (cont == null) {
+                // End of stream, the generation has drained this source
+                pollDone();
+                return;
+            }
+
+            byte[] data;
+            try {
+                data = m_exporter.encode(m_decoder, cont.b());
+            } catch (Exception e) {
+                m_logger.error("Error decoding export data for table " + m_source.getTableName() +
+                               " partition " + m_source.getPartitionId() + ", export of the partition is stopped" +
+                               " and resumes from the last acked data on restart", e);
+                synchronized (this) {
+                    m_stopped = true;
+                    m_polling = false;
+                }
+                return;
+            }
+
+            synchronized (this) {
+                m_inFlight++;
+                m_polling = false;
+            }
+            m_exporter.write(m_source.getTableName(), data, cont, m_onWritten);
+            poll();
+        }
+
+        private synchronized void pollDone() {
+            m_polling = false;
+        }
+    }
+}
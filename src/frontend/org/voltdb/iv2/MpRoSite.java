@@ -54,6 +54,7 @@ import org.voltdb.dtxn.SiteTracker;
 import org.voltdb.dtxn.TransactionState;
 import org.voltdb.dtxn.UndoAction;
 import org.voltdb.exceptions.EEException;
+import org.voltdb.jni.ResultBufferPool;
 
 /**
  * An implementation of Site which provides only the functionality
@@ -598,6 +599,11 @@ public class MpRoSite implements Runnable, SiteProcedureConnection
         // don't need to do anything here I think?
     }
 
+    @Override
+    public ResultBufferPool getResultBufferPool() {
+        return null;
+    }
+
     @Override
     public void notifyOfSnapshotNonce(String nonce, long snapshotSpHandle) {
         // TODO Auto-generated method stub
@@ -105,6 +105,10 @@ class MpRoSitePool {
     // Active sites, hashed by the txnID they're working on
     private Map<Long, MpRoSiteContext> m_busySites = new HashMap<Long, MpRoSiteContext>();
 
+    // Concurrency statistics, see MpRoSitePoolStats
+    private int m_peakBusySites = 0;
+    private long m_completedWork = 0;
+
     // Stuff we need to construct new MpRoSites
     private final long m_siteId;
     private final BackendTarget m_backend;
@@ -140,8 +144,12 @@ class MpRoSitePool {
         m_poolSize = poolSize;
         tmLog.info("Setting maximum size of MPI read pool to: " + m_poolSize);
 
+        // Starting more sites up front saves a burst of reads from
+        // waiting on site construction
+        int initialSize = Math.min(Integer.getInteger("mpiReadPoolInitialSize", INITIAL_POOL_SIZE), m_poolSize);
+
         // Construct the initial pool
-        for (int i = 0; i < INITIAL_POOL_SIZE; i++) {
+        for (int i = 0; i < initialSize; i++) {
             m_idleSites.push(new MpRoSiteContext(m_siteId,
                         m_backend,
                         m_catalogContext,
@@ -227,6 +235,7 @@ class MpRoSitePool {
             }
             site = m_idleSites.pop();
             m_busySites.put(txnId, site);
+            m_peakBusySites = Math.max(m_peakBusySites, m_busySites.size());
         }
         site.offer(task);
         return true;
@@ -241,6 +250,7 @@ class MpRoSitePool {
         if (site == null) {
             throw new RuntimeException("No busy site for txnID: " + txnId + " found, shouldn't happen.");
         }
+        m_completedWork++;
         // check the catalog versions, only push back onto idle if the catalog hasn't changed
         // otherwise, just let it get garbage collected and let doWork() construct new ones for the
         // pool with the updated catalog.
@@ -253,6 +263,31 @@ class MpRoSitePool {
         }
     }
 
+    int getMaxPoolSize()
+    {
+        return m_poolSize;
+    }
+
+    int getBusySiteCount()
+    {
+        return m_busySites.size();
+    }
+
+    int getIdleSiteCount()
+    {
+        return m_idleSites.size();
+    }
+
+    int getPeakBusySiteCount()
+    {
+        return m_peakBusySites;
+    }
+
+    long getCompletedWorkCount()
+    {
+        return m_completedWork;
+    }
+
     void shutdown()
     {
         // Shutdown all, then join all, hopefully save some shutdown time for tests.
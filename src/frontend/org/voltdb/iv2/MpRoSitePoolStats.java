@@ -0,0 +1,94 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.iv2;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+
+import org.voltdb.SiteStatsSource;
+import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.VoltType;
+
+/**
+ * Concurrency and queue depth of the MPI read-only site pool, invoked as
+ * @Statistics MPREADPOOL. Only the host running the MPI reports any activity.
+ */
+public class MpRoSitePoolStats extends SiteStatsSource {
+
+    public static final String POOL_SIZE = "POOL_SIZE";
+    public static final String ACTIVE_SITES = "ACTIVE_SITES";
+    public static final String IDLE_SITES = "IDLE_SITES";
+    public static final String PEAK_ACTIVE_SITES = "PEAK_ACTIVE_SITES";
+    public static final String QUEUED_READS = "QUEUED_READS";
+    public static final String QUEUED_WRITES = "QUEUED_WRITES";
+    public static final String COMPLETED_READS = "COMPLETED_READS";
+    public static final String REJECTED_READS = "REJECTED_READS";
+
+    private final MpTransactionTaskQueue m_queue;
+
+    public MpRoSitePoolStats(long siteId, MpTransactionTaskQueue queue) {
+        super(siteId, false);
+        m_queue = queue;
+    }
+
+    @Override
+    protected void populateColumnSchema(ArrayList<ColumnInfo> columns) {
+        super.populateColumnSchema(columns);
+        columns.add(new ColumnInfo(POOL_SIZE, VoltType.INTEGER));
+        columns.add(new ColumnInfo(ACTIVE_SITES, VoltType.INTEGER));
+        columns.add(new ColumnInfo(IDLE_SITES, VoltType.INTEGER));
+        columns.add(new ColumnInfo(PEAK_ACTIVE_SITES, VoltType.INTEGER));
+        columns.add(new ColumnInfo(QUEUED_READS, VoltType.INTEGER));
+        columns.add(new ColumnInfo(QUEUED_WRITES, VoltType.INTEGER));
+        columns.add(new ColumnInfo(COMPLETED_READS, VoltType.BIGINT));
+        columns.add(new ColumnInfo(REJECTED_READS, VoltType.BIGINT));
+    }
+
+    @Override
+    protected void updateStatsRow(Object rowKey, Object[] rowValues) {
+        m_queue.populateReadPoolStats(columnNameToIndex, rowValues);
+        super.updateStatsRow(rowKey, rowValues);
+    }
+
+    @Override
+    protected Iterator<Object> getStatsRowKeyIterator(boolean interval) {
+        return new Iterator<Object>() {
+            boolean returnRow = true;
+
+            @Override
+            public boolean hasNext() {
+                return returnRow;
+            }
+
+            @Override
+            public Object next() {
+                if (returnRow) {
+                    returnRow = false;
+                    return new Object();
+                } else {
+                    return null;
+                }
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
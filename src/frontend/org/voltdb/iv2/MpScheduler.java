@@ -35,11 +35,13 @@ import org.voltcore.messaging.TransactionInfoBaseMessage;
 import org.voltcore.messaging.VoltMessage;
 import org.voltdb.CatalogContext;
 import org.voltdb.CatalogSpecificPlanner;
+import org.voltdb.ClientResponseImpl;
 import org.voltdb.CommandLog;
 import org.voltdb.SystemProcedureCatalog;
 import org.voltdb.SystemProcedureCatalog.Config;
 import org.voltdb.VoltDB;
 import org.voltdb.VoltTable;
+import org.voltdb.client.ClientResponse;
 import org.voltdb.dtxn.TransactionState;
 import org.voltdb.messaging.CompleteTransactionMessage;
 import org.voltdb.messaging.FragmentResponseMessage;
@@ -95,6 +97,11 @@ public class MpScheduler extends Scheduler
         m_pendingTasks.setMpRoSitePool(sitePool);
     }
 
+    MpRoSitePoolStats createMpRoSitePoolStats(long siteId)
+    {
+        return new MpRoSitePoolStats(siteId, m_pendingTasks);
+    }
+
     void updateCatalog(String diffCmds, CatalogContext context, CatalogSpecificPlanner csp)
     {
         m_pendingTasks.updateCatalog(diffCmds, context, csp);
@@ -223,6 +230,20 @@ public class MpScheduler extends Scheduler
     public void handleIv2InitiateTaskMessage(Iv2InitiateTaskMessage message)
     {
         final String procedureName = message.getStoredProcedureName();
+        final Config sysprocConfig = SystemProcedureCatalog.listing.get(procedureName);
+
+        // Turn away reads once too many are waiting for the read pool, every-site
+        // system procedures don't run in the pool and replay can't be refused
+        if (message.isReadOnly() && !message.isForReplay() &&
+                (sysprocConfig == null || !sysprocConfig.getEverysite()) &&
+                !m_pendingTasks.admitRead()) {
+            final InitiateResponseMessage response = new InitiateResponseMessage(message);
+            response.setResults(new ClientResponseImpl(ClientResponse.SERVER_UNAVAILABLE,
+                        new VoltTable[0],
+                        "Too many multi-partition read-only transactions are queued, try again later."));
+            m_mailbox.send(response.getInitiatorHSId(), response);
+            return;
+        }
 
         /*
          * If this is CL replay, use the txnid from the CL and use it to update the current txnid
@@ -252,7 +273,6 @@ public class MpScheduler extends Scheduler
         Iv2Trace.logIv2InitiateTaskMessage(message, m_mailbox.getHSId(), mpTxnId, Long.MIN_VALUE);
 
         // Handle every-site system procedures (at the MPI)
-        final Config sysprocConfig = SystemProcedureCatalog.listing.get(procedureName);
         if (sysprocConfig != null &&  sysprocConfig.getEverysite()) {
             // Send an SP initiate task to all remote sites
             final Long localId = m_mailbox.getHSId();
@@ -316,7 +336,7 @@ public class MpScheduler extends Scheduler
                     m_buddyHSIds.get(m_nextBuddy), false);
         }
 
-        m_nextBuddy = (m_nextBuddy++) % m_buddyHSIds.size();
+        m_nextBuddy = (m_nextBuddy + 1) % m_buddyHSIds.size();
         m_outstandingTxns.put(task.m_txnState.txnId, task.m_txnState);
         m_pendingTasks.offer(task);
     }
@@ -403,7 +423,7 @@ public class MpScheduler extends Scheduler
                     m_buddyHSIds.get(m_nextBuddy), true);
         }
 
-        m_nextBuddy = (m_nextBuddy++) % m_buddyHSIds.size();
+        m_nextBuddy = (m_nextBuddy + 1) % m_buddyHSIds.size();
         m_outstandingTxns.put(task.m_txnState.txnId, task.m_txnState);
         m_pendingTasks.offer(task);
     }
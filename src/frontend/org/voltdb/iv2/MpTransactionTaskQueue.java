@@ -46,6 +46,12 @@ public class MpTransactionTaskQueue extends TransactionTaskQueue
     private final Map<Long, TransactionTask> m_currentWrites = new HashMap<Long, TransactionTask>();
     private final Map<Long, TransactionTask> m_currentReads = new HashMap<Long, TransactionTask>();
     private Deque<TransactionTask> m_backlog = new ArrayDeque<TransactionTask>();
+    // Number of read-only tasks in the backlog
+    private int m_queuedReads = 0;
+
+    // Maximum number of read-only tasks allowed in the backlog, 0 for no limit
+    private final int m_maxQueuedReads = Integer.getInteger("mpiReadQueueLimit", 0);
+    private long m_rejectedReads = 0;
 
     private MpRoSitePool m_sitePool = null;
 
@@ -81,10 +87,28 @@ public class MpTransactionTaskQueue extends TransactionTaskQueue
     {
         Iv2Trace.logTransactionTaskQueueOffer(task);
         m_backlog.addLast(task);
+        if (task.getTransactionState().isReadOnly()) {
+            m_queuedReads++;
+        }
         taskQueueOffer();
         return true;
     }
 
+    /**
+     * Decide whether a new read-only transaction may be queued. Once the backlog
+     * holds mpiReadQueueLimit reads, new reads are turned away so that clients back
+     * off instead of piling up behind a saturated read pool.
+     * @return true if the read can be initiated
+     */
+    synchronized boolean admitRead()
+    {
+        if (m_maxQueuedReads > 0 && m_queuedReads >= m_maxQueuedReads) {
+            m_rejectedReads++;
+            return false;
+        }
+        return true;
+    }
+
     // repair is used by MPI repair to inject a repair task into the
     // SiteTaskerQueue.  Before it does this, it unblocks the MP transaction
     // that may be running in the Site thread and causes it to rollback by
@@ -193,6 +217,7 @@ public class MpTransactionTaskQueue extends TransactionTaskQueue
                 {
                     task = m_backlog.pollFirst();
                     assert(task.getTransactionState().isReadOnly());
+                    m_queuedReads--;
                     m_currentReads.put(task.getTxnId(), task);
                     taskQueueOffer(task);
                     retval = true;
@@ -266,6 +291,18 @@ public class MpTransactionTaskQueue extends TransactionTaskQueue
         return m_backlog.size();
     }
 
+    synchronized void populateReadPoolStats(Map<String, Integer> columnNameToIndex, Object[] rowValues)
+    {
+        rowValues[columnNameToIndex.get(MpRoSitePoolStats.POOL_SIZE)] = m_sitePool.getMaxPoolSize();
+        rowValues[columnNameToIndex.get(MpRoSitePoolStats.ACTIVE_SITES)] = m_sitePool.getBusySiteCount();
+        rowValues[columnNameToIndex.get(MpRoSitePoolStats.IDLE_SITES)] = m_sitePool.getIdleSiteCount();
+        rowValues[columnNameToIndex.get(MpRoSitePoolStats.PEAK_ACTIVE_SITES)] = m_sitePool.getPeakBusySiteCount();
+        rowValues[columnNameToIndex.get(MpRoSitePoolStats.QUEUED_READS)] = m_queuedReads;
+        rowValues[columnNameToIndex.get(MpRoSitePoolStats.QUEUED_WRITES)] = m_backlog.size() - m_queuedReads;
+        rowValues[columnNameToIndex.get(MpRoSitePoolStats.COMPLETED_READS)] = m_sitePool.getCompletedWorkCount();
+        rowValues[columnNameToIndex.get(MpRoSitePoolStats.REJECTED_READS)] = m_rejectedReads;
+    }
+
     @Override
     public String toString()
     {
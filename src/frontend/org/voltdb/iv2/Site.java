@@ -17,9 +17,11 @@
 
 package org.voltdb.iv2;
 
+import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.Method;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Deque;
 import java.util.HashMap;
@@ -44,6 +46,7 @@ import org.voltdb.CatalogSpecificPlanner;
 import org.voltdb.DRConsumerDrIdTracker;
 import org.voltdb.DRLogSegmentId;
 import org.voltdb.DependencyPair;
+import org.voltdb.ExecutionStats;
 import org.voltdb.ExtensibleSnapshotDigestData;
 import org.voltdb.HsqlBackend;
 import org.voltdb.IndexStats;
@@ -80,6 +83,8 @@ import org.voltdb.catalog.Database;
 import org.voltdb.catalog.Deployment;
 import org.voltdb.catalog.Procedure;
 import org.voltdb.catalog.Table;
+import org.voltdb.compiler.LiveDatabaseStatistics;
+import org.voltdb.common.Constants;
 import org.voltdb.dtxn.SiteTracker;
 import org.voltdb.dtxn.TransactionState;
 import org.voltdb.dtxn.UndoAction;
@@ -90,6 +95,7 @@ import org.voltdb.jni.ExecutionEngine.TaskType;
 import org.voltdb.jni.ExecutionEngineIPC;
 import org.voltdb.jni.ExecutionEngineJNI;
 import org.voltdb.jni.MockExecutionEngine;
+import org.voltdb.jni.ResultBufferPool;
 import org.voltdb.messaging.CompleteTransactionMessage;
 import org.voltdb.messaging.FragmentTaskMessage;
 import org.voltdb.messaging.Iv2InitiateTaskMessage;
@@ -113,6 +119,16 @@ public class Site implements Runnable, SiteProcedureConnection, SiteSnapshotConn
     private static final double m_taskLogReplayRatio =
             Double.valueOf(System.getProperty("TASKLOG_REPLAY_RATIO", "0.6"));
 
+    // Let temp tables over the temptables maxsize spill to a scratch file instead of failing the query
+    private static final boolean TEMP_TABLE_SPILL = Boolean.getBoolean("TEMP_TABLE_SPILL");
+    private static final long TEMP_TABLE_SPILL_MAXSIZE_MB = Long.getLong("TEMP_TABLE_SPILL_MAXSIZE_MB", 8192);
+
+    // Comma separated tables whose out of line strings are shared between equal values, none by default
+    private static final String SHARED_STRING_TABLES = System.getProperty("SHARED_STRING_TABLES", "");
+
+    // Tuples scanned into indexes added by a catalog update per site task, between transactions
+    private static final long PENDING_INDEX_BUILD_CHUNK = Long.getLong("PENDING_INDEX_BUILD_CHUNK", 20000);
+
     // Set to false trigger shutdown.
     volatile boolean m_shouldContinue = true;
 
@@ -157,7 +173,12 @@ public class Site implements Runnable, SiteProcedureConnection, SiteSnapshotConn
     // Stats
     final TableStats m_tableStats;
     final IndexStats m_indexStats;
+    final ExecutionStats m_statementStats;
+    final ExecutionStats m_executorStats;
+    // Whether this site's EE times fragments and executors, see ExecutionStats
+    private boolean m_executionTimingEnabled = false;
     final MemoryStats m_memStats;
+    private static final int[] NO_LOCATORS = new int[0];
 
     // Each execution site manages snapshot using a SnapshotSiteProcessor
     private SnapshotSiteProcessor m_snapshotter;
@@ -593,11 +614,21 @@ public class Site implements Runnable, SiteProcedureConnection, SiteSnapshotConn
             agent.registerStatsSource(StatsSelector.INDEX,
                                       m_siteId,
                                       m_indexStats);
+            m_statementStats = new ExecutionStats.StatementStats(m_siteId, partitionId);
+            agent.registerStatsSource(StatsSelector.STATEMENT,
+                                      m_siteId,
+                                      m_statementStats);
+            m_executorStats = new ExecutionStats.ExecutorStats(m_siteId, partitionId);
+            agent.registerStatsSource(StatsSelector.EXECUTOR,
+                                      m_siteId,
+                                      m_executorStats);
             m_memStats = memStats;
         } else {
             // MPI doesn't need to track these stats
             m_tableStats = null;
             m_indexStats = null;
+            m_statementStats = null;
+            m_executorStats = null;
             m_memStats = null;
         }
     }
@@ -702,6 +733,12 @@ public class Site implements Runnable, SiteProcedureConnection, SiteSnapshotConn
             eeTemp.loadCatalog(m_startupConfig.m_timestamp, m_startupConfig.m_serializedCatalog);
             eeTemp.setBatchTimeout(m_context.cluster.getDeployment().get("deployment").
                             getSystemsettings().get("systemsettings").getQuerytimeout());
+            if (TEMP_TABLE_SPILL) {
+                setTempTableSpill(eeTemp);
+            }
+            if (!SHARED_STRING_TABLES.trim().isEmpty()) {
+                setSharedStringTables(eeTemp);
+            }
         }
         // just print error info an bail if we run into an error here
         catch (final Exception ex) {
@@ -713,6 +750,71 @@ public class Site implements Runnable, SiteProcedureConnection, SiteSnapshotConn
     }
 
 
+    /**
+     * Runs one chunk of the EE's background index build and offers itself
+     * again until there is nothing left to build.
+     */
+    private final SiteTasker m_pendingIndexBuilder = new SiteTasker.SiteTaskerRunnable() {
+        @Override
+        void run() {
+            ByteBuffer paramBuffer = m_ee.getParamBufferForExecuteTask(8);
+            paramBuffer.putLong(PENDING_INDEX_BUILD_CHUNK);
+            byte[] result = m_ee.executeTask(TaskType.BUILD_PENDING_INDEXES, paramBuffer);
+            m_pendingIndexBuildScheduled = result[0] != 0;
+            if (m_pendingIndexBuildScheduled) {
+                m_scheduler.offer(this);
+            }
+        }
+    };
+    private boolean m_pendingIndexBuildScheduled = false;
+
+    private void schedulePendingIndexBuild()
+    {
+        if (m_pendingIndexBuildScheduled) {
+            return;
+        }
+        m_pendingIndexBuildScheduled = true;
+        m_scheduler.offer(m_pendingIndexBuilder);
+    }
+
+    private void setTempTableSpill(ExecutionEngine ee)
+    {
+        File spillDir = new File(CatalogUtil.getVoltDbRoot(m_context.getDeployment().getPaths()),
+                                 "temp_table_spill");
+        if (!spillDir.isDirectory() && !spillDir.mkdirs()) {
+            hostLog.warn("Unable to create temp table spill directory " + spillDir +
+                         ", temp tables will not spill to disk");
+            return;
+        }
+        byte[] path = spillDir.getAbsolutePath().getBytes(Constants.UTF8ENCODING);
+        ByteBuffer paramBuffer = ee.getParamBufferForExecuteTask(4 + path.length + 8);
+        paramBuffer.putInt(path.length);
+        paramBuffer.put(path);
+        paramBuffer.putLong(TEMP_TABLE_SPILL_MAXSIZE_MB * 1024 * 1024);
+        ee.executeTask(TaskType.SET_TEMP_TABLE_SPILL, paramBuffer);
+    }
+
+    private void setSharedStringTables(ExecutionEngine ee)
+    {
+        List<byte[]> names = new ArrayList<byte[]>();
+        int size = 4;
+        for (String name : SHARED_STRING_TABLES.split(",")) {
+            name = name.trim();
+            if (!name.isEmpty()) {
+                byte[] bytes = name.toUpperCase().getBytes(Constants.UTF8ENCODING);
+                names.add(bytes);
+                size += 4 + bytes.length;
+            }
+        }
+        ByteBuffer paramBuffer = ee.getParamBufferForExecuteTask(size);
+        paramBuffer.putInt(names.size());
+        for (byte[] name : names) {
+            paramBuffer.putInt(name.length);
+            paramBuffer.put(name);
+        }
+        ee.executeTask(TaskType.SET_SHARED_STRING_TABLES, paramBuffer);
+    }
+
     @Override
     public void run()
     {
@@ -897,6 +999,7 @@ public class Site implements Runnable, SiteProcedureConnection, SiteSnapshotConn
 
     void shutdown()
     {
+        LiveDatabaseStatistics.remove(m_siteId);
         try {
             if (m_non_voltdb_backend != null) {
                 m_non_voltdb_backend.shutdownInstance();
@@ -929,10 +1032,11 @@ public class Site implements Runnable, SiteProcedureConnection, SiteSnapshotConn
     @Override
     public void initiateSnapshots(
             SnapshotFormat format,
+            TableStreamType streamType,
             Deque<SnapshotTableTask> tasks,
             long txnId,
             ExtensibleSnapshotDigestData extraSnapshotData) {
-        m_snapshotter.initiateSnapshots(m_sysprocContext, format, tasks, txnId, extraSnapshotData);
+        m_snapshotter.initiateSnapshots(m_sysprocContext, format, streamType, tasks, txnId, extraSnapshotData);
     }
 
     /*
@@ -1185,6 +1289,10 @@ public class Site implements Runnable, SiteProcedureConnection, SiteSnapshotConn
             long indexMem = 0;
             long stringMem = 0;
 
+            // row counts and distinct keys for the planner
+            final LiveDatabaseStatistics.SiteStatistics liveStats =
+                new LiveDatabaseStatistics.SiteStatistics();
+
             // update table stats
             final VoltTable[] s1 =
                 m_ee.getStats(StatsSelector.TABLE, tableIds, false, time);
@@ -1203,6 +1311,7 @@ public class Site implements Runnable, SiteProcedureConnection, SiteSnapshotConn
                     tupleDataMem += stats.getLong(9);
                     assert(stats.getColumnName(10).equals("STRING_DATA_MEMORY"));
                     stringMem += stats.getLong(10);
+                    liveStats.addTable(stats.getString("TABLE_NAME"), stats.getLong(7));
                 }
                 stats.resetRowPosition();
 
@@ -1226,6 +1335,8 @@ public class Site implements Runnable, SiteProcedureConnection, SiteSnapshotConn
                     //Assert column index matches name for ENG-4092
                     assert(stats.getColumnName(11).equals("MEMORY_ESTIMATE"));
                     indexMem += stats.getLong(11);
+                    liveStats.addIndex(stats.getString("TABLE_NAME"), stats.getString("INDEX_NAME"),
+                                       stats.getLong("ENTRY_COUNT"), stats.getLong("DISTINCT_KEY_ESTIMATE"));
                 }
                 stats.resetRowPosition();
 
@@ -1236,6 +1347,27 @@ public class Site implements Runnable, SiteProcedureConnection, SiteSnapshotConn
                 // Need to ensure the cached stats are cleared to reflect that
                 m_indexStats.resetStatsTable();
             }
+            LiveDatabaseStatistics.update(m_siteId, liveStats);
+
+            // pass a change of the timing switch on to the EE
+            if (ExecutionStats.isTimingEnabled() != m_executionTimingEnabled) {
+                m_executionTimingEnabled = !m_executionTimingEnabled;
+                ByteBuffer paramBuffer = m_ee.getParamBufferForExecuteTask(4);
+                paramBuffer.putInt(m_executionTimingEnabled ? 1 : 0);
+                m_ee.executeTask(TaskType.SET_EXECUTION_TIMING, paramBuffer);
+            }
+
+            // accumulate the plan fragment and executor timings since the last tick
+            final VoltTable[] s3 =
+                m_ee.getStats(StatsSelector.STATEMENT, NO_LOCATORS, false, time);
+            if ((s3 != null) && (s3.length > 0)) {
+                m_statementStats.update(s3[0]);
+            }
+            final VoltTable[] s4 =
+                m_ee.getStats(StatsSelector.EXECUTOR, NO_LOCATORS, false, time);
+            if ((s4 != null) && (s4.length > 0)) {
+                m_executorStats.update(s4[0]);
+            }
 
             // update the rolled up memory statistics
             if (m_memStats != null) {
@@ -1438,6 +1570,8 @@ public class Site implements Runnable, SiteProcedureConnection, SiteSnapshotConn
         //so export data for the old generation is pushed to Java.
         m_ee.quiesce(m_lastCommittedSpHandle);
         m_ee.updateCatalog(m_context.m_uniqueId, diffCmds);
+        // New non-unique indexes on populated tables are filled in between transactions
+        schedulePendingIndexBuild();
         if (DRCatalogChange) {
             final Pair<Long, String> catalogCommands = DRCatalogDiffEngine.serializeCatalogCommandsForDr(m_context.catalog);
             generateDREvent( EventType.CATALOG_UPDATE, uniqueId, m_lastCommittedSpHandle,
@@ -1524,6 +1658,11 @@ public class Site implements Runnable, SiteProcedureConnection, SiteSnapshotConn
         m_ee.setProcedureName(procedureName);
     }
 
+    @Override
+    public ResultBufferPool getResultBufferPool() {
+        return m_ee.getResultBufferPool();
+    }
+
     @Override
     public void notifyOfSnapshotNonce(String nonce, long snapshotSpHandle) {
         m_initiatorMailbox.notifyOfSnapshotNonce(nonce, snapshotSpHandle);
@@ -37,10 +37,18 @@ public class TransactionTaskQueue
      */
     private Deque<TransactionTask> m_backlog = new ArrayDeque<TransactionTask>();
 
+    /*
+     * Size of the backlog, only written while holding the monitor. It lets the site
+     * thread complete transactions without taking the monitor when no multi-part is
+     * blocking the queue, which is the common case. Otherwise every single part
+     * completion would contend with the threads offering new tasks.
+     */
+    private volatile int m_backlogSize = 0;
+
     /*
      * Track the maximum spHandle offered to the task queue
      */
-    private long m_maxTaskedSpHandle;
+    private volatile long m_maxTaskedSpHandle;
 
     TransactionTaskQueue(SiteTaskerQueue queue, long initialSpHandle)
     {
@@ -73,6 +81,7 @@ public class TransactionTaskQueue
             if (task.getTxnId() != m_backlog.getFirst().getTxnId())
             {
                 m_backlog.addLast(task);
+                m_backlogSize = m_backlog.size();
                 retval = true;
             }
             else {
@@ -88,6 +97,7 @@ public class TransactionTaskQueue
              */
             if (!txnState.isSinglePartition()) {
                 m_backlog.addLast(task);
+                m_backlogSize = m_backlog.size();
                 retval = true;
             }
             taskQueueOffer(task);
@@ -115,7 +125,19 @@ public class TransactionTaskQueue
      * @param txnId The transaction ID of the TransactionTask which is completing and causing the flush
      * @return the number of TransactionTasks queued to the SiteTaskerQueue
      */
-    synchronized int flush(long txnId)
+    int flush(long txnId)
+    {
+        // Only the site thread completes transactions, and a multi-part is in the backlog
+        // before any of its tasks reach the site, so an empty backlog seen here can't be
+        // hiding a completed multi-part. Tasks offered concurrently can only queue behind
+        // a transaction that isn't done yet, leaving nothing to flush either.
+        if (m_backlogSize == 0) {
+            return 0;
+        }
+        return flushBacklog();
+    }
+
+    private synchronized int flushBacklog()
     {
         int offered = 0;
         // If the first entry of the backlog is a completed transaction, clear it so it no longer
@@ -161,6 +183,7 @@ public class TransactionTaskQueue
                 break;
             }
         }
+        m_backlogSize = m_backlog.size();
         return offered;
     }
 
@@ -178,9 +201,9 @@ public class TransactionTaskQueue
      * How many Tasks are un-runnable?
      * @return
      */
-    synchronized int size()
+    int size()
     {
-        return m_backlog.size();
+        return m_backlogSize;
     }
 
     @Override
@@ -63,7 +63,11 @@ public abstract class ExecutionEngine implements FastDeserializer.Deserializatio
         SET_DR_PROTOCOL_VERSION(3),
         SP_JAVA_GET_DRID_TRACKER(4),
         SET_DRID_TRACKER(5),
-        GENERATE_DR_EVENT(6);
+        GENERATE_DR_EVENT(6),
+        SET_TEMP_TABLE_SPILL(7),
+        BUILD_PENDING_INDEXES(8),
+        SET_SHARED_STRING_TABLES(9),
+        SET_EXECUTION_TIMING(10);
 
         private TaskType(int taskId) {
             this.taskId = taskId;
@@ -354,11 +358,18 @@ public abstract class ExecutionEngine implements FastDeserializer.Deserializatio
         VoltDB.crashLocalVoltDB(re + " In " + fn + ":" + lineno, true, null);
     }
 
+    /**
+     * Next table of the dependency to hand to the ExecutionEngine, or null if there is none left.
+     */
+    protected VoltTable nextDependency(final int dependencyId) {
+        return m_dependencyTracker.nextDependency(dependencyId);
+    }
+
     /**
      * Called from the ExecutionEngine to request serialized dependencies.
      */
     public byte[] nextDependencyAsBytes(final int dependencyId) {
-        final VoltTable vt =  m_dependencyTracker.nextDependency(dependencyId);
+        final VoltTable vt =  nextDependency(dependencyId);
         if (vt != null) {
             final ByteBuffer buf2 = PrivateVoltTableFactory.getTableDataReference(vt);
             int pos = buf2.position();
@@ -553,6 +564,14 @@ public abstract class ExecutionEngine implements FastDeserializer.Deserializatio
         m_currentProcedureName = procedureName;
     }
 
+    /**
+     * The buffers large results of user procedures are left in, or null if
+     * this engine always copies results to the heap.
+     */
+    public ResultBufferPool getResultBufferPool() {
+        return null;
+    }
+
     /** Run multiple plan fragments */
     public VoltTable[] executePlanFragments(int numFragmentIds,
                                             long[] planFragmentIds,
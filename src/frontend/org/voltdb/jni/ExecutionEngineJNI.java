@@ -107,6 +107,14 @@ public class ExecutionEngineJNI extends ExecutionEngine {
     private final BBContainer exceptionBufferOrigin = org.voltcore.utils.DBBPool.allocateDirect(1024 * 1024 * 5);
     private ByteBuffer exceptionBuffer = exceptionBufferOrigin.b();
 
+    /*
+     * Dependencies that aren't already in a direct buffer are copied here for the EE.
+     * The EE loads each dependency before asking for the next, so one buffer is enough.
+     */
+    private BBContainer dependencyBufferC = null;
+
+    private final ResultBufferPool m_resultBuffers = new ResultBufferPool();
+
     /**
      * initialize the native Engine object.
      */
@@ -183,6 +191,38 @@ public class ExecutionEngineJNI extends ExecutionEngine {
         }
     }
 
+    /**
+     * Called from the EE to request serialized dependencies. Tables backed by a direct
+     * buffer are handed over in place, others are copied to a direct buffer that is
+     * reused across calls, instead of to a new byte array per dependency.
+     */
+    public ByteBuffer nextDependencyAsBuffer(final int dependencyId) {
+        final VoltTable vt = nextDependency(dependencyId);
+        if (vt == null) {
+            return null;
+        }
+        final ByteBuffer buf = PrivateVoltTableFactory.getTableDataReference(vt);
+        if (buf.isDirect()) {
+            return buf.slice();
+        }
+        if (dependencyBufferC == null || dependencyBufferC.b().capacity() < buf.remaining()) {
+            if (dependencyBufferC != null) {
+                dependencyBufferC.discard();
+            }
+            dependencyBufferC = DBBPool.allocateDirectAndPool(buf.remaining());
+        }
+        final ByteBuffer copy = dependencyBufferC.b();
+        copy.clear();
+        copy.put(buf);
+        copy.flip();
+        return copy.slice();
+    }
+
+    @Override
+    public ResultBufferPool getResultBufferPool() {
+        return m_resultBuffers;
+    }
+
     /** Utility method to throw a Runtime exception based on the error code and serialized exception **/
     @Override
     final protected void throwExceptionForError(final int errorCode) throws RuntimeException {
@@ -218,6 +258,10 @@ public class ExecutionEngineJNI extends ExecutionEngine {
         exceptionBufferOrigin.discard();
         psetBufferC.discard();
         psetBuffer = null;
+        if (dependencyBufferC != null) {
+            dependencyBufferC.discard();
+            dependencyBufferC = null;
+        }
         LOG.trace("Released Execution Engine.");
     }
 
@@ -331,8 +375,19 @@ public class ExecutionEngineJNI extends ExecutionEngine {
                 final boolean dirty = fds.readBoolean();
                 if (dirty)
                     m_dirty = true;
-                // get a copy of the buffer
-                final ByteBuffer fullBacking = fds.readBuffer(totalSize);
+                // get a copy of the buffer, a direct one if the results
+                // may be handed to the client response without another copy
+                final ResultBufferPool.ResultBuffer resultBuffer = m_resultBuffers.acquire(totalSize);
+                final ByteBuffer fullBacking;
+                if (resultBuffer == null) {
+                    fullBacking = fds.readBuffer(totalSize);
+                } else {
+                    final ByteBuffer src = fds.buffer().duplicate();
+                    src.limit(src.position() + totalSize);
+                    fullBacking = resultBuffer.b();
+                    fullBacking.put(src);
+                    fullBacking.flip();
+                }
                 final VoltTable[] results = new VoltTable[batchSize];
                 for (int i = 0; i < batchSize; ++i) {
                     final int numdeps = fullBacking.getInt(); // number of dependencies for this frag
@@ -349,6 +404,9 @@ public class ExecutionEngineJNI extends ExecutionEngine {
 
                     results[i] = PrivateVoltTableFactory.createVoltTableFromBuffer(tableBacking, true);
                 }
+                if (resultBuffer != null) {
+                    resultBuffer.setTables(results);
+                }
                 return results;
             } catch (final IOException ex) {
                 LOG.error("Failed to deserialze result table" + ex);
@@ -385,7 +443,15 @@ public class ExecutionEngineJNI extends ExecutionEngine {
         if (HOST_TRACE_ENABLED) {
             LOG.trace("loading table id=" + tableId + "...");
         }
-        byte[] serialized_table = PrivateVoltTableFactory.getTableDataReference(table).array();
+        final ByteBuffer tableData = PrivateVoltTableFactory.getTableDataReference(table);
+        final byte[] serialized_table;
+        if (tableData.hasArray()) {
+            serialized_table = tableData.array();
+        } else {
+            // a large query result left in a direct result buffer
+            serialized_table = new byte[tableData.remaining()];
+            tableData.get(serialized_table);
+        }
         if (HOST_TRACE_ENABLED) {
             LOG.trace("passing " + serialized_table.length + " bytes to EE...");
         }
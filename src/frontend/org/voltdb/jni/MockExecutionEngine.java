@@ -230,11 +230,18 @@ public class MockExecutionEngine extends ExecutionEngine {
 
     @Override
     public byte[] executeTask(TaskType taskType, ByteBuffer task) {
+        if (taskType == TaskType.BUILD_PENDING_INDEXES) {
+            // No indexes left to build
+            return new byte[] { 0 };
+        }
+        if (taskType == TaskType.SET_EXECUTION_TIMING) {
+            return new byte[] { 0, 0, 0, 0 };
+        }
         throw new UnsupportedOperationException();
     }
 
     @Override
     public ByteBuffer getParamBufferForExecuteTask(int requiredCapacity) {
-        throw new UnsupportedOperationException();
+        return ByteBuffer.allocate(requiredCapacity);
     }
 }
@@ -0,0 +1,275 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.jni;
+
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.voltdb.ClientResponseImpl;
+import org.voltdb.PrivateVoltTableFactory;
+import org.voltdb.VoltDB;
+import org.voltdb.VoltTable;
+
+/**
+ * Direct buffers that the large result tables of a user procedure are left in,
+ * instead of being copied to fresh heap buffers, until the client response
+ * carrying them has been serialized.
+ *
+ * The buffers are reference counted. The procedure holds a reference to every
+ * buffer the EE filled while it ran, until it returns. The response then takes
+ * a reference to each buffer backing one of its tables and gives it back once
+ * it has been written to the client.
+ *
+ * The procedure may keep any of the tables, returned or not, or rows of them.
+ * A buffer is only reused once the last reference is given back and all the
+ * tables backed by it have been garbage collected. Rows keep their table
+ * reachable. getBuffer() copies the data of a pooled table to the heap first,
+ * since the view it returns doesn't. Until its tables are collected a buffer
+ * waits in a queue bounded like the pool, buffers that don't fit are left to
+ * the garbage collector.
+ *
+ * A response that is never written to a client connection, such as one
+ * forwarded to another host or dropped after a restart, never gives its
+ * buffers back. They aren't pooled memory, the garbage collector frees them
+ * with the response.
+ *
+ * Buffers are only acquired on the site thread. They may be released by the
+ * network threads.
+ */
+public class ResultBufferPool {
+    // Result batches at least this large are left in direct buffers
+    static final int MIN_RESULT_SIZE = Integer.getInteger("RESULT_BUFFER_MIN_SIZE", 1024 * 256);
+    // Bytes of released buffers kept for reuse, the others are left to the garbage collector
+    static final long MAX_POOLED_BYTES = Long.getLong("RESULT_BUFFER_POOL_BYTES", 1024 * 1024 * 32);
+
+    /**
+     * A buffer holding the results of one batch, and the tables backed by it.
+     */
+    public final class ResultBuffer {
+        private final ByteBuffer m_buffer;
+        private final AtomicInteger m_refCount = new AtomicInteger(1);
+        private VoltTable[] m_tables = new VoltTable[0];
+        // The tables backed by the buffer, once the procedure has returned
+        private List<WeakReference<VoltTable>> m_reachable = null;
+
+        private ResultBuffer(ByteBuffer buffer) {
+            m_buffer = buffer;
+        }
+
+        /**
+         * The buffer to copy the results to, cleared and limited to their size
+         */
+        ByteBuffer b() {
+            return m_buffer;
+        }
+
+        void setTables(VoltTable[] tables) {
+            for (VoltTable table : tables) {
+                PrivateVoltTableFactory.setOnPooledBuffer(table);
+            }
+            m_tables = tables;
+        }
+
+        void retain() {
+            m_refCount.incrementAndGet();
+        }
+
+        /**
+         * Give back a reference. The buffer is reused once the last one is gone
+         * and the tables backed by it have been collected.
+         */
+        public void release() {
+            final int count = m_refCount.decrementAndGet();
+            if (count == 0) {
+                if (isCollected()) {
+                    recycle(m_buffer);
+                } else {
+                    awaitCollection(this);
+                }
+            } else if (count < 0) {
+                VoltDB.crashLocalVoltDB("Broken reference counting of result buffers", true, null);
+            }
+        }
+
+        private boolean isCollected() {
+            for (WeakReference<VoltTable> table : m_reachable) {
+                if (table.get() != null) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private final ConcurrentLinkedQueue<ByteBuffer> m_free = new ConcurrentLinkedQueue<ByteBuffer>();
+    private final AtomicLong m_freeBytes = new AtomicLong(0);
+    // Released buffers whose tables may still be reachable
+    private final ConcurrentLinkedQueue<ResultBuffer> m_uncollected = new ConcurrentLinkedQueue<ResultBuffer>();
+    private final AtomicLong m_uncollectedBytes = new AtomicLong(0);
+
+    // Buffers filled for the running procedure, site thread only
+    private final List<ResultBuffer> m_inUse = new ArrayList<ResultBuffer>();
+    private boolean m_procedureRunning = false;
+
+    /**
+     * Start handing out buffers for the results of the procedure about to run.
+     */
+    public void beginProcedure() {
+        assert(m_inUse.isEmpty());
+        m_procedureRunning = true;
+    }
+
+    /**
+     * Get a buffer for results of the given size, or null if they should be
+     * copied to the heap, because they are small or no procedure is running.
+     * The procedure holds the reference until endProcedure().
+     */
+    ResultBuffer acquire(int size) {
+        if (!m_procedureRunning || size < MIN_RESULT_SIZE) {
+            return null;
+        }
+        reclaimCollected();
+        ByteBuffer buffer = null;
+        // Only this thread takes buffers out of the queue
+        final Iterator<ByteBuffer> iter = m_free.iterator();
+        while (iter.hasNext()) {
+            final ByteBuffer candidate = iter.next();
+            if (candidate.capacity() >= size) {
+                iter.remove();
+                m_freeBytes.addAndGet(-candidate.capacity());
+                buffer = candidate;
+                break;
+            }
+        }
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(roundToPowerOf2(size));
+        }
+        buffer.clear();
+        buffer.limit(size);
+        final ResultBuffer resultBuffer = new ResultBuffer(buffer);
+        m_inUse.add(resultBuffer);
+        return resultBuffer;
+    }
+
+    /**
+     * Hand the buffers of the procedure that just returned over to its response.
+     * The response keeps a reference to each buffer backing one of its tables.
+     * The procedure's own references are released.
+     *
+     * @param response The response of the procedure, or null if there is none
+     */
+    public void endProcedure(ClientResponseImpl response) {
+        m_procedureRunning = false;
+        if (m_inUse.isEmpty()) {
+            return;
+        }
+        final IdentityHashMap<VoltTable, Boolean> returned = new IdentityHashMap<VoltTable, Boolean>();
+        if (response != null) {
+            for (VoltTable table : response.getResults()) {
+                returned.put(table, Boolean.TRUE);
+            }
+        }
+        final List<ResultBuffer> kept = new ArrayList<ResultBuffer>();
+        for (ResultBuffer resultBuffer : m_inUse) {
+            final List<WeakReference<VoltTable>> tables =
+                    new ArrayList<WeakReference<VoltTable>>(resultBuffer.m_tables.length);
+            boolean isReturned = false;
+            for (VoltTable table : resultBuffer.m_tables) {
+                tables.add(new WeakReference<VoltTable>(table));
+                isReturned |= returned.containsKey(table);
+            }
+            resultBuffer.m_tables = null;
+            resultBuffer.m_reachable = tables;
+            if (isReturned) {
+                resultBuffer.retain();
+                kept.add(resultBuffer);
+            }
+            resultBuffer.release();
+        }
+        m_inUse.clear();
+        if (!kept.isEmpty()) {
+            response.setResultBufferRelease(new Runnable() {
+                @Override
+                public void run() {
+                    for (ResultBuffer resultBuffer : kept) {
+                        resultBuffer.release();
+                    }
+                }
+            });
+        }
+    }
+
+    private void awaitCollection(ResultBuffer resultBuffer) {
+        final int capacity = resultBuffer.m_buffer.capacity();
+        if (m_uncollectedBytes.addAndGet(capacity) > MAX_POOLED_BYTES) {
+            m_uncollectedBytes.addAndGet(-capacity);
+            return;
+        }
+        m_uncollected.offer(resultBuffer);
+    }
+
+    /**
+     * Recycle the released buffers whose tables have been collected
+     */
+    void reclaimCollected() {
+        // Only this thread takes buffers out of the queue
+        final Iterator<ResultBuffer> iter = m_uncollected.iterator();
+        while (iter.hasNext()) {
+            final ResultBuffer resultBuffer = iter.next();
+            if (resultBuffer.isCollected()) {
+                iter.remove();
+                m_uncollectedBytes.addAndGet(-resultBuffer.m_buffer.capacity());
+                recycle(resultBuffer.m_buffer);
+            }
+        }
+    }
+
+    private void recycle(ByteBuffer buffer) {
+        if (m_freeBytes.addAndGet(buffer.capacity()) > MAX_POOLED_BYTES) {
+            m_freeBytes.addAndGet(-buffer.capacity());
+            return;
+        }
+        m_free.offer(buffer);
+    }
+
+    /**
+     * Bytes of released buffers kept for reuse
+     */
+    long getPooledBytes() {
+        return m_freeBytes.get();
+    }
+
+    /**
+     * Bytes of released buffers waiting for their tables to be collected
+     */
+    long getUncollectedBytes() {
+        return m_uncollectedBytes.get();
+    }
+
+    private static int roundToPowerOf2(int size) {
+        final int rounded = Integer.highestOneBit(size - 1) << 1;
+        return rounded < size ? size : rounded;
+    }
+}
@@ -20,6 +20,7 @@ package org.voltdb.planner;
 import java.util.HashMap;
 import java.util.Map.Entry;
 import java.util.TreeMap;
+import java.util.TreeSet;
 
 import org.voltdb.jni.ExecutionEngine;
 import org.voltdb.jni.Sha1Wrapper;
@@ -41,6 +42,9 @@ public abstract class ActivePlanRepository {
         /// there is no single statement text---ad hoc queries that differ only by their constants
         /// reuse the same plan.
         String stmtText;
+        /// Every procedure statement that loaded this fragment while it was cached, as
+        /// procedure.statement, for statistics. Empty for ad hoc fragments.
+        final TreeSet<String> stmtNames = new TreeSet<String>();
 
         FragInfo(Sha1Wrapper key, byte[] plan, long nextId, String stmtText)
         {
@@ -93,11 +97,54 @@ public abstract class ActivePlanRepository {
         return frag.stmtText;
     }
 
+    /**
+     * Get the procedure statements that loaded a site-local fragment id, as
+     * comma separated procedure.statement names. Falls back to the statement
+     * text, or null if the fragment is unknown.
+     */
+    public static String getStmtNamesForFragmentId(long fragmentId) {
+        synchronized (FragInfo.class) {
+            FragInfo frag = m_plansById.get(fragmentId);
+            if (frag == null) {
+                return null;
+            }
+            if (frag.stmtNames.isEmpty()) {
+                return frag.stmtText;
+            }
+            StringBuilder names = new StringBuilder();
+            for (String name : frag.stmtNames) {
+                if (names.length() > 0) {
+                    names.append(',');
+                }
+                names.append(name);
+            }
+            return names.toString();
+        }
+    }
+
+    /**
+     * Whether the site-local fragment id is still in the cache
+     */
+    public static boolean containsFragmentId(long fragmentId) {
+        synchronized (FragInfo.class) {
+            return m_plansById.containsKey(fragmentId);
+        }
+    }
+
     /**
      * Get the site-local fragment id for a given plan identified by 20-byte sha-1 hash
      * If the plan isn't known to this SPC, load it up. Otherwise addref it.
      */
     public static long loadOrAddRefPlanFragment(byte[] planHash, byte[] plan, String stmtText) {
+        return loadOrAddRefPlanFragment(planHash, plan, stmtText, null, null);
+    }
+
+    /**
+     * Same as above, also naming the procedure and statement that own the plan
+     * so the fragment's statistics can be reported under them.
+     */
+    public static long loadOrAddRefPlanFragment(byte[] planHash, byte[] plan, String stmtText,
+                                                String procName, String stmtName) {
         Sha1Wrapper key = new Sha1Wrapper(planHash);
         synchronized (FragInfo.class) {
             FragInfo frag = m_plansByHash.get(key);
@@ -117,6 +164,9 @@ public abstract class ActivePlanRepository {
             if (frag.stmtText == null) {
                 frag.stmtText = stmtText;
             }
+            if (procName != null) {
+                frag.stmtNames.add(procName + "." + stmtName);
+            }
 
             // The fragment MAY be in the LRU map.
             // An incremented refCount is a lazy way to keep it safe from eviction
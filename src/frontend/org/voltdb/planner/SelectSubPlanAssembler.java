@@ -25,8 +25,10 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
+import org.voltdb.VoltType;
 import org.voltdb.catalog.Database;
 import org.voltdb.expressions.AbstractExpression;
+import org.voltdb.expressions.AbstractSubqueryExpression;
 import org.voltdb.expressions.ExpressionUtil;
 import org.voltdb.expressions.TupleValueExpression;
 import org.voltdb.planner.parseinfo.BranchNode;
@@ -37,10 +39,12 @@ import org.voltdb.planner.parseinfo.SubqueryLeafNode;
 import org.voltdb.plannodes.AbstractJoinPlanNode;
 import org.voltdb.plannodes.AbstractPlanNode;
 import org.voltdb.plannodes.AbstractReceivePlanNode;
+import org.voltdb.plannodes.HashJoinPlanNode;
 import org.voltdb.plannodes.IndexScanPlanNode;
 import org.voltdb.plannodes.MaterializedScanPlanNode;
 import org.voltdb.plannodes.NestLoopIndexPlanNode;
 import org.voltdb.plannodes.NestLoopPlanNode;
+import org.voltdb.types.ExpressionType;
 import org.voltdb.types.JoinType;
 import org.voltdb.types.PlanNodeType;
 import org.voltdb.utils.PermutationGenerator;
@@ -574,7 +578,6 @@ public class SelectSubPlanAssembler extends SubPlanAssembler {
 
         AbstractJoinPlanNode ajNode = null;
         if (canHaveNLJ) {
-            NestLoopPlanNode nljNode = new NestLoopPlanNode();
             // get all the clauses that join the applicable two tables
             // Copy innerAccessPath.joinExprs to leave it unchanged,
             // avoiding accumulation of redundant expressions when
@@ -615,6 +618,18 @@ public class SelectSubPlanAssembler extends SubPlanAssembler {
                 // the inner node ONLY, that can not be pushed down.
                 joinClauses.addAll(innerAccessPath.otherExprs);
             }
+
+            // Without an index to drive the inner side, an equality between the outer
+            // and the inner side lets the EE hash the inner side once instead of
+            // rescanning it for every outer tuple.
+            NestLoopPlanNode nljNode = null;
+            if ( ! (innerPlan instanceof IndexScanPlanNode) &&
+                 ! (innerPlan instanceof NestLoopIndexPlanNode)) {
+                nljNode = getHashJoinNode(innerJoinNode, joinClauses);
+            }
+            if (nljNode == null) {
+                nljNode = new NestLoopPlanNode();
+            }
             nljNode.setJoinPredicate(ExpressionUtil.combine(joinClauses));
 
             // combine the tails plan graph with the new head node
@@ -661,6 +676,89 @@ public class SelectSubPlanAssembler extends SubPlanAssembler {
         return ajNode;
     }
 
+    /**
+     * Build a hash join node if any of the join clauses is an equality between an
+     * expression on the outer tables and an expression on the inner tables.
+     * The clauses stay in the join predicate, the hash expressions only select
+     * the inner tuples the predicate needs to be evaluated against.
+     *
+     * @param innerJoinNode The inner node of the join.
+     * @param joinClauses The clauses of the join predicate.
+     * @return A HashJoinPlanNode or null if no clause can be used as a hash key.
+     */
+    private static HashJoinPlanNode getHashJoinNode(JoinNode innerJoinNode,
+                                                    List<AbstractExpression> joinClauses)
+    {
+        Collection<String> innerTables = innerJoinNode.generateTableJoinOrder();
+        List<AbstractExpression> outerHashExprs = new ArrayList<AbstractExpression>();
+        List<AbstractExpression> innerHashExprs = new ArrayList<AbstractExpression>();
+        for (AbstractExpression expr : joinClauses) {
+            if (expr.getExpressionType() != ExpressionType.COMPARE_EQUAL ||
+                    expr.hasAnySubexpressionOfClass(AbstractSubqueryExpression.class)) {
+                continue;
+            }
+            AbstractExpression left = expr.getLeft();
+            AbstractExpression right = expr.getRight();
+            if ( ! isHashableKeyPair(left, right)) {
+                continue;
+            }
+            if (isOperandDependentOnlyOnTables(left, innerTables, false) &&
+                    isOperandDependentOnlyOnTables(right, innerTables, true)) {
+                outerHashExprs.add(left);
+                innerHashExprs.add(right);
+            }
+            else if (isOperandDependentOnlyOnTables(right, innerTables, false) &&
+                    isOperandDependentOnlyOnTables(left, innerTables, true)) {
+                outerHashExprs.add(right);
+                innerHashExprs.add(left);
+            }
+        }
+        if (outerHashExprs.isEmpty()) {
+            return null;
+        }
+        HashJoinPlanNode hjNode = new HashJoinPlanNode();
+        hjNode.setHashExpressions(outerHashExprs, innerHashExprs);
+        return hjNode;
+    }
+
+    /**
+     * Determine whether both operands of an equality hash alike in the EE.
+     * The EE hashes all integer types as BIGINT, any other types must match exactly.
+     */
+    private static boolean isHashableKeyPair(AbstractExpression left, AbstractExpression right) {
+        VoltType leftType = left.getValueType();
+        VoltType rightType = right.getValueType();
+        if (leftType == null || rightType == null) {
+            return false;
+        }
+        if (leftType.isBackendIntegerType() && rightType.isBackendIntegerType()) {
+            // TIMESTAMP is stored as a BIGINT but only compares equal to other TIMESTAMPs
+            return (leftType == VoltType.TIMESTAMP) == (rightType == VoltType.TIMESTAMP);
+        }
+        return leftType == rightType && leftType != VoltType.INVALID && leftType != VoltType.NULL;
+    }
+
+    /**
+     * @param expr An operand of a join clause.
+     * @param tables The aliases of the tables on one side of the join.
+     * @param inTables Whether the operand must reference only the given tables or only other tables.
+     * @return true if the operand references at least one table and all its references are on the requested side.
+     */
+    private static boolean isOperandDependentOnlyOnTables(AbstractExpression expr,
+                                                          Collection<String> tables,
+                                                          boolean inTables) {
+        List<TupleValueExpression> tves = ExpressionUtil.getTupleValueExpressions(expr);
+        if (tves.isEmpty()) {
+            return false;
+        }
+        for (TupleValueExpression tve : tves) {
+            if (tables.contains(tve.getTableAlias()) != inTables) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * A method to filter out single-TVE expressions.
      *
@@ -0,0 +1,152 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.plannodes;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.json_voltpatches.JSONException;
+import org.json_voltpatches.JSONObject;
+import org.json_voltpatches.JSONString;
+import org.json_voltpatches.JSONStringer;
+import org.voltdb.catalog.Database;
+import org.voltdb.expressions.AbstractExpression;
+import org.voltdb.types.PlanNodeType;
+import org.voltdb.types.SortDirectionType;
+
+/**
+ * A nested loop join whose inner loop is replaced by a hash table probe.
+ *
+ * The EE builds a hash table over the inner input keyed on the inner hash
+ * expressions, then probes it once per outer tuple with the outer hash
+ * expressions. The full join predicate is still evaluated for every candidate
+ * pair, so the hash expressions only narrow down the candidates, and
+ * they never need to be searched separately from the join predicate.
+ * Because the outer input is still scanned in order, the node preserves the
+ * ordering properties of a nested loop join.
+ */
+public class HashJoinPlanNode extends NestLoopPlanNode {
+
+    public enum Members {
+        OUTER_HASH_EXPRESSIONS,
+        INNER_HASH_EXPRESSIONS;
+    }
+
+    // Pairwise equal expressions, evaluated on the outer and the inner tuple respectively
+    protected final List<AbstractExpression> m_outerHashExpressions = new ArrayList<AbstractExpression>();
+    protected final List<AbstractExpression> m_innerHashExpressions = new ArrayList<AbstractExpression>();
+
+    public HashJoinPlanNode() {
+        super();
+    }
+
+    @Override
+    public PlanNodeType getPlanNodeType() {
+        return PlanNodeType.HASHJOIN;
+    }
+
+    public List<AbstractExpression> getOuterHashExpressions() {
+        return m_outerHashExpressions;
+    }
+
+    public List<AbstractExpression> getInnerHashExpressions() {
+        return m_innerHashExpressions;
+    }
+
+    /**
+     * @param outerExprs expressions on the outer tuple
+     * @param innerExprs expressions on the inner tuple, pairwise equal to outerExprs in the join predicate
+     */
+    public void setHashExpressions(List<AbstractExpression> outerExprs, List<AbstractExpression> innerExprs) {
+        assert(outerExprs.size() == innerExprs.size());
+        m_outerHashExpressions.clear();
+        m_innerHashExpressions.clear();
+        for (AbstractExpression expr : outerExprs) {
+            m_outerHashExpressions.add((AbstractExpression) expr.clone());
+        }
+        for (AbstractExpression expr : innerExprs) {
+            m_innerHashExpressions.add((AbstractExpression) expr.clone());
+        }
+    }
+
+    @Override
+    public void validate() throws Exception {
+        super.validate();
+
+        if (m_outerHashExpressions.isEmpty() ||
+                m_outerHashExpressions.size() != m_innerHashExpressions.size()) {
+            throw new Exception("ERROR: PlanNode '" + toString() + "' has " +
+                                m_outerHashExpressions.size() + " outer hash expressions but " +
+                                m_innerHashExpressions.size() + " inner hash expressions");
+        }
+        for (AbstractExpression expr : m_outerHashExpressions) {
+            expr.validate();
+        }
+        for (AbstractExpression expr : m_innerHashExpressions) {
+            expr.validate();
+        }
+    }
+
+    @Override
+    public void resolveColumnIndexes()
+    {
+        super.resolveColumnIndexes();
+
+        final NodeSchema outer_schema = m_children.get(0).getOutputSchema();
+        final NodeSchema inner_schema = m_children.get(1).getOutputSchema();
+        resolvePredicate(m_outerHashExpressions, outer_schema, inner_schema);
+        resolvePredicate(m_innerHashExpressions, outer_schema, inner_schema);
+    }
+
+    @Override
+    protected String explainPlanForNode(String indent) {
+        return "HASH " + this.m_joinType.toString() + " JOIN" +
+                (m_sortDirection == SortDirectionType.INVALID ? "" : " (" + m_sortDirection + ")") +
+                explainFilters(indent);
+    }
+
+    @Override
+    public void toJSONString(JSONStringer stringer) throws JSONException
+    {
+        super.toJSONString(stringer);
+        stringer.key(Members.OUTER_HASH_EXPRESSIONS.name()).array();
+        for (AbstractExpression ae : m_outerHashExpressions) {
+            assert (ae instanceof JSONString);
+            stringer.value(ae);
+        }
+        stringer.endArray();
+        stringer.key(Members.INNER_HASH_EXPRESSIONS.name()).array();
+        for (AbstractExpression ae : m_innerHashExpressions) {
+            assert (ae instanceof JSONString);
+            stringer.value(ae);
+        }
+        stringer.endArray();
+    }
+
+    @Override
+    public void loadFromJSONObject( JSONObject jobj, Database db ) throws JSONException
+    {
+        super.loadFromJSONObject(jobj, db);
+        m_outerHashExpressions.clear();
+        m_innerHashExpressions.clear();
+        AbstractExpression.loadFromJSONArrayChild(m_outerHashExpressions, jobj,
+                Members.OUTER_HASH_EXPRESSIONS.name(), null);
+        AbstractExpression.loadFromJSONArrayChild(m_innerHashExpressions, jobj,
+                Members.INNER_HASH_EXPRESSIONS.name(), null);
+    }
+}
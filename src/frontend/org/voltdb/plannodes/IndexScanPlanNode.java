@@ -578,6 +578,8 @@ public class IndexScanPlanNode extends AbstractScanPlanNode {
         // FYI: Index scores should range between 2 and 800003 (I think)
 
         DatabaseEstimates.TableEstimates tableEstimates = estimates.getEstimatesForTable(m_targetTableName);
+        DatabaseEstimates.IndexEstimates indexEstimates =
+                estimates.getEstimatesForIndex(m_targetTableName, m_catalogIndex.getTypeName());
 
         // get the width of the index - number of columns or expression included in the index
         // need doubles for math
@@ -635,7 +637,12 @@ public class IndexScanPlanNode extends AbstractScanPlanNode {
             // Using a factor of 0.1 per FULLY covered (equality-filtered) column,
             // the effective scale factor for a single PARTIALLY covered (range-filtered) column
             // comes to SQRT(0.1) which is just under 32% FTW!
-            tuplesToRead += (int) (tableEstimates.maxTuples * 0.90 * Math.pow(0.10, keyWidth));
+            // With measured statistics, the fully covered index narrows the scan down to
+            // its average entries per key. Partially covered keys interpolate between
+            // that and the whole table, as if the key columns were equally selective.
+            final double perColumnFactor = (indexEstimates == null) ? 0.10 :
+                Math.pow(1.0 / indexEstimates.distinctKeys, 1.0 / colCount);
+            tuplesToRead += (int) (tableEstimates.maxTuples * 0.90 * Math.pow(perColumnFactor, keyWidth));
             // "Covering cell" indexes get a special adjustment to make them look more favorable
             // than non-unique range filters in particular.
             // I can't quite justify that rationally, but it "seems reasonable". --paul
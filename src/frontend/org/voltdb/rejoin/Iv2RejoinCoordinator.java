@@ -106,13 +106,14 @@ public class Iv2RejoinCoordinator extends JoinCoordinator {
             clearOverflowDir(voltroot);
 
             // The buffer pool capacity is min(numOfSites to rejoin times 3, 16)
-            // or any user specified value.
+            // or any user specified value. It is also the window of blocks each
+            // receiver can decompress in parallel.
             Integer userPoolSize = Integer.getInteger("REJOIN_RECEIVE_BUFFER_POOL_SIZE");
             int poolSize = 0;
             if (userPoolSize != null) {
                 poolSize = userPoolSize;
             } else {
-                poolSize = 3;
+                poolSize = Math.min(sites.size() * 3, 16);
             }
 
             m_snapshotBufPool = new FixedDBBPool();
@@ -31,15 +31,21 @@ public class RejoinDataMessage extends VoltMessage {
     private long m_targetId = -1;
     // compressed snapshot data
     private byte[] m_data = null;
+    private StreamSnapshotCompression m_compression = StreamSnapshotCompression.SNAPPY;
 
     public RejoinDataMessage() {
         m_subject = Subject.DEFAULT.getId();
     }
 
     public RejoinDataMessage(long targetId, byte[] data) {
+        this(targetId, data, StreamSnapshotCompression.SNAPPY);
+    }
+
+    public RejoinDataMessage(long targetId, byte[] data, StreamSnapshotCompression compression) {
         m_subject = Subject.DEFAULT.getId();
         m_targetId = targetId;
         m_data = data;
+        m_compression = compression;
     }
 
     public long getTargetId() {
@@ -50,11 +56,16 @@ public class RejoinDataMessage extends VoltMessage {
         return m_data;
     }
 
+    public StreamSnapshotCompression getCompression() {
+        return m_compression;
+    }
+
     @Override
     public int getSerializedSize() {
         int msgsize = super.getSerializedSize();
         msgsize +=
                 8 + // m_targetId
+                1 + // m_compression
                 4 + // data length
                 m_data.length;
         return msgsize;
@@ -63,6 +74,7 @@ public class RejoinDataMessage extends VoltMessage {
     @Override
     protected void initFromBuffer(ByteBuffer buf) throws IOException {
         m_targetId = buf.getLong();
+        m_compression = StreamSnapshotCompression.fromOrdinal(buf.get());
         int len = buf.getInt();
         m_data = new byte[len];
         buf.get(m_data);
@@ -72,6 +84,7 @@ public class RejoinDataMessage extends VoltMessage {
     public void flattenToBuffer(ByteBuffer buf) throws IOException {
         buf.put(VoltDbMessageFactory.REJOIN_DATA_ID);
         buf.putLong(m_targetId);
+        buf.put((byte) m_compression.ordinal());
         buf.putInt(m_data.length);
         buf.put(m_data);
         buf.limit(buf.position());
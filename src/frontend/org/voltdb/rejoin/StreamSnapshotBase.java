@@ -30,7 +30,7 @@ public abstract class StreamSnapshotBase {
     public static final int contentOffset = tableIdOffset + 4;
 
     public static interface MessageFactory {
-        public VoltMessage makeDataMessage(long targetId, byte[] data);
+        public VoltMessage makeDataMessage(long targetId, byte[] data, StreamSnapshotCompression compression);
 
         public boolean isAckEOS(VoltMessage msg);
         public long getAckTargetId(VoltMessage msg);
@@ -40,9 +40,9 @@ public abstract class StreamSnapshotBase {
 
     public static class DefaultMessageFactory implements MessageFactory {
         @Override
-        public VoltMessage makeDataMessage(long targetId, byte[] data)
+        public VoltMessage makeDataMessage(long targetId, byte[] data, StreamSnapshotCompression compression)
         {
-            return new RejoinDataMessage(targetId, data);
+            return new RejoinDataMessage(targetId, data, compression);
         }
 
         @Override
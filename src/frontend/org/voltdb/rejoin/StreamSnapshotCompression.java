@@ -0,0 +1,42 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.rejoin;
+
+/**
+ * Codec used for the blocks of a stream snapshot. Snappy is the default, LZ4
+ * can be selected with -DREJOIN_COMPRESSION=lz4 on the node sending the data.
+ * The codec travels with each block so the receiver doesn't need to be configured.
+ */
+public enum StreamSnapshotCompression {
+    SNAPPY,
+    LZ4;
+
+    public static StreamSnapshotCompression fromSystemProperty() {
+        String codec = System.getProperty("REJOIN_COMPRESSION", SNAPPY.name());
+        try {
+            return valueOf(codec.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown rejoin compression " + codec +
+                                               ", expected snappy or lz4");
+        }
+    }
+
+    public static StreamSnapshotCompression fromOrdinal(int ordinal) {
+        return values()[ordinal];
+    }
+}
@@ -20,6 +20,9 @@ package org.voltdb.rejoin;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
 
 import org.voltcore.logging.VoltLogger;
@@ -28,22 +31,26 @@ import org.voltcore.messaging.VoltMessage;
 import org.voltcore.utils.DBBPool.BBContainer;
 import org.voltcore.utils.Pair;
 import org.voltdb.SnapshotSiteProcessor;
+import org.voltdb.VoltDB;
 import org.voltdb.utils.CompressionService;
 import org.voltdb.utils.FixedDBBPool;
 
 /**
  * Receives snapshot data from a replica. This is used on a rejoining partition.
+ * Blocks are decompressed on the compression service, several at a time when
+ * the buffer pool allows it, and handed to the site in the order they arrived.
  */
 public class StreamSnapshotDataReceiver extends StreamSnapshotBase
 implements Runnable {
     private static final VoltLogger rejoinLog = new VoltLogger("REJOIN");
 
     /*
-     * element is a pair of <sourceHSId, blockData>. The hsId should remain the
-     * same for the length of the data transfer process for this partition.
+     * element is a pending decompression of a pair of <sourceHSId, blockData>.
+     * The hsId should remain the same for the length of the data transfer
+     * process for this partition.
      */
-    private final LinkedBlockingQueue<Pair<Long, Pair<Long, BBContainer>>> m_queue =
-            new LinkedBlockingQueue<Pair<Long, Pair<Long, BBContainer>>>();
+    private final LinkedBlockingQueue<Future<Pair<Long, Pair<Long, BBContainer>>>> m_queue =
+            new LinkedBlockingQueue<Future<Pair<Long, Pair<Long, BBContainer>>>>();
 
     private final Mailbox m_mb;
     private final FixedDBBPool m_bufferPool;
@@ -62,10 +69,15 @@ implements Runnable {
     /**
      * Get the next message from queue.
      *
-     * @return null if the queue is empty.
+     * @return null if the queue is empty or the next message is still being decompressed.
      */
     public Pair<Long, Pair<Long, BBContainer>> poll() {
-        return m_queue.poll();
+        Future<Pair<Long, Pair<Long, BBContainer>>> next = m_queue.peek();
+        if (next == null || !next.isDone()) {
+            return null;
+        }
+        m_queue.poll();
+        return getDecompressed(next);
     }
 
     /**
@@ -75,7 +87,31 @@ implements Runnable {
      * @throws InterruptedException
      */
     public Pair<Long, Pair<Long, BBContainer>> take() throws InterruptedException {
-        return m_queue.take();
+        return getDecompressed(m_queue.take());
+    }
+
+    private Pair<Long, Pair<Long, BBContainer>> getDecompressed(Future<Pair<Long, Pair<Long, BBContainer>>> next) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return next.get();
+                } catch (InterruptedException e) {
+                    // The decompression task doesn't block, just wait for it
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    if (m_closed) {
+                        return null;
+                    }
+                    VoltDB.crashLocalVoltDB("Error decompressing a message from a recovery stream.", true, e.getCause());
+                    return null;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
     }
 
     public int size() {
@@ -84,77 +120,88 @@ implements Runnable {
 
     @Override
     public void run() {
-        BlockingQueue<BBContainer> bufferQueue =
+        final BlockingQueue<BBContainer> bufferQueue =
             m_bufferPool.getQueue(SnapshotSiteProcessor.m_snapshotBufferLength);
-        BlockingQueue<BBContainer> compressionBufferQueue =
+        final BlockingQueue<BBContainer> compressionBufferQueue =
             m_bufferPool.getQueue(SnapshotSiteProcessor.m_snapshotBufferCompressedLen);
 
         try {
             while (true) {
-                BBContainer container = null;
-                BBContainer compressionBufferC = null;
-                ByteBuffer compressionBuffer = null;
-                boolean success = false;
+                VoltMessage msg = m_mb.recvBlocking();
+                if (msg == null) {
+                    // If interrupted, break
+                    break;
+                }
 
-                try {
-                    VoltMessage msg = m_mb.recvBlocking();
-                    if (msg == null) {
-                        // If interrupted, break
-                        break;
+                assert(msg instanceof RejoinDataMessage);
+                final RejoinDataMessage dataMsg = (RejoinDataMessage) msg;
+
+                // Only grab the buffer from the pool after receiving a message from the
+                // mailbox. If the buffer is grabbed before receiving the message,
+                // this thread could hold on to a buffer it may not need and other receivers
+                // will be blocked if the pool has no more buffers left.
+                // The pool also bounds how many blocks are decompressed at once.
+                final BBContainer container = bufferQueue.take();
+                // LZ4 decompresses straight from the message bytes
+                BBContainer compressionBufferC = null;
+                if (dataMsg.getCompression() == StreamSnapshotCompression.SNAPPY) {
+                    try {
+                        compressionBufferC = compressionBufferQueue.take();
+                    } catch (InterruptedException e) {
+                        container.discard();
+                        throw e;
                     }
+                }
 
-                    assert(msg instanceof RejoinDataMessage);
-                    RejoinDataMessage dataMsg = (RejoinDataMessage) msg;
-                    byte[] data = dataMsg.getData();
+                m_queue.offer(CompressionService.submitCompressionTask(
+                        new Decompress(dataMsg, container, compressionBufferC)));
+            }
+        } catch (InterruptedException e) {
+            return;
+        }
+    }
+
+    private static class Decompress implements Callable<Pair<Long, Pair<Long, BBContainer>>> {
+        private final RejoinDataMessage m_msg;
+        private final BBContainer m_container;
+        private final BBContainer m_compressionBufferC;
 
-                    // Only grab the buffer from the pool after receiving a message from the
-                    // mailbox. If the buffer is grabbed before receiving the message,
-                    // this thread could hold on to a buffer it may not need and other receivers
-                    // will be blocked if the pool has no more buffers left.
-                    container = bufferQueue.take();
-                    ByteBuffer messageBuffer = container.b();
-                    messageBuffer.clear();
+        Decompress(RejoinDataMessage msg, BBContainer container, BBContainer compressionBufferC) {
+            m_msg = msg;
+            m_container = container;
+            m_compressionBufferC = compressionBufferC;
+        }
 
-                    compressionBufferC = compressionBufferQueue.take();
-                    compressionBuffer = compressionBufferC.b();
+        @Override
+        public Pair<Long, Pair<Long, BBContainer>> call() throws IOException {
+            boolean success = false;
+            try {
+                final byte[] data = m_msg.getData();
+                final ByteBuffer messageBuffer = m_container.b();
+                messageBuffer.clear();
+
+                final int uncompressedSize;
+                if (m_compressionBufferC == null) {
+                    uncompressedSize = CompressionService.lz4DecompressBytes(data, messageBuffer);
+                } else {
+                    final ByteBuffer compressionBuffer = m_compressionBufferC.b();
                     compressionBuffer.clear();
                     compressionBuffer.limit(data.length);
                     compressionBuffer.put(data);
                     compressionBuffer.flip();
-                    int uncompressedSize =
-                            CompressionService.decompressBuffer(
-                                    compressionBuffer,
-                                    messageBuffer);
-                    messageBuffer.limit(uncompressedSize);
-                    m_queue.offer(Pair.of(dataMsg.m_sourceHSId, Pair.of(dataMsg.getTargetId(), container)));
-                    success = true;
-                } finally {
-                    if (!success && container != null) {
-                        container.discard();
-                    }
-                    if (compressionBuffer != null) {
-                        compressionBufferC.discard();
-                    }
+                    uncompressedSize = CompressionService.decompressBuffer(compressionBuffer, messageBuffer);
                 }
-            }
-        } catch (IOException e) {
-            /*
-             * Wait until the last message is delivered and then wait some more
-             * so it can be processed so that closed can be set and the
-             * exception suppressed.
-             */
-            try {
-                while (!m_queue.isEmpty()) {
-                    Thread.sleep(50);
+                messageBuffer.limit(uncompressedSize);
+                success = true;
+                return Pair.of(m_msg.m_sourceHSId, Pair.of(m_msg.getTargetId(), m_container));
+            } finally {
+                if (!success) {
+                    m_container.discard();
+                }
+                if (m_compressionBufferC != null) {
+                    m_compressionBufferC.discard();
                 }
-                Thread.sleep(300);
-            } catch (InterruptedException e2) {}
-            if (m_closed) {
-                return;
             }
-            rejoinLog.error("Error reading a message from a recovery stream.", e);
-        } catch (InterruptedException e) {
-            return;
         }
     }
 }
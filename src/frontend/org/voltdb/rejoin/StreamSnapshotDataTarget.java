@@ -25,6 +25,7 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.TreeMap;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -65,6 +66,9 @@ implements SnapshotDataTarget, StreamSnapshotAckReceiver.AckCallback {
     public final static long DEFAULT_WRITE_TIMEOUT_MS = m_rejoinDeathTestMode ? 10000 : Long.getLong("REJOIN_WRITE_TIMEOUT_MS", 60000);
     final static long WATCHDOG_PERIOS_S = 5;
 
+    // codec for the blocks sent by this node
+    static final StreamSnapshotCompression m_compression = StreamSnapshotCompression.fromSystemProperty();
+
     // schemas for all the tables on this partition
     private final Map<Integer, byte[]> m_schemas = new HashMap<Integer, byte[]>();
     // HSId of the destination mailbox
@@ -124,19 +128,25 @@ implements SnapshotDataTarget, StreamSnapshotAckReceiver.AckCallback {
 
     /**
      * Packages up a pending write into a piece of work that can be tracked
-     * and can be scheduled.
+     * and can be scheduled. The block is compressed on the compression service
+     * as soon as the work is created, so blocks queued behind the one being
+     * sent are compressed in parallel and the sender thread only has to send them.
      */
     public static class SendWork {
         BBContainer m_message;
         final long m_targetId;
         final long m_destHSId;
         final long m_ts;
+        final StreamSnapshotCompression m_compression;
 
         final boolean m_isEmpty;
 
         // A listenable future used to notify a listener when this buffer is discarded
         final SettableFuture<Boolean> m_future;
 
+        // The compressed block, null if the work was discarded before it was compressed
+        private ListenableFuture<byte[]> m_compressedData;
+
         /**
          * Creates an empty send work to terminate the sender thread
          */
@@ -145,18 +155,27 @@ implements SnapshotDataTarget, StreamSnapshotAckReceiver.AckCallback {
             m_targetId = -1;
             m_destHSId = -1;
             m_ts = -1;
+            m_compression = null;
             m_future = null;
         }
 
         SendWork (long targetId, long destHSId,
                   BBContainer message,
+                  StreamSnapshotCompression compression,
                   SettableFuture<Boolean> future) {
             m_isEmpty = false;
             m_targetId = targetId;
             m_destHSId = destHSId;
             m_message = message;
+            m_compression = compression;
             m_ts = System.currentTimeMillis();
             m_future = future;
+            m_compressedData = CompressionService.submitCompressionTask(new Callable<byte[]>() {
+                @Override
+                public byte[] call() throws Exception {
+                    return compress();
+                }
+            });
         }
 
         /**
@@ -172,45 +191,57 @@ implements SnapshotDataTarget, StreamSnapshotAckReceiver.AckCallback {
         }
 
         /**
-         * Compress the data in the BBContainer provided, then package it up in
-         * a RejoinDataMessage instance, and finally hand it off to the messaging
-         * subsystem.
+         * Compress the data in the BBContainer. Synchronized so the buffer
+         * can't be discarded while it is being read.
          */
-        protected int send(Mailbox mb, MessageFactory msgFactory, BBContainer message) throws IOException {
-            final ByteBuffer messageBuffer = message.b();
-            if (messageBuffer.isDirect()) {
-                byte[] data = CompressionService.compressBuffer(messageBuffer);
-                mb.send(m_destHSId, msgFactory.makeDataMessage(m_targetId, data));
-
-                if (rejoinLog.isTraceEnabled()) {
-                    rejoinLog.trace("Sending direct buffer");
-                }
+        private synchronized byte[] compress() throws IOException {
+            // this work has already been discarded
+            if (m_message == null) {
+                return null;
+            }
 
-                return data.length;
+            final ByteBuffer messageBuffer = m_message.b();
+            if (m_compression == StreamSnapshotCompression.LZ4) {
+                return CompressionService.lz4CompressBuffer(messageBuffer);
+            } else if (messageBuffer.isDirect()) {
+                return CompressionService.compressBuffer(messageBuffer);
             } else {
-                byte compressedBytes[] =
-                    CompressionService.compressBytes(
-                            messageBuffer.array(), messageBuffer.position(),
-                            messageBuffer.remaining());
+                return CompressionService.compressBytes(
+                        messageBuffer.array(), messageBuffer.position(),
+                        messageBuffer.remaining());
+            }
+        }
 
-                mb.send(m_destHSId, msgFactory.makeDataMessage(m_targetId, compressedBytes));
+        /**
+         * Wait for the compressed data, then package it up in a RejoinDataMessage
+         * instance, and finally hand it off to the messaging subsystem. Not
+         * synchronized, the ack receiver must be able to discard other work
+         * while the sender waits here.
+         */
+        public int doWork(Mailbox mb, MessageFactory msgFactory) throws Exception {
+            try {
+                final byte[] data;
+                try {
+                    data = m_compressedData.get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof Exception) {
+                        throw (Exception) e.getCause();
+                    }
+                    throw e;
+                }
 
-                if (rejoinLog.isTraceEnabled()) {
-                    rejoinLog.trace("Sending heap buffer");
+                // this work has already been discarded
+                if (data == null) {
+                    return 0;
                 }
 
-                return compressedBytes.length;
-            }
-        }
+                mb.send(m_destHSId, msgFactory.makeDataMessage(m_targetId, data, m_compression));
 
-        public synchronized int doWork(Mailbox mb, MessageFactory msgFactory) throws Exception {
-            // this work has already been discarded
-            if (m_message == null) {
-                return 0;
-            }
+                if (rejoinLog.isTraceEnabled()) {
+                    rejoinLog.trace("Sending " + m_compression + " compressed block of " + data.length + " bytes");
+                }
 
-            try {
-                return send(mb, msgFactory, m_message);
+                return data.length;
             } finally {
                 // Buffers are only discarded after they are acked. Discarding them here would cause the sender to
                 // generate too much work for the receiver.
@@ -496,7 +527,7 @@ implements SnapshotDataTarget, StreamSnapshotAckReceiver.AckCallback {
      */
     synchronized ListenableFuture<Boolean> send(int blockIndex, BBContainer chunk) {
         SettableFuture<Boolean> sendFuture = SettableFuture.create();
-        SendWork sendWork = new SendWork(m_targetId, m_destHSId, chunk, sendFuture);
+        SendWork sendWork = new SendWork(m_targetId, m_destHSId, chunk, m_compression, sendFuture);
         m_outstandingWork.put(blockIndex, sendWork);
         m_outstandingWorkCount.incrementAndGet();
         m_sender.offer(sendWork);
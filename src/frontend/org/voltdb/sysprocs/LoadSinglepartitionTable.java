@@ -25,14 +25,18 @@ import org.voltdb.ParameterSet;
 import org.voltdb.ProcInfo;
 import org.voltdb.SQLStmt;
 import org.voltdb.SystemProcedureExecutionContext;
+import org.voltdb.TheHashinator;
 import org.voltdb.VoltSystemProcedure;
 import org.voltdb.VoltTable;
+import org.voltdb.VoltType;
+import org.voltdb.catalog.CatalogMap;
 import org.voltdb.catalog.Column;
 import org.voltdb.catalog.Constraint;
 import org.voltdb.catalog.Procedure;
 import org.voltdb.catalog.Statement;
 import org.voltdb.catalog.Table;
 import org.voltdb.types.ConstraintType;
+import org.voltdb.utils.CatalogUtil;
 
 /**
  * Given as input a VoltTable with a schema corresponding to a persistent table,
@@ -45,6 +49,8 @@ import org.voltdb.types.ConstraintType;
 )
 public class LoadSinglepartitionTable extends VoltSystemProcedure
 {
+    private static final boolean USE_DIRECT_INSERT = !Boolean.getBoolean("DISABLE_DIRECT_TABLE_LOAD");
+
     @Override
     public void init() {}
 
@@ -117,6 +123,15 @@ public class LoadSinglepartitionTable extends VoltSystemProcedure
         // fix any case problems
         tableName = catTable.getTypeName();
 
+        // Plain inserts of rows already in the table's format go straight into
+        // the EE table instead of through one insert statement per row. The EE
+        // doesn't check partitioning on a load, so a batch with a row of another
+        // partition goes through the insert statement, which rejects it.
+        if (!isUpsert && canInsertDirectly(ctx, catTable, table) && isPartitionedHere(ctx, catTable, table)) {
+            m_runner.voltInsertTable(catTable, table);
+            return table.getRowCount();
+        }
+
         // check that the schema of the input matches
         int columnCount = table.getColumnCount();
 
@@ -172,6 +187,55 @@ public class LoadSinglepartitionTable extends VoltSystemProcedure
         return executed;
     }
 
+    /**
+     * The EE can load the rows as they are if they need no type conversion and
+     * the table needs nothing the insert statement would do for it: no tuple
+     * limit to enforce, no hidden DR columns, and not an export stream or view.
+     */
+    private boolean canInsertDirectly(SystemProcedureExecutionContext ctx, Table catTable, VoltTable table) {
+        if (!USE_DIRECT_INSERT || m_runner.getNonVoltDBBackendIfExists() != null) {
+            return false;
+        }
+        if (catTable.getIsdred() || catTable.getTuplelimit() != Integer.MAX_VALUE ||
+                catTable.getMaterializer() != null ||
+                CatalogUtil.isTableExportOnly(ctx.getDatabase(), catTable)) {
+            return false;
+        }
+        CatalogMap<Column> columns = catTable.getColumns();
+        if (table.getColumnCount() != columns.size()) {
+            return false;
+        }
+        for (Column column : columns) {
+            if (table.getColumnType(column.getIndex()) != VoltType.get((byte) column.getType())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Check that every row hashes to this partition with the site's hashinator.
+     * The client may have routed the batch with a stale hashinator, or called
+     * the sysproc directly.
+     */
+    private static boolean isPartitionedHere(SystemProcedureExecutionContext ctx, Table catTable, VoltTable table) {
+        final TheHashinator hashinator = ctx.getCurrentHashinator();
+        final int partitionId = ctx.getPartitionId();
+        final int pIndex = catTable.getPartitioncolumn().getIndex();
+        final VoltType pType = table.getColumnType(pIndex);
+        table.resetRowPosition();
+        try {
+            while (table.advanceRow()) {
+                if (hashinator.getHashedPartitionForParameter(pType, table.get(pIndex, pType)) != partitionId) {
+                    return false;
+                }
+            }
+        } finally {
+            table.resetRowPosition();
+        }
+        return true;
+    }
+
     /**
      * Execute a set of queued inserts. Ensure each insert successfully
      * inserts one row. Throw exception if not.
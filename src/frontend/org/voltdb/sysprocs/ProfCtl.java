@@ -21,6 +21,7 @@ import java.util.List;
 import java.util.Map;
 
 import org.voltdb.DependencyPair;
+import org.voltdb.ExecutionStats;
 import org.voltdb.SystemProcedureExecutionContext;
 import org.voltdb.ParameterSet;
 import org.voltdb.ProcInfo;
@@ -70,6 +71,15 @@ public class ProfCtl extends VoltSystemProcedure {
                 }
             }
         }
+        else if (command.equalsIgnoreCase("EXECUTION_TIMING_ENABLE")) {
+            // Every site on this host picks it up at its next stats tick
+            ExecutionStats.setTimingEnabled(true);
+            table.addRow(command);
+        }
+        else if (command.equalsIgnoreCase("EXECUTION_TIMING_DISABLE")) {
+            ExecutionStats.setTimingEnabled(false);
+            table.addRow(command);
+        }
         else {
             table.addRow("Invalid command: " + command);
         }
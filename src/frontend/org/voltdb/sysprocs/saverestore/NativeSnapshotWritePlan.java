@@ -22,10 +22,14 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import org.json_voltpatches.JSONException;
 import org.json_voltpatches.JSONObject;
 import org.voltcore.utils.CoreUtils;
 import org.voltcore.utils.InstanceId;
@@ -37,6 +41,7 @@ import org.voltdb.SnapshotFormat;
 import org.voltdb.SnapshotSiteProcessor;
 import org.voltdb.SnapshotTableTask;
 import org.voltdb.SystemProcedureExecutionContext;
+import org.voltdb.TableStreamType;
 import org.voltdb.TheHashinator;
 import org.voltdb.TheHashinator.HashinatorType;
 import org.voltdb.VoltDB;
@@ -56,9 +61,48 @@ import com.google_voltpatches.common.collect.Maps;
  * responsibility for writing them is spread round-robin across the sites on a
  * node.  Partitioned tables are written to the same target per table by every
  * site on a node.
+ *
+ * An incremental base snapshot is written like a full snapshot and starts
+ * tracking changes in the EE. An incremental delta snapshot writes the rows
+ * modified since the previous base or delta of this host to the usual table
+ * files and the rows deleted since then to a second file per table.
  */
 public class NativeSnapshotWritePlan extends SnapshotWritePlan
 {
+    // The last incremental snapshot of this host and the base it builds on.
+    // Only accessed while holding SnapshotSiteProcessor.m_snapshotCreateLock.
+    private static String s_lastIncrementalNonce = null;
+    private static String s_incrementalBaseNonce = null;
+
+    private TableStreamType m_streamType = TableStreamType.SNAPSHOT;
+    private final Set<SnapshotTableTask> m_deletedRowsTasks = new HashSet<SnapshotTableTask>();
+
+    @Override
+    public TableStreamType getStreamType(SnapshotFormat format)
+    {
+        return m_streamType;
+    }
+
+    /**
+     * Get the stream type requested by the "incremental" option of a native
+     * snapshot, "base" or "delta". Returns SNAPSHOT if the option is absent.
+     */
+    static TableStreamType getRequestedStreamType(JSONObject jsData)
+    {
+        if (jsData == null || !jsData.has(SnapshotUtil.JSON_INCREMENTAL)) {
+            return TableStreamType.SNAPSHOT;
+        }
+        String incremental = jsData.optString(SnapshotUtil.JSON_INCREMENTAL);
+        if (SnapshotUtil.INCREMENTAL_BASE.equalsIgnoreCase(incremental)) {
+            return TableStreamType.SNAPSHOT_DELTA_BASE;
+        } else if (SnapshotUtil.INCREMENTAL_DELTA.equalsIgnoreCase(incremental)) {
+            return TableStreamType.SNAPSHOT_DELTA;
+        }
+        throw new IllegalArgumentException("Unknown incremental snapshot type \"" + incremental +
+                "\", expected \"" + SnapshotUtil.INCREMENTAL_BASE + "\" or \"" +
+                SnapshotUtil.INCREMENTAL_DELTA + "\"");
+    }
+
     @Override
     public Callable<Boolean> createSetup(String file_path,
                                             String file_nonce,
@@ -96,6 +140,19 @@ public class NativeSnapshotWritePlan extends SnapshotWritePlan
             throw new RuntimeException("No hashinator data provided for elastic hashinator type.");
         }
 
+        m_streamType = getRequestedStreamType(jsData);
+        if (m_streamType != TableStreamType.SNAPSHOT) {
+            if (jsData.has("tables") || jsData.has("skiptables")) {
+                throw new IllegalArgumentException("Incremental snapshots always include every table");
+            }
+            if (m_streamType == TableStreamType.SNAPSHOT_DELTA && s_lastIncrementalNonce == null) {
+                SNAP_LOG.info("No incremental snapshot was taken on this host since it started, " +
+                        "writing " + file_nonce + " as an incremental base");
+                m_streamType = TableStreamType.SNAPSHOT_DELTA_BASE;
+            }
+            extraSnapshotData.setIncrementalInfo(trackIncrementalSnapshot(file_nonce));
+        }
+
         final SnapshotRequestConfig config = new SnapshotRequestConfig(jsData, context.getDatabase());
         final Table[] tableArray;
         if (config.tables.length == 0 && (jsData == null || !jsData.has("tables"))) {
@@ -133,6 +190,22 @@ public class NativeSnapshotWritePlan extends SnapshotWritePlan
                 partitionedSnapshotTasks.add(task);
             }
 
+            // The EE writes the deleted rows of a delta to the second task of the table
+            if (m_streamType == TableStreamType.SNAPSHOT_DELTA) {
+                final SnapshotTableTask deletedRowsTask =
+                        new SnapshotTableTask(
+                                table,
+                                new SnapshotDataFilter[0],
+                                null,
+                                false);
+                m_deletedRowsTasks.add(deletedRowsTask);
+                if (table.getIsreplicated()) {
+                    replicatedSnapshotTasks.add(deletedRowsTask);
+                } else {
+                    partitionedSnapshotTasks.add(deletedRowsTask);
+                }
+            }
+
             result.addRow(context.getHostId(),
                     CoreUtils.getHostnameOrAddress(),
                     table.getTypeName(),
@@ -147,7 +220,11 @@ public class NativeSnapshotWritePlan extends SnapshotWritePlan
         // Native snapshots place the partitioned tasks on every site and round-robin the
         // replicated tasks across all the sites on every host
         placePartitionedTasks(partitionedSnapshotTasks, tracker.getSitesForHost(context.getHostId()));
-        placeReplicatedTasks(replicatedSnapshotTasks, tracker.getSitesForHost(context.getHostId()));
+        if (m_streamType == TableStreamType.SNAPSHOT_DELTA) {
+            placeReplicatedTaskPairs(replicatedSnapshotTasks, tracker.getSitesForHost(context.getHostId()));
+        } else {
+            placeReplicatedTasks(replicatedSnapshotTasks, tracker.getSitesForHost(context.getHostId()));
+        }
 
         boolean isTruncationSnapshot = true;
         if (jsData != null) {
@@ -161,6 +238,48 @@ public class NativeSnapshotWritePlan extends SnapshotWritePlan
                 replicatedSnapshotTasks, isTruncationSnapshot);
     }
 
+    /**
+     * Both tasks of a replicated table in a delta are streamed by the same
+     * table stream, so they have to be placed on the same site.
+     */
+    private void placeReplicatedTaskPairs(List<SnapshotTableTask> tasks, List<Long> hsids)
+    {
+        SNAP_LOG.debug("Placing replicated task pairs at sites: " + CoreUtils.hsIdCollectionToString(hsids));
+        int siteIndex = 0;
+        for (int i = 0; i < tasks.size(); i += 2) {
+            ArrayList<Long> robin = new ArrayList<Long>();
+            robin.add(hsids.get(siteIndex));
+            placeTask(tasks.get(i), robin);
+            placeTask(tasks.get(i + 1), robin);
+            siteIndex = (siteIndex + 1) % hsids.size();
+        }
+    }
+
+    /**
+     * Record the snapshot with the given nonce as the latest incremental
+     * snapshot of this host and describe its place in the chain for the digest.
+     */
+    private JSONObject trackIncrementalSnapshot(String file_nonce)
+    {
+        JSONObject info = new JSONObject();
+        try {
+            if (m_streamType == TableStreamType.SNAPSHOT_DELTA_BASE) {
+                info.put(SnapshotUtil.JSON_INCREMENTAL_TYPE, SnapshotUtil.INCREMENTAL_BASE);
+                s_incrementalBaseNonce = file_nonce;
+            } else {
+                info.put(SnapshotUtil.JSON_INCREMENTAL_TYPE, SnapshotUtil.INCREMENTAL_DELTA);
+                info.put(SnapshotUtil.JSON_PARENT_NONCE, s_lastIncrementalNonce);
+                info.put(SnapshotUtil.JSON_BASE_NONCE, s_incrementalBaseNonce);
+            }
+        } catch (JSONException e) {
+            throw new RuntimeException(e);
+        }
+        // The EE restarts change tracking when the stream is activated, even
+        // if the snapshot fails later, so the next delta follows this one
+        s_lastIncrementalNonce = file_nonce;
+        return info;
+    }
+
     private Callable<Boolean> createDeferredSetup(final String file_path,
                                                   final String file_nonce,
                                                   final long txnId,
@@ -179,11 +298,13 @@ public class NativeSnapshotWritePlan extends SnapshotWritePlan
     {
         return new Callable<Boolean>() {
             private final HashMap<Integer, SnapshotDataTarget> m_createdTargets = Maps.newHashMap();
+            private final HashMap<Integer, SnapshotDataTarget> m_createdDeletedRowsTargets = Maps.newHashMap();
 
             @Override
             public Boolean call() throws Exception
             {
-                final AtomicInteger numTables = new AtomicInteger(tables.length);
+                final AtomicInteger numTables = new AtomicInteger(
+                        m_deletedRowsTasks.isEmpty() ? tables.length : tables.length * 2);
 
                 NativeSnapshotWritePlan.createFileBasedCompletionTasks(file_path, file_nonce,
                         txnId, partitionTransactionIds, context, extraSnapshotData,
@@ -227,14 +348,17 @@ public class NativeSnapshotWritePlan extends SnapshotWritePlan
             private SnapshotDataTarget getSnapshotDataTarget(AtomicInteger numTables, SnapshotTableTask task)
                     throws IOException
             {
-                SnapshotDataTarget target = m_createdTargets.get(task.m_table.getRelativeIndex());
+                final boolean deletedRows = m_deletedRowsTasks.contains(task);
+                final HashMap<Integer, SnapshotDataTarget> createdTargets =
+                        deletedRows ? m_createdDeletedRowsTargets : m_createdTargets;
+                SnapshotDataTarget target = createdTargets.get(task.m_table.getRelativeIndex());
                 if (target == null) {
-                    target = createDataTargetForTable(file_path, file_nonce, task.m_table, txnId,
+                    target = createDataTargetForTable(file_path, file_nonce, task.m_table, deletedRows, txnId,
                             context.getHostId(), context.getCluster().getTypeName(),
                             context.getDatabase().getTypeName(), context.getNumberOfPartitions(),
                             context.getDatabase().getIsactiveactivedred(),
                             tracker, timestamp, numTables, snapshotRecord);
-                    m_createdTargets.put(task.m_table.getRelativeIndex(), target);
+                    createdTargets.put(task.m_table.getRelativeIndex(), target);
                 }
                 return target;
             }
@@ -244,6 +368,7 @@ public class NativeSnapshotWritePlan extends SnapshotWritePlan
     private SnapshotDataTarget createDataTargetForTable(String file_path,
                                                         String file_nonce,
                                                         Table table,
+                                                        boolean deletedRows,
                                                         long txnId,
                                                         int hostId,
                                                         String clusterName,
@@ -258,12 +383,21 @@ public class NativeSnapshotWritePlan extends SnapshotWritePlan
     {
         SnapshotDataTarget sdt;
 
-        File saveFilePath = SnapshotUtil.constructFileForTable(
-                table,
-                file_path,
-                file_nonce,
-                SnapshotFormat.NATIVE,
-                hostId);
+        File saveFilePath;
+        if (deletedRows) {
+            saveFilePath = SnapshotUtil.constructDeletedRowsFileForTable(
+                    table,
+                    file_path,
+                    file_nonce,
+                    hostId);
+        } else {
+            saveFilePath = SnapshotUtil.constructFileForTable(
+                    table,
+                    file_path,
+                    file_nonce,
+                    SnapshotFormat.NATIVE,
+                    hostId);
+        }
 
         if (isActiveActiveDRed && table.getIsdred()) {
             sdt = new DefaultSnapshotDataTarget(saveFilePath,
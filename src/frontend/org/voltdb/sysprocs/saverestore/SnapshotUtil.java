@@ -37,6 +37,7 @@ import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -92,12 +93,20 @@ public class SnapshotUtil {
 
     public final static String HASH_EXTENSION = ".hash";
     public final static String COMPLETION_EXTENSION = ".finished";
+    // Rows deleted since the parent of an incremental delta snapshot
+    public final static String DELETED_ROWS_EXTENSION = ".vpd";
 
     public static final String JSON_PATH = "path";
     public static final String JSON_NONCE = "nonce";
     public static final String JSON_DUPLICATES_PATH = "duplicatesPath";
     public static final String JSON_HASHINATOR = "hashinator";
     public static final String JSON_IS_RECOVER = "isRecover";
+    public static final String JSON_INCREMENTAL = "incremental";
+    public static final String JSON_INCREMENTAL_TYPE = "type";
+    public static final String JSON_PARENT_NONCE = "parentNonce";
+    public static final String JSON_BASE_NONCE = "baseNonce";
+    public static final String INCREMENTAL_BASE = "base";
+    public static final String INCREMENTAL_DELTA = "delta";
 
     public static final ColumnInfo nodeResultsColumns[] =
     new ColumnInfo[] {
@@ -604,6 +613,20 @@ public class SnapshotUtil {
             return m_nonce;
         }
 
+        public void setIncrementalType(String type)
+        {
+            m_incrementalType = type;
+        }
+
+        /**
+         * A delta only holds the changes since its parent snapshot and can't
+         * be restored by itself.
+         */
+        public boolean isIncrementalDelta()
+        {
+            return INCREMENTAL_DELTA.equals(m_incrementalType);
+        }
+
         public final List<File> m_digests = new ArrayList<File>();
         public File m_hashConfig = null;
         public final List<Set<String>> m_digestTables = new ArrayList<Set<String>>();
@@ -613,6 +636,7 @@ public class SnapshotUtil {
         private final String m_nonce;
         private InstanceId m_instanceId = null;
         private long m_txnId;
+        private String m_incrementalType = null;
     }
 
     /**
@@ -796,6 +820,10 @@ public class SnapshotUtil {
                     }
                     named_s.m_digestTables.add(tableSet);
                     named_s.m_digests.add(f);
+                    JSONObject incremental = digest.optJSONObject(JSON_INCREMENTAL);
+                    if (incremental != null) {
+                        named_s.setIncrementalType(incremental.getString(JSON_INCREMENTAL_TYPE));
+                    }
                 } else if (f.getName().endsWith(".jar")) {
                     String nonce = parseNonceFromSnapshotFilename(f.getName());
                     Snapshot named_s = namedSnapshots.get(nonce);
@@ -1154,6 +1182,76 @@ public class SnapshotUtil {
         return filename_builder.toString();
     }
 
+    /**
+     * Generates the filename of the rows deleted from a table since the parent
+     * of an incremental delta snapshot.
+     */
+    public static final String constructDeletedRowsFilenameForTable(Table table,
+                                                                    String fileNonce,
+                                                                    int hostId)
+    {
+        String filename = constructFilenameForTable(table, fileNonce, SnapshotFormat.NATIVE, hostId);
+        return filename.substring(0, filename.lastIndexOf('.')) + DELETED_ROWS_EXTENSION;
+    }
+
+    public static final File constructDeletedRowsFileForTable(Table table,
+            String filePath,
+            String fileNonce,
+            int hostId)
+    {
+        return new VoltFile(filePath, constructDeletedRowsFilenameForTable(table, fileNonce, hostId));
+    }
+
+    /**
+     * Resolve the snapshots that have to be restored, in order, to recreate the
+     * snapshot with the given nonce. A full snapshot or an incremental base is
+     * restored by itself. A delta is restored by applying every delta back to its
+     * base on top of the base, the deleted rows of each delta before its rows.
+     *
+     * @param nonce            The snapshot to recreate
+     * @param digestsByNonce   The digest of each snapshot available to this host
+     * @return The nonces of the snapshots to restore, the base first
+     * @throws IllegalArgumentException If a snapshot of the chain is missing
+     *                                  or does not belong to the same base
+     */
+    public static List<String> resolveIncrementalChain(String nonce, Map<String, JSONObject> digestsByNonce)
+    throws JSONException
+    {
+        LinkedList<String> chain = new LinkedList<String>();
+        String baseNonce = null;
+        String current = nonce;
+        while (current != null) {
+            JSONObject digest = digestsByNonce.get(current);
+            if (digest == null) {
+                throw new IllegalArgumentException("Snapshot " + current + " of the incremental chain of " +
+                        nonce + " was not found");
+            }
+            if (chain.contains(current)) {
+                throw new IllegalArgumentException("The incremental chain of snapshot " + nonce +
+                        " refers back to " + current);
+            }
+            chain.addFirst(current);
+
+            JSONObject incremental = digest.optJSONObject(JSON_INCREMENTAL);
+            if (incremental == null || !INCREMENTAL_DELTA.equals(incremental.getString(JSON_INCREMENTAL_TYPE))) {
+                if (baseNonce != null && !baseNonce.equals(current)) {
+                    throw new IllegalArgumentException("Snapshot " + nonce + " is a delta of " + baseNonce +
+                            " but its chain leads to " + current);
+                }
+                break;
+            }
+            String deltaBase = incremental.getString(JSON_BASE_NONCE);
+            if (baseNonce == null) {
+                baseNonce = deltaBase;
+            } else if (!baseNonce.equals(deltaBase)) {
+                throw new IllegalArgumentException("Snapshot " + current + " is a delta of " + deltaBase +
+                        " but snapshot " + nonce + " is a delta of " + baseNonce);
+            }
+            current = incremental.getString(JSON_PARENT_NONCE);
+        }
+        return chain;
+    }
+
     public static final File constructFileForTable(Table table,
             String filePath,
             String fileNonce,
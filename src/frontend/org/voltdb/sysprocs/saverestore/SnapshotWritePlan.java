@@ -33,8 +33,10 @@ import org.voltcore.utils.CoreUtils;
 import org.voltdb.DevNullSnapshotTarget;
 import org.voltdb.ExtensibleSnapshotDigestData;
 import org.voltdb.SnapshotDataTarget;
+import org.voltdb.SnapshotFormat;
 import org.voltdb.SnapshotTableTask;
 import org.voltdb.SystemProcedureExecutionContext;
+import org.voltdb.TableStreamType;
 import org.voltdb.VoltTable;
 import org.voltdb.dtxn.SiteTracker;
 import org.voltdb.sysprocs.SnapshotRegistry;
@@ -151,6 +153,15 @@ public abstract class SnapshotWritePlan
         return m_taskListsForHSIds;
     }
 
+    /**
+     * Get the type of table stream the sites activate for this snapshot. Will
+     * only be useful after createSetup() is called.
+     */
+    public TableStreamType getStreamType(SnapshotFormat format)
+    {
+        return format.getStreamType();
+    }
+
     /**
      * Get the SnapshotDataTargets used on this site.  Will only be useful after createSetup() is called.
      */
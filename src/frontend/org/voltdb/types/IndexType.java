@@ -88,6 +88,7 @@ public enum IndexType {
         case BALANCED_TREE:
             return "_TREE";
         case BTREE:
+            return "_BTREE";
         case HASH_TABLE:
         case COVERING_CELL_INDEX:
             return "";
@@ -77,6 +77,44 @@ public interface BinaryDeque {
      */
     public BBContainer poll(OutputContainerFactory ocf) throws IOException;
 
+    /**
+     * An independent read position in the deque, for consumers that each need to see
+     * every object. Polling a reader doesn't remove anything from the deque, storage is
+     * only released once the deque's own poll and all the open readers are past it.
+     */
+    public static interface BinaryDequeReader {
+        /**
+         * Return the next object for this reader, or null if it has read everything
+         * offered so far
+         * @param ocf
+         * @return
+         * @throws IOException
+         */
+        public BBContainer poll(OutputContainerFactory ocf) throws IOException;
+
+        public boolean isEmpty() throws IOException;
+
+        public int getNumObjects();
+
+        public String getCursorId();
+
+        /**
+         * Stop reading, so storage is no longer kept for this reader
+         * @throws IOException
+         */
+        public void close() throws IOException;
+    }
+
+    /**
+     * Open a named reader that starts at the oldest object still stored in the deque,
+     * or return the open reader with that name. Readers are not persisted, a deque
+     * reopened from existing files has none.
+     * @param cursorId
+     * @return
+     * @throws IOException
+     */
+    public BinaryDequeReader openForRead(String cursorId) throws IOException;
+
     /**
      * Persist all objects in the queue to the backing store
      * @throws IOException
@@ -17,7 +17,9 @@
 package org.voltdb.utils;
 
 import org.voltcore.logging.VoltLogger;
+import com.sun.jna.LastErrorException;
 import com.sun.jna.Native;
+import com.sun.jna.Pointer;
 
 import java.util.Arrays;
 import java.util.List;
@@ -74,4 +76,23 @@ public class CLibrary {
 
     public static native final int getpid();
 
+    /*
+     * File I/O for DirectIOFileChannel. The open flags are the Linux values,
+     * O_DIRECT differs between architectures.
+     */
+    public static final int O_RDWR = 02;
+    public static final int O_CREAT = 0100;
+    public static final int O_TRUNC = 01000;
+    public static final int O_DIRECT =
+            System.getProperty("os.arch").startsWith("aarch64") ||
+            System.getProperty("os.arch").startsWith("arm") ? 0200000 : 040000;
+
+    public static native final int open(String pathname, int flags, int mode) throws LastErrorException;
+    public static native final long pread(int fd, Pointer buf, long count, long offset) throws LastErrorException;
+    public static native final long pwrite(int fd, Pointer buf, long count, long offset) throws LastErrorException;
+    public static native final int ftruncate(int fd, long length) throws LastErrorException;
+    public static native final int fsync(int fd) throws LastErrorException;
+    public static native final int fdatasync(int fd) throws LastErrorException;
+    public static native final int close(int fd) throws LastErrorException;
+
 }
@@ -345,6 +345,12 @@ public abstract class CatalogSizing {
             isize.widthMin += TUPLE_MAP_ENTRY + MIN_CELLS * CELL_MAP_ENTRY;
             isize.widthMax += TUPLE_MAP_ENTRY + MAX_CELLS * CELL_MAP_ENTRY;
         }
+        else if (index.getType() == IndexType.BTREE.getValue()) {
+            // B+tree leaves hold the key and the tuple pointer, inner nodes
+            // add little. Leaves are between half full and full.
+            isize.widthMin += TUPLE_PTR_SIZE;
+            isize.widthMax += isize.widthMax + 2 * TUPLE_PTR_SIZE;
+        }
         else {
             // Tree indexes have a 40 byte overhead per row.
             isize.widthMin += TREE_MAP_ENTRY_OVERHEAD + TUPLE_PTR_SIZE;
@@ -27,6 +27,9 @@ import java.util.concurrent.Future;
 import java.util.zip.DeflaterOutputStream;
 import java.util.zip.InflaterOutputStream;
 
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+
 import org.voltcore.utils.CoreUtils;
 import org.voltcore.utils.DBBPool;
 import org.voltcore.utils.DBBPool.BBContainer;
@@ -69,6 +72,27 @@ public final class CompressionService {
         m_buffers.get().input.discard();
         m_buffers.get().output.discard();
         m_buffers.remove();
+        m_lz4Buffers.remove();
+    }
+
+    private static final LZ4Factory m_lz4Factory = LZ4Factory.fastestInstance();
+
+    /*
+     * The LZ4 bindings only take arrays, direct buffers are copied through these
+     */
+    private static ThreadLocal<byte[][]> m_lz4Buffers = new ThreadLocal<byte[][]>() {
+        @Override
+        protected byte[][] initialValue() {
+            return new byte[][] { new byte[1024 * 32], new byte[1024 * 32] };
+        }
+    };
+
+    private static byte[] getLZ4Buffer(int index, int length) {
+        byte[][] buffers = m_lz4Buffers.get();
+        if (buffers[index].length < length) {
+            buffers[index] = new byte[Math.max(buffers[index].length * 2, length)];
+        }
+        return buffers[index];
     }
 
     /*
@@ -182,6 +206,56 @@ public final class CompressionService {
         return compressBytes(bytes, 0, bytes.length);
     }
 
+    /**
+     * LZ4 compress the remaining bytes of the buffer without moving its position.
+     * LZ4 blocks don't record their uncompressed length, so the result starts with it.
+     */
+    public static byte[] lz4CompressBuffer(ByteBuffer buffer) {
+        final int length = buffer.remaining();
+        final byte input[];
+        final int inputOffset;
+        if (buffer.hasArray()) {
+            input = buffer.array();
+            inputOffset = buffer.arrayOffset() + buffer.position();
+        } else {
+            input = getLZ4Buffer(0, length);
+            inputOffset = 0;
+            buffer.duplicate().get(input, 0, length);
+        }
+
+        final LZ4Compressor compressor = m_lz4Factory.fastCompressor();
+        final int maxCompressedLength = compressor.maxCompressedLength(length);
+        final byte output[] = getLZ4Buffer(1, maxCompressedLength);
+        final int compressedSize = compressor.compress(input, inputOffset, length, output, 0, maxCompressedLength);
+
+        final byte result[] = new byte[4 + compressedSize];
+        ByteBuffer.wrap(result).putInt(length).put(output, 0, compressedSize);
+        return result;
+    }
+
+    /**
+     * Decompress the output of lz4CompressBuffer into the buffer, starting at its position,
+     * without moving the position.
+     * @return The uncompressed length
+     */
+    public static int lz4DecompressBytes(byte compressed[], ByteBuffer uncompressed) {
+        final int length = ByteBuffer.wrap(compressed).getInt();
+        if (uncompressed.remaining() < length) {
+            throw new IllegalArgumentException("Buffer of " + uncompressed.remaining() +
+                                               " bytes can't hold " + length + " uncompressed bytes");
+        }
+        if (uncompressed.hasArray()) {
+            m_lz4Factory.fastDecompressor().decompress(compressed, 4, uncompressed.array(),
+                                                       uncompressed.arrayOffset() + uncompressed.position(),
+                                                       length);
+        } else {
+            final byte output[] = getLZ4Buffer(1, length);
+            m_lz4Factory.fastDecompressor().decompress(compressed, 4, output, 0, length);
+            uncompressed.duplicate().put(output, 0, length);
+        }
+        return length;
+    }
+
     public static Future<byte[]> decompressBufferAsync(final ByteBuffer input) throws IOException {
         return submitCompressionTask(new Callable<byte[]>() {
 
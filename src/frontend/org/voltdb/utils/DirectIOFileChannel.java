@@ -0,0 +1,845 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.voltcore.logging.VoltLogger;
+import org.voltcore.utils.CoreUtils;
+import org.voltcore.utils.DBBPool;
+import org.voltcore.utils.DBBPool.BBContainer;
+
+import com.sun.jna.LastErrorException;
+import com.sun.jna.Pointer;
+
+/**
+ * A FileChannel that writes with O_DIRECT so snapshot and PBD data doesn't
+ * go through the page cache. Without it the written pages push hot data out
+ * of the cache and the final fsync() has to write back gigabytes at once.
+ *
+ * Writes are gathered in an aligned buffer per file and written out a full
+ * buffer at a time by a shared pool of writer threads, so up to
+ * DIRECT_IO_QUEUE_DEPTH writes per file are in flight while the caller keeps
+ * filling the next buffer. Writes before the current buffer, like header
+ * updates, read, modify and write the aligned block they fall in. Reads see
+ * everything written so far, including data still in the buffer.
+ *
+ * O_DIRECT needs aligned offsets and lengths, so the last block may be
+ * written padded. The file is truncated back to its size on force() and
+ * close().
+ *
+ * Locks and read only mappings go through a regular channel of the same
+ * file, opened when first needed. Mapping the file for writing isn't
+ * supported, those writes would bypass the buffer.
+ *
+ * Enabled by setting DIRECT_IO, Linux only.
+ */
+public class DirectIOFileChannel extends FileChannel {
+    private static final VoltLogger LOG = new VoltLogger("HOST");
+
+    public static final boolean ENABLED =
+            Boolean.getBoolean("DIRECT_IO") && System.getProperty("os.name").equalsIgnoreCase("linux");
+
+    static final int ALIGNMENT = 4096;
+    static final int BUFFER_SIZE = alignUp(Integer.getInteger("DIRECT_IO_BUFFER_SIZE", 1024 * 1024));
+    static final int QUEUE_DEPTH = Integer.getInteger("DIRECT_IO_QUEUE_DEPTH", 4);
+    static final int READ_SIZE = 64 * 1024;
+
+    // Created on first use so the threads only exist when direct I/O is used
+    private static class Writers {
+        static final ExecutorService s_pool = Executors.newFixedThreadPool(QUEUE_DEPTH,
+                CoreUtils.getThreadFactory(null, "Direct I/O writer", CoreUtils.SMALL_STACK_SIZE, true, null));
+    }
+
+    /*
+     * Write counters of each kind of file, for IOStats
+     */
+    private static final Map<String, Stats> s_stats = new LinkedHashMap<String, Stats>();
+
+    static class Stats {
+        final AtomicLong m_bytesWritten = new AtomicLong();
+        final AtomicLong m_writes = new AtomicLong();
+        final AtomicLong m_writeNanos = new AtomicLong();
+        final AtomicLong m_maxWriteNanos = new AtomicLong();
+        // Totals at the last interval
+        long m_lastBytesWritten = 0;
+        long m_lastWrites = 0;
+        long m_lastWriteNanos = 0;
+
+        void record(long bytes, long nanos) {
+            m_bytesWritten.addAndGet(bytes);
+            m_writes.incrementAndGet();
+            m_writeNanos.addAndGet(nanos);
+            long max;
+            while (nanos > (max = m_maxWriteNanos.get())) {
+                if (m_maxWriteNanos.compareAndSet(max, nanos)) {
+                    break;
+                }
+            }
+        }
+    }
+
+    private static synchronized Stats getStatsFor(String kind) {
+        Stats stats = s_stats.get(kind);
+        if (stats == null) {
+            stats = new Stats();
+            s_stats.put(kind, stats);
+        }
+        return stats;
+    }
+
+    /**
+     * Get the bytes written, the number of writes, and the average and maximum
+     * write latency in microseconds of each kind of file. The maximum is reset
+     * by every call, the rest only by interval calls.
+     */
+    public static synchronized Map<String, long[]> getStats(boolean interval) {
+        Map<String, long[]> result = new LinkedHashMap<String, long[]>();
+        for (Map.Entry<String, Stats> e : s_stats.entrySet()) {
+            Stats stats = e.getValue();
+            long bytes = stats.m_bytesWritten.get();
+            long writes = stats.m_writes.get();
+            long nanos = stats.m_writeNanos.get();
+            long maxNanos = stats.m_maxWriteNanos.getAndSet(0);
+            if (interval) {
+                long intervalWrites = writes - stats.m_lastWrites;
+                long intervalNanos = nanos - stats.m_lastWriteNanos;
+                result.put(e.getKey(), new long[] {
+                        bytes - stats.m_lastBytesWritten,
+                        intervalWrites,
+                        intervalWrites == 0 ? 0 : intervalNanos / intervalWrites / 1000,
+                        maxNanos / 1000 });
+                stats.m_lastBytesWritten = bytes;
+                stats.m_lastWrites = writes;
+                stats.m_lastWriteNanos = nanos;
+            } else {
+                result.put(e.getKey(), new long[] {
+                        bytes, writes, writes == 0 ? 0 : nanos / writes / 1000, maxNanos / 1000 });
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Open the file for direct I/O, used for writing by the kind of file
+     * named. If that fails, for example because the file system doesn't
+     * support O_DIRECT, log it and return the fallback channel instead.
+     * Otherwise the fallback channel is closed.
+     */
+    public static FileChannel open(File file, String kind, FileChannel fallback) {
+        try {
+            DirectIOFileChannel channel = new DirectIOFileChannel(file, getStatsFor(kind));
+            fallback.close();
+            return channel;
+        } catch (IOException e) {
+            LOG.warn("Unable to open " + file + " for direct I/O, writing through the page cache instead: " +
+                     e.getMessage());
+            return fallback;
+        }
+    }
+
+    static int alignUp(int value) {
+        return (value + ALIGNMENT - 1) & ~(ALIGNMENT - 1);
+    }
+
+    static long alignUp(long value) {
+        return (value + ALIGNMENT - 1) & ~((long)ALIGNMENT - 1);
+    }
+
+    static long alignDown(long value) {
+        return value & ~((long)ALIGNMENT - 1);
+    }
+
+    /**
+     * A direct buffer whose start address is aligned for O_DIRECT
+     */
+    private static class AlignedBuffer {
+        final BBContainer m_cont;
+        final ByteBuffer m_buf;
+        final Pointer m_ptr;
+
+        AlignedBuffer(int capacity) {
+            m_cont = DBBPool.allocateDirect(capacity + ALIGNMENT);
+            final int offset = (int)((ALIGNMENT - (m_cont.address() % ALIGNMENT)) % ALIGNMENT);
+            ByteBuffer b = m_cont.b();
+            b.position(offset);
+            b.limit(offset + capacity);
+            m_buf = b.slice();
+            m_ptr = new Pointer(m_cont.address() + offset);
+        }
+    }
+
+    private final File m_file;
+    private final Stats m_stats;
+    private final int m_fd;
+
+    // Logical size and position of the file
+    private long m_size;
+    private long m_position = 0;
+    // Size of the file on disk, may include padding past m_size
+    private long m_diskSize;
+
+    // Buffer of the file range starting at m_bufferStart, holding m_bufferValid bytes
+    // of which the range m_dirtyStart to m_dirtyEnd hasn't been written yet
+    private AlignedBuffer m_buffer;
+    private long m_bufferStart = 0;
+    private int m_bufferValid = 0;
+    private int m_dirtyStart = 0;
+    private int m_dirtyEnd = 0;
+
+    // Block before the buffer last changed by a partial write, written out when
+    // another block is changed, before reading from disk, and on force() and close()
+    private AlignedBuffer m_block = null;
+    private long m_blockOffset = -1;
+    private boolean m_blockDirty = false;
+
+    // Range of the file last read from disk, valid until the next write
+    private AlignedBuffer m_readBuffer = null;
+    private long m_readStart = -1;
+    private int m_readValid = 0;
+
+    // Buffers that aren't being written, and the number of writes in flight
+    private final ArrayDeque<AlignedBuffer> m_freeBuffers = new ArrayDeque<AlignedBuffer>();
+    private final Object m_inFlightLock = new Object();
+    private int m_inFlight = 0;
+    // Set on close, writers discard their buffer instead of returning it
+    private boolean m_buffersReleased = false;
+    private volatile IOException m_writeException = null;
+
+    // Regular channel of the file for locks and mappings
+    private FileChannel m_delegate = null;
+
+    private DirectIOFileChannel(File file, Stats stats) throws IOException {
+        m_file = file;
+        m_stats = stats;
+        try {
+            m_fd = CLibrary.open(file.getPath(), CLibrary.O_RDWR | CLibrary.O_CREAT | CLibrary.O_DIRECT, 0644);
+        } catch (LastErrorException e) {
+            throw new IOException("open() of " + file + " failed with errno " + e.getErrorCode());
+        }
+        m_size = file.length();
+        m_diskSize = m_size;
+        m_buffer = allocateBuffer();
+        loadBuffer(0);
+    }
+
+    private AlignedBuffer allocateBuffer() {
+        return new AlignedBuffer(BUFFER_SIZE);
+    }
+
+    private void checkWriteException() throws IOException {
+        if (m_writeException != null) {
+            throw m_writeException;
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (!isOpen()) {
+            throw new ClosedChannelException();
+        }
+    }
+
+    private void pwrite(Pointer ptr, long count, long offset) throws IOException {
+        final long start = System.nanoTime();
+        long written = 0;
+        try {
+            while (written < count) {
+                final long n = CLibrary.pwrite(m_fd, ptr.share(written), count - written, offset + written);
+                if (n <= 0) {
+                    throw new IOException("pwrite() to " + m_file + " wrote nothing at offset " + (offset + written));
+                }
+                written += n;
+            }
+        } catch (LastErrorException e) {
+            throw new IOException("pwrite() to " + m_file + " failed with errno " + e.getErrorCode());
+        }
+        m_stats.record(count, System.nanoTime() - start);
+    }
+
+    /*
+     * Read the aligned range into the buffer, returns the bytes read before the end of file
+     */
+    private long pread(Pointer ptr, long count, long offset) throws IOException {
+        long read = 0;
+        try {
+            while (read < count) {
+                long n = CLibrary.pread(m_fd, ptr.share(read), count - read, offset + read);
+                if (n <= 0) {
+                    break;
+                }
+                read += n;
+            }
+        } catch (LastErrorException e) {
+            throw new IOException("pread() from " + m_file + " failed with errno " + e.getErrorCode());
+        }
+        return read;
+    }
+
+    /*
+     * Wait until all writes in flight are done
+     */
+    private void drain() throws IOException {
+        synchronized (m_inFlightLock) {
+            while (m_inFlight > 0) {
+                try {
+                    m_inFlightLock.wait();
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+            }
+        }
+        checkWriteException();
+    }
+
+    /*
+     * Wait until all writes in flight are done, ignoring interrupts. Used on close,
+     * the writers must be done with the file descriptor before it can be closed.
+     */
+    private void drainUninterruptibly() {
+        boolean interrupted = false;
+        synchronized (m_inFlightLock) {
+            while (m_inFlight > 0) {
+                try {
+                    m_inFlightLock.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /*
+     * Make the buffer hold the file range starting at the aligned offset,
+     * reading the part of it that is already in the file
+     */
+    private void loadBuffer(long start) throws IOException {
+        m_bufferStart = start;
+        m_dirtyStart = m_dirtyEnd = 0;
+        m_bufferValid = (int)Math.max(0, Math.min(BUFFER_SIZE, m_size - start));
+        if (m_bufferValid > 0) {
+            pread(m_buffer.m_ptr, alignUp(m_bufferValid), start);
+        }
+    }
+
+    /*
+     * Start writing the dirty part of the buffer and switch to another buffer.
+     * Blocks while as many writes as the queue depth allows are in flight.
+     */
+    private void submitBuffer() throws IOException {
+        if (m_dirtyEnd > m_dirtyStart) {
+            final AlignedBuffer buffer = m_buffer;
+            final int from = (int)alignDown(m_dirtyStart);
+            final int to = alignUp(m_dirtyEnd);
+            final long offset = m_bufferStart + from;
+            m_diskSize = Math.max(m_diskSize, offset + (to - from));
+
+            synchronized (m_inFlightLock) {
+                while (m_inFlight >= QUEUE_DEPTH) {
+                    try {
+                        m_inFlightLock.wait();
+                    } catch (InterruptedException e) {
+                        throw new InterruptedIOException();
+                    }
+                }
+                m_inFlight++;
+                m_buffer = m_freeBuffers.poll();
+            }
+            if (m_buffer == null) {
+                m_buffer = allocateBuffer();
+            }
+
+            Writers.s_pool.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        pwrite(buffer.m_ptr.share(from), to - from, offset);
+                    } catch (IOException e) {
+                        LOG.error("Error writing " + m_file + " with direct I/O", e);
+                        m_writeException = e;
+                    } finally {
+                        synchronized (m_inFlightLock) {
+                            if (m_buffersReleased) {
+                                buffer.m_cont.discard();
+                            } else {
+                                m_freeBuffers.add(buffer);
+                            }
+                            m_inFlight--;
+                            m_inFlightLock.notifyAll();
+                        }
+                    }
+                }
+            });
+        }
+        m_dirtyStart = m_dirtyEnd = 0;
+    }
+
+    /*
+     * Write the dirty part of the buffer and wait for it, keeping the buffer
+     */
+    private void flushBuffer() throws IOException {
+        drain();
+        if (m_dirtyEnd > m_dirtyStart) {
+            final int from = (int)alignDown(m_dirtyStart);
+            final int to = alignUp(m_dirtyEnd);
+            pwrite(m_buffer.m_ptr.share(from), to - from, m_bufferStart + from);
+            m_diskSize = Math.max(m_diskSize, m_bufferStart + to);
+            m_dirtyStart = m_dirtyEnd = 0;
+        }
+    }
+
+    /*
+     * Copy up to length bytes of src to the file at position, returns the bytes copied
+     */
+    private int writeOnce(ByteBuffer src, long position) throws IOException {
+        final long bufferEnd = m_bufferStart + BUFFER_SIZE;
+        if (position < m_bufferStart) {
+            return writeBlock(src, position);
+        }
+        if (position >= bufferEnd) {
+            submitBuffer();
+            if (position != bufferEnd) {
+                // Not appending, the new range may overlap a write in flight or the block
+                drain();
+                flushBlock();
+            }
+            loadBuffer(alignDown(position));
+            if (m_blockOffset >= m_bufferStart) {
+                m_blockOffset = -1;
+            }
+        }
+
+        final int offset = (int)(position - m_bufferStart);
+        final int length = Math.min(src.remaining(), BUFFER_SIZE - offset);
+        if (offset > m_bufferValid) {
+            // Skipped over bytes past the end of the file, they read as zeros
+            ByteBuffer gap = m_buffer.m_buf.duplicate();
+            gap.position(m_bufferValid).limit(offset);
+            while (gap.hasRemaining()) {
+                gap.put((byte)0);
+            }
+            m_dirtyStart = m_dirtyEnd > m_dirtyStart ? Math.min(m_dirtyStart, m_bufferValid) : m_bufferValid;
+            m_dirtyEnd = Math.max(m_dirtyEnd, offset);
+        }
+        ByteBuffer dest = m_buffer.m_buf.duplicate();
+        dest.position(offset);
+        ByteBuffer part = src.duplicate();
+        part.limit(part.position() + length);
+        dest.put(part);
+        src.position(src.position() + length);
+
+        if (m_dirtyEnd > m_dirtyStart) {
+            m_dirtyStart = Math.min(m_dirtyStart, offset);
+            m_dirtyEnd = Math.max(m_dirtyEnd, offset + length);
+        } else {
+            m_dirtyStart = offset;
+            m_dirtyEnd = offset + length;
+        }
+        m_bufferValid = Math.max(m_bufferValid, offset + length);
+        return length;
+    }
+
+    private void flushBlock() throws IOException {
+        if (m_blockDirty) {
+            pwrite(m_block.m_ptr, ALIGNMENT, m_blockOffset);
+            m_diskSize = Math.max(m_diskSize, m_blockOffset + ALIGNMENT);
+            m_blockDirty = false;
+        }
+    }
+
+    /*
+     * Copy up to length bytes of src to the aligned block before the buffer
+     * that position falls in, returns the bytes copied
+     */
+    private int writeBlock(ByteBuffer src, long position) throws IOException {
+        final long blockOffset = alignDown(position);
+        if (m_block == null) {
+            m_block = new AlignedBuffer(ALIGNMENT);
+        }
+        if (m_blockOffset != blockOffset) {
+            flushBlock();
+            // The block may have been part of a buffer still being written
+            drain();
+            m_blockOffset = -1;
+            long read = blockOffset < m_diskSize ? pread(m_block.m_ptr, ALIGNMENT, blockOffset) : 0;
+            for (int i = (int)Math.min(read, ALIGNMENT); i < ALIGNMENT; i++) {
+                m_block.m_buf.put(i, (byte)0);
+            }
+            m_blockOffset = blockOffset;
+        }
+        final int offset = (int)(position - blockOffset);
+        final int length = (int)Math.min(src.remaining(),
+                Math.min(ALIGNMENT - offset, m_bufferStart - position));
+        ByteBuffer dest = m_block.m_buf.duplicate();
+        dest.position(offset);
+        ByteBuffer part = src.duplicate();
+        part.limit(part.position() + length);
+        dest.put(part);
+        src.position(src.position() + length);
+        m_blockDirty = true;
+        return length;
+    }
+
+    /*
+     * Copy up to the remaining bytes of dst from the file at position,
+     * returns the bytes copied
+     */
+    private int readOnce(ByteBuffer dst, long position) throws IOException {
+        final int length = (int)Math.min(dst.remaining(), m_size - position);
+        if (position >= m_bufferStart && position < m_bufferStart + m_bufferValid) {
+            final int offset = (int)(position - m_bufferStart);
+            ByteBuffer src = m_buffer.m_buf.duplicate();
+            src.position(offset).limit(offset + Math.min(length, m_bufferValid - offset));
+            final int read = src.remaining();
+            dst.put(src);
+            return read;
+        }
+
+        final long blockOffset = alignDown(position);
+        long end = position + length;
+        if (position < m_bufferStart) {
+            end = Math.min(end, m_bufferStart);
+        }
+        if (m_blockDirty && blockOffset == m_blockOffset) {
+            final int offset = (int)(position - blockOffset);
+            ByteBuffer src = m_block.m_buf.duplicate();
+            src.position(offset).limit(offset + (int)Math.min(end - position, ALIGNMENT - offset));
+            final int read = src.remaining();
+            dst.put(src);
+            return read;
+        }
+
+        if (position < m_readStart || position >= m_readStart + m_readValid) {
+            // Everything else is on disk once the writes in flight and the block are written
+            drain();
+            flushBlock();
+            if (m_readBuffer == null) {
+                m_readBuffer = new AlignedBuffer(READ_SIZE);
+            }
+            m_readStart = -1;
+            m_readValid = 0;
+            final int read = (int)Math.min(pread(m_readBuffer.m_ptr, READ_SIZE, blockOffset), READ_SIZE);
+            // Past the end on disk is a range skipped by a write that isn't written yet
+            for (int i = read; i < READ_SIZE; i++) {
+                m_readBuffer.m_buf.put(i, (byte)0);
+            }
+            m_readValid = READ_SIZE;
+            m_readStart = blockOffset;
+        }
+        final int offset = (int)(position - m_readStart);
+        final int count = (int)Math.min(end - position, m_readValid - offset);
+        ByteBuffer src = m_readBuffer.m_buf.duplicate();
+        src.position(offset).limit(offset + count);
+        dst.put(src);
+        return count;
+    }
+
+    @Override
+    public synchronized int read(ByteBuffer dst, long position) throws IOException {
+        ensureOpen();
+        checkWriteException();
+        if (position >= m_size) {
+            return -1;
+        }
+        int read = 0;
+        while (dst.hasRemaining() && position + read < m_size) {
+            read += readOnce(dst, position + read);
+        }
+        return read;
+    }
+
+    @Override
+    public synchronized int read(ByteBuffer dst) throws IOException {
+        final int read = read(dst, m_position);
+        if (read > 0) {
+            m_position += read;
+        }
+        return read;
+    }
+
+    @Override
+    public synchronized long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+        long total = 0;
+        for (int i = offset; i < offset + length; i++) {
+            final int read = read(dsts[i]);
+            if (read < 0) {
+                return total == 0 ? -1 : total;
+            }
+            total += read;
+            if (dsts[i].hasRemaining()) {
+                break;
+            }
+        }
+        return total;
+    }
+
+    @Override
+    public synchronized int write(ByteBuffer src, long position) throws IOException {
+        ensureOpen();
+        checkWriteException();
+        m_readStart = -1;
+        m_readValid = 0;
+        final int length = src.remaining();
+        long written = 0;
+        while (src.hasRemaining()) {
+            written += writeOnce(src, position + written);
+        }
+        m_size = Math.max(m_size, position + length);
+        return length;
+    }
+
+    @Override
+    public synchronized int write(ByteBuffer src) throws IOException {
+        final int written = write(src, m_position);
+        m_position += written;
+        return written;
+    }
+
+    @Override
+    public synchronized long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+        long total = 0;
+        for (int i = offset; i < offset + length; i++) {
+            total += write(srcs[i]);
+        }
+        return total;
+    }
+
+    @Override
+    public synchronized long position() throws IOException {
+        ensureOpen();
+        return m_position;
+    }
+
+    @Override
+    public synchronized FileChannel position(long newPosition) throws IOException {
+        ensureOpen();
+        if (newPosition < 0) {
+            throw new IllegalArgumentException("Negative position " + newPosition);
+        }
+        m_position = newPosition;
+        return this;
+    }
+
+    @Override
+    public synchronized long size() throws IOException {
+        ensureOpen();
+        return m_size;
+    }
+
+    @Override
+    public synchronized FileChannel truncate(long size) throws IOException {
+        ensureOpen();
+        if (size < m_size) {
+            flushBuffer();
+            flushBlock();
+            m_readStart = -1;
+            m_readValid = 0;
+            m_size = size;
+            ftruncate(size);
+            loadBuffer(alignDown(Math.min(m_bufferStart, size)));
+            if (m_blockOffset >= alignDown(size)) {
+                m_blockOffset = -1;
+            }
+        }
+        m_position = Math.min(m_position, size);
+        return this;
+    }
+
+    private void ftruncate(long size) throws IOException {
+        try {
+            CLibrary.ftruncate(m_fd, size);
+        } catch (LastErrorException e) {
+            throw new IOException("ftruncate() of " + m_file + " failed with errno " + e.getErrorCode());
+        }
+        m_diskSize = size;
+    }
+
+    /*
+     * Write everything and drop the padding past the end of the file
+     */
+    private void writeOut() throws IOException {
+        flushBuffer();
+        flushBlock();
+        if (m_diskSize > m_size) {
+            ftruncate(m_size);
+        }
+    }
+
+    @Override
+    public synchronized void force(boolean metaData) throws IOException {
+        ensureOpen();
+        writeOut();
+        try {
+            if (metaData) {
+                CLibrary.fsync(m_fd);
+            } else {
+                CLibrary.fdatasync(m_fd);
+            }
+        } catch (LastErrorException e) {
+            throw new IOException("fsync() of " + m_file + " failed with errno " + e.getErrorCode());
+        }
+    }
+
+    @Override
+    protected synchronized void implCloseChannel() throws IOException {
+        try {
+            writeOut();
+        } finally {
+            // writeOut() may have given up waiting for the writers
+            drainUninterruptibly();
+            if (m_delegate != null) {
+                try {
+                    m_delegate.close();
+                } catch (IOException e) {
+                    LOG.warn("Unable to close " + m_file, e);
+                }
+                m_delegate = null;
+            }
+            try {
+                CLibrary.close(m_fd);
+            } catch (LastErrorException e) {
+                LOG.warn("close() of " + m_file + " failed with errno " + e.getErrorCode());
+            }
+            synchronized (m_inFlightLock) {
+                m_buffersReleased = true;
+                m_buffer.m_cont.discard();
+                m_buffer = null;
+                for (AlignedBuffer buffer : m_freeBuffers) {
+                    buffer.m_cont.discard();
+                }
+                m_freeBuffers.clear();
+            }
+            if (m_block != null) {
+                m_block.m_cont.discard();
+                m_block = null;
+            }
+            if (m_readBuffer != null) {
+                m_readBuffer.m_cont.discard();
+                m_readBuffer = null;
+            }
+        }
+    }
+
+    @Override
+    public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+        ensureOpen();
+        final ByteBuffer buf = ByteBuffer.allocate((int)Math.max(0, Math.min(count, READ_SIZE)));
+        long transferred = 0;
+        while (transferred < count) {
+            buf.clear();
+            buf.limit((int)Math.min(buf.capacity(), count - transferred));
+            if (read(buf, position + transferred) <= 0) {
+                break;
+            }
+            buf.flip();
+            transferred += target.write(buf);
+            if (buf.hasRemaining()) {
+                // The target can't take more right now
+                break;
+            }
+        }
+        return transferred;
+    }
+
+    @Override
+    public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+        ensureOpen();
+        if (position > size()) {
+            return 0;
+        }
+        final ByteBuffer buf = ByteBuffer.allocate((int)Math.max(0, Math.min(count, READ_SIZE)));
+        long transferred = 0;
+        while (transferred < count) {
+            buf.clear();
+            buf.limit((int)Math.min(buf.capacity(), count - transferred));
+            final int read = src.read(buf);
+            if (read <= 0) {
+                break;
+            }
+            buf.flip();
+            write(buf, position + transferred);
+            transferred += read;
+        }
+        return transferred;
+    }
+
+    /*
+     * The regular channel of the file, with everything written so far on disk
+     */
+    private synchronized FileChannel delegate() throws IOException {
+        ensureOpen();
+        writeOut();
+        if (m_delegate == null) {
+            m_delegate = new RandomAccessFile(m_file, "rw").getChannel();
+        }
+        return m_delegate;
+    }
+
+    /**
+     * Map the file read only, through a regular channel of the file.
+     *
+     * @throws IOException if the mode isn't {@link MapMode#READ_ONLY}
+     */
+    @Override
+    public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+        if (mode != MapMode.READ_ONLY) {
+            throw new IOException("Direct I/O channel of " + m_file + " can only be mapped read only");
+        }
+        return delegate().map(mode, position, size);
+    }
+
+    /**
+     * Lock a range of the file through a regular channel of the file,
+     * which is what {@link FileLock#channel()} returns.
+     */
+    @Override
+    public FileLock lock(long position, long size, boolean shared) throws IOException {
+        return delegate().lock(position, size, shared);
+    }
+
+    /**
+     * Like {@link #lock(long, long, boolean)}, without blocking.
+     */
+    @Override
+    public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+        return delegate().tryLock(position, size, shared);
+    }
+
+    @Override
+    public String toString() {
+        return m_file.toString();
+    }
+}
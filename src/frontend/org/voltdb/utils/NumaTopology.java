@@ -0,0 +1,222 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.utils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.voltcore.logging.VoltLogger;
+
+/**
+ * The NUMA nodes of this host and the cpus on each of them, as reported by
+ * sysfs. Site threads bound to the cpus of one node allocate their EE memory
+ * on that node, since Linux places a page on the node of the thread that
+ * first touches it.
+ */
+public class NumaTopology {
+    private static final VoltLogger hostLog = new VoltLogger("HOST");
+
+    private static final File SYSFS_NODES = new File("/sys/devices/system/node");
+
+    // PosixJNAAffinity takes a single 64 bit cpu mask
+    static final int MAX_CPU = 64;
+
+    private static NumaTopology s_topology = null;
+
+    private final File m_nodesDir;
+    private final Map<Integer, List<Integer>> m_cpusByNode = new TreeMap<Integer, List<Integer>>();
+    // numastat counters when the topology was read, so the ratio covers this process' lifetime
+    private final long m_baseLocal;
+    private final long m_baseRemote;
+
+    public static synchronized NumaTopology getTopology() {
+        if (s_topology == null) {
+            s_topology = new NumaTopology(SYSFS_NODES);
+        }
+        return s_topology;
+    }
+
+    NumaTopology(File nodesDir) {
+        m_nodesDir = nodesDir;
+        File[] nodes = nodesDir.listFiles();
+        if (nodes != null) {
+            for (File node : nodes) {
+                Integer nodeId = nodeId(node);
+                if (nodeId == null) {
+                    continue;
+                }
+                try {
+                    List<Integer> cpus = new ArrayList<Integer>();
+                    for (int cpu : parseCpuList(readLine(new File(node, "cpulist")))) {
+                        if (cpu < MAX_CPU) {
+                            cpus.add(cpu);
+                        } else {
+                            hostLog.warn("Ignoring cpu " + cpu + " of NUMA node " + nodeId +
+                                         ", only the first " + MAX_CPU + " cpus can be bound to");
+                        }
+                    }
+                    if (!cpus.isEmpty()) {
+                        m_cpusByNode.put(nodeId, cpus);
+                    }
+                } catch (IOException | NumberFormatException e) {
+                    hostLog.warn("Unable to read the cpus of NUMA node " + nodeId, e);
+                }
+            }
+        }
+        long[] counters = readAllocationCounters();
+        m_baseLocal = counters[0];
+        m_baseRemote = counters[1];
+    }
+
+    public int getNodeCount() {
+        return m_cpusByNode.size();
+    }
+
+    public List<Integer> getCpus(int node) {
+        List<Integer> cpus = m_cpusByNode.get(node);
+        return cpus == null ? Collections.<Integer>emptyList() : Collections.unmodifiableList(cpus);
+    }
+
+    /**
+     * Spread siteCount sites over the nodes round robin. Each binding covers all
+     * the cpus of one node, in the format PosixJNAAffinity accepts, so the
+     * scheduler can still move a site between the cores of its node.
+     * Returns no bindings if the host has a single node.
+     */
+    public List<String> getSiteBindings(int siteCount) {
+        List<String> bindings = new ArrayList<String>();
+        if (m_cpusByNode.size() < 2) {
+            return bindings;
+        }
+        List<String> nodeBindings = new ArrayList<String>();
+        for (List<Integer> cpus : m_cpusByNode.values()) {
+            StringBuilder sb = new StringBuilder();
+            for (int cpu : cpus) {
+                if (sb.length() > 0) {
+                    sb.append(':');
+                }
+                sb.append(cpu);
+            }
+            nodeBindings.add(sb.toString());
+        }
+        for (int i = 0; i < siteCount; i++) {
+            bindings.add(nodeBindings.get(i % nodeBindings.size()));
+        }
+        return bindings;
+    }
+
+    /**
+     * Percentage of the pages allocated on this host since the topology was read
+     * that came from a node other than the one the allocating thread ran on.
+     * The kernel only keeps these counters per node, so they cover every process.
+     */
+    public int getRemoteAllocationPercent() {
+        long[] counters = readAllocationCounters();
+        long local = counters[0] - m_baseLocal;
+        long remote = counters[1] - m_baseRemote;
+        if (local + remote <= 0) {
+            return 0;
+        }
+        return (int) (remote * 100 / (local + remote));
+    }
+
+    private long[] readAllocationCounters() {
+        long[] counters = new long[2];
+        for (int node : m_cpusByNode.keySet()) {
+            File numastat = new File(new File(m_nodesDir, "node" + node), "numastat");
+            BufferedReader reader = null;
+            try {
+                reader = new BufferedReader(new FileReader(numastat));
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] fields = line.trim().split("\\s+");
+                    if (fields.length != 2) {
+                        continue;
+                    }
+                    if (fields[0].equals("local_node")) {
+                        counters[0] += Long.parseLong(fields[1]);
+                    } else if (fields[0].equals("other_node")) {
+                        counters[1] += Long.parseLong(fields[1]);
+                    }
+                }
+            } catch (IOException | NumberFormatException e) {
+                // Not every kernel exports numastat, report no remote allocations
+            } finally {
+                if (reader != null) {
+                    try {
+                        reader.close();
+                    } catch (IOException ignore) {}
+                }
+            }
+        }
+        return counters;
+    }
+
+    private static Integer nodeId(File node) {
+        String name = node.getName();
+        if (!node.isDirectory() || !name.startsWith("node")) {
+            return null;
+        }
+        try {
+            return Integer.valueOf(name.substring("node".length()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static String readLine(File file) throws IOException {
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            String line = reader.readLine();
+            return line == null ? "" : line.trim();
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Parse a kernel cpu list such as "0-5,12-17".
+     */
+    static List<Integer> parseCpuList(String cpuList) {
+        List<Integer> cpus = new ArrayList<Integer>();
+        for (String range : cpuList.split(",")) {
+            range = range.trim();
+            if (range.isEmpty()) {
+                continue;
+            }
+            int dash = range.indexOf('-');
+            if (dash < 0) {
+                cpus.add(Integer.valueOf(range));
+            } else {
+                int start = Integer.valueOf(range.substring(0, dash));
+                int end = Integer.valueOf(range.substring(dash + 1));
+                for (int cpu = start; cpu <= end; cpu++) {
+                    cpus.add(cpu);
+                }
+            }
+        }
+        return cpus;
+    }
+}
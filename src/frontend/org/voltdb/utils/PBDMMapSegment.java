@@ -28,6 +28,7 @@ import org.voltcore.utils.DBBPool;
 import org.voltcore.utils.DBBPool.BBContainer;
 import org.voltcore.utils.DBBPool.MBBContainer;
 import org.voltcore.utils.DeferredSerialization;
+import org.voltcore.utils.Pair;
 import org.voltdb.utils.BinaryDeque.OutputContainerFactory;
 import org.xerial.snappy.Snappy;
 
@@ -358,6 +359,45 @@ class PBDMMapSegment extends PBDSegment {
         };
     }
 
+    @Override
+    Pair<BBContainer, Long> read(long offset, OutputContainerFactory factory) throws IOException {
+        if (m_closed) throw new IOException("closed");
+        final ByteBuffer mbuf = m_buf.b();
+        final long mBufAddr = m_buf.address();
+
+        //A cursor starting on the segment will read it from front to back
+        if (offset == SEGMENT_HEADER_BYTES) {
+            final long retval = PosixAdvise.madvise(
+                    mBufAddr,
+                    mbuf.position(),
+                    PosixAdvise.POSIX_MADV_SEQUENTIAL);
+            if (retval != 0) {
+                LOG.warn("madvise sequential failed: " + retval);
+            }
+        }
+
+        final int compressedLength = mbuf.getInt((int) offset);
+        final int flags = mbuf.getInt((int) offset + 4);
+        final int dataPosition = (int) offset + OBJECT_HEADER_BYTES;
+
+        final BBContainer retcont;
+        if ((flags & FLAG_COMPRESSED) != 0) {
+            final int uncompressedLength = (int)Snappy.uncompressedLength(mBufAddr + dataPosition, compressedLength);
+            retcont = factory.getContainer(uncompressedLength);
+            retcont.b().limit(uncompressedLength);
+            Snappy.rawUncompress(mBufAddr + dataPosition, compressedLength, retcont.address());
+        } else {
+            //Return a slice, valid until the segment is closed
+            final ByteBuffer slice = mbuf.duplicate();
+            slice.limit(dataPosition + compressedLength);
+            slice.position(dataPosition);
+            retcont = DBBPool.dummyWrapBB(slice.slice());
+            Bits.readEveryPage(retcont);
+        }
+
+        return Pair.of(retcont, (long) dataPosition + compressedLength);
+    }
+
     /*
      * Don't use size in bytes to determine empty, could potentially
      * diverge from object count on crash or power failure
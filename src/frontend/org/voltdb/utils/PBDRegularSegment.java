@@ -20,6 +20,7 @@ package org.voltdb.utils;
 import org.voltcore.logging.VoltLogger;
 import org.voltcore.utils.DBBPool;
 import org.voltcore.utils.DeferredSerialization;
+import org.voltcore.utils.Pair;
 
 import java.io.EOFException;
 import java.io.File;
@@ -136,6 +137,9 @@ public class PBDRegularSegment extends PBDSegment {
         assert(m_ras == null);
         m_ras = new RandomAccessFile( m_file, forWrite ? "rw" : "r");
         m_fc = m_ras.getChannel();
+        if (forWrite && DirectIOFileChannel.ENABLED) {
+            m_fc = DirectIOFileChannel.open(m_file, "PBD", m_fc);
+        }
         m_tmpHeaderBuf = DBBPool.allocateDirect(SEGMENT_HEADER_BYTES);
 
         if (emptyFile) {
@@ -395,6 +399,43 @@ public class PBDRegularSegment extends PBDSegment {
         }
     }
 
+    @Override
+    Pair<DBBPool.BBContainer, Long> read(long offset, BinaryDeque.OutputContainerFactory factory) throws IOException
+    {
+        if (m_closed) throw new IOException("closed");
+
+        //Positional reads leave the channel position to the writer and poll
+        m_tmpHeaderBuf.b().clear();
+        PBDUtils.readBufferFully(m_fc, m_tmpHeaderBuf.b(), (int) offset);
+        final int length = m_tmpHeaderBuf.b().getInt();
+        final int flags = m_tmpHeaderBuf.b().getInt();
+        final int dataOffset = (int) offset + OBJECT_HEADER_BYTES;
+
+        if (length < 1) {
+            throw new IOException("Read an invalid length");
+        }
+
+        final DBBPool.BBContainer retcont;
+        if ((flags & FLAG_COMPRESSED) != 0) {
+            final DBBPool.BBContainer compressedBuf = DBBPool.allocateDirectAndPool(length);
+            try {
+                PBDUtils.readBufferFully(m_fc, compressedBuf.b(), dataOffset);
+                final int uncompressedLen = CompressionService.uncompressedLength(compressedBuf.bDR());
+                retcont = factory.getContainer(uncompressedLen);
+                retcont.b().limit(uncompressedLen);
+                CompressionService.decompressBuffer(compressedBuf.bDR(), retcont.b());
+            } finally {
+                compressedBuf.discard();
+            }
+        } else {
+            retcont = factory.getContainer(length);
+            retcont.b().limit(length);
+            PBDUtils.readBufferFully(m_fc, retcont.b(), dataOffset);
+        }
+
+        return Pair.of(retcont, (long) dataOffset + length);
+    }
+
     @Override
     public int uncompressedBytesToRead() {
         if (m_closed) throw new RuntimeException("Segment closed");
@@ -19,6 +19,7 @@ package org.voltdb.utils;
 
 import org.voltcore.utils.DBBPool;
 import org.voltcore.utils.DeferredSerialization;
+import org.voltcore.utils.Pair;
 
 import java.io.File;
 import java.io.IOException;
@@ -88,6 +89,14 @@ public abstract class PBDSegment {
 
     abstract DBBPool.BBContainer poll(BinaryDeque.OutputContainerFactory factory) throws IOException;
 
+    /**
+     * Read the object at a file offset for a read cursor of the deque. Unlike poll
+     * this doesn't move the segment's own read position, so any number of cursors can
+     * read the segment while it is being polled or written.
+     * @return The object and the file offset of the next one
+     */
+    abstract Pair<DBBPool.BBContainer, Long> read(long offset, BinaryDeque.OutputContainerFactory factory) throws IOException;
+
     /*
      * Don't use size in bytes to determine empty, could potentially
      * diverge from object count on crash or power failure
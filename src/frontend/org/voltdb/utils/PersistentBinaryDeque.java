@@ -21,17 +21,22 @@ import java.io.FileFilter;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Set;
 import java.util.TreeMap;
 
 import org.voltcore.logging.VoltLogger;
 import org.voltcore.utils.DBBPool;
 import org.voltcore.utils.DBBPool.BBContainer;
 import org.voltcore.utils.DeferredSerialization;
+import org.voltcore.utils.Pair;
 import org.voltdb.EELibraryLoader;
 import org.voltdb.utils.BinaryDeque.TruncatorResponse.Status;
 
@@ -44,7 +49,8 @@ import com.google_voltpatches.common.base.Throwables;
  * be persisted synchronously by invoking sync. The files backing this deque all start with a nonce
  * provided at construction time followed by a segment index that is stored in the filename. Files grow to
  * a maximum size of 64 megabytes and then a new segment is created. The index starts at 0. Segments are deleted
- * once all objects from the segment have been polled and all the containers returned by poll have been discarded.
+ * once all objects from the segment have been polled and all the containers returned by poll have been discarded,
+ * and every read cursor opened with openForRead has done the same.
  * Push is implemented by creating new segments at the head of the deque containing the objects to be pushed.
  *
  */
@@ -75,6 +81,157 @@ public class PersistentBinaryDeque implements BinaryDeque {
 
     public static final OutputContainerFactory UNSAFE_CONTAINER_FACTORY = new UnsafeOutputContainerFactory();
 
+    /**
+     * A named reader with its own position in the segments. Objects pushed to the head
+     * of the deque are only seen by readers that haven't started reading yet.
+     */
+    private class ReadCursor implements BinaryDequeReader {
+        private final String m_cursorId;
+        //Segment being read, null until the first poll
+        private PBDSegment m_segment = null;
+        private long m_readOffset;
+        private int m_readIndex;
+        private int m_numObjects;
+        private boolean m_cursorClosed = false;
+        //Containers returned by poll and not yet discarded, per segment
+        private final Map<PBDSegment, Integer> m_outstanding = new HashMap<PBDSegment, Integer>();
+
+        private ReadCursor(String cursorId, int numObjects) {
+            m_cursorId = cursorId;
+            m_numObjects = numObjects;
+        }
+
+        @Override
+        public BBContainer poll(OutputContainerFactory ocf) throws IOException {
+            synchronized (PersistentBinaryDeque.this) {
+                if (m_closed || m_cursorClosed) {
+                    throw new IOException("Closed");
+                }
+
+                if (m_segment == null) {
+                    moveTo(m_segments.peekFirst());
+                }
+                while (m_readIndex >= m_segment.getNumEntries()) {
+                    final PBDSegment next = nextSegment(m_segment);
+                    if (next == null) {
+                        return null;
+                    }
+                    final PBDSegment passed = m_segment;
+                    moveTo(next);
+                    releaseSegment(passed);
+                }
+
+                final Pair<BBContainer, Long> entry = m_segment.read(m_readOffset, ocf);
+                m_readOffset = entry.getSecond();
+                m_readIndex++;
+                m_numObjects--;
+
+                final PBDSegment segment = m_segment;
+                final BBContainer retcont = entry.getFirst();
+                final Integer outstanding = m_outstanding.get(segment);
+                m_outstanding.put(segment, outstanding == null ? 1 : outstanding + 1);
+                return new BBContainer(retcont.b()) {
+                    @Override
+                    public void discard() {
+                        synchronized (PersistentBinaryDeque.this) {
+                            checkDoubleFree();
+                            retcont.discard();
+                            final int remaining = m_outstanding.get(segment) - 1;
+                            if (remaining == 0) {
+                                m_outstanding.remove(segment);
+                            } else {
+                                m_outstanding.put(segment, remaining);
+                            }
+                            if (m_cursorClosed && m_outstanding.isEmpty()) {
+                                m_drainingCursors.remove(ReadCursor.this);
+                            }
+
+                            if (m_closed) {
+                                return;
+                            }
+                            try {
+                                releaseSegment(segment);
+                            } catch (IOException e) {
+                                LOG.error("Exception closing and deleting PBD segment", e);
+                            }
+                        }
+                    }
+                };
+            }
+        }
+
+        private void moveTo(PBDSegment segment) throws IOException {
+            m_segment = segment;
+            m_readIndex = 0;
+            m_readOffset = PBDSegment.SEGMENT_HEADER_BYTES;
+            if (segment.isClosed()) {
+                segment.open(false);
+            }
+        }
+
+        /**
+         * Whether this cursor will not read from the segment or hand out any more of its objects
+         */
+        private boolean hasPassed(PBDSegment segment) {
+            if (m_outstanding.containsKey(segment)) {
+                return false;
+            }
+            if (m_cursorClosed) {
+                return true;
+            }
+            return m_segment != null && m_segment.segmentId() > segment.segmentId();
+        }
+
+        private boolean hasOutstanding(PBDSegment segment) {
+            return m_outstanding.containsKey(segment);
+        }
+
+        @Override
+        public boolean isEmpty() throws IOException {
+            synchronized (PersistentBinaryDeque.this) {
+                if (m_closed || m_cursorClosed) {
+                    throw new IOException("Closed");
+                }
+                return m_numObjects == 0;
+            }
+        }
+
+        @Override
+        public int getNumObjects() {
+            synchronized (PersistentBinaryDeque.this) {
+                return m_numObjects;
+            }
+        }
+
+        @Override
+        public String getCursorId() {
+            return m_cursorId;
+        }
+
+        @Override
+        public void close() throws IOException {
+            synchronized (PersistentBinaryDeque.this) {
+                if (m_cursorClosed) {
+                    return;
+                }
+                m_cursorClosed = true;
+                m_segment = null;
+                //A cursor reopened under the same name is a new one, but this one
+                //still holds its segments until the polled containers are discarded
+                m_cursors.remove(m_cursorId, this);
+                if (!m_outstanding.isEmpty()) {
+                    m_drainingCursors.add(this);
+                }
+                if (m_closed) {
+                    return;
+                }
+                for (PBDSegment segment : new ArrayList<PBDSegment>(m_segments)) {
+                    releaseSegment(segment);
+                }
+            }
+        }
+    }
+
     /**
      * Processors also log using this facility.
      */
@@ -89,6 +246,9 @@ public class PersistentBinaryDeque implements BinaryDeque {
     private final Deque<PBDSegment> m_segments = new ArrayDeque<PBDSegment>();
     private int m_numObjects = 0;
     private volatile boolean m_closed = false;
+    private final Map<String, ReadCursor> m_cursors = new HashMap<String, ReadCursor>();
+    //Closed cursors with polled containers that haven't been discarded yet
+    private final Set<ReadCursor> m_drainingCursors = new HashSet<ReadCursor>();
 
     /**
      * Create a persistent binary deque with the specified nonce and storage
@@ -244,7 +404,7 @@ public class PersistentBinaryDeque implements BinaryDeque {
      */
     private void closeTailAndOffer(PBDSegment newSegment) throws IOException {
         final PBDSegment last = m_segments.peekLast();
-        if (last != null && !last.isBeingPolled()) {
+        if (last != null && !last.isBeingPolled() && !hasCursorContainers(last)) {
             last.close();
         }
         m_segments.offer(newSegment);
@@ -271,7 +431,7 @@ public class PersistentBinaryDeque implements BinaryDeque {
                 throw new IOException("Failed to offer object in PBD");
             }
         }
-        incrementNumObjects();
+        incrementNumObjects(false);
         assertions();
     }
 
@@ -291,14 +451,14 @@ public class PersistentBinaryDeque implements BinaryDeque {
                 throw new IOException("Failed to offer object in PBD");
             }
         }
-        incrementNumObjects();
+        incrementNumObjects(false);
         assertions();
         return written;
     }
 
     private PBDSegment addSegment(PBDSegment tail) throws IOException {
         //Check to see if the tail is completely consumed so we can close and delete it
-        if (!tail.hasMoreEntries() && tail.isEmpty()) {
+        if (!tail.hasMoreEntries() && tail.isEmpty() && isPassedByAllCursors(tail)) {
             m_segments.pollLast();
             if (m_usageSpecificLog.isDebugEnabled()) {
                 m_usageSpecificLog.debug("Segment " + tail.file() + " has been closed and deleted because of empty queue");
@@ -368,7 +528,7 @@ public class PersistentBinaryDeque implements BinaryDeque {
 
             while (currentSegmentContents.peek() != null) {
                 writeSegment.offer(currentSegmentContents.pollFirst(), false);
-                incrementNumObjects();
+                incrementNumObjects(true);
             }
 
             // Don't close the last one, it'll be used for writes
@@ -429,15 +589,7 @@ public class PersistentBinaryDeque implements BinaryDeque {
 
                     //Segment is potentially ready for deletion
                     try {
-                        if (segment.isEmpty()) {
-                            if (segment != m_segments.peekLast()) {
-                                m_segments.remove(segment);
-                                if (m_usageSpecificLog.isDebugEnabled()) {
-                                    m_usageSpecificLog.debug("Segment " + segment.file() + " has been closed and deleted after discarding last buffer");
-                                }
-                                segment.closeAndDelete();
-                            }
-                        }
+                        releaseSegment(segment);
                     } catch (IOException e) {
                         LOG.error("Exception closing and deleting PBD segment", e);
                     }
@@ -446,6 +598,86 @@ public class PersistentBinaryDeque implements BinaryDeque {
         };
     }
 
+    @Override
+    public synchronized BinaryDequeReader openForRead(String cursorId) throws IOException {
+        assertions();
+        if (m_closed) {
+            throw new IOException("Closed");
+        }
+
+        ReadCursor cursor = m_cursors.get(cursorId);
+        if (cursor == null) {
+            //The cursor starts before everything that is still stored
+            int numObjects = 0;
+            for (PBDSegment segment : m_segments) {
+                final boolean wasClosed = segment.isClosed();
+                numObjects += segment.getNumEntries();
+                if (wasClosed) {
+                    segment.close();
+                }
+            }
+            cursor = new ReadCursor(cursorId, numObjects);
+            m_cursors.put(cursorId, cursor);
+        }
+        return cursor;
+    }
+
+    private PBDSegment nextSegment(PBDSegment segment) {
+        for (PBDSegment s : m_segments) {
+            if (s.segmentId() > segment.segmentId()) {
+                return s;
+            }
+        }
+        return null;
+    }
+
+    private boolean isPassedByAllCursors(PBDSegment segment) {
+        for (ReadCursor cursor : m_cursors.values()) {
+            if (!cursor.hasPassed(segment)) {
+                return false;
+            }
+        }
+        for (ReadCursor cursor : m_drainingCursors) {
+            if (!cursor.hasPassed(segment)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean hasCursorContainers(PBDSegment segment) {
+        for (ReadCursor cursor : m_cursors.values()) {
+            if (cursor.hasOutstanding(segment)) {
+                return true;
+            }
+        }
+        for (ReadCursor cursor : m_drainingCursors) {
+            if (cursor.hasOutstanding(segment)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Delete a segment once poll and all the cursors are done with it. If only the
+     * cursors are, close it so it doesn't hold a file or mapping until poll gets to it.
+     */
+    private void releaseSegment(PBDSegment segment) throws IOException {
+        if (segment == m_segments.peekLast() || segment.isClosed() || !isPassedByAllCursors(segment)) {
+            return;
+        }
+        if (segment.isEmpty()) {
+            m_segments.remove(segment);
+            if (m_usageSpecificLog.isDebugEnabled()) {
+                m_usageSpecificLog.debug("Segment " + segment.file() + " has been closed and deleted after discarding last buffer");
+            }
+            segment.closeAndDelete();
+        } else if (!segment.isBeingPolled()) {
+            segment.close();
+        }
+    }
+
     @Override
     public synchronized void sync() throws IOException {
         if (m_closed) {
@@ -571,6 +803,9 @@ public class PersistentBinaryDeque implements BinaryDeque {
     @Override
     public synchronized void parseAndTruncate(BinaryDequeTruncator truncator) throws IOException {
         assertions();
+        if (!m_cursors.isEmpty() || !m_drainingCursors.isEmpty()) {
+            throw new IOException("Can't truncate PBD " + m_nonce + " with open read cursors");
+        }
         if (m_segments.isEmpty()) {
             m_usageSpecificLog.debug("PBD " + m_nonce + " has no finished segments");
             return;
@@ -646,9 +881,15 @@ public class PersistentBinaryDeque implements BinaryDeque {
         assert(m_numObjects >= 0);
         m_numObjects += num;
     }
-    private void incrementNumObjects() {
+    private void incrementNumObjects(boolean pushed) {
         assert(m_numObjects >= 0);
          m_numObjects++;
+        for (ReadCursor cursor : m_cursors.values()) {
+            //Cursors that started reading are past pushed objects
+            if (!pushed || cursor.m_segment == null) {
+                cursor.m_numObjects++;
+            }
+        }
     }
 
     private void decrementNumObjects() {
@@ -0,0 +1,161 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltcore.network;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reading length prefixed messages off a channel into pooled buffers and
+ * splitting them back out with VoltProtocolHandler, as VoltPort does on
+ * every read. Each invocation drains 256k of framed messages.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NIOReadStreamBenchmark {
+
+    private static final int BYTES_PER_INVOCATION = 1024 * 256;
+
+    @Param({ "64", "1024", "16384" })
+    public int m_messageSize;
+
+    /** Hands out the same bytes on each invocation, in socket sized chunks */
+    static class ReplayChannel implements ReadableByteChannel {
+        final ByteBuffer m_data;
+
+        ReplayChannel(ByteBuffer data) {
+            m_data = data;
+        }
+
+        void reset() {
+            m_data.clear();
+        }
+
+        @Override
+        public int read(ByteBuffer dst) {
+            if (!m_data.hasRemaining()) {
+                return 0;
+            }
+            final int length = Math.min(Math.min(dst.remaining(), m_data.remaining()), 1024 * 64);
+            ByteBuffer chunk = m_data.duplicate();
+            chunk.limit(chunk.position() + length);
+            dst.put(chunk);
+            m_data.position(m_data.position() + length);
+            return length;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    static class FramingHandler extends VoltProtocolHandler {
+        @Override
+        public int getMaxRead() {
+            return Integer.MAX_VALUE;
+        }
+
+        @Override
+        public void handleMessage(ByteBuffer message, Connection c) {
+        }
+
+        @Override
+        public Runnable onBackPressure() {
+            return null;
+        }
+
+        @Override
+        public Runnable offBackPressure() {
+            return null;
+        }
+
+        @Override
+        public QueueMonitor writestreamMonitor() {
+            return null;
+        }
+    }
+
+    private final NetworkDBBPool m_pool = new NetworkDBBPool();
+    private final FramingHandler m_handler = new FramingHandler();
+    private NIOReadStream m_stream;
+    private ReplayChannel m_channel;
+
+    @Setup
+    public void setup() {
+        final int messageCount = BYTES_PER_INVOCATION / (m_messageSize + 4);
+        ByteBuffer data = ByteBuffer.allocate(messageCount * (m_messageSize + 4));
+        for (int i = 0; i < messageCount; i++) {
+            data.putInt(m_messageSize);
+            data.position(data.position() + m_messageSize);
+        }
+        m_channel = new ReplayChannel(data);
+        m_stream = new NIOReadStream();
+    }
+
+    @TearDown
+    public void tearDown() {
+        m_stream.shutdown();
+        m_pool.clear();
+    }
+
+    @Benchmark
+    public int readAndFrame() throws IOException {
+        m_channel.reset();
+        int messages = 0;
+        while (m_stream.read(m_channel, m_handler.getMaxRead(), m_pool) > 0) {
+            ByteBuffer message;
+            while ((message = m_handler.retrieveNextMessage(m_stream)) != null) {
+                messages += message.remaining() > 0 ? 1 : 0;
+            }
+        }
+        if (m_stream.dataAvailable() != 0) {
+            throw new IllegalStateException("Unframed bytes left in the stream");
+        }
+        return messages;
+    }
+}
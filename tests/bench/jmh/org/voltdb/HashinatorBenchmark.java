@@ -0,0 +1,86 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Routing a partitioning parameter to its partition, done by the client for
+ * each single partition call and by the ClientInterface for each invocation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HashinatorBenchmark {
+
+    private static final int KEYS = 1024;
+
+    @Param({ "8", "64" })
+    public int m_partitionCount;
+
+    private ElasticHashinator m_hashinator;
+    private Long[] m_longKeys;
+    private String[] m_stringKeys;
+    private int m_next;
+
+    @Setup
+    public void setup() {
+        m_hashinator = new ElasticHashinator(
+                ElasticHashinator.getConfigureBytes(m_partitionCount, ElasticHashinator.DEFAULT_TOTAL_TOKENS),
+                false);
+        m_longKeys = new Long[KEYS];
+        m_stringKeys = new String[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            m_longKeys[i] = i * 7919L;
+            m_stringKeys[i] = "customer-" + i * 7919L;
+        }
+    }
+
+    @Benchmark
+    public int bigintParameter() {
+        m_next = (m_next + 1) & (KEYS - 1);
+        return m_hashinator.getHashedPartitionForParameter(VoltType.BIGINT.getValue(), m_longKeys[m_next]);
+    }
+
+    @Benchmark
+    public int stringParameter() {
+        m_next = (m_next + 1) & (KEYS - 1);
+        return m_hashinator.getHashedPartitionForParameter(VoltType.STRING.getValue(), m_stringKeys[m_next]);
+    }
+}
@@ -0,0 +1,105 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.voltdb.types.TimestampType;
+
+/**
+ * Serialization and deserialization of the parameters of a stored procedure
+ * invocation, done once per call by the client and once per call by the server.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParameterSetBenchmark {
+
+    /** A key lookup, a typical insert and an insert carrying arrays */
+    @Param({ "key", "row", "arrays" })
+    public String m_shape;
+
+    private Object[] m_params;
+    private ParameterSet m_paramSet;
+    private ByteBuffer m_buffer;
+    private ByteBuffer m_serialized;
+
+    @Setup
+    public void setup() throws IOException {
+        if (m_shape.equals("key")) {
+            m_params = new Object[] { 42L };
+        } else if (m_shape.equals("row")) {
+            m_params = new Object[] { 42L, 7, "customer name", "some street address, some city",
+                                      new BigDecimal("1234.500000000000"), 0.5d,
+                                      new TimestampType(1400000000000000L), new byte[32] };
+        } else {
+            long[] keys = new long[100];
+            String[] names = new String[100];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = i * 31L;
+                names[i] = "name " + i;
+            }
+            m_params = new Object[] { 42L, keys, names, new byte[1024] };
+        }
+        m_paramSet = ParameterSet.fromArrayNoCopy(m_params);
+        m_buffer = ByteBuffer.allocate(m_paramSet.getSerializedSize());
+        m_serialized = ByteBuffer.allocate(m_paramSet.getSerializedSize());
+        m_paramSet.flattenToBuffer(m_serialized);
+        m_serialized.flip();
+    }
+
+    @Benchmark
+    public ByteBuffer serialize() throws IOException {
+        // Size and flatten a fresh set the way the client does for each call
+        ParameterSet params = ParameterSet.fromArrayNoCopy(m_params);
+        m_buffer.clear();
+        if (m_buffer.capacity() < params.getSerializedSize()) {
+            throw new IllegalStateException();
+        }
+        params.flattenToBuffer(m_buffer);
+        return m_buffer;
+    }
+
+    @Benchmark
+    public ParameterSet deserialize() throws IOException {
+        return ParameterSet.fromByteBuffer(m_serialized.duplicate());
+    }
+}
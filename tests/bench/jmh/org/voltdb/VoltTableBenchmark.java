@@ -0,0 +1,107 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.voltdb.VoltTable.ColumnInfo;
+
+/**
+ * Building a result table row by row, reading it back through the row cursor
+ * and wrapping a serialized table the way a client response does.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VoltTableBenchmark {
+
+    private static final ColumnInfo[] COLUMNS = new ColumnInfo[] {
+        new ColumnInfo("ID", VoltType.BIGINT),
+        new ColumnInfo("BUCKET", VoltType.INTEGER),
+        new ColumnInfo("NAME", VoltType.STRING),
+        new ColumnInfo("SCORE", VoltType.FLOAT)
+    };
+
+    @Param({ "10", "1000" })
+    public int m_rows;
+
+    private String[] m_names;
+    private VoltTable m_table;
+    private ByteBuffer m_serialized;
+
+    @Setup
+    public void setup() {
+        m_names = new String[m_rows];
+        for (int i = 0; i < m_rows; i++) {
+            m_names[i] = "name " + i;
+        }
+        m_table = build();
+        m_serialized = ByteBuffer.allocate(m_table.getSerializedSize());
+        m_table.flattenToBuffer(m_serialized);
+        m_serialized.flip();
+    }
+
+    @Benchmark
+    public VoltTable build() {
+        VoltTable table = new VoltTable(COLUMNS);
+        for (int i = 0; i < m_rows; i++) {
+            table.addRow(i, i % 10, m_names[i], i * 0.5d);
+        }
+        return table;
+    }
+
+    @Benchmark
+    public long read() {
+        long sum = 0;
+        m_table.resetRowPosition();
+        while (m_table.advanceRow()) {
+            sum += m_table.getLong(0) + m_table.getLong(1) + m_table.getString(2).length();
+            sum += (long) m_table.getDouble(3);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public VoltTable deserialize() {
+        ByteBuffer buf = m_serialized.duplicate();
+        // Skip the length prefix as ClientResponseImpl does
+        buf.getInt();
+        return PrivateVoltTableFactory.createVoltTableFromSharedBuffer(buf);
+    }
+}
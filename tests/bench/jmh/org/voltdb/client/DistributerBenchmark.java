@@ -0,0 +1,128 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.client;
+
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.voltcore.network.MockConnection;
+import org.voltdb.ClientResponseImpl;
+import org.voltdb.VoltTable;
+import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.VoltType;
+
+/**
+ * Registering a callback for an invocation and dispatching the matching
+ * response to it through a Distributer connection, without the network.
+ * Covers the callback map, rate limiter, stats and response decoding.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DistributerBenchmark {
+
+    static class CountingCallback implements ProcedureCallback {
+        long m_rows;
+
+        @Override
+        public void clientCallback(ClientResponse clientResponse) {
+            m_rows += clientResponse.getResults()[0].getRowCount();
+        }
+    }
+
+    /** Names the remote end for the per procedure stats */
+    static class BenchConnection extends MockConnection {
+        @Override
+        public String getHostnameOrIP() {
+            return "localhost";
+        }
+
+        @Override
+        public int getRemotePort() {
+            return 21212;
+        }
+    }
+
+    private final CountingCallback m_callback = new CountingCallback();
+    private final BenchConnection m_connection = new BenchConnection();
+    private Distributer m_distributer;
+    private Distributer.NodeConnection m_nodeConnection;
+    private ByteBuffer m_invocation;
+    private ByteBuffer m_response;
+    private long m_handle;
+
+    @Setup
+    public void setup() throws Exception {
+        m_distributer = new Distributer();
+        m_nodeConnection = m_distributer.new NodeConnection(new long[4]);
+        Field connection = Distributer.NodeConnection.class.getDeclaredField("m_connection");
+        connection.setAccessible(true);
+        connection.set(m_nodeConnection, m_connection);
+
+        m_invocation = ByteBuffer.allocate(64);
+
+        VoltTable result = new VoltTable(new ColumnInfo("ID", VoltType.BIGINT));
+        result.addRow(1L);
+        ClientResponseImpl response = new ClientResponseImpl(ClientResponse.SUCCESS,
+                new VoltTable[] { result }, null, 0);
+        m_response = ByteBuffer.allocate(response.getSerializedSize());
+        response.flattenToBuffer(m_response);
+        m_response.flip();
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        m_distributer.shutdown();
+    }
+
+    @Benchmark
+    public long createWorkAndDispatch() {
+        final long handle = m_handle++;
+        m_nodeConnection.createWork(System.nanoTime(), handle, "Vote", m_invocation.duplicate(),
+                                    m_callback, true, Distributer.USE_DEFAULT_CLIENT_TIMEOUT);
+        // Drop the invocation the mock write stream queued
+        m_connection.m_writeStream.m_messages.poll();
+
+        // The handle follows the version byte
+        ByteBuffer response = m_response.duplicate();
+        response.putLong(1, handle);
+        m_nodeConnection.handleMessage(response, m_connection);
+        return m_callback.m_rows;
+    }
+}
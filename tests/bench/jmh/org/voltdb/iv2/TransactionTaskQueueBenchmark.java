@@ -0,0 +1,285 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.iv2;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.voltdb.SiteProcedureConnection;
+import org.voltdb.StarvationTracker;
+import org.voltdb.StoredProcedureInvocation;
+import org.voltdb.dtxn.TransactionState;
+import org.voltdb.messaging.FragmentTaskMessage;
+import org.voltdb.rejoin.TaskLog;
+
+/**
+ * Producer threads offering a mix of single part and multi-part transactions to a
+ * TransactionTaskQueue while the benchmark thread completes them, the way the
+ * initiator mailbox threads and the Site thread share the queue. Reports the
+ * time per transaction, queue handoff and completion included.
+ *
+ * The MONITOR variant is the queue as it was before completions could skip
+ * the monitor, every flush and size synchronized, to compare against.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransactionTaskQueueBenchmark {
+
+    static final long SP_TXNID = -1;
+
+    // Transactions per invocation, split among the producers
+    private static final int TXNS = 100000;
+
+    @Param({ "1", "2", "4" })
+    public int m_producerCount;
+
+    // One multi-part every this many transactions of a producer, 0 for none
+    @Param({ "0", "100" })
+    public int m_mpEvery;
+
+    @Param({ "CURRENT", "MONITOR" })
+    public String m_queueType;
+
+    /**
+     * TransactionTaskQueue with the fully synchronized offer and flush it had
+     * before the site thread could complete transactions without the monitor.
+     */
+    static class MonitorTransactionTaskQueue extends TransactionTaskQueue {
+        private final Deque<TransactionTask> m_backlog = new ArrayDeque<TransactionTask>();
+
+        MonitorTransactionTaskQueue(SiteTaskerQueue queue) {
+            super(queue, 0);
+        }
+
+        @Override
+        synchronized boolean offer(TransactionTask task) {
+            TransactionState txnState = task.getTransactionState();
+            boolean retval = false;
+            if (!m_backlog.isEmpty()) {
+                if (task.getTxnId() != m_backlog.getFirst().getTxnId()) {
+                    m_backlog.addLast(task);
+                    retval = true;
+                } else {
+                    m_taskQueue.offer(task);
+                }
+            } else {
+                if (!txnState.isSinglePartition()) {
+                    m_backlog.addLast(task);
+                    retval = true;
+                }
+                m_taskQueue.offer(task);
+            }
+            return retval;
+        }
+
+        @Override
+        synchronized int flush(long txnId) {
+            int offered = 0;
+            if (m_backlog.isEmpty() || !m_backlog.getFirst().getTransactionState().isDone()) {
+                return offered;
+            }
+            m_backlog.removeFirst();
+            Iterator<TransactionTask> iter = m_backlog.iterator();
+            while (iter.hasNext()) {
+                TransactionTask task = iter.next();
+                long lastQueuedTxnId = task.getTxnId();
+                m_taskQueue.offer(task);
+                ++offered;
+                if (task.getTransactionState().isSinglePartition()) {
+                    iter.remove();
+                    continue;
+                } else {
+                    while (iter.hasNext()) {
+                        task = iter.next();
+                        if (task.getTxnId() == lastQueuedTxnId) {
+                            iter.remove();
+                            m_taskQueue.offer(task);
+                            ++offered;
+                        }
+                    }
+                    break;
+                }
+            }
+            return offered;
+        }
+
+        @Override
+        synchronized int size() {
+            return m_backlog.size();
+        }
+    }
+
+    static class BenchTransactionState extends TransactionState {
+        final boolean m_isSinglePartition;
+
+        BenchTransactionState(long txnId, long spHandle, boolean isSinglePartition) {
+            super(null, createNotice(txnId, spHandle));
+            m_isSinglePartition = isSinglePartition;
+        }
+
+        private static FragmentTaskMessage createNotice(long txnId, long spHandle) {
+            FragmentTaskMessage notice = new FragmentTaskMessage(0, 0, txnId, txnId, false, false, false);
+            notice.setSpHandle(spHandle);
+            return notice;
+        }
+
+        @Override
+        public boolean isSinglePartition() {
+            return m_isSinglePartition;
+        }
+
+        @Override
+        public StoredProcedureInvocation getInvocation() {
+            return null;
+        }
+    }
+
+    /**
+     * A task that completes its transaction when the site runs it, unless it
+     * is the first fragment of a multi-part, which waits for its completion task.
+     */
+    static class BenchTask extends TransactionTask {
+        final boolean m_completes;
+
+        BenchTask(TransactionState txnState, TransactionTaskQueue queue, boolean completes) {
+            super(txnState, queue);
+            m_completes = completes;
+        }
+
+        // Returns true if the transaction completed
+        boolean complete() {
+            if (!m_completes) {
+                return false;
+            }
+            doCommonSPICompleteActions();
+            return true;
+        }
+
+        @Override
+        public void run(SiteProcedureConnection siteConnection) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void runFromTaskLog(SiteProcedureConnection siteConnection) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void runForRejoin(SiteProcedureConnection siteConnection, TaskLog rejoinTaskLog) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    static class Producer extends Thread {
+        final TransactionTaskQueue m_queue;
+        final int m_id;
+        final int m_txnCount;
+        final int m_mpEvery;
+
+        Producer(TransactionTaskQueue queue, int id, int txnCount, int mpEvery) {
+            super("Producer " + id);
+            m_queue = queue;
+            m_id = id;
+            m_txnCount = txnCount;
+            m_mpEvery = mpEvery;
+        }
+
+        @Override
+        public void run() {
+            BenchTransactionState mpTxn = null;
+            for (int i = 0; i < m_txnCount; i++) {
+                final long spHandle = ((long) i << 8) | m_id;
+                if (mpTxn != null && i % m_mpEvery == m_mpEvery / 2) {
+                    // Complete the multi-part halfway to the next one, queuing
+                    // the single parts in between behind it.
+                    m_queue.offer(new BenchTask(mpTxn, m_queue, true));
+                    mpTxn = null;
+                }
+                if (m_mpEvery > 0 && i % m_mpEvery == 0) {
+                    mpTxn = new BenchTransactionState(spHandle, spHandle, false);
+                    m_queue.offer(new BenchTask(mpTxn, m_queue, false));
+                } else {
+                    BenchTransactionState spTxn = new BenchTransactionState(SP_TXNID, spHandle, true);
+                    m_queue.offer(new BenchTask(spTxn, m_queue, true));
+                }
+            }
+            if (mpTxn != null) {
+                m_queue.offer(new BenchTask(mpTxn, m_queue, true));
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TXNS)
+    public long offerAndComplete() throws Exception {
+        SiteTaskerQueue taskQueue = new SiteTaskerQueue();
+        taskQueue.setStarvationTracker(new StarvationTracker(0));
+        TransactionTaskQueue queue = "MONITOR".equals(m_queueType) ?
+                new MonitorTransactionTaskQueue(taskQueue) : new TransactionTaskQueue(taskQueue, 0);
+
+        final int txnsPerProducer = TXNS / m_producerCount;
+        List<Producer> producers = new ArrayList<Producer>();
+        for (int i = 0; i < m_producerCount; i++) {
+            producers.add(new Producer(queue, i, txnsPerProducer, m_mpEvery));
+        }
+        for (Producer p : producers) {
+            p.start();
+        }
+        final long total = (long) txnsPerProducer * m_producerCount;
+        long completed = 0;
+        while (completed < total) {
+            BenchTask task = (BenchTask) taskQueue.take();
+            if (task.complete()) {
+                completed++;
+            }
+        }
+        for (Producer p : producers) {
+            p.join();
+        }
+        if (queue.size() != 0) {
+            throw new IllegalStateException("Backlog not drained: " + queue);
+        }
+        return completed;
+    }
+}
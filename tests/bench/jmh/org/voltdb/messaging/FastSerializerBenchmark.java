@@ -0,0 +1,91 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.messaging;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Writing and reading a mix of primitives, strings and arrays through the
+ * growable FastSerializer and the FastDeserializer.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FastSerializerBenchmark {
+
+    private final String m_string = "a string of typical identifier length";
+    private final long[] m_longs = new long[64];
+    private final byte[] m_bytes = new byte[256];
+    private byte[] m_serialized;
+
+    @Setup
+    public void setup() throws IOException {
+        for (int i = 0; i < m_longs.length; i++) {
+            m_longs[i] = i * 1000003L;
+        }
+        m_serialized = write().getBytes();
+    }
+
+    @Benchmark
+    public FastSerializer write() throws IOException {
+        // Start from the default allocation so buffer growth is part of the cost
+        FastSerializer fs = new FastSerializer();
+        fs.writeByte(1);
+        fs.writeInt(42);
+        fs.writeLong(Long.MAX_VALUE);
+        fs.writeDouble(0.5);
+        fs.writeString(m_string);
+        fs.writeArray(m_longs);
+        fs.writeVarbinary(m_bytes);
+        return fs;
+    }
+
+    @Benchmark
+    public long read() throws IOException {
+        FastDeserializer fds = new FastDeserializer(m_serialized);
+        long sum = fds.readByte();
+        sum += fds.readInt();
+        sum += fds.readLong();
+        sum += (long) fds.readDouble();
+        sum += fds.readString().length();
+        sum += ((long[]) fds.readArray(long.class)).length;
+        sum += fds.readVarbinary().length;
+        return sum;
+    }
+}
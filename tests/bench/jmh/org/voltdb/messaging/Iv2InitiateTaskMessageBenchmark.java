@@ -0,0 +1,83 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.messaging;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.voltcore.messaging.VoltMessage;
+import org.voltdb.StoredProcedureInvocation;
+
+/**
+ * Flattening an initiate task the way the ClientInterface sends it to a
+ * remote initiator and rebuilding it through the message factory on the
+ * receiving host.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Iv2InitiateTaskMessageBenchmark {
+
+    private final VoltDbMessageFactory m_factory = new VoltDbMessageFactory();
+    private Iv2InitiateTaskMessage m_message;
+    private ByteBuffer m_buffer;
+
+    @Setup
+    public void setup() {
+        StoredProcedureInvocation invocation = new StoredProcedureInvocation();
+        invocation.setProcName("Vote");
+        invocation.setParams(5555555555L, 6, 20000L);
+        invocation.setClientHandle(42);
+        m_message = new Iv2InitiateTaskMessage(1L, 2L, 3L, 4L, 5L, false, true,
+                                               invocation, 6L, 7L, false);
+        m_buffer = ByteBuffer.allocate(m_message.getSerializedSize());
+    }
+
+    @Benchmark
+    public ByteBuffer flatten() throws IOException {
+        m_buffer.clear();
+        m_message.flattenToBuffer(m_buffer);
+        m_buffer.flip();
+        return m_buffer;
+    }
+
+    @Benchmark
+    public VoltMessage roundTrip() throws IOException {
+        return m_factory.createMessageFromBuffer(flatten(), 1L);
+    }
+}
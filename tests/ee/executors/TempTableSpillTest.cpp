@@ -0,0 +1,281 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+#include "harness.h"
+
+#include "common/executorcontext.hpp"
+#include "common/serializeio.h"
+#include "common/tabletuple.h"
+#include "common/Topend.h"
+#include "common/ValueFactory.hpp"
+#include "common/ValuePeeker.hpp"
+#include "execution/VoltDBEngine.h"
+#include "storage/persistenttable.h"
+#include "storage/tableiterator.h"
+#include "storage/temptable.h"
+
+#include "test_utils/LoadTableFrom.hpp"
+
+#include "boost/scoped_array.hpp"
+#include "boost/scoped_ptr.hpp"
+
+#include <algorithm>
+#include <cstring>
+#include <map>
+#include <sstream>
+#include <string>
+#include <vector>
+
+using namespace voltdb;
+
+/*
+ * Run the executors that have a spill path of their own over an input that
+ * is several times the temp table memory limit, and check that they produce
+ * the same rows as with enough memory to do without spilling.
+ */
+
+// Rows in table T. Their scan alone is several times SPILL_MEMORY_LIMIT.
+static const int64_t ROW_COUNT = 200000;
+// Distinct values of T.A, so each group of the aggregate has two rows
+static const int64_t GROUP_COUNT = ROW_COUNT / 2;
+static const int64_t SPILL_MEMORY_LIMIT = 1024 * 1024;
+static const size_t RESULT_BUFFER_SIZE = 16 * 1024 * 1024;
+
+static const int64_t ORDER_BY_FRAGMENT = 1;
+static const int64_t HASH_AGGREGATE_FRAGMENT = 2;
+
+/**
+ * Hands out the plans of the test by fragment id.
+ */
+class SpillTestTopend : public DummyTopend {
+public:
+    void addPlan(int64_t fragmentId, const std::string &plan) {
+        m_plans[fragmentId] = plan;
+    }
+    std::string planForFragmentId(int64_t fragmentId) {
+        std::map<int64_t, std::string>::iterator it = m_plans.find(fragmentId);
+        return it == m_plans.end() ? "" : it->second;
+    }
+private:
+    std::map<int64_t, std::string> m_plans;
+};
+
+// CREATE TABLE T (A BIGINT NOT NULL, B BIGINT NOT NULL);
+static const std::string catalogPayload(
+    "add / clusters cluster\n"
+    "set /clusters#cluster localepoch 1199145600\n"
+    "add /clusters#cluster databases database\n"
+    "add /clusters#cluster/databases#database tables T\n"
+    "set /clusters#cluster/databases#database/tables#T isreplicated true\n"
+    "set $PREV partitioncolumn null\n"
+    "set $PREV estimatedtuplecount 0\n"
+    "set $PREV materializer null\n"
+    "set $PREV signature \"T|bb\"\n"
+    "set $PREV tuplelimit 2147483647\n"
+    "set $PREV isDRed false\n"
+    "add /clusters#cluster/databases#database/tables#T columns A\n"
+    "set /clusters#cluster/databases#database/tables#T/columns#A index 0\n"
+    "set $PREV type 6\n"
+    "set $PREV size 8\n"
+    "set $PREV nullable false\n"
+    "set $PREV name \"A\"\n"
+    "set $PREV defaultvalue null\n"
+    "set $PREV defaulttype 0\n"
+    "set $PREV matview null\n"
+    "set $PREV aggregatetype 0\n"
+    "set $PREV matviewsource null\n"
+    "set $PREV inbytes false\n"
+    "add /clusters#cluster/databases#database/tables#T columns B\n"
+    "set /clusters#cluster/databases#database/tables#T/columns#B index 1\n"
+    "set $PREV type 6\n"
+    "set $PREV size 8\n"
+    "set $PREV nullable false\n"
+    "set $PREV name \"B\"\n"
+    "set $PREV defaultvalue null\n"
+    "set $PREV defaulttype 0\n"
+    "set $PREV matview null\n"
+    "set $PREV aggregatetype 0\n"
+    "set $PREV matviewsource null\n"
+    "set $PREV inbytes false\n");
+
+// A BIGINT column of the input tuple
+static std::string bigintColumn(int index) {
+    std::ostringstream oss;
+    oss << "{\"TYPE\": 32, \"VALUE_TYPE\": 6, \"COLUMN_IDX\": " << index << "}";
+    return oss.str();
+}
+
+static std::string outputColumn(const std::string &name, int index) {
+    return "{\"COLUMN_NAME\": \"" + name + "\", \"EXPRESSION\": " + bigintColumn(index) + "}";
+}
+
+// The scan projects the rows into a temp table, which is what spills
+static const std::string scanNode(
+    "{\"ID\": 3, \"PLAN_NODE_TYPE\": \"SEQSCAN\","
+    " \"TARGET_TABLE_NAME\": \"T\", \"TARGET_TABLE_ALIAS\": \"T\","
+    " \"INLINE_NODES\": [{\"ID\": 4, \"PLAN_NODE_TYPE\": \"PROJECTION\","
+    " \"OUTPUT_SCHEMA\": [" + outputColumn("A", 0) + ", " + outputColumn("B", 1) + "]}]}");
+
+static std::string plan(const std::string &node) {
+    return "{\"EXECUTE_LIST\": [3, 2, 1], \"PLAN_NODES\": ["
+           "{\"ID\": 1, \"PLAN_NODE_TYPE\": \"SEND\", \"CHILDREN_IDS\": [2]}, " +
+           node + ", " + scanNode + "]}";
+}
+
+// SELECT A, B FROM T ORDER BY B
+static const std::string orderByPlan = plan(
+    "{\"ID\": 2, \"PLAN_NODE_TYPE\": \"ORDERBY\", \"CHILDREN_IDS\": [3],"
+    " \"SORT_COLUMNS\": [{\"SORT_EXPRESSION\": " + bigintColumn(1) + ", \"SORT_DIRECTION\": \"ASC\"}]}");
+
+// SELECT A, COUNT(*), SUM(B) FROM T GROUP BY A
+static const std::string hashAggregatePlan = plan(
+    "{\"ID\": 2, \"PLAN_NODE_TYPE\": \"HASHAGGREGATE\", \"CHILDREN_IDS\": [3],"
+    " \"AGGREGATE_COLUMNS\": ["
+    "{\"AGGREGATE_TYPE\": \"AGGREGATE_COUNT_STAR\", \"AGGREGATE_DISTINCT\": 0, \"AGGREGATE_OUTPUT_COLUMN\": 1},"
+    " {\"AGGREGATE_TYPE\": \"AGGREGATE_SUM\", \"AGGREGATE_DISTINCT\": 0, \"AGGREGATE_OUTPUT_COLUMN\": 2,"
+    " \"AGGREGATE_EXPRESSION\": " + bigintColumn(1) + "}],"
+    " \"GROUPBY_EXPRESSIONS\": [" + bigintColumn(0) + "],"
+    " \"OUTPUT_SCHEMA\": [" + outputColumn("A", 0) + ", " + outputColumn("C", 1) + ", " +
+    outputColumn("S", 2) + "]}");
+
+typedef std::vector<std::vector<int64_t> > Rows;
+
+class TempTableSpillTest : public Test {
+public:
+    TempTableSpillTest()
+        : m_parameterBuffer(new char[4 * 1024])
+        , m_resultBuffer(new char[RESULT_BUFFER_SIZE])
+        , m_exceptionBuffer(new char[4 * 1024])
+    {
+        m_topend.addPlan(ORDER_BY_FRAGMENT, orderByPlan);
+        m_topend.addPlan(HASH_AGGREGATE_FRAGMENT, hashAggregatePlan);
+    }
+
+protected:
+    /**
+     * Run a fragment in a fresh engine with the given temp table memory limit,
+     * spilling to the test's temp directory if spill is set. Returns the
+     * engine's error code, and the result rows on success.
+     */
+    int runFragment(int64_t fragmentId, int64_t memoryLimit, bool spill, Rows &rows) {
+        boost::scoped_ptr<VoltDBEngine> engine(new VoltDBEngine(&m_topend));
+        engine->setBuffers(m_parameterBuffer.get(), 4 * 1024,
+                           m_resultBuffer.get(), RESULT_BUFFER_SIZE,
+                           m_exceptionBuffer.get(), 4 * 1024);
+        engine->resetReusedResultOutputBuffer();
+        engine->initialize(1, 1, 0, 0, "", 0, 1024, memoryLimit, false);
+        engine->loadCatalog(0, catalogPayload);
+        if (spill) {
+            setSpillDirectory(engine.get());
+        }
+        loadTable(engine.get());
+
+        ::memset(m_parameterBuffer.get(), 0, 4 * 1024);
+        ReferenceSerializeInputBE params(m_parameterBuffer.get(), 4 * 1024);
+        engine->resetReusedResultOutputBuffer();
+        int errorCode = engine->executePlanFragments(1, &fragmentId, NULL, params, 1, 1, 0, 1, 1);
+        if (errorCode != ENGINE_ERRORCODE_SUCCESS) {
+            return errorCode;
+        }
+
+        boost::scoped_ptr<TempTable> result(loadTableFrom(m_resultBuffer.get(), engine->getResultsSize()));
+        TableTuple tuple(result->schema());
+        TableIterator iter = result->iterator();
+        while (iter.next(tuple)) {
+            std::vector<int64_t> row;
+            for (int ii = 0; ii < result->columnCount(); ++ii) {
+                row.push_back(ValuePeeker::peekAsBigInt(tuple.getNValue(ii)));
+            }
+            rows.push_back(row);
+        }
+        return errorCode;
+    }
+
+    void setSpillDirectory(VoltDBEngine *engine) {
+        char buffer[1024];
+        ReferenceSerializeOutput out(buffer, sizeof(buffer));
+        out.writeTextString(m_spillDir.name());
+        out.writeLong(-1); // no limit on spill space
+        ReferenceSerializeInputBE taskInfo(buffer, out.size());
+        engine->executeTask(TASK_TYPE_SET_TEMP_TABLE_SPILL, taskInfo);
+    }
+
+    // T.B is a permutation of the row numbers, so the ORDER BY has a single answer
+    void loadTable(VoltDBEngine *engine) {
+        PersistentTable *table = dynamic_cast<PersistentTable*>(engine->getTable("T"));
+        engine->setUndoToken(0);
+        ExecutorContext::getExecutorContext()->setupForPlanFragments(engine->getCurrentUndoQuantum(), 0, 0, 0, 0);
+        TableTuple &tuple = table->tempTuple();
+        for (int64_t ii = 0; ii < ROW_COUNT; ++ii) {
+            tuple.setNValue(0, ValueFactory::getBigIntValue(ii % GROUP_COUNT));
+            tuple.setNValue(1, ValueFactory::getBigIntValue((ii * 7919) % ROW_COUNT));
+            table->insertTuple(tuple);
+        }
+        engine->releaseUndoToken(0);
+    }
+
+    SpillTestTopend m_topend;
+    stupidunit::ChTempDir m_spillDir;
+    boost::scoped_array<char> m_parameterBuffer;
+    boost::scoped_array<char> m_resultBuffer;
+    boost::scoped_array<char> m_exceptionBuffer;
+};
+
+TEST_F(TempTableSpillTest, OrderByMergesSortedRuns) {
+    Rows expected;
+    ASSERT_EQ(ENGINE_ERRORCODE_SUCCESS, runFragment(ORDER_BY_FRAGMENT, DEFAULT_TEMP_TABLE_MEMORY, false, expected));
+    ASSERT_EQ(ROW_COUNT, expected.size());
+
+    // The input does not fit without spilling
+    Rows rows;
+    ASSERT_EQ(ENGINE_ERRORCODE_ERROR, runFragment(ORDER_BY_FRAGMENT, SPILL_MEMORY_LIMIT, false, rows));
+
+    rows.clear();
+    ASSERT_EQ(ENGINE_ERRORCODE_SUCCESS, runFragment(ORDER_BY_FRAGMENT, SPILL_MEMORY_LIMIT, true, rows));
+    ASSERT_TRUE(expected == rows);
+}
+
+TEST_F(TempTableSpillTest, HashAggregatePartitions) {
+    Rows expected;
+    ASSERT_EQ(ENGINE_ERRORCODE_SUCCESS,
+              runFragment(HASH_AGGREGATE_FRAGMENT, DEFAULT_TEMP_TABLE_MEMORY, false, expected));
+    ASSERT_EQ(GROUP_COUNT, expected.size());
+
+    Rows rows;
+    ASSERT_EQ(ENGINE_ERRORCODE_ERROR, runFragment(HASH_AGGREGATE_FRAGMENT, SPILL_MEMORY_LIMIT, false, rows));
+
+    // The groups outgrow the memory limit, so the input is partitioned, and
+    // partitions whose groups outgrow it again are partitioned further
+    rows.clear();
+    ASSERT_EQ(ENGINE_ERRORCODE_SUCCESS, runFragment(HASH_AGGREGATE_FRAGMENT, SPILL_MEMORY_LIMIT, true, rows));
+    std::sort(expected.begin(), expected.end());
+    std::sort(rows.begin(), rows.end());
+    ASSERT_TRUE(expected == rows);
+    for (size_t ii = 0; ii < rows.size(); ++ii) {
+        ASSERT_EQ(2, rows[ii][1]);
+    }
+}
+
+int main() {
+    return TestSuite::globalInstance()->runAll();
+}
@@ -427,6 +427,51 @@ TEST_F(ExpressionTest, HashRange) {
     TupleSchema::freeTupleSchema(schema);
 }
 
+/*
+ * Show that batch evaluation matches evaluating each tuple and keeps
+ * AND from evaluating its right side on the rows it already rejected
+ */
+TEST_F(ExpressionTest, BatchEvaluation) {
+    vector<int32_t> columnSizes(2, 8);
+    vector<bool> allowNull(2, true);
+    vector<voltdb::ValueType> types(2, voltdb::VALUE_TYPE_BIGINT);
+    TupleSchema *schema = TupleSchema::createTupleSchemaForTest(types,columnSizes,allowNull);
+
+    // foo <> 0 AND bar / foo > 2, which would divide by zero without the short circuit
+    boost::scoped_ptr<AbstractExpression> predicate(
+        new ConjunctionExpression<ConjunctionAnd>(EXPRESSION_TYPE_CONJUNCTION_AND,
+            new ComparisonExpression<CmpNe>(EXPRESSION_TYPE_COMPARE_NOTEQUAL,
+                new TupleValueExpression(0, 0),
+                new ConstantValueExpression(ValueFactory::getBigIntValue(0))),
+            new ComparisonExpression<CmpGt>(EXPRESSION_TYPE_COMPARE_GREATERTHAN,
+                new OperatorExpression<OpDivide>(EXPRESSION_TYPE_OPERATOR_DIVIDE,
+                    new TupleValueExpression(0, 1),
+                    new TupleValueExpression(0, 0)),
+                new ConstantValueExpression(ValueFactory::getBigIntValue(2)))));
+    ASSERT_TRUE(predicate->isBatchEvaluable());
+
+    const int count = 100;
+    const int tupleLength = schema->tupleLength() + TUPLE_HEADER_SIZE;
+    boost::scoped_array<char> tupleStorage(new char[count * tupleLength]);
+    vector<TableTuple> tuples;
+    for (int ii = 0; ii < count; ii++) {
+        TableTuple t(tupleStorage.get() + ii * tupleLength, schema);
+        t.setNValue(0, (ii % 7 == 3) ? NValue::getNullValue(VALUE_TYPE_BIGINT) :
+                                       ValueFactory::getBigIntValue(ii % 5));
+        t.setNValue(1, ValueFactory::getBigIntValue(ii));
+        tuples.push_back(t);
+    }
+
+    vector<NValue> results(count);
+    predicate->evalBatch(&tuples[0], count, &results[0]);
+    for (int ii = 0; ii < count; ii++) {
+        NValue expected = predicate->eval(&tuples[ii]);
+        ASSERT_EQ(expected.isTrue(), results[ii].isTrue());
+        ASSERT_EQ(expected.isNull(), results[ii].isNull());
+    }
+    TupleSchema::freeTupleSchema(schema);
+}
+
 TEST_F(ExpressionTest, Timestamp) {
     int64_t epoch_micros = -8881540068000000; // timestamp from "1688-07-21 09:32:12"
     boost::posix_time::ptime input_ptime = EPOCH + boost::posix_time::microseconds(epoch_micros);
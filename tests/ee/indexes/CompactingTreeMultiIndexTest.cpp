@@ -25,6 +25,7 @@
 #include "common/common.h"
 #include "common/NValue.hpp"
 #include "common/ValueFactory.hpp"
+#include "common/ValuePeeker.hpp"
 #include "common/tabletuple.h"
 #include "indexes/tableindex.h"
 #include "indexes/indexkey.h"
@@ -255,6 +256,136 @@ TEST_F(CompactingTreeMultiIndexTest, SimpleDeleteTuple) {
     delete tuple4;
 }
 
+TEST_F(CompactingTreeMultiIndexTest, DistinctKeyEstimate) {
+    vector<int> columnIndices;
+    vector<ValueType> columnTypes;
+    vector<int32_t> columnLengths;
+    vector<bool> columnAllowNull;
+
+    columnIndices.push_back(0);
+    columnTypes.push_back(VALUE_TYPE_BIGINT);
+    columnLengths.push_back(NValue::getTupleStorageSize(VALUE_TYPE_BIGINT));
+    columnAllowNull.push_back(false);
+
+    TupleSchema *schema = TupleSchema::createTupleSchemaForTest(columnTypes,
+                                                         columnLengths,
+                                                         columnAllowNull);
+
+    for (int countable = 0; countable < 2; countable++) {
+        TableIndexScheme scheme("test_index", BALANCED_TREE_INDEX,
+                                columnIndices, TableIndex::simplyIndexColumns(),
+                                false, countable == 1, schema);
+        TableIndex *index = TableIndexFactory::getInstance(scheme);
+        EXPECT_EQ(0, index->getDistinctKeyEstimate());
+
+        // 100 keys with 200 entries each
+        const int keys = 100;
+        const int entriesPerKey = 200;
+        vector<TableTuple*> tuples;
+        for (int ii = 0; ii < keys * entriesPerKey; ii++) {
+            TableTuple *tuple = newTuple(schema, 0, ii % keys);
+            tuples.push_back(tuple);
+            index->addEntry(tuple, NULL);
+            if (ii == 999) {
+                // Small enough to be counted exactly
+                EXPECT_EQ(keys, index->getDistinctKeyEstimate());
+            }
+        }
+
+        int64_t estimate = index->getDistinctKeyEstimate();
+        if (countable) {
+            // Sampled evenly over the whole index
+            EXPECT_TRUE(estimate >= keys / 2 && estimate <= keys * 2);
+        }
+        else {
+            // Only the start of the index is sampled
+            EXPECT_TRUE(estimate >= 1 && estimate <= keys * 2);
+        }
+
+        delete index;
+        for (size_t ii = 0; ii < tuples.size(); ii++) {
+            delete[] tuples[ii]->address();
+            delete tuples[ii];
+        }
+    }
+    TupleSchema::freeTupleSchema(schema);
+}
+
+// moveToKeys must leave every cursor where moveToKey would
+TEST_F(CompactingTreeMultiIndexTest, BatchedLookup) {
+    vector<int> columnIndices;
+    vector<ValueType> columnTypes;
+    vector<int32_t> columnLengths;
+    vector<bool> columnAllowNull;
+
+    columnIndices.push_back(0);
+    columnTypes.push_back(VALUE_TYPE_BIGINT);
+    columnLengths.push_back(NValue::getTupleStorageSize(VALUE_TYPE_BIGINT));
+    columnAllowNull.push_back(false);
+
+    TupleSchema *schema = TupleSchema::createTupleSchemaForTest(columnTypes,
+                                                         columnLengths,
+                                                         columnAllowNull);
+    const TableIndexType types[] = { BALANCED_TREE_INDEX, BTREE_INDEX, HASH_TABLE_INDEX };
+    const int keys = 200;
+    const int probes = 64;
+    srand(5);
+
+    for (int typeIdx = 0; typeIdx < 3; typeIdx++) {
+        for (int unique = 0; unique < 2; unique++) {
+            TableIndexScheme scheme("test_index", types[typeIdx],
+                                    columnIndices, TableIndex::simplyIndexColumns(),
+                                    unique == 1, false, schema);
+            TableIndex *index = TableIndexFactory::getInstance(scheme);
+
+            // Even keys only, three entries each unless unique
+            vector<TableTuple*> tuples;
+            for (int ii = 0; ii < (unique ? keys : 3 * keys); ii++) {
+                TableTuple *tuple = newTuple(schema, 0, 2 * (ii % keys));
+                tuples.push_back(tuple);
+                index->addEntry(tuple, NULL);
+            }
+
+            const TupleSchema *keySchema = index->getKeySchema();
+            vector<TableTuple> searchKeys;
+            vector<IndexCursor> cursors(probes, IndexCursor(index->getTupleSchema()));
+            for (int ii = 0; ii < probes; ii++) {
+                TableTuple *key = newTuple(const_cast<TupleSchema*>(keySchema), 0, rand() % (2 * keys + 20));
+                searchKeys.push_back(*key);
+                delete key;
+            }
+            index->moveToKeys(&searchKeys[0], &cursors[0], probes);
+
+            IndexCursor expected(index->getTupleSchema());
+            for (int ii = 0; ii < probes; ii++) {
+                EXPECT_EQ(index->moveToKey(&searchKeys[ii], expected), !cursors[ii].m_match.isNullTuple());
+                int matches = 0;
+                while (true) {
+                    TableTuple lhs = index->nextValueAtKey(expected);
+                    TableTuple rhs = index->nextValueAtKey(cursors[ii]);
+                    EXPECT_EQ(lhs.address(), rhs.address());
+                    if (lhs.isNullTuple() || rhs.isNullTuple()) {
+                        break;
+                    }
+                    matches++;
+                }
+                const int64_t key = ValuePeeker::peekBigInt(searchKeys[ii].getNValue(0));
+                EXPECT_EQ((key % 2 == 0 && key < 2 * keys) ? (unique ? 1 : 3) : 0, matches);
+            }
+
+            delete index;
+            for (int ii = 0; ii < probes; ii++) {
+                delete[] searchKeys[ii].address();
+            }
+            for (size_t ii = 0; ii < tuples.size(); ii++) {
+                delete[] tuples[ii]->address();
+                delete tuples[ii];
+            }
+        }
+    }
+    TupleSchema::freeTupleSchema(schema);
+}
+
 static int VERBOSE = 0;
 
 // create three types of index and test their performace of delete
@@ -45,6 +45,7 @@
 #include "stx/btree_set.h"
 #include "common/DefaultTupleSerializer.h"
 #include "jsoncpp/jsoncpp.h"
+#include <map>
 #include <vector>
 #include <string>
 #include <iostream>
@@ -1023,6 +1024,60 @@ public:
         }
     }
 
+    // Collect the first two columns of the tuples serialized to a snapshot stream.
+    void collectStreamedTuples(const char *buffer, size_t serialized, T_ValueSet &values) {
+        for (size_t ii = sizeof(int32_t)*3; // skip partition id, row count, and first tuple length
+             ii + sizeof(int64_t) <= serialized;
+             ii += m_tupleWidth + sizeof(int32_t)) {
+            int32_t pair[2];
+            pair[0] = ntohl(*reinterpret_cast<const int32_t*>(&buffer[ii]));
+            pair[1] = ntohl(*reinterpret_cast<const int32_t*>(&buffer[ii + 4]));
+            void *pairVoid = reinterpret_cast<void*>(pair);
+            const bool inserted = values.insert(*reinterpret_cast<const int64_t*>(pairVoid)).second;
+            if (!inserted) {
+                printf("Tuple %d/%d streamed twice\n", pair[0], pair[1]);
+            }
+            ASSERT_TRUE(inserted);
+        }
+    }
+
+    // Activate a snapshot and stream it to completion. A delta writes the
+    // modified tuples to the first stream and the deleted ones to the second.
+    void streamDeltaSnapshot(TableStreamType streamType, T_ValueSet &tuples, T_ValueSet &deletedTuples) {
+        char config[4];
+        ::memset(config, 0, 4);
+        ReferenceSerializeInputBE input(config, 4);
+        ASSERT_TRUE(m_table->activateStream(m_serializer, streamType, 0, m_tableId, input));
+
+        const size_t nstreams = (streamType == TABLE_STREAM_SNAPSHOT_DELTA) ? 2 : 1;
+        std::vector<char> buffers[2];
+        T_ValueSet *collected[2] = { &tuples, &deletedTuples };
+        int64_t remaining = 0;
+        do {
+            TupleOutputStreamProcessor outputStreams;
+            for (size_t i = 0; i < nstreams; i++) {
+                buffers[i].resize(BUFFER_SIZE);
+                outputStreams.add(&buffers[i][0], BUFFER_SIZE);
+            }
+            std::vector<int> retPositions;
+            remaining = m_table->streamMore(outputStreams, streamType, retPositions);
+            ASSERT_TRUE(remaining >= 0);
+            ASSERT_EQ(outputStreams.size(), retPositions.size());
+            for (size_t i = 0; i < nstreams; i++) {
+                collectStreamedTuples(&buffers[i][0], outputStreams.at(i).position(), *collected[i]);
+            }
+        } while (remaining > 0);
+    }
+
+    // A delta that has to replace the whole table writes every tuple after a
+    // single all-NULL deleted tuple.
+    void checkWholeTableDelta(size_t tupleCount, T_ValueSet &currentTuples,
+                              T_ValueSet &deltaTuples, T_ValueSet &deltaDeletes) {
+        ASSERT_EQ(tupleCount, deltaTuples.size());
+        ASSERT_TRUE(currentTuples == deltaTuples);
+        ASSERT_EQ(1, deltaDeletes.size());
+    }
+
     boost::shared_ptr<ReferenceSerializeInputBE> getHashRangePredicateInput(const T_HashRange &testRange) {
         // Set up the hash range predicate.
         ReferenceSerializeOutput hashRangeOutput(m_hashRangeBuffer, 1024 * 256);
@@ -1190,6 +1245,15 @@ TEST_F(CopyOnWriteTest, TestTableTupleFlags) {
     tuple.setDirtyFalse();
     ASSERT_TRUE(tuple.isActive());
     ASSERT_FALSE(tuple.isDirty());
+
+    tuple.setModifiedTrue();
+    ASSERT_TRUE(tuple.isModified());
+    ASSERT_TRUE(tuple.isActive());
+    ASSERT_FALSE(tuple.isDirty());
+
+    tuple.setModifiedFalse();
+    ASSERT_FALSE(tuple.isModified());
+    ASSERT_TRUE(tuple.isActive());
 }
 
 // Simple test that performs snapshot activation on empty table, inserts tuples and calls stream more tuples
@@ -1218,6 +1282,150 @@ TEST_F(CopyOnWriteTest, TestTupleInsertionBetweenSnapshotActivateFinish) {
     ASSERT_EQ(tupleCount, m_table->visibleTupleCount());
 }
 
+TEST_F(CopyOnWriteTest, DeltaSnapshot) {
+    initTable(1, 0);
+    int tupleCount = TUPLE_COUNT;
+    addRandomUniqueTuples(m_table, tupleCount);
+
+    // The delta base writes every tuple.
+    T_ValueSet originalTuples;
+    getTableValueSet(originalTuples);
+    T_ValueSet baseTuples;
+    T_ValueSet baseDeletes;
+    streamDeltaSnapshot(TABLE_STREAM_SNAPSHOT_DELTA_BASE, baseTuples, baseDeletes);
+    checkTuples(tupleCount, originalTuples, baseTuples);
+    ASSERT_TRUE(baseDeletes.empty());
+
+    // Update, delete, re-key and insert a few tuples.
+    std::vector<char*> addresses;
+    voltdb::TableIterator& iterator = m_table->iterator();
+    TableTuple tuple(m_table->schema());
+    while (addresses.size() < NUM_MUTATIONS * 3 && iterator.next(tuple)) {
+        addresses.push_back(tuple.address());
+    }
+    ASSERT_EQ(NUM_MUTATIONS * 3, addresses.size());
+    T_ValueSet expectedTuples;
+    T_ValueSet expectedDeletes;
+    for (size_t i = 0; i < NUM_MUTATIONS; i++) {
+        tuple.move(addresses[i]);
+        updateSpecificTuple(m_table, tuple, NULL, &expectedTuples);
+
+        tuple.move(addresses[NUM_MUTATIONS + i]);
+        expectedDeletes.insert(*reinterpret_cast<const int64_t*>(tuple.address() + 1));
+        m_table->deleteTuple(tuple, true);
+
+        tuple.move(addresses[NUM_MUTATIONS * 2 + i]);
+        expectedDeletes.insert(*reinterpret_cast<const int64_t*>(tuple.address() + 1));
+        TableTuple rekeyed = m_table->tempTuple();
+        rekeyed.copy(tuple);
+        rekeyed.setNValue(0, ValueFactory::getIntegerValue(m_primaryKeyIndex++));
+        expectedTuples.insert(*reinterpret_cast<const int64_t*>(rekeyed.address() + 1));
+        m_table->updateTuple(tuple, rekeyed);
+
+        addRandomUniqueTuples(m_table, 1, &expectedTuples);
+    }
+
+    // The delta writes only those.
+    T_ValueSet deltaTuples;
+    T_ValueSet deltaDeletes;
+    streamDeltaSnapshot(TABLE_STREAM_SNAPSHOT_DELTA, deltaTuples, deltaDeletes);
+    checkTuples(0, expectedTuples, deltaTuples);
+    checkTuples(0, expectedDeletes, deltaDeletes);
+
+    // Nothing changed since.
+    T_ValueSet emptyTuples;
+    T_ValueSet emptyDeletes;
+    streamDeltaSnapshot(TABLE_STREAM_SNAPSHOT_DELTA, emptyTuples, emptyDeletes);
+    ASSERT_TRUE(emptyTuples.empty());
+    ASSERT_TRUE(emptyDeletes.empty());
+
+    // Applying the deletes and then the upserts of the delta to the base,
+    // by primary key, gives the current table.
+    std::map<int32_t, int64_t> restored;
+    for (T_ValueSet::iterator iter = baseTuples.begin(); iter != baseTuples.end(); ++iter) {
+        restored[reinterpret_cast<const int32_t*>(&*iter)[0]] = *iter;
+    }
+    for (T_ValueSet::iterator iter = deltaDeletes.begin(); iter != deltaDeletes.end(); ++iter) {
+        restored.erase(reinterpret_cast<const int32_t*>(&*iter)[0]);
+    }
+    for (T_ValueSet::iterator iter = deltaTuples.begin(); iter != deltaTuples.end(); ++iter) {
+        restored[reinterpret_cast<const int32_t*>(&*iter)[0]] = *iter;
+    }
+    T_ValueSet restoredTuples;
+    for (std::map<int32_t, int64_t>::iterator iter = restored.begin(); iter != restored.end(); ++iter) {
+        restoredTuples.insert(iter->second);
+    }
+    T_ValueSet currentTuples;
+    getTableValueSet(currentTuples);
+    checkTuples(tupleCount, currentTuples, restoredTuples);
+}
+
+TEST_F(CopyOnWriteTest, DeltaSnapshotAfterManyDeletes) {
+    initTable(1, 0);
+    int tupleCount = TUPLE_COUNT;
+    addRandomUniqueTuples(m_table, tupleCount);
+
+    T_ValueSet baseTuples;
+    T_ValueSet baseDeletes;
+    streamDeltaSnapshot(TABLE_STREAM_SNAPSHOT_DELTA_BASE, baseTuples, baseDeletes);
+
+    // Delete three quarters of the table, more than it has left.
+    std::vector<char*> addresses;
+    voltdb::TableIterator& iterator = m_table->iterator();
+    TableTuple tuple(m_table->schema());
+    while (addresses.size() < tupleCount * 3 / 4 && iterator.next(tuple)) {
+        addresses.push_back(tuple.address());
+    }
+    for (size_t i = 0; i < addresses.size(); i++) {
+        tuple.move(addresses[i]);
+        m_table->deleteTuple(tuple, true);
+    }
+
+    T_ValueSet deltaTuples;
+    T_ValueSet deltaDeletes;
+    streamDeltaSnapshot(TABLE_STREAM_SNAPSHOT_DELTA, deltaTuples, deltaDeletes);
+    T_ValueSet currentTuples;
+    getTableValueSet(currentTuples);
+    checkWholeTableDelta(tupleCount - addresses.size(), currentTuples, deltaTuples, deltaDeletes);
+
+    // Tracking goes on, the next delta is incremental again.
+    T_ValueSet emptyTuples;
+    T_ValueSet emptyDeletes;
+    streamDeltaSnapshot(TABLE_STREAM_SNAPSHOT_DELTA, emptyTuples, emptyDeletes);
+    ASSERT_TRUE(emptyTuples.empty());
+    ASSERT_TRUE(emptyDeletes.empty());
+}
+
+TEST_F(CopyOnWriteTest, FullSnapshotKeepsDeltaTracking) {
+    initTable(1, 0);
+    int tupleCount = TUPLE_COUNT;
+    addRandomUniqueTuples(m_table, tupleCount);
+
+    T_ValueSet baseTuples;
+    T_ValueSet baseDeletes;
+    streamDeltaSnapshot(TABLE_STREAM_SNAPSHOT_DELTA_BASE, baseTuples, baseDeletes);
+
+    voltdb::TableIterator& iterator = m_table->iterator();
+    TableTuple tuple(m_table->schema());
+    ASSERT_TRUE(iterator.next(tuple));
+    T_ValueSet expectedDeletes;
+    expectedDeletes.insert(*reinterpret_cast<const int64_t*>(tuple.address() + 1));
+    m_table->deleteTuple(tuple, true);
+
+    T_ValueSet fullTuples;
+    T_ValueSet fullDeletes;
+    streamDeltaSnapshot(TABLE_STREAM_SNAPSHOT, fullTuples, fullDeletes);
+    ASSERT_EQ(tupleCount - 1, fullTuples.size());
+
+    // The full snapshot in between is not part of the chain, the next delta
+    // still carries the delete made before it.
+    T_ValueSet deltaTuples;
+    T_ValueSet deltaDeletes;
+    streamDeltaSnapshot(TABLE_STREAM_SNAPSHOT_DELTA, deltaTuples, deltaDeletes);
+    ASSERT_TRUE(deltaTuples.empty());
+    checkTuples(0, expectedDeletes, deltaDeletes);
+}
+
 TEST_F(CopyOnWriteTest, BigTest) {
     initTable(1, 0);
     int tupleCount = TUPLE_COUNT;
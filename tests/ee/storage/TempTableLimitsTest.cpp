@@ -25,9 +25,17 @@
 
 #include "harness.h"
 #include "common/SQLException.h"
+#include "common/TupleSchema.h"
+#include "common/ValueFactory.hpp"
+#include "common/ValuePeeker.hpp"
 #include "logging/LogManager.h"
+#include "storage/tablefactory.h"
+#include "storage/tableiterator.h"
+#include "storage/temptable.h"
 
 #include <sstream>
+#include <string>
+#include <vector>
 
 using namespace voltdb;
 
@@ -68,6 +76,7 @@ public:
     }
 
     LogManager m_logManager;
+    stupidunit::ChTempDir m_spillDir;
 };
 
 TEST_F(TempTableLimitsTest, CheckLogLatch)
@@ -125,6 +134,92 @@ TEST_F(TempTableLimitsTest, CheckLimitException)
     EXPECT_TRUE(threw);
 }
 
+static TempTable* createSpillTable(TempTableLimits* limits)
+{
+    std::vector<std::string> columnNames;
+    std::vector<ValueType> columnTypes;
+    std::vector<int32_t> columnLengths;
+    std::vector<bool> columnAllowNull;
+    columnNames.push_back("id");
+    columnTypes.push_back(VALUE_TYPE_BIGINT);
+    columnLengths.push_back(NValue::getTupleStorageSize(VALUE_TYPE_BIGINT));
+    columnAllowNull.push_back(false);
+    columnNames.push_back("val");
+    columnTypes.push_back(VALUE_TYPE_BIGINT);
+    columnLengths.push_back(NValue::getTupleStorageSize(VALUE_TYPE_BIGINT));
+    columnAllowNull.push_back(false);
+    TupleSchema* schema = TupleSchema::createTupleSchemaForTest(columnTypes, columnLengths, columnAllowNull);
+    return TableFactory::getTempTable(0, "spill_table", schema, columnNames, limits);
+}
+
+static void insertSpillTuples(TempTable* table, int64_t count)
+{
+    TableTuple& tuple = table->tempTuple();
+    for (int64_t ii = 0; ii < count; ii++) {
+        tuple.setNValue(0, ValueFactory::getBigIntValue(ii));
+        tuple.setNValue(1, ValueFactory::getBigIntValue(ii * 7));
+        table->insertTempTuple(tuple);
+    }
+}
+
+TEST_F(TempTableLimitsTest, CheckSpill)
+{
+    TempTableLimits dut(1024 * 1024); // 1MB hard limit
+    dut.setSpillDirectory(m_spillDir.name(), -1);
+    TempTable* table = createSpillTable(&dut);
+
+    // Several times the memory limit worth of tuples
+    const int64_t tupleCount = 4 * 1024 * 1024 / table->schema()->tupleLength();
+    insertSpillTuples(table, tupleCount);
+    EXPECT_TRUE(dut.getAllocated() <= 1024 * 1024);
+    EXPECT_TRUE(dut.getSpilled() > 0);
+    EXPECT_TRUE(table->spilledBlockCount() > 0);
+
+    // Spilled blocks read back in insertion order, twice
+    for (int pass = 0; pass < 2; pass++) {
+        TableIterator iter = table->iterator();
+        TableTuple tuple(table->schema());
+        int64_t expected = 0;
+        while (iter.next(tuple)) {
+            EXPECT_EQ(expected, ValuePeeker::peekBigInt(tuple.getNValue(0)));
+            EXPECT_EQ(expected * 7, ValuePeeker::peekBigInt(tuple.getNValue(1)));
+            ++expected;
+        }
+        EXPECT_EQ(tupleCount, expected);
+    }
+
+    // Deleting as we go gives the spill space back along with the memory
+    TableIterator iter = table->iteratorDeletingAsWeGo();
+    TableTuple tuple(table->schema());
+    while (iter.next(tuple)) {}
+    table->deleteAllTuplesNonVirtual(false);
+    EXPECT_EQ(0, dut.getSpilled());
+    EXPECT_TRUE(dut.getAllocated() <= 128 * 1024);
+
+    delete table;
+}
+
+TEST_F(TempTableLimitsTest, CheckSpillLimitException)
+{
+    TempTableLimits dut(1024 * 1024); // 1MB hard limit
+    dut.setSpillDirectory(m_spillDir.name(), 1024 * 1024); // and 1MB of spill space
+    TempTable* table = createSpillTable(&dut);
+
+    bool threw = false;
+    try {
+        insertSpillTuples(table, 4 * 1024 * 1024 / table->schema()->tupleLength());
+    }
+    catch (SQLException& sqle) {
+        threw = true;
+    }
+    EXPECT_TRUE(threw);
+    EXPECT_TRUE(dut.getSpilled() <= 1024 * 1024);
+
+    table->deleteAllTuplesNonVirtual(false);
+    EXPECT_EQ(0, dut.getSpilled());
+    delete table;
+}
+
 int main()
 {
     return TestSuite::globalInstance()->runAll();
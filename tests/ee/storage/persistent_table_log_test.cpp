@@ -32,6 +32,7 @@
 #include "storage/tablefactory.h"
 #include "storage/tableutil.h"
 #include "storage/DRTupleStream.h"
+#include "storage/ConstraintFailureException.h"
 #include "indexes/tableindex.h"
 #include <vector>
 #include <string>
@@ -286,6 +287,35 @@ TEST_F(PersistentTableLogTest, LoadTableThenReleaseTest) {
     ASSERT_TRUE(m_table->activeTupleCount() == (int64_t)1000);
 }
 
+TEST_F(PersistentTableLogTest, LoadTableDuplicateThenUndoTest) {
+    initTable();
+    tableutil::addRandomTuples(m_table, 1000);
+
+    CopySerializeOutput serialize_out;
+    m_table->serializeTo(serialize_out);
+
+    m_engine->setUndoToken(INT64_MIN + 2);
+    // this next line is a testing hack until engine data is
+    // de-duplicated with executorcontext data
+    m_engine->updateExecutorContextUndoQuantumForTest();
+
+    // Every row of the load collides with the primary key of a stored row
+    ReferenceSerializeInputBE serialize_in(serialize_out.data() + sizeof(int32_t), serialize_out.size() - sizeof(int32_t));
+    bool failed = false;
+    try {
+        m_table->loadTuplesFrom(serialize_in, NULL, NULL);
+    } catch (const ConstraintFailureException &e) {
+        failed = true;
+    }
+    ASSERT_TRUE(failed);
+
+    // The failed row gave its slot back
+    ASSERT_TRUE(m_table->activeTupleCount() == (int64_t)1000);
+
+    m_engine->undoUndoToken(INT64_MIN + 2);
+    ASSERT_TRUE(m_table->activeTupleCount() == (int64_t)1000);
+}
+
 TEST_F(PersistentTableLogTest, InsertUpdateThenUndoOneTest) {
     initTable();
     tableutil::addRandomTuples(m_table, 1);
@@ -29,11 +29,15 @@
 #include "harness.h"
 #include "test_utils/ScopedTupleSchema.hpp"
 
+#include "common/StringDictionary.h"
 #include "common/tabletuple.h"
 #include "common/types.h"
 #include "common/TupleSchemaBuilder.h"
 #include "common/ValueFactory.hpp"
+#include "common/ValuePeeker.hpp"
 #include "execution/VoltDBEngine.h"
+#include "indexes/tableindex.h"
+#include "indexes/tableindexfactory.h"
 #include "storage/table.h"
 #include "storage/persistenttable.h"
 #include "storage/tablefactory.h"
@@ -42,14 +46,19 @@
 using voltdb::ExecutorContext;
 using voltdb::NValue;
 using voltdb::PersistentTable;
+using voltdb::StringDictionary;
 using voltdb::Table;
 using voltdb::TableFactory;
+using voltdb::TableIndex;
+using voltdb::TableIndexFactory;
+using voltdb::TableIndexScheme;
 using voltdb::TableIterator;
 using voltdb::TableTuple;
 using voltdb::TupleSchemaBuilder;
 using voltdb::VALUE_TYPE_BIGINT;
 using voltdb::VALUE_TYPE_VARCHAR;
 using voltdb::ValueFactory;
+using voltdb::ValuePeeker;
 using voltdb::VoltDBEngine;
 using voltdb::tableutil;
 
@@ -312,6 +321,138 @@ TEST_F(PersistentTableTest, TruncateTableTest) {
     ASSERT_EQ(1, table->allocatedBlockCount());
 }
 
+TEST_F(PersistentTableTest, BackgroundIndexBuild) {
+    VoltDBEngine* engine = getEngine();
+    engine->loadCatalog(0, catalogPayload());
+    PersistentTable *table = dynamic_cast<PersistentTable*>(engine->getTable("T"));
+    ASSERT_NE(NULL, table);
+
+    beginWork();
+    ASSERT_TRUE(tableutil::addRandomTuples(table, 1000));
+    commit();
+
+    std::vector<int32_t> columnIndices(1, 1);
+    std::vector<voltdb::AbstractExpression*> noExpressions;
+    TableIndex *index = TableIndexFactory::getInstance(TableIndexScheme("DATA_IDX",
+                                                                        voltdb::BALANCED_TREE_INDEX,
+                                                                        columnIndices,
+                                                                        noExpressions,
+                                                                        false, // unique
+                                                                        true,  // countable
+                                                                        table->schema()));
+    table->addIndexInBackground(index);
+    ASSERT_TRUE(table->hasPendingIndexes());
+    ASSERT_EQ(1, table->indexCount());
+    ASSERT_EQ(300, table->buildPendingIndexes(300));
+    ASSERT_TRUE(table->hasPendingIndexes());
+
+    // Change the table under the build, some of it only to roll it back
+    TableTuple tuple(table->schema());
+    NValue newStringData = ValueFactory::getTempStringValue("Nunavut Sannginivut");
+    for (int i = 0; i < 2; ++i) {
+        beginWork();
+        ASSERT_TRUE(tableutil::addRandomTuples(table, 10));
+        ASSERT_TRUE(tableutil::getRandomTuple(table, tuple));
+        table->deleteTuple(tuple, true);
+        ASSERT_TRUE(tableutil::getRandomTuple(table, tuple));
+        TableTuple& tempTuple = table->copyIntoTempTuple(tuple);
+        tempTuple.setNValue(1, newStringData);
+        table->updateTupleWithSpecificIndexes(tuple, tempTuple, table->allIndexes());
+        if (i == 0) {
+            rollback();
+        }
+        else {
+            commit();
+        }
+        table->buildPendingIndexes(200);
+    }
+
+    // Asking for the index finishes the build
+    ASSERT_EQ(index, table->index("DATA_IDX"));
+    ASSERT_FALSE(table->hasPendingIndexes());
+    ASSERT_EQ(2, table->indexCount());
+    ASSERT_EQ(1009, table->activeTupleCount());
+    ASSERT_EQ(table->activeTupleCount(), index->getSize());
+    TableIterator iterator = table->iterator();
+    while (iterator.next(tuple)) {
+        ASSERT_TRUE(index->exists(&tuple));
+    }
+}
+
+TEST_F(PersistentTableTest, SharedStrings) {
+    VoltDBEngine* engine = getEngine();
+    engine->loadCatalog(0, catalogPayload());
+    PersistentTable *table = dynamic_cast<PersistentTable*>(engine->getTable("T"));
+    ASSERT_NE(NULL, table);
+    StringDictionary *dictionary = StringDictionary::instance();
+    size_t baseline = dictionary->size();
+
+    // Tables don't share strings unless configured to
+    ASSERT_FALSE(table->stringSharing());
+    beginWork();
+    TableTuple &tempTuple = table->tempTuple();
+    for (int i = 0; i < 10; ++i) {
+        tempTuple.setNValue(0, ValueFactory::getBigIntValue(i));
+        tempTuple.setNValue(1, ValueFactory::getTempStringValue(i % 2 == 0 ? "Even" : "Odd"));
+        ASSERT_TRUE(table->insertTuple(tempTuple));
+    }
+    commit();
+    ASSERT_EQ(baseline, dictionary->size());
+    int64_t unsharedMemory = table->nonInlinedMemorySize();
+    ASSERT_TRUE(unsharedMemory > 0);
+    beginWork();
+    table->deleteAllTuples(true);
+    commit();
+    ASSERT_EQ(0, table->nonInlinedMemorySize());
+
+    table->setStringSharing(true);
+    beginWork();
+    for (int i = 0; i < 10; ++i) {
+        tempTuple.setNValue(0, ValueFactory::getBigIntValue(i));
+        tempTuple.setNValue(1, ValueFactory::getTempStringValue(i % 2 == 0 ? "Even" : "Odd"));
+        ASSERT_TRUE(table->insertTuple(tempTuple));
+    }
+    commit();
+    ASSERT_EQ(baseline + 2, dictionary->size());
+    // Each shared string is counted once
+    int64_t sharedMemory = table->nonInlinedMemorySize();
+    ASSERT_EQ(unsharedMemory / 5, sharedMemory);
+
+    // Equal strings are stored once
+    TableTuple tuple(table->schema());
+    const char *shared[2] = { NULL, NULL };
+    TableIterator iterator = table->iterator();
+    while (iterator.next(tuple)) {
+        int64_t pk = ValuePeeker::peekBigInt(tuple.getNValue(0));
+        const char *data = ValuePeeker::peekObjectValue(tuple.getNValue(1));
+        if (shared[pk % 2] == NULL) {
+            shared[pk % 2] = data;
+        }
+        ASSERT_EQ(shared[pk % 2], data);
+    }
+    ASSERT_NE(shared[0], shared[1]);
+
+    // Updating to a new value adds it, rolling back releases it again
+    NValue newStringData = ValueFactory::getTempStringValue("Nunavut Sannginivut");
+    ASSERT_TRUE(tableutil::getRandomTuple(table, tuple));
+    beginWork();
+    TableTuple &updated = table->copyIntoTempTuple(tuple);
+    updated.setNValue(1, newStringData);
+    table->updateTupleWithSpecificIndexes(tuple, updated, table->allIndexes());
+    ASSERT_EQ(baseline + 3, dictionary->size());
+    ASSERT_TRUE(table->nonInlinedMemorySize() > sharedMemory);
+    rollback();
+    ASSERT_EQ(baseline + 2, dictionary->size());
+    ASSERT_EQ(sharedMemory, table->nonInlinedMemorySize());
+
+    // The last reference frees the string
+    beginWork();
+    table->deleteAllTuples(true);
+    commit();
+    ASSERT_EQ(baseline, dictionary->size());
+    ASSERT_EQ(0, table->nonInlinedMemorySize());
+}
+
 int main() {
     return TestSuite::globalInstance()->runAll();
 }
@@ -0,0 +1,361 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+#include <map>
+#include <vector>
+#include <cstdlib>
+#include "harness.h"
+#include "structures/CompactingBTree.h"
+#include "common/FixUnusedAssertHack.h"
+
+using namespace voltdb;
+using namespace std;
+
+class IntComparator {
+public:
+    inline int operator()(const int &lhs, const int &rhs) const {
+        if (lhs > rhs) return 1;
+        else if (lhs < rhs) return -1;
+        else return 0;
+    }
+};
+
+// A key with the tuple address as its last component, like the keys of
+// the multimap indexes
+struct PointerKey {
+    int value;
+    const void *pointer;
+    PointerKey() : value(0), pointer(NULL) {}
+    PointerKey(int v, const void *p) : value(v), pointer(p) {}
+};
+
+struct PointerKeyComparator {
+    int operator()(const PointerKey &lhs, const PointerKey &rhs) const {
+        if (lhs.value != rhs.value) {
+            return lhs.value < rhs.value ? -1 : 1;
+        }
+        return comparePointer(lhs.pointer, rhs.pointer);
+    }
+
+    static int comparePointer(const void *lhs, const void *rhs) {
+        const uintptr_t l = reinterpret_cast<uintptr_t>(lhs);
+        const uintptr_t r = reinterpret_cast<uintptr_t>(rhs);
+        return l == r ? 0 : (l < r ? -1 : 1);
+    }
+};
+
+namespace voltdb {
+template <> inline void setPointerValue(PointerKey &k, const void *v) { k.pointer = v; }
+}
+
+typedef CompactingBTree<NormalKeyValuePair<int, int>, IntComparator, false> IntTree;
+typedef CompactingBTree<NormalKeyValuePair<int, int>, IntComparator, true> RankedIntTree;
+typedef CompactingBTree<NormalKeyValuePair<PointerKey, const void*>, PointerKeyComparator, true> PointerTree;
+
+class CompactingBTreeTest : public Test {
+public:
+    CompactingBTreeTest() {
+    }
+
+    ~CompactingBTreeTest() {
+    }
+
+    const void *address(int i) {
+        return reinterpret_cast<const void*>(static_cast<uintptr_t>(8 * (i + 1)));
+    }
+};
+
+TEST_F(CompactingBTreeTest, Bounds) {
+    IntTree volt(true, IntComparator());
+
+    ASSERT_TRUE(volt.lowerBound(1).isEnd());
+    ASSERT_TRUE(volt.upperBound(1).isEnd());
+    ASSERT_TRUE(volt.begin().isEnd());
+    ASSERT_TRUE(volt.rbegin().isEnd());
+    ASSERT_TRUE(volt.verify());
+
+    // Enough keys for a tree of three levels
+    const int count = IntTree::LEAF_CAPACITY * IntTree::INNER_CAPACITY * 2;
+    for (int i = 0; i < count; i++) {
+        ASSERT_TRUE(volt.insert(i * 2, i) == NULL);
+    }
+    ASSERT_TRUE(volt.verify());
+    ASSERT_EQ(count, volt.size());
+
+    // Exact matches fail for unique maps
+    const int *collision = volt.insert(10, 42);
+    ASSERT_TRUE(collision != NULL);
+    ASSERT_EQ(5, *collision);
+
+    for (int i = 0; i < count; i++) {
+        IntTree::iterator iter = volt.lowerBound(i * 2);
+        ASSERT_EQ(i * 2, iter.key());
+        iter = volt.lowerBound(i * 2 - 1);
+        ASSERT_EQ(i * 2, iter.key());
+        iter = volt.upperBound(i * 2 - 1);
+        ASSERT_EQ(i * 2, iter.key());
+        iter = volt.upperBound(i * 2);
+        if (i == count - 1) {
+            ASSERT_TRUE(iter.isEnd());
+        } else {
+            ASSERT_EQ(i * 2 + 2, iter.key());
+        }
+        ASSERT_TRUE(volt.find(i * 2 + 1).isEnd());
+        ASSERT_EQ(i, volt.find(i * 2).value());
+    }
+    ASSERT_TRUE(volt.lowerBound(count * 2).isEnd());
+
+    // Walk backwards across the leaves
+    IntTree::iterator iter = volt.rbegin();
+    for (int i = count - 1; i >= 0; i--) {
+        ASSERT_FALSE(iter.isEnd());
+        ASSERT_EQ(i * 2, iter.key());
+        iter.movePrev();
+    }
+    ASSERT_TRUE(iter.isEnd());
+}
+
+TEST_F(CompactingBTreeTest, RandomUnique) {
+    const int ITERATIONS = 100000;
+    const int BIGGEST_VAL = 5000;
+
+    std::map<int, int> stl;
+    IntTree volt(true, IntComparator());
+
+    srand(0);
+    for (int i = 0; i < ITERATIONS; i++) {
+        const int val = rand() % BIGGEST_VAL;
+        const int op = rand() % 4;
+        if (op < 2) {
+            bool stlInserted = stl.insert(std::pair<int, int>(val, i)).second;
+            bool voltInserted = volt.insert(val, i) == NULL;
+            ASSERT_EQ(stlInserted, voltInserted);
+        }
+        else if (op == 2) {
+            bool stlErased = stl.erase(val) > 0;
+            bool voltErased = volt.erase(val);
+            ASSERT_EQ(stlErased, voltErased);
+        }
+        else {
+            std::map<int, int>::iterator stli = stl.lower_bound(val);
+            IntTree::iterator volti = volt.lowerBound(val);
+            ASSERT_EQ(stli == stl.end(), volti.isEnd());
+            if (stli != stl.end()) {
+                ASSERT_EQ(stli->first, volti.key());
+                ASSERT_EQ(stli->second, volti.value());
+            }
+            stli = stl.upper_bound(val);
+            volti = volt.upperBound(val);
+            ASSERT_EQ(stli == stl.end(), volti.isEnd());
+            if (stli != stl.end()) {
+                ASSERT_EQ(stli->first, volti.key());
+            }
+        }
+        ASSERT_EQ(static_cast<int64_t>(stl.size()), volt.size());
+        if (i % 1000 == 0) {
+            ASSERT_TRUE(volt.verify());
+        }
+    }
+    ASSERT_TRUE(volt.verify());
+
+    std::map<int, int>::iterator stli = stl.begin();
+    for (IntTree::iterator volti = volt.begin(); !volti.isEnd(); volti.moveNext(), stli++) {
+        ASSERT_TRUE(stli != stl.end());
+        ASSERT_EQ(stli->first, volti.key());
+        ASSERT_EQ(stli->second, volti.value());
+    }
+    ASSERT_TRUE(stli == stl.end());
+}
+
+TEST_F(CompactingBTreeTest, RandomMultiRank) {
+    const int ITERATIONS = 50000;
+    const int BIGGEST_VAL = 300;
+
+    std::multimap<int, int> stl;
+    RankedIntTree volt(false, IntComparator());
+
+    srand(1);
+    for (int i = 0; i < ITERATIONS; i++) {
+        const int val = rand() % BIGGEST_VAL;
+        const int op = rand() % 5;
+        if (op < 2) {
+            stl.insert(std::pair<int, int>(val, val));
+            ASSERT_TRUE(volt.insert(val, val) == NULL);
+        }
+        else if (op == 2) {
+            std::multimap<int, int>::iterator stli = stl.find(val);
+            RankedIntTree::iterator volti = volt.find(val);
+            ASSERT_EQ(stli == stl.end(), volti.isEnd());
+            if (stli != stl.end()) {
+                stl.erase(stli);
+                ASSERT_TRUE(volt.erase(volti));
+            }
+        }
+        else {
+            const int64_t less = std::distance(stl.begin(), stl.lower_bound(val));
+            const int64_t notGreater = std::distance(stl.begin(), stl.upper_bound(val));
+            if (less == notGreater) {
+                ASSERT_EQ(-1, volt.rankAsc(val));
+                ASSERT_EQ(-1, volt.rankUpper(val));
+            }
+            else {
+                ASSERT_EQ(less + 1, volt.rankAsc(val));
+                ASSERT_EQ(notGreater, volt.rankUpper(val));
+                ASSERT_EQ(val, volt.findRank(less + 1).key());
+                ASSERT_EQ(val, volt.findRank(notGreater).key());
+            }
+            std::pair<RankedIntTree::iterator, RankedIntTree::iterator> range = volt.equalRange(val);
+            int64_t matches = 0;
+            for (; !range.first.equals(range.second); range.first.moveNext()) {
+                ASSERT_EQ(val, range.first.key());
+                matches++;
+            }
+            ASSERT_EQ(notGreater - less, matches);
+        }
+        ASSERT_EQ(static_cast<int64_t>(stl.size()), volt.size());
+        if (i % 1000 == 0) {
+            ASSERT_TRUE(volt.verify());
+            ASSERT_TRUE(volt.verifyRank());
+        }
+    }
+    ASSERT_TRUE(volt.verify());
+    ASSERT_TRUE(volt.verifyRank());
+    ASSERT_TRUE(volt.findRank(0).isEnd());
+    ASSERT_TRUE(volt.findRank(volt.size() + 1).isEnd());
+}
+
+TEST_F(CompactingBTreeTest, HintedBounds) {
+    IntTree volt(false, IntComparator());
+    srand(3);
+    for (int i = 0; i < 20000; i++) {
+        const int val = rand() % 5000;
+        volt.insert(val, val);
+    }
+
+    // Increasing keys with small and large gaps, some repeated
+    for (int run = 0; run < 20; run++) {
+        int key = rand() % 100 - 50;
+        IntTree::iterator lower = volt.lowerBound(key);
+        IntTree::iterator upper = volt.upperBound(key, lower);
+        while (key < 5100) {
+            ASSERT_TRUE(lower.equals(volt.lowerBound(key)));
+            ASSERT_TRUE(upper.equals(volt.upperBound(key)));
+            const int gap = (rand() % 4 == 0) ? rand() % 500 : rand() % 3;
+            key += gap;
+            lower = volt.lowerBound(key, gap == 0 ? lower : upper);
+            upper = volt.upperBound(key, lower);
+        }
+        ASSERT_TRUE(lower.isEnd());
+        ASSERT_TRUE(upper.isEnd());
+    }
+}
+
+TEST_F(CompactingBTreeTest, PointerKeyRank) {
+    PointerTree volt(false, PointerKeyComparator());
+
+    // Three rows for each key, inserted out of order
+    const int KEYS = 2000;
+    for (int copy = 2; copy >= 0; copy--) {
+        for (int i = KEYS - 1; i >= 0; i--) {
+            const void *row = address(i * 3 + copy);
+            ASSERT_TRUE(volt.insert(PointerKey(i, row), row) == NULL);
+        }
+    }
+    ASSERT_TRUE(volt.verify());
+    ASSERT_TRUE(volt.verifyRank());
+
+    for (int i = 0; i < KEYS; i++) {
+        for (int copy = 0; copy < 3; copy++) {
+            const PointerKey key(i, address(i * 3 + copy));
+            ASSERT_EQ(i * 3 + 1, volt.rankAsc(key));
+            ASSERT_EQ(i * 3 + 3, volt.rankUpper(key));
+            ASSERT_EQ(address(i * 3 + copy), volt.findRank(i * 3 + copy + 1).value());
+        }
+        // The rows of a key are the range between its null and maximum pointers
+        ASSERT_EQ(address(i * 3), volt.lowerBound(PointerKey(i, NULL)).value());
+        PointerTree::iterator upper = volt.upperBound(PointerKey(i, NULL));
+        if (i == KEYS - 1) {
+            ASSERT_TRUE(upper.isEnd());
+        } else {
+            ASSERT_EQ(address(i * 3 + 3), upper.value());
+        }
+        ASSERT_EQ(-1, volt.rankAsc(PointerKey(i, address(KEYS * 3))));
+    }
+
+    // Delete the middle row of every key
+    for (int i = 0; i < KEYS; i++) {
+        ASSERT_TRUE(volt.erase(PointerKey(i, address(i * 3 + 1))));
+        ASSERT_FALSE(volt.erase(PointerKey(i, address(i * 3 + 1))));
+    }
+    ASSERT_TRUE(volt.verify());
+    ASSERT_TRUE(volt.verifyRank());
+    for (int i = 0; i < KEYS; i++) {
+        ASSERT_EQ(i * 2 + 1, volt.rankAsc(PointerKey(i, address(i * 3 + 2))));
+        ASSERT_EQ(i * 2 + 2, volt.rankUpper(PointerKey(i, address(i * 3))));
+    }
+}
+
+TEST_F(CompactingBTreeTest, Compaction) {
+    RankedIntTree volt(true, IntComparator());
+    ASSERT_EQ(0, volt.bytesAllocated());
+
+    const int count = 200000;
+    for (int i = 0; i < count; i++) {
+        volt.insert(i, i);
+    }
+    const size_t full = volt.bytesAllocated();
+    // Far less than the 40 bytes per entry of CompactingMap
+    ASSERT_TRUE(full < count * 24);
+
+    // Deleting every other key leaves half full leaves, deleting most of
+    // the rest has to give memory back
+    for (int i = 0; i < count; i += 2) {
+        ASSERT_TRUE(volt.erase(i));
+    }
+    ASSERT_TRUE(volt.verify());
+    ASSERT_TRUE(volt.verifyRank());
+    for (int i = 1; i < count - 2000; i += 2) {
+        ASSERT_TRUE(volt.erase(i));
+    }
+    ASSERT_TRUE(volt.verify());
+    ASSERT_TRUE(volt.verifyRank());
+    ASSERT_TRUE(volt.bytesAllocated() < full / 4);
+
+    RankedIntTree::iterator iter = volt.begin();
+    for (int i = count - 1999; i < count; i += 2) {
+        ASSERT_EQ(i, iter.key());
+        iter.moveNext();
+    }
+    ASSERT_TRUE(iter.isEnd());
+
+    for (int i = count - 1999; i < count; i += 2) {
+        ASSERT_TRUE(volt.erase(i));
+    }
+    ASSERT_EQ(0, volt.size());
+    ASSERT_TRUE(volt.verify());
+    ASSERT_TRUE(volt.begin().isEnd());
+}
+
+int main() {
+    return TestSuite::globalInstance()->runAll();
+}
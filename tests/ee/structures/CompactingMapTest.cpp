@@ -385,6 +385,33 @@ TEST_F(CompactingMapTest, Bounds) {
     ASSERT_TRUE(p.second.value() == 888);
 }
 
+TEST_F(CompactingMapTest, HintedBounds) {
+    typedef voltdb::CompactingMap<NormalKeyValuePair<int, int>, IntComparator> IntMultiMap;
+    IntMultiMap volt(false, IntComparator());
+    srand(3);
+    for (int i = 0; i < 20000; i++) {
+        const int val = rand() % 5000;
+        volt.insert(val, val);
+    }
+
+    // Increasing keys with small and large gaps, some repeated
+    for (int run = 0; run < 20; run++) {
+        int key = rand() % 100 - 50;
+        IntMultiMap::iterator lower = volt.lowerBound(key);
+        IntMultiMap::iterator upper = volt.upperBound(key, lower);
+        while (key < 5100) {
+            ASSERT_TRUE(lower.equals(volt.lowerBound(key)));
+            ASSERT_TRUE(upper.equals(volt.upperBound(key)));
+            const int gap = (rand() % 4 == 0) ? rand() % 500 : rand() % 3;
+            key += gap;
+            lower = volt.lowerBound(key, gap == 0 ? lower : upper);
+            upper = volt.upperBound(key, lower);
+        }
+        ASSERT_TRUE(lower.isEnd());
+        ASSERT_TRUE(upper.isEnd());
+    }
+}
+
 TEST_F(CompactingMapTest, BenchmarkMulti) {
     const int ITERATIONS = 2000;
     const int BATCH_SIZE = 50;
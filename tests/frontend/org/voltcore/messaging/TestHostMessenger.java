@@ -25,12 +25,15 @@ package org.voltcore.messaging;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -65,8 +68,14 @@ public class TestHostMessenger {
 
     private HostMessenger createHostMessenger(int index, StartAction action, HostMessenger.MembershipAcceptor acceptor,
                                               boolean start) throws Exception {
+        return createHostMessenger(index, action, acceptor, start, 1);
+    }
+
+    private HostMessenger createHostMessenger(int index, StartAction action, HostMessenger.MembershipAcceptor acceptor,
+                                              boolean start, int channelsPerHost) throws Exception {
         HostMessenger.Config config = new HostMessenger.Config();
         config.internalPort = config.internalPort + index;
+        config.channelsPerHost = channelsPerHost;
         config.zkInterface = "127.0.0.1:" + (7181 + index);
         HostMessenger hm = new HostMessenger(config, acceptor, null);
         createdMessengers.add(hm);
@@ -175,6 +184,44 @@ public class TestHostMessenger {
         hm3.waitForGroupJoin(2);
     }
 
+    @Test
+    public void testMultipleChannels() throws Exception {
+        final HostMessenger hm1 = createHostMessenger(0, StartAction.CREATE, null, true, 3);
+        final HostMessenger hm2 = createHostMessenger(1, StartAction.CREATE, null, false, 3);
+        hm2.start(null);
+        hm1.waitForGroupJoin(2);
+        hm2.waitForGroupJoin(2);
+
+        // The joining host opened the connections, the other end picks them up asynchronously
+        assertEquals(3, hm2.m_foreignHosts.get(hm1.getHostId()).getChannels().size());
+        ForeignHost fh = hm1.m_foreignHosts.get(hm2.getHostId());
+        for (int ii = 0; ii < 200 && fh.getChannels().size() < 3; ii++) {
+            Thread.sleep(5);
+        }
+        assertEquals(3, fh.getChannels().size());
+
+        // Messages are spread over the connections but each mailbox's stay in order
+        final int messageCount = 200;
+        Mailbox destination = hm1.createMailbox();
+        List<Mailbox> sources = new ArrayList<Mailbox>();
+        for (int ii = 0; ii < 4; ii++) {
+            sources.add(hm2.createMailbox());
+        }
+        for (int ii = 0; ii < messageCount; ii++) {
+            for (Mailbox source : sources) {
+                source.send(destination.getHSId(), new BinaryPayloadMessage(new byte[] { (byte) ii }, null));
+            }
+        }
+        Map<Long, Integer> lastReceived = new HashMap<Long, Integer>();
+        for (int ii = 0; ii < messageCount * sources.size(); ii++) {
+            BinaryPayloadMessage message = (BinaryPayloadMessage) destination.recvBlocking(10000);
+            assertNotNull(message);
+            int sequence = message.m_metadata[0] & 0xff;
+            Integer last = lastReceived.put(message.m_sourceHSId, sequence);
+            assertEquals(last == null ? 0 : last + 1, sequence);
+        }
+    }
+
     @Test
     public void testPartitionDetectionMinoritySet() throws Exception
     {
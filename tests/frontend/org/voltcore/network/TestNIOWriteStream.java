@@ -389,6 +389,23 @@ public class TestNIOWriteStream extends TestCase {
         wstream.shutdown();
     }
 
+    public void testLargeMessageSerializedToOneBuffer() throws IOException {
+        MockChannel channel = new MockChannel(MockChannel.SINK, 0);
+        MockPort port = new MockPort();
+        NIOWriteStream wstream = new NIOWriteStream(port);
+
+        wstream.enqueue(ByteBuffer.allocate(4));
+        wstream.enqueue(ByteBuffer.allocate(262144 * 3));
+        wstream.enqueue(ByteBuffer.allocate(4));
+        wstream.swapAndSerializeQueuedWrites(pool);
+        // The large message gets a direct buffer of its own between the two small ones
+        assertEquals(3, wstream.getOutstandingMessageCount());
+        int written = wstream.drainTo(channel);
+        assertEquals(262144 * 3 + 8, written);
+        assertTrue(wstream.isEmpty());
+        wstream.shutdown();
+    }
+
     public void testLastWriteDelta() throws Exception {
         EstTimeUpdater.pause = true;
         Thread.sleep(10);
@@ -0,0 +1,140 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.client.ClientResponse;
+import org.voltdb.types.GeographyPointValue;
+import org.voltdb.types.TimestampType;
+
+import junit.framework.TestCase;
+
+public class TestColumnarTableCodec extends TestCase {
+
+    private static final String[] COLORS = { "red", "green", "blue", "a much longer color name" };
+
+    private static VoltTable makeTable(int rowCount, long seed) {
+        VoltTable table = new VoltTable(
+                new ColumnInfo("ID", VoltType.BIGINT),
+                new ColumnInfo("STATUS", VoltType.TINYINT),
+                new ColumnInfo("BUCKET", VoltType.INTEGER),
+                new ColumnInfo("COLOR", VoltType.STRING),
+                new ColumnInfo("NAME", VoltType.STRING),
+                new ColumnInfo("PAYLOAD", VoltType.VARBINARY),
+                new ColumnInfo("SCORE", VoltType.FLOAT),
+                new ColumnInfo("PRICE", VoltType.DECIMAL),
+                new ColumnInfo("TS", VoltType.TIMESTAMP),
+                new ColumnInfo("LOC", VoltType.GEOGRAPHY_POINT));
+        Random rand = new Random(seed);
+        for (int i = 0; i < rowCount; i++) {
+            table.addRow(1000000000L + i,
+                         i < rowCount / 2 ? 0 : 1,
+                         i % 7 == 0 ? null : i / 100,
+                         COLORS[rand.nextInt(COLORS.length)],
+                         "name " + rand.nextInt(),
+                         i % 3 == 0 ? null : new byte[] { (byte) i, (byte) (i >> 8) },
+                         rand.nextDouble(),
+                         new BigDecimal(i % 10).movePointLeft(2),
+                         new TimestampType(1400000000000000L + i * 1000L),
+                         i % 5 == 0 ? null : new GeographyPointValue(i % 180 - 90, 45));
+        }
+        return table;
+    }
+
+    public void testRoundTrip() {
+        VoltTable table = makeTable(5000, 0);
+        ByteBuffer encoded = ColumnarTableCodec.encode(table);
+        assertNotNull(encoded);
+        // Ordered keys, low cardinality strings and repeated values all shrink
+        assertTrue(encoded.remaining() < table.getSerializedSize());
+
+        VoltTable decoded = ColumnarTableCodec.decode(encoded);
+        assertEquals(table.getRowCount(), decoded.getRowCount());
+        assertEquals(table.getBuffer(), decoded.getBuffer());
+        assertTrue(table.hasSameContents(decoded));
+    }
+
+    public void testEachEncoding() {
+        VoltTable table = new VoltTable(new ColumnInfo("ASCENDING", VoltType.BIGINT),
+                                        new ColumnInfo("CONSTANT", VoltType.STRING),
+                                        new ColumnInfo("FEW", VoltType.STRING),
+                                        new ColumnInfo("UNIQUE", VoltType.FLOAT));
+        Random rand = new Random(0);
+        for (int i = 0; i < 1000; i++) {
+            table.addRow(i * 10L, "constant", COLORS[i % COLORS.length], rand.nextDouble());
+        }
+        ByteBuffer encoded = ColumnarTableCodec.encode(table);
+
+        int pos = table.m_rowStart + 4;
+        byte[] expected = { ColumnarTableCodec.DELTA, ColumnarTableCodec.RLE,
+                            ColumnarTableCodec.DICTIONARY, ColumnarTableCodec.PLAIN };
+        for (byte encoding : expected) {
+            assertEquals(encoding, encoded.get(pos));
+            pos += 5 + encoded.getInt(pos + 1);
+        }
+        assertEquals(encoded.limit(), pos);
+        assertEquals(table.getBuffer(), ColumnarTableCodec.decode(encoded).getBuffer());
+    }
+
+    public void testExtremeIntegerDeltas() {
+        VoltTable table = new VoltTable(new ColumnInfo("BIG", VoltType.BIGINT),
+                                        new ColumnInfo("SMALL", VoltType.SMALLINT));
+        for (int i = 0; i < 200; i++) {
+            table.addRow(i % 2 == 0 ? Long.MAX_VALUE : null,
+                         i % 2 == 0 ? Short.MAX_VALUE : Short.MIN_VALUE + 1);
+        }
+        VoltTable decoded = ColumnarTableCodec.decode(ColumnarTableCodec.encode(table));
+        assertEquals(table.getBuffer(), decoded.getBuffer());
+    }
+
+    public void testSmallTableNotEncoded() {
+        assertNull(ColumnarTableCodec.encode(makeTable(ColumnarTableCodec.MIN_ROWS - 1, 0)));
+    }
+
+    public void testClientResponse() throws Exception {
+        VoltTable big = makeTable(2000, 1);
+        VoltTable small = makeTable(3, 2);
+        ClientResponseImpl response = new ClientResponseImpl(ClientResponse.SUCCESS,
+                new VoltTable[] { big, small }, "status", 42);
+        response.setColumnarResults(true);
+
+        ByteBuffer buf = ByteBuffer.allocate(response.getSerializedSize());
+        response.flattenToBuffer(buf);
+        assertFalse(buf.hasRemaining());
+        buf.flip();
+
+        ClientResponseImpl received = new ClientResponseImpl();
+        received.initFromBuffer(buf);
+        assertEquals(42, received.getClientHandle());
+        assertEquals("status", received.getStatusString());
+        VoltTable[] results = received.getResults();
+        assertEquals(2, results.length);
+        assertEquals(big.getBuffer(), results[0].getBuffer());
+        assertEquals(small.getBuffer(), results[1].getBuffer());
+    }
+}
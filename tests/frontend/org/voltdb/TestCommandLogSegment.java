@@ -0,0 +1,205 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.voltcore.utils.InstanceId;
+import org.voltdb.iv2.TxnEgo;
+import org.voltdb.messaging.Iv2InitiateTaskMessage;
+import org.voltdb.messaging.VoltDbMessageFactory;
+
+public class TestCommandLogSegment {
+    private final static File TEST_DIR = new File("/tmp/" + System.getProperty("user.name") + "/cmdlog_test");
+    private final static long CAPACITY = 1024 * 1024;
+
+    @Before
+    public void setUp() throws Exception {
+        tearDown();
+        TEST_DIR.mkdirs();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (TEST_DIR.exists()) {
+            for (File f : TEST_DIR.listFiles()) {
+                f.delete();
+            }
+            TEST_DIR.delete();
+        }
+    }
+
+    private static Iv2InitiateTaskMessage makeMessage(long txnId, long uniqueId) {
+        StoredProcedureInvocation spi = new StoredProcedureInvocation();
+        spi.setClientHandle(25);
+        spi.setProcName("InsertStuff");
+        spi.setParams(57, "gooniestoo", txnId);
+        return new Iv2InitiateTaskMessage(23, 8, 10L, txnId, uniqueId, false, true, spi, 2101, 3101, false);
+    }
+
+    private static CommandLogSegment writeSegment(long segmentId, int count, int partitionId) throws Exception {
+        CommandLogSegment segment = CommandLogSegment.preallocate(TEST_DIR, segmentId, CAPACITY);
+        Map<Integer, Long> startingTxnIds = new HashMap<Integer, Long>();
+        startingTxnIds.put(partitionId, TxnEgo.makeZero(partitionId).getTxnId());
+        segment.openForAppend(new InstanceId(1, 12345L), startingTxnIds);
+
+        TxnEgo ego = TxnEgo.makeZero(partitionId);
+        for (int i = 0; i < count; i++) {
+            ego = ego.makeNext();
+            ByteBuffer entry = GroupCommitCommandLog.serializeInitiate(
+                    makeMessage(ego.getTxnId(), i), ego.getTxnId(), null);
+            segment.append(entry);
+            segment.noteEntry(partitionId, ego.getTxnId());
+        }
+        segment.force();
+        segment.close();
+        return segment;
+    }
+
+    @Test
+    public void testPreallocatedSize() throws Exception {
+        CommandLogSegment segment = CommandLogSegment.preallocate(TEST_DIR, 3, CAPACITY);
+        assertEquals(CAPACITY, segment.file().length());
+        assertEquals(3, CommandLogSegment.segmentIdFromFile(segment.file()));
+        assertEquals(1, CommandLogSegment.listSegments(TEST_DIR).size());
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        CommandLogSegment written = writeSegment(0, 100, 2);
+        assertEquals(100, written.entryCount());
+
+        CommandLogSegment segment = CommandLogSegment.openForRead(written.file());
+        assertEquals(new InstanceId(1, 12345L), segment.instanceId());
+        assertEquals(TxnEgo.makeZero(2).getTxnId(), segment.startingTxnIds().get(2).longValue());
+
+        VoltDbMessageFactory factory = new VoltDbMessageFactory();
+        long lastSpHandle = Long.MIN_VALUE;
+        int count = 0;
+        CommandLogSegment.Entry entry;
+        while ((entry = segment.readNext()) != null) {
+            assertEquals(CommandLogSegment.ENTRY_INITIATE, entry.type);
+            assertEquals(2, entry.payload.getInt());
+            long spHandle = entry.payload.getLong();
+            assertTrue(spHandle > lastSpHandle);
+            lastSpHandle = spHandle;
+            assertEquals(-1, entry.payload.getInt());
+            Iv2InitiateTaskMessage msg =
+                    (Iv2InitiateTaskMessage) factory.createMessageFromBuffer(entry.payload.slice(), -1);
+            assertEquals(spHandle, msg.getTxnId());
+            assertEquals(count, msg.getUniqueId());
+            assertEquals("InsertStuff", msg.getStoredProcedureName());
+            count++;
+        }
+        assertEquals(100, count);
+        segment.close();
+    }
+
+    @Test
+    public void testTornTailIsIgnored() throws Exception {
+        CommandLogSegment written = writeSegment(0, 10, 0);
+
+        // Find the end of the last entry, then corrupt one byte of it
+        CommandLogSegment segment = CommandLogSegment.openForRead(written.file());
+        long lastEntryStart = 0;
+        RandomAccessFile ras = new RandomAccessFile(written.file(), "rw");
+        CommandLogSegment.Entry entry;
+        int count = 0;
+        while (true) {
+            long position = ras.getChannel().size() - segment.remaining();
+            entry = segment.readNext();
+            if (entry == null) {
+                break;
+            }
+            lastEntryStart = position;
+            count++;
+        }
+        segment.close();
+        assertEquals(10, count);
+
+        ras.seek(lastEntryStart + CommandLogSegment.ENTRY_HEADER_BYTES + 20);
+        int b = ras.read();
+        ras.seek(lastEntryStart + CommandLogSegment.ENTRY_HEADER_BYTES + 20);
+        ras.write(b ^ 0xff);
+        ras.close();
+
+        segment = CommandLogSegment.openForRead(written.file());
+        count = 0;
+        while ((entry = segment.readNext()) != null) {
+            assertNotNull(entry.payload);
+            count++;
+        }
+        segment.close();
+        assertEquals(9, count);
+    }
+
+    @Test
+    public void testCorruptedTypeIsDetected() throws Exception {
+        CommandLogSegment written = writeSegment(0, 10, 0);
+
+        // Turn the first entry into a fault entry, its CRC no longer matches
+        CommandLogSegment segment = CommandLogSegment.openForRead(written.file());
+        long firstEntryStart = segment.file().length() - segment.remaining();
+        segment.close();
+        RandomAccessFile ras = new RandomAccessFile(written.file(), "rw");
+        ras.seek(firstEntryStart + 8);
+        assertEquals(CommandLogSegment.ENTRY_INITIATE, ras.read());
+        ras.seek(firstEntryStart + 8);
+        ras.write(CommandLogSegment.ENTRY_FAULT);
+        ras.close();
+
+        segment = CommandLogSegment.openForRead(written.file());
+        assertNull(segment.readNext());
+        segment.close();
+    }
+
+    @Test
+    public void testOpenForTruncation() throws Exception {
+        CommandLogSegment written = writeSegment(4, 20, 3);
+        CommandLogSegment segment = CommandLogSegment.openForTruncation(written.file());
+        assertEquals(4, segment.segmentId());
+        assertEquals(20, segment.entryCount());
+        assertEquals(written.lastTxnIds(), segment.lastTxnIds());
+    }
+
+    @Test
+    public void testEmptySegment() throws Exception {
+        CommandLogSegment written = writeSegment(7, 0, 1);
+        CommandLogSegment segment = CommandLogSegment.openForRead(written.file());
+        assertNull(segment.readNext());
+        segment.close();
+    }
+}
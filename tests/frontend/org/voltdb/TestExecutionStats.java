@@ -0,0 +1,160 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb;
+
+import java.nio.ByteBuffer;
+
+import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.planner.ActivePlanRepository;
+
+import junit.framework.TestCase;
+
+public class TestExecutionStats extends TestCase {
+
+    // Same layout as the tables ExecutionStats::drainFragmentStats builds in the EE
+    private static VoltTable makeEETable(String keyColumn, VoltType keyType) {
+        return new VoltTable(new ColumnInfo(keyColumn, keyType),
+                             new ColumnInfo("INVOCATIONS", VoltType.BIGINT),
+                             new ColumnInfo("FAILURES", VoltType.BIGINT),
+                             new ColumnInfo("TOTAL_EXECUTION_TIME", VoltType.BIGINT),
+                             new ColumnInfo("MIN_EXECUTION_TIME", VoltType.BIGINT),
+                             new ColumnInfo("MAX_EXECUTION_TIME", VoltType.BIGINT),
+                             new ColumnInfo("TOTAL_CPU_TIME", VoltType.BIGINT),
+                             new ColumnInfo("TUPLES_IN", VoltType.BIGINT),
+                             new ColumnInfo("TUPLES_OUT", VoltType.BIGINT),
+                             new ColumnInfo("MAX_TEMP_TABLE_MEMORY", VoltType.BIGINT),
+                             new ColumnInfo("EXECUTION_TIME_HISTOGRAM", VoltType.VARBINARY));
+    }
+
+    // Counts in histogram bucket i are runs of [2^(i-1), 2^i) us
+    private static byte[] histogram(long... counts) {
+        ByteBuffer buf = ByteBuffer.allocate(ExecutionStats.HISTOGRAM_BUCKETS * 8);
+        for (long count : counts) {
+            buf.putLong(count);
+        }
+        return buf.array();
+    }
+
+    private static VoltTable getStats(StatsSource source, boolean interval) {
+        VoltTable table = new VoltTable(source.getColumnSchema().toArray(new ColumnInfo[0]));
+        for (Object[] row : source.getStatsRows(interval, System.currentTimeMillis())) {
+            table.addRow(row);
+        }
+        return table;
+    }
+
+    public void testExecutorStatsAccumulate() {
+        ExecutionStats stats = new ExecutionStats.ExecutorStats(0, 3);
+
+        VoltTable ee = makeEETable(ExecutionStats.PLAN_NODE_TYPE, VoltType.STRING);
+        // 100 runs, 97 under 1us, two of 1-2us and one of 3ms
+        ee.addRow("SEQSCAN", 100, 0, 3100000, 500, 3000000, 0, 1000, 500, 4096,
+                  histogram(97, 2, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 1));
+        ee.addRow("INDEXSCAN", 1, 0, 2000, 2000, 2000, 0, 10, 1, 0, histogram(0, 0, 1));
+        stats.update(ee);
+
+        ee.clearRowData();
+        ee.addRow("SEQSCAN", 100, 0, 100000, 200, 5000, 0, 1000, 500, 8192, histogram(100));
+        stats.update(ee);
+
+        VoltTable result = getStats(stats, false);
+        assertEquals(2, result.getRowCount());
+        result.advanceRow();
+        assertEquals("INDEXSCAN", result.getString(ExecutionStats.PLAN_NODE_TYPE));
+        assertEquals(3, result.getLong("PARTITION_ID"));
+        // The bucket bound is capped at the longest run
+        assertEquals(2000, result.getLong("P50_EXECUTION_TIME"));
+
+        result.advanceRow();
+        assertEquals("SEQSCAN", result.getString(ExecutionStats.PLAN_NODE_TYPE));
+        assertEquals(200, result.getLong("INVOCATIONS"));
+        assertEquals(200, result.getLong("MIN_EXECUTION_TIME"));
+        assertEquals(3000000, result.getLong("MAX_EXECUTION_TIME"));
+        assertEquals(16000, result.getLong("AVG_EXECUTION_TIME"));
+        assertEquals(1000, result.getLong("P50_EXECUTION_TIME"));
+        assertEquals(2000, result.getLong("P99_EXECUTION_TIME"));
+        assertEquals(2000, result.getLong("TUPLES_IN"));
+        assertEquals(1000, result.getLong("TUPLES_OUT"));
+        assertEquals(8192, result.getLong("MAX_TEMP_TABLE_MEMORY"));
+
+        // Interval stats report everything once, then only what is new
+        assertEquals(2, getStats(stats, true).getRowCount());
+        assertEquals(0, getStats(stats, true).getRowCount());
+        ee.clearRowData();
+        ee.addRow("SEQSCAN", 1, 0, 300, 300, 300, 0, 10, 5, 0, histogram(1));
+        stats.update(ee);
+        result = getStats(stats, true);
+        assertEquals(1, result.getRowCount());
+        result.advanceRow();
+        assertEquals(1, result.getLong("INVOCATIONS"));
+        assertEquals(201, getStats(stats, false).fetchRow(1).getLong("INVOCATIONS"));
+    }
+
+    public void testStatementStatsNames() {
+        ActivePlanRepository.clear();
+        try {
+            long procFragId = ActivePlanRepository.loadOrAddRefPlanFragment(
+                    new byte[20], new byte[0], "select * from t;", "GetT", "sql");
+            // Another procedure with the same plan shares the fragment
+            assertEquals(procFragId, ActivePlanRepository.loadOrAddRefPlanFragment(
+                    new byte[20], new byte[0], "select * from t;", "AllT", "select"));
+            byte[] adHocHash = new byte[20];
+            adHocHash[0] = 1;
+            long adHocFragId = ActivePlanRepository.loadOrAddRefPlanFragment(
+                    adHocHash, new byte[0], null);
+
+            ExecutionStats stats = new ExecutionStats.StatementStats(0, 0);
+            VoltTable ee = makeEETable(ExecutionStats.FRAGMENT_ID, VoltType.BIGINT);
+            ee.addRow(procFragId, 2, 1, 2000, 1000, 1000, 1500, 4, 2, 0, histogram(0, 0, 2));
+            ee.addRow(adHocFragId, 1, 0, 500, 500, 500, 400, 1, 1, 0, histogram(1));
+            stats.update(ee);
+
+            VoltTable result = getStats(stats, false);
+            assertEquals(2, result.getRowCount());
+            result.advanceRow();
+            assertEquals(procFragId, result.getLong(ExecutionStats.FRAGMENT_ID));
+            assertEquals("AllT.select,GetT.sql", result.getString("STATEMENTS"));
+            assertEquals(1, result.getLong("FAILURES"));
+            assertEquals(750, result.getLong("AVG_CPU_TIME"));
+            result.advanceRow();
+            assertEquals(adHocFragId, result.getLong(ExecutionStats.FRAGMENT_ID));
+            assertNull(result.getString("STATEMENTS"));
+
+            // A statement loading the plan later is listed too
+            ActivePlanRepository.loadOrAddRefPlanFragment(
+                    new byte[20], new byte[0], "select * from t;", "CountT", "sql");
+            result = getStats(stats, false);
+            result.advanceRow();
+            assertEquals("AllT.select,CountT.sql,GetT.sql", result.getString("STATEMENTS"));
+
+            // Rows for fragments that left the plan cache are dropped
+            ActivePlanRepository.clear();
+            ee.clearRowData();
+            stats.update(ee);
+            assertEquals(0, getStats(stats, false).getRowCount());
+        } finally {
+            ActivePlanRepository.clear();
+        }
+    }
+}
@@ -0,0 +1,338 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.voltcore.utils.InstanceId;
+import org.voltdb.CommandLog.CompletionChecks;
+import org.voltdb.CommandLog.DurabilityListener;
+import org.voltdb.iv2.SpScheduler.DurableUniqueIdListener;
+import org.voltdb.iv2.TransactionTask;
+import org.voltdb.iv2.TxnEgo;
+import org.voltdb.messaging.Iv2InitiateTaskMessage;
+
+public class TestGroupCommitCommandLog {
+    static {
+        // Small segments so that rolling over is cheap to exercise
+        System.setProperty("CMDLOG_SEGMENT_BYTES", Integer.toString(1024 * 1024));
+    }
+
+    private final static File TEST_DIR = new File("/tmp/" + System.getProperty("user.name") + "/group_commit_test");
+    private final static File LOG_DIR = new File(TEST_DIR, "command_log");
+    private final static int PARTITION = 1;
+
+    private MockVoltDB m_mockVoltDB;
+    private GroupCommitCommandLog m_log;
+    private TxnEgo m_ego = TxnEgo.makeZero(PARTITION);
+
+    /**
+     * Counts the transactions it is handed and, when they are released, how many
+     * entries the log directory holds at that moment.
+     */
+    private static class RecordingListener implements DurabilityListener {
+        private int m_pendingTasks = 0;
+        final List<Integer> m_released = new ArrayList<Integer>();
+        final List<Integer> m_onDiskAtRelease = new ArrayList<Integer>();
+        final Semaphore m_releases = new Semaphore(0);
+
+        @Override
+        public void setUniqueIdListener(DurableUniqueIdListener listener) {}
+
+        @Override
+        public void createFirstCompletionCheck(boolean isSyncLogging, boolean commandLoggingEnabled) {}
+
+        @Override
+        public boolean completionCheckInitialized() {
+            return true;
+        }
+
+        @Override
+        public void addTransaction(TransactionTask pendingTask) {
+            m_pendingTasks++;
+        }
+
+        @Override
+        public void initializeLastDurableUniqueId(long uniqueId) {}
+
+        @Override
+        public int getNumberOfTasks() {
+            return m_pendingTasks;
+        }
+
+        @Override
+        public CompletionChecks startNewTaskList(int nextMaxRowCnt) {
+            final CountingChecks checks = new CountingChecks(m_pendingTasks);
+            m_pendingTasks = 0;
+            return checks;
+        }
+
+        @Override
+        public void processDurabilityChecks(CompletionChecks completionChecks) {
+            synchronized (this) {
+                m_released.add(completionChecks.getTaskListSize());
+                m_onDiskAtRelease.add(countEntries(LOG_DIR));
+            }
+            m_releases.release();
+        }
+    }
+
+    private static class CountingChecks implements CompletionChecks {
+        private final int m_count;
+
+        CountingChecks(int count) {
+            m_count = count;
+        }
+
+        @Override
+        public CompletionChecks startNewCheckList(int startSize) {
+            return new CountingChecks(0);
+        }
+
+        @Override
+        public void addTask(TransactionTask task) {}
+
+        @Override
+        public void setLastDurableUniqueId(long uniqueId) {}
+
+        @Override
+        public int getTaskListSize() {
+            return m_count;
+        }
+
+        @Override
+        public void processChecks() {}
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        deleteRecursively(TEST_DIR);
+        LOG_DIR.mkdirs();
+        m_mockVoltDB = new MockVoltDB();
+        VoltDB.replaceVoltDBInstanceForTest(m_mockVoltDB);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (m_log != null) {
+            m_log.shutdown();
+            m_log = null;
+        }
+        m_mockVoltDB.shutdown(null);
+        deleteRecursively(TEST_DIR);
+    }
+
+    private static void deleteRecursively(File f) {
+        File[] children = f.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        f.delete();
+    }
+
+    /**
+     * Number of readable entries in all initialized segments of the directory.
+     * The preallocated spare segment has no header yet and is skipped.
+     */
+    private static int countEntries(File dir) {
+        int count = 0;
+        for (File f : CommandLogSegment.listSegments(dir).values()) {
+            try {
+                CommandLogSegment segment = CommandLogSegment.openForRead(f);
+                try {
+                    while (segment.readNext() != null) {
+                        count++;
+                    }
+                } finally {
+                    segment.close();
+                }
+            } catch (IOException e) {
+                // Not opened for append yet
+            }
+        }
+        return count;
+    }
+
+    private static Iv2InitiateTaskMessage makeMessage(long txnId, long uniqueId, Object payload) {
+        StoredProcedureInvocation spi = new StoredProcedureInvocation();
+        spi.setClientHandle(25);
+        spi.setProcName("InsertStuff");
+        spi.setParams(57, payload, txnId);
+        return new Iv2InitiateTaskMessage(23, 8, 10L, txnId, uniqueId, false, true, spi, 2101, 3101, false);
+    }
+
+    private RecordingListener startLog(boolean synchronous, int fsyncInterval, int maxTxns,
+                                       Map<Integer, Long> perPartitionTxnId) {
+        m_log = new GroupCommitCommandLog(synchronous, fsyncInterval, maxTxns,
+                                          LOG_DIR.getPath(), TEST_DIR.getPath());
+        RecordingListener listener = new RecordingListener();
+        m_log.registerDurabilityListener(listener);
+        m_log.init(1, 0, 2, null, perPartitionTxnId);
+        return listener;
+    }
+
+    private void logTxn(RecordingListener listener, Object payload) {
+        m_ego = m_ego.makeNext();
+        m_log.log(makeMessage(m_ego.getTxnId(), m_ego.getTxnId(), payload), m_ego.getTxnId(), null, listener, null);
+    }
+
+    /**
+     * Write a segment the way a previous run of the log would have left it,
+     * with the given number of transactions of PARTITION.
+     */
+    private long writeOldSegment(long segmentId, int count) throws Exception {
+        CommandLogSegment segment = CommandLogSegment.preallocate(LOG_DIR, segmentId, 1024 * 1024);
+        Map<Integer, Long> startingTxnIds = new HashMap<Integer, Long>();
+        startingTxnIds.put(PARTITION, m_ego.getTxnId());
+        segment.openForAppend(new InstanceId(1, 12345L), startingTxnIds);
+        for (int i = 0; i < count; i++) {
+            m_ego = m_ego.makeNext();
+            segment.append(GroupCommitCommandLog.serializeInitiate(
+                    makeMessage(m_ego.getTxnId(), m_ego.getTxnId(), "old"), m_ego.getTxnId(), null));
+        }
+        segment.force();
+        segment.close();
+        return m_ego.getTxnId();
+    }
+
+    private static Map<Integer, Long> txnIds(long txnId) {
+        Map<Integer, Long> txnIds = new HashMap<Integer, Long>();
+        txnIds.put(PARTITION, txnId);
+        return txnIds;
+    }
+
+    private static SnapshotCompletionInterest.SnapshotCompletionEvent truncationSnapshot(long txnId) {
+        return new SnapshotCompletionInterest.SnapshotCompletionEvent(
+                TEST_DIR.getPath(), "truncation", txnId, txnIds(txnId), true, true, "", null, null, null, 0, 0);
+    }
+
+    @Test
+    public void testBatchIsReleasedAtMaxTxns() throws Exception {
+        RecordingListener listener = startLog(true, 60 * 1000, 10, txnIds(m_ego.getTxnId()));
+
+        for (int i = 0; i < 9; i++) {
+            logTxn(listener, "stuff");
+        }
+        // The fsync interval is far away, nothing is written or released yet
+        assertFalse(listener.m_releases.tryAcquire(500, TimeUnit.MILLISECONDS));
+        assertEquals(0, countEntries(LOG_DIR));
+
+        logTxn(listener, "stuff");
+        assertTrue(listener.m_releases.tryAcquire(10, TimeUnit.SECONDS));
+        synchronized (listener) {
+            assertEquals(Arrays.asList(10), listener.m_released);
+            // The whole batch was on disk before any transaction was released
+            assertEquals(Arrays.asList(10), listener.m_onDiskAtRelease);
+        }
+    }
+
+    @Test
+    public void testPartialBatchIsReleasedAtFsyncInterval() throws Exception {
+        RecordingListener listener = startLog(true, 50, 1000, txnIds(m_ego.getTxnId()));
+
+        for (int i = 0; i < 3; i++) {
+            logTxn(listener, "stuff");
+        }
+        assertTrue(listener.m_releases.tryAcquire(10, TimeUnit.SECONDS));
+        synchronized (listener) {
+            assertEquals(Arrays.asList(3), listener.m_released);
+            assertEquals(Arrays.asList(3), listener.m_onDiskAtRelease);
+        }
+    }
+
+    @Test
+    public void testOversizedEntryGetsItsOwnSegment() throws Exception {
+        RecordingListener listener = startLog(true, 50, 1000, txnIds(m_ego.getTxnId()));
+
+        char[] big = new char[2 * 1024 * 1024];
+        Arrays.fill(big, 'x');
+        logTxn(listener, "small");
+        logTxn(listener, new String(big));
+        logTxn(listener, "small");
+
+        int released = 0;
+        while (released < 3) {
+            assertTrue(listener.m_releases.tryAcquire(10, TimeUnit.SECONDS));
+            synchronized (listener) {
+                released = 0;
+                for (int count : listener.m_released) {
+                    released += count;
+                }
+            }
+        }
+        assertEquals(3, countEntries(LOG_DIR));
+        boolean foundOversized = false;
+        for (File f : CommandLogSegment.listSegments(LOG_DIR).values()) {
+            foundOversized |= f.length() > GroupCommitCommandLog.SEGMENT_BYTES;
+        }
+        assertTrue(foundOversized);
+    }
+
+    @Test
+    public void testReplayedSegmentsKeptUntilTruncation() throws Exception {
+        m_mockVoltDB.getConfig().m_startAction = StartAction.RECOVER;
+        final long snapshotTxnId = writeOldSegment(0, 5);
+        final long lastOldTxnId = writeOldSegment(1, 5);
+
+        // The snapshot covers the first segment only
+        startLog(true, 50, 1000, txnIds(snapshotTxnId));
+        assertFalse(CommandLogSegment.segmentFile(LOG_DIR, 0).exists());
+        assertTrue(CommandLogSegment.segmentFile(LOG_DIR, 1).exists());
+        // New segments continue after the kept one
+        assertTrue(CommandLogSegment.segmentFile(LOG_DIR, 2).exists());
+
+        m_log.snapshotCompleted(truncationSnapshot(lastOldTxnId - 1));
+        assertTrue(CommandLogSegment.segmentFile(LOG_DIR, 1).exists());
+        m_log.snapshotCompleted(truncationSnapshot(lastOldTxnId));
+        assertFalse(CommandLogSegment.segmentFile(LOG_DIR, 1).exists());
+        assertTrue(CommandLogSegment.segmentFile(LOG_DIR, 2).exists());
+    }
+
+    @Test
+    public void testSegmentsOfCreatedDatabaseAreDeleted() throws Exception {
+        m_mockVoltDB.getConfig().m_startAction = StartAction.CREATE;
+        writeOldSegment(0, 5);
+
+        startLog(true, 50, 1000, null);
+        assertFalse(CommandLogSegment.segmentFile(LOG_DIR, 0).exists());
+        assertTrue(CommandLogSegment.segmentFile(LOG_DIR, 1).exists());
+    }
+}
@@ -0,0 +1,257 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.voltcore.network.Connection;
+import org.voltcore.utils.InstanceId;
+import org.voltdb.dtxn.TransactionCreator;
+import org.voltdb.iv2.MpInitiator;
+import org.voltdb.iv2.TxnEgo;
+import org.voltdb.messaging.Iv2InitiateTaskMessage;
+
+public class TestGroupCommitCommandLogReinitiator {
+    private final static File LOG_DIR = new File("/tmp/" + System.getProperty("user.name") + "/cmdlog_replay_test");
+    private final static InstanceId INSTANCE_ID = new InstanceId(1, 12345L);
+
+    private MockVoltDB m_mockVoltDB;
+
+    /**
+     * Records what replay initiates. Every transaction is refused so that
+     * replay doesn't wait for responses that never come.
+     */
+    private static class RecordingInitiator implements TransactionCreator {
+        final List<Long> m_spTxnIds = new ArrayList<Long>();
+        final List<Long> m_mpTxnIds = new ArrayList<Long>();
+        final List<String> m_sentinels = new ArrayList<String>();
+        boolean m_eolSent = false;
+
+        @Override
+        public boolean createTransaction(long connectionId, StoredProcedureInvocation invocation,
+                boolean isReadOnly, boolean isSinglePartition, boolean isEverySite, int partition,
+                int messageSize, long nowNanos) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public synchronized boolean createTransaction(long connectionId, long txnId, long uniqueId,
+                StoredProcedureInvocation invocation, boolean isReadOnly, boolean isSinglePartition,
+                boolean isEverySite, int partition, int messageSize, long nowNanos) {
+            if (isSinglePartition) {
+                m_spTxnIds.add(txnId);
+            } else {
+                assertEquals(MpInitiator.MP_INIT_PID, partition);
+                m_mpTxnIds.add(txnId);
+            }
+            return false;
+        }
+
+        @Override
+        public synchronized void sendSentinel(long uniqueId, int partitionId) {
+            m_sentinels.add(partitionId + ":" + uniqueId);
+        }
+
+        @Override
+        public synchronized void sendEOLMessage(int partitionId) {
+            assertEquals(MpInitiator.MP_INIT_PID, partitionId);
+            m_eolSent = true;
+        }
+
+        @Override
+        public void bindAdapter(Connection adapter) {}
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        tearDown();
+        LOG_DIR.mkdirs();
+        m_mockVoltDB = new MockVoltDB();
+        VoltDB.replaceVoltDBInstanceForTest(m_mockVoltDB);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (m_mockVoltDB != null) {
+            m_mockVoltDB.shutdown(null);
+            m_mockVoltDB = null;
+        }
+        if (LOG_DIR.exists()) {
+            for (File f : LOG_DIR.listFiles()) {
+                f.delete();
+            }
+            LOG_DIR.delete();
+        }
+    }
+
+    private static Iv2InitiateTaskMessage makeMessage(long txnId, long uniqueId, boolean isSinglePartition) {
+        StoredProcedureInvocation spi = new StoredProcedureInvocation();
+        spi.setClientHandle(25);
+        spi.setProcName("InsertStuff");
+        spi.setParams(57, "gooniestoo", txnId);
+        return new Iv2InitiateTaskMessage(23, 8, 10L, txnId, uniqueId, false, isSinglePartition,
+                                          spi, 2101, 3101, false);
+    }
+
+    private static CommandLogSegment openSegment(long segmentId, InstanceId instanceId) throws Exception {
+        CommandLogSegment segment = CommandLogSegment.preallocate(LOG_DIR, segmentId, 1024 * 1024);
+        segment.openForAppend(instanceId, new HashMap<Integer, Long>());
+        return segment;
+    }
+
+    private static void logSp(CommandLogSegment segment, long spHandle) throws Exception {
+        segment.append(GroupCommitCommandLog.serializeInitiate(
+                makeMessage(spHandle, spHandle, true), spHandle, null));
+    }
+
+    /**
+     * Log an MP transaction the way each involved partition does, under
+     * that partition's spHandle.
+     */
+    private static void logMp(CommandLogSegment segment, long mpTxnId, long spHandle) throws Exception {
+        segment.append(GroupCommitCommandLog.serializeInitiate(
+                makeMessage(mpTxnId, mpTxnId, false), spHandle, new int[] {0, 1}));
+    }
+
+    private RecordingInitiator replay(boolean isMPINode, long snapshotMpTxnId,
+                                      Map<Integer, Long> snapshotTxnIds) throws Exception {
+        GroupCommitCommandLogReinitiator reinitiator = new GroupCommitCommandLogReinitiator(
+                0, StartAction.RECOVER, m_mockVoltDB.getHostMessenger(), LOG_DIR.getPath(),
+                new HashSet<Integer>(Arrays.asList(0)));
+        RestoreAgent.SnapshotInfo info = new RestoreAgent.SnapshotInfo(
+                snapshotMpTxnId, LOG_DIR.getPath(), "nonce", 2, 2, 0, 0, INSTANCE_ID, new HashSet<String>());
+        info.setPidToTxnIdMap(snapshotTxnIds);
+        reinitiator.setSnapshotTxnId(info);
+
+        RecordingInitiator initiator = new RecordingInitiator();
+        reinitiator.setInitiator(initiator);
+        final Semaphore done = new Semaphore(0);
+        reinitiator.setCallback(new CommandLogReinitiator.Callback() {
+            @Override
+            public void onReplayCompletion() {
+                done.release();
+            }
+        });
+        reinitiator.generateReplayPlan(0, snapshotMpTxnId, 2, isMPINode);
+        reinitiator.replay();
+        assertTrue(done.tryAcquire(60, TimeUnit.SECONDS));
+        return initiator;
+    }
+
+    @Test
+    public void testSnapshotTxnIdsFilterReplay() throws Exception {
+        TxnEgo p0 = TxnEgo.makeZero(0);
+        TxnEgo p1 = TxnEgo.makeZero(1);
+        TxnEgo mp = TxnEgo.makeZero(MpInitiator.MP_INIT_PID);
+        Map<Integer, Long> snapshotTxnIds = new HashMap<Integer, Long>();
+        List<Long> expectedSp = new ArrayList<Long>();
+
+        CommandLogSegment segment = openSegment(0, INSTANCE_ID);
+        for (int i = 0; i < 4; i++) {
+            p0 = p0.makeNext();
+            logSp(segment, p0.getTxnId());
+            p1 = p1.makeNext();
+            logSp(segment, p1.getTxnId());
+            if (i == 1) {
+                snapshotTxnIds.put(0, p0.getTxnId());
+                snapshotTxnIds.put(1, p1.getTxnId());
+            } else if (i > 1) {
+                expectedSp.add(p0.getTxnId());
+                expectedSp.add(p1.getTxnId());
+            }
+        }
+        segment.force();
+        segment.close();
+
+        RecordingInitiator initiator = replay(false, mp.getTxnId(), snapshotTxnIds);
+        assertEquals(expectedSp, initiator.m_spTxnIds);
+        assertTrue(initiator.m_mpTxnIds.isEmpty());
+        assertTrue(initiator.m_sentinels.isEmpty());
+        assertFalse(initiator.m_eolSent);
+    }
+
+    @Test
+    public void testMpSentinels() throws Exception {
+        TxnEgo p0 = TxnEgo.makeZero(0);
+        TxnEgo p1 = TxnEgo.makeZero(1);
+        TxnEgo mp = TxnEgo.makeZero(MpInitiator.MP_INIT_PID);
+
+        // Two MP transactions, the first one is in the snapshot
+        CommandLogSegment segment = openSegment(0, INSTANCE_ID);
+        List<Long> mpTxnIds = new ArrayList<Long>();
+        for (int i = 0; i < 2; i++) {
+            mp = mp.makeNext();
+            mpTxnIds.add(mp.getTxnId());
+            p0 = p0.makeNext();
+            logMp(segment, mp.getTxnId(), p0.getTxnId());
+            p1 = p1.makeNext();
+            logMp(segment, mp.getTxnId(), p1.getTxnId());
+        }
+        segment.force();
+        segment.close();
+
+        // A segment from another database instance is ignored
+        segment = openSegment(1, new InstanceId(2, 67890L));
+        mp = mp.makeNext();
+        logMp(segment, mp.getTxnId(), p0.makeNext().getTxnId());
+        segment.force();
+        segment.close();
+
+        final long replayed = mpTxnIds.get(1);
+        RecordingInitiator initiator = replay(true, mpTxnIds.get(0), new HashMap<Integer, Long>());
+        // Every partition that logged the transaction gets a sentinel,
+        // the MPI initiates it only once
+        assertEquals(Arrays.asList("0:" + replayed, "1:" + replayed), initiator.m_sentinels);
+        assertEquals(Arrays.asList(replayed), initiator.m_mpTxnIds);
+        assertTrue(initiator.m_spTxnIds.isEmpty());
+        assertTrue(initiator.m_eolSent);
+
+        // Hosts without the MPI only send the sentinels
+        tearDown();
+        setUp();
+        segment = openSegment(0, INSTANCE_ID);
+        logMp(segment, replayed, p0.getTxnId());
+        segment.force();
+        segment.close();
+        initiator = replay(false, mpTxnIds.get(0), new HashMap<Integer, Long>());
+        assertEquals(Arrays.asList("0:" + replayed), initiator.m_sentinels);
+        assertTrue(initiator.m_mpTxnIds.isEmpty());
+        assertFalse(initiator.m_eolSent);
+    }
+}
@@ -0,0 +1,200 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.json_voltpatches.JSONObject;
+import org.voltcore.logging.VoltLogger;
+import org.voltcore.utils.InstanceId;
+import org.voltcore.utils.Pair;
+import org.voltdb.catalog.Table;
+import org.voltdb.sysprocs.saverestore.SnapshotUtil;
+import org.voltdb.sysprocs.saverestore.SnapshotUtil.Snapshot;
+import org.voltdb.utils.BuildDirectoryUtils;
+import org.voltdb.utils.VoltFile;
+
+public class TestIncrementalSnapshotDigest extends TestCase {
+
+    private static final VoltLogger LOG = new VoltLogger("TEST");
+
+    private File m_dir;
+
+    @Override
+    public void setUp() throws Exception {
+        m_dir = new File(BuildDirectoryUtils.getBuildDirectoryPath(), "TestIncrementalSnapshotDigest");
+        VoltFile.recursivelyDelete(m_dir);
+        assertTrue(m_dir.mkdirs());
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        VoltFile.recursivelyDelete(m_dir);
+    }
+
+    private static JSONObject digest(JSONObject incremental) throws Exception {
+        JSONObject digest = new JSONObject();
+        digest.put("txnId", 0);
+        if (incremental != null) {
+            digest.put(SnapshotUtil.JSON_INCREMENTAL, incremental);
+        }
+        return digest;
+    }
+
+    private static JSONObject base() throws Exception {
+        JSONObject incremental = new JSONObject();
+        incremental.put(SnapshotUtil.JSON_INCREMENTAL_TYPE, SnapshotUtil.INCREMENTAL_BASE);
+        return incremental;
+    }
+
+    private static JSONObject delta(String parentNonce, String baseNonce) throws Exception {
+        JSONObject incremental = new JSONObject();
+        incremental.put(SnapshotUtil.JSON_INCREMENTAL_TYPE, SnapshotUtil.INCREMENTAL_DELTA);
+        incremental.put(SnapshotUtil.JSON_PARENT_NONCE, parentNonce);
+        incremental.put(SnapshotUtil.JSON_BASE_NONCE, baseNonce);
+        return incremental;
+    }
+
+    private static void assertChainRejected(String nonce, Map<String, JSONObject> digests) throws Exception {
+        try {
+            SnapshotUtil.resolveIncrementalChain(nonce, digests);
+            fail("The chain of " + nonce + " should not resolve");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    public void testChainBaseFirst() throws Exception {
+        Map<String, JSONObject> digests = new HashMap<String, JSONObject>();
+        digests.put("full", digest(null));
+        digests.put("base", digest(base()));
+        digests.put("delta1", digest(delta("base", "base")));
+        digests.put("delta2", digest(delta("delta1", "base")));
+
+        assertEquals(Arrays.asList("full"), SnapshotUtil.resolveIncrementalChain("full", digests));
+        assertEquals(Arrays.asList("base"), SnapshotUtil.resolveIncrementalChain("base", digests));
+        assertEquals(Arrays.asList("base", "delta1"), SnapshotUtil.resolveIncrementalChain("delta1", digests));
+        assertEquals(Arrays.asList("base", "delta1", "delta2"),
+                     SnapshotUtil.resolveIncrementalChain("delta2", digests));
+    }
+
+    public void testChainMissingParent() throws Exception {
+        Map<String, JSONObject> digests = new HashMap<String, JSONObject>();
+        digests.put("base", digest(base()));
+        digests.put("delta2", digest(delta("delta1", "base")));
+
+        assertChainRejected("delta2", digests);
+        assertChainRejected("unknown", digests);
+    }
+
+    public void testChainCycle() throws Exception {
+        Map<String, JSONObject> digests = new HashMap<String, JSONObject>();
+        digests.put("delta1", digest(delta("delta2", "base")));
+        digests.put("delta2", digest(delta("delta1", "base")));
+
+        assertChainRejected("delta2", digests);
+    }
+
+    public void testChainOtherBase() throws Exception {
+        Map<String, JSONObject> digests = new HashMap<String, JSONObject>();
+        digests.put("base", digest(base()));
+        digests.put("other", digest(base()));
+        digests.put("delta1", digest(delta("base", "base")));
+        digests.put("delta2", digest(delta("delta1", "other")));
+        digests.put("delta3", digest(delta("other", "base")));
+
+        assertChainRejected("delta2", digests);
+        assertChainRejected("delta3", digests);
+    }
+
+    private void writeDigest(String nonce, JSONObject incremental) throws Exception {
+        ExtensibleSnapshotDigestData extraSnapshotData = new ExtensibleSnapshotDigestData(
+                new HashMap<String, Map<Integer, Pair<Long, Long>>>(),
+                new HashMap<Integer, TupleStreamStateInfo>(),
+                new HashMap<Integer, JSONObject>());
+        extraSnapshotData.setIncrementalInfo(incremental);
+        SnapshotUtil.writeSnapshotDigest(
+                42,
+                0,
+                m_dir.getPath(),
+                nonce,
+                new ArrayList<Table>(),
+                0,
+                new HashMap<Integer, Long>(),
+                extraSnapshotData,
+                new InstanceId(0, 0),
+                System.currentTimeMillis(),
+                1,
+                0).run();
+    }
+
+    public void testDigestRoundTrip() throws Exception {
+        writeDigest("full", null);
+        writeDigest("base", base());
+        writeDigest("delta", delta("base", "base"));
+
+        List<JSONObject> digests = SnapshotUtil.retrieveDigests(m_dir.getPath(), "full", LOG);
+        assertEquals(1, digests.size());
+        assertFalse(digests.get(0).has(SnapshotUtil.JSON_INCREMENTAL));
+
+        digests = SnapshotUtil.retrieveDigests(m_dir.getPath(), "delta", LOG);
+        assertEquals(1, digests.size());
+        JSONObject incremental = digests.get(0).getJSONObject(SnapshotUtil.JSON_INCREMENTAL);
+        assertEquals(SnapshotUtil.INCREMENTAL_DELTA, incremental.getString(SnapshotUtil.JSON_INCREMENTAL_TYPE));
+        assertEquals("base", incremental.getString(SnapshotUtil.JSON_PARENT_NONCE));
+        assertEquals("base", incremental.getString(SnapshotUtil.JSON_BASE_NONCE));
+
+        Map<String, JSONObject> digestsByNonce = new HashMap<String, JSONObject>();
+        for (String nonce : new String[] { "full", "base", "delta" }) {
+            digestsByNonce.put(nonce, SnapshotUtil.retrieveDigests(m_dir.getPath(), nonce, LOG).get(0));
+        }
+        assertEquals(Arrays.asList("base", "delta"), SnapshotUtil.resolveIncrementalChain("delta", digestsByNonce));
+    }
+
+    public void testRestoreSkipsDeltas() throws Exception {
+        writeDigest("full", null);
+        writeDigest("base", base());
+        writeDigest("delta", delta("base", "base"));
+
+        Map<String, Snapshot> snapshots = new HashMap<String, Snapshot>();
+        SnapshotUtil.retrieveSnapshotFiles(m_dir, snapshots, new SnapshotUtil.SnapshotFilter(), false, LOG);
+        assertEquals(3, snapshots.size());
+        assertFalse(snapshots.get("full").isIncrementalDelta());
+        assertFalse(snapshots.get("base").isIncrementalDelta());
+        assertTrue(snapshots.get("delta").isIncrementalDelta());
+
+        StringBuilder errLog = new StringBuilder();
+        assertFalse(RestoreAgent.rejectIncrementalDelta(snapshots.get("full"), errLog));
+        assertFalse(RestoreAgent.rejectIncrementalDelta(snapshots.get("base"), errLog));
+        assertEquals(0, errLog.length());
+        assertTrue(RestoreAgent.rejectIncrementalDelta(snapshots.get("delta"), errLog));
+        assertTrue(errLog.toString().contains("delta"));
+    }
+}
@@ -0,0 +1,77 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb;
+
+import junit.framework.TestCase;
+
+public class TestSnapshotThrottle extends TestCase {
+
+    public void testBacksOffOverBudget() {
+        SnapshotThrottle throttle = new SnapshotThrottle(10000, 8, 256);
+        assertEquals(256, throttle.getRateMegabytes());
+        assertEquals(0, throttle.getWorkDelayMillis());
+
+        assertTrue(throttle.update(20000, 0));
+        assertEquals(128, throttle.getRateMegabytes());
+        assertEquals(SnapshotThrottle.WORK_DELAY_STEP_MS, throttle.getWorkDelayMillis());
+
+        assertTrue(throttle.update(20000, 0));
+        assertEquals(64, throttle.getRateMegabytes());
+        assertEquals(SnapshotThrottle.WORK_DELAY_STEP_MS * 2, throttle.getWorkDelayMillis());
+    }
+
+    public void testBacksOffOnDiskQueue() {
+        SnapshotThrottle throttle = new SnapshotThrottle(10000, 8, 256);
+        assertFalse(throttle.update(5000, 8));
+        assertTrue(throttle.update(5000, 9));
+        assertEquals(128, throttle.getRateMegabytes());
+    }
+
+    public void testRecoversUnderBudget() {
+        SnapshotThrottle throttle = new SnapshotThrottle(10000, 8, 32);
+        throttle.update(20000, 0);
+        throttle.update(20000, 0);
+        assertEquals(8, throttle.getRateMegabytes());
+        assertEquals(SnapshotThrottle.WORK_DELAY_STEP_MS * 2, throttle.getWorkDelayMillis());
+
+        assertTrue(throttle.update(1000, 0));
+        assertEquals(8 + SnapshotThrottle.RATE_STEP_MEGABYTES, throttle.getRateMegabytes());
+        assertEquals(SnapshotThrottle.WORK_DELAY_STEP_MS, throttle.getWorkDelayMillis());
+
+        for (int i = 0; i < 10; i++) {
+            throttle.update(1000, 0);
+        }
+        assertEquals(32, throttle.getRateMegabytes());
+        assertEquals(0, throttle.getWorkDelayMillis());
+    }
+
+    public void testBounds() {
+        SnapshotThrottle throttle = new SnapshotThrottle(10000, 8, 64);
+        for (int i = 0; i < 20; i++) {
+            throttle.update(20000, 100);
+        }
+        assertEquals(SnapshotThrottle.MIN_RATE_MEGABYTES, throttle.getRateMegabytes());
+        assertEquals(SnapshotThrottle.MAX_WORK_DELAY_MS, throttle.getWorkDelayMillis());
+    }
+}
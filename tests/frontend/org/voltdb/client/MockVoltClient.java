@@ -67,6 +67,8 @@ import org.voltdb.VoltTable;
 import org.voltdb.client.VoltBulkLoader.BulkLoaderFailureCallBack;
 import org.voltdb.client.VoltBulkLoader.VoltBulkLoader;
 
+import com.google_voltpatches.common.util.concurrent.ListenableFuture;
+
 /** Hack subclass of VoltClient that fakes callProcedure. */
 public class MockVoltClient implements Client, ReplicaProcCaller{
     public MockVoltClient() {
@@ -159,6 +161,18 @@ public class MockVoltClient implements Client, ReplicaProcCaller{
         return false;
     }
 
+    @Override
+    public ListenableFuture<ClientResponse> callProcedureAsync(String procName, Object... parameters)
+            throws NoConnectionsException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public List<ListenableFuture<ClientResponse>> callProcedureBatchAsync(String procName, List<Object[]> parameterSets)
+            throws NoConnectionsException {
+        throw new UnsupportedOperationException();
+    }
+
     @Override
     public void drain() {
         // TODO Auto-generated method stub
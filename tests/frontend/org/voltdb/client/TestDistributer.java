@@ -48,6 +48,8 @@ import org.voltdb.StoredProcedureInvocation;
 import org.voltdb.VoltTable;
 import org.voltdb.VoltType;
 
+import com.google_voltpatches.common.util.concurrent.ListenableFuture;
+
 public class TestDistributer extends TestCase {
 
     class MockInputHandler extends VoltProtocolHandler {
@@ -820,6 +822,73 @@ public class TestDistributer extends TestCase {
        }
     }
 
+    public void testClientFutures() throws Exception {
+        MockVolt volt = null;
+        Client clt = null;
+
+        try {
+            // create a fake server and connect to it.
+            volt = new MockVolt(21212);
+            volt.start();
+
+            // fewer outstanding transactions than a batch
+            ClientConfig config = new ClientConfig();
+            config.setMaxOutstandingTxns(5);
+            clt = ClientFactory.createClient(config);
+            clt.createConnection("localhost");
+
+            ClientResponse response = clt.callProcedureAsync("Foo", 1).get(10, TimeUnit.SECONDS);
+            assertEquals(ClientResponse.SUCCESS, response.getStatus());
+            assertEquals(1, response.getResults()[0].asScalarLong());
+            final int roundTrips = volt.handler.roundTrips.get();
+
+            List<Object[]> parameterSets = new ArrayList<Object[]>();
+            for (int i = 0; i < 20; i++) {
+                parameterSets.add(new Object[] { i });
+            }
+            List<ListenableFuture<ClientResponse>> futures = clt.callProcedureBatchAsync("Bar", parameterSets);
+            assertEquals(20, futures.size());
+            for (ListenableFuture<ClientResponse> future : futures) {
+                assertEquals(ClientResponse.SUCCESS, future.get(10, TimeUnit.SECONDS).getStatus());
+            }
+            assertEquals(roundTrips + 20, volt.handler.roundTrips.get());
+
+            assertTrue(clt.callProcedureBatchAsync("Bar", new ArrayList<Object[]>()).isEmpty());
+
+            // A parameter set that can't be serialized fails the whole batch before anything is sent
+            List<Object[]> unserializable = new ArrayList<Object[]>(parameterSets);
+            unserializable.set(10, new Object[] { new long[Short.MAX_VALUE + 1] });
+            final int beforeFailedBatch = volt.handler.roundTrips.get();
+            try {
+                clt.callProcedureBatchAsync("Bar", unserializable);
+                fail("Batch with an unserializable parameter set should not be queued");
+            } catch (IOException expected) {}
+            // Invocations on a connection are answered in order, anything sent before would be counted
+            assertEquals(ClientResponse.SUCCESS, clt.callProcedure("Foo", 1).getStatus());
+            assertEquals(beforeFailedBatch + 1, volt.handler.roundTrips.get());
+
+            // Without a connection every invocation completes as lost
+            Client unconnected = ClientFactory.createClient(config);
+            try {
+                futures = unconnected.callProcedureBatchAsync("Bar", parameterSets);
+                assertEquals(20, futures.size());
+                for (ListenableFuture<ClientResponse> future : futures) {
+                    assertEquals(ClientResponse.CONNECTION_LOST, future.get(10, TimeUnit.SECONDS).getStatus());
+                }
+            } finally {
+                unconnected.close();
+            }
+        }
+        finally {
+            if (clt != null) {
+                clt.close();
+            }
+            if (volt != null) {
+                volt.shutdown();
+            }
+        }
+    }
+
     @Test
     public void testClientBlockedOnMaxOutstanding() throws Exception {
         // create a fake server and connect to it.
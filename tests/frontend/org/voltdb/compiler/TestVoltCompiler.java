@@ -51,6 +51,7 @@ import org.voltdb.catalog.ConnectorTableInfo;
 import org.voltdb.catalog.Database;
 import org.voltdb.catalog.Group;
 import org.voltdb.catalog.GroupRef;
+import org.voltdb.catalog.Index;
 import org.voltdb.catalog.MaterializedViewInfo;
 import org.voltdb.catalog.Procedure;
 import org.voltdb.catalog.SnapshotSchedule;
@@ -1918,6 +1919,26 @@ public class TestVoltCompiler extends TestCase {
         }
     }
 
+    public void testDDLCompilerBTreeIndex()
+    {
+        for (int i = 0; i < column_types.length; i++)
+        {
+            final String s =
+                "create table t(id " + column_types[i] + " not null, num integer not null);\n" +
+                "create index idx_t_id_btree on t(id);\n" +
+                "create unique index idx_t_idnum_btree on t(id,num);";
+            VoltCompiler c = compileForDDLTest(getPathForSchema(s), true);
+            assertFalse(c.hasErrors());
+            Database d = c.m_catalog.getClusters().get("cluster").getDatabases().get("database");
+            Index idx = d.getTables().getIgnoreCase("t").getIndexes().getIgnoreCase("idx_t_id_btree");
+            assertEquals(IndexType.BTREE.getValue(), idx.getType());
+            assertTrue(idx.getCountable());
+            idx = d.getTables().getIgnoreCase("t").getIndexes().getIgnoreCase("idx_t_idnum_btree");
+            assertEquals(IndexType.BTREE.getValue(), idx.getType());
+            assertTrue(idx.getUnique());
+        }
+    }
+
     public void testUniqueIndexAllowed()
     {
         final String s =
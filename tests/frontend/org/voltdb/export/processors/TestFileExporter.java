@@ -0,0 +1,230 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.export.processors;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.jpountz.lz4.LZ4BlockInputStream;
+
+import org.voltcore.logging.VoltLogger;
+import org.voltcore.utils.DBBPool.BBContainer;
+import org.voltdb.VoltType;
+import org.voltdb.utils.VoltFile;
+import org.xerial.snappy.SnappyFramedInputStream;
+
+import junit.framework.TestCase;
+
+public class TestFileExporter extends TestCase {
+
+    private static final List<Integer> TYPES = new ArrayList<Integer>();
+    static {
+        for (int i = 0; i < 5; i++) {
+            TYPES.add((int) VoltType.BIGINT.getValue());
+        }
+        TYPES.add((int) VoltType.TINYINT.getValue());
+        TYPES.add((int) VoltType.INTEGER.getValue());
+        TYPES.add((int) VoltType.STRING.getValue());
+        TYPES.add((int) VoltType.DECIMAL.getValue());
+    }
+
+    private File m_dir;
+
+    @Override
+    public void setUp() throws IOException {
+        m_dir = new File(System.getProperty("java.io.tmpdir"), "TestFileExporter");
+        VoltFile.recursivelyDelete(m_dir);
+    }
+
+    @Override
+    public void tearDown() throws IOException {
+        VoltFile.recursivelyDelete(m_dir);
+    }
+
+    // A row the way ExportTupleStream writes it, null values are passed as null
+    private static void addRow(ByteBuffer buf, long txnId, Integer i, String s, BigDecimal d) {
+        int start = buf.position();
+        buf.putInt(0);
+        int nullArray = buf.position();
+        buf.putShort((short) 0);
+        buf.putLong(txnId).putLong(1000).putLong(txnId).putLong(0).putLong(0).put((byte) 1);
+        byte nulls = 0;
+        if (i == null) {
+            nulls |= 0x80 >> 6;
+        } else {
+            buf.putInt(i);
+        }
+        if (s == null) {
+            nulls |= 0x80 >> 7;
+        } else {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            buf.putInt(bytes.length).put(bytes);
+        }
+        if (d == null) {
+            buf.put(nullArray + 1, (byte) 0x80);
+        } else {
+            byte[] unscaled = d.unscaledValue().toByteArray();
+            byte[] padded = new byte[16];
+            Arrays.fill(padded, (byte) (unscaled[0] < 0 ? -1 : 0));
+            System.arraycopy(unscaled, 0, padded, 16 - unscaled.length, unscaled.length);
+            buf.put((byte) d.scale()).put((byte) 16).put(padded);
+        }
+        buf.put(nullArray, nulls);
+        buf.putInt(start, buf.position() - start - 4);
+    }
+
+    private static ByteBuffer makeBlock() {
+        ByteBuffer buf = ByteBuffer.allocate(1024).order(ByteOrder.LITTLE_ENDIAN);
+        addRow(buf, 1, 5, "a,\"b\"", new BigDecimal("1.500000000000"));
+        addRow(buf, 2, null, null, null);
+        buf.flip();
+        return buf;
+    }
+
+    public void testFormatBlock() {
+        StringBuilder out = new StringBuilder();
+        assertEquals(2, new ExportRowDecoder(TYPES, ',', false).formatBlock(makeBlock(), out));
+        assertEquals("1,1000,1,0,0,1,5,\"a,\"\"b\"\"\",1.500000000000\n" +
+                     "2,1000,2,0,0,1,,,\n", out.toString());
+
+        out.setLength(0);
+        new ExportRowDecoder(TYPES, '\t', true).formatBlock(makeBlock(), out);
+        assertEquals("5\t\"a,\"\"b\"\"\"\t1.500000000000\n\t\t\n", out.toString());
+    }
+
+    private void writeAndCheck(String compression, String extension) throws Exception {
+        Properties props = new Properties();
+        props.setProperty("nonce", "test");
+        props.setProperty("outdir", m_dir.getPath());
+        props.setProperty("compression", compression);
+        FileExporter exporter = new FileExporter(props, new VoltLogger("EXPORT"));
+        exporter.start();
+
+        final AtomicInteger discarded = new AtomicInteger();
+        final AtomicInteger written = new AtomicInteger();
+        ExportRowDecoder decoder = exporter.createDecoder(TYPES);
+        for (int i = 0; i < 3; i++) {
+            ByteBuffer block = makeBlock();
+            exporter.write("T", exporter.encode(decoder, block), new BBContainer(block) {
+                @Override
+                public void discard() {
+                    discarded.incrementAndGet();
+                }
+            }, new Runnable() {
+                @Override
+                public void run() {
+                    written.incrementAndGet();
+                }
+            });
+        }
+        exporter.shutdown();
+        assertEquals(3, discarded.get());
+        assertEquals(3, written.get());
+
+        File[] files = m_dir.listFiles();
+        assertEquals(1, files.length);
+        assertTrue(files[0].getName().startsWith("test-T-"));
+        assertTrue(files[0].getName().endsWith(".csv" + extension));
+
+        InputStream in = new FileInputStream(files[0]);
+        if (compression.equals("snappy")) {
+            in = new SnappyFramedInputStream(in);
+        } else if (compression.equals("lz4")) {
+            in = new LZ4BlockInputStream(in);
+        }
+        ByteArrayOutputStream contents = new ByteArrayOutputStream();
+        byte[] buf = new byte[4096];
+        int read;
+        while ((read = in.read(buf)) != -1) {
+            contents.write(buf, 0, read);
+        }
+        in.close();
+
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 3; i++) {
+            new ExportRowDecoder(TYPES, ',', false).formatBlock(makeBlock(), expected);
+        }
+        assertEquals(expected.toString(), new String(contents.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    public void testWriteUncompressed() throws Exception {
+        writeAndCheck("none", "");
+    }
+
+    public void testWriteSnappy() throws Exception {
+        writeAndCheck("snappy", ".snappy");
+    }
+
+    public void testWriteLZ4() throws Exception {
+        writeAndCheck("lz4", ".lz4");
+    }
+
+    public void testWriteAfterShutdown() throws Exception {
+        Properties props = new Properties();
+        props.setProperty("nonce", "test");
+        props.setProperty("outdir", m_dir.getPath());
+        FileExporter exporter = new FileExporter(props, new VoltLogger("EXPORT"));
+        exporter.start();
+        exporter.shutdown();
+
+        // A block still being encoded at shutdown is dropped without being acked
+        final AtomicInteger discarded = new AtomicInteger();
+        ByteBuffer block = makeBlock();
+        exporter.write("T", exporter.encode(exporter.createDecoder(TYPES), block), new BBContainer(block) {
+            @Override
+            public void discard() {
+                discarded.incrementAndGet();
+            }
+        }, null);
+        exporter.shutdown();
+        assertEquals(0, discarded.get());
+        assertEquals(0, m_dir.listFiles().length);
+    }
+
+    public void testInvalidConfig() {
+        Properties props = new Properties();
+        try {
+            new FileExporter(props, new VoltLogger("EXPORT"));
+            fail();
+        } catch (IllegalArgumentException expected) {}
+        props.setProperty("nonce", "test");
+        props.setProperty("compression", "zip");
+        try {
+            new FileExporter(props, new VoltLogger("EXPORT"));
+            fail();
+        } catch (IllegalArgumentException expected) {}
+    }
+}
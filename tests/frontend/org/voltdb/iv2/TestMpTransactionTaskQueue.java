@@ -150,4 +150,41 @@ public class TestMpTransactionTaskQueue extends TestCase
         verify(m_MPpool).doWork(eq(readtxnid), any(TransactionTask.class));
         verify(m_MPpool).doWork(eq(readtxnid2), any(TransactionTask.class));
     }
+
+    // Reads are turned away once the configured number is waiting for the pool
+    @Test
+    public void testReadQueueLimit()
+    {
+        System.setProperty("mpiReadQueueLimit", "5");
+        try {
+            m_dut = new MpTransactionTaskQueue(m_writeQueue, TxnEgo.makeZero(MpInitiator.MP_INIT_PID).getTxnId());
+            m_dut.setMpRoSitePool(m_MPpool);
+        } finally {
+            System.clearProperty("mpiReadQueueLimit");
+        }
+
+        // One read runs in the pool, which then stops accepting work
+        TxnEgo txnId = TxnEgo.makeZero(MpInitiator.MP_INIT_PID).makeNext();
+        long activeTxnId = txnId.getTxnId();
+        m_dut.offer(makeTransactionTask(activeTxnId, true));
+        verify(m_MPpool).doWork(eq(activeTxnId), any(TransactionTask.class));
+        when(m_MPpool.canAcceptWork()).thenReturn(false);
+
+        List<Long> queuedTxns = new ArrayList<Long>();
+        for (int i = 0; i < 5; i++) {
+            assertTrue(m_dut.admitRead());
+            txnId = txnId.makeNext();
+            queuedTxns.add(txnId.getTxnId());
+            m_dut.offer(makeTransactionTask(txnId.getTxnId(), true));
+        }
+        assertFalse(m_dut.admitRead());
+
+        // Once the pool frees up the queued reads drain and new ones are admitted
+        when(m_MPpool.canAcceptWork()).thenReturn(true);
+        m_dut.flush(activeTxnId);
+        for (long queuedTxnId : queuedTxns) {
+            verify(m_MPpool).doWork(eq(queuedTxnId), any(TransactionTask.class));
+        }
+        assertTrue(m_dut.admitRead());
+    }
 }
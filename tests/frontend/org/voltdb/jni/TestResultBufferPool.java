@@ -0,0 +1,271 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.jni;
+
+import java.nio.ByteBuffer;
+
+import junit.framework.TestCase;
+
+import org.voltdb.ClientResponseImpl;
+import org.voltdb.PrivateVoltTableFactory;
+import org.voltdb.VoltTable;
+import org.voltdb.VoltTableRow;
+import org.voltdb.VoltType;
+import org.voltdb.client.ClientResponse;
+
+public class TestResultBufferPool extends TestCase {
+
+    private static final int ROWS = ResultBufferPool.MIN_RESULT_SIZE / 8;
+
+    private static VoltTable makeTable(long first) {
+        VoltTable table = new VoltTable(new VoltTable.ColumnInfo("ID", VoltType.BIGINT));
+        for (long i = 0; i < ROWS; i++) {
+            table.addRow(first + i);
+        }
+        return table;
+    }
+
+    /**
+     * Fill a result buffer with the given tables, the way the EE results are copied.
+     */
+    private static VoltTable[] fill(ResultBufferPool.ResultBuffer resultBuffer, VoltTable... tables) {
+        ByteBuffer buf = resultBuffer.b();
+        VoltTable[] results = new VoltTable[tables.length];
+        for (int i = 0; i < tables.length; i++) {
+            // The size of the table followed by the table
+            tables[i].flattenToBuffer(buf);
+            ByteBuffer tableBacking = buf.duplicate();
+            tableBacking.position(buf.position() - (tables[i].getSerializedSize() - 4));
+            tableBacking.limit(buf.position());
+            results[i] = PrivateVoltTableFactory.createVoltTableFromBuffer(tableBacking.slice(), true);
+        }
+        resultBuffer.setTables(results);
+        return results;
+    }
+
+    private static int serializedSize(VoltTable... tables) {
+        int size = 0;
+        for (VoltTable table : tables) {
+            size += table.getSerializedSize();
+        }
+        return size;
+    }
+
+    private static ClientResponseImpl respond(VoltTable... results) {
+        return new ClientResponseImpl(ClientResponse.SUCCESS, results, null);
+    }
+
+    private static void assertRows(VoltTable table, long first) {
+        table.resetRowPosition();
+        assertEquals(ROWS, table.getRowCount());
+        for (long i = 0; i < ROWS; i++) {
+            assertTrue(table.advanceRow());
+            assertEquals(first + i, table.getLong(0));
+        }
+    }
+
+    /**
+     * Recycle the released buffers, the caller drops its references to the
+     * returned tables first.
+     */
+    private static void collect(ResultBufferPool pool) {
+        for (int i = 0; i < 100 && pool.getUncollectedBytes() > 0; i++) {
+            System.gc();
+            pool.reclaimCollected();
+        }
+        assertEquals(0, pool.getUncollectedBytes());
+    }
+
+    public void testOnlyLargeResultsOfProcedures() {
+        ResultBufferPool pool = new ResultBufferPool();
+        assertNull(pool.acquire(ResultBufferPool.MIN_RESULT_SIZE));
+
+        pool.beginProcedure();
+        assertNull(pool.acquire(ResultBufferPool.MIN_RESULT_SIZE - 1));
+        assertNotNull(pool.acquire(ResultBufferPool.MIN_RESULT_SIZE));
+        pool.endProcedure(respond());
+
+        assertNull(pool.acquire(ResultBufferPool.MIN_RESULT_SIZE));
+    }
+
+    public void testReturnedTablesKeptUntilWritten() {
+        ResultBufferPool pool = new ResultBufferPool();
+        VoltTable source = makeTable(0);
+
+        pool.beginProcedure();
+        ResultBufferPool.ResultBuffer resultBuffer = pool.acquire(serializedSize(source));
+        VoltTable[] results = fill(resultBuffer, source);
+        assertTrue(PrivateVoltTableFactory.getTableDataReference(results[0]).isDirect());
+        ClientResponseImpl response = respond(results);
+        pool.endProcedure(response);
+
+        // The response still holds the buffer
+        assertEquals(0, pool.getPooledBytes());
+        assertTrue(PrivateVoltTableFactory.getTableDataReference(results[0]).isDirect());
+        assertRows(results[0], 0);
+
+        response.releaseResultBuffers();
+        // Releasing twice is harmless
+        response.releaseResultBuffers();
+
+        // The table is still reachable, the buffer is not reused yet
+        assertEquals(0, pool.getPooledBytes());
+        assertEquals(resultBuffer.b().capacity(), pool.getUncollectedBytes());
+        assertRows(results[0], 0);
+        results = null;
+        response = null;
+        collect(pool);
+        assertEquals(resultBuffer.b().capacity(), pool.getPooledBytes());
+
+        // The next results reuse it
+        pool.beginProcedure();
+        ResultBufferPool.ResultBuffer reused = pool.acquire(serializedSize(source));
+        assertSame(resultBuffer.b(), reused.b());
+        assertEquals(0, pool.getPooledBytes());
+        pool.endProcedure(respond());
+    }
+
+    public void testRowOfTableNotReturnedKept() {
+        ResultBufferPool pool = new ResultBufferPool();
+        VoltTable source = makeTable(0);
+        VoltTable returned = makeTable(ROWS);
+
+        pool.beginProcedure();
+        ResultBufferPool.ResultBuffer resultBuffer = pool.acquire(serializedSize(source, returned));
+        VoltTable[] results = fill(resultBuffer, source, returned);
+        ClientResponseImpl response = respond(results[1]);
+        pool.endProcedure(response);
+        response.releaseResultBuffers();
+
+        // The procedure keeps only a row of the table it didn't return
+        VoltTableRow row = results[0].fetchRow(ROWS - 1);
+        results = null;
+        response = null;
+        System.gc();
+        pool.reclaimCollected();
+        assertEquals(resultBuffer.b().capacity(), pool.getUncollectedBytes());
+
+        // The next results can't overwrite the row
+        pool.beginProcedure();
+        ResultBufferPool.ResultBuffer next = pool.acquire(serializedSize(source, returned));
+        assertNotSame(resultBuffer.b(), next.b());
+        fill(next, makeTable(ROWS * 2), makeTable(ROWS * 3));
+        pool.endProcedure(null);
+        assertEquals(ROWS - 1, row.getLong(0));
+
+        row = null;
+        collect(pool);
+        assertEquals(resultBuffer.b().capacity() + next.b().capacity(), pool.getPooledBytes());
+    }
+
+    public void testBufferOfPooledTableCopied() {
+        ResultBufferPool pool = new ResultBufferPool();
+        VoltTable source = makeTable(0);
+
+        pool.beginProcedure();
+        ResultBufferPool.ResultBuffer resultBuffer = pool.acquire(serializedSize(source));
+        VoltTable[] results = fill(resultBuffer, source);
+        ByteBuffer view = results[0].getBuffer();
+        pool.endProcedure(null);
+
+        // The view doesn't keep the table reachable, so it is a copy
+        assertFalse(view.isDirect());
+        assertRows(results[0], 0);
+        results = null;
+        collect(pool);
+        assertEquals(resultBuffer.b().capacity(), pool.getPooledBytes());
+
+        pool.beginProcedure();
+        ResultBufferPool.ResultBuffer reused = pool.acquire(serializedSize(source));
+        assertSame(resultBuffer.b(), reused.b());
+        fill(reused, makeTable(ROWS));
+        pool.endProcedure(null);
+        assertRows(PrivateVoltTableFactory.createVoltTableFromBuffer(view, true), 0);
+    }
+
+    public void testNothingReturnedOnError() {
+        ResultBufferPool pool = new ResultBufferPool();
+        VoltTable source = makeTable(0);
+
+        pool.beginProcedure();
+        ResultBufferPool.ResultBuffer resultBuffer = pool.acquire(serializedSize(source));
+        VoltTable[] results = fill(resultBuffer, source);
+        pool.endProcedure(null);
+
+        // Reused once the tables are gone
+        assertEquals(0, pool.getPooledBytes());
+        assertRows(results[0], 0);
+        results = null;
+        collect(pool);
+        assertEquals(resultBuffer.b().capacity(), pool.getPooledBytes());
+    }
+
+    public void testPooledBytesBounded() {
+        ResultBufferPool pool = new ResultBufferPool();
+        int size = (int) (ResultBufferPool.MAX_POOLED_BYTES / 2);
+        ClientResponseImpl[] responses = new ClientResponseImpl[3];
+
+        for (int i = 0; i < responses.length; i++) {
+            pool.beginProcedure();
+            responses[i] = respond(fill(pool.acquire(size), makeTable(0)));
+            pool.endProcedure(responses[i]);
+        }
+        for (int i = 0; i < responses.length; i++) {
+            responses[i].releaseResultBuffers();
+            responses[i] = null;
+        }
+        // Only as many buffers as the pool holds wait for their tables to be collected
+        assertEquals(ResultBufferPool.MAX_POOLED_BYTES, pool.getUncollectedBytes());
+        collect(pool);
+        assertEquals(ResultBufferPool.MAX_POOLED_BYTES, pool.getPooledBytes());
+    }
+
+    public void testReturnedTableKeptByProcedure() {
+        ResultBufferPool pool = new ResultBufferPool();
+        VoltTable source = makeTable(0);
+
+        // The procedure keeps the table it returns, like in a field
+        pool.beginProcedure();
+        ResultBufferPool.ResultBuffer first = pool.acquire(serializedSize(source));
+        VoltTable kept = fill(first, source)[0];
+        ClientResponseImpl response = respond(kept);
+        pool.endProcedure(response);
+        response.releaseResultBuffers();
+        response = null;
+
+        // The next invocation gets another buffer and doesn't overwrite the kept table
+        pool.beginProcedure();
+        ResultBufferPool.ResultBuffer second = pool.acquire(serializedSize(source));
+        assertNotSame(first.b(), second.b());
+        response = respond(fill(second, makeTable(ROWS)));
+        pool.endProcedure(response);
+        response.releaseResultBuffers();
+        response = null;
+        assertRows(kept, 0);
+
+        kept = null;
+        collect(pool);
+        assertEquals(first.b().capacity() + second.b().capacity(), pool.getPooledBytes());
+    }
+}
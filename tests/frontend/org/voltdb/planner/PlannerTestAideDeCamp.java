@@ -38,6 +38,7 @@ import org.voltdb.catalog.Procedure;
 import org.voltdb.catalog.Statement;
 import org.voltdb.catalog.StmtParameter;
 import org.voltdb.compiler.DatabaseEstimates;
+import org.voltdb.compiler.LiveDatabaseStatistics;
 import org.voltdb.compiler.DeterminismMode;
 import org.voltdb.compiler.StatementCompiler;
 import org.voltdb.compiler.VoltCompiler;
@@ -133,7 +134,7 @@ public class PlannerTestAideDeCamp {
         // name will look like "basename-stmt-#"
         String name = catalogStmt.getParent().getTypeName() + "-" + catalogStmt.getTypeName();
 
-        DatabaseEstimates estimates = new DatabaseEstimates();
+        DatabaseEstimates estimates = LiveDatabaseStatistics.getEstimates();
         TrivialCostModel costModel = new TrivialCostModel();
         StatementPartitioning partitioning;
         if (inferPartitioning) {
@@ -27,6 +27,7 @@ import java.util.List;
 
 import org.hsqldb_voltpatches.HSQLInterface;
 import org.json_voltpatches.JSONException;
+import org.voltdb.compiler.LiveDatabaseStatistics;
 import org.voltdb.expressions.AbstractExpression;
 import org.voltdb.expressions.ExpressionUtil;
 import org.voltdb.expressions.TupleValueExpression;
@@ -755,6 +756,38 @@ public class TestIndexSelection extends PlannerTestCase {
         }
     }
 
+    public void testLiveStatisticsPickMoreSelectiveIndex() {
+        String sql = "select id from skewed where status = ? and account = ?;";
+        // Without statistics both indexes cost the same and the tie goes to
+        // SKEWED_ACCOUNT, so only statistics can make the planner pick SKEWED_STATUS
+        checkTargetIndex(compile(sql), "SKEWED_ACCOUNT");
+        try {
+            // STATUS has few distinct values, so ACCOUNT is more selective
+            LiveDatabaseStatistics.SiteStatistics stats = new LiveDatabaseStatistics.SiteStatistics();
+            stats.addTable("SKEWED", 1000000);
+            stats.addIndex("SKEWED", "SKEWED_STATUS", 1000000, 3);
+            stats.addIndex("SKEWED", "SKEWED_ACCOUNT", 1000000, 500000);
+            LiveDatabaseStatistics.update(0, stats);
+            checkTargetIndex(compile(sql), "SKEWED_ACCOUNT");
+
+            // Skewed the other way, STATUS is the more selective one
+            stats = new LiveDatabaseStatistics.SiteStatistics();
+            stats.addTable("SKEWED", 1000000);
+            stats.addIndex("SKEWED", "SKEWED_STATUS", 1000000, 900000);
+            stats.addIndex("SKEWED", "SKEWED_ACCOUNT", 1000000, 10);
+            LiveDatabaseStatistics.update(0, stats);
+            checkTargetIndex(compile(sql), "SKEWED_STATUS");
+        } finally {
+            LiveDatabaseStatistics.clear();
+        }
+    }
+
+    private void checkTargetIndex(AbstractPlanNode pn, String indexName) {
+        List<AbstractPlanNode> scans = pn.findAllNodesOfType(PlanNodeType.INDEXSCAN);
+        assertEquals(1, scans.size());
+        assertEquals(indexName, ((IndexScanPlanNode) scans.get(0)).getTargetIndexName());
+    }
+
     private void checkIndexPredicateDoesNotHave(AbstractPlanNode pn, String[] columns)
     {
         assertEquals(1, pn.getChildCount());
@@ -25,6 +25,7 @@ package org.voltdb.planner;
 
 import java.util.List;
 
+import org.voltdb.VoltType;
 import org.voltdb.expressions.AbstractExpression;
 import org.voltdb.expressions.OperatorExpression;
 import org.voltdb.expressions.TupleValueExpression;
@@ -32,6 +33,7 @@ import org.voltdb.plannodes.AbstractJoinPlanNode;
 import org.voltdb.plannodes.AbstractPlanNode;
 import org.voltdb.plannodes.AbstractScanPlanNode;
 import org.voltdb.plannodes.AggregatePlanNode;
+import org.voltdb.plannodes.HashJoinPlanNode;
 import org.voltdb.plannodes.IndexScanPlanNode;
 import org.voltdb.plannodes.NestLoopIndexPlanNode;
 import org.voltdb.plannodes.NestLoopPlanNode;
@@ -641,6 +643,52 @@ public class TestPlansJoin extends PlannerTestCase {
         assertEquals(ExpressionType.COMPARE_EQUAL, pred.getExpressionType());
 }
 
+    public void testHashJoin() {
+        // A non-indexed equi-join hashes the inner table
+        AbstractPlanNode pn = compile("select * FROM R1 JOIN R2 ON R1.C = R2.C");
+        AbstractPlanNode n = pn.getChild(0).getChild(0);
+        assertEquals(PlanNodeType.HASHJOIN, n.getPlanNodeType());
+        HashJoinPlanNode hj = (HashJoinPlanNode) n;
+        assertEquals(ExpressionType.COMPARE_EQUAL, hj.getJoinPredicate().getExpressionType());
+        assertEquals(1, hj.getOuterHashExpressions().size());
+        assertEquals(1, hj.getInnerHashExpressions().size());
+        TupleValueExpression outerKey = (TupleValueExpression) hj.getOuterHashExpressions().get(0);
+        TupleValueExpression innerKey = (TupleValueExpression) hj.getInnerHashExpressions().get(0);
+        assertEquals(0, outerKey.getTableIndex());
+        assertEquals(1, innerKey.getTableIndex());
+        assertEquals(((SeqScanPlanNode) hj.getChild(0)).getTargetTableName(), outerKey.getTableName());
+        assertEquals(((SeqScanPlanNode) hj.getChild(1)).getTargetTableName(), innerKey.getTableName());
+
+        // Every equality between the two sides is part of the key
+        pn = compile("select R1.A, R2.A FROM R2 JOIN R1 on R1.A = R2.A and R1.C = R2.C and R1.D > R2.C");
+        hj = (HashJoinPlanNode) pn.getChild(0).getChild(0);
+        assertEquals(2, hj.getOuterHashExpressions().size());
+        assertEquals(2, hj.getInnerHashExpressions().size());
+        assertEquals(ExpressionType.CONJUNCTION_AND, hj.getJoinPredicate().getExpressionType());
+
+        // Outer joins
+        pn = compile("select * FROM R1 LEFT JOIN R2 ON R1.C = R2.C");
+        n = pn.getChild(0).getChild(0);
+        assertEquals(PlanNodeType.HASHJOIN, n.getPlanNodeType());
+        assertEquals(JoinType.LEFT, ((HashJoinPlanNode) n).getJoinType());
+
+        // FLOAT keys, the EE hashes -0.0 and 0.0 alike
+        pn = compile("select * FROM R1 JOIN R2 ON R1.C * -1.0E0 = R2.C * 1.0E0");
+        n = pn.getChild(0).getChild(0);
+        assertEquals(PlanNodeType.HASHJOIN, n.getPlanNodeType());
+        assertEquals(VoltType.FLOAT, ((HashJoinPlanNode) n).getOuterHashExpressions().get(0).getValueType());
+
+        // No equality to hash on
+        pn = compile("select * FROM R1 JOIN R2 ON R1.C > R2.C");
+        n = pn.getChild(0).getChild(0);
+        assertEquals(PlanNodeType.NESTLOOP, n.getPlanNodeType());
+
+        // An index on the inner table still wins
+        pn = compile("select R3.A, R2.A FROM R2 JOIN R3 ON R3.A = R2.A");
+        n = pn.getChild(0).getChild(0);
+        assertEquals(PlanNodeType.NESTLOOPINDEX, n.getPlanNodeType());
+    }
+
     public void testDistributedInnerJoin() {
         // JOIN replicated and one distributed table
         AbstractPlanNode pn = compile("select * FROM R1 JOIN P2 ON R1.C = P2.A");
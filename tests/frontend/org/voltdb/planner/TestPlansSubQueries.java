@@ -1390,7 +1390,10 @@ public class TestPlansSubQueries extends PlannerTestCase {
         checkJoinNode(planNodes.get(0), PlanNodeType.NESTLOOPINDEX, 0);
         // Join on distributed node
         //* enable to debug */ System.out.println(planNodes.get(1).toExplainPlanString());
-        checkJoinNode(planNodes.get(1), PlanNodeType.NESTLOOP, nestLoopCount);
+        // Non-indexed equi-joins are planned as hash joins, which are nest loops too
+        List<AbstractPlanNode> nestLoops = planNodes.get(1).findAllNodesOfType(PlanNodeType.NESTLOOP);
+        nestLoops.addAll(planNodes.get(1).findAllNodesOfType(PlanNodeType.HASHJOIN));
+        assertEquals(nestLoopCount, nestLoops.size());
     }
 
     public void testPartitionedLimitOffset() {
@@ -1634,9 +1637,11 @@ public class TestPlansSubQueries extends PlannerTestCase {
         assertFalse(pn.toExplainPlanString().contains("DISTINCT"));
 
         pn = planNodes.get(1).getChild(0);
-        // this join can be pushed down.
+        // this join can be pushed down, as a hash join with the subquery on the outer side.
         //* enable to debug */ System.out.println(pn.toExplainPlanString());
-        assertTrue(pn.toExplainPlanString().contains("LOOP INNER JOIN"));
+        assertEquals(PlanNodeType.HASHJOIN, pn.getPlanNodeType());
+        assertTrue(pn.toExplainPlanString().contains("HASH INNER JOIN"));
+        assertTrue(pn.getChild(1).toExplainPlanString().contains("SEQUENTIAL SCAN of \"R1\""));
         pn = pn.getChild(0);
         // This is a trivial subquery result scan.
         assertTrue(pn instanceof SeqScanPlanNode);
@@ -1708,7 +1713,9 @@ public class TestPlansSubQueries extends PlannerTestCase {
 
         assertTrue(planNodes.get(1).toExplainPlanString().contains("AGGREGATION"));
         assertTrue(planNodes.get(1).toExplainPlanString().contains("INDEX INNER JOIN"));
-        assertTrue(planNodes.get(1).toExplainPlanString().contains("LOOP INNER JOIN"));
+        // the non-indexed equi-joins on top of the subqueries are hash joins
+        assertEquals(2, planNodes.get(1).findAllNodesOfType(PlanNodeType.HASHJOIN).size());
+        assertTrue(planNodes.get(1).toExplainPlanString().contains("HASH INNER JOIN"));
 
         // Distinct without GROUP BY
         String sql1, sql2;
@@ -1739,7 +1746,8 @@ public class TestPlansSubQueries extends PlannerTestCase {
 
         assertTrue(planNodes.get(1).toExplainPlanString().contains("AGGREGATION"));
         assertTrue(planNodes.get(1).toExplainPlanString().contains("INDEX INNER JOIN"));
-        assertTrue(planNodes.get(1).toExplainPlanString().contains("LOOP INNER JOIN"));
+        assertEquals(2, planNodes.get(1).findAllNodesOfType(PlanNodeType.HASHJOIN).size());
+        assertTrue(planNodes.get(1).toExplainPlanString().contains("HASH INNER JOIN"));
 
         failToCompile(
                 "SELECT * FROM (SELECT DISTINCT A FROM P1 GROUP BY A, C) T1, P2 " +
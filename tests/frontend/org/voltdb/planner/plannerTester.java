@@ -431,6 +431,7 @@ public class plannerTester {
 
         for (AbstractPlanNode pn : pnlist) {
             if (pn.getPlanNodeType().equals(PlanNodeType.NESTLOOP) ||
+                    pn.getPlanNodeType().equals(PlanNodeType.HASHJOIN) ||
                     pn.getPlanNodeType().equals(PlanNodeType.NESTLOOPINDEX)) {
                 joinNodeList.add(pn);
             }
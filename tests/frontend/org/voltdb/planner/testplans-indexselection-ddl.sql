@@ -85,4 +85,12 @@ CREATE UNIQUE INDEX compoundunique ON polypoints ( component1, component2unique
 -- index 6
 CREATE INDEX compoundnon ON polypoints ( component1, component2non );
 -- index 7
-CREATE UNIQUE INDEX HASHUNIQUEHASH ON polypoints ( uniquehashable );
\ No newline at end of file
+CREATE UNIQUE INDEX HASHUNIQUEHASH ON polypoints ( uniquehashable );
+CREATE TABLE skewed
+(
+  id bigint not null,
+  status tinyint not null,
+  account bigint not null
+);
+CREATE INDEX skewed_status ON skewed (status);
+CREATE INDEX skewed_account ON skewed (account);
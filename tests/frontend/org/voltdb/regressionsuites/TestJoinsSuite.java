@@ -64,6 +64,10 @@ public class TestJoinsSuite extends RegressionSuite {
         subtestSeqOuterJoin(client);
         clearSeqTables(client);
         subtestSelfJoin(client);
+        clearSeqTables(client);
+        subtestHashJoinNullKeys(client);
+        clearSeqTables(client);
+        subtestHashJoinNegativeZeroKeys(client);
     }
 
     /**
@@ -271,6 +275,63 @@ public class TestJoinsSuite extends RegressionSuite {
         assertEquals(4, result.getRowCount());
     }
 
+    /**
+     * Non-indexed equi-joins are hash joins, NULL keys must never match
+     * @throws NoConnectionsException
+     * @throws IOException
+     * @throws ProcCallException
+     */
+    private void subtestHashJoinNullKeys(Client client)
+            throws NoConnectionsException, IOException, ProcCallException
+    {
+        client.callProcedure("InsertR1", 1, 1, null); // 1,1,NULL,NULL,NULL
+        client.callProcedure("InsertR1", 2, 2, 2);    // 2,2,2,2,2
+        client.callProcedure("InsertR1", 3, 3, 3);    // 3,3,3,3,3 and 3,3,3,4,3
+        client.callProcedure("InsertR2", 1, null);
+        client.callProcedure("InsertR2", 2, 2);
+        client.callProcedure("InsertR2", 3, 3);
+        client.callProcedure("InsertR2", 4, 3);
+        VoltTable result = client.callProcedure("@AdHoc",
+                "SELECT R1.A, R2.A FROM R1 JOIN R2 ON R1.D = R2.C ORDER BY R1.A, R2.A;")
+                                 .getResults()[0];
+        assertEquals(3, result.getRowCount());
+        result = client.callProcedure("@AdHoc",
+                "SELECT R1.A, R2.A FROM R1 LEFT JOIN R2 ON R1.D = R2.C ORDER BY R1.A, R2.A;")
+                .getResults()[0];
+        assertEquals(4, result.getRowCount());
+        assertTrue(result.advanceRow());
+        assertEquals(1, result.getLong(0));
+        result.getLong(1);
+        assertTrue(result.wasNull());
+    }
+
+    /**
+     * FLOAT -0.0 equals 0.0, so the hash join must find it under the same key
+     * @throws NoConnectionsException
+     * @throws IOException
+     * @throws ProcCallException
+     */
+    private void subtestHashJoinNegativeZeroKeys(Client client)
+            throws NoConnectionsException, IOException, ProcCallException
+    {
+        client.callProcedure("InsertR1", 1, 1, 1);
+        client.callProcedure("InsertR1", 2, 2, 2);
+        client.callProcedure("InsertR2", 1, 1);
+        client.callProcedure("InsertR2", 2, null);
+        // The outer key is -0.0, the inner key 0.0
+        VoltTable result = client.callProcedure("@AdHoc",
+                "SELECT R1.A, R2.A FROM R1 JOIN R2 " +
+                "ON (R1.C - R1.C) * -1.0E0 = (R2.C - R2.C) * 1.0E0 ORDER BY R1.A, R2.A;")
+                                 .getResults()[0];
+        assertEquals(2, result.getRowCount());
+        assertTrue(result.advanceRow());
+        assertEquals(1, result.getLong(0));
+        assertEquals(1, result.getLong(1));
+        assertTrue(result.advanceRow());
+        assertEquals(2, result.getLong(0));
+        assertEquals(1, result.getLong(1));
+    }
+
     public void testIndexJoins()
             throws NoConnectionsException, IOException, ProcCallException
     {
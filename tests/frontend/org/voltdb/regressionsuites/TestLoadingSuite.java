@@ -107,6 +107,39 @@ public class TestLoadingSuite extends RegressionSuite {
             assertEquals(2, countPartitionedRows(client));
     }
 
+    public void testMispartitionedSinglePartitionLoad() throws Exception {
+        Client client = getClient();
+
+        // Column types match the table so the batch is eligible for the direct load
+        VoltTable table = new VoltTable(new ColumnInfo[] {
+                new ColumnInfo("ival", VoltType.INTEGER),
+                new ColumnInfo("pval", VoltType.INTEGER),
+                new ColumnInfo("bval", VoltType.TINYINT),
+                new ColumnInfo("sval", VoltType.STRING),
+                new ColumnInfo("dval", VoltType.FLOAT)
+        });
+        // Routed by the first row, some of the others hash to other partitions
+        for (int i = 0; i < 20; i++) {
+            table.addRow(100 + i, i, (byte) i, Integer.toString(i), (double) i);
+        }
+        long before = countPartitionedRows(client);
+        if (isHSQL()) {
+            // A single partition, every row belongs to it
+            client.callProcedure("@LoadSinglepartitionTable", VoltType.valueToBytes(0),
+                    "PARTITIONED", upsertMode, table);
+            assertEquals(before + 20, countPartitionedRows(client));
+            return;
+        }
+        try {
+            client.callProcedure("@LoadSinglepartitionTable", VoltType.valueToBytes(0),
+                    "PARTITIONED", upsertMode, table);
+            fail(); // a row of another partition must be rejected
+        } catch (ProcCallException e) {
+            assertTrue(e.getMessage().contains("Mispartitioned"));
+        }
+        assertEquals(before, countPartitionedRows(client));
+    }
+
     public void testMultiPartitionLoad() throws Exception {
 
         Client client = getClient();
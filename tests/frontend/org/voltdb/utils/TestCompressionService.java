@@ -0,0 +1,87 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.utils;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class TestCompressionService extends TestCase {
+
+    private static byte[] makeBlock(int length) {
+        // Random runs so the block actually compresses
+        byte[] block = new byte[length];
+        Random r = new Random(0);
+        for (int i = 0; i < length; i++) {
+            block[i] = (i % 16 == 0) ? (byte) r.nextInt() : block[i - 1];
+        }
+        return block;
+    }
+
+    private static void checkContents(byte[] expected, ByteBuffer actual, int length) {
+        assertEquals(expected.length, length);
+        for (int i = 0; i < length; i++) {
+            assertEquals(expected[i], actual.get(actual.position() + i));
+        }
+    }
+
+    public void testLZ4HeapRoundTrip() {
+        byte[] block = makeBlock(1024 * 100);
+        ByteBuffer input = ByteBuffer.wrap(block);
+        input.position(10);
+        byte[] compressed = CompressionService.lz4CompressBuffer(input);
+        assertEquals(10, input.position());
+        assertTrue(compressed.length < block.length);
+
+        ByteBuffer output = ByteBuffer.allocate(block.length);
+        int length = CompressionService.lz4DecompressBytes(compressed, output);
+        assertEquals(0, output.position());
+        byte[] expected = new byte[block.length - 10];
+        System.arraycopy(block, 10, expected, 0, expected.length);
+        checkContents(expected, output, length);
+    }
+
+    public void testLZ4DirectRoundTrip() {
+        // Bigger than the initial thread local scratch buffers
+        byte[] block = makeBlock(1024 * 1024 * 2);
+        ByteBuffer input = ByteBuffer.allocateDirect(block.length);
+        input.put(block);
+        input.flip();
+        byte[] compressed = CompressionService.lz4CompressBuffer(input);
+        assertEquals(0, input.position());
+
+        ByteBuffer output = ByteBuffer.allocateDirect(block.length);
+        int length = CompressionService.lz4DecompressBytes(compressed, output);
+        checkContents(block, output, length);
+    }
+
+    public void testLZ4DecompressTooSmall() {
+        byte[] compressed = CompressionService.lz4CompressBuffer(ByteBuffer.wrap(makeBlock(1000)));
+        try {
+            CompressionService.lz4DecompressBytes(compressed, ByteBuffer.allocate(999));
+            fail();
+        } catch (IllegalArgumentException expected) {}
+    }
+}
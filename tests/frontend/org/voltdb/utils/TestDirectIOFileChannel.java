@@ -0,0 +1,276 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class TestDirectIOFileChannel extends TestCase {
+
+    // Not java.io.tmpdir, which may be a tmpfs that refuses O_DIRECT
+    private final static File TEST_DIR =
+            new File("/tmp/" + System.getProperty("user.name"), "TestDirectIOFileChannel");
+
+    private File m_dir;
+    private File m_file;
+    private final Random m_random = new Random(42);
+
+    @Override
+    public void setUp() throws IOException {
+        m_dir = TEST_DIR;
+        // Left behind if a previous run crashed
+        VoltFile.recursivelyDelete(m_dir);
+        m_dir.mkdirs();
+        m_file = new File(m_dir, "data");
+    }
+
+    @Override
+    public void tearDown() throws IOException {
+        VoltFile.recursivelyDelete(m_dir);
+    }
+
+    private static boolean isLinux() {
+        return System.getProperty("os.name").equalsIgnoreCase("linux");
+    }
+
+    /*
+     * Open the file for direct I/O, null if the platform or the file system
+     * doesn't support it. The test is skipped then, the file is written
+     * through the regular channel.
+     */
+    private FileChannel open() throws IOException {
+        if (!isLinux()) {
+            return null;
+        }
+        FileChannel fallback = new RandomAccessFile(m_file, "rw").getChannel();
+        FileChannel channel = DirectIOFileChannel.open(m_file, "TEST", fallback);
+        if (!(channel instanceof DirectIOFileChannel)) {
+            assertSame(fallback, channel);
+            channel.close();
+            System.out.println("Skipping " + getName() + ", " + m_dir + " doesn't support O_DIRECT");
+            return null;
+        }
+        return channel;
+    }
+
+    private byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        m_random.nextBytes(bytes);
+        return bytes;
+    }
+
+    /*
+     * Append the data in chunks of odd sizes, keeping a copy of what was written
+     */
+    private void append(FileChannel channel, byte[] expected, int from, int to) throws IOException {
+        int position = from;
+        while (position < to) {
+            int length = Math.min(to - position, 1 + m_random.nextInt(100000));
+            ByteBuffer buf = ByteBuffer.allocateDirect(length);
+            buf.put(expected, position, length).flip();
+            assertEquals(length, channel.write(buf));
+            position += length;
+        }
+    }
+
+    private void assertContents(FileChannel channel, byte[] expected) throws IOException {
+        assertEquals(expected.length, channel.size());
+        ByteBuffer buf = ByteBuffer.allocate(expected.length);
+        int position = 0;
+        while (buf.hasRemaining()) {
+            int read = channel.read(buf, position);
+            assertTrue(read > 0);
+            position += read;
+        }
+        assertTrue(Arrays.equals(expected, buf.array()));
+        assertEquals(-1, channel.read(ByteBuffer.allocate(1), expected.length));
+    }
+
+    private void assertFileContents(byte[] expected) throws IOException {
+        assertEquals(expected.length, m_file.length());
+        RandomAccessFile raf = new RandomAccessFile(m_file, "r");
+        try {
+            byte[] actual = new byte[expected.length];
+            raf.readFully(actual);
+            assertTrue(Arrays.equals(expected, actual));
+        } finally {
+            raf.close();
+        }
+    }
+
+    public void testAppendAndReadBack() throws Exception {
+        FileChannel channel = open();
+        if (channel == null) {
+            return;
+        }
+        byte[] expected = randomBytes(DirectIOFileChannel.BUFFER_SIZE * 5 + 1234);
+        append(channel, expected, 0, expected.length);
+        assertEquals(expected.length, channel.position());
+        assertContents(channel, expected);
+
+        channel.force(false);
+        assertFileContents(expected);
+        assertContents(channel, expected);
+        channel.close();
+        assertFileContents(expected);
+    }
+
+    public void testHeaderUpdates() throws Exception {
+        FileChannel channel = open();
+        if (channel == null) {
+            return;
+        }
+        byte[] expected = randomBytes(DirectIOFileChannel.BUFFER_SIZE * 3 + 100);
+        int written = 0;
+        int count = 0;
+        while (written < expected.length) {
+            int next = Math.min(expected.length, written + 50000);
+            append(channel, expected, written, next);
+            written = next;
+
+            // Like the entry count in a PBD segment header
+            count++;
+            ByteBuffer header = ByteBuffer.allocate(8);
+            header.putInt(count).putInt(written).flip();
+            header.get(expected, 0, 8);
+            header.flip();
+            channel.write(header, 0);
+
+            // Read back the start of the file while writing
+            ByteBuffer start = ByteBuffer.allocate(8192);
+            channel.read(start, 0);
+            assertTrue(Arrays.equals(Arrays.copyOf(expected, 8192), start.array()));
+        }
+        assertContents(channel, expected);
+        channel.close();
+        assertFileContents(expected);
+    }
+
+    public void testSparseWrite() throws Exception {
+        FileChannel channel = open();
+        if (channel == null) {
+            return;
+        }
+        byte[] expected = new byte[DirectIOFileChannel.BUFFER_SIZE * 2 + 5000];
+        byte[] tail = randomBytes(5000);
+        System.arraycopy(tail, 0, expected, expected.length - tail.length, tail.length);
+        channel.write(ByteBuffer.wrap(tail), expected.length - tail.length);
+        assertContents(channel, expected);
+        channel.close();
+        assertFileContents(expected);
+    }
+
+    public void testTruncateAndReopen() throws Exception {
+        FileChannel channel = open();
+        if (channel == null) {
+            return;
+        }
+        byte[] expected = randomBytes(DirectIOFileChannel.BUFFER_SIZE * 2 + 777);
+        append(channel, expected, 0, expected.length);
+        channel.truncate(DirectIOFileChannel.BUFFER_SIZE + 333);
+        assertEquals(DirectIOFileChannel.BUFFER_SIZE + 333, channel.position());
+        append(channel, expected, DirectIOFileChannel.BUFFER_SIZE + 333, expected.length);
+        channel.close();
+        assertFileContents(expected);
+
+        channel = open();
+        assertContents(channel, expected);
+        byte[] longer = Arrays.copyOf(expected, expected.length + 10000);
+        System.arraycopy(randomBytes(10000), 0, longer, expected.length, 10000);
+        channel.position(expected.length);
+        append(channel, longer, expected.length, longer.length);
+        channel.force(true);
+        assertFileContents(longer);
+        channel.close();
+    }
+
+    public void testTransfer() throws Exception {
+        FileChannel channel = open();
+        if (channel == null) {
+            return;
+        }
+        byte[] expected = randomBytes(DirectIOFileChannel.BUFFER_SIZE + 100000);
+        RandomAccessFile raf = new RandomAccessFile(new File(m_dir, "source"), "rw");
+        try {
+            raf.write(expected);
+            raf.seek(0);
+            assertEquals(expected.length, channel.transferFrom(raf.getChannel(), 0, expected.length));
+        } finally {
+            raf.close();
+        }
+        assertContents(channel, expected);
+
+        File copy = new File(m_dir, "copy");
+        raf = new RandomAccessFile(copy, "rw");
+        try {
+            assertEquals(expected.length - 10, channel.transferTo(10, expected.length, raf.getChannel()));
+            assertEquals(expected.length - 10, raf.length());
+            byte[] actual = new byte[expected.length - 10];
+            raf.seek(0);
+            raf.readFully(actual);
+            assertTrue(Arrays.equals(Arrays.copyOfRange(expected, 10, expected.length), actual));
+        } finally {
+            raf.close();
+        }
+
+        // Mapping sees the data still in the buffer, only read only is allowed
+        ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, expected.length);
+        byte[] actual = new byte[expected.length];
+        mapped.get(actual);
+        assertTrue(Arrays.equals(expected, actual));
+        try {
+            channel.map(FileChannel.MapMode.READ_WRITE, 0, expected.length);
+            fail();
+        } catch (IOException expectedException) {}
+
+        FileLock lock = channel.tryLock();
+        assertNotNull(lock);
+        lock.release();
+        channel.close();
+        assertFileContents(expected);
+    }
+
+    public void testStats() throws Exception {
+        FileChannel channel = open();
+        if (channel == null) {
+            return;
+        }
+        DirectIOFileChannel.getStats(true);
+        byte[] expected = randomBytes(DirectIOFileChannel.BUFFER_SIZE * 2);
+        append(channel, expected, 0, expected.length);
+        channel.close();
+        Map<String, long[]> stats = DirectIOFileChannel.getStats(true);
+        assertEquals(expected.length, stats.get("TEST")[0]);
+        assertEquals(2, stats.get("TEST")[1]);
+    }
+}
@@ -0,0 +1,101 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.utils;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class TestNumaTopology extends TestCase {
+
+    private File m_dir;
+
+    @Override
+    public void setUp() throws IOException {
+        m_dir = new File(System.getProperty("java.io.tmpdir"), "TestNumaTopology");
+        VoltFile.recursivelyDelete(m_dir);
+        m_dir.mkdirs();
+    }
+
+    @Override
+    public void tearDown() throws IOException {
+        VoltFile.recursivelyDelete(m_dir);
+    }
+
+    private void addNode(int node, String cpuList, long local, long other) throws IOException {
+        File nodeDir = new File(m_dir, "node" + node);
+        nodeDir.mkdirs();
+        FileWriter writer = new FileWriter(new File(nodeDir, "cpulist"));
+        writer.write(cpuList + "\n");
+        writer.close();
+        writeNumastat(node, local, other);
+    }
+
+    private void writeNumastat(int node, long local, long other) throws IOException {
+        FileWriter writer = new FileWriter(new File(new File(m_dir, "node" + node), "numastat"));
+        writer.write("numa_hit " + local + "\nnuma_miss 0\nnuma_foreign 0\ninterleave_hit 0\n" +
+                     "local_node " + local + "\nother_node " + other + "\n");
+        writer.close();
+    }
+
+    public void testParseCpuList() {
+        assertEquals(Arrays.asList(0, 1, 2, 6, 8, 9), NumaTopology.parseCpuList("0-2,6,8-9"));
+        assertTrue(NumaTopology.parseCpuList("").isEmpty());
+    }
+
+    public void testSiteBindings() throws IOException {
+        addNode(0, "0-1,4-5", 100, 0);
+        addNode(1, "2-3,6-7", 100, 0);
+        addNode(2, "70-71", 0, 0);
+        new File(m_dir, "possible").createNewFile();
+
+        NumaTopology topology = new NumaTopology(m_dir);
+        // node 2 only has cpus that can't be bound to
+        assertEquals(2, topology.getNodeCount());
+        assertEquals(Arrays.asList(2, 3, 6, 7), topology.getCpus(1));
+        List<String> bindings = topology.getSiteBindings(3);
+        assertEquals(Arrays.asList("0:1:4:5", "2:3:6:7", "0:1:4:5"), bindings);
+    }
+
+    public void testSingleNode() throws IOException {
+        addNode(0, "0-7", 100, 0);
+        assertTrue(new NumaTopology(m_dir).getSiteBindings(4).isEmpty());
+        assertTrue(new NumaTopology(new File(m_dir, "missing")).getSiteBindings(4).isEmpty());
+    }
+
+    public void testRemoteAllocationPercent() throws IOException {
+        addNode(0, "0-1", 1000, 10);
+        addNode(1, "2-3", 1000, 10);
+        NumaTopology topology = new NumaTopology(m_dir);
+        assertEquals(0, topology.getRemoteAllocationPercent());
+
+        writeNumastat(0, 1150, 10);
+        writeNumastat(1, 1000, 60);
+        assertEquals(25, topology.getRemoteAllocationPercent());
+    }
+}
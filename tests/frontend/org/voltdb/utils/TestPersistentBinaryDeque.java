@@ -44,6 +44,7 @@ import org.junit.Test;
 import org.voltcore.logging.VoltLogger;
 import org.voltcore.utils.DBBPool;
 import org.voltcore.utils.DBBPool.BBContainer;
+import org.voltdb.utils.BinaryDeque.BinaryDequeReader;
 import org.voltdb.utils.BinaryDeque.BinaryDequeTruncator;
 import org.voltdb.utils.BinaryDeque.TruncatorResponse;
 
@@ -909,6 +910,117 @@ public class TestPersistentBinaryDeque {
         assert(files[0].getName().equals("pbd_nonce.1.pbd"));
     }
 
+    @Test
+    public void testReadCursors() throws Exception {
+        System.out.println("Running testReadCursors");
+        BinaryDequeReader reader = m_pbd.openForRead("reader");
+        assertNull(reader.poll(PersistentBinaryDeque.UNSAFE_CONTAINER_FACTORY));
+
+        final int total = 100;
+        for (int i = 0; i < total; i++) {
+            m_pbd.offer(DBBPool.wrapBB(getFilledBuffer(i)));
+        }
+        assertEquals(3, TEST_DIR.listFiles().length);
+        assertEquals(total, reader.getNumObjects());
+
+        //Polling the deque doesn't delete segments the cursor hasn't read
+        for (int i = 0; i < total; i++) {
+            BBContainer retval = m_pbd.poll(PersistentBinaryDeque.UNSAFE_CONTAINER_FACTORY);
+            assertEquals(i, retval.b().getLong(0));
+            retval.discard();
+        }
+        assertTrue(m_pbd.isEmpty());
+        assertEquals(3, TEST_DIR.listFiles().length);
+
+        //A cursor opened late starts at the oldest object still stored
+        BinaryDequeReader lateReader = m_pbd.openForRead("lateReader");
+        assertEquals(total, lateReader.getNumObjects());
+        assertEquals(reader, m_pbd.openForRead("reader"));
+
+        for (int i = 0; i < total; i++) {
+            BBContainer retval = reader.poll(PersistentBinaryDeque.UNSAFE_CONTAINER_FACTORY);
+            assertEquals(i, retval.b().getLong(0));
+            retval.discard();
+        }
+        assertNull(reader.poll(PersistentBinaryDeque.UNSAFE_CONTAINER_FACTORY));
+        assertTrue(reader.isEmpty());
+        assertEquals(3, TEST_DIR.listFiles().length);
+
+        //A closed cursor's held containers still keep their segment
+        BBContainer held = lateReader.poll(PersistentBinaryDeque.UNSAFE_CONTAINER_FACTORY);
+        assertEquals(0, held.b().getLong(0));
+        lateReader.close();
+        assertEquals(2, TEST_DIR.listFiles().length);
+        held.discard();
+        File files[] = TEST_DIR.listFiles();
+        assertEquals(1, files.length);
+        assertEquals("pbd_nonce.2.pbd", files[0].getName());
+
+        //Both the deque and the cursor get new objects
+        m_pbd.offer(DBBPool.wrapBB(getFilledBuffer(total)));
+        assertEquals(1, reader.getNumObjects());
+        BBContainer retval = reader.poll(PersistentBinaryDeque.UNSAFE_CONTAINER_FACTORY);
+        assertEquals(total, retval.b().getLong(0));
+        retval.discard();
+        retval = m_pbd.poll(PersistentBinaryDeque.UNSAFE_CONTAINER_FACTORY);
+        assertEquals(total, retval.b().getLong(0));
+        retval.discard();
+    }
+
+    @Test
+    public void testReopenCursorWhileContainerHeld() throws Exception {
+        System.out.println("Running testReopenCursorWhileContainerHeld");
+        BinaryDequeReader reader = m_pbd.openForRead("reader");
+        final int total = 100;
+        for (int i = 0; i < total; i++) {
+            m_pbd.offer(DBBPool.wrapBB(getFilledBuffer(i)));
+        }
+        for (int i = 0; i < total; i++) {
+            m_pbd.poll(PersistentBinaryDeque.UNSAFE_CONTAINER_FACTORY).discard();
+        }
+        assertEquals(3, TEST_DIR.listFiles().length);
+
+        BBContainer held = reader.poll(PersistentBinaryDeque.UNSAFE_CONTAINER_FACTORY);
+        assertEquals(0, held.b().getLong(0));
+        reader.close();
+
+        //The reopened cursor is a new one, starting at the oldest object still
+        //stored. Only the held container's segment is left before the last one.
+        BinaryDequeReader reopened = m_pbd.openForRead("reader");
+        assertTrue(reader != reopened);
+        assertEquals(2, TEST_DIR.listFiles().length);
+        final int stored = reopened.getNumObjects();
+        long last = -1;
+        for (int i = 0; i < stored; i++) {
+            BBContainer retval = reopened.poll(PersistentBinaryDeque.UNSAFE_CONTAINER_FACTORY);
+            if (i == 0) {
+                assertEquals(0, retval.b().getLong(0));
+            }
+            assertTrue(retval.b().getLong(0) > last);
+            last = retval.b().getLong(0);
+            retval.discard();
+        }
+        assertEquals(total - 1, last);
+        assertNull(reopened.poll(PersistentBinaryDeque.UNSAFE_CONTAINER_FACTORY));
+
+        //The closed cursor's container still keeps the first segment
+        assertEquals(2, TEST_DIR.listFiles().length);
+        assertEquals(0, held.b().getLong(0));
+        held.discard();
+        File files[] = TEST_DIR.listFiles();
+        assertEquals(1, files.length);
+        assertEquals("pbd_nonce.2.pbd", files[0].getName());
+
+        //Discarding it left the reopened cursor registered
+        assertEquals(reopened, m_pbd.openForRead("reader"));
+        m_pbd.offer(DBBPool.wrapBB(getFilledBuffer(total)));
+        m_pbd.poll(PersistentBinaryDeque.UNSAFE_CONTAINER_FACTORY).discard();
+        assertEquals(1, reopened.getNumObjects());
+        BBContainer retval = reopened.poll(PersistentBinaryDeque.UNSAFE_CONTAINER_FACTORY);
+        assertEquals(total, retval.b().getLong(0));
+        retval.discard();
+    }
+
     @Before
     public void setUp() throws Exception {
         if (TEST_DIR.exists()) {